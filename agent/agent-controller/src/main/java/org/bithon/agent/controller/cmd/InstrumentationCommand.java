@@ -19,6 +19,7 @@ package org.bithon.agent.controller.cmd;
 import org.bithon.agent.instrumentation.aop.interceptor.InterceptorManager;
 import org.bithon.agent.instrumentation.aop.interceptor.InterceptorSupplier;
 import org.bithon.agent.instrumentation.aop.interceptor.installer.InstallerRecorder;
+import org.bithon.agent.instrumentation.aop.interceptor.installer.TransformationRecorder;
 import org.bithon.agent.rpc.brpc.cmd.IInstrumentationCommand;
 
 import java.sql.Timestamp;
@@ -27,6 +28,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Frank Chen
@@ -143,4 +145,19 @@ public class InstrumentationCommand implements IInstrumentationCommand, IAgentCo
 
         return new ArrayList<>(deduplicationMap.values());
     }
+
+    @Override
+    public List<PluginTransformation> getPluginTransformations() {
+        List<PluginTransformation> transformations = new ArrayList<>();
+        for (TransformationRecorder.PluginTransformation stat : TransformationRecorder.INSTANCE.getPluginTransformations()) {
+            PluginTransformation transformation = new PluginTransformation();
+            transformation.plugin = stat.getPlugin();
+            transformation.typeCount = stat.getTypeCount();
+            transformation.errorCount = stat.getErrorCount();
+            transformation.totalTimeMicros = TimeUnit.NANOSECONDS.toMicros(stat.getTotalTimeNanos());
+            transformation.maxTimeMicros = TimeUnit.NANOSECONDS.toMicros(stat.getMaxTimeNanos());
+            transformations.add(transformation);
+        }
+        return transformations;
+    }
 }
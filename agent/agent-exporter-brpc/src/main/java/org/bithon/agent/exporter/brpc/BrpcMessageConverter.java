@@ -21,6 +21,7 @@ import org.bithon.agent.observability.event.EventMessage;
 import org.bithon.agent.observability.exporter.IMessageConverter;
 import org.bithon.agent.observability.metric.domain.jvm.JvmMetrics;
 import org.bithon.agent.observability.metric.model.IMeasurement;
+import org.bithon.agent.observability.metric.model.schema.FieldSpec;
 import org.bithon.agent.observability.metric.model.schema.Schema;
 import org.bithon.agent.observability.metric.model.schema.Schema2;
 import org.bithon.agent.observability.metric.model.schema.Schema3;
@@ -36,9 +37,11 @@ import org.bithon.agent.rpc.brpc.metrics.BrpcGenericMetricSchema;
 import org.bithon.agent.rpc.brpc.metrics.BrpcGenericMetricSchemaV2;
 import org.bithon.agent.rpc.brpc.metrics.BrpcGenericMetricSchemaV3;
 import org.bithon.agent.rpc.brpc.metrics.BrpcGenericMetricSpec;
+import org.bithon.agent.rpc.brpc.metrics.BrpcHistogram;
 import org.bithon.agent.rpc.brpc.metrics.BrpcJvmMetricMessage;
 import org.bithon.agent.rpc.brpc.metrics.FieldType;
 import org.bithon.agent.rpc.brpc.tracing.BrpcTraceSpanMessage;
+import org.bithon.component.commons.histogram.HistogramSnapshot;
 import org.bithon.component.commons.logging.ILogAdaptor;
 import org.bithon.component.commons.logging.LoggerFactory;
 import org.bithon.component.commons.utils.StringUtils;
@@ -118,9 +121,7 @@ public class BrpcMessageConverter implements IMessageConverter {
 
         // The 'putAllTags' on the Builder internally checks the NULL of each k-v pair.
         // To avoid unexpected exception, we do the check by ourselves so that we know which tag has the NULL value.
-        for (Map.Entry<String, String> entry : span.tags().entrySet()) {
-            String k = entry.getKey();
-            String v = entry.getValue();
+        span.forEachTag((k, v) -> {
             if (v != null) {
                 builder.putTags(k, v);
             } else {
@@ -129,7 +130,7 @@ public class BrpcMessageConverter implements IMessageConverter {
                 logger.warn(StringUtils.format("Unexpected exception",
                                                 new AgentException("Value of tag [%s] is null", k)));
             }
-        }
+        });
 
         if (span.parentApplication() != null) {
             builder.setParentAppName(span.parentApplication());
@@ -215,6 +216,7 @@ public class BrpcMessageConverter implements IMessageConverter {
                                                                                    .setName(schema.getName());
         schema.getDimensionsSpec().forEach(schemaBuilder::addDimensionsSpec);
         schema.getMetricsSpec().forEach(schemaBuilder::addMetricsSpec);
+        schema.getHistogramsSpec().forEach(schemaBuilder::addHistogramsSpec);
 
         BrpcGenericMetricMessageV2.Builder messageBuilder = BrpcGenericMetricMessageV2.newBuilder();
         messageBuilder.setSchema(schemaBuilder.build());
@@ -234,6 +236,10 @@ public class BrpcMessageConverter implements IMessageConverter {
                 for (int i = 0, size = measurement.getMetricCount(); i < size; i++) {
                     measurementBuilder.addMetric(measurement.getMetricValue(i));
                 }
+                // Histograms are positional, an empty one is sent if there's no value recorded
+                for (int i = 0, size = schema.getHistogramsSpec().size(); i < size; i++) {
+                    measurementBuilder.addHistogram(toHistogram(i < measurement.getHistogramCount() ? measurement.getHistogram(i) : null));
+                }
                 messageBuilder.addMeasurement(measurementBuilder.build());
             } catch (RuntimeException ignored) {
                 // ignore invalid metric values
@@ -252,7 +258,7 @@ public class BrpcMessageConverter implements IMessageConverter {
               .map((fieldSpec -> BrpcGenericMetricSchemaV3.FieldSpec
                   .newBuilder()
                   .setName(fieldSpec.getName())
-                  .setType(FieldType.DOUBLE).build()))
+                  .setType(fieldSpec.getType() == FieldSpec.TYPE_HISTOGRAM ? FieldType.HISTOGRAM : FieldType.DOUBLE).build()))
               .forEach((schemaBuilder::addFieldSpec));
 
         BrpcGenericMetricMessageV3.Builder messageBuilder = BrpcGenericMetricMessageV3.newBuilder();
@@ -273,6 +279,8 @@ public class BrpcMessageConverter implements IMessageConverter {
                         measurementBuilder.addValue(Any.pack(DoubleValue.of((Double) v)));
                     } else if (v instanceof Float) {
                         measurementBuilder.addValue(Any.pack(DoubleValue.of((Float) v)));
+                    } else if (v instanceof HistogramSnapshot) {
+                        measurementBuilder.addValue(Any.pack(toHistogram((HistogramSnapshot) v)));
                     } else {
                         throw new RuntimeException("Not supported type " + v.getClass().getName());
                     }
@@ -285,4 +293,19 @@ public class BrpcMessageConverter implements IMessageConverter {
 
         return messageBuilder.build();
     }
+
+    private static BrpcHistogram toHistogram(HistogramSnapshot histogram) {
+        BrpcHistogram.Builder builder = BrpcHistogram.newBuilder();
+        if (histogram != null) {
+            builder.setCount(histogram.getCount())
+                   .setSum(histogram.getSum())
+                   .setMin(histogram.getMin())
+                   .setMax(histogram.getMax());
+            for (int i = 0, size = histogram.getBucketSize(); i < size; i++) {
+                builder.addBucketIndex(histogram.getBucketIndex(i))
+                       .addBucketCount(histogram.getBucketCount(i));
+            }
+        }
+        return builder.build();
+    }
 }
@@ -18,8 +18,12 @@ package org.bithon.agent.instrumentation.aop.advice;
 
 import org.bithon.agent.instrumentation.aop.interceptor.installer.InstallerRecorder;
 import org.bithon.shaded.net.bytebuddy.asm.Advice;
+import org.bithon.shaded.net.bytebuddy.description.annotation.AnnotationDescription;
 import org.bithon.shaded.net.bytebuddy.description.method.MethodDescription;
+import org.bithon.shaded.net.bytebuddy.description.method.ParameterDescription;
+import org.bithon.shaded.net.bytebuddy.description.method.ParameterList;
 import org.bithon.shaded.net.bytebuddy.description.type.TypeDescription;
+import org.bithon.shaded.net.bytebuddy.implementation.bytecode.StackManipulation;
 import org.bithon.shaded.net.bytebuddy.implementation.bytecode.assign.Assigner;
 import org.bithon.shaded.net.bytebuddy.implementation.bytecode.constant.JavaConstantValue;
 import org.bithon.shaded.net.bytebuddy.utility.JavaConstant;
@@ -44,6 +48,32 @@ public class AdviceAnnotation {
     public @interface InterceptorIndex {
     }
 
+    /**
+     * Whether the context is acquired from {@link org.bithon.agent.instrumentation.aop.context.AopContextPool}
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @java.lang.annotation.Target(ElementType.PARAMETER)
+    public @interface ReuseContext {
+    }
+
+    /**
+     * The length of argument array in the context
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @java.lang.annotation.Target(ElementType.PARAMETER)
+    public @interface ArgumentCount {
+    }
+
+    /**
+     * The argument at given index if it's declared by
+     * {@link org.bithon.agent.instrumentation.aop.interceptor.declaration.AdviceOptions#arguments()}, or null otherwise
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @java.lang.annotation.Target(ElementType.PARAMETER)
+    public @interface SelectedArgument {
+        int value();
+    }
+
     public static class InterceptorNameResolver implements Advice.OffsetMapping {
         private final int index;
         private final String name;
@@ -90,4 +120,68 @@ public class AdviceAnnotation {
             return new Target.ForStackManipulation(new JavaConstantValue(JavaConstant.Simple.ofLoaded(index)));
         }
     }
+
+    public static class SelectedArgumentFactory implements Advice.OffsetMapping.Factory<SelectedArgument> {
+        /**
+         * bit i is set if the argument at index i is declared
+         */
+        private final int declaredArguments;
+
+        public SelectedArgumentFactory(int[] arguments) {
+            int mask = 0;
+            for (int argument : arguments) {
+                mask |= 1 << argument;
+            }
+            this.declaredArguments = mask;
+        }
+
+        @Override
+        public Class<SelectedArgument> getAnnotationType() {
+            return SelectedArgument.class;
+        }
+
+        @Override
+        public Advice.OffsetMapping make(ParameterDescription.InDefinedShape target,
+                                         AnnotationDescription.Loadable<SelectedArgument> annotation,
+                                         AdviceType adviceType) {
+            int argumentIndex = annotation.load().value();
+            boolean declared = (declaredArguments & (1 << argumentIndex)) != 0;
+            return new SelectedArgumentResolver(target.getType(), declared ? argumentIndex : -1);
+        }
+    }
+
+    /**
+     * Loads the selected argument in read-only mode so that no argument array is allocated
+     */
+    static class SelectedArgumentResolver implements Advice.OffsetMapping {
+        private final TypeDescription.Generic targetType;
+        private final int argumentIndex;
+
+        SelectedArgumentResolver(TypeDescription.Generic targetType, int argumentIndex) {
+            this.targetType = targetType;
+            this.argumentIndex = argumentIndex;
+        }
+
+        @Nonnull
+        @Override
+        public Target resolve(@Nonnull TypeDescription instrumentedType,
+                              @Nonnull MethodDescription instrumentedMethod,
+                              @Nonnull Assigner assigner,
+                              @Nonnull Advice.ArgumentHandler argumentHandler,
+                              @Nonnull Sort sort) {
+            ParameterList<?> parameters = instrumentedMethod.getParameters();
+            if (argumentIndex < 0 || argumentIndex >= parameters.size()) {
+                return new Target.ForDefaultValue.ReadOnly(targetType);
+            }
+
+            ParameterDescription parameter = parameters.get(argumentIndex);
+            StackManipulation readAssignment = assigner.assign(parameter.getType(), targetType, Assigner.Typing.DYNAMIC);
+            if (!readAssignment.isValid()) {
+                throw new IllegalStateException("Cannot assign " + parameter + " to " + targetType);
+            }
+            return new Target.ForVariable.ReadOnly(parameter.getType(),
+                                                   argumentHandler.argument(parameter.getOffset()),
+                                                   readAssignment);
+        }
+    }
 }
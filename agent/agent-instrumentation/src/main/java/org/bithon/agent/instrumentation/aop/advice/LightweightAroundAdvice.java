@@ -0,0 +1,116 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.instrumentation.aop.advice;
+
+import org.bithon.agent.instrumentation.aop.context.AopContextImpl;
+import org.bithon.agent.instrumentation.aop.context.AopContextPool;
+import org.bithon.agent.instrumentation.aop.interceptor.InterceptionDecision;
+import org.bithon.agent.instrumentation.aop.interceptor.InterceptorManager;
+import org.bithon.agent.instrumentation.aop.interceptor.declaration.AroundInterceptor;
+import org.bithon.shaded.net.bytebuddy.asm.Advice;
+import org.bithon.shaded.net.bytebuddy.implementation.bytecode.assign.Assigner;
+
+/**
+ * The {@link AroundAdvice} for interceptors declared with {@link org.bithon.agent.instrumentation.aop.interceptor.declaration.AdviceOptions}.
+ * <p>
+ * Instead of {@link Advice.AllArguments}, only the declared arguments are loaded, and no argument array is allocated if none is declared.
+ * The context is acquired from {@link AopContextPool} if the interceptor allows it to be reused.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class LightweightAroundAdvice {
+
+    /**
+     * This method is only used for byte-buddy method advice. Have no use during the execution since the code has been injected into target class
+     */
+    @Advice.OnMethodEnter
+    public static boolean onEnter(@AdviceAnnotation.InterceptorName String name,
+                                  @AdviceAnnotation.InterceptorIndex int index,
+                                  @AdviceAnnotation.ReuseContext boolean reuseContext,
+                                  @AdviceAnnotation.ArgumentCount int argumentCount,
+                                  @Advice.Origin Class<?> clazz,
+                                  @Advice.Origin("#m") String method,
+                                  @Advice.This(optional = true) Object target,
+                                  @AdviceAnnotation.SelectedArgument(0) Object arg0,
+                                  @AdviceAnnotation.SelectedArgument(1) Object arg1,
+                                  @AdviceAnnotation.SelectedArgument(2) Object arg2,
+                                  @AdviceAnnotation.SelectedArgument(3) Object arg3,
+                                  @Advice.Local("context") Object context,
+                                  @Advice.Local("interceptor") AroundInterceptor interceptor
+    ) {
+        interceptor = (AroundInterceptor) InterceptorManager.INSTANCE.getInterceptor(index);
+        if (interceptor == null) {
+            return false;
+        }
+        interceptor.hit();
+
+        AopContextImpl aopContext = reuseContext
+                                    ? AopContextPool.acquire(clazz, method, target, argumentCount)
+                                    : new AopContextImpl(clazz, method, target, argumentCount == 0 ? AopContextImpl.EMPTY_ARGS : new Object[argumentCount]);
+        aopContext.setArguments(argumentCount, arg0, arg1, arg2, arg3);
+
+        boolean skipAfterMethod = true;
+        try {
+            skipAfterMethod = interceptor.before(aopContext) == InterceptionDecision.SKIP_LEAVE;
+        } catch (Throwable e) {
+            interceptor.onBeforeException(e);
+
+            // continue to execute
+        }
+
+        if (skipAfterMethod) {
+            AopContextPool.release(aopContext);
+            return false;
+        }
+        aopContext.onBeforeTargetMethodInvocation();
+
+        // Assign the context so that the leave method can access this object
+        context = aopContext;
+
+        return true;
+    }
+
+    /**
+     * This method is only used for byte-buddy method advice. Have no use during the execution since the code has been injected into target class
+     */
+    @Advice.OnMethodExit(onThrowable = Throwable.class)
+    public static void onExit(@AdviceAnnotation.InterceptorName String name,
+                              @Advice.Enter boolean shouldExecute,
+                              @Advice.Return(typing = Assigner.Typing.DYNAMIC, readOnly = false) Object returning,
+                              @Advice.Thrown Throwable exception,
+                              @Advice.Local("context") Object context,
+                              @Advice.Local("interceptor") AroundInterceptor interceptor) {
+        if (!shouldExecute || context == null || interceptor == null) {
+            return;
+        }
+
+        AopContextImpl aopContext = (AopContextImpl) context;
+        aopContext.onAfterTargetMethodInvocation();
+        aopContext.setException(exception);
+        aopContext.setReturning(returning);
+
+        try {
+            interceptor.after(aopContext);
+        } catch (Throwable e) {
+            interceptor.onAfterException(e);
+        }
+
+        returning = aopContext.getReturning();
+
+        AopContextPool.release(aopContext);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.instrumentation.aop.advice;
+
+import org.bithon.agent.instrumentation.aop.context.AopContextImpl;
+import org.bithon.agent.instrumentation.aop.context.AopContextPool;
+import org.bithon.agent.instrumentation.aop.interceptor.InterceptorManager;
+import org.bithon.agent.instrumentation.aop.interceptor.declaration.AbstractInterceptor;
+import org.bithon.agent.instrumentation.aop.interceptor.declaration.BeforeInterceptor;
+import org.bithon.shaded.net.bytebuddy.asm.Advice;
+
+/**
+ * The {@link BeforeAdvice} for interceptors declared with {@link org.bithon.agent.instrumentation.aop.interceptor.declaration.AdviceOptions}.
+ * See {@link LightweightAroundAdvice} for more.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class LightweightBeforeAdvice {
+
+    /**
+     * This method is only used for byte-buddy method advice. Have no use during the execution since the code has been injected into target class
+     */
+    @Advice.OnMethodEnter
+    public static void onEnter(@AdviceAnnotation.InterceptorName String name,
+                               @AdviceAnnotation.InterceptorIndex int index,
+                               @AdviceAnnotation.ReuseContext boolean reuseContext,
+                               @AdviceAnnotation.ArgumentCount int argumentCount,
+                               @Advice.Origin Class<?> clazz,
+                               @Advice.Origin("#m") String method,
+                               @Advice.This(optional = true) Object target,
+                               @AdviceAnnotation.SelectedArgument(0) Object arg0,
+                               @AdviceAnnotation.SelectedArgument(1) Object arg1,
+                               @AdviceAnnotation.SelectedArgument(2) Object arg2,
+                               @AdviceAnnotation.SelectedArgument(3) Object arg3
+    ) {
+        AbstractInterceptor interceptor = InterceptorManager.INSTANCE.getInterceptor(index);
+        if (interceptor == null) {
+            return;
+        }
+        interceptor.hit();
+
+        AopContextImpl aopContext = reuseContext
+                                    ? AopContextPool.acquire(clazz, method, target, argumentCount)
+                                    : new AopContextImpl(clazz, method, target, argumentCount == 0 ? AopContextImpl.EMPTY_ARGS : new Object[argumentCount]);
+        aopContext.setArguments(argumentCount, arg0, arg1, arg2, arg3);
+        try {
+            ((BeforeInterceptor) interceptor).before(aopContext);
+        } catch (Throwable e) {
+            interceptor.onBeforeException(e);
+
+            // continue to execute
+        }
+
+        AopContextPool.release(aopContext);
+    }
+}
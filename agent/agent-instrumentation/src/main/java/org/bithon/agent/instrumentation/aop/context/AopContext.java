@@ -29,10 +29,10 @@ import org.bithon.agent.instrumentation.aop.interceptor.declaration.BeforeInterc
  */
 public abstract class AopContext {
 
-    protected final Class<?> targetClass;
-    protected final String method;
+    protected Class<?> targetClass;
+    protected String method;
     protected Object target;
-    private final Object[] args;
+    protected Object[] args;
     private Object span;
     private Object userContext;
     private Object returning;
@@ -21,6 +21,7 @@ package org.bithon.agent.instrumentation.aop.context;
  * @date 28/12/22 10:29 am
  */
 public class AopContextImpl extends AopContext {
+    public static final Object[] EMPTY_ARGS = new Object[0];
 
     public AopContextImpl(Class<?> targetClass,
                           String method,
@@ -52,4 +53,25 @@ public class AopContextImpl extends AopContext {
     public void setTarget(Object target) {
         this.target = target;
     }
+
+    /**
+     * Set the arguments declared by {@link org.bithon.agent.instrumentation.aop.interceptor.declaration.AdviceOptions#arguments()}.
+     * An internal interface. SHOULD NOT be used by users' code
+     *
+     * @param count the length of the argument array, at most {@link org.bithon.agent.instrumentation.aop.interceptor.declaration.AdviceOptions#MAX_ARGUMENTS}
+     */
+    public void setArguments(int count, Object arg0, Object arg1, Object arg2, Object arg3) {
+        if (count > 0) {
+            args[0] = arg0;
+        }
+        if (count > 1) {
+            args[1] = arg1;
+        }
+        if (count > 2) {
+            args[2] = arg2;
+        }
+        if (count > 3) {
+            args[3] = arg3;
+        }
+    }
 }
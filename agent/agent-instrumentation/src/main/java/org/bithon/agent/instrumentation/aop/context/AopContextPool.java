@@ -0,0 +1,138 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.instrumentation.aop.context;
+
+import org.bithon.agent.instrumentation.aop.interceptor.declaration.AdviceOptions;
+
+import java.util.Arrays;
+
+/**
+ * Reusable {@link AopContextImpl} objects of the current thread
+ * for interceptors declared with {@link AdviceOptions#reuseContext()}.
+ * <p>
+ * Intercepted methods may call other intercepted methods, and one method may be intercepted by multiple interceptors,
+ * so contexts are organized as a stack: a context is acquired when entering an advice and released when leaving it.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class AopContextPool {
+
+    /**
+     * Max nested depth of intercepted methods that contexts are reused for.
+     * Deeper invocations fall back to new context objects.
+     */
+    static final int MAX_DEPTH = 16;
+
+    private static final ThreadLocal<AopContextPool> POOLS = ThreadLocal.withInitial(AopContextPool::new);
+
+    private final PooledAopContext[] contexts = new PooledAopContext[MAX_DEPTH];
+    private int depth;
+
+    /**
+     * An internal interface. SHOULD NOT be used by users' code
+     *
+     * @param argumentCount the length of the argument array, at most {@link AdviceOptions#MAX_ARGUMENTS}
+     */
+    public static AopContextImpl acquire(Class<?> targetClass, String method, Object target, int argumentCount) {
+        return POOLS.get().get(targetClass, method, target, argumentCount);
+    }
+
+    /**
+     * An internal interface. SHOULD NOT be used by users' code
+     */
+    public static void release(AopContextImpl context) {
+        if (context instanceof PooledAopContext) {
+            ((PooledAopContext) context).release();
+        }
+    }
+
+    private AopContextImpl get(Class<?> targetClass, String method, Object target, int argumentCount) {
+        if (depth >= MAX_DEPTH) {
+            return new AopContextImpl(targetClass,
+                                      method,
+                                      target,
+                                      argumentCount == 0 ? AopContextImpl.EMPTY_ARGS : new Object[argumentCount]);
+        }
+
+        PooledAopContext context = contexts[depth];
+        if (context == null) {
+            context = new PooledAopContext(this, depth);
+            contexts[depth] = context;
+        }
+        depth++;
+
+        context.reset(targetClass, method, target, argumentCount);
+        return context;
+    }
+
+    int getDepth() {
+        return depth;
+    }
+
+    static class PooledAopContext extends AopContextImpl {
+        private final AopContextPool pool;
+        private final int slot;
+
+        /**
+         * One argument array per argument count, so that the length of args is the same as the non-pooled context.
+         * Index is the argument count, arrays are allocated on first use
+         */
+        private final Object[][] buffers = new Object[AdviceOptions.MAX_ARGUMENTS + 1][];
+
+        PooledAopContext(AopContextPool pool, int slot) {
+            super(null, null, null, EMPTY_ARGS);
+            this.pool = pool;
+            this.slot = slot;
+        }
+
+        void reset(Class<?> targetClass, String method, Object target, int argumentCount) {
+            this.targetClass = targetClass;
+            this.method = method;
+            this.target = target;
+            if (argumentCount == 0) {
+                this.args = EMPTY_ARGS;
+            } else {
+                Object[] buffer = buffers[argumentCount];
+                if (buffer == null) {
+                    buffer = new Object[argumentCount];
+                    buffers[argumentCount] = buffer;
+                }
+                this.args = buffer;
+            }
+            this.startTimestamp = System.currentTimeMillis();
+        }
+
+        void release() {
+            // Clear all references so that they're not held by the thread
+            Arrays.fill(this.args, null);
+            this.targetClass = null;
+            this.method = null;
+            this.target = null;
+            this.exception = null;
+            this.setSpan(null);
+            this.setUserContext(null);
+            this.setReturning(null);
+            this.startNanoTime = 0;
+            this.endNanoTime = 0;
+            this.endTimestamp = 0;
+
+            // Contexts acquired after this one must have been released,
+            // resetting the depth by the slot keeps the stack consistent even if some of them were not released
+            pool.depth = slot;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.instrumentation.aop.interceptor;
+
+import org.bithon.agent.instrumentation.aop.interceptor.declaration.AdviceOptions;
+import org.bithon.agent.instrumentation.loader.PluginClassLoader;
+import org.bithon.agent.instrumentation.logging.ILogger;
+import org.bithon.agent.instrumentation.logging.LoggerFactory;
+import org.bithon.shaded.net.bytebuddy.jar.asm.AnnotationVisitor;
+import org.bithon.shaded.net.bytebuddy.jar.asm.ClassReader;
+import org.bithon.shaded.net.bytebuddy.jar.asm.ClassVisitor;
+import org.bithon.shaded.net.bytebuddy.jar.asm.Opcodes;
+import org.bithon.shaded.net.bytebuddy.jar.asm.Type;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the {@link AdviceOptions} declared on an interceptor class.
+ * <p>
+ * Like {@link InterceptorTypeResolver}, the annotation is read from the class bytecode by ASM
+ * so that the interceptor class is not loaded during the installation.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class AdviceOptionsResolver {
+    private static final ILogger LOG = LoggerFactory.getLogger(AdviceOptionsResolver.class);
+
+    private static final String DESCRIPTOR = Type.getDescriptor(AdviceOptions.class);
+
+    /**
+     * Placeholder for interceptors without options since the {@link ConcurrentHashMap} does not accept null values
+     */
+    private static final Options NONE = new Options(new int[0], false);
+
+    public static final AdviceOptionsResolver INSTANCE = new AdviceOptionsResolver(PluginClassLoader.getClassLoader());
+
+    private final ClassLoader classLoader;
+    private final Map<String, Options> options = new ConcurrentHashMap<>();
+
+    AdviceOptionsResolver(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * @return null if the interceptor does not declare any valid {@link AdviceOptions}
+     */
+    public Options resolve(String interceptorClassName) {
+        Options resolved = options.computeIfAbsent(interceptorClassName, this::read);
+        return resolved == NONE ? null : resolved;
+    }
+
+    private Options read(String interceptorClassName) {
+        OptionsExtractor extractor = new OptionsExtractor();
+
+        String path = interceptorClassName.replace('.', '/').concat(".class");
+        try (InputStream is = classLoader.getResourceAsStream(path)) {
+            if (is == null) {
+                return NONE;
+            }
+            new ClassReader(is).accept(extractor, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        } catch (IOException e) {
+            LOG.warn("Can't read AdviceOptions of interceptor [{}]: {}", interceptorClassName, e.getMessage());
+            return NONE;
+        }
+
+        if (!extractor.declared) {
+            return NONE;
+        }
+        for (int argument : extractor.arguments) {
+            if (argument < 0 || argument >= AdviceOptions.MAX_ARGUMENTS) {
+                LOG.warn("AdviceOptions of interceptor [{}] is ignored. Argument index [{}] is out of range [0, {}).",
+                         interceptorClassName,
+                         argument,
+                         AdviceOptions.MAX_ARGUMENTS);
+                return NONE;
+            }
+        }
+        return new Options(extractor.arguments, extractor.reuseContext);
+    }
+
+    public static class Options {
+        private final int[] arguments;
+        private final boolean reuseContext;
+
+        Options(int[] arguments, boolean reuseContext) {
+            this.arguments = arguments;
+            this.reuseContext = reuseContext;
+        }
+
+        public int[] getArguments() {
+            return arguments;
+        }
+
+        /**
+         * @return the length of argument array in the context, which is the max declared index + 1
+         */
+        public int getArgumentCount() {
+            int count = 0;
+            for (int argument : arguments) {
+                count = Math.max(count, argument + 1);
+            }
+            return count;
+        }
+
+        public boolean isReuseContext() {
+            return reuseContext;
+        }
+
+        @Override
+        public String toString() {
+            return "arguments=" + Arrays.toString(arguments) + ", reuseContext=" + reuseContext;
+        }
+    }
+
+    static class OptionsExtractor extends ClassVisitor {
+        private boolean declared;
+        private int[] arguments = new int[0];
+        private boolean reuseContext;
+
+        OptionsExtractor() {
+            super(Opcodes.ASM9);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            if (!DESCRIPTOR.equals(descriptor)) {
+                return null;
+            }
+            declared = true;
+
+            return new AnnotationVisitor(Opcodes.ASM9) {
+                @Override
+                public void visit(String name, Object value) {
+                    // Primitive arrays are reported as a whole by this method
+                    if ("arguments".equals(name) && value instanceof int[]) {
+                        arguments = (int[]) value;
+                    } else if ("reuseContext".equals(name) && value instanceof Boolean) {
+                        reuseContext = (Boolean) value;
+                    }
+                }
+
+                @Override
+                public AnnotationVisitor visitArray(String name) {
+                    if (!"arguments".equals(name)) {
+                        return null;
+                    }
+                    return new AnnotationVisitor(Opcodes.ASM9) {
+                        @Override
+                        public void visit(String elementName, Object value) {
+                            int[] values = Arrays.copyOf(arguments, arguments.length + 1);
+                            values[arguments.length] = (Integer) value;
+                            arguments = values;
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.instrumentation.aop.interceptor.declaration;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares how an {@link AroundInterceptor} or a {@link BeforeInterceptor} on a non-constructor method is dispatched.
+ * <p>
+ * By default, all arguments of the intercepted method are copied into a new {@code Object[]}
+ * and a new {@link org.bithon.agent.instrumentation.aop.context.AopContext} is created for each invocation.
+ * An interceptor on a hot method can use this annotation to get rid of these allocations.
+ * <p>
+ * The annotation is read from the bytecode of the interceptor class itself, it's NOT inherited from superclasses.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface AdviceOptions {
+
+    /**
+     * Max index + 1 of arguments that can be declared in {@link #arguments()}
+     */
+    int MAX_ARGUMENTS = 4;
+
+    /**
+     * Indexes of the arguments that the interceptor reads by {@code AopContext#getArgAs(int)}.
+     * Only the first {@link #MAX_ARGUMENTS} arguments can be declared.
+     * <p>
+     * The arguments are read-only, that is, the interceptor can't replace them by modifying the array returned by {@code AopContext#getArgs()}.
+     * Interceptors that need all arguments or need to replace arguments should not use this annotation.
+     */
+    int[] arguments() default {};
+
+    /**
+     * Set to true if the {@link org.bithon.agent.instrumentation.aop.context.AopContext} object
+     * is not referenced by the interceptor after {@code before}/{@code after} returns,
+     * for example, it's not captured by an asynchronous callback.
+     * In such case, context objects are reused on the current thread.
+     */
+    boolean reuseContext() default false;
+}
@@ -37,10 +37,16 @@ import org.bithon.shaded.net.bytebuddy.matcher.NameMatcher;
 import org.bithon.shaded.net.bytebuddy.matcher.StringSetMatcher;
 import org.bithon.shaded.net.bytebuddy.utility.JavaModule;
 
+import java.lang.instrument.Instrumentation;
 import java.security.ProtectionDomain;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * @author frank.chen021@outlook.com
@@ -50,27 +56,158 @@ public class DynamicInterceptorInstaller {
     private static final ILogger LOG = LoggerFactory.getLogger(DynamicInterceptorInstaller.class);
     private static final DynamicInterceptorInstaller INSTANCE = new DynamicInterceptorInstaller();
 
+    /**
+     * Interceptors installed by {@link #installOne(AopDescriptor)} in a short period are retransformed in one batch
+     */
+    private static final long RETRANSFORM_INTERVAL_MS = 200;
+
+    /**
+     * The plugin name under which the transformation of dynamic interceptors is recorded
+     */
+    private static final String[] DYNAMIC_PLUGIN = new String[]{"<dynamic>"};
+
     public static DynamicInterceptorInstaller getInstance() {
         return INSTANCE;
     }
 
+    /**
+     * Descriptors installed by {@link #installOne(AopDescriptor)}.
+     * All these descriptors share one transformer so that a loading class passes through only one transformer no matter how many descriptors are installed.
+     * <p>
+     * key - the class name that is going to be instrumented
+     * val - descriptors of the class
+     */
+    private final Map<String, List<AopDescriptor>> sharedDescriptors = new ConcurrentHashMap<>();
+
+    /**
+     * Classes that are waiting for retransformation. Guarded by itself.
+     */
+    private final Set<String> pendingClasses = new HashSet<>();
+    private volatile boolean sharedTransformerInstalled = false;
+
     private DynamicInterceptorInstaller() {
     }
 
     /**
-     * Install one interceptor
+     * Install one interceptor.
+     * <p>
+     * If the target class has been loaded, it's retransformed asynchronously together with other classes registered in a short period.
+     * Otherwise, it's instrumented when it's loaded.
      */
     public void installOne(AopDescriptor descriptor) {
-        new AgentBuilder
-            .Default(new ByteBuddy().with(TypeValidation.DISABLED))
-            .ignore(ElementMatchers.nameStartsWith("org.bithon.shaded.net.bytebuddy."))
-            .disableClassFormatChanges()
-            .with(AgentBuilder.TypeStrategy.Default.REDEFINE)
-            .with(AgentBuilder.RedefinitionStrategy.RETRANSFORMATION)
-            .type(ElementMatchers.named(descriptor.targetClass))
-            .transform((builder, typeDescription, classLoader, javaModule, protectionDomain) -> install(descriptor, builder, classLoader))
-            .with(InstrumentationHelper.getAopDebugger().withTypes(new HashSet<>(Collections.singletonList(descriptor.targetClass))))
-            .installOn(InstrumentationHelper.getInstance());
+        installSharedTransformer();
+
+        sharedDescriptors.computeIfAbsent(descriptor.targetClass, k -> new CopyOnWriteArrayList<>())
+                         .add(descriptor);
+
+        synchronized (pendingClasses) {
+            pendingClasses.add(descriptor.targetClass);
+            pendingClasses.notifyAll();
+        }
+    }
+
+    private void installSharedTransformer() {
+        if (sharedTransformerInstalled) {
+            return;
+        }
+        synchronized (this) {
+            if (sharedTransformerInstalled) {
+                return;
+            }
+
+            AgentBuilder agentBuilder = new AgentBuilder
+                .Default(new ByteBuddy().with(TypeValidation.DISABLED))
+                .ignore(ElementMatchers.nameStartsWith("org.bithon.shaded.net.bytebuddy."))
+                .disableClassFormatChanges()
+                .with(AgentBuilder.TypeStrategy.Default.REDEFINE)
+                // Registers the transformer as a retransformation capable one, classes are retransformed in batch by the retransformer thread
+                .with(AgentBuilder.RedefinitionStrategy.RETRANSFORMATION)
+                .type(target -> sharedDescriptors.containsKey(target.getTypeName()))
+                .transform((builder, typeDescription, classLoader, javaModule, protectionDomain) -> {
+                    List<AopDescriptor> descriptors = sharedDescriptors.get(typeDescription.getTypeName());
+                    if (descriptors != null) {
+                        // The original class file is always the input of retransformation,
+                        // so all descriptors of the class are installed every time
+                        for (AopDescriptor descriptor : descriptors) {
+                            builder = install(descriptor, builder, classLoader);
+                        }
+                    }
+                    return builder;
+                })
+                .with(TransformationRecorder.INSTANCE.newListener(type -> sharedDescriptors.containsKey(type) ? DYNAMIC_PLUGIN : null));
+
+            // Under UT mode, the debugger might be NULL
+            if (InstrumentationHelper.getAopDebugger() != null) {
+                agentBuilder = agentBuilder.with(InstrumentationHelper.getAopDebugger().withTypes(sharedDescriptors.keySet()));
+            }
+            agentBuilder.installOn(InstrumentationHelper.getInstance());
+
+            Thread retransformer = new Thread(this::retransformLoop, "bithon-dynamic-retransformer");
+            retransformer.setDaemon(true);
+            retransformer.start();
+
+            sharedTransformerInstalled = true;
+        }
+    }
+
+    private void retransformLoop() {
+        while (true) {
+            Set<String> batch;
+            try {
+                synchronized (pendingClasses) {
+                    while (pendingClasses.isEmpty()) {
+                        pendingClasses.wait();
+                    }
+                }
+
+                // Wait for a while so that registrations in a short period,
+                // for example, a bunch of stubs or beans created during the application start, are coalesced into one retransformation
+                Thread.sleep(RETRANSFORM_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            synchronized (pendingClasses) {
+                batch = new HashSet<>(pendingClasses);
+                pendingClasses.clear();
+            }
+            retransform(batch);
+        }
+    }
+
+    private void retransform(Set<String> classNames) {
+        long start = System.currentTimeMillis();
+
+        Instrumentation instrumentation = InstrumentationHelper.getInstance();
+
+        // One scan of loaded classes for all pending classes.
+        // Classes that have not been loaded yet are instrumented by the shared transformer when they're loaded.
+        List<Class<?>> classes = new ArrayList<>();
+        for (Class<?> clazz : instrumentation.getAllLoadedClasses()) {
+            if (classNames.contains(clazz.getName()) && instrumentation.isModifiableClass(clazz)) {
+                classes.add(clazz);
+            }
+        }
+        if (classes.isEmpty()) {
+            return;
+        }
+
+        try {
+            instrumentation.retransformClasses(classes.toArray(new Class<?>[0]));
+        } catch (Throwable e) {
+            // If retransformation fails, none of the given classes is retransformed.
+            // Retry them one by one so that one failed class does not affect others
+            LOG.warn("Failed to retransform {} classes in batch, retry them one by one: {}", classes.size(), e.getMessage());
+            for (Class<?> clazz : classes) {
+                try {
+                    instrumentation.retransformClasses(clazz);
+                } catch (Throwable t) {
+                    LOG.error(String.format(Locale.ENGLISH, "Failed to retransform class [%s]", clazz.getName()), t);
+                }
+            }
+        }
+
+        LOG.info("Retransformed {} classes for dynamic interceptors in {}ms", classes.size(), System.currentTimeMillis() - start);
     }
 
     /**
@@ -25,7 +25,10 @@ import org.bithon.agent.instrumentation.aop.advice.AroundAdvice;
 import org.bithon.agent.instrumentation.aop.advice.AroundConstructorAdvice;
 import org.bithon.agent.instrumentation.aop.advice.BeforeAdvice;
 import org.bithon.agent.instrumentation.aop.advice.BeforeConstructorAdvice;
+import org.bithon.agent.instrumentation.aop.advice.LightweightAroundAdvice;
+import org.bithon.agent.instrumentation.aop.advice.LightweightBeforeAdvice;
 import org.bithon.agent.instrumentation.aop.advice.ReplacementAdvice;
+import org.bithon.agent.instrumentation.aop.interceptor.AdviceOptionsResolver;
 import org.bithon.agent.instrumentation.aop.interceptor.InterceptorManager;
 import org.bithon.agent.instrumentation.aop.interceptor.descriptor.Descriptors;
 import org.bithon.agent.instrumentation.aop.interceptor.descriptor.MethodPointCutDescriptor;
@@ -51,7 +54,10 @@ import org.bithon.shaded.net.bytebuddy.utility.JavaModule;
 import java.lang.instrument.Instrumentation;
 import java.security.ProtectionDomain;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -143,9 +149,31 @@ public class InterceptorInstaller {
             agentBuilder = agentBuilder.with(InstrumentationHelper.getErrorHandler());
         }
 
+        Map<String, String[]> pluginsOfType = getPluginsOfType();
+        agentBuilder = agentBuilder.with(TransformationRecorder.INSTANCE.newListener(pluginsOfType::get));
+
         agentBuilder.installOn(inst);
     }
 
+    /**
+     * @return key - target type, val - plugins that declare interceptors on the type
+     */
+    private Map<String, String[]> getPluginsOfType() {
+        Map<String, String[]> pluginsOfType = new HashMap<>();
+        for (Descriptors.Descriptor descriptor : descriptors.getAllDescriptor()) {
+            Set<String> plugins = new LinkedHashSet<>();
+            for (Descriptors.MethodPointCuts mp : descriptor.getMethodPointCuts()) {
+                plugins.add(mp.getPlugin());
+            }
+            if (plugins.isEmpty()) {
+                // The type is only declared to be transformed to IBithonObject
+                plugins.add("<class-descriptor>");
+            }
+            pluginsOfType.put(descriptor.getTargetClass(), plugins.toArray(new String[0]));
+        }
+        return pluginsOfType;
+    }
+
     public static class Installer {
         private final TypeDescription typeDescription;
         private final ClassLoader classLoader;
@@ -191,11 +219,16 @@ public class InterceptorInstaller {
             switch (descriptor.getInterceptorType()) {
                 case BEFORE: {
                     Class<?> adviceClazz = descriptor.getMethodType() == MethodType.NON_CONSTRUCTOR ? BeforeAdvice.class : BeforeConstructorAdvice.class;
-                    builder = builder.visit(newInstaller(Advice.withCustomMapping()
-                                                               .bind(AdviceAnnotation.InterceptorName.class, new AdviceAnnotation.InterceptorNameResolver(Advice.OffsetMapping.Sort.ENTER, supplierIndex, descriptor.getInterceptorClassName()))
-                                                               .bind(AdviceAnnotation.InterceptorIndex.class, indexResolver)
-                                                               .to(adviceClazz),
-                                                         descriptor.getMethodMatcher()));
+                    Advice.WithCustomMapping mapping = Advice.withCustomMapping()
+                                                             .bind(AdviceAnnotation.InterceptorName.class, new AdviceAnnotation.InterceptorNameResolver(Advice.OffsetMapping.Sort.ENTER, supplierIndex, descriptor.getInterceptorClassName()))
+                                                             .bind(AdviceAnnotation.InterceptorIndex.class, indexResolver);
+
+                    AdviceOptionsResolver.Options options = getAdviceOptions(descriptor);
+                    if (options != null) {
+                        adviceClazz = LightweightBeforeAdvice.class;
+                        mapping = bindAdviceOptions(mapping, options);
+                    }
+                    builder = builder.visit(newInstaller(mapping.to(adviceClazz), descriptor.getMethodMatcher()));
 
                     break;
                 }
@@ -211,12 +244,16 @@ public class InterceptorInstaller {
                 }
                 case AROUND: {
                     Class<?> adviceClazz = descriptor.getMethodType() == MethodType.NON_CONSTRUCTOR ? AroundAdvice.class : AroundConstructorAdvice.class;
-
-                    builder = builder.visit(newInstaller(Advice.withCustomMapping()
-                                                               .bind(AdviceAnnotation.InterceptorName.class, new AdviceAnnotation.InterceptorNameResolver(Advice.OffsetMapping.Sort.EXIT, supplierIndex, descriptor.getInterceptorClassName()))
-                                                               .bind(AdviceAnnotation.InterceptorIndex.class, indexResolver)
-                                                               .to(adviceClazz),
-                                                         descriptor.getMethodMatcher()));
+                    Advice.WithCustomMapping mapping = Advice.withCustomMapping()
+                                                             .bind(AdviceAnnotation.InterceptorName.class, new AdviceAnnotation.InterceptorNameResolver(Advice.OffsetMapping.Sort.EXIT, supplierIndex, descriptor.getInterceptorClassName()))
+                                                             .bind(AdviceAnnotation.InterceptorIndex.class, indexResolver);
+
+                    AdviceOptionsResolver.Options options = getAdviceOptions(descriptor);
+                    if (options != null) {
+                        adviceClazz = LightweightAroundAdvice.class;
+                        mapping = bindAdviceOptions(mapping, options);
+                    }
+                    builder = builder.visit(newInstaller(mapping.to(adviceClazz), descriptor.getMethodMatcher()));
                     break;
                 }
 
@@ -240,6 +277,24 @@ public class InterceptorInstaller {
                     break;
             }
         }
+
+        /**
+         * @return null if the default advice should be used
+         */
+        private AdviceOptionsResolver.Options getAdviceOptions(MethodPointCutDescriptor descriptor) {
+            AdviceOptionsResolver.Options options = AdviceOptionsResolver.INSTANCE.resolve(descriptor.getInterceptorClassName());
+            if (options != null && descriptor.getMethodType() != MethodType.NON_CONSTRUCTOR) {
+                log.warn("AdviceOptions of interceptor [{}] is ignored on constructors", descriptor.getInterceptorClassName());
+                return null;
+            }
+            return options;
+        }
+
+        private Advice.WithCustomMapping bindAdviceOptions(Advice.WithCustomMapping mapping, AdviceOptionsResolver.Options options) {
+            return mapping.bind(AdviceAnnotation.ReuseContext.class, options.isReuseContext())
+                          .bind(AdviceAnnotation.ArgumentCount.class, options.getArgumentCount())
+                          .bind(new AdviceAnnotation.SelectedArgumentFactory(options.getArguments()));
+        }
     }
 
     private static String getSimpleClassName(String qualifiedClassName) {
@@ -0,0 +1,191 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.instrumentation.aop.interceptor.installer;
+
+import org.bithon.shaded.net.bytebuddy.agent.builder.AgentBuilder;
+import org.bithon.shaded.net.bytebuddy.utility.JavaModule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Records how much time each plugin spends on transforming classes,
+ * so that the class loading overhead introduced by the agent can be measured.
+ * <p>
+ * The time of a type is measured from the discovery of the type to the completion of the transformation,
+ * which includes the matching, the bytecode weaving and the listeners.
+ * If a type is transformed by multiple plugins, the time is split evenly among them,
+ * so that the sum of the time of all plugins is the time spent on transforming all types.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class TransformationRecorder {
+
+    public static final TransformationRecorder INSTANCE = new TransformationRecorder();
+
+    public static class PluginTransformation {
+        private final String plugin;
+        private final AtomicLong typeCount = new AtomicLong();
+        private final AtomicLong errorCount = new AtomicLong();
+        private final AtomicLong totalTimeNanos = new AtomicLong();
+        private final AtomicLong maxTimeNanos = new AtomicLong();
+
+        PluginTransformation(String plugin) {
+            this.plugin = plugin;
+        }
+
+        public String getPlugin() {
+            return plugin;
+        }
+
+        public long getTypeCount() {
+            return typeCount.get();
+        }
+
+        public long getErrorCount() {
+            return errorCount.get();
+        }
+
+        public long getTotalTimeNanos() {
+            return totalTimeNanos.get();
+        }
+
+        public long getMaxTimeNanos() {
+            return maxTimeNanos.get();
+        }
+
+        void record(long nanos) {
+            typeCount.incrementAndGet();
+            totalTimeNanos.addAndGet(nanos);
+
+            long max = maxTimeNanos.get();
+            while (nanos > max && !maxTimeNanos.compareAndSet(max, nanos)) {
+                max = maxTimeNanos.get();
+            }
+        }
+    }
+
+    /**
+     * key - plugin name
+     */
+    private final Map<String, PluginTransformation> transformations = new ConcurrentHashMap<>();
+
+    /**
+     * A snapshot of the transformation statistics of all plugins
+     */
+    public List<PluginTransformation> getPluginTransformations() {
+        return new ArrayList<>(transformations.values());
+    }
+
+    /**
+     * @param pluginsOfType returns the plugins that transform the given type, or null if the type is not transformed by the agent
+     */
+    public AgentBuilder.Listener newListener(Function<String, String[]> pluginsOfType) {
+        return new TimingListener(pluginsOfType);
+    }
+
+    private PluginTransformation get(String plugin) {
+        return transformations.computeIfAbsent(plugin, PluginTransformation::new);
+    }
+
+    /**
+     * Types might be discovered in a nested way on one thread,
+     * for example, loading a class during the transformation of another class
+     */
+    private static class TimerStack {
+        private String[] types = new String[8];
+        private long[] startTimes = new long[8];
+        private int depth;
+
+        void push(String type, long startTime) {
+            if (depth == types.length) {
+                String[] newTypes = new String[depth * 2];
+                System.arraycopy(types, 0, newTypes, 0, depth);
+                types = newTypes;
+
+                long[] newStartTimes = new long[depth * 2];
+                System.arraycopy(startTimes, 0, newStartTimes, 0, depth);
+                startTimes = newStartTimes;
+            }
+            types[depth] = type;
+            startTimes[depth] = startTime;
+            depth++;
+        }
+
+        /**
+         * @return the start time of the given type, or {@link Long#MIN_VALUE} if the given type is not on the top
+         */
+        long pop(String type) {
+            if (depth == 0 || !type.equals(types[depth - 1])) {
+                return Long.MIN_VALUE;
+            }
+            depth--;
+            types[depth] = null;
+            return startTimes[depth];
+        }
+    }
+
+    private class TimingListener extends AgentBuilder.Listener.Adapter {
+        private final Function<String, String[]> pluginsOfType;
+        private final ThreadLocal<TimerStack> timers = ThreadLocal.withInitial(TimerStack::new);
+
+        private TimingListener(Function<String, String[]> pluginsOfType) {
+            this.pluginsOfType = pluginsOfType;
+        }
+
+        @Override
+        public void onDiscovery(String typeName, ClassLoader classLoader, JavaModule module, boolean loaded) {
+            if (pluginsOfType.apply(typeName) != null) {
+                timers.get().push(typeName, System.nanoTime());
+            }
+        }
+
+        @Override
+        public void onError(String typeName, ClassLoader classLoader, JavaModule module, boolean loaded, Throwable throwable) {
+            String[] plugins = pluginsOfType.apply(typeName);
+            if (plugins != null) {
+                for (String plugin : plugins) {
+                    get(plugin).errorCount.incrementAndGet();
+                }
+            }
+        }
+
+        @Override
+        public void onComplete(String typeName, ClassLoader classLoader, JavaModule module, boolean loaded) {
+            String[] plugins = pluginsOfType.apply(typeName);
+            if (plugins == null) {
+                return;
+            }
+            long startTime = timers.get().pop(typeName);
+            if (startTime == Long.MIN_VALUE) {
+                return;
+            }
+
+            // Split the time among plugins, the remainder is counted towards the last one
+            long elapsed = System.nanoTime() - startTime;
+            long share = elapsed / plugins.length;
+            for (int i = 0; i < plugins.length - 1; i++) {
+                get(plugins[i]).record(share);
+            }
+            get(plugins[plugins.length - 1]).record(elapsed - share * (plugins.length - 1));
+        }
+    }
+}
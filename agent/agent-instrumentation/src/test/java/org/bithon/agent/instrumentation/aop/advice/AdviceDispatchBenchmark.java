@@ -0,0 +1,147 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.instrumentation.aop.advice;
+
+import org.bithon.agent.instrumentation.aop.context.AopContext;
+import org.bithon.agent.instrumentation.aop.context.AopContextImpl;
+import org.bithon.agent.instrumentation.aop.context.AopContextPool;
+import org.bithon.agent.instrumentation.aop.interceptor.InterceptionDecision;
+import org.bithon.agent.instrumentation.aop.interceptor.declaration.AroundInterceptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.CompilerControl;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-call cost of dispatching a no-op {@link AroundInterceptor}
+ * by the code that {@link AroundAdvice} injects into target methods
+ * against the code that {@link LightweightAroundAdvice} injects.
+ * <p>
+ * Each benchmark method replays what the advice does around a method with 3 arguments, of which the interceptor reads only the first one.
+ * The interceptor is not inlined, just like the one acquired from the {@link org.bithon.agent.instrumentation.aop.interceptor.InterceptorManager},
+ * so that the context escapes and is really allocated on the default path.
+ * <p>
+ * Run {@link #main(String[])} to measure at 1, 4, 16 and 64 threads, the GC profiler reports the allocation per call.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class AdviceDispatchBenchmark {
+
+    private final AroundInterceptor interceptor = new NoopInterceptor();
+    private final Object target = new Object();
+    private final String arg0 = "select 1";
+    private final Integer arg1 = 1;
+    private final Long arg2 = 2L;
+    private final Object returning = new Object();
+
+    /**
+     * Same as {@link AroundAdvice}
+     */
+    @Benchmark
+    public Object allArguments() throws Exception {
+        Object[] args = new Object[]{arg0, arg1, arg2};
+        AopContextImpl aopContext = new AopContextImpl(AdviceDispatchBenchmark.class, "execute", target, args);
+        if (interceptor.before(aopContext) == InterceptionDecision.SKIP_LEAVE) {
+            return null;
+        }
+        aopContext.onBeforeTargetMethodInvocation();
+
+        aopContext.onAfterTargetMethodInvocation();
+        aopContext.setReturning(returning);
+        interceptor.after(aopContext);
+        return aopContext.getReturning();
+    }
+
+    /**
+     * Same as {@link LightweightAroundAdvice} with {@code @AdviceOptions(arguments = {0})}
+     */
+    @Benchmark
+    public Object selectedArguments() throws Exception {
+        AopContextImpl aopContext = new AopContextImpl(AdviceDispatchBenchmark.class, "execute", target, new Object[1]);
+        aopContext.setArguments(1, arg0, null, null, null);
+        if (interceptor.before(aopContext) == InterceptionDecision.SKIP_LEAVE) {
+            return null;
+        }
+        aopContext.onBeforeTargetMethodInvocation();
+
+        aopContext.onAfterTargetMethodInvocation();
+        aopContext.setReturning(returning);
+        interceptor.after(aopContext);
+        return aopContext.getReturning();
+    }
+
+    /**
+     * Same as {@link LightweightAroundAdvice} with {@code @AdviceOptions(arguments = {0}, reuseContext = true)}
+     */
+    @Benchmark
+    public Object selectedArgumentsWithReusedContext() throws Exception {
+        AopContextImpl aopContext = AopContextPool.acquire(AdviceDispatchBenchmark.class, "execute", target, 1);
+        aopContext.setArguments(1, arg0, null, null, null);
+        if (interceptor.before(aopContext) == InterceptionDecision.SKIP_LEAVE) {
+            AopContextPool.release(aopContext);
+            return null;
+        }
+        aopContext.onBeforeTargetMethodInvocation();
+
+        aopContext.onAfterTargetMethodInvocation();
+        aopContext.setReturning(returning);
+        interceptor.after(aopContext);
+        Object ret = aopContext.getReturning();
+        AopContextPool.release(aopContext);
+        return ret;
+    }
+
+    static class NoopInterceptor extends AroundInterceptor {
+        @CompilerControl(CompilerControl.Mode.DONT_INLINE)
+        @Override
+        public InterceptionDecision before(AopContext aopContext) {
+            return InterceptionDecision.CONTINUE;
+        }
+
+        @CompilerControl(CompilerControl.Mode.DONT_INLINE)
+        @Override
+        public void after(AopContext aopContext) {
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 4, 16, 64}) {
+            Options opt = new OptionsBuilder()
+                .include(AdviceDispatchBenchmark.class.getSimpleName())
+                .threads(threads)
+                .forks(1)
+                .warmupIterations(2)
+                .measurementIterations(5)
+                .addProfiler("gc")
+                .build();
+
+            new Runner(opt).run();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.instrumentation.aop.context;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class AopContextPoolTest {
+
+    @Test
+    public void testReuse() {
+        AopContextImpl ctx = AopContextPool.acquire(String.class, "trim", "a", 2);
+        ctx.setArguments(2, "x", 1, "ignored", "ignored");
+        Assertions.assertEquals(String.class, ctx.getTargetClass());
+        Assertions.assertEquals("trim", ctx.getMethod());
+        Assertions.assertEquals("a", ctx.getTarget());
+        Assertions.assertEquals("x", ctx.getArgAs(0));
+        Assertions.assertEquals(1, (int) ctx.getArgAs(1));
+        // Same length as the non-pooled context
+        Assertions.assertEquals(2, ctx.getArgs().length);
+        ctx.setReturning("b");
+        AopContextPool.release(ctx);
+
+        // All references are cleared after release
+        Assertions.assertNull(ctx.getTarget());
+        Assertions.assertNull(ctx.getReturning());
+        Assertions.assertNull(ctx.getArgs()[0]);
+
+        AopContextImpl reused = AopContextPool.acquire(Integer.class, "intValue", 1, 0);
+        Assertions.assertSame(ctx, reused);
+        Assertions.assertEquals(0, reused.getArgs().length);
+        AopContextPool.release(reused);
+
+        reused = AopContextPool.acquire(String.class, "substring", "abc", 3);
+        Assertions.assertSame(ctx, reused);
+        Assertions.assertEquals(3, reused.getArgs().length);
+        AopContextPool.release(reused);
+    }
+
+    @Test
+    public void testNestedInvocations() {
+        AopContextImpl outer = AopContextPool.acquire(String.class, "outer", null, 0);
+        AopContextImpl inner = AopContextPool.acquire(String.class, "inner", null, 0);
+        Assertions.assertNotSame(outer, inner);
+        Assertions.assertEquals("outer", outer.getMethod());
+
+        AopContextPool.release(inner);
+        AopContextPool.release(outer);
+    }
+
+    @Test
+    public void testTooDeep() {
+        AopContextImpl[] contexts = new AopContextImpl[AopContextPool.MAX_DEPTH + 1];
+        for (int i = 0; i < contexts.length; i++) {
+            contexts[i] = AopContextPool.acquire(String.class, "m" + i, null, 1);
+        }
+        // Falls back to a new object
+        Assertions.assertFalse(contexts[AopContextPool.MAX_DEPTH] instanceof AopContextPool.PooledAopContext);
+        Assertions.assertEquals(1, contexts[AopContextPool.MAX_DEPTH].getArgs().length);
+
+        // Release the outermost one only, which also drops all the inner ones
+        AopContextPool.release(contexts[0]);
+        Assertions.assertSame(contexts[0], AopContextPool.acquire(String.class, "m", null, 0));
+        AopContextPool.release(contexts[0]);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.instrumentation.aop.interceptor;
+
+import org.bithon.agent.instrumentation.aop.interceptor.declaration.AdviceOptions;
+import org.bithon.agent.instrumentation.aop.interceptor.declaration.AroundInterceptor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class AdviceOptionsResolverTest {
+
+    @AdviceOptions(arguments = {2, 0}, reuseContext = true)
+    static class OptimizedInterceptor extends AroundInterceptor {
+    }
+
+    @AdviceOptions
+    static class NoArgumentInterceptor extends AroundInterceptor {
+    }
+
+    @AdviceOptions(arguments = {AdviceOptions.MAX_ARGUMENTS})
+    static class InvalidInterceptor extends AroundInterceptor {
+    }
+
+    static class DefaultInterceptor extends AroundInterceptor {
+    }
+
+    private final AdviceOptionsResolver resolver = new AdviceOptionsResolver(AdviceOptionsResolverTest.class.getClassLoader());
+
+    @Test
+    public void testResolve() {
+        AdviceOptionsResolver.Options options = resolver.resolve(OptimizedInterceptor.class.getName());
+        Assertions.assertNotNull(options);
+        Assertions.assertArrayEquals(new int[]{2, 0}, options.getArguments());
+        Assertions.assertEquals(3, options.getArgumentCount());
+        Assertions.assertTrue(options.isReuseContext());
+
+        options = resolver.resolve(NoArgumentInterceptor.class.getName());
+        Assertions.assertNotNull(options);
+        Assertions.assertEquals(0, options.getArgumentCount());
+        Assertions.assertFalse(options.isReuseContext());
+    }
+
+    @Test
+    public void testNotDeclared() {
+        Assertions.assertNull(resolver.resolve(DefaultInterceptor.class.getName()));
+        Assertions.assertNull(resolver.resolve(InvalidInterceptor.class.getName()));
+        Assertions.assertNull(resolver.resolve("org.bithon.NotExist"));
+    }
+}
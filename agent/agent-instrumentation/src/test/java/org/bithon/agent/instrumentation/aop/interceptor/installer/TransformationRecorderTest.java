@@ -0,0 +1,92 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.instrumentation.aop.interceptor.installer;
+
+import org.bithon.shaded.net.bytebuddy.agent.builder.AgentBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class TransformationRecorderTest {
+
+    @Test
+    public void testNestedTransformation() {
+        Map<String, String[]> pluginsOfType = new HashMap<>();
+        pluginsOfType.put("a.A", new String[]{"p1", "p2"});
+        pluginsOfType.put("b.B", new String[]{"p2"});
+
+        TransformationRecorder recorder = new TransformationRecorder();
+        AgentBuilder.Listener listener = recorder.newListener(pluginsOfType::get);
+
+        listener.onDiscovery("a.A", null, null, false);
+        // Types that are not transformed are ignored
+        listener.onDiscovery("c.C", null, null, false);
+        listener.onComplete("c.C", null, null, false);
+        // B is loaded during the transformation of A
+        listener.onDiscovery("b.B", null, null, false);
+        listener.onError("b.B", null, null, false, new RuntimeException());
+        listener.onComplete("b.B", null, null, false);
+        listener.onComplete("a.A", null, null, false);
+
+        Map<String, TransformationRecorder.PluginTransformation> stats = new HashMap<>();
+        recorder.getPluginTransformations().forEach((stat) -> stats.put(stat.getPlugin(), stat));
+        Assertions.assertEquals(2, stats.size());
+
+        Assertions.assertEquals(1, stats.get("p1").getTypeCount());
+        Assertions.assertEquals(0, stats.get("p1").getErrorCount());
+
+        Assertions.assertEquals(2, stats.get("p2").getTypeCount());
+        Assertions.assertEquals(1, stats.get("p2").getErrorCount());
+
+        // A's time includes B's, and p2 takes half of A's time plus B's time
+        Assertions.assertTrue(stats.get("p1").getTotalTimeNanos() <= stats.get("p2").getTotalTimeNanos());
+    }
+
+    @Test
+    public void testTimeOfSharedTypeIsSplit() throws InterruptedException {
+        Map<String, String[]> pluginsOfType = new HashMap<>();
+        pluginsOfType.put("a.A", new String[]{"p1", "p2", "p3"});
+
+        TransformationRecorder recorder = new TransformationRecorder();
+        AgentBuilder.Listener listener = recorder.newListener(pluginsOfType::get);
+
+        long start = System.nanoTime();
+        listener.onDiscovery("a.A", null, null, false);
+        Thread.sleep(5);
+        listener.onComplete("a.A", null, null, false);
+        long elapsed = System.nanoTime() - start;
+
+        Map<String, TransformationRecorder.PluginTransformation> stats = new HashMap<>();
+        recorder.getPluginTransformations().forEach((stat) -> stats.put(stat.getPlugin(), stat));
+
+        long p1 = stats.get("p1").getTotalTimeNanos();
+        long p2 = stats.get("p2").getTotalTimeNanos();
+        long p3 = stats.get("p3").getTotalTimeNanos();
+        Assertions.assertEquals(p1, p2);
+        Assertions.assertTrue(p3 - p1 >= 0 && p3 - p1 < 3);
+
+        // The time is not counted multiple times
+        Assertions.assertTrue(p1 + p2 + p3 <= elapsed);
+        Assertions.assertTrue(p1 + p2 + p3 >= 5_000_000);
+        Assertions.assertEquals(p1, stats.get("p1").getMaxTimeNanos());
+    }
+}
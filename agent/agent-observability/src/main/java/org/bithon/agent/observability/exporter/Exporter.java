@@ -22,6 +22,7 @@ import org.bithon.agent.observability.exporter.config.ExporterConfig;
 import org.bithon.agent.observability.exporter.task.BlockingQueue;
 import org.bithon.agent.observability.exporter.task.ExportTask;
 import org.bithon.agent.observability.exporter.task.IThreadSafeQueue;
+import org.bithon.agent.observability.exporter.task.RingBufferQueue;
 import org.bithon.component.commons.logging.ILogAdaptor;
 import org.bithon.component.commons.logging.LoggerFactory;
 
@@ -111,6 +112,9 @@ public class Exporter {
     }
 
     private IThreadSafeQueue createQueue(ExporterConfig config) {
+        if (ExporterConfig.QueueType.RING_BUFFER.equals(config.getQueueType())) {
+            return new RingBufferQueue(config.getQueueSize());
+        }
         return new BlockingQueue(config.getQueueSize());
     }
 
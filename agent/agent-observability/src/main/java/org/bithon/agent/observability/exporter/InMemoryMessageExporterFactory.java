@@ -97,7 +97,8 @@ public class InMemoryMessageExporterFactory implements IMessageExporterFactory {
 
         @Override
         public Object from(ITraceSpan span) {
-            return span;
+            // The span object is reused after it's reported in compact span mode
+            return span.snapshot();
         }
 
         @Override
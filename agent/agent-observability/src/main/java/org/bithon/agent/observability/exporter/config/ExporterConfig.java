@@ -33,6 +33,20 @@ public class ExporterConfig {
         DISCARD_OLDEST
     }
 
+    public enum QueueType {
+        /**
+         * Backed by {@link java.util.concurrent.LinkedBlockingQueue}
+         */
+        BLOCKING,
+
+        /**
+         * A preallocated lock-free ring buffer.
+         * Reduces contention and allocation when lots of application threads export messages at the same time.
+         * NOTE: the {@link #queueSize} is rounded up to the next power of 2 for this type.
+         */
+        RING_BUFFER
+    }
+
     /**
      * The upper limit of the message queue size.
      * Considering to set it to a proper size that matches the concurrency of your target application.
@@ -49,6 +63,8 @@ public class ExporterConfig {
 
     private QueueFullStrategy queueFullStrategy = QueueFullStrategy.DISCARD_OLDEST;
 
+    private QueueType queueType = QueueType.BLOCKING;
+
     private String servers;
 
     private RpcClientConfig client;
@@ -113,4 +129,12 @@ public class ExporterConfig {
     public void setQueueFullStrategy(QueueFullStrategy queueFullStrategy) {
         this.queueFullStrategy = queueFullStrategy;
     }
+
+    public QueueType getQueueType() {
+        return queueType;
+    }
+
+    public void setQueueType(QueueType queueType) {
+        this.queueType = queueType;
+    }
 }
@@ -17,10 +17,12 @@
 package org.bithon.agent.observability.exporter.task;
 
 import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A wrapper of underlying message queue to take a batch everytime
@@ -33,7 +35,12 @@ public class BatchMessageQueue implements IThreadSafeQueue {
     private final IThreadSafeQueue delegate;
 
     private final int maxBatchSize;
-    private List<Object> toBeTaken;
+
+    /**
+     * Entries that have been drained from the underlying queue but not yet returned to the caller.
+     * Only accessed by the consumer thread, and is reused across {@link #take(long)} calls.
+     */
+    private final ArrayDeque<Object> drained;
 
     public int getMaxBatchSize() {
         return maxBatchSize;
@@ -42,6 +49,7 @@ public class BatchMessageQueue implements IThreadSafeQueue {
     public BatchMessageQueue(IThreadSafeQueue delegate, int batchSize) {
         this.delegate = delegate;
         this.maxBatchSize = batchSize;
+        this.drained = new ArrayDeque<>(batchSize);
     }
 
     @Override
@@ -68,7 +76,7 @@ public class BatchMessageQueue implements IThreadSafeQueue {
 
     @Override
     public long size() {
-        return delegate.size();
+        return delegate.size() + drained.size();
     }
 
     @Override
@@ -79,54 +87,70 @@ public class BatchMessageQueue implements IThreadSafeQueue {
     /**
      * Wait for at most given milliseconds to take a batch of elements from the current queue.
      * If the queue does not have enough elements, it will wait until the timeout is reached.
+     * <p>
+     * Available entries are drained from the underlying queue in one batch instead of one by one.
+     * If the first entry is a list that exactly fits the batch size, it's returned as is without copying.
      */
     @Override
+    @SuppressWarnings("unchecked")
     public Object take(long timeout) {
-        List<Object> returning = new ArrayList<>(this.maxBatchSize);
+        List<Object> returning = null;
 
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
         do {
-            long start = System.currentTimeMillis();
-            takeElements(returning, timeout);
-            timeout -= System.currentTimeMillis() - start;
-        } while (returning.size() < maxBatchSize && timeout > 0);
+            if (drained.isEmpty() && !fill(deadline)) {
+                // We don't get any item from the queue after the timeout
+                break;
+            }
 
-        return returning;
+            List<Object> head = (List<Object>) drained.pollFirst();
+            if (returning == null && head.size() == maxBatchSize) {
+                return head;
+            }
+            if (returning == null) {
+                returning = new ArrayList<>(this.maxBatchSize);
+            }
+
+            int fetchedSize = Math.min(this.maxBatchSize - returning.size(), head.size());
+            returning.addAll(fetchedSize == head.size() ? head : head.subList(0, fetchedSize));
+            if (fetchedSize < head.size()) {
+                // We still have items left in the 'taken' list, keep it for next time
+                drained.addFirst(head.subList(fetchedSize, head.size()));
+            }
+        } while (returning.size() < maxBatchSize && System.nanoTime() < deadline);
+
+        return returning == null ? Collections.emptyList() : returning;
     }
 
     @Override
     public Object pop() {
+        // Called by producers under DISCARD_OLDEST strategy, only the thread-safe delegation can be touched
         return delegate.pop();
     }
 
     /**
-     * Fetch items from underlying queue in given timeout
+     * Fetch entries from underlying queue in given deadline
+     *
+     * @return true if there are entries fetched
      */
-    @SuppressWarnings("unchecked")
-    private void takeElements(List<Object> returning, long timeout) {
-        if (toBeTaken == null) {
-            // Only take a list item from the queue if the previous 'take' process does not leave any items left
-            try {
-                toBeTaken = (List<Object>) delegate.take(timeout);
-            } catch (InterruptedException ignored) {
-            }
-        }
-
-        if (toBeTaken == null) {
-            // We don't get any item from the queue after the timeout
-            return;
+    private boolean fill(long deadline) {
+        if (delegate.drainTo(drained, maxBatchSize) > 0) {
+            return true;
         }
 
-        int maxFetchableSize = this.maxBatchSize - returning.size();
-        int fetchedSize = Math.min(maxFetchableSize, toBeTaken.size());
-        for (int i = 0; i < fetchedSize; i++) {
-            returning.add(toBeTaken.get(i));
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            return false;
         }
-
-        if (fetchedSize < toBeTaken.size()) {
-            // We still have items left in the 'taken' list, keep it for next time
-            toBeTaken = toBeTaken.subList(fetchedSize, toBeTaken.size());
-        } else {
-            toBeTaken = null;
+        try {
+            // Round up so that we don't return before the deadline
+            Object entry = delegate.take((remaining + 999_999) / 1_000_000);
+            if (entry != null) {
+                drained.addLast(entry);
+                return true;
+            }
+        } catch (InterruptedException ignored) {
         }
+        return false;
     }
 }
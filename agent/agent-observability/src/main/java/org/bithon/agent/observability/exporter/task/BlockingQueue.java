@@ -17,6 +17,7 @@
 package org.bithon.agent.observability.exporter.task;
 
 import java.time.Duration;
+import java.util.Collection;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -66,4 +67,9 @@ public class BlockingQueue implements IThreadSafeQueue {
     public Object pop() {
         return queue.poll();
     }
+
+    @Override
+    public int drainTo(Collection<Object> sink, int maxElements) {
+        return queue.drainTo(sink, maxElements);
+    }
 }
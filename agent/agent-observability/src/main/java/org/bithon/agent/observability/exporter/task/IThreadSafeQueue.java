@@ -17,6 +17,7 @@
 package org.bithon.agent.observability.exporter.task;
 
 import java.time.Duration;
+import java.util.Collection;
 
 /**
  * @author frankchen
@@ -48,4 +49,17 @@ public interface IThreadSafeQueue {
      * Pop the first entry from the queue without waiting
      */
     Object pop();
+
+    /**
+     * Move at most given number of elements from the queue into the sink without waiting.
+     *
+     * @return the number of elements that have been moved
+     */
+    default int drainTo(Collection<Object> sink, int maxElements) {
+        int n = 0;
+        for (Object e; n < maxElements && (e = pop()) != null; n++) {
+            sink.add(e);
+        }
+        return n;
+    }
 }
@@ -0,0 +1,241 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.observability.exporter.task;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, preallocated, lock-free queue based on a ring buffer.
+ * <p>
+ * Application threads are the producers and the export thread is the main consumer.
+ * However, under {@link org.bithon.agent.observability.exporter.config.ExporterConfig.QueueFullStrategy#DISCARD_OLDEST},
+ * producers also {@link #pop()} from the queue to make room for new elements,
+ * so the consumer side is also protected by CAS instead of assuming a single consumer.
+ * <p>
+ * Each slot carries a sequence number (see Dmitry Vyukov's bounded MPMC queue) so that
+ * a producer or consumer knows whether the slot is ready for it without taking any lock.
+ * No node is allocated on {@link #offer(Object)}.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class RingBufferQueue implements IThreadSafeQueue {
+
+    /**
+     * How long the consumer parks at most each time when the queue is empty.
+     * Producers unpark the waiting consumer, this is only a safe-guard against a missed signal.
+     */
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<Object> elements;
+    private final AtomicLongArray sequences;
+
+    private final PaddedAtomicLong head = new PaddedAtomicLong();
+    private final PaddedAtomicLong tail = new PaddedAtomicLong();
+
+    /**
+     * The thread that is waiting in {@link #take(long)}, if any
+     */
+    private volatile Thread waiter;
+
+    public RingBufferQueue() {
+        this(4096);
+    }
+
+    /**
+     * @param capacity the capacity will be rounded up to the next power of 2
+     */
+    public RingBufferQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+        this.capacity = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.elements = new AtomicReferenceArray<>(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            this.sequences.set(i, i);
+        }
+    }
+
+    @Override
+    public boolean offer(Object object) {
+        if (object == null) {
+            return true;
+        }
+
+        while (true) {
+            long pos = tail.get();
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    elements.lazySet(index, object);
+                    // Publish the slot to the consumer
+                    sequences.set(index, pos + 1);
+                    signalWaiter();
+                    return true;
+                }
+            } else if (diff < 0) {
+                // The slot has not been consumed in the previous round, the queue is full
+                return false;
+            }
+            // else another producer has claimed this slot, retry
+        }
+    }
+
+    @Override
+    public boolean offer(Object object, Duration wait) throws InterruptedException {
+        long deadline = System.nanoTime() + wait.toNanos();
+        while (!offer(object)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(Math.min(remaining, MAX_PARK_NANOS));
+        }
+        return true;
+    }
+
+    @Override
+    public long size() {
+        // Read head first so that the result is never negative
+        long h = head.get();
+        long t = tail.get();
+        return Math.max(0, Math.min(t - h, capacity));
+    }
+
+    @Override
+    public long capacity() {
+        return capacity;
+    }
+
+    @Override
+    public Object take(long timeout) throws InterruptedException {
+        Object e = pop();
+        if (e != null || timeout <= 0) {
+            return e;
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        Thread current = Thread.currentThread();
+        while (true) {
+            waiter = current;
+            try {
+                // Re-check after registration so that a signal sent before the registration is not lost
+                e = pop();
+                if (e != null) {
+                    return e;
+                }
+
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                LockSupport.parkNanos(this, Math.min(remaining, MAX_PARK_NANOS));
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            } finally {
+                waiter = null;
+            }
+        }
+    }
+
+    @Override
+    public Object pop() {
+        while (true) {
+            long pos = head.get();
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    return release(index, pos);
+                }
+            } else if (diff < 0) {
+                // Empty, or the producer that has claimed this slot has not published it yet
+                return null;
+            }
+            // else another consumer has taken this slot, retry
+        }
+    }
+
+    /**
+     * Drain available elements in one pass without waiting.
+     * Consecutive published slots are claimed with a single CAS on the head.
+     */
+    @Override
+    public int drainTo(Collection<Object> sink, int maxElements) {
+        int drained = 0;
+        while (drained < maxElements) {
+            long pos = head.get();
+
+            // Find how many consecutive slots have been published since the head
+            int n = 0;
+            int limit = maxElements - drained;
+            while (n < limit && sequences.get((int) ((pos + n) & mask)) == pos + n + 1) {
+                n++;
+            }
+            if (n == 0) {
+                break;
+            }
+
+            if (head.compareAndSet(pos, pos + n)) {
+                for (int i = 0; i < n; i++) {
+                    sink.add(release((int) ((pos + i) & mask), pos + i));
+                }
+                drained += n;
+            }
+            // else contended with a DISCARD_OLDEST pop, re-scan from the new head
+        }
+        return drained;
+    }
+
+    private Object release(int index, long pos) {
+        Object e = elements.get(index);
+        elements.lazySet(index, null);
+
+        // Mark the slot as free for the producer in the next round
+        sequences.set(index, pos + capacity);
+        return e;
+    }
+
+    private void signalWaiter() {
+        Thread w = waiter;
+        if (w != null) {
+            LockSupport.unpark(w);
+        }
+    }
+
+    /**
+     * Head and tail are updated by different parties, pad them to avoid false sharing
+     */
+    @SuppressWarnings("unused")
+    static class PaddedAtomicLong extends AtomicLong {
+        long p1, p2, p3, p4, p5, p6, p7;
+    }
+}
@@ -18,11 +18,13 @@ package org.bithon.agent.observability.metric.collector;
 
 import org.bithon.agent.instrumentation.expt.AgentException;
 import org.bithon.agent.observability.exporter.IMessageConverter;
+import org.bithon.agent.observability.metric.model.Histogram;
 import org.bithon.agent.observability.metric.model.IMeasurement;
 import org.bithon.agent.observability.metric.model.IMetricSet;
 import org.bithon.agent.observability.metric.model.IMetricValueProvider;
 import org.bithon.agent.observability.metric.model.schema.Dimensions;
 import org.bithon.agent.observability.metric.model.schema.Schema2;
+import org.bithon.component.commons.histogram.HistogramSnapshot;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
@@ -48,14 +50,17 @@ public class MetricRegistry<T extends IMetricSet> {
 
     public MetricRegistry(String name, List<String> dimensionSpec, Class<T> metricClass, Supplier<T> newMetricSupplier, boolean clearAfterCollect) {
         List<String> metricsSpec = new ArrayList<>();
+        List<String> histogramsSpec = new ArrayList<>();
         for (Field field : metricClass.getDeclaredFields()) {
             //noinspection rawtypes
             Class fieldClass = field.getType();
             if (IMetricValueProvider.class.isAssignableFrom(fieldClass)) {
                 metricsSpec.add(field.getName());
+            } else if (Histogram.class.isAssignableFrom(fieldClass)) {
+                histogramsSpec.add(field.getName());
             }
         }
-        this.schema = new Schema2(name, dimensionSpec, metricsSpec);
+        this.schema = new Schema2(name, dimensionSpec, metricsSpec, histogramsSpec);
         this.supplier = newMetricSupplier;
         this.clearAfterCollect = clearAfterCollect;
     }
@@ -64,14 +69,14 @@ public class MetricRegistry<T extends IMetricSet> {
         if (dimensions.length != this.schema.getDimensionsSpec().size()) {
             throw new AgentException("required dimension size is %d, but input is %d", this.schema.getDimensionsSpec().size(), dimensions.length);
         }
-        return createMetrics(Dimensions.of(dimensions), supplier.get());
+        return getOrCreateMetrics(Dimensions.of(dimensions), supplier);
     }
 
     public T getOrCreateMetrics(Dimensions dimensions) {
         if (dimensions.length() != this.schema.getDimensionsSpec().size()) {
             throw new AgentException("required dimension size is %d, but input is %d", this.schema.getDimensionsSpec().size(), dimensions.length());
         }
-        return createMetrics(dimensions, supplier.get());
+        return getOrCreateMetrics(dimensions, supplier);
     }
 
     @SuppressWarnings("unchecked")
@@ -92,11 +97,17 @@ public class MetricRegistry<T extends IMetricSet> {
         return (T) measurement.metrics;
     }
 
+    @SuppressWarnings("unchecked")
     public T getOrCreateMetrics(Dimensions dimensions, Supplier<T> supplier) {
         if (dimensions.length() != this.schema.getDimensionsSpec().size()) {
             throw new AgentException("required dimension size is %d, but input is %d", this.schema.getDimensionsSpec().size(), dimensions.length());
         }
-        return createMetrics(dimensions, supplier.get());
+        // Only create the metric set when it does not exist to avoid allocation on the hot path
+        Measurement measurement = (Measurement) metricsMap.get(dimensions);
+        if (measurement == null) {
+            measurement = (Measurement) metricsMap.computeIfAbsent(dimensions, key -> new Measurement(dimensions, supplier.get()));
+        }
+        return (T) measurement.metrics;
     }
 
     public void removeMetrics(Dimensions dimensions) {
@@ -135,6 +146,16 @@ public class MetricRegistry<T extends IMetricSet> {
             return metrics.getMetrics()[index].get();
         }
 
+        @Override
+        public int getHistogramCount() {
+            return schema.getHistogramsSpec().size();
+        }
+
+        @Override
+        public HistogramSnapshot getHistogram(int index) {
+            return metrics.getHistograms()[index].getAndReset();
+        }
+
         @Override
         public String toString() {
             return "Measurement{" +
@@ -16,6 +16,7 @@
 
 package org.bithon.agent.observability.metric.domain.httpclient;
 
+import org.bithon.agent.observability.metric.model.Histogram;
 import org.bithon.agent.observability.metric.model.IMetricSet;
 import org.bithon.agent.observability.metric.model.IMetricValueProvider;
 import org.bithon.agent.observability.metric.model.Max;
@@ -31,28 +32,50 @@ public class HttpOutgoingMetrics implements IMetricSet {
     /**
      * total cost time in NANO second
      */
-    private final Sum responseTime = new Sum();
-    private final Max maxResponseTime = new Max();
-    private final Min minResponseTime = new Min();
+    private final Sum responseTime;
+    private final Max maxResponseTime;
+    private final Min minResponseTime;
+    private final Histogram responseTimeHistogram = new Histogram();
 
     /**
      * count of all status code between 400(inclusive) and 500(exclusive)
      */
-    private final Sum count4xx = new Sum();
+    private final Sum count4xx;
 
     /**
      * count of all status code larger than 500(inclusive)
      */
-    private final Sum count5xx = new Sum();
-    private final Sum countException = new Sum();
-    private final Sum requestCount = new Sum();
-    private final Sum requestBytes = new Sum();
-    private final Sum responseBytes = new Sum();
+    private final Sum count5xx;
+    private final Sum countException;
+    private final Sum requestCount;
+    private final Sum requestBytes;
+    private final Sum responseBytes;
+    private final Histogram[] histograms = new Histogram[]{responseTimeHistogram};
+
+    public HttpOutgoingMetrics() {
+        this(false);
+    }
+
+    /**
+     * @param striped whether to use striped primitives, see {@link org.bithon.agent.observability.metric.model.StripedMetricConfig}
+     */
+    public HttpOutgoingMetrics(boolean striped) {
+        this.responseTime = Sum.create(striped);
+        this.maxResponseTime = Max.create(striped);
+        this.minResponseTime = Min.create(striped);
+        this.count4xx = Sum.create(striped);
+        this.count5xx = Sum.create(striped);
+        this.countException = Sum.create(striped);
+        this.requestCount = Sum.create(striped);
+        this.requestBytes = Sum.create(striped);
+        this.responseBytes = Sum.create(striped);
+    }
 
     public void add(long responseTime, int count4xx, int count5xx) {
         this.responseTime.update(responseTime);
         this.maxResponseTime.update(responseTime);
         this.minResponseTime.update(responseTime);
+        this.responseTimeHistogram.update(responseTime);
         this.count4xx.update(count4xx);
         this.count5xx.update(count5xx);
         this.requestCount.incr();
@@ -62,6 +85,7 @@ public class HttpOutgoingMetrics implements IMetricSet {
         this.responseTime.update(responseTime);
         this.maxResponseTime.update(responseTime);
         this.minResponseTime.update(responseTime);
+        this.responseTimeHistogram.update(responseTime);
         this.countException.update(exceptionCount);
         this.requestCount.incr();
         return this;
@@ -95,6 +119,11 @@ public class HttpOutgoingMetrics implements IMetricSet {
         };
     }
 
+    @Override
+    public Histogram[] getHistograms() {
+        return histograms;
+    }
+
     @Override
     public String toString() {
         return "HttpOutgoingMetrics{" +
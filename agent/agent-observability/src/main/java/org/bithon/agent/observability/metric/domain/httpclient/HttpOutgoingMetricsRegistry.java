@@ -18,6 +18,7 @@ package org.bithon.agent.observability.metric.domain.httpclient;
 
 import org.bithon.agent.observability.metric.collector.MetricRegistry;
 import org.bithon.agent.observability.metric.collector.MetricRegistryFactory;
+import org.bithon.agent.observability.metric.model.StripedMetricConfig;
 import org.bithon.agent.observability.utils.HttpUtils;
 
 import java.util.Arrays;
@@ -32,10 +33,14 @@ public class HttpOutgoingMetricsRegistry extends MetricRegistry<HttpOutgoingMetr
     public static final String NAME = "http-outgoing-metrics";
 
     public HttpOutgoingMetricsRegistry() {
+        this(StripedMetricConfig.isEnabled(NAME));
+    }
+
+    private HttpOutgoingMetricsRegistry(boolean striped) {
         super(NAME,
               Arrays.asList("path", "method", "statusCode"),
               HttpOutgoingMetrics.class,
-              HttpOutgoingMetrics::new,
+              () -> new HttpOutgoingMetrics(striped),
               true);
     }
 
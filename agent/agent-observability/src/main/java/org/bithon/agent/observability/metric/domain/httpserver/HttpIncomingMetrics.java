@@ -16,6 +16,7 @@
 
 package org.bithon.agent.observability.metric.domain.httpserver;
 
+import org.bithon.agent.observability.metric.model.Histogram;
 import org.bithon.agent.observability.metric.model.IMetricSet;
 import org.bithon.agent.observability.metric.model.IMetricValueProvider;
 import org.bithon.agent.observability.metric.model.Max;
@@ -29,23 +30,48 @@ import org.bithon.agent.observability.metric.model.Sum;
  * @author frankchen
  */
 public class HttpIncomingMetrics implements IMetricSet {
-    private final Sum responseTime = new Sum();
-    private final Max maxResponseTime = new Max();
-    private final Min minResponseTime = new Min();
-    private final Sum totalCount = new Sum();
-    private final Sum okCount = new Sum();
-    private final Sum errorCount = new Sum();
-    private final Sum count4xx = new Sum();
-    private final Sum count5xx = new Sum();
-    private final Sum requestBytes = new Sum();
-    private final Sum responseBytes = new Sum();
-    private final Sum flowedCount = new Sum();
-    private final Sum degradedCount = new Sum();
+    private final Sum responseTime;
+    private final Max maxResponseTime;
+    private final Min minResponseTime;
+    private final Histogram responseTimeHistogram = new Histogram();
+    private final Sum totalCount;
+    private final Sum okCount;
+    private final Sum errorCount;
+    private final Sum count4xx;
+    private final Sum count5xx;
+    private final Sum requestBytes;
+    private final Sum responseBytes;
+    private final Sum flowedCount;
+    private final Sum degradedCount;
+    private final Histogram[] histograms = new Histogram[]{responseTimeHistogram};
+
+    public HttpIncomingMetrics() {
+        this(false);
+    }
+
+    /**
+     * @param striped whether to use striped primitives, see {@link org.bithon.agent.observability.metric.model.StripedMetricConfig}
+     */
+    public HttpIncomingMetrics(boolean striped) {
+        this.responseTime = Sum.create(striped);
+        this.maxResponseTime = Max.create(striped);
+        this.minResponseTime = Min.create(striped);
+        this.totalCount = Sum.create(striped);
+        this.okCount = Sum.create(striped);
+        this.errorCount = Sum.create(striped);
+        this.count4xx = Sum.create(striped);
+        this.count5xx = Sum.create(striped);
+        this.requestBytes = Sum.create(striped);
+        this.responseBytes = Sum.create(striped);
+        this.flowedCount = Sum.create(striped);
+        this.degradedCount = Sum.create(striped);
+    }
 
     private void updateRequest(long responseTime, boolean isError) {
         this.responseTime.update(responseTime);
         this.maxResponseTime.update(responseTime);
         this.minResponseTime.update(responseTime);
+        this.responseTimeHistogram.update(responseTime);
         if (isError) {
             this.errorCount.incr();
         } else {
@@ -136,4 +162,9 @@ public class HttpIncomingMetrics implements IMetricSet {
             degradedCount
         };
     }
+
+    @Override
+    public Histogram[] getHistograms() {
+        return histograms;
+    }
 }
@@ -18,6 +18,7 @@ package org.bithon.agent.observability.metric.domain.httpserver;
 
 import org.bithon.agent.observability.metric.collector.MetricRegistry;
 import org.bithon.agent.observability.metric.collector.MetricRegistryFactory;
+import org.bithon.agent.observability.metric.model.StripedMetricConfig;
 
 import java.util.Arrays;
 
@@ -28,10 +29,14 @@ import java.util.Arrays;
 public class HttpIncomingMetricsRegistry extends MetricRegistry<HttpIncomingMetrics> {
 
     public HttpIncomingMetricsRegistry() {
+        this(StripedMetricConfig.isEnabled("http-incoming-metrics"));
+    }
+
+    private HttpIncomingMetricsRegistry(boolean striped) {
         super("http-incoming-metrics",
               Arrays.asList("srcApplication", "method", "uri", "statusCode"),
               HttpIncomingMetrics.class,
-              HttpIncomingMetrics::new,
+              () -> new HttpIncomingMetrics(striped),
               true);
     }
 
@@ -16,6 +16,7 @@
 
 package org.bithon.agent.observability.metric.domain.mongo;
 
+import org.bithon.agent.observability.metric.model.Histogram;
 import org.bithon.agent.observability.metric.model.IMetricSet;
 import org.bithon.agent.observability.metric.model.IMetricValueProvider;
 import org.bithon.agent.observability.metric.model.Max;
@@ -34,6 +35,7 @@ public class MongoDbMetrics implements IMetricSet {
     Sum exceptionCount = new Sum();
     Sum responseBytes = new Sum();
     Sum requestBytes = new Sum();
+    Histogram responseTimeHistogram = new Histogram();
 
     IMetricValueProvider[] metrics = new IMetricValueProvider[]{
         minResponseTime,
@@ -44,12 +46,17 @@ public class MongoDbMetrics implements IMetricSet {
         responseBytes,
         requestBytes
     };
+    Histogram[] histograms = new Histogram[]{responseTimeHistogram};
 
+    /**
+     * @param responseTime in nanoseconds
+     */
     public void add(long responseTime, int exceptionCount) {
         this.totalCount.incr();
         this.responseTime.update(responseTime);
         this.maxResponseTime.update(responseTime);
         this.minResponseTime.update(responseTime);
+        this.responseTimeHistogram.update(responseTime);
         this.exceptionCount.update(exceptionCount);
     }
 
@@ -65,4 +72,9 @@ public class MongoDbMetrics implements IMetricSet {
     public IMetricValueProvider[] getMetrics() {
         return metrics;
     }
+
+    @Override
+    public Histogram[] getHistograms() {
+        return histograms;
+    }
 }
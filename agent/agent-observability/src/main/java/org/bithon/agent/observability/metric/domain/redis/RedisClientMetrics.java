@@ -16,6 +16,7 @@
 
 package org.bithon.agent.observability.metric.domain.redis;
 
+import org.bithon.agent.observability.metric.model.Histogram;
 import org.bithon.agent.observability.metric.model.IMetricSet;
 import org.bithon.agent.observability.metric.model.IMetricValueProvider;
 import org.bithon.agent.observability.metric.model.Max;
@@ -34,6 +35,7 @@ public class RedisClientMetrics implements IMetricSet {
     private final Sum exceptionCount = new Sum();
     private final Sum responseBytes = new Sum();
     private final Sum requestBytes = new Sum();
+    private final Histogram responseTimeHistogram = new Histogram();
 
     private final IMetricValueProvider[] metrics = new IMetricValueProvider[]{
         minResponseTime,
@@ -44,6 +46,7 @@ public class RedisClientMetrics implements IMetricSet {
         responseBytes,
         requestBytes
     };
+    private final Histogram[] histograms = new Histogram[]{responseTimeHistogram};
 
     public RedisClientMetrics addResponseBytes(long responseBytes) {
         this.responseBytes.update(responseBytes);
@@ -55,10 +58,14 @@ public class RedisClientMetrics implements IMetricSet {
         return this;
     }
 
-    public RedisClientMetrics addRequest(long responseTimeNs, int exceptionCount) {
-        this.responseTime.update(responseTimeNs);
-        this.minResponseTime.update(responseTimeNs);
-        this.maxResponseTime.update(responseTimeNs);
+    /**
+     * @param responseTime in nanoseconds
+     */
+    public RedisClientMetrics addRequest(long responseTime, int exceptionCount) {
+        this.responseTime.update(responseTime);
+        this.minResponseTime.update(responseTime);
+        this.maxResponseTime.update(responseTime);
+        this.responseTimeHistogram.update(responseTime);
         this.exceptionCount.update(exceptionCount);
         this.totalCount.incr();
         return this;
@@ -68,4 +75,9 @@ public class RedisClientMetrics implements IMetricSet {
     public IMetricValueProvider[] getMetrics() {
         return metrics;
     }
+
+    @Override
+    public Histogram[] getHistograms() {
+        return histograms;
+    }
 }
@@ -16,6 +16,7 @@
 
 package org.bithon.agent.observability.metric.domain.sql;
 
+import org.bithon.agent.observability.metric.model.annotation.Histogram;
 import org.bithon.agent.observability.metric.model.annotation.Max;
 import org.bithon.agent.observability.metric.model.annotation.Min;
 import org.bithon.agent.observability.metric.model.annotation.Sum;
@@ -33,6 +34,7 @@ public class SQLMetrics {
      * nano seconds
      */
     @Sum
+    @Histogram("responseTimeHistogram")
     public long responseTime;
 
     @Max
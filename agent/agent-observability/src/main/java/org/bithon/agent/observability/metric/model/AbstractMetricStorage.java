@@ -25,6 +25,7 @@ import org.bithon.agent.observability.metric.model.generator.AggregateFunctorGen
 import org.bithon.agent.observability.metric.model.generator.IAggregate;
 import org.bithon.agent.observability.metric.model.schema.Dimensions;
 import org.bithon.agent.observability.metric.model.schema.Schema2;
+import org.bithon.component.commons.histogram.HistogramSnapshot;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
@@ -35,6 +36,7 @@ import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * @author frank.chen021@outlook.com
@@ -50,6 +52,16 @@ public class AbstractMetricStorage<T> implements IMetricCollector2 {
     private final MetricAccessorGenerator.IMetricsInstantiator<T> metricsInstantiator;
     private Map<Dimensions, T> aggregatedStorage = new ConcurrentHashMap<>();
 
+    /**
+     * Histograms of aggregated metrics, swapped together with {@link #aggregatedStorage}.
+     */
+    private Map<Dimensions, Histogram[]> histogramStorage = new ConcurrentHashMap<>();
+
+    /**
+     * Index(see {@link IMetricAccessor#getMetricValue(int)}) of fields that are annotated by {@link org.bithon.agent.observability.metric.model.annotation.Histogram}
+     */
+    private final int[] histogramFieldIndexes;
+
     private List<IMeasurement> rawStorage = new ArrayList<>();
     private final ReentrantLock lock = new ReentrantLock();
 
@@ -91,6 +103,7 @@ public class AbstractMetricStorage<T> implements IMetricCollector2 {
         this.aggregatePredicate = aggregatePredicate;
         this.aggregateFn = aggregateFn;
         this.schema = createSchema(name, dimensionSpec, metricClass);
+        this.histogramFieldIndexes = getHistogramFieldIndexes(metricClass);
         this.metricsInstantiator = MetricAccessorGenerator.createInstantiator(metricClass);
     }
 
@@ -121,6 +134,11 @@ public class AbstractMetricStorage<T> implements IMetricCollector2 {
         // Aggregate the metrics if possible
         if (aggregatePredicate.isAggregatable(dimensions, metrics)) {
 
+            // Record histograms before the merge because the metrics object might be updated by others once it's in the storage
+            if (histogramFieldIndexes.length > 0) {
+                updateHistograms(dimensions, (IMetricAccessor) metrics);
+            }
+
             aggregatedStorage.merge(dimensions,
                                     metrics,
                                     this.aggregateFn);
@@ -133,7 +151,7 @@ public class AbstractMetricStorage<T> implements IMetricCollector2 {
         List<IMeasurement> batch = null;
         lock.lock();
         try {
-            rawStorage.add(new Measurement(dimensions, (IMetricAccessor) metrics));
+            rawStorage.add(new Measurement(dimensions, (IMetricAccessor) metrics, toHistograms((IMetricAccessor) metrics)));
             if (rawStorage.size() >= 10_000) {
                 batch = rawStorage;
                 rawStorage = new ArrayList<>();
@@ -153,15 +171,56 @@ public class AbstractMetricStorage<T> implements IMetricCollector2 {
         }
     }
 
+    private void updateHistograms(Dimensions dimensions, IMetricAccessor metrics) {
+        Histogram[] histograms = histogramStorage.get(dimensions);
+        if (histograms == null) {
+            histograms = histogramStorage.computeIfAbsent(dimensions, (k) -> {
+                Histogram[] newHistograms = new Histogram[histogramFieldIndexes.length];
+                for (int i = 0; i < newHistograms.length; i++) {
+                    newHistograms[i] = new Histogram();
+                }
+                return newHistograms;
+            });
+        }
+        for (int i = 0; i < histogramFieldIndexes.length; i++) {
+            histograms[i].update(metrics.getMetricValue(histogramFieldIndexes[i]));
+        }
+    }
+
+    private HistogramSnapshot[] toHistograms(IMetricAccessor metrics) {
+        if (histogramFieldIndexes.length == 0) {
+            return null;
+        }
+        HistogramSnapshot[] snapshots = new HistogramSnapshot[histogramFieldIndexes.length];
+        for (int i = 0; i < histogramFieldIndexes.length; i++) {
+            snapshots[i] = HistogramSnapshot.of(metrics.getMetricValue(histogramFieldIndexes[i]));
+        }
+        return snapshots;
+    }
+
+    private static HistogramSnapshot[] toHistograms(Histogram[] histograms) {
+        if (histograms == null) {
+            return null;
+        }
+        HistogramSnapshot[] snapshots = new HistogramSnapshot[histograms.length];
+        for (int i = 0; i < histograms.length; i++) {
+            snapshots[i] = histograms[i].getAndReset();
+        }
+        return snapshots;
+    }
+
     @Override
     public Object collect(IMessageConverter messageConverter, int interval, long timestamp) {
         Map<Dimensions, T> currAggregatedStorage = this.aggregatedStorage;
         this.aggregatedStorage = new ConcurrentHashMap<>();
+        Map<Dimensions, Histogram[]> currHistogramStorage = this.histogramStorage;
+        this.histogramStorage = new ConcurrentHashMap<>();
 
         List<IMeasurement> batch = currAggregatedStorage.entrySet()
                                                         .stream()
                                                         .map((e) -> new Measurement(e.getKey(),
-                                                                                    (IMetricAccessor) e.getValue()))
+                                                                                    (IMetricAccessor) e.getValue(),
+                                                                                    toHistograms(currHistogramStorage.get(e.getKey()))))
                                                         .collect(Collectors.toList());
 
         lock.lock();
@@ -192,11 +251,17 @@ public class AbstractMetricStorage<T> implements IMetricCollector2 {
         private final long timestamp;
         private final Dimensions dimensions;
         private final IMetricAccessor metricAccessor;
+        private final HistogramSnapshot[] histograms;
 
         public Measurement(Dimensions dimensions, IMetricAccessor metrics) {
+            this(dimensions, metrics, null);
+        }
+
+        public Measurement(Dimensions dimensions, IMetricAccessor metrics, HistogramSnapshot[] histograms) {
             this.timestamp = System.currentTimeMillis();
             this.dimensions = dimensions;
             this.metricAccessor = metrics;
+            this.histograms = histograms;
         }
 
         @Override
@@ -224,6 +289,16 @@ public class AbstractMetricStorage<T> implements IMetricCollector2 {
             return metricAccessor.getMetricValue(name);
         }
 
+        @Override
+        public int getHistogramCount() {
+            return histograms == null ? 0 : histograms.length;
+        }
+
+        @Override
+        public HistogramSnapshot getHistogram(int index) {
+            return histograms[index];
+        }
+
         /**
          * Expose the metric accessor for test case usage
          */
@@ -243,6 +318,7 @@ public class AbstractMetricStorage<T> implements IMetricCollector2 {
 
     static <T> Schema2 createSchema(String name, List<String> dimensions, Class<T> clazz) {
         List<String> metrics = new ArrayList<>();
+        List<String> histograms = new ArrayList<>();
 
         for (Field field : clazz.getDeclaredFields()) {
             if (field.isAnnotationPresent(org.bithon.agent.observability.metric.model.annotation.Sum.class)
@@ -253,8 +329,23 @@ public class AbstractMetricStorage<T> implements IMetricCollector2 {
             ) {
                 metrics.add(field.getName());
             }
+
+            org.bithon.agent.observability.metric.model.annotation.Histogram histogram = field.getAnnotation(org.bithon.agent.observability.metric.model.annotation.Histogram.class);
+            if (histogram != null) {
+                histograms.add(histogram.value());
+            }
         }
 
-        return new Schema2(name, dimensions, metrics);
+        return new Schema2(name, dimensions, metrics, histograms);
+    }
+
+    /**
+     * The generated {@link IMetricAccessor#getMetricValue(int)} accesses fields by their declaration order
+     */
+    private static <T> int[] getHistogramFieldIndexes(Class<T> clazz) {
+        Field[] fields = clazz.getDeclaredFields();
+        return IntStream.range(0, fields.length)
+                        .filter((i) -> fields[i].isAnnotationPresent(org.bithon.agent.observability.metric.model.annotation.Histogram.class))
+                        .toArray();
     }
 }
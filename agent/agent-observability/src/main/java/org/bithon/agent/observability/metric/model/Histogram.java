@@ -0,0 +1,90 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.observability.metric.model;
+
+import org.bithon.component.commons.histogram.HistogramBuckets;
+import org.bithon.component.commons.histogram.HistogramSnapshot;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A latency histogram that can be merged on the server side so that percentiles can be calculated across instances.
+ * <p>
+ * Buckets are preallocated by the layout defined in {@link HistogramBuckets},
+ * so {@link #update(long)} is lock-free and allocates nothing.
+ * <p>
+ * Values are recorded in nanoseconds, the same unit as the response time metrics of all metric sets,
+ * so that quantiles of different metric sets are comparable and share the unit declared in the server side schemas.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class Histogram implements IMetricValueUpdater {
+    private final AtomicLongArray buckets = new AtomicLongArray(HistogramBuckets.BUCKET_COUNT);
+    private final AtomicLong sum = new AtomicLong();
+    private final Min min = new Min();
+    private final Max max = new Max();
+
+    /**
+     * @param value in nanoseconds
+     */
+    @Override
+    public long update(long value) {
+        buckets.incrementAndGet(HistogramBuckets.indexOf(value));
+        min.update(value);
+        max.update(value);
+        return sum.addAndGet(value);
+    }
+
+    /**
+     * Take a snapshot of current histogram and reset it.
+     * Since there's no lock between updaters and the collector,
+     * a value that is being recorded at the same time might be counted in the next round.
+     *
+     * @return null if there's no value recorded since last call
+     */
+    public HistogramSnapshot getAndReset() {
+        int size = 0;
+        int[] indexes = null;
+        long[] counts = null;
+        long count = 0;
+        for (int i = 0; i < HistogramBuckets.BUCKET_COUNT; i++) {
+            if (buckets.get(i) == 0) {
+                continue;
+            }
+            long c = buckets.getAndSet(i, 0);
+            if (indexes == null) {
+                indexes = new int[16];
+                counts = new long[16];
+            } else if (size == indexes.length) {
+                indexes = Arrays.copyOf(indexes, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            indexes[size] = i;
+            counts[size++] = c;
+            count += c;
+        }
+        long sum = this.sum.getAndSet(0);
+        long min = this.min.get();
+        long max = this.max.get();
+        if (count == 0) {
+            return null;
+        }
+        return new HistogramSnapshot(count, sum, min, max, indexes, counts, size);
+    }
+}
@@ -17,6 +17,7 @@
 package org.bithon.agent.observability.metric.model;
 
 import org.bithon.agent.observability.metric.model.schema.Dimensions;
+import org.bithon.component.commons.histogram.HistogramSnapshot;
 
 /**
  * @author frank.chen021@outlook.com
@@ -32,6 +33,17 @@ public interface IMeasurement {
 
     long getMetricValue(int index);
 
+    default int getHistogramCount() {
+        return 0;
+    }
+
+    /**
+     * @return null if there's no value recorded in the histogram
+     */
+    default HistogramSnapshot getHistogram(int index) {
+        return null;
+    }
+
     /**
      * Mainly for testing purpose
      */
@@ -25,4 +25,11 @@ public interface IMetricSet {
      * TODO: come up a way to automatically generate this method
      */
     IMetricValueProvider[] getMetrics();
+
+    /**
+     * The order of the returned histograms must be consistent with the declaration order of {@link Histogram} fields
+     */
+    default Histogram[] getHistograms() {
+        return null;
+    }
 }
@@ -23,7 +23,10 @@ import java.util.concurrent.atomic.AtomicLong;
  * @date 2021/3/16
  */
 public class Max implements IMetricValueUpdater, IMetricValueProvider {
-    private final AtomicLong value = new AtomicLong(Long.MIN_VALUE);
+    /**
+     * Also serves as the base value of the striped implementation
+     */
+    protected final AtomicLong value = new AtomicLong(Long.MIN_VALUE);
 
     @Override
     public long update(long value) {
@@ -36,6 +39,10 @@ public class Max implements IMetricValueUpdater, IMetricValueProvider {
         return value == Long.MIN_VALUE ? 0 : value;
     }
 
+    public static Max create(boolean striped) {
+        return striped ? new StripedMax() : new Max();
+    }
+
     @Override
     public String toString() {
         return value.toString();
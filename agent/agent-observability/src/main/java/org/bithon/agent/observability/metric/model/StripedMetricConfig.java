@@ -0,0 +1,68 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.observability.metric.model;
+
+import org.bithon.agent.configuration.ConfigurationManager;
+import org.bithon.agent.configuration.ConfigurationProperties;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Controls whether metric sets use {@link StripedSum}, {@link StripedMax} and {@link StripedMin}.
+ * Striped primitives reduce contention when a metric set is updated by lots of threads at the same time,
+ * at the cost of extra memory once contention is detected.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@ConfigurationProperties(path = "agent.observability.metrics.striped", dynamic = false)
+public class StripedMetricConfig {
+    /**
+     * Enable striped primitives for all metric sets that support it
+     */
+    private boolean enabled = false;
+
+    /**
+     * Names of metric sets, for example 'http-incoming-metrics', that use striped primitives
+     */
+    private List<String> metricSets = Collections.emptyList();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public List<String> getMetricSets() {
+        return metricSets;
+    }
+
+    public void setMetricSets(List<String> metricSets) {
+        this.metricSets = metricSets;
+    }
+
+    public static boolean isEnabled(String metricSetName) {
+        ConfigurationManager configurationManager = ConfigurationManager.getInstance();
+        if (configurationManager == null) {
+            return false;
+        }
+        StripedMetricConfig config = configurationManager.getConfig(StripedMetricConfig.class);
+        return config.isEnabled() || config.getMetricSets().contains(metricSetName);
+    }
+}
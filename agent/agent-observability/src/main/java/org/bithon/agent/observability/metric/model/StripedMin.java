@@ -0,0 +1,72 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.observability.metric.model;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link Min} that keeps a min value per stripe when there's contention,
+ * and reduces the stripes when the value is collected.
+ * <p>
+ * An update that does not change the min value does not write to the shared memory.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class StripedMin extends Min {
+    private final Stripes stripes = new Stripes(Long.MAX_VALUE);
+
+    /**
+     * @return the min value of the base or the cell of current thread
+     */
+    @Override
+    public long update(long newValue) {
+        AtomicLongArray cells = stripes.cells();
+        if (cells == null) {
+            long current = value.get();
+            if (current <= newValue || value.compareAndSet(current, newValue)) {
+                return Math.min(current, newValue);
+            }
+            cells = stripes.inflate();
+        }
+
+        int index = Stripes.index();
+        long current;
+        do {
+            current = cells.get(index);
+            if (current <= newValue) {
+                return current;
+            }
+        } while (!cells.compareAndSet(index, current, newValue));
+        return newValue;
+    }
+
+    @Override
+    public long get() {
+        long v = value.getAndSet(Long.MAX_VALUE);
+        AtomicLongArray cells = stripes.cells();
+        if (cells != null) {
+            v = stripes.getAndReset(cells, v, Math::min);
+        }
+        return v == Long.MAX_VALUE ? 0 : v;
+    }
+
+    @Override
+    public String toString() {
+        AtomicLongArray cells = stripes.cells();
+        return String.valueOf(cells == null ? value.get() : stripes.reduce(cells, value.get(), Math::min));
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.observability.metric.model;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link Sum} that spreads updates from different threads over separate cells when there's contention,
+ * so that hot metrics updated by lots of request threads don't CAS on the same cache line.
+ * <p>
+ * {@link #get()} still returns the accumulated value and resets it.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class StripedSum extends Sum {
+    private final Stripes stripes = new Stripes(0);
+
+    @Override
+    public void incr() {
+        update(1);
+    }
+
+    /**
+     * @return the updated value of the base or the cell of current thread. It's NOT the accumulated value.
+     */
+    @Override
+    public long update(long delta) {
+        if (delta == 0) {
+            return 0;
+        }
+
+        AtomicLongArray cells = stripes.cells();
+        if (cells == null) {
+            long v = value.get();
+            if (value.compareAndSet(v, v + delta)) {
+                return v + delta;
+            }
+            cells = stripes.inflate();
+        }
+        return cells.addAndGet(Stripes.index(), delta);
+    }
+
+    @Override
+    public long get() {
+        long sum = value.getAndSet(0);
+        AtomicLongArray cells = stripes.cells();
+        return cells == null ? sum : stripes.getAndReset(cells, sum, Long::sum);
+    }
+
+    @Override
+    public long peek() {
+        long sum = value.get();
+        AtomicLongArray cells = stripes.cells();
+        return cells == null ? sum : stripes.reduce(cells, sum, Long::sum);
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(peek());
+    }
+}
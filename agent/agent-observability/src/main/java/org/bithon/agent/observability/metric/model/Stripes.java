@@ -0,0 +1,109 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.observability.metric.model;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Cells of striped metric primitives such as {@link StripedSum}.
+ * <p>
+ * Like {@link java.util.concurrent.atomic.LongAdder}, the cells are allocated only after contention is detected on the base value,
+ * so that a metric that is updated by one thread costs no extra memory.
+ * Each cell occupies a whole cache line to avoid false sharing between stripes.
+ *
+ * @author frank.chen021@outlook.com
+ */
+class Stripes {
+    /**
+     * Number of longs in a 64-byte cache line
+     */
+    private static final int PADDING = 8;
+
+    static final int STRIPE_COUNT;
+
+    static {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int count = 1;
+        while (count < cpus && count < 64) {
+            count <<= 1;
+        }
+        STRIPE_COUNT = count;
+    }
+
+    private static final AtomicReferenceFieldUpdater<Stripes, AtomicLongArray> CELLS_UPDATER =
+        AtomicReferenceFieldUpdater.newUpdater(Stripes.class, AtomicLongArray.class, "cells");
+
+    private final long identity;
+
+    private volatile AtomicLongArray cells;
+
+    Stripes(long identity) {
+        this.identity = identity;
+    }
+
+    /**
+     * @return null if there has been no contention
+     */
+    AtomicLongArray cells() {
+        return cells;
+    }
+
+    AtomicLongArray inflate() {
+        AtomicLongArray c = this.cells;
+        if (c == null) {
+            c = new AtomicLongArray(STRIPE_COUNT * PADDING);
+            if (identity != 0) {
+                for (int i = 0; i < STRIPE_COUNT; i++) {
+                    c.set(i * PADDING, identity);
+                }
+            }
+            if (!CELLS_UPDATER.compareAndSet(this, null, c)) {
+                c = this.cells;
+            }
+        }
+        return c;
+    }
+
+    /**
+     * @return the index of the cell in the cells array for current thread
+     */
+    static int index() {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((h >>> 16) & (STRIPE_COUNT - 1)) * PADDING;
+    }
+
+    /**
+     * Get the values of all cells and reset them to the identity value.
+     * Each cell is reset atomically, so no update is lost between the get and the reset.
+     */
+    long getAndReset(AtomicLongArray cells, long accumulated, LongBinaryOperator reducer) {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            accumulated = reducer.applyAsLong(accumulated, cells.getAndSet(i * PADDING, identity));
+        }
+        return accumulated;
+    }
+
+    long reduce(AtomicLongArray cells, long accumulated, LongBinaryOperator reducer) {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            accumulated = reducer.applyAsLong(accumulated, cells.get(i * PADDING));
+        }
+        return accumulated;
+    }
+}
@@ -25,7 +25,10 @@ import java.util.concurrent.atomic.AtomicLong;
  * @date 2021/2/23 9:18 下午
  */
 public class Sum implements IMetricValueUpdater, IMetricValueProvider {
-    private final AtomicLong value;
+    /**
+     * Also serves as the base value of the striped implementation
+     */
+    protected final AtomicLong value;
 
     public Sum() {
         this(0L);
@@ -56,6 +59,10 @@ public class Sum implements IMetricValueUpdater, IMetricValueProvider {
         return value.get();
     }
 
+    public static Sum create(boolean striped) {
+        return striped ? new StripedSum() : new Sum();
+    }
+
     @Override
     public String toString() {
         return value.toString();
@@ -0,0 +1,34 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.observability.metric.model.annotation;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Record the value of the annotated field into a histogram which is exported along with the metrics.
+ * The annotated field must also be annotated by {@link Sum} so that the value is aggregated as before.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Histogram {
+    /**
+     * name of the histogram
+     */
+    String value();
+}
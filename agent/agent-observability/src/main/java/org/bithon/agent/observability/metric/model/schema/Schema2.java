@@ -16,6 +16,7 @@
 
 package org.bithon.agent.observability.metric.model.schema;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -26,13 +27,22 @@ public class Schema2 {
     private final String name;
     private final List<String> dimensionsSpec;
     private final List<String> metricsSpec;
+    private final List<String> histogramsSpec;
 
     public Schema2(String name,
                    List<String> dimensionsSpec,
                    List<String> metricsSpec) {
+        this(name, dimensionsSpec, metricsSpec, Collections.emptyList());
+    }
+
+    public Schema2(String name,
+                   List<String> dimensionsSpec,
+                   List<String> metricsSpec,
+                   List<String> histogramsSpec) {
         this.name = name;
         this.dimensionsSpec = dimensionsSpec;
         this.metricsSpec = metricsSpec;
+        this.histogramsSpec = histogramsSpec;
     }
 
     public String getName() {
@@ -46,4 +56,8 @@ public class Schema2 {
     public List<String> getMetricsSpec() {
         return metricsSpec;
     }
+
+    public List<String> getHistogramsSpec() {
+        return histogramsSpec;
+    }
 }
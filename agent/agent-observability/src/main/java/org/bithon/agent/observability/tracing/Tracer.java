@@ -83,6 +83,10 @@ public class Tracer {
         return this;
     }
 
+    public TraceConfig traceConfig() {
+        return this.traceConfig;
+    }
+
     public boolean disabled() {
         return this.traceConfig.isDisabled();
     }
@@ -45,6 +45,23 @@ public class TraceConfig {
 
     private boolean disabled = false;
 
+    /**
+     * When enabled, spans keep their ids in primitive form and their tags in arrays,
+     * and span objects are recycled once they have been reported to the exporter.
+     * This reduces allocation on applications that create lots of spans.
+     * <p>
+     * Since span objects are reused, plugins and user code MUST NOT hold span references after the trace context is finished.
+     */
+    private boolean compactSpan = false;
+
+    public boolean isCompactSpan() {
+        return compactSpan;
+    }
+
+    public void setCompactSpan(boolean compactSpan) {
+        this.compactSpan = compactSpan;
+    }
+
     public boolean isDisabled() {
         return disabled;
     }
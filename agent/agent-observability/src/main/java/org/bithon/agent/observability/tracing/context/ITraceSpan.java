@@ -23,6 +23,7 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.Map;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 /**
@@ -51,6 +52,23 @@ public interface ITraceSpan {
 
     Map<String, String> tags();
 
+    /**
+     * Iterate the tags without exposing the underlying storage
+     */
+    default void forEachTag(BiConsumer<String, String> consumer) {
+        tags().forEach(consumer);
+    }
+
+    /**
+     * The span object might be reused once it has been reported, see {@code tracing.compactSpan}.
+     * Message converters that keep the span object itself instead of converting it into a message must keep the returned object.
+     *
+     * @return a span that is not affected by the reuse of this span
+     */
+    default ITraceSpan snapshot() {
+        return this;
+    }
+
     ITraceSpan tag(String name, String value);
 
     default ITraceSpan tag(String name, SocketAddress address) {
@@ -0,0 +1,476 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.observability.tracing.context.impl;
+
+import org.bithon.agent.observability.tracing.context.ITraceContext;
+import org.bithon.agent.observability.tracing.context.ITraceSpan;
+import org.bithon.agent.observability.tracing.id.SpanIds;
+import org.bithon.component.commons.exception.ExceptionUtils;
+import org.bithon.component.commons.logging.LoggerFactory;
+import org.bithon.component.commons.tracing.SpanKind;
+import org.bithon.component.commons.tracing.Tags;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.BiConsumer;
+
+/**
+ * An allocation-light implementation of span which is used when {@code tracing.compactSpan} is enabled.
+ * <p>
+ * Compared to {@link TracingSpan}:
+ * 1. span ids are kept in primitive form and are converted to HEX only when they're exported
+ * 2. tags are stored in parallel arrays instead of a {@link java.util.HashMap}
+ * 3. span objects are recycled into a pool once they have been reported, see {@link #recycle(ITraceSpan)}
+ * <p>
+ * Because span objects are reused, a span reference MUST NOT be accessed after the span is finished
+ * and its trace context is finished.
+ *
+ * @author frank.chen021@outlook.com
+ */
+class CompactTracingSpan implements ITraceSpan {
+
+    private static final int INITIAL_TAG_CAPACITY = 8;
+
+    /**
+     * Max number of spans pooled per thread
+     */
+    private static final int MAX_POOLED_SPANS = 256;
+
+    private static final ThreadLocal<ArrayDeque<CompactTracingSpan>> POOL = ThreadLocal.withInitial(ArrayDeque::new);
+
+    /**
+     * Spans that are released on a thread other than the one that acquires them, for example, a trace context finished on an async thread.
+     * Releasing them to the pool of the releasing thread would drain the pool of the acquiring thread and fill up a pool that's rarely used.
+     */
+    private static final ArrayBlockingQueue<CompactTracingSpan> SHARED_POOL = new ArrayBlockingQueue<>(MAX_POOLED_SPANS);
+
+    /**
+     * The pool of the thread that acquires this span
+     */
+    private ArrayDeque<CompactTracingSpan> ownerPool;
+
+    private TracingContext tracingContext;
+
+    private long spanId;
+    private long parentSpanId;
+
+    /**
+     * Set only when the id given by callers can't be represented in primitive form.
+     * For example, parent span id from the upstream service
+     */
+    private String spanIdText;
+    private String parentSpanIdText;
+
+    private String[] tagNames = new String[INITIAL_TAG_CAPACITY];
+    private String[] tagValues = new String[INITIAL_TAG_CAPACITY];
+    private int tagCount;
+
+    /**
+     * in micro-seconds
+     */
+    private long startTime;
+    private long endTime;
+    private SpanKind kind;
+    private String component;
+    private String parentApplication;
+    private String clazz;
+    private String method;
+
+    private CompactTracingSpan() {
+    }
+
+    static CompactTracingSpan acquire(TracingContext tracingContext, long spanId, long parentSpanId) {
+        ArrayDeque<CompactTracingSpan> pool = POOL.get();
+        CompactTracingSpan span = pool.pollFirst();
+        if (span == null) {
+            span = SHARED_POOL.poll();
+            if (span == null) {
+                span = new CompactTracingSpan();
+            }
+        }
+        span.ownerPool = pool;
+        span.tracingContext = tracingContext;
+        span.spanId = spanId;
+        span.parentSpanId = parentSpanId;
+        span.kind = SpanKind.INTERNAL;
+        return span;
+    }
+
+    static CompactTracingSpan acquire(TracingContext tracingContext, String spanId, String parentSpanId) {
+        long id = SpanIds.fromHexString(spanId);
+        long parentId = SpanIds.fromHexString(parentSpanId);
+
+        CompactTracingSpan span = acquire(tracingContext, id, parentId);
+        if (id == SpanIds.INVALID) {
+            span.spanIdText = spanId;
+        }
+        if (parentId == SpanIds.INVALID) {
+            span.parentSpanIdText = parentSpanId;
+        }
+        return span;
+    }
+
+    /**
+     * Return the given span to the pool of the thread that acquires it if it's a compact span.
+     * If it's called on another thread, the span is returned to the shared pool.
+     */
+    static void recycle(ITraceSpan span) {
+        if (!(span instanceof CompactTracingSpan)) {
+            return;
+        }
+        CompactTracingSpan compactSpan = (CompactTracingSpan) span;
+        ArrayDeque<CompactTracingSpan> ownerPool = compactSpan.ownerPool;
+        if (ownerPool == null) {
+            // A snapshot or a span that has been recycled
+            return;
+        }
+        compactSpan.reset();
+
+        // The ArrayDeque is not thread-safe, only the owner thread accesses it
+        if (ownerPool == POOL.get()) {
+            if (ownerPool.size() < MAX_POOLED_SPANS) {
+                ownerPool.addFirst(compactSpan);
+            }
+        } else {
+            SHARED_POOL.offer(compactSpan);
+        }
+    }
+
+    private void reset() {
+        this.ownerPool = null;
+        this.tracingContext = null;
+        this.spanId = SpanIds.INVALID;
+        this.parentSpanId = SpanIds.INVALID;
+        this.spanIdText = null;
+        this.parentSpanIdText = null;
+        Arrays.fill(this.tagNames, 0, this.tagCount, null);
+        Arrays.fill(this.tagValues, 0, this.tagCount, null);
+        this.tagCount = 0;
+        this.startTime = 0;
+        this.endTime = 0;
+        this.kind = null;
+        this.component = null;
+        this.parentApplication = null;
+        this.clazz = null;
+        this.method = null;
+    }
+
+    long spanIdAsLong() {
+        return spanId;
+    }
+
+    @Override
+    public ITraceSpan snapshot() {
+        CompactTracingSpan snapshot = new CompactTracingSpan();
+        snapshot.tracingContext = this.tracingContext;
+        snapshot.spanId = this.spanId;
+        snapshot.parentSpanId = this.parentSpanId;
+        snapshot.spanIdText = this.spanIdText;
+        snapshot.parentSpanIdText = this.parentSpanIdText;
+        snapshot.tagNames = Arrays.copyOf(this.tagNames, this.tagNames.length);
+        snapshot.tagValues = Arrays.copyOf(this.tagValues, this.tagValues.length);
+        snapshot.tagCount = this.tagCount;
+        snapshot.startTime = this.startTime;
+        snapshot.endTime = this.endTime;
+        snapshot.kind = this.kind;
+        snapshot.component = this.component;
+        snapshot.parentApplication = this.parentApplication;
+        snapshot.clazz = this.clazz;
+        snapshot.method = this.method;
+
+        // Not owned by any pool so that it's never recycled
+        return snapshot;
+    }
+
+    @Override
+    public ITraceContext context() {
+        return tracingContext;
+    }
+
+    @Override
+    public String traceId() {
+        return tracingContext.traceId();
+    }
+
+    @Override
+    public String spanId() {
+        return spanIdText != null ? spanIdText : SpanIds.toHexString(spanId);
+    }
+
+    @Override
+    public String parentSpanId() {
+        if (parentSpanIdText != null) {
+            return parentSpanIdText;
+        }
+        return parentSpanId == SpanIds.INVALID ? null : SpanIds.toHexString(parentSpanId);
+    }
+
+    @Override
+    public SpanKind kind() {
+        return kind;
+    }
+
+    @Override
+    public CompactTracingSpan kind(SpanKind kind) {
+        this.kind = kind;
+        return this;
+    }
+
+    @Override
+    public String name() {
+        return component;
+    }
+
+    @Override
+    public CompactTracingSpan name(String name) {
+        this.component = name;
+        return this;
+    }
+
+    /**
+     * A read-only view of the tags.
+     * {@link #forEachTag(BiConsumer)} is preferred to iterate the tags.
+     */
+    @Override
+    public Map<String, String> tags() {
+        return new TagMap();
+    }
+
+    @Override
+    public void forEachTag(BiConsumer<String, String> consumer) {
+        for (int i = 0; i < tagCount; i++) {
+            consumer.accept(tagNames[i], tagValues[i]);
+        }
+    }
+
+    @Override
+    public CompactTracingSpan tag(String name, String value) {
+        if (name == null || value == null) {
+            return this;
+        }
+
+        // Same semantics as a map, the last value wins
+        for (int i = 0; i < tagCount; i++) {
+            if (tagNames[i].equals(name)) {
+                tagValues[i] = value;
+                return this;
+            }
+        }
+
+        if (tagCount == tagNames.length) {
+            tagNames = Arrays.copyOf(tagNames, tagCount * 2);
+            tagValues = Arrays.copyOf(tagValues, tagCount * 2);
+        }
+        tagNames[tagCount] = name;
+        tagValues[tagCount] = value;
+        tagCount++;
+        return this;
+    }
+
+    @Override
+    public CompactTracingSpan tag(Throwable throwable) {
+        if (throwable != null) {
+            this.tag(Tags.Exception.TYPE, throwable.getClass().getName())
+                .tag(Tags.Exception.MESSAGE, throwable.getMessage())
+                .tag(Tags.Exception.STACKTRACE, ExceptionUtils.getStackTrace(throwable));
+        }
+        return this;
+    }
+
+    private String getTag(String name) {
+        for (int i = 0; i < tagCount; i++) {
+            if (tagNames[i].equals(name)) {
+                return tagValues[i];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String parentApplication() {
+        return parentApplication;
+    }
+
+    @Override
+    public CompactTracingSpan parentApplication(String sourceApp) {
+        this.parentApplication = sourceApp;
+        return this;
+    }
+
+    @Override
+    public String clazz() {
+        return clazz;
+    }
+
+    @Override
+    public String method() {
+        return method;
+    }
+
+    @Override
+    public CompactTracingSpan method(String clazz, String method) {
+        this.clazz = clazz;
+        this.method = method;
+        return this;
+    }
+
+    @Override
+    public ITraceSpan clazz(String clazz) {
+        this.clazz = clazz;
+        return this;
+    }
+
+    @Override
+    public long startTime() {
+        return this.startTime;
+    }
+
+    @Override
+    public long endTime() {
+        return this.endTime;
+    }
+
+    @Override
+    public ITraceSpan newChildSpan(String name) {
+        if (spanIdText != null) {
+            // The id of this span is not in primitive form, use the text form as parent span id
+            return tracingContext.newSpan(spanIdText, tracingContext.spanIdGenerator().newSpanId())
+                                 .name(name);
+        }
+        long childSpanId = tracingContext.spanIdGenerator().newSpanIdAsLong();
+        if (childSpanId == SpanIds.INVALID) {
+            // The id of the generator can't be kept in primitive form
+            return tracingContext.newSpan(spanId(), tracingContext.spanIdGenerator().newSpanId())
+                                 .name(name);
+        }
+        return tracingContext.newSpan(this, childSpanId)
+                             .name(name);
+    }
+
+    @Override
+    public CompactTracingSpan start() {
+        this.startTime = tracingContext.clock().currentMicroseconds();
+        this.tracingContext.onSpanStarted(this);
+        return this;
+    }
+
+    @Override
+    public ITraceSpan detach() {
+        tracingContext.detach(this);
+        TracingContext detachedContext = (TracingContext) tracingContext.copy();
+        CompactTracingSpan detachedSpan = (CompactTracingSpan) detachedContext.newSpan(parentSpanId(), spanId());
+
+        detachedSpan.startTime = this.startTime;
+        detachedSpan.endTime = this.endTime;
+        detachedSpan.kind = this.kind;
+        detachedSpan.component = this.component;
+        detachedSpan.parentApplication = this.parentApplication;
+        detachedSpan.clazz = this.clazz;
+        detachedSpan.method = this.method;
+        for (int i = 0; i < tagCount; i++) {
+            detachedSpan.tag(tagNames[i], tagValues[i]);
+        }
+
+        return detachedSpan;
+    }
+
+    @Override
+    public void finish() {
+        if (this.endTime != 0 || this.tracingContext == null) {
+            // This span has already been closed, this is a bug
+            return;
+        }
+
+        this.endTime = context().clock().currentMicroseconds();
+        try {
+            this.tracingContext.onSpanFinished(this);
+        } catch (Throwable t) {
+            LoggerFactory.getLogger(CompactTracingSpan.class).warn("Exception occurred when finishing a span", t);
+        }
+    }
+
+    @Override
+    public String toString() {
+        String exception = getTag(Tags.Exception.TYPE);
+        return "TraceSpan[name=" + this.component +
+               ", traceId=" + (this.tracingContext == null ? null : this.traceId()) +
+               ", spanId=" + this.spanId() +
+               ", parentId=" + this.parentSpanId() +
+               ", clazz=" + this.clazz +
+               ", method=" + this.method +
+               ", kind=" + this.kind +
+               ", cost=" + (this.endTime - this.startTime) + "(micro seconds)" +
+               ", exception=" + (exception == null ? "" : exception) +
+               "]";
+    }
+
+    private class TagMap extends AbstractMap<String, String> {
+        @Override
+        public String get(Object key) {
+            return key instanceof String ? getTag((String) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return tagCount;
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<Entry<String, String>>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new Iterator<Entry<String, String>>() {
+                        private int index = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < tagCount;
+                        }
+
+                        @Override
+                        public Entry<String, String> next() {
+                            if (index >= tagCount) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<String, String> entry = new SimpleImmutableEntry<>(tagNames[index], tagValues[index]);
+                            index++;
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return tagCount;
+                }
+            };
+        }
+    }
+}
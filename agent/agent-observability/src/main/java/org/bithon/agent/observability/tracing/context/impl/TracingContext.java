@@ -32,7 +32,7 @@ import org.bithon.component.commons.logging.LoggerFactory;
 import org.bithon.component.commons.time.Clock;
 import org.bithon.component.commons.utils.StringUtils;
 
-import java.util.Stack;
+import java.util.ArrayDeque;
 
 /**
  * @author frank.chen021@outlook.com
@@ -42,9 +42,17 @@ public class TracingContext implements ITraceContext {
 
     private static final boolean IS_DEBUG_ENABLED = ConfigurationManager.getInstance().getConfig(TraceConfig.class).isDebug();
 
-    private final Stack<ITraceSpan> spanStack = new Stack<>();
+    /**
+     * Only accessed by the thread that owns this context, no need to use a synchronized structure like {@link java.util.Stack}
+     */
+    private final ArrayDeque<ITraceSpan> spanStack = new ArrayDeque<>();
     private final Clock clock;
 
+    /**
+     * See {@link TraceConfig#isCompactSpan()}
+     */
+    private final boolean compactSpan;
+
     /**
      * The traceId of this context.
      */
@@ -61,16 +69,27 @@ public class TracingContext implements ITraceContext {
 
     public TracingContext(String traceId,
                           ISpanIdGenerator spanIdGenerator) {
-        this(traceId, spanIdGenerator, new Clock());
+        this(traceId, spanIdGenerator, new Clock(), isCompactSpanEnabled());
     }
 
     private TracingContext(String traceId,
                            ISpanIdGenerator spanIdGenerator,
-                           Clock clock) {
+                           Clock clock,
+                           boolean compactSpan) {
         this.traceId = traceId;
         this.spanIdGenerator = spanIdGenerator;
         this.clock = clock;
-        this.reporter = new BatchReporter(Tracer.get().reporter());
+        this.compactSpan = compactSpan;
+        this.reporter = compactSpan
+                        // Spans have been converted into messages once they're reported,
+                        // they're recycled after the whole trace is flushed in finish()
+                        ? new BatchReporter(Tracer.get().reporter(), CompactTracingSpan::recycle)
+                        : new BatchReporter(Tracer.get().reporter());
+    }
+
+    private static boolean isCompactSpanEnabled() {
+        TraceConfig traceConfig = Tracer.get().traceConfig();
+        return traceConfig != null && traceConfig.isCompactSpan();
     }
 
     @Override
@@ -111,7 +130,16 @@ public class TracingContext implements ITraceContext {
 
     @Override
     public ITraceSpan newSpan(String parentSpanId, String spanId) {
-        ITraceSpan span = new TracingSpan(spanId, parentSpanId, this);
+        ITraceSpan span = compactSpan ? CompactTracingSpan.acquire(this, spanId, parentSpanId)
+                                      : new TracingSpan(spanId, parentSpanId, this);
+
+        spanStack.push(span);
+
+        return span;
+    }
+
+    ITraceSpan newSpan(CompactTracingSpan parentSpan, long spanId) {
+        ITraceSpan span = CompactTracingSpan.acquire(this, spanId, parentSpan.spanIdAsLong());
 
         spanStack.push(span);
 
@@ -149,11 +177,11 @@ public class TracingContext implements ITraceContext {
         }
     }
 
-    void onSpanStarted(TracingSpan span) {
+    void onSpanStarted(ITraceSpan span) {
         TraceContextListener.getInstance().onSpanStarted(span);
     }
 
-    boolean detach(TracingSpan span) {
+    boolean detach(ITraceSpan span) {
         if (!spanStack.isEmpty() && spanStack.peek().equals(span)) {
             spanStack.pop();
             return true;
@@ -168,7 +196,7 @@ public class TracingContext implements ITraceContext {
         return false;
     }
 
-    void onSpanFinished(TracingSpan span) {
+    void onSpanFinished(ITraceSpan span) {
         try {
             TraceContextListener.getInstance().onSpanFinished(span);
         } catch (Throwable t) {
@@ -210,7 +238,8 @@ public class TracingContext implements ITraceContext {
                                   this.spanIdGenerator,
                                   // For all copied trace context that has the same traceId,
                                   // use the same clock to ensure the microsecond calculation is based on the same time base
-                                  this.clock);
+                                  this.clock,
+                                  this.compactSpan);
     }
 
     @Override
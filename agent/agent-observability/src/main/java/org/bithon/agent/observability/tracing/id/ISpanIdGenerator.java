@@ -25,4 +25,15 @@ public interface ISpanIdGenerator {
      * @return an id which can be represented in HEX with a length of 16
      */
     String newSpanId();
+
+    /**
+     * The primitive form of {@link #newSpanId()}, which is converted to HEX only when it's exported.
+     * Implementations are encouraged to override this method to avoid the creation of intermediate strings.
+     *
+     * @return a non-zero id, or {@link SpanIds#INVALID} if the id of this generator can't be kept in primitive form.
+     * In the latter case, callers should use {@link #newSpanId()} instead.
+     */
+    default long newSpanIdAsLong() {
+        return SpanIds.fromHexString(newSpanId());
+    }
 }
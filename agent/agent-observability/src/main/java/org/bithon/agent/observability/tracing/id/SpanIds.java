@@ -0,0 +1,68 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.observability.tracing.id;
+
+/**
+ * Conversion between the primitive form and the HEX form of span ids.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class SpanIds {
+    /**
+     * The value that represents an invalid span id
+     */
+    public static final long INVALID = 0;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * @return a 16-digit lower case HEX string
+     */
+    public static String toHexString(long spanId) {
+        char[] chars = new char[16];
+        for (int i = 15; i >= 0; i--) {
+            chars[i] = HEX[(int) (spanId & 0xF)];
+            spanId >>>= 4;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return the primitive form of a 16-digit lower case HEX string,
+     * or {@link #INVALID} if the given id can't be converted back to the same text by {@link #toHexString(long)}
+     */
+    public static long fromHexString(String spanId) {
+        if (spanId == null || spanId.length() != 16) {
+            return INVALID;
+        }
+
+        long value = 0;
+        for (int i = 0; i < 16; i++) {
+            char c = spanId.charAt(i);
+            int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (c >= 'a' && c <= 'f') {
+                digit = c - 'a' + 10;
+            } else {
+                return INVALID;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+}
@@ -55,6 +55,11 @@ public class DefaultSpanIdGenerator implements ISpanIdGenerator {
 
     @Override
     public String newSpanId() {
-        return Long.toHexString(processId | (((System.nanoTime() & 0xFFFF) << 32)) | counter.getAndIncrement());
+        return Long.toHexString(newSpanIdAsLong());
+    }
+
+    @Override
+    public long newSpanIdAsLong() {
+        return processId | (((System.nanoTime() & 0xFFFF) << 32)) | (counter.getAndIncrement() & 0xFFFFFFFFL);
     }
 }
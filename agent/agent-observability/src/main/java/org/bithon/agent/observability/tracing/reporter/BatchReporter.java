@@ -20,6 +20,7 @@ import org.bithon.agent.observability.tracing.context.ITraceSpan;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * This reporter batches spans and reports them to the delegate reporter.
@@ -33,10 +34,28 @@ public class BatchReporter implements ITraceReporter {
     private final List<ITraceSpan> batch;
     private final int batchSize;
 
+    /**
+     * Called on each reported span when this reporter is flushed.
+     * A span that fills a batch is reported inside its own finish(), and callers might still use it afterward,
+     * so spans are only handed over to this callback after the whole trace is finished.
+     */
+    private final Consumer<ITraceSpan> onReported;
+
+    /**
+     * Spans that have been handed over to the delegate since last flush, only kept when {@link #onReported} is given
+     */
+    private final List<ITraceSpan> reported;
+
     public BatchReporter(ITraceReporter delegate) {
+        this(delegate, null);
+    }
+
+    public BatchReporter(ITraceReporter delegate, Consumer<ITraceSpan> onReported) {
         this.delegate = delegate;
         this.batchSize = delegate.getReporterConfig().getBatchSize();
         this.batch = new ArrayList<>(this.batchSize);
+        this.onReported = onReported;
+        this.reported = onReported == null ? null : new ArrayList<>();
     }
 
     public ITraceReporter getDelegate() {
@@ -65,15 +84,28 @@ public class BatchReporter implements ITraceReporter {
     @Override
     public void flush() {
         if (!batch.isEmpty()) {
-            delegate.report(batch);
-            batch.clear();
+            reportBatch();
+        }
+
+        if (onReported != null) {
+            for (ITraceSpan span : reported) {
+                onReported.accept(span);
+            }
+            reported.clear();
         }
     }
 
     private void reportIfNeeded() {
         if (batch.size() >= batchSize) {
-            delegate.report(batch);
-            batch.clear();
+            reportBatch();
+        }
+    }
+
+    private void reportBatch() {
+        delegate.report(batch);
+        if (reported != null) {
+            reported.addAll(batch);
         }
+        batch.clear();
     }
 }
@@ -0,0 +1,108 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.observability.exporter.task;
+
+import org.bithon.agent.observability.exporter.config.ExporterConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of application threads handing messages over to the export queue
+ * under the DISCARD_OLDEST strategy used by {@link ExportTask}, while one consumer keeps draining the queue in batch.
+ * <p>
+ * Run {@link #main(String[])} to measure at 1, 4, 16 and 64 producer threads.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class ExportQueueBenchmark {
+
+    @Param({"BLOCKING", "RING_BUFFER"})
+    public ExporterConfig.QueueType queueType;
+
+    private IThreadSafeQueue queue;
+    private Thread consumer;
+    private volatile boolean running;
+
+    private final List<Object> message = Collections.singletonList(new Object());
+
+    @Setup(Level.Trial)
+    public void setup() {
+        queue = new BatchMessageQueue(ExporterConfig.QueueType.RING_BUFFER.equals(queueType)
+                                      ? new RingBufferQueue(8192)
+                                      : new BlockingQueue(8192),
+                                      1024);
+
+        running = true;
+        consumer = new Thread(() -> {
+            while (running) {
+                try {
+                    queue.take(10);
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }, "benchmark-consumer");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        running = false;
+        consumer.join();
+    }
+
+    @Benchmark
+    public void offer() {
+        // Same as the DISCARD_OLDEST in ExportTask
+        while (!queue.offer(message)) {
+            queue.pop();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 4, 16, 64}) {
+            Options opt = new OptionsBuilder()
+                .include(ExportQueueBenchmark.class.getSimpleName())
+                .threads(threads)
+                .forks(1)
+                .warmupIterations(2)
+                .measurementIterations(5)
+                .build();
+
+            new Runner(opt).run();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.observability.exporter.task;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class RingBufferQueueTest {
+
+    @Test
+    public void testCapacityIsRoundedUp() {
+        Assertions.assertEquals(1, new RingBufferQueue(1).capacity());
+        Assertions.assertEquals(8, new RingBufferQueue(5).capacity());
+        Assertions.assertEquals(8, new RingBufferQueue(8).capacity());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new RingBufferQueue(0));
+    }
+
+    @Test
+    public void testOfferAndPopInOrder() {
+        RingBufferQueue queue = new RingBufferQueue(4);
+        Assertions.assertNull(queue.pop());
+
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertTrue(queue.offer(i));
+        }
+        // The queue is full
+        Assertions.assertFalse(queue.offer(4));
+        Assertions.assertEquals(4, queue.size());
+
+        Assertions.assertEquals(0, queue.pop());
+        Assertions.assertTrue(queue.offer(4));
+
+        for (int i = 1; i <= 4; i++) {
+            Assertions.assertEquals(i, queue.pop());
+        }
+        Assertions.assertNull(queue.pop());
+        Assertions.assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testDrainTo() {
+        RingBufferQueue queue = new RingBufferQueue(8);
+
+        // Wrap around the ring
+        for (int i = 0; i < 6; i++) {
+            queue.offer(i);
+        }
+        List<Object> sink = new ArrayList<>();
+        Assertions.assertEquals(6, queue.drainTo(sink, 100));
+        for (int i = 6; i < 12; i++) {
+            queue.offer(i);
+        }
+
+        sink.clear();
+        Assertions.assertEquals(4, queue.drainTo(sink, 4));
+        Assertions.assertEquals(Arrays.asList(6, 7, 8, 9), sink);
+
+        sink.clear();
+        Assertions.assertEquals(2, queue.drainTo(sink, 4));
+        Assertions.assertEquals(Arrays.asList(10, 11), sink);
+
+        Assertions.assertEquals(0, queue.drainTo(sink, 4));
+    }
+
+    @Test
+    public void testTakeTimeout() throws InterruptedException {
+        RingBufferQueue queue = new RingBufferQueue(8);
+
+        long start = System.currentTimeMillis();
+        Assertions.assertNull(queue.take(200));
+        Assertions.assertTrue(System.currentTimeMillis() - start >= 200);
+    }
+
+    @Test
+    public void testTakeIsWokenUpByOffer() throws InterruptedException {
+        RingBufferQueue queue = new RingBufferQueue(8);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.execute(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException ignored) {
+            }
+            queue.offer("a");
+        });
+
+        long start = System.currentTimeMillis();
+        Assertions.assertEquals("a", queue.take(5000));
+        Assertions.assertTrue(System.currentTimeMillis() - start < 2000);
+        executor.shutdown();
+    }
+
+    @Test
+    public void testMultipleProducers() throws InterruptedException {
+        int producers = 8;
+        int countPerProducer = 10_000;
+
+        RingBufferQueue queue = new RingBufferQueue(1024);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch latch = new CountDownLatch(producers);
+        for (int p = 0; p < producers; p++) {
+            int base = p * countPerProducer;
+            executor.execute(() -> {
+                for (int i = 0; i < countPerProducer; i++) {
+                    while (!queue.offer(base + i)) {
+                        Thread.yield();
+                    }
+                }
+                latch.countDown();
+            });
+        }
+
+        Set<Object> received = new HashSet<>();
+        List<Object> sink = new ArrayList<>();
+        while (received.size() < producers * countPerProducer) {
+            Object e = queue.take(1000);
+            Assertions.assertNotNull(e, "Timed out to take elements");
+            received.add(e);
+
+            sink.clear();
+            queue.drainTo(sink, 64);
+            received.addAll(sink);
+        }
+        Assertions.assertTrue(latch.await(1, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, queue.size());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testBatchTakeOverRingBuffer() {
+        BatchMessageQueue queue = new BatchMessageQueue(new RingBufferQueue(16), 5);
+
+        // A list that exactly fits the batch size is returned without copying
+        List<Integer> fullBatch = Arrays.asList(1, 2, 3, 4, 5);
+        queue.offer(fullBatch);
+        Assertions.assertSame(fullBatch, queue.take(100));
+
+        queue.offer(Arrays.asList(1, 2, 3));
+        queue.offer(Arrays.asList(4, 5, 6));
+        queue.offer(7);
+        Assertions.assertEquals(Arrays.asList(1, 2, 3, 4, 5), queue.take(100));
+        Assertions.assertEquals(2, queue.size());
+        Assertions.assertEquals(Arrays.asList(6, 7), queue.take(100));
+        Assertions.assertEquals(0, queue.size());
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.observability.metric.model;
+
+import org.bithon.agent.observability.exporter.InMemoryMessageExporterFactory;
+import org.bithon.agent.observability.metric.domain.sql.SQLMetricStorage;
+import org.bithon.agent.observability.metric.domain.sql.SQLMetrics;
+import org.bithon.agent.observability.metric.model.schema.Dimensions;
+import org.bithon.component.commons.histogram.HistogramSnapshot;
+import org.bithon.component.commons.utils.HumanReadableDuration;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class HistogramTest {
+
+    @Test
+    public void testGetAndReset() {
+        Histogram histogram = new Histogram();
+        Assertions.assertNull(histogram.getAndReset());
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.update(i);
+        }
+        HistogramSnapshot snapshot = histogram.getAndReset();
+        Assertions.assertNotNull(snapshot);
+        Assertions.assertEquals(1000, snapshot.getCount());
+        Assertions.assertEquals(500500, snapshot.getSum());
+        Assertions.assertEquals(1, snapshot.getMin());
+        Assertions.assertEquals(1000, snapshot.getMax());
+        Assertions.assertEquals(990, snapshot.quantile(0.99), 990 * 0.04);
+
+        // Reset after collection
+        Assertions.assertNull(histogram.getAndReset());
+    }
+
+    @Test
+    public void testConcurrentUpdate() throws InterruptedException {
+        int threads = 8;
+        int updatesPerThread = 100_000;
+
+        Histogram histogram = new Histogram();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch end = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < updatesPerThread; i++) {
+                    histogram.update(i);
+                }
+                end.countDown();
+            });
+        }
+        Assertions.assertTrue(end.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        HistogramSnapshot snapshot = histogram.getAndReset();
+        Assertions.assertEquals((long) threads * updatesPerThread, snapshot.getCount());
+        Assertions.assertEquals(0, snapshot.getMin());
+        Assertions.assertEquals(updatesPerThread - 1, snapshot.getMax());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testMetricStorage() {
+        SQLMetricStorage.SQLMetricsConfig config = new SQLMetricStorage.SQLMetricsConfig();
+        config.setResponseTime(HumanReadableDuration.parse("1s"));
+        SQLMetricStorage storage = new SQLMetricStorage(config);
+
+        // Aggregated
+        for (int i = 1; i <= 100; i++) {
+            long responseTime = i * 1000_000L;
+            storage.add(Dimensions.of("h2", "select", "", ""), (SQLMetrics metrics) -> {
+                metrics.responseTime = responseTime;
+                metrics.callCount = 1;
+            });
+        }
+        // Raw, exceeds the threshold
+        storage.add(Dimensions.of("h2", "select", "trace", "select 1"), (SQLMetrics metrics) -> {
+            metrics.responseTime = 2_000_000_000L;
+            metrics.callCount = 1;
+        });
+
+        List<IMeasurement> measurements = new ArrayList<>((Collection<IMeasurement>) storage.collect(new InMemoryMessageExporterFactory.RawMessageConverter(), 10, 0));
+        Assertions.assertEquals(2, measurements.size());
+
+        for (IMeasurement measurement : measurements) {
+            Assertions.assertEquals(1, measurement.getHistogramCount());
+
+            HistogramSnapshot histogram = measurement.getHistogram(0);
+            if (measurement.getDimensions().getValue(2).isEmpty()) {
+                Assertions.assertEquals(100, histogram.getCount());
+                Assertions.assertEquals(measurement.getMetricValue("responseTime"), histogram.getSum());
+                Assertions.assertEquals(95_000_000, histogram.quantile(0.95), 95_000_000 * 0.04);
+            } else {
+                Assertions.assertEquals(1, histogram.getCount());
+                Assertions.assertEquals(2_000_000_000L, histogram.getMax());
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.observability.metric.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of updating one shared Sum/Max/Min by many application threads,
+ * which is what happens to the metrics of a hot HTTP endpoint.
+ * <p>
+ * Run {@link #main(String[])} to measure at 1, 4, 16 and 64 threads.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class StripedMetricBenchmark {
+
+    @Param({"false", "true"})
+    public boolean striped;
+
+    private Sum sum;
+    private Max max;
+    private Min min;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        sum = Sum.create(striped);
+        max = Max.create(striped);
+        min = Min.create(striped);
+    }
+
+    @Benchmark
+    public long sum() {
+        return sum.update(1);
+    }
+
+    @Benchmark
+    public long maxAndMin() {
+        long v = ThreadLocalRandom.current().nextLong(1_000_000);
+        return max.update(v) + min.update(v);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 4, 16, 64}) {
+            Options opt = new OptionsBuilder()
+                .include(StripedMetricBenchmark.class.getSimpleName())
+                .threads(threads)
+                .forks(1)
+                .warmupIterations(2)
+                .measurementIterations(5)
+                .build();
+
+            new Runner(opt).run();
+        }
+    }
+}
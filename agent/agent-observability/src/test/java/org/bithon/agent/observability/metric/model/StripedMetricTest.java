@@ -0,0 +1,138 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.observability.metric.model;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class StripedMetricTest {
+
+    private static final int THREADS = 16;
+    private static final int UPDATES_PER_THREAD = 100_000;
+
+    private void runConcurrently(IntConsumer task) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch end = new CountDownLatch(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+                        task.accept(thread * UPDATES_PER_THREAD + i);
+                    }
+                } catch (InterruptedException ignored) {
+                } finally {
+                    end.countDown();
+                }
+            });
+        }
+        start.countDown();
+        Assertions.assertTrue(end.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSum() throws InterruptedException {
+        StripedSum sum = new StripedSum();
+        Assertions.assertEquals(0, sum.get());
+
+        sum.update(5);
+        sum.incr();
+        Assertions.assertEquals(6, sum.peek());
+        Assertions.assertEquals(6, sum.get());
+        Assertions.assertEquals(0, sum.get());
+
+        runConcurrently((v) -> sum.incr());
+        Assertions.assertEquals((long) THREADS * UPDATES_PER_THREAD, sum.peek());
+        Assertions.assertEquals((long) THREADS * UPDATES_PER_THREAD, sum.get());
+
+        // All cells are reset
+        Assertions.assertEquals(0, sum.peek());
+        Assertions.assertEquals(0, sum.get());
+    }
+
+    @Test
+    public void testSumNoUpdateLostDuringGet() throws InterruptedException {
+        StripedSum sum = new StripedSum();
+
+        long[] collected = new long[1];
+        Thread collector = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                collected[0] += sum.get();
+            }
+        });
+        collector.start();
+        runConcurrently((v) -> sum.incr());
+        collector.interrupt();
+        collector.join();
+
+        Assertions.assertEquals((long) THREADS * UPDATES_PER_THREAD, collected[0] + sum.get());
+    }
+
+    @Test
+    public void testMax() throws InterruptedException {
+        StripedMax max = new StripedMax();
+
+        // No value has been recorded
+        Assertions.assertEquals(0, max.get());
+
+        max.update(-5);
+        Assertions.assertEquals(-5, max.get());
+        Assertions.assertEquals(0, max.get());
+
+        runConcurrently(max::update);
+        Assertions.assertEquals(THREADS * UPDATES_PER_THREAD - 1, max.get());
+        Assertions.assertEquals(0, max.get());
+    }
+
+    @Test
+    public void testMin() throws InterruptedException {
+        StripedMin min = new StripedMin();
+
+        // No value has been recorded
+        Assertions.assertEquals(0, min.get());
+
+        min.update(5);
+        Assertions.assertEquals(5, min.get());
+        Assertions.assertEquals(0, min.get());
+
+        runConcurrently((v) -> min.update(v + 1));
+        Assertions.assertEquals(1, min.get());
+        Assertions.assertEquals(0, min.get());
+    }
+
+    @Test
+    public void testCreate() {
+        Assertions.assertInstanceOf(StripedSum.class, Sum.create(true));
+        Assertions.assertSame(Sum.class, Sum.create(false).getClass());
+        Assertions.assertInstanceOf(StripedMax.class, Max.create(true));
+        Assertions.assertSame(Max.class, Max.create(false).getClass());
+        Assertions.assertInstanceOf(StripedMin.class, Min.create(true));
+        Assertions.assertSame(Min.class, Min.create(false).getClass());
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.observability.tracing.context;
+
+import org.bithon.agent.configuration.ConfigurationManager;
+import org.bithon.agent.observability.tracing.Tracer;
+import org.bithon.agent.observability.tracing.config.TraceConfig;
+import org.bithon.agent.observability.tracing.id.ISpanIdGenerator;
+import org.bithon.agent.observability.tracing.id.SpanIds;
+import org.bithon.agent.observability.tracing.id.impl.DefaultSpanIdGenerator;
+import org.bithon.agent.observability.tracing.reporter.ITraceReporter;
+import org.bithon.agent.observability.tracing.reporter.ReporterConfig;
+import org.bithon.agent.observability.tracing.sampler.SamplingMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class CompactTracingSpanTest {
+
+    /**
+     * Simulates the message conversion in the exporter
+     */
+    static class ReportedSpan {
+        final ITraceSpan span;
+        final String name;
+        final String spanId;
+        final String parentSpanId;
+        final Map<String, String> tags = new HashMap<>();
+        final ITraceSpan snapshot;
+
+        ReportedSpan(ITraceSpan span) {
+            this.span = span;
+            this.snapshot = span.snapshot();
+            this.name = span.name();
+            this.spanId = span.spanId();
+            this.parentSpanId = span.parentSpanId();
+            span.forEachTag(tags::put);
+        }
+    }
+
+    private final List<ReportedSpan> reported = new ArrayList<>();
+    private Tracer originalTracer;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        ConfigurationManager.createForTesting();
+
+        originalTracer = setTracer(newTracer(new DefaultSpanIdGenerator()));
+    }
+
+    private Tracer newTracer(ISpanIdGenerator spanIdGenerator) {
+        TraceConfig traceConfig = new TraceConfig();
+        traceConfig.setCompactSpan(true);
+        return new Tracer("test", "test").traceConfig(traceConfig)
+                                         .spanIdGenerator(spanIdGenerator)
+                                         .reporter(new ITraceReporter() {
+                                             @Override
+                                             public ReporterConfig getReporterConfig() {
+                                                 return new ReporterConfig();
+                                             }
+
+                                             @Override
+                                             public void report(List<ITraceSpan> spans) {
+                                                 synchronized (reported) {
+                                                     for (ITraceSpan span : spans) {
+                                                         reported.add(new ReportedSpan(span));
+                                                     }
+                                                 }
+                                             }
+                                         });
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        TraceContextHolder.detach();
+        setTracer(originalTracer);
+    }
+
+    @Test
+    public void testSpanIds() {
+        Assertions.assertEquals("0000000000000001", SpanIds.toHexString(1));
+        Assertions.assertEquals("ffffffffffffffff", SpanIds.toHexString(-1));
+        Assertions.assertEquals(-1, SpanIds.fromHexString("ffffffffffffffff"));
+        Assertions.assertEquals(0x1234L, SpanIds.fromHexString("0000000000001234"));
+
+        // Can't be converted back to the same text
+        Assertions.assertEquals(SpanIds.INVALID, SpanIds.fromHexString("1234"));
+        Assertions.assertEquals(SpanIds.INVALID, SpanIds.fromHexString("000000000000123A"));
+        Assertions.assertEquals(SpanIds.INVALID, SpanIds.fromHexString(null));
+
+        DefaultSpanIdGenerator generator = new DefaultSpanIdGenerator();
+        String id = SpanIds.toHexString(generator.newSpanIdAsLong());
+        Assertions.assertEquals(16, id.length());
+        Assertions.assertEquals(16, generator.newSpanId().length());
+    }
+
+    @Test
+    public void testSpanIdsAndTags() {
+        ITraceContext context = TraceContextFactory.newContext(SamplingMode.FULL, "0123456789abcdef0123456789abcdef", "upstream-span");
+        ITraceSpan rootSpan = context.currentSpan().name("root").start();
+        Assertions.assertEquals("upstream-span", rootSpan.parentSpanId());
+
+        ITraceSpan childSpan = rootSpan.newChildSpan("child").start();
+        Assertions.assertSame(childSpan, context.currentSpan());
+        Assertions.assertEquals(rootSpan.spanId(), childSpan.parentSpanId());
+        Assertions.assertEquals(16, childSpan.spanId().length());
+
+        for (int i = 0; i < 20; i++) {
+            childSpan.tag("k" + i, "v" + i);
+        }
+        // The last one wins
+        childSpan.tag("k0", "new");
+        childSpan.tag("null", (String) null);
+        Assertions.assertEquals(20, childSpan.tags().size());
+        Assertions.assertEquals("new", childSpan.tags().get("k0"));
+        Assertions.assertEquals("v19", childSpan.tags().get("k19"));
+        Assertions.assertFalse(childSpan.tags().containsKey("null"));
+
+        String childSpanId = childSpan.spanId();
+        childSpan.finish();
+        Assertions.assertSame(rootSpan, context.currentSpan());
+        rootSpan.finish();
+        context.finish();
+
+        Assertions.assertEquals(2, reported.size());
+        Assertions.assertEquals("child", reported.get(0).name);
+        Assertions.assertEquals(childSpanId, reported.get(0).spanId);
+        Assertions.assertEquals(reported.get(1).spanId, reported.get(0).parentSpanId);
+        Assertions.assertEquals("new", reported.get(0).tags.get("k0"));
+        Assertions.assertEquals("root", reported.get(1).name);
+        Assertions.assertEquals("upstream-span", reported.get(1).parentSpanId);
+    }
+
+    @Test
+    public void testSpansAreRecycled() {
+        for (int i = 0; i < 3; i++) {
+            ITraceContext context = TraceContextFactory.newContext(SamplingMode.FULL);
+            ITraceSpan rootSpan = context.currentSpan().name("root").start();
+            rootSpan.newChildSpan("child").tag("k", "v").start().finish();
+            rootSpan.finish();
+            context.finish();
+        }
+
+        // Each trace has 2 spans, the span objects of the 1st trace should be reused by following traces
+        Assertions.assertEquals(6, reported.size());
+        Map<ITraceSpan, Boolean> distinctSpans = new IdentityHashMap<>();
+        for (ReportedSpan span : reported) {
+            distinctSpans.put(span.span, true);
+        }
+        Assertions.assertEquals(2, distinctSpans.size());
+
+        // Recycled spans are cleared
+        ITraceSpan recycled = reported.get(0).span;
+        Assertions.assertNull(recycled.context());
+        Assertions.assertTrue(recycled.tags().isEmpty());
+
+        // But the snapshot is not affected
+        ITraceSpan snapshot = reported.get(0).snapshot;
+        Assertions.assertEquals(reported.get(0).spanId, snapshot.spanId());
+        Assertions.assertEquals(reported.get(0).parentSpanId, snapshot.parentSpanId());
+        Assertions.assertEquals("child", snapshot.name());
+        Assertions.assertEquals("v", snapshot.tags().get("k"));
+        Assertions.assertNotNull(snapshot.context());
+    }
+
+    @Test
+    public void testRootSpanFillsBatch() {
+        int batchSize = new ReporterConfig().getBatchSize();
+
+        // The root span is the last one of the 2nd batch, which is reported inside its finish()
+        ITraceContext context = TraceContextFactory.newContext(SamplingMode.FULL);
+        ITraceSpan rootSpan = context.currentSpan().name("root").start();
+        for (int i = 0; i < 2 * batchSize - 1; i++) {
+            rootSpan.newChildSpan("child").start().finish();
+        }
+        rootSpan.finish();
+        Assertions.assertEquals(2 * batchSize, reported.size());
+
+        // Spans are not recycled before the trace is finished
+        Assertions.assertSame(context, rootSpan.context());
+        Assertions.assertEquals("root", rootSpan.name());
+        rootSpan.context().finish();
+
+        Assertions.assertNull(rootSpan.context());
+        Assertions.assertEquals(2 * batchSize, reported.size());
+    }
+
+    @Test
+    public void testSpansFinishedOnAnotherThread() throws Exception {
+        // Spans are acquired on one thread, but the context is finished on another thread
+        ITraceContext[] contexts = new ITraceContext[1];
+        runOnNewThread(() -> {
+            contexts[0] = TraceContextFactory.newContext(SamplingMode.FULL);
+            ITraceSpan rootSpan = contexts[0].currentSpan().name("root").start();
+            rootSpan.newChildSpan("child").start().finish();
+            rootSpan.finish();
+        });
+        runOnNewThread(() -> contexts[0].finish());
+        Assertions.assertEquals(2, reported.size());
+
+        // The spans are returned to the shared pool, and are reused by another thread
+        runOnNewThread(() -> {
+            ITraceContext context = TraceContextFactory.newContext(SamplingMode.FULL);
+            ITraceSpan rootSpan = context.currentSpan().name("root").start();
+            rootSpan.newChildSpan("child").start().finish();
+            rootSpan.finish();
+            context.finish();
+        });
+        Assertions.assertEquals(4, reported.size());
+
+        Map<ITraceSpan, Boolean> distinctSpans = new IdentityHashMap<>();
+        for (ReportedSpan span : reported) {
+            distinctSpans.put(span.span, true);
+        }
+        Assertions.assertEquals(2, distinctSpans.size());
+    }
+
+    @Test
+    public void testSpanIdsNotInPrimitiveForm() throws Exception {
+        AtomicInteger counter = new AtomicInteger();
+        setTracer(newTracer(() -> "span-" + counter.incrementAndGet()));
+
+        ITraceContext context = TraceContextFactory.newContext(SamplingMode.FULL);
+        ITraceSpan rootSpan = context.currentSpan().name("root").start();
+        ITraceSpan childSpan = rootSpan.newChildSpan("child").start();
+
+        Assertions.assertTrue(rootSpan.spanId().startsWith("span-"));
+        Assertions.assertTrue(childSpan.spanId().startsWith("span-"));
+        Assertions.assertNotEquals(rootSpan.spanId(), childSpan.spanId());
+        Assertions.assertEquals(rootSpan.spanId(), childSpan.parentSpanId());
+
+        childSpan.finish();
+        rootSpan.finish();
+        context.finish();
+    }
+
+    private static void runOnNewThread(Runnable runnable) throws InterruptedException {
+        Thread thread = new Thread(runnable);
+        thread.start();
+        thread.join();
+    }
+
+    @Test
+    public void testDetach() {
+        ITraceContext context = TraceContextFactory.newContext(SamplingMode.FULL);
+        ITraceSpan rootSpan = context.currentSpan().name("root");
+        ITraceSpan childSpan = rootSpan.newChildSpan("child").tag("k", "v");
+
+        ITraceSpan detachedSpan = childSpan.detach();
+        Assertions.assertNotSame(childSpan, detachedSpan);
+        Assertions.assertEquals(childSpan.spanId(), detachedSpan.spanId());
+        Assertions.assertEquals(childSpan.parentSpanId(), detachedSpan.parentSpanId());
+        Assertions.assertEquals("v", detachedSpan.tags().get("k"));
+        Assertions.assertSame(rootSpan, context.currentSpan());
+
+        detachedSpan.finish();
+        detachedSpan.context().finish();
+        rootSpan.finish();
+        context.finish();
+    }
+
+    private static Tracer setTracer(Tracer tracer) throws Exception {
+        Field field = Tracer.class.getDeclaredField("INSTANCE");
+        field.setAccessible(true);
+        Tracer previous = (Tracer) field.get(null);
+        field.set(null, tracer);
+        return previous;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.observability.tracing.context;
+
+import org.bithon.agent.configuration.ConfigurationManager;
+import org.bithon.agent.observability.tracing.Tracer;
+import org.bithon.agent.observability.tracing.config.TraceConfig;
+import org.bithon.agent.observability.tracing.id.impl.DefaultSpanIdGenerator;
+import org.bithon.agent.observability.tracing.reporter.ITraceReporter;
+import org.bithon.agent.observability.tracing.reporter.ReporterConfig;
+import org.bithon.agent.observability.tracing.sampler.SamplingMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of span start/tag/finish and the bytes allocated per trace
+ * for the default span and the compact span.
+ * <p>
+ * Each operation creates a trace with 1 root span and 4 child spans, each of which has 4 tags.
+ * The reporter reads ids and tags of reported spans to simulate the conversion in the exporter.
+ * <p>
+ * Run {@link #main(String[])}, the 'gc.alloc.rate.norm' reported by the GC profiler is the bytes allocated per trace.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class TracingSpanBenchmark {
+
+    @Param({"false", "true"})
+    public boolean compactSpan;
+
+    private Blackhole blackhole;
+
+    @Setup
+    public void setup(Blackhole blackhole) throws Exception {
+        this.blackhole = blackhole;
+
+        ConfigurationManager.createForTesting();
+
+        TraceConfig traceConfig = new TraceConfig();
+        traceConfig.setCompactSpan(compactSpan);
+
+        Field field = Tracer.class.getDeclaredField("INSTANCE");
+        field.setAccessible(true);
+        field.set(null, new Tracer("benchmark", "benchmark")
+            .traceConfig(traceConfig)
+            .spanIdGenerator(new DefaultSpanIdGenerator())
+            .reporter(new ITraceReporter() {
+                @Override
+                public ReporterConfig getReporterConfig() {
+                    return new ReporterConfig();
+                }
+
+                @Override
+                public void report(List<ITraceSpan> spans) {
+                    for (ITraceSpan span : spans) {
+                        TracingSpanBenchmark.this.blackhole.consume(span.spanId());
+                        TracingSpanBenchmark.this.blackhole.consume(span.parentSpanId());
+                        span.forEachTag((k, v) -> TracingSpanBenchmark.this.blackhole.consume(v));
+                    }
+                }
+            }));
+    }
+
+    @Benchmark
+    public void trace() {
+        ITraceContext context = TraceContextFactory.newContext(SamplingMode.FULL);
+        ITraceSpan rootSpan = context.currentSpan()
+                                     .name("http-server")
+                                     .tag("http.uri", "/api/user")
+                                     .start();
+        for (int i = 0; i < 4; i++) {
+            rootSpan.newChildSpan("jdbc")
+                    .method("com.mysql.jdbc.PreparedStatement", "execute")
+                    .tag("db.system", "mysql")
+                    .tag("db.name", "user")
+                    .tag("db.statement", "SELECT * FROM user WHERE id = ?")
+                    .tag("net.peer", "127.0.0.1:3306")
+                    .start()
+                    .finish();
+        }
+        rootSpan.finish();
+        context.finish();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+            .include(TracingSpanBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .warmupIterations(2)
+            .measurementIterations(5)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -18,6 +18,7 @@ package org.bithon.agent.plugin.jdbc.h2;
 
 
 import org.bithon.agent.instrumentation.aop.context.AopContext;
+import org.bithon.agent.instrumentation.aop.interceptor.declaration.AdviceOptions;
 import org.bithon.agent.plugin.jdbc.common.AbstractStatement$Execute;
 import org.bithon.agent.plugin.jdbc.common.StatementContext;
 
@@ -39,9 +40,12 @@ import org.bithon.agent.plugin.jdbc.common.StatementContext;
  * {@link java.sql.Statement#executeLargeUpdate(String, int[])}
  * {@link java.sql.Statement#executeLargeUpdate(String, int)}
  * {@link java.sql.Statement#executeLargeUpdate(String, String[])}
+ * <p>
+ * Only the SQL, which is the first argument, is read, and the context is not referenced after the interception.
  *
  * @author frankchen
  */
+@AdviceOptions(arguments = 0, reuseContext = true)
 public class JdbcStatement$Execute extends AbstractStatement$Execute {
     @Override
     protected StatementContext getStatementContext(AopContext aopContext) {
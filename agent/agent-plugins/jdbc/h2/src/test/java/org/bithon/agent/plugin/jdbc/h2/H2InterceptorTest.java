@@ -0,0 +1,140 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.agent.plugin.jdbc.h2;
+
+import org.bithon.agent.configuration.ConfigurationManager;
+import org.bithon.agent.configuration.source.Helper;
+import org.bithon.agent.instrumentation.aop.interceptor.AdviceOptionsResolver;
+import org.bithon.agent.instrumentation.aop.interceptor.installer.InterceptorInstaller;
+import org.bithon.agent.observability.exporter.IMessageConverter;
+import org.bithon.agent.observability.exporter.InMemoryMessageExporterFactory;
+import org.bithon.agent.observability.metric.domain.sql.SQLMetricStorage;
+import org.bithon.agent.observability.metric.domain.sql.SQLMetrics;
+import org.bithon.agent.observability.metric.model.AbstractMetricStorage;
+import org.bithon.agent.observability.metric.model.IMeasurement;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class H2InterceptorTest {
+
+    private static final String DATABASE = "jdbc:h2:mem:h2_interceptor_test";
+    private static final String URL = DATABASE + ";DB_CLOSE_DELAY=-1";
+
+    private static final IMessageConverter MESSAGE_CONVERTER = new InMemoryMessageExporterFactory.RawMessageConverter();
+
+    @BeforeAll
+    static void setUp() {
+        Map<String, String> env = new HashMap<>();
+        env.put("bithon_exporters_tracing_client_factory", InMemoryMessageExporterFactory.class.getName());
+        env.put("bithon_exporters_metric_client_factory", InMemoryMessageExporterFactory.class.getName());
+
+        try (MockedStatic<Helper> configurationMock = Mockito.mockStatic(Helper.class)) {
+            configurationMock.when(Helper::getCommandLineInputArgs)
+                             .thenReturn(Arrays.asList("-Dbithon.application.name=test",
+                                                       "-Dbithon.application.env=local",
+                                                       "-Dbithon.application.port=9897"));
+
+            configurationMock.when(Helper::getEnvironmentVariables).thenReturn(env);
+
+            ConfigurationManager.createForTesting(new File("not-exists"));
+        }
+
+        InterceptorInstaller.install(new H2Plugin(), H2InterceptorTest.class.getClassLoader());
+    }
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS users (name VARCHAR(64))");
+            statement.execute("DELETE FROM users");
+        }
+
+        // Clear metrics of the statements above
+        SQLMetricStorage.getInstance().collect(MESSAGE_CONVERTER, 0, 0);
+    }
+
+    @Test
+    public void testAdviceOptions() {
+        AdviceOptionsResolver.Options options = AdviceOptionsResolver.INSTANCE.resolve(JdbcStatement$Execute.class.getName());
+        Assertions.assertNotNull(options);
+        Assertions.assertArrayEquals(new int[]{0}, options.getArguments());
+        Assertions.assertTrue(options.isReuseContext());
+    }
+
+    @Test
+    public void testStatementExecute() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            Assertions.assertEquals(1, statement.executeUpdate("INSERT INTO users VALUES ('a')"));
+
+            // The context is reused by subsequent invocations
+            for (int i = 0; i < 2; i++) {
+                try (ResultSet rs = statement.executeQuery("SELECT name FROM users")) {
+                    Assertions.assertTrue(rs.next());
+                    Assertions.assertEquals("a", rs.getString(1));
+                }
+            }
+
+            Assertions.assertThrows(SQLException.class, () -> statement.executeQuery("SELECT name FROM not_exist"));
+        }
+
+        Map<String, SQLMetrics> metrics = collect();
+        Assertions.assertEquals(1, metrics.get("INSERT").callCount);
+        Assertions.assertEquals(0, metrics.get("INSERT").errorCount);
+
+        // The failed one is aggregated with the successful ones
+        Assertions.assertEquals(3, metrics.get("SELECT").callCount);
+        Assertions.assertEquals(1, metrics.get("SELECT").errorCount);
+    }
+
+    /**
+     * @return metrics keyed by the SQL type
+     */
+    private Map<String, SQLMetrics> collect() {
+        //noinspection unchecked
+        Collection<IMeasurement> measurements = (Collection<IMeasurement>) SQLMetricStorage.getInstance()
+                                                                                           .collect(MESSAGE_CONVERTER, 0, 0);
+
+        Map<String, SQLMetrics> metrics = new HashMap<>();
+        for (IMeasurement measurement : measurements) {
+            AbstractMetricStorage.Measurement m = (AbstractMetricStorage.Measurement) measurement;
+            // The URL in H2 does not contain the parameters
+            Assertions.assertEquals(DATABASE, m.getDimensions().getValue(0));
+            metrics.put(m.getDimensions().getValue(1), (SQLMetrics) m.getMetricAccessor());
+        }
+        return metrics;
+    }
+}
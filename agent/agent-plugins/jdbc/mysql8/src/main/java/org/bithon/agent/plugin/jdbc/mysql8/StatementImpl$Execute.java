@@ -20,6 +20,7 @@ package org.bithon.agent.plugin.jdbc.mysql8;
 import com.mysql.cj.MysqlConnection;
 import org.bithon.agent.instrumentation.aop.IBithonObject;
 import org.bithon.agent.instrumentation.aop.context.AopContext;
+import org.bithon.agent.instrumentation.aop.interceptor.declaration.AdviceOptions;
 import org.bithon.agent.observability.utils.MiscUtils;
 import org.bithon.agent.plugin.jdbc.common.AbstractStatement$Execute;
 import org.bithon.agent.plugin.jdbc.common.ConnectionContext;
@@ -33,9 +34,12 @@ import java.sql.SQLException;
  * {@link com.mysql.cj.jdbc.StatementImpl#executeQuery(String)}
  * {@link com.mysql.cj.jdbc.StatementImpl#executeUpdate(String)}
  * {@link com.mysql.cj.jdbc.StatementImpl#executeLargeUpdate(String)}
+ * <p>
+ * Only the SQL, which is the first argument, is read, and the context is not referenced after the interception.
  *
  * @author frankchen
  */
+@AdviceOptions(arguments = 0, reuseContext = true)
 public class StatementImpl$Execute extends AbstractStatement$Execute {
 
     @Override
@@ -67,5 +67,32 @@ public interface IInstrumentationCommand {
         }
     }
 
+    /**
+     * Time spent on transforming classes by a plugin since the agent starts
+     */
+    class PluginTransformation {
+        public String plugin;
+        public long typeCount;
+        public long errorCount;
+        public long totalTimeMicros;
+        public long maxTimeMicros;
+
+        /**
+         * Return the object in an object array.
+         * The sequence of the values in the array MUST be in accordance with the sequence of fields
+         */
+        public Object[] toObjects() {
+            return new Object[]{
+                plugin,
+                typeCount,
+                errorCount,
+                totalTimeMicros,
+                maxTimeMicros
+            };
+        }
+    }
+
     List<InstrumentedMethod> getInstrumentedMethods();
+
+    List<PluginTransformation> getPluginTransformations();
 }
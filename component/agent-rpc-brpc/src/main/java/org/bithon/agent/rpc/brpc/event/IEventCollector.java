@@ -20,6 +20,7 @@ package org.bithon.agent.rpc.brpc.event;
 import org.bithon.agent.rpc.brpc.BrpcMessageHeader;
 import org.bithon.component.brpc.BrpcMethod;
 import org.bithon.component.brpc.BrpcService;
+import org.bithon.component.brpc.message.compression.Compression;
 
 import java.util.List;
 
@@ -27,7 +28,7 @@ import java.util.List;
  * @author frank.chen021@outlook.com
  * @date 2021/6/27 19:57
  */
-@BrpcService
+@BrpcService(compression = Compression.LZ4)
 public interface IEventCollector {
 
     /**
@@ -17,6 +17,7 @@
 package org.bithon.component.brpc;
 
 import org.bithon.component.brpc.message.ServiceMessageType;
+import org.bithon.component.brpc.message.compression.Compression;
 import org.bithon.component.brpc.message.serializer.Serializer;
 
 import java.lang.annotation.ElementType;
@@ -46,4 +47,9 @@ public @interface BrpcMethod {
     int messageType() default ServiceMessageType.CLIENT_REQUEST_V2;
 
     Serializer serializer() default Serializer.PROTOBUF;
+
+    /**
+     * Compression of the request payload. If it's {@link Compression#NONE}, the one on {@link BrpcService} is used
+     */
+    Compression compression() default Compression.NONE;
 }
@@ -16,6 +16,7 @@
 
 package org.bithon.component.brpc;
 
+import org.bithon.component.brpc.message.compression.Compression;
 import org.bithon.component.brpc.message.serializer.Serializer;
 
 import java.lang.annotation.ElementType;
@@ -41,4 +42,10 @@ public @interface BrpcService {
     boolean isOneway() default false;
 
     Serializer serializer() default Serializer.PROTOBUF;
+
+    /**
+     * Compression of the request payload of all methods in this service.
+     * It only takes effect when the remote peer supports the compression, see {@link IServiceRegistry#getCompressions()}
+     */
+    Compression compression() default Compression.NONE;
 }
@@ -16,6 +16,8 @@
 
 package org.bithon.component.brpc;
 
+import java.util.List;
+
 /**
  * @author frank.chen021@outlook.com
  * @date 2022/12/9 21:21
@@ -23,4 +25,10 @@ package org.bithon.component.brpc;
 @BrpcService(name = "brpc.IServiceRegistry")
 public interface IServiceRegistry {
     boolean contains(String service);
+
+    /**
+     * Names of the compressions that this side is able to decompress.
+     * Peers of old versions don't provide this method, and callers should treat it as no compression is supported.
+     */
+    List<String> getCompressions();
 }
@@ -18,12 +18,14 @@ package org.bithon.component.brpc;
 
 import org.bithon.component.brpc.exception.DuplicateServiceException;
 import org.bithon.component.brpc.exception.ServiceRegistrationException;
+import org.bithon.component.brpc.message.compression.Compression;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -94,6 +96,11 @@ public class ServiceRegistry implements IServiceRegistry {
         return registry.containsKey(service);
     }
 
+    @Override
+    public List<String> getCompressions() {
+        return Compression.getAvailableCompressions();
+    }
+
     public static class ServiceInvoker {
         private final ServiceRegistryItem metadata;
 
@@ -17,12 +17,14 @@
 package org.bithon.component.brpc;
 
 import org.bithon.component.brpc.message.ServiceMessageType;
+import org.bithon.component.brpc.message.compression.Compression;
 import org.bithon.component.brpc.message.serializer.Serializer;
 import org.bithon.shaded.io.netty.util.internal.StringUtil;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * metadata of a method in remote service
@@ -38,6 +40,19 @@ public class ServiceRegistryItem {
     private final Serializer serializer;
     private final Type streamingDataType;
 
+    /**
+     * true if the method returns {@link CompletableFuture}
+     */
+    private final boolean isAsync;
+
+    /**
+     * The type of the returned object.
+     * For async methods, it's the type argument of the {@link CompletableFuture}
+     */
+    private final Type returnType;
+
+    private final Compression compression;
+
     private final int messageType;
 
     public ServiceRegistryItem(String serviceName,
@@ -47,6 +62,19 @@ public class ServiceRegistryItem {
                                int messageType,
                                Serializer serializer,
                                Type streamingDataType) {
+        this(serviceName, methodName, isOneway, isStreaming, messageType, serializer, streamingDataType, false, null, Compression.NONE);
+    }
+
+    public ServiceRegistryItem(String serviceName,
+                               String methodName,
+                               boolean isOneway,
+                               boolean isStreaming,
+                               int messageType,
+                               Serializer serializer,
+                               Type streamingDataType,
+                               boolean isAsync,
+                               Type returnType,
+                               Compression compression) {
         this.serviceName = serviceName;
         this.methodName = methodName;
         this.isOneway = isOneway;
@@ -54,6 +82,9 @@ public class ServiceRegistryItem {
         this.messageType = messageType;
         this.serializer = serializer;
         this.streamingDataType = streamingDataType;
+        this.isAsync = isAsync;
+        this.returnType = returnType;
+        this.compression = compression;
     }
 
     public static ServiceRegistryItem create(Method method) {
@@ -84,6 +115,13 @@ public class ServiceRegistryItem {
             }
         }
 
+        boolean isAsync = false;
+        Type returnType = method.getGenericReturnType();
+        if (method.getReturnType() == CompletableFuture.class) {
+            isAsync = true;
+            returnType = returnType instanceof ParameterizedType ? ((ParameterizedType) returnType).getActualTypeArguments()[0] : Object.class;
+        }
+
         if (methodConfig != null && !StringUtil.isNullOrEmpty(methodConfig.name())) {
             methodName = methodConfig.name();
         } else {
@@ -102,6 +140,11 @@ public class ServiceRegistryItem {
             serializer = serviceConfig == null ? Serializer.PROTOBUF : serviceConfig.serializer();
         }
 
+        Compression compression = methodConfig == null ? Compression.NONE : methodConfig.compression();
+        if (compression == Compression.NONE && serviceConfig != null) {
+            compression = serviceConfig.compression();
+        }
+
         // Determine message type
         if (isStreaming) {
             messageType = ServiceMessageType.CLIENT_STREAMING_REQUEST;
@@ -115,7 +158,10 @@ public class ServiceRegistryItem {
                                        isStreaming,
                                        messageType,
                                        serializer,
-                                       streamingDataType);
+                                       streamingDataType,
+                                       isAsync,
+                                       returnType,
+                                       compression);
     }
 
     public Serializer getSerializer() {
@@ -134,6 +180,18 @@ public class ServiceRegistryItem {
         return streamingDataType;
     }
 
+    public boolean isAsync() {
+        return isAsync;
+    }
+
+    public Type getReturnType() {
+        return returnType;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
     public String getMethodName() {
         return methodName;
     }
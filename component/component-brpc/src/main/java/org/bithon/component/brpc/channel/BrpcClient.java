@@ -27,6 +27,7 @@ import org.bithon.component.brpc.exception.ServiceNotFoundException;
 import org.bithon.component.brpc.invocation.InvocationManager;
 import org.bithon.component.brpc.invocation.ServiceStubFactory;
 import org.bithon.component.brpc.message.Headers;
+import org.bithon.component.brpc.message.compression.Compression;
 import org.bithon.component.brpc.message.in.ServiceMessageInDecoder;
 import org.bithon.component.brpc.message.out.ServiceMessageOutEncoder;
 import org.bithon.component.brpc.message.out.ServiceRequestMessageOut;
@@ -50,10 +51,12 @@ import org.bithon.shaded.io.netty.channel.socket.SocketChannel;
 import org.bithon.shaded.io.netty.channel.socket.nio.NioSocketChannel;
 import org.bithon.shaded.io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import org.bithon.shaded.io.netty.handler.codec.LengthFieldPrepender;
+import org.bithon.shaded.io.netty.util.AttributeKey;
 
 import java.io.Closeable;
 import java.time.Duration;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -64,6 +67,13 @@ import java.util.concurrent.atomic.AtomicReference;
  */
 public class BrpcClient implements IBrpcChannel, Closeable {
     private static final ILogAdaptor LOG = LoggerFactory.getLogger(BrpcClient.class);
+
+    /**
+     * Kept on the underlying channel so that it's negotiated again after re-connection
+     */
+    private static final AttributeKey<Set<Compression>> PEER_COMPRESSIONS_KEY = AttributeKey.valueOf("peer-compressions");
+    private static final long COMPRESSION_NEGOTIATION_TIMEOUT = 5000;
+
     private final Bootstrap bootstrap;
     private final AtomicReference<Channel> channelRef = new AtomicReference<>();
     private final IEndPointProvider server;
@@ -184,6 +194,12 @@ public class BrpcClient implements IBrpcChannel, Closeable {
         return ch != null ? EndPoint.of(ch.remoteAddress()) : null;
     }
 
+    @Override
+    public Set<Compression> getPeerCompressions() {
+        Channel ch = channelRef.get();
+        return ch != null ? ch.attr(PEER_COMPRESSIONS_KEY).get() : null;
+    }
+
     @Override
     public void close() {
         close(2, 15, TimeUnit.SECONDS);
@@ -225,9 +241,14 @@ public class BrpcClient implements IBrpcChannel, Closeable {
                     connectionTimestamp = System.currentTimeMillis();
 
                     // Directly update the ref so that we can use the channel immediately
-                    channelRef.getAndSet(connectFuture.channel());
+                    Channel ch = connectFuture.channel();
+                    channelRef.getAndSet(ch);
 
                     LOG.info("Successfully connected to remote service at [{}:{}]", server.getHost(), server.getPort());
+
+                    // Don't wait for the negotiation, requests are sent without compression until it completes
+                    invocationManager.negotiateCompressions(appName, this, COMPRESSION_NEGOTIATION_TIMEOUT)
+                                     .thenAccept((compressions) -> ch.attr(PEER_COMPRESSIONS_KEY).set(compressions));
                     return;
                 }
                 int leftCount = maxRetry - i - 1;
@@ -17,9 +17,12 @@
 package org.bithon.component.brpc.channel;
 
 import org.bithon.component.brpc.endpoint.EndPoint;
+import org.bithon.component.brpc.message.compression.Compression;
 import org.bithon.component.brpc.message.out.ServiceRequestMessageOut;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
 
 /**
  * @author frankchen
@@ -51,4 +54,13 @@ public interface IBrpcChannel {
      * Write the message without waiting for the response
      */
     void writeAsync(ServiceRequestMessageOut serviceRequest) throws IOException;
+
+    /**
+     * Get the compressions that the remote peer of current connection supports.
+     *
+     * @return null if the negotiation on current connection has not completed
+     */
+    default Set<Compression> getPeerCompressions() {
+        return Collections.emptySet();
+    }
 }
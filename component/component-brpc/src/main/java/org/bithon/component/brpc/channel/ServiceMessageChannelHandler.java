@@ -195,6 +195,9 @@ class ServiceMessageChannelHandler extends SimpleChannelInboundHandler<ServiceMe
         if (ctx.channel().isWritable()) {
             // Set auto read to true if the channel is writable.
             ctx.channel().config().setAutoRead(true);
+
+            // Send requests that are waiting for the writability
+            invocationManager.handleChannelWritable();
         } else {
             ctx.channel().config().setAutoRead(false);
 
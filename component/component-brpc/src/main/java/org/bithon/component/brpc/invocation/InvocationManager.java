@@ -16,6 +16,7 @@
 
 package org.bithon.component.brpc.invocation;
 
+import org.bithon.component.brpc.IServiceRegistry;
 import org.bithon.component.brpc.ServiceRegistryItem;
 import org.bithon.component.brpc.StreamCancellation;
 import org.bithon.component.brpc.StreamResponse;
@@ -27,18 +28,29 @@ import org.bithon.component.brpc.exception.ServiceInvocationException;
 import org.bithon.component.brpc.message.ExceptionMessage;
 import org.bithon.component.brpc.message.Headers;
 import org.bithon.component.brpc.message.ServiceMessageType;
+import org.bithon.component.brpc.message.compression.Compression;
 import org.bithon.component.brpc.message.in.ServiceResponseMessageIn;
 import org.bithon.component.brpc.message.in.ServiceStreamingDataMessageIn;
 import org.bithon.component.brpc.message.in.ServiceStreamingEndMessageIn;
 import org.bithon.component.brpc.message.out.ServiceRequestMessageOut;
+import org.bithon.component.commons.concurrency.NamedThreadFactory;
 import org.bithon.component.commons.logging.LoggerFactory;
-import org.bithon.component.commons.utils.StringUtils;
+import org.bithon.shaded.io.netty.util.HashedWheelTimer;
+import org.bithon.shaded.io.netty.util.Timeout;
 
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -47,11 +59,38 @@ import java.util.concurrent.atomic.AtomicLong;
  * Note: the concept 'client' here is a relative concept.
  * It could be a network client, which connects to an RPC server,
  * it could also be an RPC server that calls service provided by a network client.
+ * <p>
+ * Requests are always sent asynchronously. The response of a request completes a {@link CompletableFuture} in the Netty event loop,
+ * and timeouts are driven by a shared {@link HashedWheelTimer}, so that no thread is pinned by an outstanding request.
+ * Methods declared with {@link CompletableFuture} as return type get the future directly,
+ * while other methods wait on the future for the response.
  *
  * @author frankchen
  */
 public class InvocationManager {
 
+    /**
+     * How long a request waits at most for the channel to become writable
+     */
+    private static final long WRITABLE_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * Shared by all managers. The worker thread is started on the first scheduled timeout.
+     */
+    private static final HashedWheelTimer TIMER = new HashedWheelTimer(NamedThreadFactory.daemonThreadFactory("brpc-timer"),
+                                                                       10,
+                                                                       TimeUnit.MILLISECONDS);
+
+    private static final Method GET_COMPRESSIONS_METHOD;
+
+    static {
+        try {
+            GET_COMPRESSIONS_METHOD = IServiceRegistry.class.getMethod("getCompressions");
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     private final AtomicLong transactionId = new AtomicLong(21515);
 
     /**
@@ -59,6 +98,13 @@ public class InvocationManager {
      */
     private final Map<Long, InflightRequest> inflightRequests = new ConcurrentHashMap<>();
 
+    /**
+     * Requests that are waiting for the channel to become writable, queued per channel
+     * so that a non-writable channel does not block requests to other channels.
+     * Each queue is guarded by itself.
+     */
+    private final Map<IBrpcChannel, Queue<PendingWrite>> pendingWrites = new ConcurrentHashMap<>();
+
     private final Map<Method, ServiceRegistryItem> serviceRegistryItems = new ConcurrentHashMap<>();
 
     public Object invoke(String invokerName,
@@ -97,13 +143,11 @@ public class InvocationManager {
             // Inject the cancellation object into the StreamResponse
             streamResponse.setStreamCancellation(cancellation);
 
-            invokeImpl(channel,
-                       serviceMessageOut,
-                       null,
-                       serviceRegistryItem.getStreamingDataType(),
-                       streamResponse,
-                       cancellation,
-                       timeoutMillisecond);
+            invokeStreamingImpl(channel,
+                                serviceMessageOut,
+                                serviceRegistryItem.getStreamingDataType(),
+                                streamResponse,
+                                cancellation);
 
             return null;
         } else {
@@ -117,16 +161,70 @@ public class InvocationManager {
                                                                                  .applicationName(invokerName)
                                                                                  .headers(headers)
                                                                                  .args(args)
+                                                                                 .compression(negotiateCompression(channel, serviceRegistryItem.getCompression()))
                                                                                  .build();
 
-            return invokeImpl(channel,
-                              serviceMessageOut,
-                              method.getGenericReturnType(),
-                              null,
-                              null,
-                              null,
-                              timeoutMillisecond);
+            CompletableFuture<Object> response = invokeAsyncImpl(channel,
+                                                                 serviceMessageOut,
+                                                                 serviceRegistryItem.getReturnType(),
+                                                                 timeoutMillisecond);
+            return serviceRegistryItem.isAsync() ? response : waitResponse(channel, serviceMessageOut, response);
+        }
+    }
+
+    /**
+     * Use the compression only when the remote peer of current connection supports it.
+     * The peer compressions are negotiated by {@link #negotiateCompressions(String, IBrpcChannel, long)} when the connection is set up,
+     * requests are sent without compression before the negotiation completes.
+     */
+    private Compression negotiateCompression(IBrpcChannel channel, Compression compression) {
+        if (compression == Compression.NONE || !compression.isAvailable()) {
+            return Compression.NONE;
+        }
+        Set<Compression> peerCompressions = channel.getPeerCompressions();
+        return peerCompressions != null && peerCompressions.contains(compression) ? compression : Compression.NONE;
+    }
+
+    /**
+     * Ask the remote peer of a newly set up connection for the compressions it supports.
+     * It does not wait for the response, so it's safe to be called on any thread.
+     *
+     * @return a future that is completed with the compressions that the peer supports.
+     * It's completed with an empty set if the peer is an old version that does not support compression or the negotiation fails.
+     */
+    public CompletableFuture<Set<Compression>> negotiateCompressions(String invokerName,
+                                                                     IBrpcChannel channel,
+                                                                     long timeoutMillisecond) {
+        if (Compression.getAvailableCompressions().isEmpty()) {
+            return CompletableFuture.completedFuture(EnumSet.noneOf(Compression.class));
         }
+
+        ServiceRegistryItem serviceRegistryItem = serviceRegistryItems.computeIfAbsent(GET_COMPRESSIONS_METHOD, ServiceRegistryItem::create);
+        ServiceRequestMessageOut serviceMessageOut = ServiceRequestMessageOut.builder()
+                                                                             .serviceName(serviceRegistryItem.getServiceName())
+                                                                             .methodName(serviceRegistryItem.getMethodName())
+                                                                             .transactionId(transactionId.incrementAndGet())
+                                                                             .serializer(serviceRegistryItem.getSerializer())
+                                                                             .messageType(serviceRegistryItem.getMessageType())
+                                                                             .applicationName(invokerName)
+                                                                             .args(new Object[0])
+                                                                             .build();
+        return invokeAsyncImpl(channel,
+                               serviceMessageOut,
+                               serviceRegistryItem.getReturnType(),
+                               timeoutMillisecond).handle((names, e) -> {
+            Set<Compression> peerCompressions = EnumSet.noneOf(Compression.class);
+            if (e == null && names != null) {
+                //noinspection unchecked
+                for (String name : (List<String>) names) {
+                    Compression peerCompression = Compression.of(name);
+                    if (peerCompression != null) {
+                        peerCompressions.add(peerCompression);
+                    }
+                }
+            }
+            return peerCompressions;
+        });
     }
 
     private void checkChannelStatus(IBrpcChannel channel, String serviceName, String methodName) throws CallerSideException {
@@ -138,20 +236,6 @@ public class InvocationManager {
         if (!channel.isActive()) {
             throw new CallerSideException("Failed to invoke %s#%s at [%s] due to channel is not active", serviceName, methodName, remoteEndpoint);
         }
-
-        // Wait for the channel to be writable
-        long deadline = System.currentTimeMillis() + 1000;
-        while (!channel.isWritable()) {
-            if (System.currentTimeMillis() > deadline) {
-                throw new CallerSideException("Failed to invoke %s#%s at [%s] due to channel is not writable", serviceName, methodName, remoteEndpoint);
-            }
-            try {
-                // A short sleep to prevent busy-waiting, allowing the event loop to process I/O
-                Thread.sleep(10);
-            } catch (InterruptedException ignored) {
-                break;
-            }
-        }
     }
 
     /**
@@ -162,7 +246,18 @@ public class InvocationManager {
                            ServiceRequestMessageOut serviceRequest,
                            long timeoutMillisecond) throws Throwable {
         //noinspection unchecked
-        return (T) invokeImpl(channel, serviceRequest, null, null, null, null, timeoutMillisecond);
+        return (T) waitResponse(channel, serviceRequest, invokeAsyncImpl(channel, serviceRequest, null, timeoutMillisecond));
+    }
+
+    /**
+     * Same as {@link #invokeRpc(IBrpcChannel, ServiceRequestMessageOut, long)}, but returns without waiting for the response.
+     * The returned future is completed in the IO thread of the channel, so callbacks on it should not block.
+     */
+    public <T> CompletableFuture<T> invokeRpcAsync(IBrpcChannel channel,
+                                                   ServiceRequestMessageOut serviceRequest,
+                                                   long timeoutMillisecond) {
+        //noinspection unchecked
+        return (CompletableFuture<T>) invokeAsyncImpl(channel, serviceRequest, null, timeoutMillisecond);
     }
 
     public void invokeStreamingRpc(IBrpcChannel channel,
@@ -175,18 +270,69 @@ public class InvocationManager {
         
         // Inject the cancellation object into the StreamResponse
         response.setStreamCancellation(cancellation);
-        
-        invokeImpl(channel, streamingRequest, null, streamingDataType, response, cancellation, timeoutMilliseconds);
+
+        //noinspection unchecked
+        invokeStreamingImpl(channel, streamingRequest, streamingDataType, (StreamResponse<Object>) response, cancellation);
     }
 
+    private CompletableFuture<Object> invokeAsyncImpl(IBrpcChannel channel,
+                                                      ServiceRequestMessageOut serviceRequest,
+                                                      Type returnObjectType,
+                                                      long timeoutMillisecond) {
+        CompletableFuture<Object> response = new CompletableFuture<>();
+        try {
+            //
+            // make sure a channel has been established
+            //
+            channel.connect();
 
-    private Object invokeImpl(IBrpcChannel channel,
-                              ServiceRequestMessageOut serviceRequest,
-                              Type returnObjectType,
-                              Type streamingDataType,
-                              StreamResponse<?> streamResponse,
-                              StreamCancellation cancellation,
-                              long timeoutMillisecond) throws Throwable {
+            checkChannelStatus(channel, serviceRequest.getServiceName(), serviceRequest.getMethodName());
+        } catch (Throwable t) {
+            response.completeExceptionally(t);
+            return response;
+        }
+
+        if (serviceRequest.isOneway()) {
+            write(channel, serviceRequest).whenComplete((v, e) -> {
+                if (e == null) {
+                    response.complete(null);
+                } else {
+                    response.completeExceptionally(e);
+                }
+            });
+            return response;
+        }
+
+        long txId = serviceRequest.getTransactionId();
+        InflightRequest inflightRequest = new InflightRequest(serviceRequest.getServiceName(),
+                                                              serviceRequest.getMethodName(),
+                                                              returnObjectType,
+                                                              response);
+        this.inflightRequests.put(txId, inflightRequest);
+
+        Timeout timeout = TIMER.newTimeout((t) -> {
+            if (inflightRequests.remove(txId, inflightRequest)) {
+                response.completeExceptionally(new CallerSideException("Failed to invoke %s#%s at [%s] due to timeout",
+                                                                       serviceRequest.getServiceName(),
+                                                                       serviceRequest.getMethodName(),
+                                                                       channel.getRemoteAddress()));
+            }
+        }, timeoutMillisecond, TimeUnit.MILLISECONDS);
+        response.whenComplete((ret, e) -> timeout.cancel());
+
+        write(channel, serviceRequest).whenComplete((v, e) -> {
+            if (e != null && inflightRequests.remove(txId, inflightRequest)) {
+                response.completeExceptionally(e);
+            }
+        });
+        return response;
+    }
+
+    private void invokeStreamingImpl(IBrpcChannel channel,
+                                     ServiceRequestMessageOut serviceRequest,
+                                     Type streamingDataType,
+                                     StreamResponse<Object> streamResponse,
+                                     StreamCancellation cancellation) throws Throwable {
         //
         // make sure a channel has been established
         //
@@ -197,64 +343,38 @@ public class InvocationManager {
         //
         checkChannelStatus(channel, serviceRequest.getServiceName(), serviceRequest.getMethodName());
 
-        InflightRequest inflightRequest = null;
-        if (!serviceRequest.isOneway()) {
-            if (serviceRequest.getMessageType() == ServiceMessageType.CLIENT_STREAMING_REQUEST) {
-                //noinspection unchecked
-                inflightRequest = new InflightRequest(serviceRequest.getServiceName(),
-                                                      serviceRequest.getMethodName(),
-                                                      streamingDataType,
-                                                      (StreamResponse<Object>) streamResponse,
-                                                      cancellation,
-                                                      channel);
-            } else {
-                inflightRequest = new InflightRequest(serviceRequest.getServiceName(),
-                                                      serviceRequest.getMethodName(),
-                                                      returnObjectType);
-            }
-            this.inflightRequests.put(serviceRequest.getTransactionId(), inflightRequest);
-        }
+        InflightRequest inflightRequest = new InflightRequest(serviceRequest.getServiceName(),
+                                                              serviceRequest.getMethodName(),
+                                                              streamingDataType,
+                                                              streamResponse,
+                                                              cancellation,
+                                                              channel);
+        this.inflightRequests.put(serviceRequest.getTransactionId(), inflightRequest);
 
+        // For Streaming RPC, the return is always void, and we don't wait for the response as the data/exception will be streamed via the StreamResponse.
+        // But we still wait for the request to be sent, so that the caller knows if the request fails to be sent.
         try {
-            Exception exception = null;
-            for (int i = 0; i < 3; i++) {
-                try {
-                    channel.writeAsync(serviceRequest);
-
-                    // Success, clear exception
-                    exception = null;
-                    break;
-                } catch (ChannelException e) {
-                    exception = e;
-                    if (i < 2) {
-                        try {
-                            channel.connect();
-                        } catch (Exception ex) {
-                            exception = ex;
-                        }
-                    }
-                }
-            }
-            if (exception != null) {
-                // All retries failed with ChannelException
-                throw exception;
-            }
-        } catch (Throwable t) {
+            write(channel, serviceRequest).get();
+        } catch (ExecutionException e) {
             inflightRequests.remove(serviceRequest.getTransactionId());
-            throw t;
-        }
-
-        if (inflightRequest == null
-            // For Streaming RPC, the return is always void, and we don't wait for the response as the data/exception will be streamed via the StreamResponse
-            || inflightRequest.isStreaming()) {
-            return null;
+            throw e.getCause();
+        } catch (InterruptedException e) {
+            inflightRequests.remove(serviceRequest.getTransactionId());
+            throw new CallerSideException("Failed to invoke %s#%s at [%s] due to invocation is interrupted",
+                                          serviceRequest.getServiceName(),
+                                          serviceRequest.getMethodName(),
+                                          channel.getRemoteAddress());
         }
+    }
 
+    private Object waitResponse(IBrpcChannel channel,
+                                ServiceRequestMessageOut serviceRequest,
+                                CompletableFuture<Object> response) throws Throwable {
         try {
-            //noinspection ReassignedVariable,SynchronizationOnLocalVariableOrMethodParameter
-            synchronized (inflightRequest) {
-                inflightRequest.wait(timeoutMillisecond);
-            }
+            // No need to pass the timeout, the future is completed by the timer when timeout
+            return response.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
         } catch (InterruptedException e) {
             // The wait was interrupted, but we still need to clean up before throwing.
             inflightRequests.remove(serviceRequest.getTransactionId());
@@ -263,22 +383,97 @@ public class InvocationManager {
                                           serviceRequest.getMethodName(),
                                           channel.getRemoteAddress());
         }
+    }
 
-        // Make sure it has been cleared when timeout
-        inflightRequests.remove(serviceRequest.getTransactionId());
+    /**
+     * Write the request to the channel.
+     * If the channel is not writable, the request is queued and written when the channel notifies it's writable again
+     * by {@link #handleChannelWritable()}, instead of polling the channel status on the caller thread.
+     */
+    private CompletableFuture<Void> write(IBrpcChannel channel, ServiceRequestMessageOut serviceRequest) {
+        CompletableFuture<Void> written = new CompletableFuture<>();
+
+        Queue<PendingWrite> queue = pendingWrites.computeIfAbsent(channel, (k) -> new ArrayDeque<>());
+        synchronized (queue) {
+            // Requests that are queued before should be sent first to keep the order.
+            // The check and the enqueue are under the same lock as the drain,
+            // so that a request can't be queued after the drain has seen an empty queue.
+            if (!queue.isEmpty() || !channel.isWritable()) {
+                PendingWrite pendingWrite = new PendingWrite(serviceRequest, written);
+                pendingWrite.timeout = TIMER.newTimeout((t) -> {
+                    boolean removed;
+                    synchronized (queue) {
+                        removed = queue.remove(pendingWrite);
+                    }
+                    if (removed) {
+                        written.completeExceptionally(new CallerSideException("Failed to invoke %s#%s at [%s] due to channel is not writable",
+                                                                              serviceRequest.getServiceName(),
+                                                                              serviceRequest.getMethodName(),
+                                                                              channel.getRemoteAddress()));
+                    }
+                }, WRITABLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                queue.add(pendingWrite);
 
-        if (inflightRequest.exception != null) {
-            throw inflightRequest.exception.toException();
+                // The channel might turn writable before the request is queued
+                drain(channel, queue);
+                return written;
+            }
         }
 
-        if (inflightRequest.responseAt > 0) {
-            // Response has been collected, then return the object.
-            return inflightRequest.returnObject;
-        } else {
-            throw new CallerSideException("Failed to invoke %s#%s at [%s] due to timeout",
-                                          serviceRequest.getServiceName(),
-                                          serviceRequest.getMethodName(),
-                                          channel.getRemoteAddress());
+        // Written out of the lock because the re-connection on failure blocks
+        writeImpl(channel, serviceRequest, written, true);
+        return written;
+    }
+
+    /**
+     * @param reconnect whether to re-connect the channel when the write fails.
+     *                  It's false when the write is triggered from the IO thread where the re-connection should not be performed.
+     */
+    private void writeImpl(IBrpcChannel channel,
+                           ServiceRequestMessageOut serviceRequest,
+                           CompletableFuture<Void> written,
+                           boolean reconnect) {
+        Exception exception = null;
+        for (int i = 0, maxTries = reconnect ? 3 : 1; i < maxTries; i++) {
+            try {
+                channel.writeAsync(serviceRequest);
+
+                written.complete(null);
+                return;
+            } catch (ChannelException e) {
+                exception = e;
+                if (i < maxTries - 1) {
+                    try {
+                        channel.connect();
+                    } catch (Exception ex) {
+                        exception = ex;
+                    }
+                }
+            } catch (Exception e) {
+                exception = e;
+                break;
+            }
+        }
+        written.completeExceptionally(exception);
+    }
+
+    /**
+     * Called when the underlying channel becomes writable to send requests that are waiting for the writability
+     */
+    public void handleChannelWritable() {
+        pendingWrites.forEach(this::drain);
+    }
+
+    private void drain(IBrpcChannel channel, Queue<PendingWrite> queue) {
+        // Both the IO thread and the caller threads drain the queue,
+        // the lock keeps them from interleaving so that the requests are written in the order they're queued.
+        // It's only held for writing to the channel which does not block.
+        synchronized (queue) {
+            PendingWrite pendingWrite;
+            while (channel.isWritable() && (pendingWrite = queue.poll()) != null) {
+                pendingWrite.timeout.cancel();
+                writeImpl(channel, pendingWrite.request, pendingWrite.written, false);
+            }
         }
     }
 
@@ -288,27 +483,26 @@ public class InvocationManager {
     public void handleResponse(ServiceResponseMessageIn response) {
         long txId = response.getTransactionId();
         InflightRequest inflightRequest = inflightRequests.remove(txId);
-        if (inflightRequest == null) {
+        if (inflightRequest == null || inflightRequest.isStreaming()) {
             return;
         }
 
         if (response.getException() != null) {
-            inflightRequest.exception = response.getException();
+            //noinspection DataFlowIssue
+            inflightRequest.response.completeExceptionally(response.getException().toException());
         } else {
             try {
-                inflightRequest.returnObject = inflightRequest.returnObjectType == null ?
-                                               response.getReturnAsRaw() :
-                                               response.getReturningAsObject(inflightRequest.returnObjectType);
+                Object returnObject = inflightRequest.returnObjectType == null ?
+                                      response.getReturnAsRaw() :
+                                      response.getReturningAsObject(inflightRequest.returnObjectType);
+
+                //noinspection DataFlowIssue
+                inflightRequest.response.complete(returnObject);
             } catch (IOException e) {
-                inflightRequest.exception = new ExceptionMessage(ServiceInvocationException.class.getName(),
-                                                                 StringUtils.format("Failed to deserialize the received response: %s", e.getMessage()));
+                //noinspection DataFlowIssue
+                inflightRequest.response.completeExceptionally(new ServiceInvocationException("Failed to deserialize the received response: %s", e.getMessage()));
             }
         }
-
-        synchronized (inflightRequest) {
-            inflightRequest.responseAt = System.currentTimeMillis();
-            inflightRequest.notifyAll();
-        }
     }
 
     /**
@@ -401,11 +595,8 @@ public class InvocationManager {
             //noinspection DataFlowIssue
             inflightRequest.streamResponse.onException(e);
         } else {
-            inflightRequest.exception = new ExceptionMessage(CallerSideException.class.getName(), e.getMessage());
-            synchronized (inflightRequest) {
-                inflightRequest.responseAt = System.currentTimeMillis();
-                inflightRequest.notifyAll();
-            }
+            //noinspection DataFlowIssue
+            inflightRequest.response.completeExceptionally(new ExceptionMessage(CallerSideException.class.getName(), e.getMessage()).toException());
         }
     }
 
@@ -426,15 +617,22 @@ public class InvocationManager {
                                 } catch (Exception ignored) {
                                 }
                             } else {
-                                request.exception = e;
-                                //noinspection SynchronizationOnLocalVariableOrMethodParameter
-                                synchronized (request) {
-                                    request.responseAt = System.currentTimeMillis();
-                                    request.notifyAll();
-                                }
+                                //noinspection DataFlowIssue
+                                request.response.completeExceptionally(ex);
                             }
                             return true;
                         });
+
+        // Fail requests that have not been sent
+        for (Queue<PendingWrite> queue : pendingWrites.values()) {
+            synchronized (queue) {
+                PendingWrite pendingWrite;
+                while ((pendingWrite = queue.poll()) != null) {
+                    pendingWrite.timeout.cancel();
+                    pendingWrite.written.completeExceptionally(new ChannelException("Channel is closed before request is sent"));
+                }
+            }
+        }
     }
 
     /**
@@ -490,19 +688,19 @@ public class InvocationManager {
 
         // For non-streaming calls
         public final Type returnObjectType;
-        public volatile long responseAt;
-        public volatile Object returnObject;
-        public volatile ExceptionMessage exception;
+        public final CompletableFuture<Object> response;
 
         /**
-         * Constructor for sync calls
+         * Constructor for non-streaming calls
          */
         private InflightRequest(String serviceName,
                                 String methodName,
-                                Type returnObjectType) {
+                                Type returnObjectType,
+                                CompletableFuture<Object> response) {
             this.serviceName = serviceName;
             this.methodName = methodName;
             this.returnObjectType = returnObjectType;
+            this.response = response;
             this.requestAt = System.currentTimeMillis();
             this.streamingDataType = null;
             this.streamResponse = null;
@@ -522,6 +720,7 @@ public class InvocationManager {
             this.methodName = methodName;
             this.requestAt = System.currentTimeMillis();
             this.returnObjectType = null;
+            this.response = null;
             this.streamingDataType = streamingDataType;
             this.streamResponse = streamResponse;
             this.cancellation = cancellation;
@@ -541,6 +740,7 @@ public class InvocationManager {
             this.methodName = methodName;
             this.requestAt = System.currentTimeMillis();
             this.returnObjectType = null;
+            this.response = null;
             this.streamingDataType = streamingDataType;
             this.streamResponse = streamResponse;
             this.cancellation = cancellation;
@@ -551,6 +751,17 @@ public class InvocationManager {
             return this.streamResponse != null;
         }
     }
+
+    private static class PendingWrite {
+        private final ServiceRequestMessageOut request;
+        private final CompletableFuture<Void> written;
+        private Timeout timeout;
+
+        private PendingWrite(ServiceRequestMessageOut request, CompletableFuture<Void> written) {
+            this.request = request;
+            this.written = written;
+        }
+    }
     
     /**
      * Client-side streaming cancellation implementation that sends cancellation messages to server
@@ -20,6 +20,8 @@ import org.bithon.component.brpc.StreamResponse;
 import org.bithon.component.brpc.channel.IBrpcChannel;
 import org.bithon.component.brpc.message.out.ServiceRequestMessageOut;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * The low-level invoker sends an encoded message on the underlying message channel
  * and receives response from remote on the same channel and then returns the encoded response.
@@ -41,6 +43,13 @@ public class LowLevelInvoker {
         return invocationManager.invokeRpc(channel, serviceRequest, timeoutMillisecond);
     }
 
+    /**
+     * The returned future is completed in the IO thread of the channel
+     */
+    public CompletableFuture<byte[]> invokeAsync(ServiceRequestMessageOut serviceRequest, int timeoutMillisecond) {
+        return invocationManager.invokeRpcAsync(channel, serviceRequest, timeoutMillisecond);
+    }
+
     /**
      * @param timeoutMillisecond currently not available
      */
@@ -28,6 +28,8 @@ import org.bithon.shaded.io.netty.channel.Channel;
 
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
 
 /**
@@ -76,30 +78,54 @@ public class ServiceInvocationRunnable implements Runnable {
                                                      serviceInvoker.getMetadata().getMethodName());
             }
 
-            if (!serviceInvoker.getMetadata().isOneway()) {
-                ServiceResponseMessageOut.builder()
-                                         .serverResponseAt(System.currentTimeMillis())
-                                         .txId(this.txId)
-                                         .serializer(serviceInvoker.getMetadata().getSerializer())
-                                         .returning(ret)
-                                         .send(channel);
+            if (serviceInvoker.getMetadata().isAsync() && ret != null) {
+                // Send the response when the returned future completes without occupying the executor thread
+                ((CompletableFuture<?>) ret).whenComplete((value, e) -> {
+                    if (e == null) {
+                        sendResponse(value);
+                    } else {
+                        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                        sendException(new ServiceInvocationException(cause,
+                                                                     "[Client=%s] Service[%s#%s] invocation exception",
+                                                                     channel.remoteAddress().toString(),
+                                                                     serviceInvoker.getMetadata().getServiceName(),
+                                                                     serviceInvoker.getMetadata().getMethodName()));
+                    }
+                });
+            } else {
+                sendResponse(ret);
             }
         } catch (ServiceInvocationException e) {
-            Throwable cause = e.getCause() != null ? e.getCause() : e;
-            LoggerFactory.getLogger(ServiceInvocationRunnable.class).error(StringUtils.format("[Client=%s] Service Invocation on %s#%s",
-                                                                                              channel.remoteAddress().toString(),
-                                                                                              serviceInvoker.getMetadata().getServiceName(),
-                                                                                              serviceInvoker.getMetadata().getMethodName()),
-                                                                           cause);
+            sendException(e);
+        }
+    }
+
+    private void sendResponse(Object ret) {
+        if (!serviceInvoker.getMetadata().isOneway()) {
             ServiceResponseMessageOut.builder()
                                      .serverResponseAt(System.currentTimeMillis())
                                      .txId(this.txId)
                                      .serializer(serviceInvoker.getMetadata().getSerializer())
-                                     .exception(cause)
+                                     .returning(ret)
                                      .send(channel);
         }
     }
 
+    private void sendException(ServiceInvocationException e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        LoggerFactory.getLogger(ServiceInvocationRunnable.class).error(StringUtils.format("[Client=%s] Service Invocation on %s#%s",
+                                                                                          channel.remoteAddress().toString(),
+                                                                                          serviceInvoker.getMetadata().getServiceName(),
+                                                                                          serviceInvoker.getMetadata().getMethodName()),
+                                                                       cause);
+        ServiceResponseMessageOut.builder()
+                                 .serverResponseAt(System.currentTimeMillis())
+                                 .txId(this.txId)
+                                 .serializer(serviceInvoker.getMetadata().getSerializer())
+                                 .exception(cause)
+                                 .send(channel);
+    }
+
     public static void execute(ServiceRegistry serviceRegistry,
                                Channel channel,
                                ServiceRequestMessageIn serviceRequest,
@@ -35,6 +35,12 @@ public class Headers extends HashMap<String, String> {
     public static final String HEADER_APP_ID = "appId";
     public static final String HEADER_START_TIME = "startTime";
 
+    /**
+     * The codec of the compressed args of a request, see {@link org.bithon.component.brpc.message.compression.Compression}.
+     * Absent if the args are not compressed.
+     */
+    public static final String HEADER_COMPRESSION = "compression";
+
     public static final Headers EMPTY = new Headers();
 
 }
@@ -0,0 +1,242 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.component.brpc.message.compression;
+
+import com.github.luben.zstd.Zstd;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compression of the payload of a message.
+ * <p>
+ * The underlying libraries are optional dependencies. A codec is only used when its library is found at runtime,
+ * and both sides of a connection negotiate the codecs they support before a compressed message is sent.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public enum Compression {
+    NONE {
+        @Override
+        protected boolean detect() {
+            return true;
+        }
+
+        @Override
+        public byte[] compress(byte[] src, int length) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected byte[] doDecompress(byte[] src, int rawLength) {
+            throw new UnsupportedOperationException();
+        }
+    },
+
+    /**
+     * Based on lz4-java, which falls back to a pure Java implementation when the native library is not available
+     */
+    LZ4 {
+        @Override
+        protected boolean detect() {
+            return Lz4Codec.INSTANCE != null;
+        }
+
+        @Override
+        public byte[] compress(byte[] src, int length) {
+            return Lz4Codec.INSTANCE.compress(src, length);
+        }
+
+        @Override
+        protected int maxExpansion() {
+            // A single lz4 sequence byte expands to at most 255 bytes
+            return 255;
+        }
+
+        @Override
+        protected byte[] doDecompress(byte[] src, int rawLength) throws IOException {
+            return Lz4Codec.INSTANCE.decompress(src, rawLength);
+        }
+    },
+
+    /**
+     * Based on zstd-jni, which requires the native library for the running platform
+     */
+    ZSTD {
+        @Override
+        protected boolean detect() {
+            try {
+                // Trigger the loading of the native library
+                return Zstd.defaultCompressionLevel() > 0;
+            } catch (Throwable ignored) {
+                return false;
+            }
+        }
+
+        @Override
+        public byte[] compress(byte[] src, int length) {
+            byte[] dst = new byte[(int) Zstd.compressBound(length)];
+            long size = Zstd.compressByteArray(dst, 0, dst.length, src, 0, length, Zstd.defaultCompressionLevel());
+            if (Zstd.isError(size)) {
+                throw new IllegalStateException("Failed to compress: " + Zstd.getErrorName(size));
+            }
+            return size == dst.length ? dst : Arrays.copyOf(dst, (int) size);
+        }
+
+        @Override
+        protected byte[] doDecompress(byte[] src, int rawLength) throws IOException {
+            byte[] dst = new byte[rawLength];
+            long size;
+            try {
+                size = Zstd.decompressByteArray(dst, 0, rawLength, src, 0, src.length);
+            } catch (RuntimeException e) {
+                throw new IOException("Failed to decompress zstd payload: " + e.getMessage(), e);
+            }
+            if (Zstd.isError(size) || size != rawLength) {
+                throw new IOException("Failed to decompress zstd payload: " + (Zstd.isError(size) ? Zstd.getErrorName(size) : "length mismatch"));
+            }
+            return dst;
+        }
+    };
+
+    /**
+     * The upper bound of the raw length of a payload.
+     * The raw length comes from the peer, it's checked before any buffer is allocated for decompression.
+     */
+    public static final int MAX_RAW_LENGTH = 64 * 1024 * 1024;
+
+    private volatile Boolean available;
+
+    /**
+     * Whether the library of the codec can be loaded in current runtime
+     */
+    public boolean isAvailable() {
+        Boolean v = available;
+        if (v == null) {
+            try {
+                v = detect();
+            } catch (Throwable e) {
+                // NoClassDefFoundError when the optional library is not on the classpath
+                v = false;
+            }
+            available = v;
+        }
+        return v;
+    }
+
+    protected abstract boolean detect();
+
+    public abstract byte[] compress(byte[] src, int length);
+
+    /**
+     * @param rawLength the length of the data before compression
+     * @throws IOException if the raw length is invalid or the payload is corrupted
+     */
+    public byte[] decompress(byte[] src, int rawLength) throws IOException {
+        if (rawLength < 0 || rawLength > MAX_RAW_LENGTH) {
+            throw new IOException("Invalid raw length " + rawLength + " of " + getName() + " payload, the max allowed is " + MAX_RAW_LENGTH);
+        }
+        int maxExpansion = maxExpansion();
+        if (maxExpansion > 0 && (long) src.length * maxExpansion < rawLength) {
+            throw new IOException("Invalid raw length " + rawLength + " of " + getName() + " payload, it can't be decompressed from " + src.length + " bytes");
+        }
+        return doDecompress(src, rawLength);
+    }
+
+    /**
+     * @return the max ratio of the raw length to the compressed length, or 0 if it's not known
+     */
+    protected int maxExpansion() {
+        return 0;
+    }
+
+    protected abstract byte[] doDecompress(byte[] src, int rawLength) throws IOException;
+
+    public String getName() {
+        return name().toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * @return null if the given name is not a known codec
+     */
+    public static Compression of(String name) {
+        for (Compression compression : values()) {
+            if (compression.getName().equalsIgnoreCase(name)) {
+                return compression;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Names of codecs that are available in current runtime, excluding {@link #NONE}
+     */
+    public static List<String> getAvailableCompressions() {
+        List<String> names = new ArrayList<>();
+        for (Compression compression : values()) {
+            if (compression != NONE && compression.isAvailable()) {
+                names.add(compression.getName());
+            }
+        }
+        return names.isEmpty() ? Collections.emptyList() : names;
+    }
+
+    /**
+     * Isolated in a holder so that the lz4 classes are only loaded when the codec is used
+     */
+    private static class Lz4Codec {
+        static final Lz4Codec INSTANCE = new Lz4Codec();
+
+        private final LZ4Compressor compressor;
+        private final LZ4SafeDecompressor decompressor;
+
+        private Lz4Codec() {
+            LZ4Factory factory = LZ4Factory.fastestInstance();
+            this.compressor = factory.fastCompressor();
+            this.decompressor = factory.safeDecompressor();
+        }
+
+        byte[] compress(byte[] src, int length) {
+            byte[] dst = new byte[compressor.maxCompressedLength(length)];
+            int size = compressor.compress(src, 0, length, dst, 0, dst.length);
+            return size == dst.length ? dst : Arrays.copyOf(dst, size);
+        }
+
+        byte[] decompress(byte[] src, int rawLength) throws IOException {
+            byte[] dst = new byte[rawLength];
+            int size;
+            try {
+                // The safe decompressor never reads or writes out of the given bounds on malformed input
+                size = decompressor.decompress(src, 0, src.length, dst, 0, rawLength);
+            } catch (RuntimeException e) {
+                throw new IOException("Failed to decompress lz4 payload: " + e.getMessage(), e);
+            }
+            if (size != rawLength) {
+                throw new IOException("Failed to decompress lz4 payload: expected " + rawLength + " bytes, but got " + size);
+            }
+            return dst;
+        }
+    }
+}
@@ -20,6 +20,7 @@ import org.bithon.component.brpc.exception.BadRequestException;
 import org.bithon.component.brpc.message.Headers;
 import org.bithon.component.brpc.message.ServiceMessage;
 import org.bithon.component.brpc.message.ServiceMessageType;
+import org.bithon.component.brpc.message.compression.Compression;
 import org.bithon.component.brpc.message.serializer.Serializer;
 import org.bithon.shaded.com.google.protobuf.CodedInputStream;
 
@@ -76,7 +77,24 @@ public class ServiceRequestMessageIn extends ServiceMessageIn {
             this.headers = (Headers) this.serializer.deserialize(in, Headers.class);
         }
 
-        this.argsInputStream = in;
+        String codec = this.headers == null ? null : this.headers.get(Headers.HEADER_COMPRESSION);
+        if (codec == null) {
+            this.argsInputStream = in;
+        } else {
+            Compression compression = Compression.of(codec);
+            if (compression == null || compression == Compression.NONE || !compression.isAvailable()) {
+                throw new BadRequestException("Unsupported compression [%s] for %s#%s", codec, serviceName, methodName);
+            }
+
+            int rawLength = in.readInt32();
+            byte[] rawArgs = compression.decompress(in.readByteArray(), rawLength);
+
+            // The args are no longer compressed, so the header is removed in case the request is forwarded
+            this.headers.remove(Headers.HEADER_COMPRESSION);
+
+            this.argsInputStream = CodedInputStream.newInstance(rawArgs);
+            this.argsInputStream.pushLimit(rawArgs.length);
+        }
         return this;
     }
 
@@ -18,11 +18,10 @@ package org.bithon.component.brpc.message.out;
 
 import org.bithon.component.brpc.invocation.InvocationManager;
 import org.bithon.component.brpc.message.ServiceMessageType;
+import org.bithon.component.brpc.message.serializer.ProtocolBufferSerializer;
 import org.bithon.component.commons.logging.LoggerFactory;
 import org.bithon.component.commons.logging.RateLimitedLogger;
-import org.bithon.shaded.com.google.protobuf.CodedOutputStream;
 import org.bithon.shaded.io.netty.buffer.ByteBuf;
-import org.bithon.shaded.io.netty.buffer.ByteBufOutputStream;
 import org.bithon.shaded.io.netty.channel.ChannelFutureListener;
 import org.bithon.shaded.io.netty.channel.ChannelHandlerContext;
 import org.bithon.shaded.io.netty.channel.ChannelPromise;
@@ -42,6 +41,12 @@ public class ServiceMessageOutEncoder extends MessageToByteEncoder<ServiceMessag
 
     private final InvocationManager invocationManager;
 
+    /**
+     * Size of the last encoded message, used as the size hint for the next one.
+     * The encoder is not shared among channels, and it's called in the IO thread of the channel only.
+     */
+    private int lastEncodedSize = 256;
+
     public ServiceMessageOutEncoder(InvocationManager invocationManager) {
         this.invocationManager = invocationManager;
     }
@@ -49,13 +54,18 @@ public class ServiceMessageOutEncoder extends MessageToByteEncoder<ServiceMessag
     @Override
     protected void encode(ChannelHandlerContext ctx, ServiceMessageOut msg, ByteBuf out) {
         try {
-            CodedOutputStream os = CodedOutputStream.newInstance(new ByteBufOutputStream(out));
-            msg.encode(os);
+            lastEncodedSize = ProtocolBufferSerializer.writeTo(out, lastEncodedSize + (lastEncodedSize >> 2), msg::encode);
         } catch (Exception e) {
             throw new ServiceMessageEncodingException(e);
         }
     }
 
+    @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, ServiceMessageOut msg, boolean preferDirect) {
+        int initialCapacity = lastEncodedSize + (lastEncodedSize >> 2);
+        return preferDirect ? ctx.alloc().ioBuffer(initialCapacity) : ctx.alloc().heapBuffer(initialCapacity);
+    }
+
     @Override
     public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
         ServiceMessageOut out = (ServiceMessageOut) msg;
@@ -18,10 +18,12 @@ package org.bithon.component.brpc.message.out;
 
 import org.bithon.component.brpc.message.Headers;
 import org.bithon.component.brpc.message.ServiceMessageType;
+import org.bithon.component.brpc.message.compression.Compression;
 import org.bithon.component.brpc.message.serializer.Serializer;
 import org.bithon.component.commons.utils.Preconditions;
 import org.bithon.shaded.com.google.protobuf.CodedOutputStream;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 /**
@@ -29,6 +31,11 @@ import java.io.IOException;
  */
 public class ServiceRequestMessageOut extends ServiceMessageOut {
 
+    /**
+     * Args smaller than this size are not compressed since the saving does not pay off the CPU
+     */
+    static final int COMPRESSION_THRESHOLD = 512;
+
     private String serviceName;
     private String methodName;
 
@@ -45,6 +52,12 @@ public class ServiceRequestMessageOut extends ServiceMessageOut {
     private boolean isOneway;
     private int messageType = ServiceMessageType.CLIENT_REQUEST_V2;
 
+    /**
+     * runtime property.
+     * The negotiated compression of args, declared by {@link Headers#HEADER_COMPRESSION} on wire
+     */
+    private Compression compression = Compression.NONE;
+
     public String getServiceName() {
         return serviceName;
     }
@@ -59,6 +72,14 @@ public class ServiceRequestMessageOut extends ServiceMessageOut {
     private Object[] args;
     private byte[] rawArgs;
 
+    /**
+     * runtime property.
+     * The encoder retries with a larger buffer when the estimated size is not enough,
+     * the serialized and compressed args are kept so that the retry does not do it again.
+     */
+    private byte[] serializedArgs;
+    private byte[] compressedArgs;
+
     public static Builder builder() {
         return new Builder();
     }
@@ -83,13 +104,37 @@ public class ServiceRequestMessageOut extends ServiceMessageOut {
         Serializer serializer = getSerializer();
         out.writeInt32NoTag(serializer.getType());
 
+        // Only the V2 format has headers to declare the compression
+        if (compression != Compression.NONE
+            && messageType == ServiceMessageType.CLIENT_REQUEST_V2
+            && this.args != null
+            && this.serializedArgs == null) {
+            this.serializedArgs = serializeArgs(serializer);
+            if (this.serializedArgs.length >= COMPRESSION_THRESHOLD) {
+                this.compressedArgs = compression.compress(this.serializedArgs, this.serializedArgs.length);
+            }
+        }
+
         // Header
         if (messageType == ServiceMessageType.CLIENT_REQUEST_V2) {
-            serializer.serialize(out, this.headers == null ? Headers.EMPTY : this.headers);
+            Headers messageHeaders = this.headers == null ? Headers.EMPTY : this.headers;
+            if (compressedArgs != null) {
+                messageHeaders = new Headers();
+                if (this.headers != null) {
+                    messageHeaders.putAll(this.headers);
+                }
+                messageHeaders.put(Headers.HEADER_COMPRESSION, compression.getName());
+            }
+            serializer.serialize(out, messageHeaders);
         }
 
         // Args
-        if (this.args == null) {
+        if (compressedArgs != null) {
+            out.writeInt32NoTag(serializedArgs.length);
+            out.writeByteArrayNoTag(compressedArgs);
+        } else if (serializedArgs != null) {
+            out.writeRawBytes(serializedArgs);
+        } else if (this.args == null) {
             if (this.rawArgs == null) {
                 out.writeInt32NoTag(0);
             } else {
@@ -104,10 +149,25 @@ public class ServiceRequestMessageOut extends ServiceMessageOut {
         out.flush();
     }
 
+    private byte[] serializeArgs(Serializer serializer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+        out.writeInt32NoTag(this.args.length);
+        for (Object arg : this.args) {
+            serializer.serialize(out, arg);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
     public boolean isOneway() {
         return isOneway;
     }
 
+    public Compression getCompression() {
+        return compression;
+    }
+
     public static class Builder {
         private final ServiceRequestMessageOut request = new ServiceRequestMessageOut();
 
@@ -143,6 +203,11 @@ public class ServiceRequestMessageOut extends ServiceMessageOut {
             return this;
         }
 
+        public Builder compression(Compression compression) {
+            request.compression = compression == null ? Compression.NONE : compression;
+            return this;
+        }
+
         public Builder applicationName(String appName) {
             request.appName = appName;
             return this;
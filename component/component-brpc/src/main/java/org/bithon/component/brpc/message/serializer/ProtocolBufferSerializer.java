@@ -21,6 +21,8 @@ import org.bithon.shaded.com.google.protobuf.CodedOutputStream;
 import org.bithon.shaded.com.google.protobuf.ExtensionRegistryLite;
 import org.bithon.shaded.com.google.protobuf.GeneratedMessageV3;
 import org.bithon.shaded.com.google.protobuf.MessageLite;
+import org.bithon.shaded.io.netty.buffer.ByteBuf;
+import org.bithon.shaded.io.netty.buffer.ByteBufOutputStream;
 
 import java.io.IOException;
 import java.lang.reflect.Array;
@@ -31,6 +33,7 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
 import java.lang.reflect.WildcardType;
+import java.nio.ByteBuffer;
 import java.util.AbstractCollection;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -60,6 +63,59 @@ import java.util.concurrent.ConcurrentMap;
  */
 public class ProtocolBufferSerializer {
 
+    public interface IWriter {
+        void write(CodedOutputStream os) throws IOException;
+    }
+
+    /**
+     * Serialize directly into the writable region of the given buffer.
+     * <p>
+     * Compared to a {@link CodedOutputStream} over a {@link ByteBufOutputStream},
+     * the protobuf encoder writes into the memory of the buffer(for direct buffers, via Unsafe if possible),
+     * so there's no intermediate buffer inside the stream and no copy from it to the {@link ByteBuf}.
+     * <p>
+     * Since the size of serialized data is not known in advance, the writer is called again with a larger region
+     * if the region is not large enough. So the writer MUST be able to be called multiple times.
+     *
+     * @param sizeHint the expected size of serialized data
+     * @return the number of written bytes
+     */
+    public static int writeTo(ByteBuf buf, int sizeHint, IWriter writer) throws IOException {
+        int startIndex = buf.writerIndex();
+        int size = Math.max(64, sizeHint);
+        while (true) {
+            buf.ensureWritable(size);
+            if (buf.nioBufferCount() != 1) {
+                // Composite buffer, the region is not continuous
+                return writeToStream(buf, writer);
+            }
+
+            ByteBuffer region = buf.nioBuffer(startIndex, buf.writableBytes());
+            CodedOutputStream os = CodedOutputStream.newInstance(region);
+            try {
+                writer.write(os);
+                os.flush();
+
+                int written = os.getTotalBytesWritten();
+                buf.writerIndex(startIndex + written);
+                return written;
+            } catch (CodedOutputStream.OutOfSpaceException e) {
+                if (buf.writableBytes() >= buf.maxWritableBytes()) {
+                    throw e;
+                }
+                size = (int) Math.min((long) buf.writableBytes() * 2, buf.maxWritableBytes());
+            }
+        }
+    }
+
+    private static int writeToStream(ByteBuf buf, IWriter writer) throws IOException {
+        int startIndex = buf.writerIndex();
+        CodedOutputStream os = CodedOutputStream.newInstance(new ByteBufOutputStream(buf));
+        writer.write(os);
+        os.flush();
+        return buf.writerIndex() - startIndex;
+    }
+
     public void serialize(MessageLite obj, CodedOutputStream os) throws IOException {
         ProtocolBufferMessageSerializer.INSTANCE.serialize(obj, os);
     }
@@ -22,6 +22,7 @@ import org.bithon.component.brpc.channel.BrpcClient;
 import org.bithon.component.brpc.channel.BrpcClientBuilder;
 import org.bithon.component.brpc.channel.BrpcServer;
 import org.bithon.component.brpc.channel.BrpcServerBuilder;
+import org.bithon.component.brpc.channel.IBrpcChannel;
 import org.bithon.component.brpc.endpoint.EndPoint;
 import org.bithon.component.brpc.example.ExampleServiceImpl;
 import org.bithon.component.brpc.example.IExampleService;
@@ -30,14 +31,19 @@ import org.bithon.component.brpc.exception.CalleeSideException;
 import org.bithon.component.brpc.exception.ServiceInvocationException;
 import org.bithon.component.brpc.exception.ServiceNotFoundException;
 import org.bithon.component.brpc.message.Headers;
+import org.bithon.component.brpc.message.compression.Compression;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -162,6 +168,78 @@ public class BrpcRpcTest {
         }
     }
 
+    @Test
+    public void testAsyncInvocation() throws Exception {
+        try (FastShutdownBrpcClient ch = new FastShutdownBrpcClient("127.0.0.1", 8070)) {
+            IExampleService exampleService = ch.getRemoteService(IExampleService.class);
+
+            // Pipeline requests on the same channel without waiting for responses
+            List<CompletableFuture<Integer>> futures = new ArrayList<>();
+            for (int i = 1; i <= 100; i++) {
+                futures.add(exampleService.divAsync(i * 10, 10));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+            for (int i = 1; i <= 100; i++) {
+                Assertions.assertEquals(i, futures.get(i - 1).get());
+            }
+
+            // Exception thrown by the async service implementation
+            CompletableFuture<Integer> failed = exampleService.divAsync(6, 0);
+            ExecutionException e = Assertions.assertThrows(ExecutionException.class, failed::get);
+            Assertions.assertInstanceOf(CalleeSideException.class, e.getCause());
+            Assertions.assertEquals(ArithmeticException.class.getName(), ((CalleeSideException) e.getCause()).getExceptionClass());
+        }
+    }
+
+    @Test
+    public void testAsyncInvocationTimeout() throws Exception {
+        try (FastShutdownBrpcClient ch = new FastShutdownBrpcClient("127.0.0.1", 8070)) {
+            IExampleService exampleService = ch.getRemoteService(IExampleService.class);
+            ((IServiceController) exampleService).setTimeout(500);
+
+            // Make sure the connection has been established
+            Assertions.assertEquals(1, exampleService.divAsync(1, 1).get());
+
+            // The call returns immediately
+            long start = System.currentTimeMillis();
+            CompletableFuture<String> future = exampleService.blockAsync(2);
+            Assertions.assertTrue(System.currentTimeMillis() - start < 500);
+
+            ExecutionException e = Assertions.assertThrows(ExecutionException.class, future::get);
+            Assertions.assertInstanceOf(ServiceInvocationException.class, e.getCause());
+            Assertions.assertTrue(e.getCause().getMessage().contains("timeout"));
+
+            ((IServiceController) exampleService).rstTimeout();
+            Assertions.assertEquals("done", exampleService.blockAsync(1).get());
+        }
+    }
+
+    @Test
+    public void testCompression() throws InterruptedException {
+        try (FastShutdownBrpcClient ch = new FastShutdownBrpcClient("127.0.0.1", 8070)) {
+            IExampleService exampleService = ch.getRemoteService(IExampleService.class);
+
+            List<String> list = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                list.add("org.bithon.component.brpc.example.ExampleServiceImpl#" + i);
+            }
+
+            // Negotiated in background after the connection is set up, the call is not blocked by it
+            Assertions.assertEquals(list, exampleService.echoLz4(list));
+
+            IBrpcChannel channel = ((IServiceController) exampleService).getChannel();
+            for (int i = 0; i < 100 && channel.getPeerCompressions() == null; i++) {
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals(EnumSet.of(Compression.LZ4, Compression.ZSTD), channel.getPeerCompressions());
+
+            Assertions.assertEquals(list, exampleService.echoZstd(list));
+
+            // Small payload is sent without compression
+            Assertions.assertEquals(Arrays.asList("a", "b"), exampleService.echoLz4(Arrays.asList("a", "b")));
+        }
+    }
+
     @Test
     public void testClientSideTimeout() {
         try (FastShutdownBrpcClient ch = new FastShutdownBrpcClient("127.0.1", 8070)) {
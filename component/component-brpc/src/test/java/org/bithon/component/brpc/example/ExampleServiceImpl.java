@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class ExampleServiceImpl implements IExampleService {
 
@@ -116,4 +117,27 @@ public class ExampleServiceImpl implements IExampleService {
         }
         return ret;
     }
+
+    @Override
+    public CompletableFuture<Integer> divAsync(int a, int b) {
+        return CompletableFuture.supplyAsync(() -> a / b);
+    }
+
+    @Override
+    public CompletableFuture<String> blockAsync(int timeout) {
+        return CompletableFuture.supplyAsync(() -> {
+            block(timeout);
+            return "done";
+        });
+    }
+
+    @Override
+    public List<String> echoLz4(List<String> list) {
+        return list;
+    }
+
+    @Override
+    public List<String> echoZstd(List<String> list) {
+        return list;
+    }
 }
@@ -20,10 +20,12 @@ import org.bithon.component.brpc.BrpcMethod;
 import org.bithon.component.brpc.BrpcService;
 import org.bithon.component.brpc.example.protobuf.WebRequestMetrics;
 import org.bithon.component.brpc.message.ServiceMessageType;
+import org.bithon.component.brpc.message.compression.Compression;
 import org.bithon.component.brpc.message.serializer.Serializer;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @BrpcService
 public interface IExampleService {
@@ -84,4 +86,23 @@ public interface IExampleService {
 
     @BrpcMethod(serializer = Serializer.JSON_SMILE)
     List<String> createList(int size);
+
+    /**
+     * Async test
+     */
+    CompletableFuture<Integer> divAsync(int a, int b);
+
+    /**
+     * Async test, completes after given seconds
+     */
+    CompletableFuture<String> blockAsync(int timeout);
+
+    /**
+     * Compression test
+     */
+    @BrpcMethod(compression = Compression.LZ4)
+    List<String> echoLz4(List<String> list);
+
+    @BrpcMethod(compression = Compression.ZSTD)
+    List<String> echoZstd(List<String> list);
 }
@@ -0,0 +1,127 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.component.brpc.invocation;
+
+import org.bithon.component.brpc.channel.IBrpcChannel;
+import org.bithon.component.brpc.endpoint.EndPoint;
+import org.bithon.component.brpc.exception.ChannelException;
+import org.bithon.component.brpc.message.out.ServiceRequestMessageOut;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class InvocationManagerTest {
+
+    static class TestChannel implements IBrpcChannel {
+        private volatile boolean writable;
+        private final List<Long> written = new ArrayList<>();
+
+        @Override
+        public long getConnectionLifeTime() {
+            return 0;
+        }
+
+        @Override
+        public boolean isActive() {
+            return true;
+        }
+
+        @Override
+        public boolean isWritable() {
+            return writable;
+        }
+
+        @Override
+        public EndPoint getRemoteAddress() {
+            return new EndPoint("127.0.0.1", 9000);
+        }
+
+        @Override
+        public void writeAsync(ServiceRequestMessageOut serviceRequest) {
+            written.add(serviceRequest.getTransactionId());
+        }
+    }
+
+    private static ServiceRequestMessageOut onewayRequest(long txId) {
+        return ServiceRequestMessageOut.builder()
+                                       .serviceName("service")
+                                       .methodName("method")
+                                       .transactionId(txId)
+                                       .applicationName("app")
+                                       .isOneway(true)
+                                       .args(new Object[0])
+                                       .build();
+    }
+
+    @Test
+    public void testQueuedRequestsAreWrittenFirst() throws Exception {
+        InvocationManager manager = new InvocationManager();
+        TestChannel channel = new TestChannel();
+
+        CompletableFuture<Object> first = manager.invokeRpcAsync(channel, onewayRequest(1), 1000);
+        Assertions.assertFalse(first.isDone());
+
+        // The channel turns writable before the channel handler notifies the manager
+        channel.writable = true;
+        CompletableFuture<Object> second = manager.invokeRpcAsync(channel, onewayRequest(2), 1000);
+
+        second.get();
+        first.get();
+        Assertions.assertEquals(Arrays.asList(1L, 2L), channel.written);
+    }
+
+    @Test
+    public void testQueuedRequestsDoNotBlockOtherChannels() throws Exception {
+        InvocationManager manager = new InvocationManager();
+        TestChannel notWritable = new TestChannel();
+        TestChannel writable = new TestChannel();
+        writable.writable = true;
+
+        CompletableFuture<Object> first = manager.invokeRpcAsync(notWritable, onewayRequest(1), 1000);
+        CompletableFuture<Object> second = manager.invokeRpcAsync(writable, onewayRequest(2), 1000);
+
+        second.get();
+        Assertions.assertFalse(first.isDone());
+        Assertions.assertEquals(Arrays.asList(2L), writable.written);
+
+        notWritable.writable = true;
+        manager.handleChannelWritable();
+        first.get();
+        Assertions.assertEquals(Arrays.asList(1L), notWritable.written);
+    }
+
+    @Test
+    public void testChannelClosureFailsQueuedRequests() {
+        InvocationManager manager = new InvocationManager();
+        TestChannel channel = new TestChannel();
+
+        CompletableFuture<Object> response = manager.invokeRpcAsync(channel, onewayRequest(1), 1000);
+        manager.handleChannelClosure();
+
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class, response::get);
+        Assertions.assertInstanceOf(ChannelException.class, e.getCause());
+        Assertions.assertTrue(channel.written.isEmpty());
+    }
+}
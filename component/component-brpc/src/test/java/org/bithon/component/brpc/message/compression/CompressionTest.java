@@ -0,0 +1,170 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.component.brpc.message.compression;
+
+import org.bithon.component.brpc.message.Headers;
+import org.bithon.component.brpc.message.in.ServiceRequestMessageIn;
+import org.bithon.component.brpc.message.out.ServiceRequestMessageOut;
+import org.bithon.component.brpc.message.serializer.ProtocolBufferSerializer;
+import org.bithon.shaded.com.google.protobuf.CodedInputStream;
+import org.bithon.shaded.io.netty.buffer.ByteBuf;
+import org.bithon.shaded.io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class CompressionTest {
+
+    @Test
+    public void testAvailability() {
+        Assertions.assertTrue(Compression.LZ4.isAvailable());
+        Assertions.assertTrue(Compression.ZSTD.isAvailable());
+        Assertions.assertEquals(Arrays.asList("lz4", "zstd"), Compression.getAvailableCompressions());
+
+        Assertions.assertEquals(Compression.LZ4, Compression.of("LZ4"));
+        Assertions.assertNull(Compression.of("snappy"));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        testRoundTrip(Compression.LZ4);
+        testRoundTrip(Compression.ZSTD);
+    }
+
+    private void testRoundTrip(Compression compression) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("http://localhost:8080/api/v1/users/").append(i).append(';');
+        }
+        byte[] raw = text.toString().getBytes(StandardCharsets.UTF_8);
+
+        byte[] compressed = compression.compress(raw, raw.length);
+        Assertions.assertTrue(compressed.length < raw.length / 2);
+        Assertions.assertArrayEquals(raw, compression.decompress(compressed, raw.length));
+    }
+
+    @Test
+    public void testInvalidRawLength() {
+        for (Compression compression : new Compression[]{Compression.LZ4, Compression.ZSTD}) {
+            byte[] raw = "http://localhost:8080/api/v1/users".getBytes(StandardCharsets.UTF_8);
+            byte[] compressed = compression.compress(raw, raw.length);
+
+            Assertions.assertThrows(IOException.class, () -> compression.decompress(compressed, -1));
+            Assertions.assertThrows(IOException.class, () -> compression.decompress(compressed, Compression.MAX_RAW_LENGTH + 1));
+
+            // Mismatched length
+            Assertions.assertThrows(IOException.class, () -> compression.decompress(compressed, raw.length + 1));
+            Assertions.assertThrows(IOException.class, () -> compression.decompress(compressed, raw.length - 1));
+        }
+
+        // Can't be decompressed from a payload of a few bytes
+        Assertions.assertThrows(IOException.class, () -> Compression.LZ4.decompress(new byte[4], 1024 * 1024));
+    }
+
+    @Test
+    public void testMalformedPayload() {
+        byte[] raw = new byte[1024];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = (byte) (i % 7);
+        }
+        byte[] compressed = Compression.LZ4.compress(raw, raw.length);
+
+        // Corrupt the offset of a match so that it points before the start of the output
+        byte[] corrupted = compressed.clone();
+        for (int i = 1; i < corrupted.length; i++) {
+            corrupted[i] = (byte) 0xFF;
+        }
+        Assertions.assertThrows(IOException.class, () -> Compression.LZ4.decompress(corrupted, raw.length));
+    }
+
+    @Test
+    public void testRequestMessage() throws IOException {
+        for (Compression compression : Compression.values()) {
+            testRequestMessage(compression);
+        }
+    }
+
+    private void testRequestMessage(Compression compression) throws IOException {
+        List<String> uris = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            uris.add("/api/v1/users/" + i);
+        }
+
+        Headers headers = new Headers();
+        headers.put(Headers.HEADER_APP_ID, "app1");
+        ServiceRequestMessageOut out = ServiceRequestMessageOut.builder()
+                                                              .serviceName("service")
+                                                              .methodName("method")
+                                                              .transactionId(1)
+                                                              .applicationName("app")
+                                                              .headers(headers)
+                                                              .args(new Object[]{"header", uris})
+                                                              .compression(compression)
+                                                              .build();
+
+        // Start from a small size so that the buffer has to be expanded
+        ByteBuf buf = Unpooled.directBuffer(16);
+        int size = ProtocolBufferSerializer.writeTo(buf, 16, out::encode);
+        Assertions.assertEquals(buf.readableBytes(), size);
+        Assertions.assertArrayEquals(out.toByteArray(), toArray(buf));
+
+        ServiceRequestMessageIn in = ServiceRequestMessageIn.from(CodedInputStream.newInstance(toArray(buf)));
+        Assertions.assertEquals("service", in.getServiceName());
+        Assertions.assertEquals("method", in.getMethodName());
+
+        // The compression header is used internally only
+        Assertions.assertEquals(headers, in.getHeaders());
+
+        Type listType = new ProtocolBufferSerializer.TypeReference<List<String>>() {
+        }.getType();
+        Object[] args = in.readArgs(new Type[]{String.class, listType});
+        Assertions.assertEquals("header", args[0]);
+        Assertions.assertEquals(uris, args[1]);
+    }
+
+    @Test
+    public void testSmallArgsAreNotCompressed() throws IOException {
+        ServiceRequestMessageOut out = ServiceRequestMessageOut.builder()
+                                                              .serviceName("service")
+                                                              .methodName("method")
+                                                              .transactionId(1)
+                                                              .applicationName("app")
+                                                              .args(new Object[]{"small"})
+                                                              .compression(Compression.LZ4)
+                                                              .build();
+
+        ServiceRequestMessageIn in = ServiceRequestMessageIn.from(CodedInputStream.newInstance(out.toByteArray()));
+        Assertions.assertFalse(in.getHeaders().containsKey(Headers.HEADER_COMPRESSION));
+        Assertions.assertEquals("small", in.readArgs(new Type[]{String.class})[0]);
+    }
+
+    private static byte[] toArray(ByteBuf buf) {
+        byte[] bytes = new byte[buf.readableBytes()];
+        buf.getBytes(buf.readerIndex(), bytes);
+        return bytes;
+    }
+}
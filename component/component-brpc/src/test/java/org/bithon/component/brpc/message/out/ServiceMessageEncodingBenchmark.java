@@ -0,0 +1,146 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.component.brpc.message.out;
+
+import org.bithon.agent.rpc.brpc.ApplicationType;
+import org.bithon.agent.rpc.brpc.BrpcMessageHeader;
+import org.bithon.agent.rpc.brpc.tracing.BrpcTraceSpanMessage;
+import org.bithon.component.brpc.message.compression.Compression;
+import org.bithon.component.brpc.message.serializer.ProtocolBufferSerializer;
+import org.bithon.shaded.com.google.protobuf.CodedOutputStream;
+import org.bithon.shaded.io.netty.buffer.ByteBuf;
+import org.bithon.shaded.io.netty.buffer.ByteBufOutputStream;
+import org.bithon.shaded.io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the encode CPU of a typical trace span batch sent from agents,
+ * with and without compression, and over the stream based path and the direct buffer path.
+ * <p>
+ * The size of a message on the wire for each compression is printed when the benchmark is set up.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class ServiceMessageEncodingBenchmark {
+
+    @Param({"NONE", "LZ4", "ZSTD"})
+    public Compression compression;
+
+    @Param({"200"})
+    public int batchSize;
+
+    private ServiceRequestMessageOut message;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        BrpcMessageHeader header = BrpcMessageHeader.newBuilder()
+                                                    .setAppName("bithon-server-dev")
+                                                    .setEnv("dev")
+                                                    .setInstanceName("192.168.1.1:9897")
+                                                    .setAppType(ApplicationType.JAVA)
+                                                    .build();
+
+        List<BrpcTraceSpanMessage> spans = new ArrayList<>(batchSize);
+        long now = System.currentTimeMillis() * 1000;
+        for (int i = 0; i < batchSize; i++) {
+            spans.add(BrpcTraceSpanMessage.newBuilder()
+                                          .setTraceId(Long.toHexString(i / 10))
+                                          .setSpanId(Long.toHexString(i))
+                                          .setParentSpanId(Long.toHexString(i - 1))
+                                          .setParentAppName("bithon-web-server")
+                                          .setKind("SERVER")
+                                          .setName("http-server")
+                                          .setClazz("org.springframework.web.servlet.DispatcherServlet")
+                                          .setMethod("doService")
+                                          .putTags("http.uri", "/api/v1/applications/" + (i % 20) + "/instances")
+                                          .putTags("http.method", "GET")
+                                          .putTags("http.status", "200")
+                                          .putTags("thread.name", "http-nio-8080-exec-" + (i % 16))
+                                          .setStartTime(now + i)
+                                          .setEndTime(now + i + 1500)
+                                          .build());
+        }
+
+        message = ServiceRequestMessageOut.builder()
+                                          .serviceName("org.bithon.agent.rpc.brpc.tracing.ITraceCollector")
+                                          .methodName("sendTrace")
+                                          .transactionId(1)
+                                          .applicationName("bithon-server-dev")
+                                          .args(new Object[]{header, spans})
+                                          .compression(compression)
+                                          .build();
+
+        System.out.println("Encoded size of " + batchSize + " spans with compression " + compression + ": " + message.toByteArray().length + " bytes");
+    }
+
+    @Benchmark
+    public int encodeOverStream() throws IOException {
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.ioBuffer(256);
+        try {
+            CodedOutputStream os = CodedOutputStream.newInstance(new ByteBufOutputStream(buf));
+            message.encode(os);
+            return buf.readableBytes();
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Benchmark
+    public int encodeToDirectBuffer() throws IOException {
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.ioBuffer(256);
+        try {
+            return ProtocolBufferSerializer.writeTo(buf, 256, message::encode);
+        } finally {
+            buf.release();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 4, 16, 64}) {
+            Options opt = new OptionsBuilder()
+                .include(ServiceMessageEncodingBenchmark.class.getSimpleName())
+                .threads(threads)
+                .forks(1)
+                .warmupIterations(2)
+                .measurementIterations(5)
+                .build();
+
+            new Runner(opt).run();
+        }
+    }
+}
@@ -79,6 +79,7 @@ public class Functions implements IFunctionProvider {
         register(AggregateFunction.Avg.INSTANCE);
         register(AggregateFunction.First.INSTANCE);
         register(AggregateFunction.Last.INSTANCE);
+        register(AggregateFunction.Quantile.INSTANCE);
     }
 
     public void register(IFunction function) {
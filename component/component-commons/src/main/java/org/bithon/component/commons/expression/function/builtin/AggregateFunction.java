@@ -18,8 +18,10 @@ package org.bithon.component.commons.expression.function.builtin;
 
 import org.bithon.component.commons.expression.IDataType;
 import org.bithon.component.commons.expression.IExpression;
+import org.bithon.component.commons.expression.LiteralExpression;
 import org.bithon.component.commons.expression.function.AbstractFunction;
 import org.bithon.component.commons.expression.function.IFunction;
+import org.bithon.component.commons.histogram.HistogramSnapshot;
 
 import java.util.List;
 
@@ -33,6 +35,10 @@ public abstract class AggregateFunction extends AbstractFunction {
         super(name, IDataType.LONG);
     }
 
+    protected AggregateFunction(String name, IDataType returnType) {
+        super(name, returnType);
+    }
+
     @Override
     public final boolean isAggregator() {
         return true;
@@ -185,4 +191,41 @@ public abstract class AggregateFunction extends AbstractFunction {
             throw new UnsupportedOperationException("Not implemented yet");
         }
     }
+
+    /**
+     * quantile(histogramColumn, q)
+     * <p>
+     * The histogram column stores {@link HistogramSnapshot} in text form.
+     * The storage concatenates all histograms in the aggregation group,
+     * and the quantile is calculated on the merged histogram by {@link #evaluate(List)}.
+     */
+    public static class Quantile extends AggregateFunction {
+        public static final Quantile INSTANCE = new Quantile();
+
+        private Quantile() {
+            super("quantile", IDataType.DOUBLE);
+        }
+
+        @Override
+        public void validateArgs(List<IExpression> args) {
+            validateParameterSize(2, args.size());
+            validateType(args.get(0).getDataType(), IDataType.STRING);
+            validateTrue(args.get(1) instanceof LiteralExpression, "The 2nd parameter of function [quantile] must be a literal");
+
+            Object q = ((LiteralExpression<?>) args.get(1)).getValue();
+            validateTrue(q instanceof Number && ((Number) q).doubleValue() >= 0 && ((Number) q).doubleValue() <= 1,
+                         "The 2nd parameter of function [quantile] must be a number in the range of [0, 1], but got [%s]",
+                         q);
+        }
+
+        /**
+         * @param args the 1st is the concatenated histograms in text form, the 2nd is the quantile
+         */
+        @Override
+        public Object evaluate(List<Object> args) {
+            Object histograms = args.get(0);
+            double q = ((Number) args.get(1)).doubleValue();
+            return (double) HistogramSnapshot.fromText(histograms == null ? null : histograms.toString()).quantile(q);
+        }
+    }
 }
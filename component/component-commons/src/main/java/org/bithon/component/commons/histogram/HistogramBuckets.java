@@ -0,0 +1,85 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.component.commons.histogram;
+
+/**
+ * The bucket layout shared by the agent side histogram and the server side merge/quantile calculation.
+ * <p>
+ * It's a log-linear layout similar to HDR histogram:
+ * values in [0, 16) have their own buckets,
+ * and each power-of-2 range above is split into 16 linear sub-buckets.
+ * So the relative error of a value represented by the midpoint of its bucket is less than 1/32(about 3%).
+ * <p>
+ * Values greater than or equal to 2^40(about 18 minutes in nanoseconds) fall into the last bucket.
+ * The exact max value is tracked separately by the histogram.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public final class HistogramBuckets {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+    private static final int MAX_EXPONENT = 40;
+
+    public static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private HistogramBuckets() {
+    }
+
+    public static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return value < 0 ? 0 : (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & SUB_BUCKET_MASK);
+    }
+
+    /**
+     * @return the smallest value that falls into the bucket
+     */
+    public static long lowerBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        return ((long) SUB_BUCKET_COUNT + (index & SUB_BUCKET_MASK)) << shift;
+    }
+
+    /**
+     * @return the largest value that falls into the bucket
+     */
+    public static long upperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        return lowerBound(index) + (1L << shift) - 1;
+    }
+
+    /**
+     * @return the value that represents all values in the bucket
+     */
+    public static long midpoint(int index) {
+        long lower = lowerBound(index);
+        return lower + (upperBound(index) - lower) / 2;
+    }
+}
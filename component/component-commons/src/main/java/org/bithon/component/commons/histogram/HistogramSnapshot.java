@@ -0,0 +1,257 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.component.commons.histogram;
+
+import java.util.Arrays;
+
+/**
+ * A mergeable, sparse representation of a histogram whose buckets are defined by {@link HistogramBuckets}.
+ * Only non-empty buckets are kept.
+ * <p>
+ * The text form is used to store the histogram as a string column on the server side:
+ * <pre>
+ * {count} {sum} {min} {max} {bucketIndex}:{bucketCount} {bucketIndex}:{bucketCount} ...
+ * </pre>
+ * Comma is NOT used in the text form,
+ * so that histograms concatenated by the string aggregator of DBMS can be merged by {@link #fromText(String)}.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class HistogramSnapshot {
+    private long count;
+    private long sum;
+    private long min;
+    private long max;
+
+    /**
+     * index of non-empty buckets in ascending order
+     */
+    private int[] indexes;
+    private long[] counts;
+    private int size;
+
+    public HistogramSnapshot() {
+        this(0, 0, 0, 0, new int[0], new long[0], 0);
+    }
+
+    /**
+     * @param indexes bucket indexes in ascending order
+     * @param counts  count of each bucket in the {@code indexes}
+     */
+    public HistogramSnapshot(long count, long sum, long min, long max, int[] indexes, long[] counts, int size) {
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+        this.indexes = indexes;
+        this.counts = counts;
+        this.size = size;
+    }
+
+    /**
+     * @return a histogram that contains only the given value
+     */
+    public static HistogramSnapshot of(long value) {
+        return new HistogramSnapshot(1, value, value, value, new int[]{HistogramBuckets.indexOf(value)}, new long[]{1}, 1);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public long getMin() {
+        return min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return number of non-empty buckets
+     */
+    public int getBucketSize() {
+        return size;
+    }
+
+    public int getBucketIndex(int i) {
+        return indexes[i];
+    }
+
+    public long getBucketCount(int i) {
+        return counts[i];
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Merge the given histogram into this one
+     */
+    public HistogramSnapshot merge(HistogramSnapshot other) {
+        if (other == null || other.isEmpty()) {
+            return this;
+        }
+        if (this.isEmpty()) {
+            this.min = other.min;
+            this.max = other.max;
+        } else {
+            this.min = Math.min(this.min, other.min);
+            this.max = Math.max(this.max, other.max);
+        }
+        this.count += other.count;
+        this.sum += other.sum;
+
+        int[] mergedIndexes = new int[this.size + other.size];
+        long[] mergedCounts = new long[this.size + other.size];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < this.size || j < other.size) {
+            if (j >= other.size || (i < this.size && this.indexes[i] < other.indexes[j])) {
+                mergedIndexes[n] = this.indexes[i];
+                mergedCounts[n++] = this.counts[i++];
+            } else if (i >= this.size || other.indexes[j] < this.indexes[i]) {
+                mergedIndexes[n] = other.indexes[j];
+                mergedCounts[n++] = other.counts[j++];
+            } else {
+                mergedIndexes[n] = this.indexes[i];
+                mergedCounts[n++] = this.counts[i++] + other.counts[j++];
+            }
+        }
+        this.indexes = mergedIndexes;
+        this.counts = mergedCounts;
+        this.size = n;
+        return this;
+    }
+
+    /**
+     * @param quantile in the range of [0, 1]
+     * @return the estimated value at the given quantile, or 0 if the histogram is empty
+     */
+    public long quantile(double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        if (quantile <= 0) {
+            return min;
+        }
+        if (quantile >= 1) {
+            return max;
+        }
+
+        long rank = (long) Math.ceil(quantile * count);
+        long accumulated = 0;
+        for (int i = 0; i < size; i++) {
+            accumulated += counts[i];
+            if (accumulated >= rank) {
+                // The midpoint of the bucket might be out of the actual range
+                return Math.max(min, Math.min(max, HistogramBuckets.midpoint(indexes[i])));
+            }
+        }
+        return max;
+    }
+
+    public String toText() {
+        StringBuilder sb = new StringBuilder(32 + size * 8);
+        sb.append(count).append(' ')
+          .append(sum).append(' ')
+          .append(min).append(' ')
+          .append(max);
+        for (int i = 0; i < size; i++) {
+            sb.append(' ').append(indexes[i]).append(':').append(counts[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parse histograms in the text form. If there are multiple ones separated by comma, they're merged together.
+     *
+     * @return an empty histogram if the text is null or empty
+     */
+    public static HistogramSnapshot fromText(String text) {
+        HistogramSnapshot merged = new HistogramSnapshot();
+        if (text == null) {
+            return merged;
+        }
+        for (String histogram : text.split(",")) {
+            if (!histogram.trim().isEmpty()) {
+                merged.merge(parse(histogram.trim()));
+            }
+        }
+        return merged;
+    }
+
+    private static HistogramSnapshot parse(String text) {
+        String[] tokens = text.split(" ");
+        if (tokens.length < 4) {
+            throw new IllegalArgumentException("Invalid histogram text: " + text);
+        }
+        int size = tokens.length - 4;
+        int[] indexes = new int[size];
+        long[] counts = new long[size];
+        for (int i = 0; i < size; i++) {
+            String bucket = tokens[i + 4];
+            int separator = bucket.indexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Invalid histogram bucket: " + bucket);
+            }
+            indexes[i] = Integer.parseInt(bucket.substring(0, separator));
+            counts[i] = Long.parseLong(bucket.substring(separator + 1));
+        }
+        return new HistogramSnapshot(Long.parseLong(tokens[0]),
+                                     Long.parseLong(tokens[1]),
+                                     Long.parseLong(tokens[2]),
+                                     Long.parseLong(tokens[3]),
+                                     indexes,
+                                     counts,
+                                     size);
+    }
+
+    @Override
+    public String toString() {
+        return toText();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof HistogramSnapshot)) {
+            return false;
+        }
+        HistogramSnapshot that = (HistogramSnapshot) o;
+        return count == that.count
+               && sum == that.sum
+               && min == that.min
+               && max == that.max
+               && size == that.size
+               && Arrays.equals(Arrays.copyOf(indexes, size), Arrays.copyOf(that.indexes, that.size))
+               && Arrays.equals(Arrays.copyOf(counts, size), Arrays.copyOf(that.counts, that.size));
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(count) * 31 + Long.hashCode(sum);
+    }
+}
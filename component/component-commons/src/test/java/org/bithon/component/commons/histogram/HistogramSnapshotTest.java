@@ -0,0 +1,128 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.component.commons.histogram;
+
+import org.bithon.component.commons.expression.IDataType;
+import org.bithon.component.commons.expression.IdentifierExpression;
+import org.bithon.component.commons.expression.LiteralExpression;
+import org.bithon.component.commons.expression.expt.InvalidExpressionException;
+import org.bithon.component.commons.expression.function.builtin.AggregateFunction;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class HistogramSnapshotTest {
+
+    @Test
+    public void testBucketLayout() {
+        Assertions.assertEquals(0, HistogramBuckets.indexOf(-1));
+        Assertions.assertEquals(15, HistogramBuckets.indexOf(15));
+        Assertions.assertEquals(16, HistogramBuckets.indexOf(16));
+        Assertions.assertEquals(HistogramBuckets.BUCKET_COUNT - 1, HistogramBuckets.indexOf(Long.MAX_VALUE));
+
+        // Every value falls into a bucket whose bounds contain it, and the relative error is bounded
+        for (long v = 1; v < (1L << 40); v = v * 3 / 2 + 1) {
+            int index = HistogramBuckets.indexOf(v);
+            Assertions.assertTrue(HistogramBuckets.lowerBound(index) <= v);
+            Assertions.assertTrue(HistogramBuckets.upperBound(index) >= v);
+            Assertions.assertTrue(Math.abs(HistogramBuckets.midpoint(index) - v) <= v / 16.0);
+        }
+
+        // Buckets are continuous
+        for (int i = 1; i < HistogramBuckets.BUCKET_COUNT; i++) {
+            Assertions.assertEquals(HistogramBuckets.upperBound(i - 1) + 1, HistogramBuckets.lowerBound(i));
+        }
+    }
+
+    @Test
+    public void testQuantile() {
+        HistogramSnapshot histogram = of(1, 1000);
+
+        Assertions.assertEquals(1000, histogram.getCount());
+        Assertions.assertEquals(500500, histogram.getSum());
+        Assertions.assertEquals(1, histogram.quantile(0));
+        Assertions.assertEquals(1000, histogram.quantile(1));
+        Assertions.assertEquals(500, histogram.quantile(0.5), 500 * 0.04);
+        Assertions.assertEquals(990, histogram.quantile(0.99), 990 * 0.04);
+
+        Assertions.assertEquals(0, new HistogramSnapshot().quantile(0.99));
+    }
+
+    @Test
+    public void testMerge() {
+        HistogramSnapshot merged = of(1, 500).merge(of(501, 1000));
+
+        HistogramSnapshot expected = of(1, 1000);
+        Assertions.assertEquals(expected, merged);
+        Assertions.assertEquals(expected.quantile(0.99), merged.quantile(0.99));
+
+        // Merge with empty
+        Assertions.assertEquals(expected, new HistogramSnapshot().merge(expected).merge(new HistogramSnapshot()));
+    }
+
+    @Test
+    public void testText() {
+        HistogramSnapshot histogram = of(100, 200);
+        Assertions.assertEquals(histogram, HistogramSnapshot.fromText(histogram.toText()));
+
+        // Concatenated by the string aggregator
+        String concatenated = of(1, 500).toText() + "," + of(501, 1000).toText();
+        Assertions.assertEquals(of(1, 1000), HistogramSnapshot.fromText(concatenated));
+
+        Assertions.assertTrue(HistogramSnapshot.fromText(null).isEmpty());
+        Assertions.assertTrue(HistogramSnapshot.fromText("").isEmpty());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> HistogramSnapshot.fromText("1 2"));
+    }
+
+    @Test
+    public void testQuantileFunction() {
+        String concatenated = of(1, 500).toText() + "," + of(501, 1000).toText();
+        Assertions.assertEquals((double) of(1, 1000).quantile(0.9),
+                                AggregateFunction.Quantile.INSTANCE.evaluate(Arrays.asList(concatenated, 0.9)));
+        Assertions.assertEquals(0.0, AggregateFunction.Quantile.INSTANCE.evaluate(Arrays.asList(null, 0.9)));
+
+        Assertions.assertThrows(InvalidExpressionException.class,
+                                () -> AggregateFunction.Quantile.INSTANCE.validateArgs(Arrays.asList(IdentifierExpression.of("h", IDataType.STRING),
+                                                                                                      LiteralExpression.ofDouble(1.5))));
+    }
+
+    /**
+     * Build a histogram from values in [from, to]
+     */
+    private static HistogramSnapshot of(long from, long to) {
+        long[] buckets = new long[HistogramBuckets.BUCKET_COUNT];
+        long sum = 0;
+        for (long v = from; v <= to; v++) {
+            buckets[HistogramBuckets.indexOf(v)]++;
+            sum += v;
+        }
+        int[] indexes = new int[buckets.length];
+        long[] counts = new long[buckets.length];
+        int size = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            if (buckets[i] > 0) {
+                indexes[size] = i;
+                counts[size++] = buckets[i];
+            }
+        }
+        return new HistogramSnapshot(to - from + 1, sum, from, to, indexes, counts, size);
+    }
+}
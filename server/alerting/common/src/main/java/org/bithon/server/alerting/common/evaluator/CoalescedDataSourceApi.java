@@ -0,0 +1,451 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.alerting.common.evaluator;
+
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.bithon.component.commons.expression.ComparisonExpression;
+import org.bithon.component.commons.expression.ConditionalExpression;
+import org.bithon.component.commons.expression.ExpressionList;
+import org.bithon.component.commons.expression.IExpression;
+import org.bithon.component.commons.expression.IdentifierExpression;
+import org.bithon.component.commons.expression.LiteralExpression;
+import org.bithon.component.commons.expression.LogicalExpression;
+import org.bithon.component.commons.utils.CollectionUtils;
+import org.bithon.server.datasource.ISchema;
+import org.bithon.server.datasource.query.pipeline.ColumnarTable;
+import org.bithon.server.metric.expression.ast.MetricExpression;
+import org.bithon.server.web.service.datasource.api.DisplayableText;
+import org.bithon.server.web.service.datasource.api.GetDimensionRequest;
+import org.bithon.server.web.service.datasource.api.IDataSourceApi;
+import org.bithon.server.web.service.datasource.api.IntervalRequest;
+import org.bithon.server.web.service.datasource.api.QueryField;
+import org.bithon.server.web.service.datasource.api.QueryRequest;
+import org.bithon.server.web.service.datasource.api.QueryResponse;
+import org.bithon.server.web.service.datasource.api.UpdateTTLRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A data source API used by one evaluation round of alert rules.
+ * <p>
+ * Before evaluation, the queries that rules are going to issue are registered by {@link #plan(QueryRequest, IExpression)}.
+ * Queries on the same data source, the same interval and the same GROUP-BY are coalesced into one query when
+ * <ul>
+ *     <li>they share the same filter, in which case the fields are merged into one query, or</li>
+ *     <li>their filters only differ in the value of one {@code label = 'value'} conjunct,
+ *     in which case the conjunct is turned into {@code label IN (...)} and the label is added to the GROUP-BY.</li>
+ * </ul>
+ * The coalesced query is issued once on the first {@link #groupByV3(QueryRequest)} call of any of its members,
+ * and the rows are fanned out to each member.
+ * Queries that are not planned are passed through to the delegation.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Slf4j
+public class CoalescedDataSourceApi implements IDataSourceApi {
+
+    private final IDataSourceApi delegate;
+
+    /**
+     * Key is the text form of a planned request.
+     * Only modified during planning which happens before evaluation, so no synchronization is needed for reading
+     */
+    private final Map<String, Member> members = new HashMap<>();
+    private final Map<String, Group> groups = new LinkedHashMap<>();
+
+    private final AtomicLong requestedQueries = new AtomicLong();
+    private final AtomicLong issuedQueries = new AtomicLong();
+
+    public CoalescedDataSourceApi(IDataSourceApi delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @param filter the parsed form of {@link QueryRequest#getFilterExpression()}
+     */
+    public void plan(QueryRequest request, @Nullable IExpression filter) {
+        if (!isPlannable(request)) {
+            return;
+        }
+
+        String requestKey = toRequestKey(request);
+        Member planned = members.get(requestKey);
+        if (planned != null) {
+            // The same query from another rule
+            if (planned.group != null) {
+                planned.group.references++;
+            }
+            return;
+        }
+
+        // Find the label = 'value' conjunct that can be turned into IN
+        String label = null;
+        String labelValue = null;
+        List<IExpression> rest = new ArrayList<>();
+        if (filter != null) {
+            List<IExpression> conjuncts = filter instanceof LogicalExpression.AND ? ((LogicalExpression) filter).getOperands() : List.of(filter);
+            for (IExpression conjunct : conjuncts) {
+                if (label == null
+                    && conjunct instanceof ComparisonExpression.EQ eq
+                    && eq.getLhs() instanceof IdentifierExpression identifier
+                    && eq.getRhs() instanceof LiteralExpression.StringLiteral literal) {
+                    label = identifier.getIdentifier();
+                    labelValue = literal.getValue();
+                } else {
+                    rest.add(conjunct);
+                }
+            }
+        }
+
+        Set<String> groupBy = CollectionUtils.emptyOrOriginal(request.getGroupBy());
+        String groupKey = String.join("|",
+                                      request.getDataSource(),
+                                      String.valueOf(request.getInterval().getStartISO8601().getMilliseconds()),
+                                      String.valueOf(request.getInterval().getEndISO8601().getMilliseconds()),
+                                      new TreeSet<>(groupBy).toString(),
+                                      label == null ? Objects.toString(request.getFilterExpression(), "") : label + "|" + toFilterText(rest));
+
+        Group group = groups.computeIfAbsent(groupKey, k -> new Group(request));
+        if (!group.add(request, label, labelValue, rest)) {
+            // Can't be merged because of conflict field definition, issue it as it is
+            group = null;
+        }
+        members.put(requestKey, new Member(group, labelValue));
+    }
+
+    /**
+     * Number of group-by queries received from evaluators
+     */
+    public long getRequestedQueries() {
+        return requestedQueries.get();
+    }
+
+    /**
+     * Number of group-by queries issued to the underlying data source
+     */
+    public long getIssuedQueries() {
+        return issuedQueries.get();
+    }
+
+    @Override
+    public QueryResponse groupByV3(QueryRequest request) throws IOException {
+        requestedQueries.incrementAndGet();
+
+        Member member = isPlannable(request) ? members.get(toRequestKey(request)) : null;
+        if (member == null || member.group == null || member.group.references == 1) {
+            return issue(request);
+        }
+
+        Group group = member.group;
+        QueryResponse merged = group.fetch();
+        if (merged == null) {
+            // The coalesced query failed, fall back to the query of this member
+            return issue(request);
+        }
+
+        //noinspection unchecked
+        List<Map<String, Object>> rows = (List<Map<String, Object>>) merged.getData();
+        if (!group.isMultiValue()) {
+            return project(merged, rows, request);
+        }
+
+        List<Map<String, Object>> memberRows = new ArrayList<>();
+        for (Map<String, Object> row : rows) {
+            if (member.labelValue.equals(Objects.toString(row.get(group.label), null))) {
+                memberRows.add(row);
+            }
+        }
+        if (memberRows.isEmpty() && CollectionUtils.isEmpty(request.getGroupBy())) {
+            // A query without GROUP-BY returns one row even if there's no matched record, for example, count() returns 0.
+            // The coalesced query can't tell this, so issue the original query to keep the semantics
+            return issue(request);
+        }
+        return project(merged, memberRows, request);
+    }
+
+    private QueryResponse issue(QueryRequest request) throws IOException {
+        issuedQueries.incrementAndGet();
+        return delegate.groupByV3(request);
+    }
+
+    /**
+     * Keep only the columns that the member query asks for
+     */
+    private static QueryResponse project(QueryResponse<?> merged, List<Map<String, Object>> rows, QueryRequest request) {
+        Set<String> columns = new LinkedHashSet<>(CollectionUtils.emptyOrOriginal(request.getGroupBy()));
+        for (QueryField field : request.getFields()) {
+            columns.add(field.getName());
+        }
+
+        List<Map<String, Object>> projected = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            Map<String, Object> projectedRow = new LinkedHashMap<>();
+            for (String column : columns) {
+                if (row.containsKey(column)) {
+                    projectedRow.put(column, row.get(column));
+                }
+            }
+            projected.add(projectedRow);
+        }
+
+        return QueryResponse.builder()
+                            .startTimestamp(merged.getStartTimestamp())
+                            .endTimestamp(merged.getEndTimestamp())
+                            .interval(merged.getInterval())
+                            .meta(merged.getMeta() == null ? null : merged.getMeta()
+                                                                          .stream()
+                                                                          .filter((meta) -> columns.contains(meta.getName()))
+                                                                          .toList())
+                            .data(projected)
+                            .build();
+    }
+
+    private static boolean isPlannable(QueryRequest request) {
+        IntervalRequest interval = request.getInterval();
+        return request.getOrderBy() == null
+               && request.getLimit() == null
+               && request.getOffset() == null
+               && request.getSettings() == null
+               && interval != null
+               && interval.getStartISO8601() != null
+               && interval.getEndISO8601() != null
+               && interval.getStep() == null
+               && interval.getBucketCount() == null
+               && interval.getWindow() == null
+               && interval.getTimestampColumn() == null
+               && CollectionUtils.isNotEmpty(request.getFields());
+    }
+
+    private static String toRequestKey(QueryRequest request) {
+        StringBuilder key = new StringBuilder(128);
+        key.append(request.getDataSource())
+           .append('|')
+           .append(request.getInterval().getStartISO8601().getMilliseconds())
+           .append('|')
+           .append(request.getInterval().getEndISO8601().getMilliseconds())
+           .append('|')
+           .append(request.getFilterExpression())
+           .append('|')
+           .append(new TreeSet<>(CollectionUtils.emptyOrOriginal(request.getGroupBy())));
+        for (QueryField field : request.getFields()) {
+            key.append('|').append(toFieldKey(field));
+        }
+        return key.toString();
+    }
+
+    private static String toFieldKey(QueryField field) {
+        return field.getName() + ',' + field.getField() + ',' + field.getAggregator() + ',' + field.getExpression();
+    }
+
+    private static String toFilterText(List<IExpression> conjuncts) {
+        if (conjuncts.isEmpty()) {
+            return "";
+        }
+        IExpression expression = conjuncts.size() == 1 ? conjuncts.get(0) : new LogicalExpression.AND(new ArrayList<>(conjuncts));
+        return new MetricExpression.SqlStyleSerializer().serialize(expression);
+    }
+
+    private record Member(@Nullable Group group, @Nullable String labelValue) {
+    }
+
+    private class Group {
+        private final QueryRequest first;
+        private final Map<String, QueryField> fields = new LinkedHashMap<>();
+        private final Set<String> labelValues = new LinkedHashSet<>();
+        private String label;
+        private List<IExpression> rest;
+
+        /**
+         * Number of planned queries that are served by this group
+         */
+        private int references;
+
+        private boolean fetched;
+        private QueryResponse response;
+
+        Group(QueryRequest first) {
+            this.first = first;
+        }
+
+        boolean add(QueryRequest request, String label, String labelValue, List<IExpression> rest) {
+            for (QueryField field : request.getFields()) {
+                QueryField existing = fields.get(field.getName());
+                if (existing != null && !toFieldKey(existing).equals(toFieldKey(field))) {
+                    return false;
+                }
+            }
+            for (QueryField field : request.getFields()) {
+                fields.putIfAbsent(field.getName(), field);
+            }
+            this.label = label;
+            this.rest = rest;
+            if (labelValue != null) {
+                labelValues.add(labelValue);
+            }
+            references++;
+            return true;
+        }
+
+        boolean isMultiValue() {
+            return labelValues.size() > 1;
+        }
+
+        /**
+         * @return null if the coalesced query fails.
+         * In that case each member issues its own query, so that the failure is reported in the evaluation log of each rule
+         */
+        synchronized QueryResponse fetch() {
+            if (!fetched) {
+                fetched = true;
+                QueryRequest request = toRequest();
+                try {
+                    response = issue(request);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Failed to issue coalesced query on [{}] for {} rules, fall back to the query of each rule: {}",
+                             request.getDataSource(),
+                             references,
+                             e.getMessage(),
+                             e);
+                    response = null;
+                }
+            }
+            return response;
+        }
+
+        private QueryRequest toRequest() {
+            String filterExpression = first.getFilterExpression();
+            Set<String> groupBy = CollectionUtils.emptyOrOriginal(first.getGroupBy());
+            if (isMultiValue()) {
+                List<IExpression> conjuncts = new ArrayList<>(rest);
+                conjuncts.add(new ConditionalExpression.In(new IdentifierExpression(label),
+                                                           new ExpressionList(labelValues.stream()
+                                                                                         .map(v -> (IExpression) LiteralExpression.ofString(v))
+                                                                                         .toList())));
+                filterExpression = toFilterText(conjuncts);
+
+                groupBy = new LinkedHashSet<>(groupBy);
+                groupBy.add(label);
+            }
+
+            return QueryRequest.builder()
+                               .dataSource(first.getDataSource())
+                               .interval(first.getInterval())
+                               .filterExpression(filterExpression)
+                               .fields(new ArrayList<>(fields.values()))
+                               .groupBy(groupBy)
+                               .resultFormat(first.getResultFormat())
+                               .build();
+        }
+    }
+
+    //
+    // Methods below are delegated as it is
+    //
+    @Override
+    public QueryResponse timeseriesV4(QueryRequest request) throws IOException {
+        return delegate.timeseriesV4(request);
+    }
+
+    @Override
+    public ColumnarTable internalTimeseries(QueryRequest request) throws IOException {
+        return delegate.internalTimeseries(request);
+    }
+
+    @Override
+    public QueryResponse listV2(QueryRequest request) throws IOException {
+        return delegate.listV2(request);
+    }
+
+    @Override
+    public QueryResponse count(QueryRequest request) throws IOException {
+        return delegate.count(request);
+    }
+
+    @Override
+    public QueryResponse query(QueryRequest request) throws IOException {
+        return delegate.query(request);
+    }
+
+    @Override
+    public ResponseEntity<StreamingResponseBody> streamQuery(String acceptEncoding, QueryRequest request) throws IOException {
+        return delegate.streamQuery(acceptEncoding, request);
+    }
+
+    @Override
+    public Map<String, ISchema> getSchemas() {
+        return delegate.getSchemas();
+    }
+
+    @Override
+    public ISchema getSchemaByName(String schemaName) {
+        return delegate.getSchemaByName(schemaName);
+    }
+
+    @Override
+    public ResponseEntity<StreamingResponseBody> testSchema(ISchema schema) {
+        return delegate.testSchema(schema);
+    }
+
+    @Override
+    public void createSchema(ISchema schema) {
+        delegate.createSchema(schema);
+    }
+
+    @Override
+    public void updateSchema(ISchema schema) {
+        delegate.updateSchema(schema);
+    }
+
+    @Override
+    public Collection<DisplayableText> getSchemaNames() {
+        return delegate.getSchemaNames();
+    }
+
+    @Override
+    public Collection<Map<String, String>> getDimensions(GetDimensionRequest request) throws IOException {
+        return delegate.getDimensions(request);
+    }
+
+    @Override
+    public void updateSpecifiedDataSourceTTL(UpdateTTLRequest request) {
+        delegate.updateSpecifiedDataSourceTTL(request);
+    }
+
+    @Override
+    public void saveMetricBaseline(SaveMetricBaselineRequest request) {
+        delegate.saveMetricBaseline(request);
+    }
+
+    @Override
+    public List<String> getBaselineDate() {
+        return delegate.getBaselineDate();
+    }
+}
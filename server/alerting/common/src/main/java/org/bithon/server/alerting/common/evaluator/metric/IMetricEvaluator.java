@@ -20,9 +20,13 @@ import org.bithon.server.alerting.common.evaluator.EvaluationContext;
 import org.bithon.server.alerting.common.evaluator.result.EvaluationOutputs;
 import org.bithon.server.commons.time.TimeSpan;
 import org.bithon.server.web.service.datasource.api.IDataSourceApi;
+import org.bithon.server.web.service.datasource.api.IntervalRequest;
 import org.bithon.server.web.service.datasource.api.QueryField;
+import org.bithon.server.web.service.datasource.api.QueryRequest;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -39,4 +43,35 @@ public interface IMetricEvaluator {
                                String filterExpression,
                                Set<String> groupBy,
                                EvaluationContext context) throws IOException;
+
+    /**
+     * The queries that {@link #evaluate} issues over the given interval.
+     * They're collected before evaluation so that queries of different rules can be coalesced.
+     */
+    default List<QueryRequest> getQueryRequests(String dataSource,
+                                                QueryField metric,
+                                                TimeSpan start,
+                                                TimeSpan end,
+                                                String filterExpression,
+                                                Set<String> groupBy) {
+        return List.of(createQueryRequest(dataSource, metric, start, end, filterExpression, groupBy));
+    }
+
+    static QueryRequest createQueryRequest(String dataSource,
+                                           QueryField metric,
+                                           TimeSpan start,
+                                           TimeSpan end,
+                                           String filterExpression,
+                                           Set<String> groupBy) {
+        return QueryRequest.builder()
+                           .dataSource(dataSource)
+                           .interval(IntervalRequest.builder()
+                                                    .startISO8601(start)
+                                                    .endISO8601(end)
+                                                    .build())
+                           .filterExpression(filterExpression)
+                           .fields(Collections.singletonList(metric))
+                           .groupBy(groupBy)
+                           .build();
+    }
 }
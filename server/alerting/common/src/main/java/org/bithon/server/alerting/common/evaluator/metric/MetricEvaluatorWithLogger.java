@@ -23,7 +23,9 @@ import org.bithon.server.alerting.common.evaluator.result.EvaluationOutputs;
 import org.bithon.server.commons.time.TimeSpan;
 import org.bithon.server.web.service.datasource.api.IDataSourceApi;
 import org.bithon.server.web.service.datasource.api.QueryField;
+import org.bithon.server.web.service.datasource.api.QueryRequest;
 
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -38,6 +40,16 @@ public class MetricEvaluatorWithLogger implements IMetricEvaluator {
         this.delegateEvaluator = delegate;
     }
 
+    @Override
+    public List<QueryRequest> getQueryRequests(String dataSource,
+                                               QueryField metric,
+                                               TimeSpan start,
+                                               TimeSpan end,
+                                               String filterExpression,
+                                               Set<String> groupBy) {
+        return delegateEvaluator.getQueryRequests(dataSource, metric, start, end, filterExpression, groupBy);
+    }
+
     @Override
     public EvaluationOutputs evaluate(IDataSourceApi dataSourceApi,
                                       String dataSource,
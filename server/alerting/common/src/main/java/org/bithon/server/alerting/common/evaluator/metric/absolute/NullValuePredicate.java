@@ -26,13 +26,10 @@ import org.bithon.server.alerting.common.evaluator.result.EvaluationOutputs;
 import org.bithon.server.commons.time.TimeSpan;
 import org.bithon.server.storage.alerting.Label;
 import org.bithon.server.web.service.datasource.api.IDataSourceApi;
-import org.bithon.server.web.service.datasource.api.IntervalRequest;
 import org.bithon.server.web.service.datasource.api.QueryField;
-import org.bithon.server.web.service.datasource.api.QueryRequest;
 import org.bithon.server.web.service.datasource.api.QueryResponse;
 
 import java.io.IOException;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -56,16 +53,12 @@ public class NullValuePredicate implements IMetricEvaluator {
                                       String filterExpression,
                                       Set<String> groupBy,
                                       EvaluationContext context) throws IOException {
-        QueryResponse response = dataSourceApi.groupByV3(QueryRequest.builder()
-                                                                     .dataSource(dataSource)
-                                                                     .interval(IntervalRequest.builder()
-                                                                                              .startISO8601(start)
-                                                                                              .endISO8601(end)
-                                                                                              .build())
-                                                                     .filterExpression(filterExpression)
-                                                                     .fields(Collections.singletonList(metric))
-                                                                     .groupBy(groupBy)
-                                                                     .build());
+        QueryResponse response = dataSourceApi.groupByV3(IMetricEvaluator.createQueryRequest(dataSource,
+                                                                                           metric,
+                                                                                           start,
+                                                                                           end,
+                                                                                           filterExpression,
+                                                                                           groupBy));
 
         //noinspection unchecked
         List<Map<String, Object>> now = (List<Map<String, Object>>) response.getData();
@@ -29,7 +29,6 @@ import org.bithon.server.alerting.common.evaluator.result.EvaluationOutputs;
 import org.bithon.server.commons.time.TimeSpan;
 import org.bithon.server.storage.alerting.Label;
 import org.bithon.server.web.service.datasource.api.IDataSourceApi;
-import org.bithon.server.web.service.datasource.api.IntervalRequest;
 import org.bithon.server.web.service.datasource.api.QueryField;
 import org.bithon.server.web.service.datasource.api.QueryRequest;
 import org.bithon.server.web.service.datasource.api.QueryResponse;
@@ -67,6 +66,22 @@ public abstract class AbstractRelativeThresholdPredicate implements IMetricEvalu
         this.threshold = Preconditions.checkArgumentNotNull("threshold", threshold);
     }
 
+    @Override
+    public List<QueryRequest> getQueryRequests(String dataSource,
+                                               QueryField metric,
+                                               TimeSpan start,
+                                               TimeSpan end,
+                                               String filterExpression,
+                                               Set<String> groupBy) {
+        return List.of(IMetricEvaluator.createQueryRequest(dataSource, metric, start, end, filterExpression, groupBy),
+                       IMetricEvaluator.createQueryRequest(dataSource,
+                                                           metric,
+                                                           start.before(this.offset, TimeUnit.SECONDS),
+                                                           end.before(this.offset, TimeUnit.SECONDS),
+                                                           filterExpression,
+                                                           groupBy));
+    }
+
     @Override
     public EvaluationOutputs evaluate(IDataSourceApi dataSourceApi,
                                       String dataSource,
@@ -77,16 +92,12 @@ public abstract class AbstractRelativeThresholdPredicate implements IMetricEvalu
                                       Set<String> groupBy,
                                       EvaluationContext context) throws IOException {
 
-        QueryResponse response = dataSourceApi.groupByV3(QueryRequest.builder()
-                                                                     .dataSource(dataSource)
-                                                                     .interval(IntervalRequest.builder()
-                                                                                              .startISO8601(start)
-                                                                                              .endISO8601(end)
-                                                                                              .build())
-                                                                     .filterExpression(filterExpression)
-                                                                     .fields(Collections.singletonList(metric))
-                                                                     .groupBy(groupBy)
-                                                                     .build());
+        QueryResponse response = dataSourceApi.groupByV3(IMetricEvaluator.createQueryRequest(dataSource,
+                                                                                           metric,
+                                                                                           start,
+                                                                                           end,
+                                                                                           filterExpression,
+                                                                                           groupBy));
 
         //noinspection unchecked
         List<Map<String, Object>> seriesList = (List<Map<String, Object>>) response.getData();
@@ -97,16 +108,12 @@ public abstract class AbstractRelativeThresholdPredicate implements IMetricEvalu
         Map<Label, Number> current = toSeriesMap(seriesList, metric.getName(), groupBy);
 
         // Find base values for different series
-        response = dataSourceApi.groupByV3(QueryRequest.builder()
-                                                       .dataSource(dataSource)
-                                                       .interval(IntervalRequest.builder()
-                                                                                .startISO8601(start.before(this.offset, TimeUnit.SECONDS))
-                                                                                .endISO8601(end.before(this.offset, TimeUnit.SECONDS))
-                                                                                .build())
-                                                       .filterExpression(filterExpression)
-                                                       .fields(Collections.singletonList(metric))
-                                                       .groupBy(groupBy)
-                                                       .build());
+        response = dataSourceApi.groupByV3(IMetricEvaluator.createQueryRequest(dataSource,
+                                                                             metric,
+                                                                             start.before(this.offset, TimeUnit.SECONDS),
+                                                                             end.before(this.offset, TimeUnit.SECONDS),
+                                                                             filterExpression,
+                                                                             groupBy));
 
         //noinspection unchecked
         Map<Label, Number> baseMap = toSeriesMap((List<Map<String, Object>>) response.getData(), metric.getName(), groupBy);
@@ -0,0 +1,214 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.alerting.common.evaluator.state;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bithon.server.storage.alerting.IAlertStateStorage;
+import org.bithon.server.storage.alerting.Label;
+import org.bithon.server.storage.alerting.pojo.AlertState;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A write-behind store of alert states.
+ * <p>
+ * The in-memory states are authoritative for the rules evaluated by the current instance.
+ * Updated states are marked as dirty and written to the underlying storage in one bulk upsert by {@link #flush()},
+ * which is called once per evaluation round instead of once per rule.
+ * <p>
+ * States are only read from the underlying storage for rules that are not in memory yet,
+ * that's at startup, or when a rule is created or its ownership moves to the current instance.
+ * Since dirty states are kept until they're successfully written,
+ * a crash loses at most the states updated since the last flush, and the last flushed states are recovered on startup.
+ * <p>
+ * When a rule is no longer owned by the current instance, its dirty state is written before it's given up,
+ * and is never written afterward, so that it does not overwrite the newer state written by the new owner.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Slf4j
+public class AlertStateStore {
+
+    private final IAlertStateStorage storage;
+
+    private final Map<String, AlertState> states = new ConcurrentHashMap<>();
+
+    /**
+     * Rules whose states have been loaded from the storage. A rule might have no state in storage
+     */
+    private final Set<String> loaded = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Key is the rule id, value is the sequence of the last update.
+     * States are updated in place, so the sequence instead of the state object tells if a state is updated again during a flush
+     */
+    private final Map<String, Long> dirty = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    public AlertStateStore(IAlertStateStorage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Get the states of given rules.
+     * States of rules that are not in memory are loaded from storage,
+     * and states of rules that are not in the given list are evicted from memory after their dirty states are written.
+     *
+     * @return a map of states keyed by rule id. Rules that have never been evaluated are not in the map
+     */
+    public synchronized Map<String, AlertState> getStates(Collection<String> ruleIds) {
+        Set<String> ruleIdSet = new HashSet<>(ruleIds);
+
+        // Evict rules that are deleted or not owned by the current instance any more
+        Map<String, AlertState> evicted = new HashMap<>();
+        loaded.removeIf((ruleId) -> {
+            if (!ruleIdSet.contains(ruleId)) {
+                AlertState state = states.remove(ruleId);
+                if (dirty.remove(ruleId) != null && state != null) {
+                    evicted.put(ruleId, copy(state));
+                }
+                return true;
+            }
+            return false;
+        });
+        if (!evicted.isEmpty()) {
+            // Write them before giving them up.
+            // If the write fails, they're dropped instead of being retried,
+            // because a later write might overwrite the state updated by the new owner
+            try {
+                storage.updateAlertStates(evicted);
+            } catch (RuntimeException e) {
+                log.error("Failed to write {} alert states of rules no longer owned, these states are dropped", evicted.size(), e);
+            }
+        }
+
+        List<String> missing = new ArrayList<>();
+        for (String ruleId : ruleIdSet) {
+            if (!loaded.contains(ruleId)) {
+                missing.add(ruleId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            // At startup, read all states in one query instead of a long IN list
+            Map<String, AlertState> stored = loaded.isEmpty() ? storage.getAlertStates() : storage.getAlertStates(missing);
+            for (String ruleId : missing) {
+                AlertState state = stored.get(ruleId);
+                if (state != null) {
+                    // Don't overwrite the state updated in memory
+                    states.putIfAbsent(ruleId, state);
+                }
+                loaded.add(ruleId);
+            }
+        }
+
+        Map<String, AlertState> result = new HashMap<>();
+        for (String ruleId : ruleIdSet) {
+            AlertState state = states.get(ruleId);
+            if (state != null) {
+                result.put(ruleId, state);
+            }
+        }
+        return result;
+    }
+
+    public synchronized void update(String ruleId, AlertState state) {
+        states.put(ruleId, state);
+        loaded.add(ruleId);
+        dirty.put(ruleId, sequence.incrementAndGet());
+    }
+
+    /**
+     * Write all dirty states to the storage in one bulk upsert.
+     * If the write fails, the states are kept as dirty and will be written on the next flush.
+     * <p>
+     * Dirty states are copied under the lock, so that the written states are not changed by evaluations during serialization.
+     *
+     * @return the number of written states
+     */
+    public int flush() {
+        if (dirty.isEmpty()) {
+            return 0;
+        }
+
+        Map<String, Long> snapshot;
+        Map<String, AlertState> writes = new HashMap<>();
+        synchronized (this) {
+            snapshot = new HashMap<>(dirty);
+            for (String ruleId : snapshot.keySet()) {
+                AlertState state = states.get(ruleId);
+                if (state != null) {
+                    writes.put(ruleId, copy(state));
+                }
+            }
+        }
+        try {
+            storage.updateAlertStates(writes);
+        } catch (RuntimeException e) {
+            log.error("Failed to write {} alert states, will retry on next flush", writes.size(), e);
+            return 0;
+        }
+
+        // A state updated again after the snapshot is kept as dirty
+        for (Map.Entry<String, Long> entry : snapshot.entrySet()) {
+            dirty.remove(entry.getKey(), entry.getValue());
+        }
+        return writes.size();
+    }
+
+    public int getDirtyCount() {
+        return dirty.size();
+    }
+
+    private static AlertState copy(AlertState state) {
+        AlertState copy = new AlertState();
+        copy.setStatus(state.getStatus());
+        copy.setLastEvaluatedAt(state.getLastEvaluatedAt());
+        copy.setLastAlertAt(state.getLastAlertAt());
+        copy.setLastRecordId(state.getLastRecordId());
+
+        AlertState.Payload payload = state.getPayload();
+        if (payload != null) {
+            Map<Label, AlertState.SeriesState> series = null;
+            if (payload.getSeries() != null) {
+                series = new HashMap<>();
+                for (Map.Entry<Label, AlertState.SeriesState> entry : payload.getSeries().entrySet()) {
+                    AlertState.SeriesState seriesState = entry.getValue();
+                    AlertState.SeriesState seriesCopy = null;
+                    if (seriesState != null) {
+                        seriesCopy = new AlertState.SeriesState();
+                        seriesCopy.setStatus(seriesState.getStatus());
+                        seriesCopy.setMatchCount(seriesState.getMatchCount());
+                        seriesCopy.setMatchExpiredAt(seriesState.getMatchExpiredAt());
+                        seriesCopy.setSilenceExpiredAt(seriesState.getSilenceExpiredAt());
+                        seriesCopy.setResolvedAt(seriesState.getResolvedAt());
+                    }
+                    series.put(entry.getKey(), seriesCopy);
+                }
+            }
+            copy.setPayload(new AlertState.Payload(series));
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.alerting.common.evaluator;
+
+import org.bithon.component.commons.utils.CollectionUtils;
+import org.bithon.server.alerting.common.evaluator.metric.IMetricEvaluator;
+import org.bithon.server.alerting.common.model.AlertExpression;
+import org.bithon.server.alerting.common.parser.AlertExpressionASTParser;
+import org.bithon.server.commons.time.TimeSpan;
+import org.bithon.server.metric.expression.ast.MetricExpression;
+import org.bithon.server.web.service.datasource.api.IDataSourceApi;
+import org.bithon.server.web.service.datasource.api.QueryRequest;
+import org.bithon.server.web.service.datasource.api.QueryResponse;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class CoalescedDataSourceApiTest {
+
+    private final TimeSpan end = TimeSpan.fromMilliseconds(60_000 * 1000L);
+    private final List<QueryRequest> issued = new ArrayList<>();
+
+    private IDataSourceApi createDelegate(Function<QueryRequest, List<Map<String, Object>>> rows) {
+        return (IDataSourceApi) Proxy.newProxyInstance(IDataSourceApi.class.getClassLoader(),
+                                                       new Class[]{IDataSourceApi.class},
+                                                       (proxy, method, args) -> {
+                                                           if (!"groupByV3".equals(method.getName())) {
+                                                               throw new UnsupportedOperationException(method.getName());
+                                                           }
+                                                           QueryRequest request = (QueryRequest) args[0];
+                                                           issued.add(request);
+                                                           return QueryResponse.builder().data(rows.apply(request)).build();
+                                                       });
+    }
+
+    private QueryRequest plan(CoalescedDataSourceApi api, String expr) {
+        MetricExpression metricExpression = ((AlertExpression) AlertExpressionASTParser.parse(expr)).getMetricExpression();
+        QueryRequest request = IMetricEvaluator.createQueryRequest(metricExpression.getFrom(),
+                                                                   metricExpression.getMetric(),
+                                                                   end.before(metricExpression.getWindow()),
+                                                                   end,
+                                                                   metricExpression.getWhereText(),
+                                                                   CollectionUtils.emptyOrOriginal(metricExpression.getGroupBy()));
+        api.plan(request, metricExpression.getLabelSelectorExpression());
+        return request;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> rowsOf(QueryResponse response) {
+        return (List<Map<String, Object>>) response.getData();
+    }
+
+    @Test
+    public void testSameFilterDifferentFields() throws IOException {
+        CoalescedDataSourceApi api = new CoalescedDataSourceApi(createDelegate((request) -> List.of(Map.of("appName", "a", "cpu", 1, "memory", 2))));
+
+        QueryRequest r1 = plan(api, "avg(jvm-metrics.cpu{appName = 'a'})[5m] BY (appName) > 1");
+        QueryRequest r2 = plan(api, "sum(jvm-metrics.memory{appName = 'a'})[5m] BY (appName) > 1");
+
+        Assertions.assertEquals(List.of(Map.of("appName", "a", "cpu", 1)), rowsOf(api.groupByV3(r1)));
+        Assertions.assertEquals(List.of(Map.of("appName", "a", "memory", 2)), rowsOf(api.groupByV3(r2)));
+
+        Assertions.assertEquals(1, issued.size());
+        Assertions.assertEquals(2, issued.get(0).getFields().size());
+        Assertions.assertEquals(r1.getFilterExpression(), issued.get(0).getFilterExpression());
+        Assertions.assertEquals(2, api.getRequestedQueries());
+        Assertions.assertEquals(1, api.getIssuedQueries());
+    }
+
+    @Test
+    public void testFilterDiffersInOneLabelValue() throws IOException {
+        CoalescedDataSourceApi api = new CoalescedDataSourceApi(createDelegate((request) -> List.of(Map.of("appName", "a", "instance", "1", "cpu", 1),
+                                                                                                    Map.of("appName", "b", "instance", "2", "cpu", 2))));
+
+        QueryRequest r1 = plan(api, "avg(jvm-metrics.cpu{appName = 'a', instance <> '3'})[5m] BY (instance) > 1");
+        QueryRequest r2 = plan(api, "avg(jvm-metrics.cpu{appName = 'b', instance <> '3'})[5m] BY (instance) > 1");
+        QueryRequest r3 = plan(api, "avg(jvm-metrics.cpu{appName = 'c', instance <> '3'})[5m] BY (instance) > 1");
+
+        Assertions.assertEquals(List.of(Map.of("instance", "1", "cpu", 1)), rowsOf(api.groupByV3(r1)));
+        Assertions.assertEquals(List.of(Map.of("instance", "2", "cpu", 2)), rowsOf(api.groupByV3(r2)));
+        Assertions.assertEquals(List.of(), rowsOf(api.groupByV3(r3)));
+
+        Assertions.assertEquals(1, issued.size());
+        Assertions.assertEquals("(instance <> '3') AND (appName in ('a', 'b', 'c'))", issued.get(0).getFilterExpression());
+        Assertions.assertEquals(Set.of("instance", "appName"), issued.get(0).getGroupBy());
+    }
+
+    @Test
+    public void testNoGroupByWithEmptyResult() throws IOException {
+        CoalescedDataSourceApi api = new CoalescedDataSourceApi(createDelegate((request) -> {
+            String name = request.getFields().get(0).getName();
+            return request.getGroupBy().isEmpty() ? List.of(Map.of(name, 0)) : List.of(Map.of("appName", "a", name, 5));
+        }));
+
+        QueryRequest r1 = plan(api, "count(jvm-metrics.cnt{appName = 'a'})[5m] > 1");
+        QueryRequest r2 = plan(api, "count(jvm-metrics.cnt{appName = 'b'})[5m] > 1");
+        String name = r1.getFields().get(0).getName();
+
+        Assertions.assertEquals(List.of(Map.of(name, 5)), rowsOf(api.groupByV3(r1)));
+
+        // No row for 'b' in the coalesced result, the original query is issued to get the right result
+        Assertions.assertEquals(List.of(Map.of(name, 0)), rowsOf(api.groupByV3(r2)));
+        Assertions.assertEquals(2, issued.size());
+        Assertions.assertSame(r2, issued.get(1));
+    }
+
+    @Test
+    public void testDifferentIntervalsAreNotCoalesced() throws IOException {
+        CoalescedDataSourceApi api = new CoalescedDataSourceApi(createDelegate((request) -> List.of()));
+
+        QueryRequest r1 = plan(api, "avg(jvm-metrics.cpu{appName = 'a'})[5m] BY (appName) > 1");
+        QueryRequest r2 = plan(api, "avg(jvm-metrics.cpu{appName = 'b'})[1m] BY (appName) > 1");
+        api.groupByV3(r1);
+        api.groupByV3(r2);
+
+        Assertions.assertSame(r1, issued.get(0));
+        Assertions.assertSame(r2, issued.get(1));
+    }
+
+    @Test
+    public void testFallbackOnFailedCoalescedQuery() throws IOException {
+        CoalescedDataSourceApi api = new CoalescedDataSourceApi(createDelegate((request) -> {
+            if (request.getFilterExpression().contains(" in ")) {
+                throw new IllegalStateException("Too many values");
+            }
+            return List.of(Map.of("instance", "1", "cpu", 1));
+        }));
+
+        QueryRequest r1 = plan(api, "avg(jvm-metrics.cpu{appName = 'a'})[5m] BY (instance) > 1");
+        QueryRequest r2 = plan(api, "avg(jvm-metrics.cpu{appName = 'b'})[5m] BY (instance) > 1");
+
+        // Each rule issues its own query
+        Assertions.assertEquals(List.of(Map.of("instance", "1", "cpu", 1)), rowsOf(api.groupByV3(r1)));
+        Assertions.assertEquals(List.of(Map.of("instance", "1", "cpu", 1)), rowsOf(api.groupByV3(r2)));
+        Assertions.assertEquals(3, issued.size());
+        Assertions.assertSame(r1, issued.get(1));
+        Assertions.assertSame(r2, issued.get(2));
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.alerting.common.evaluator.state;
+
+import org.bithon.server.storage.alerting.IAlertStateStorage;
+import org.bithon.server.storage.alerting.pojo.AlertState;
+import org.bithon.server.storage.alerting.pojo.AlertStatus;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class AlertStateStoreTest {
+
+    static class InMemoryStateStorage implements IAlertStateStorage {
+        private final Map<String, AlertState> states = new HashMap<>();
+        private final List<Collection<String>> reads = new ArrayList<>();
+        private int writes;
+        private boolean failWrite;
+
+        @Override
+        public void initialize() {
+        }
+
+        @Override
+        public Map<String, AlertState> getAlertStates() {
+            reads.add(null);
+            return new HashMap<>(states);
+        }
+
+        @Override
+        public Map<String, AlertState> getAlertStates(Collection<String> alertIds) {
+            reads.add(alertIds);
+            Map<String, AlertState> result = new HashMap<>();
+            for (String id : alertIds) {
+                if (states.containsKey(id)) {
+                    result.put(id, states.get(id));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public void updateAlertStates(Map<String, AlertState> states) {
+            if (failWrite) {
+                throw new RuntimeException("failed");
+            }
+            writes++;
+            this.states.putAll(states);
+        }
+    }
+
+    private static AlertState state(AlertStatus status) {
+        AlertState state = new AlertState();
+        state.setStatus(status);
+        state.setPayload(new AlertState.Payload());
+        return state;
+    }
+
+    @Test
+    public void testStatesAreReadOnlyOnce() {
+        InMemoryStateStorage storage = new InMemoryStateStorage();
+        storage.states.put("r1", state(AlertStatus.ALERTING));
+
+        AlertStateStore store = new AlertStateStore(storage);
+        Assertions.assertEquals(AlertStatus.ALERTING, store.getStates(List.of("r1", "r2")).get("r1").getStatus());
+        Assertions.assertEquals(1, storage.reads.size());
+
+        // Served from memory
+        store.getStates(List.of("r1", "r2"));
+        Assertions.assertEquals(1, storage.reads.size());
+
+        // Only the new rule is read from storage
+        store.getStates(List.of("r1", "r2", "r3"));
+        Assertions.assertEquals(2, storage.reads.size());
+        Assertions.assertEquals(List.of("r3"), storage.reads.get(1));
+    }
+
+    @Test
+    public void testFlushInOneBatch() {
+        InMemoryStateStorage storage = new InMemoryStateStorage();
+        AlertStateStore store = new AlertStateStore(storage);
+        store.getStates(List.of("r1", "r2"));
+
+        store.update("r1", state(AlertStatus.PENDING));
+        store.update("r2", state(AlertStatus.READY));
+        Assertions.assertEquals(0, storage.writes);
+        Assertions.assertEquals(2, store.getDirtyCount());
+
+        Assertions.assertEquals(2, store.flush());
+        Assertions.assertEquals(1, storage.writes);
+        Assertions.assertEquals(0, store.getDirtyCount());
+        Assertions.assertEquals(AlertStatus.PENDING, storage.states.get("r1").getStatus());
+
+        // Nothing to write
+        Assertions.assertEquals(0, store.flush());
+        Assertions.assertEquals(1, storage.writes);
+
+        // The updated state is served from memory
+        Assertions.assertEquals(AlertStatus.PENDING, store.getStates(List.of("r1", "r2")).get("r1").getStatus());
+    }
+
+    @Test
+    public void testFailedWriteIsRetried() {
+        InMemoryStateStorage storage = new InMemoryStateStorage();
+        AlertStateStore store = new AlertStateStore(storage);
+
+        store.update("r1", state(AlertStatus.ALERTING));
+        storage.failWrite = true;
+        Assertions.assertEquals(0, store.flush());
+        Assertions.assertEquals(1, store.getDirtyCount());
+
+        storage.failWrite = false;
+        Assertions.assertEquals(1, store.flush());
+        Assertions.assertEquals(AlertStatus.ALERTING, storage.states.get("r1").getStatus());
+    }
+
+    @Test
+    public void testEvictedDirtyStateIsWritten() {
+        InMemoryStateStorage storage = new InMemoryStateStorage();
+        AlertStateStore store = new AlertStateStore(storage);
+        store.getStates(List.of("r1"));
+        store.update("r1", state(AlertStatus.ALERTING));
+
+        // r1 is removed or owned by another instance, its dirty state is written before it's given up
+        Assertions.assertTrue(store.getStates(List.of()).isEmpty());
+        Assertions.assertEquals(1, storage.writes);
+        Assertions.assertEquals(AlertStatus.ALERTING, storage.states.get("r1").getStatus());
+
+        Assertions.assertEquals(0, store.getDirtyCount());
+        Assertions.assertEquals(0, store.flush());
+    }
+
+    @Test
+    public void testEvictedStateDoesNotOverwriteNewOwner() {
+        InMemoryStateStorage storage = new InMemoryStateStorage();
+        AlertStateStore store = new AlertStateStore(storage);
+        store.getStates(List.of("r1"));
+        store.update("r1", state(AlertStatus.ALERTING));
+
+        // r1 moves to another instance while the storage is not writable
+        storage.failWrite = true;
+        Assertions.assertTrue(store.getStates(List.of()).isEmpty());
+        storage.failWrite = false;
+
+        // The new owner writes a newer state
+        storage.states.put("r1", state(AlertStatus.RESOLVED));
+
+        // The stale state is not written by later flushes
+        Assertions.assertEquals(0, store.flush());
+        Assertions.assertEquals(AlertStatus.RESOLVED, storage.states.get("r1").getStatus());
+
+        // r1 moves back, the state written by the other instance is loaded
+        Assertions.assertEquals(AlertStatus.RESOLVED, store.getStates(List.of("r1")).get("r1").getStatus());
+    }
+
+    @Test
+    public void testFlushWritesSnapshot() {
+        InMemoryStateStorage storage = new InMemoryStateStorage();
+        AlertStateStore store = new AlertStateStore(storage);
+
+        AlertState state = state(AlertStatus.ALERTING);
+        store.update("r1", state);
+        store.flush();
+
+        // The state in memory is changed in place after flush, the written one is not affected
+        state.setStatus(AlertStatus.RESOLVED);
+        Assertions.assertNotSame(state, storage.states.get("r1"));
+        Assertions.assertEquals(AlertStatus.ALERTING, storage.states.get("r1").getStatus());
+    }
+
+    @Test
+    public void testRecovery() {
+        InMemoryStateStorage storage = new InMemoryStateStorage();
+        AlertStateStore store = new AlertStateStore(storage);
+        store.update("r1", state(AlertStatus.ALERTING));
+        store.flush();
+        store.update("r1", state(AlertStatus.RESOLVED));
+
+        // Restarted without flush, the last flushed state is recovered
+        AlertStateStore restarted = new AlertStateStore(storage);
+        Assertions.assertEquals(AlertStatus.ALERTING, restarted.getStates(List.of("r1")).get("r1").getStatus());
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.alerting.evaluator.api;
+
+import org.bithon.server.alerting.evaluator.EvaluatorModuleEnabler;
+import org.bithon.server.alerting.evaluator.repository.AlertRepository;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Collection;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+@RestController
+@Conditional(EvaluatorModuleEnabler.class)
+public class AlertEvaluatorApiImpl implements IAlertEvaluatorApi {
+
+    private final AlertRepository repository;
+
+    public AlertEvaluatorApiImpl(AlertRepository repository) {
+        this.repository = repository;
+    }
+
+    @Override
+    public Collection<String> getOwnedRules() {
+        return repository.getOwnedAlerts().keySet();
+    }
+}
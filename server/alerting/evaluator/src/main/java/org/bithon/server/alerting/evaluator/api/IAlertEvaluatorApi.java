@@ -0,0 +1,38 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.alerting.evaluator.api;
+
+import org.bithon.server.discovery.declaration.DiscoverableService;
+import org.springframework.web.bind.annotation.GetMapping;
+
+import java.util.Collection;
+
+/**
+ * This interface is declared as {@link DiscoverableService}
+ * so that evaluator instances can find each other to split the alert rules among them
+ *
+ * @author frank.chen021@outlook.com
+ */
+@DiscoverableService(name = "alerting-evaluator-api")
+public interface IAlertEvaluatorApi {
+
+    /**
+     * @return ids of the rules evaluated by this instance
+     */
+    @GetMapping("/api/alerting/evaluator/rules/owned")
+    Collection<String> getOwnedRules();
+}
@@ -0,0 +1,120 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.alerting.evaluator.evaluator;
+
+import org.bithon.server.commons.management.MBeanRegistration;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class AlertEvaluationMetrics implements AlertEvaluationMetricsMXBean, AutoCloseable {
+
+    private final AtomicLong rounds = new AtomicLong();
+    private final AtomicLong evaluatedRules = new AtomicLong();
+    private final AtomicLong requestedQueries = new AtomicLong();
+    private final AtomicLong issuedQueries = new AtomicLong();
+    private final AtomicLong ruleEvaluationNanos = new AtomicLong();
+    private final LongAccumulator maxRuleEvaluationNanos = new LongAccumulator(Math::max, 0);
+
+    private volatile long lastRoundRequestedQueries;
+    private volatile long lastRoundIssuedQueries;
+    private volatile long lastRoundNanos;
+
+    private final MBeanRegistration registration;
+
+    public AlertEvaluationMetrics() {
+        this.registration = MBeanRegistration.register(this,
+                                                       "org.bithon.server:type=AlertEvaluation",
+                                                       "alert evaluation");
+    }
+
+    public void onRuleEvaluated(long nanos) {
+        evaluatedRules.incrementAndGet();
+        ruleEvaluationNanos.addAndGet(nanos);
+        maxRuleEvaluationNanos.accumulate(nanos);
+    }
+
+    public void onRoundCompleted(long nanos, long requestedQueries, long issuedQueries) {
+        this.rounds.incrementAndGet();
+        this.requestedQueries.addAndGet(requestedQueries);
+        this.issuedQueries.addAndGet(issuedQueries);
+        this.lastRoundRequestedQueries = requestedQueries;
+        this.lastRoundIssuedQueries = issuedQueries;
+        this.lastRoundNanos = nanos;
+    }
+
+    @Override
+    public long getRounds() {
+        return rounds.get();
+    }
+
+    @Override
+    public long getEvaluatedRules() {
+        return evaluatedRules.get();
+    }
+
+    @Override
+    public long getRequestedQueries() {
+        return requestedQueries.get();
+    }
+
+    @Override
+    public long getIssuedQueries() {
+        return issuedQueries.get();
+    }
+
+    @Override
+    public double getQueryReductionRatio() {
+        long requested = requestedQueries.get();
+        return requested == 0 ? 0 : 1 - (double) issuedQueries.get() / requested;
+    }
+
+    @Override
+    public long getLastRoundRequestedQueries() {
+        return lastRoundRequestedQueries;
+    }
+
+    @Override
+    public long getLastRoundIssuedQueries() {
+        return lastRoundIssuedQueries;
+    }
+
+    @Override
+    public long getLastRoundLatency() {
+        return TimeUnit.NANOSECONDS.toMillis(lastRoundNanos);
+    }
+
+    @Override
+    public long getAvgRuleEvaluationLatency() {
+        long rules = evaluatedRules.get();
+        return rules == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(ruleEvaluationNanos.get() / rules);
+    }
+
+    @Override
+    public long getMaxRuleEvaluationLatency() {
+        return TimeUnit.NANOSECONDS.toMillis(maxRuleEvaluationNanos.get());
+    }
+
+    @Override
+    public void close() {
+        registration.close();
+    }
+}
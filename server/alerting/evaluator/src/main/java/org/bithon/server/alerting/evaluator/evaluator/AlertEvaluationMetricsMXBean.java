@@ -0,0 +1,66 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.alerting.evaluator.evaluator;
+
+/**
+ * Metrics of alert evaluation rounds, exposed over JMX.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public interface AlertEvaluationMetricsMXBean {
+
+    long getRounds();
+
+    /**
+     * Number of rules that are due and evaluated
+     */
+    long getEvaluatedRules();
+
+    /**
+     * Number of group-by queries issued by rules
+     */
+    long getRequestedQueries();
+
+    /**
+     * Number of group-by queries that are actually sent to the data source after coalescing
+     */
+    long getIssuedQueries();
+
+    /**
+     * 1 - issued/requested
+     */
+    double getQueryReductionRatio();
+
+    long getLastRoundRequestedQueries();
+
+    long getLastRoundIssuedQueries();
+
+    /**
+     * In milliseconds, from the start of the planning to the completion of the last rule in the round
+     */
+    long getLastRoundLatency();
+
+    /**
+     * In milliseconds
+     */
+    long getAvgRuleEvaluationLatency();
+
+    /**
+     * In milliseconds
+     */
+    long getMaxRuleEvaluationLatency();
+}
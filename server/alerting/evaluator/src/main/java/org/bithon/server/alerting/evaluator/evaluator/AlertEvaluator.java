@@ -127,14 +127,43 @@ public class AlertEvaluator implements DisposableBean {
     }
 
     /**
+     * Evaluate a single rule and persist its state immediately
+     *
      * @param prevState can be null
      */
     public void evaluate(TimeSpan now, AlertRule alertRule, @Nullable AlertState prevState) {
-        this.evaluate(now, alertRule, prevState, false);
+        this.evaluate(now, alertRule, prevState, this.dataSourceApi);
+        this.repository.flushAlertStates();
+    }
+
+    /**
+     * Evaluate a rule as part of an evaluation round.
+     * The state is persisted by {@link AlertRepository#flushAlertStates()} when the round completes.
+     *
+     * @param dataSourceApi the API to query data, for example, a {@link org.bithon.server.alerting.common.evaluator.CoalescedDataSourceApi} shared by rules of one round
+     */
+    public void evaluate(TimeSpan now, AlertRule alertRule, @Nullable AlertState prevState, IDataSourceApi dataSourceApi) {
+        this.evaluate(now, alertRule, prevState, dataSourceApi, false);
     }
 
     @VisibleForTesting
     void evaluate(TimeSpan now, AlertRule alertRule, AlertState prevState, boolean skipPrecheck) {
+        this.evaluate(now, alertRule, prevState, this.dataSourceApi, skipPrecheck);
+        this.repository.flushAlertStates();
+    }
+
+    /**
+     * @return true if the rule is enabled and the evaluation interval has elapsed since its last evaluation
+     */
+    public static boolean isDue(TimeSpan now, AlertRule alertRule, long lastEvaluationTimestamp) {
+        return alertRule.isEnabled() && getPastSeconds(now, lastEvaluationTimestamp) >= alertRule.getEvery().getDuration().toSeconds();
+    }
+
+    private static long getPastSeconds(TimeSpan now, long lastEvaluationTimestamp) {
+        return now.diff(TimeSpan.fromMilliseconds(lastEvaluationTimestamp).floor(Duration.ofMinutes(1))) / 1000;
+    }
+
+    private void evaluate(TimeSpan now, AlertRule alertRule, AlertState prevState, IDataSourceApi dataSourceApi, boolean skipPrecheck) {
         EvaluationContext context = new EvaluationContext(now,
                                                           evaluationLogWriter,
                                                           alertRule,
@@ -152,7 +181,7 @@ public class AlertEvaluator implements DisposableBean {
                 TimeSpan lastEvaluationTimestamp = TimeSpan.fromMilliseconds(context.getStateManager()
                                                                                     .getLastEvaluationTimestamp())
                                                            .floor(Duration.ofMinutes(1));
-                long pastSeconds = now.diff(lastEvaluationTimestamp) / 1000;
+                long pastSeconds = getPastSeconds(now, context.getStateManager().getLastEvaluationTimestamp());
                 if (pastSeconds < interval.toSeconds()) {
                     context.log(AlertEvaluator.class,
                                 "Evaluation skipped. Last evaluated at %s, diff: %d milliseconds, the evaluation interval is %s seconds, it's expected to be evaluated at %s",
@@ -18,21 +18,31 @@ package org.bithon.server.alerting.evaluator.evaluator;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.extern.slf4j.Slf4j;
+import org.bithon.component.commons.utils.CollectionUtils;
+import org.bithon.server.alerting.common.evaluator.CoalescedDataSourceApi;
+import org.bithon.server.alerting.common.model.AlertExpression;
 import org.bithon.server.alerting.common.model.AlertRule;
 import org.bithon.server.alerting.evaluator.EvaluatorModuleEnabler;
 import org.bithon.server.alerting.evaluator.repository.AlertRepository;
 import org.bithon.server.commons.time.TimeSpan;
+import org.bithon.server.metric.expression.ast.MetricExpression;
 import org.bithon.server.storage.alerting.pojo.AlertState;
+import org.bithon.server.web.service.datasource.api.IDataSourceApi;
+import org.bithon.server.web.service.datasource.api.QueryRequest;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.context.annotation.Conditional;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.sql.Timestamp;
 import java.time.Duration;
+import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author frank.chen021@outlook.com
@@ -42,16 +52,21 @@ import java.util.concurrent.TimeUnit;
 @Service
 @EnableScheduling
 @Conditional(EvaluatorModuleEnabler.class)
-public class AlertEvaluatorScheduler {
+public class AlertEvaluatorScheduler implements DisposableBean {
 
     private final AlertEvaluator alertEvaluator;
     private final AlertRepository alertRepository;
+    private final IDataSourceApi dataSourceApi;
     private final ThreadPoolExecutor executor;
+    private final AlertEvaluationMetrics metrics;
 
     public AlertEvaluatorScheduler(AlertEvaluator alertEvaluator,
-                                   AlertRepository alertRepository) {
+                                   AlertRepository alertRepository,
+                                   IDataSourceApi dataSourceApi) {
         this.alertEvaluator = alertEvaluator;
         this.alertRepository = alertRepository;
+        this.dataSourceApi = dataSourceApi;
+        this.metrics = new AlertEvaluationMetrics();
         this.executor = new ThreadPoolExecutor(1,
                                                Runtime.getRuntime().availableProcessors(),
                                                5,
@@ -66,22 +81,105 @@ public class AlertEvaluatorScheduler {
         String name = Thread.currentThread().getName();
         Thread.currentThread().setName("eval-scheduler");
         try {
-            // TODO: distributed lock if this server is deployed as multiple instances
             log.info("Starting alert evaluation...");
 
             // Load changes first
             alertRepository.loadChanges();
 
-            // Load states of all alert rules
+            // If this server is deployed as multiple instances, each instance only evaluates the rules it owns
+            alertRepository.refreshOwnership();
+
+            // States of owned alert rules, which are kept in memory. Only states of newly owned rules are read from storage
             Map<String, AlertState> alertStates = alertRepository.getAlertStates();
 
             TimeSpan now = TimeSpan.now().floor(Duration.ofMinutes(1));
-            for (AlertRule alertRule : alertRepository.getLoadedAlerts().values()) {
+            long roundStart = System.nanoTime();
+
+            // Plan the queries of all due rules first so that queries on the same data source can be coalesced
+            CoalescedDataSourceApi coalescedApi = new CoalescedDataSourceApi(this.dataSourceApi);
+            Collection<AlertRule> alertRules = alertRepository.getOwnedAlerts().values();
+            for (AlertRule alertRule : alertRules) {
+                if (isDue(now, alertRule, alertStates.get(alertRule.getId()))) {
+                    plan(now, alertRule, coalescedApi);
+                }
+            }
+
+            if (alertRules.isEmpty()) {
+                // States of removed rules might be still not written
+                alertRepository.flushAlertStates();
+                return;
+            }
+
+            AtomicInteger pending = new AtomicInteger(alertRules.size());
+            for (AlertRule alertRule : alertRules) {
                 AlertState alertState = alertStates.get(alertRule.getId());
-                executor.execute(() -> alertEvaluator.evaluate(now, alertRule, alertState));
+                boolean isDue = isDue(now, alertRule, alertState);
+                executor.execute(() -> {
+                    long start = System.nanoTime();
+                    try {
+                        alertEvaluator.evaluate(now, alertRule, alertState, coalescedApi);
+                    } finally {
+                        if (isDue) {
+                            metrics.onRuleEvaluated(System.nanoTime() - start);
+                        }
+                        if (pending.decrementAndGet() == 0) {
+                            // Persist states of all rules evaluated in this round in one batch
+                            alertRepository.flushAlertStates();
+
+                            metrics.onRoundCompleted(System.nanoTime() - roundStart,
+                                                     coalescedApi.getRequestedQueries(),
+                                                     coalescedApi.getIssuedQueries());
+                        }
+                    }
+                });
             }
         } finally {
             Thread.currentThread().setName(name);
         }
     }
+
+    private boolean isDue(TimeSpan now, AlertRule alertRule, AlertState alertState) {
+        long lastEvaluationTimestamp = alertState == null || alertState.getLastEvaluatedAt() == null ? 0L : Timestamp.valueOf(alertState.getLastEvaluatedAt()).getTime();
+        return AlertEvaluator.isDue(now, alertRule, lastEvaluationTimestamp);
+    }
+
+    /**
+     * Register the queries that will be issued by the given rule in the same way as the ExpressionEvaluationStep does
+     */
+    private void plan(TimeSpan now, AlertRule alertRule, CoalescedDataSourceApi coalescedApi) {
+        for (AlertExpression expression : alertRule.getFlattenExpressions().values()) {
+            MetricExpression metricExpression = expression.getMetricExpression();
+            try {
+                for (QueryRequest request : expression.getMetricEvaluator()
+                                                      .getQueryRequests(metricExpression.getFrom(),
+                                                                        metricExpression.getMetric(),
+                                                                        now.before(metricExpression.getWindow()),
+                                                                        now,
+                                                                        metricExpression.getWhereText(),
+                                                                        CollectionUtils.emptyOrOriginal(metricExpression.getGroupBy()))) {
+                    coalescedApi.plan(request, metricExpression.getLabelSelectorExpression());
+                }
+            } catch (RuntimeException e) {
+                // The rule is evaluated with its own queries
+                log.warn("Failed to plan queries for rule [{}]: {}", alertRule.getName(), e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        this.executor.shutdown();
+        try {
+            if (!this.executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Alert evaluation does not complete in 30 seconds");
+            }
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Persist states that are not written yet
+        this.alertRepository.flushAlertStates();
+
+        this.metrics.close();
+    }
 }
@@ -16,11 +16,14 @@
 
 package org.bithon.server.alerting.evaluator.repository;
 
+import jakarta.annotation.Nullable;
 import lombok.extern.slf4j.Slf4j;
 import org.bithon.component.commons.expression.expt.InvalidExpressionException;
+import org.bithon.server.alerting.common.evaluator.state.AlertStateStore;
 import org.bithon.server.alerting.common.model.AlertRule;
 import org.bithon.server.alerting.common.utils.Validator;
 import org.bithon.server.alerting.evaluator.EvaluatorModuleEnabler;
+import org.bithon.server.alerting.evaluator.sharding.AlertRuleSharding;
 import org.bithon.server.commons.time.TimeSpan;
 import org.bithon.server.storage.alerting.IAlertObjectStorage;
 import org.bithon.server.storage.alerting.IAlertStateStorage;
@@ -33,6 +36,7 @@ import java.sql.Timestamp;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -47,27 +51,76 @@ import java.util.concurrent.ConcurrentHashMap;
 public class AlertRepository {
 
     private final IAlertObjectStorage alertObjectStorage;
-    private final IAlertStateStorage alertStateStorage;
+    private final AlertStateStore alertStateStore;
+
+    @Nullable
+    private final AlertRuleSharding sharding;
+
     private final Map<String, AlertRule> loadedAlerts = new ConcurrentHashMap<>();
     private final List<IAlertChangeListener> changeListeners = Collections.synchronizedList(new ArrayList<>());
     private Timestamp lastLoadedAt = new Timestamp(0);
 
+    /**
+     * @param sharding if null, all rules are owned by the current instance
+     */
     public AlertRepository(IAlertObjectStorage alertObjectStorage,
-                           IAlertStateStorage alertStateStorage) {
+                           IAlertStateStorage alertStateStorage,
+                           @Nullable AlertRuleSharding sharding) {
         this.alertObjectStorage = alertObjectStorage;
-        this.alertStateStorage = alertStateStorage;
+        this.alertStateStore = new AlertStateStore(alertStateStorage);
+        this.sharding = sharding;
     }
 
     public Map<String, AlertRule> getLoadedAlerts() {
         return this.loadedAlerts;
     }
 
+    /**
+     * @return the rules that are evaluated by the current instance
+     */
+    public Map<String, AlertRule> getOwnedAlerts() {
+        if (sharding == null || !sharding.isSharded()) {
+            return this.loadedAlerts;
+        }
+
+        Map<String, AlertRule> owned = new HashMap<>();
+        for (Map.Entry<String, AlertRule> entry : this.loadedAlerts.entrySet()) {
+            if (sharding.isOwned(entry.getKey())) {
+                owned.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return owned;
+    }
+
+    /**
+     * Refresh the membership of evaluator instances so that the ownership of rules follows instances joining or leaving
+     */
+    public void refreshOwnership() {
+        if (sharding != null) {
+            sharding.refresh();
+        }
+    }
+
+    /**
+     * @return states of rules owned by the current instance.
+     * The states are kept in memory, only states of newly owned rules are read from the storage
+     */
     public Map<String, AlertState> getAlertStates() {
-        return this.alertStateStorage.getAlertStates();
+        return this.alertStateStore.getStates(getOwnedAlerts().keySet());
     }
 
+    /**
+     * The state is persisted on next {@link #flushAlertStates()}
+     */
     public void setAlertState(String alertId, AlertState state) {
-        this.alertStateStorage.updateAlertStates(Map.of(alertId, state));
+        this.alertStateStore.update(alertId, state);
+    }
+
+    /**
+     * Persist all updated states in one batch
+     */
+    public int flushAlertStates() {
+        return this.alertStateStore.flush();
     }
 
     public void loadChanges() {
@@ -0,0 +1,117 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.alerting.evaluator.sharding;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bithon.server.alerting.evaluator.EvaluatorModuleEnabler;
+import org.bithon.server.alerting.evaluator.api.IAlertEvaluatorApi;
+import org.bithon.server.discovery.client.DiscoveredServiceInstance;
+import org.bithon.server.discovery.client.DiscoveredServiceInvoker;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/**
+ * Decides which alert rules are evaluated by the current evaluator instance.
+ * <p>
+ * The evaluator instances are found by the service discovery as providers of {@link IAlertEvaluatorApi}.
+ * Rule ids are assigned to instances by a {@link ConsistentHashRing}, so that when an instance joins or leaves,
+ * only rules owned by the affected instance move.
+ * <p>
+ * The current instance is identified by the address it registers to the discovery service,
+ * so that it matches the address of discovered instances.
+ * If there's only one instance, or the current instance can't be found among the discovered instances,
+ * the current instance owns all rules, which is the same as there's no sharding.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Slf4j
+@Service
+@Conditional(EvaluatorModuleEnabler.class)
+public class AlertRuleSharding {
+    private static final int VIRTUAL_NODES = 128;
+
+    private final DiscoveredServiceInvoker serviceInvoker;
+    private volatile String self;
+
+    private volatile TreeSet<String> members = new TreeSet<>();
+
+    /**
+     * null if the current instance owns all rules
+     */
+    private volatile ConsistentHashRing ring;
+
+    public AlertRuleSharding(DiscoveredServiceInvoker serviceInvoker) {
+        this.serviceInvoker = serviceInvoker;
+    }
+
+    /**
+     * Refresh the membership of evaluator instances.
+     * If the membership can't be retrieved, the previous one is kept
+     */
+    public void refresh() {
+        List<DiscoveredServiceInstance> instanceList;
+        String newSelf;
+        try {
+            instanceList = serviceInvoker.getInstanceList(IAlertEvaluatorApi.class);
+
+            // Resolved on each refresh since the registered port is only known after the web server starts
+            DiscoveredServiceInstance selfInstance = serviceInvoker.getSelf();
+            newSelf = selfInstance.getHost() + ":" + selfInstance.getPort();
+        } catch (RuntimeException e) {
+            log.warn("Failed to get evaluator instances, keep the current membership {}: {}", members, e.getMessage());
+            return;
+        }
+
+        TreeSet<String> newMembers = new TreeSet<>();
+        for (DiscoveredServiceInstance instance : instanceList) {
+            newMembers.add(instance.getHost() + ":" + instance.getPort());
+        }
+        if (Objects.equals(newMembers, this.members) && newSelf.equals(this.self)) {
+            return;
+        }
+        this.self = newSelf;
+
+        if (newMembers.size() <= 1) {
+            this.ring = null;
+        } else if (!newMembers.contains(self)) {
+            // Evaluate all rules rather than leaving some rules unevaluated
+            log.warn("Current instance [{}] is not found in evaluator instances {}, all rules are evaluated by this instance", self, newMembers);
+            this.ring = null;
+        } else {
+            this.ring = new ConsistentHashRing(newMembers, VIRTUAL_NODES);
+        }
+        log.info("Evaluator instances changed from {} to {}, current instance: {}", this.members, newMembers, self);
+        this.members = newMembers;
+    }
+
+    public boolean isSharded() {
+        return ring != null;
+    }
+
+    public boolean isOwned(String ruleId) {
+        ConsistentHashRing r = this.ring;
+        return r == null || self.equals(r.getNode(ruleId));
+    }
+
+    public String getSelf() {
+        return self;
+    }
+}
@@ -227,7 +227,7 @@ public class AlertEvaluatorTest {
 
         ServerProperties serverProperties = new ServerProperties();
         serverProperties.setPort(9897);
-        evaluator = new AlertEvaluator(new AlertRepository(alertObjectStorageStub, alertStateStorageStub),
+        evaluator = new AlertEvaluator(new AlertRepository(alertObjectStorageStub, alertStateStorageStub, null),
                                        logStorage,
                                        alertRecordStorageStub,
                                        dataSourceApiStub,
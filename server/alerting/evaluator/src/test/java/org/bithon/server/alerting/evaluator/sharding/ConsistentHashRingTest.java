@@ -0,0 +1,73 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.alerting.evaluator.sharding;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class ConsistentHashRingTest {
+
+    @Test
+    public void testEmptyRing() {
+        Assertions.assertNull(new ConsistentHashRing(List.of(), 16).getNode("rule"));
+    }
+
+    @Test
+    public void testSingleNodeOwnsAll() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a:9897"), 16);
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertEquals("a:9897", ring.getNode(UUID.randomUUID().toString()));
+        }
+    }
+
+    @Test
+    public void testDistribution() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a:9897", "b:9897", "c:9897"), 128);
+        Assertions.assertEquals(3, ring.size());
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            counts.merge(ring.getNode("rule-" + i), 1, Integer::sum);
+        }
+        Assertions.assertEquals(3, counts.size());
+        for (int count : counts.values()) {
+            Assertions.assertTrue(count > 600, "Unbalanced distribution: " + counts);
+        }
+    }
+
+    @Test
+    public void testOnlyKeysOfLeavingNodeMove() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of("a:9897", "b:9897", "c:9897"), 128);
+        ConsistentHashRing after = new ConsistentHashRing(List.of("a:9897", "b:9897"), 128);
+
+        for (int i = 0; i < 1000; i++) {
+            String key = "rule-" + i;
+            String owner = before.getNode(key);
+            if (!"c:9897".equals(owner)) {
+                Assertions.assertEquals(owner, after.getNode(key));
+            }
+        }
+    }
+}
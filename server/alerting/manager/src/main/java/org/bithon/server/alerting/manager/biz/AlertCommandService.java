@@ -61,6 +61,7 @@ import org.springframework.stereotype.Service;
 import java.sql.Timestamp;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -314,6 +315,11 @@ public class AlertCommandService {
                 return Map.of();
             }
 
+            @Override
+            public Map<String, AlertState> getAlertStates(Collection<String> alertIds) {
+                return Map.of();
+            }
+
             @Override
             public void updateAlertStates(Map<String, AlertState> states) {
 
@@ -394,7 +400,7 @@ public class AlertCommandService {
             }
 
         };
-        AlertEvaluator evaluator = new AlertEvaluator(new AlertRepository(alertObjectStorage, alertStateStorage),
+        AlertEvaluator evaluator = new AlertEvaluator(new AlertRepository(alertObjectStorage, alertStateStorage, null),
                                                       logStorage,
                                                       recordStorage4Test,
                                                       this.dataSourceApi,
@@ -25,8 +25,10 @@ import org.bithon.agent.rpc.brpc.BrpcMessageHeader;
 import org.bithon.agent.rpc.brpc.metrics.BrpcGenericMeasurement;
 import org.bithon.agent.rpc.brpc.metrics.BrpcGenericMetricMessage;
 import org.bithon.agent.rpc.brpc.metrics.BrpcGenericMetricMessageV2;
+import org.bithon.agent.rpc.brpc.metrics.BrpcHistogram;
 import org.bithon.agent.rpc.brpc.metrics.BrpcJvmMetricMessage;
 import org.bithon.agent.rpc.brpc.metrics.IMetricCollector;
+import org.bithon.component.commons.histogram.HistogramSnapshot;
 import org.bithon.component.commons.utils.Preconditions;
 import org.bithon.component.commons.utils.ReflectionUtils;
 import org.bithon.server.collector.http.MetricHttpCollector;
@@ -202,6 +204,15 @@ public class BrpcMetricCollector implements IMetricCollector, IMetricReceiver {
                 metricMessage.put(metricSpec, metric);
             }
 
+            i = 0;
+            for (BrpcHistogram histogram : measurement.getHistogramList()) {
+                String histogramSpec = message.getSchema().getHistogramsSpec(i++);
+                if (histogram.getCount() > 0) {
+                    // Histograms are stored in text form, see AggregateHistogramColumn
+                    metricMessage.put(histogramSpec, toHistogramSnapshot(histogram).toText());
+                }
+            }
+
             metricMessage.put("interval", message.getInterval());
             metricMessage.put("timestamp",
                               measurement.getTimestamp() == 0 ? message.getTimestamp() : measurement.getTimestamp());
@@ -215,6 +226,23 @@ public class BrpcMetricCollector implements IMetricCollector, IMetricReceiver {
                                                   .build());
     }
 
+    private static HistogramSnapshot toHistogramSnapshot(BrpcHistogram histogram) {
+        int size = histogram.getBucketIndexCount();
+        int[] indexes = new int[size];
+        long[] counts = new long[size];
+        for (int i = 0; i < size; i++) {
+            indexes[i] = histogram.getBucketIndex(i);
+            counts[i] = histogram.getBucketCount(i);
+        }
+        return new HistogramSnapshot(histogram.getCount(),
+                                     histogram.getSum(),
+                                     histogram.getMin(),
+                                     histogram.getMax(),
+                                     indexes,
+                                     counts,
+                                     size);
+    }
+
     private MetricMessage toMetricMessage(BrpcMessageHeader header, Object message) {
         MetricMessage metricMessage = new MetricMessage();
         ReflectionUtils.getFields(header, metricMessage);
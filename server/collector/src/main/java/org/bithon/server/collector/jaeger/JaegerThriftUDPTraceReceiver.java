@@ -28,6 +28,7 @@ import org.apache.thrift.TException;
 import org.apache.thrift.protocol.TCompactProtocol;
 import org.apache.thrift.transport.TMemoryInputTransport;
 import org.bithon.component.commons.concurrency.NamedThreadFactory;
+import org.bithon.component.commons.utils.HumanReadableNumber;
 import org.bithon.server.pipeline.tracing.ITraceProcessor;
 import org.bithon.server.pipeline.tracing.receiver.ITraceReceiver;
 import org.bithon.server.storage.tracing.TraceSpan;
@@ -35,16 +36,22 @@ import org.bithon.shaded.io.netty.bootstrap.Bootstrap;
 import org.bithon.shaded.io.netty.buffer.ByteBuf;
 import org.bithon.shaded.io.netty.channel.Channel;
 import org.bithon.shaded.io.netty.channel.ChannelHandlerContext;
-import org.bithon.shaded.io.netty.channel.ChannelInitializer;
 import org.bithon.shaded.io.netty.channel.ChannelOption;
 import org.bithon.shaded.io.netty.channel.EventLoopGroup;
 import org.bithon.shaded.io.netty.channel.SimpleChannelInboundHandler;
+import org.bithon.shaded.io.netty.channel.epoll.Epoll;
+import org.bithon.shaded.io.netty.channel.epoll.EpollChannelOption;
+import org.bithon.shaded.io.netty.channel.epoll.EpollDatagramChannel;
+import org.bithon.shaded.io.netty.channel.epoll.EpollEventLoopGroup;
 import org.bithon.shaded.io.netty.channel.nio.NioEventLoopGroup;
 import org.bithon.shaded.io.netty.channel.socket.DatagramPacket;
+import org.bithon.shaded.io.netty.channel.socket.nio.NioChannelOption;
 import org.bithon.shaded.io.netty.channel.socket.nio.NioDatagramChannel;
 import org.springframework.core.env.Environment;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -53,6 +60,11 @@ import java.util.concurrent.TimeUnit;
  * A UDP receiver for Jaeger Thrift protocol using Netty.
  * It listens for incoming UDP packets, deserializes them into Jaeger spans,
  * and processes them using the provided trace processor.
+ * <p>
+ * By default, one socket is bound and it's read by only one of the event loop threads.
+ * If {@code reuse-port} is enabled, each thread binds its own socket to the same port with {@code SO_REUSEPORT},
+ * and the kernel spreads datagrams across these sockets.
+ * The native epoll transport is used if it's available, otherwise the {@code SO_REUSEPORT} of the JDK is used.
  *
  * @author frank.chen021@outlook.com
  */
@@ -61,6 +73,7 @@ import java.util.concurrent.TimeUnit;
 public class JaegerThriftUDPTraceReceiver implements ITraceReceiver {
 
     private static final int DEFAULT_PORT = 6831;
+    private static final String DEFAULT_RECEIVE_BUFFER_SIZE = "64KiB";
 
     /**
      * Default thread count for UDP receiver.
@@ -87,26 +100,38 @@ public class JaegerThriftUDPTraceReceiver implements ITraceReceiver {
 
     private final int port;
     private final int threads;
+    private final boolean reusePort;
+    private final int receiveBufferSize;
     private ITraceProcessor processor;
     private EventLoopGroup group;
-    private Channel channel;
+    private final List<Channel> channels = new ArrayList<>();
+    private final List<JaegerUDPSocketMetrics> metrics = new ArrayList<>();
 
     @JsonCreator
     public JaegerThriftUDPTraceReceiver(@JacksonInject(useInput = OptBoolean.FALSE) Environment env) {
         this.port = env.getProperty("bithon.receivers.traces.jaeger-udp.port", int.class, DEFAULT_PORT);
         this.threads = env.getProperty("bithon.receivers.traces.jaeger-udp.threads", int.class, DEFAULT_THREADS);
+        this.reusePort = env.getProperty("bithon.receivers.traces.jaeger-udp.reuse-port", boolean.class, false);
+        this.receiveBufferSize = (int) HumanReadableNumber.parse(env.getProperty("bithon.receivers.traces.jaeger-udp.receive-buffer-size",
+                                                                                 DEFAULT_RECEIVE_BUFFER_SIZE));
     }
 
     @VisibleForTesting
     public JaegerThriftUDPTraceReceiver(int port) {
-        this.port = port;
-        this.threads = DEFAULT_THREADS;
+        this(port, DEFAULT_THREADS);
     }
 
     @VisibleForTesting
     public JaegerThriftUDPTraceReceiver(int port, int threads) {
+        this(port, threads, false);
+    }
+
+    @VisibleForTesting
+    public JaegerThriftUDPTraceReceiver(int port, int threads, boolean reusePort) {
         this.port = port;
         this.threads = Math.max(1, threads); // Ensure at least 1 thread
+        this.reusePort = reusePort;
+        this.receiveBufferSize = (int) HumanReadableNumber.parse(DEFAULT_RECEIVE_BUFFER_SIZE);
     }
 
     @Override
@@ -116,41 +141,90 @@ public class JaegerThriftUDPTraceReceiver implements ITraceReceiver {
 
     @Override
     public void start() {
-        log.info("Starting jaeger-trace-udp receiver at port {} with {} threads", this.port, this.threads);
         try {
-            group = new NioEventLoopGroup(threads, NamedThreadFactory.daemonThreadFactory("jaeger-udp-receiver"));
-
-            Bootstrap bootstrap = new Bootstrap();
-            bootstrap.group(group)
-                     .channel(NioDatagramChannel.class)
-                     .option(ChannelOption.SO_BROADCAST, true)
-                     .option(ChannelOption.SO_RCVBUF, 65536)
-                     .handler(new ChannelInitializer<NioDatagramChannel>() {
-                         @Override
-                         protected void initChannel(NioDatagramChannel ch) {
-                             ch.pipeline().addLast(new JaegerUDPHandler());
-                         }
-                     });
-
-            channel = bootstrap.bind(new InetSocketAddress(port)).sync().channel();
+            Bootstrap bootstrap = new Bootstrap().option(ChannelOption.SO_BROADCAST, true)
+                                                 .option(ChannelOption.SO_RCVBUF, receiveBufferSize);
+
+            // Only one event loop thread reads a socket,
+            // so multiple sockets bound to the same port are needed to make use of multiple threads
+            int sockets = 1;
+            String transport = "nio";
+            if (reusePort && Epoll.isAvailable()) {
+                group = new EpollEventLoopGroup(threads, NamedThreadFactory.daemonThreadFactory("jaeger-udp-receiver"));
+                bootstrap.group(group)
+                         .channel(EpollDatagramChannel.class)
+                         .option(EpollChannelOption.SO_REUSEPORT, true);
+                sockets = threads;
+                transport = "epoll";
+            } else {
+                group = new NioEventLoopGroup(threads, NamedThreadFactory.daemonThreadFactory("jaeger-udp-receiver"));
+                bootstrap.group(group)
+                         .channel(NioDatagramChannel.class);
+
+                if (reusePort) {
+                    if (isReusePortSupportedByJdk()) {
+                        // The native epoll transport is not available, use the SO_REUSEPORT of JDK, which is supported on Linux and macOS
+                        bootstrap.option(NioChannelOption.of(StandardSocketOptions.SO_REUSEPORT), true);
+                        sockets = threads;
+                    } else {
+                        log.warn("SO_REUSEPORT is not supported on this platform, jaeger-trace-udp receiver falls back to one socket");
+                    }
+                }
+            }
+
+            log.info("Starting jaeger-trace-udp receiver at port {} with {} threads, {} {} socket(s), receive buffer size {}",
+                     this.port,
+                     this.threads,
+                     sockets,
+                     transport,
+                     this.receiveBufferSize);
+
+            for (int i = 0; i < sockets; i++) {
+                JaegerUDPSocketMetrics socketMetrics = new JaegerUDPSocketMetrics(port, i);
+                metrics.add(socketMetrics);
+
+                // Each socket is registered to an event loop in round-robin, so that each thread reads one socket
+                channels.add(bootstrap.handler(new JaegerUDPHandler(socketMetrics))
+                                      .bind(new InetSocketAddress(port))
+                                      .sync()
+                                      .channel());
+            }
         } catch (Exception e) {
             log.error("Failed to start jaeger-trace-udp receiver", e);
             throw new RuntimeException(e);
         }
     }
 
+    private static boolean isReusePortSupportedByJdk() {
+        try (java.nio.channels.DatagramChannel channel = java.nio.channels.DatagramChannel.open()) {
+            return channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @VisibleForTesting
+    List<JaegerUDPSocketMetrics> getMetrics() {
+        return metrics;
+    }
+
     @Override
     public void stop() {
         log.info("Stopping jaeger-trace-udp receiver at port {}", this.port);
 
         try {
-            if (channel != null) {
+            for (Channel channel : channels) {
                 channel.close().sync();
             }
         } catch (InterruptedException e) {
             log.warn("Interrupted while closing channel", e);
             Thread.currentThread().interrupt();
         } finally {
+            channels.clear();
+
+            metrics.forEach(JaegerUDPSocketMetrics::close);
+            metrics.clear();
+
             if (group != null) {
                 try {
                     group.shutdownGracefully(0, 5, TimeUnit.SECONDS).sync();
@@ -163,24 +237,39 @@ public class JaegerThriftUDPTraceReceiver implements ITraceReceiver {
     }
 
     private class JaegerUDPHandler extends SimpleChannelInboundHandler<DatagramPacket> {
+        private final JaegerUDPSocketMetrics metrics;
+
+        /**
+         * Buffer to copy packets from direct buffers. A handler is only called by the event loop of its socket.
+         * Binary fields are wrapped from the buffer during decoding, but they're converted before the next packet arrives
+         */
+        private byte[] buffer = new byte[0];
+
+        private JaegerUDPHandler(JaegerUDPSocketMetrics metrics) {
+            this.metrics = metrics;
+        }
+
         @Override
         protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) {
-            try {
-                ByteBuf content = packet.content();
+            ByteBuf content = packet.content();
+            int length = content.readableBytes();
+            metrics.onReceived(length);
 
+            try {
                 if (content.hasArray()) {
                     byte[] data = content.array();
                     int offset = content.arrayOffset() + content.readerIndex();
-                    int length = content.readableBytes();
                     processPacket(data, offset, length);
                 } else {
-                    // If no backing array, we need to copy (but this is rare for UDP packets)
-                    int length = content.readableBytes();
-                    byte[] data = new byte[length];
-                    content.getBytes(content.readerIndex(), data, 0, length);
-                    processPacket(data, 0, length);
+                    // Direct buffers are used by the epoll transport
+                    if (buffer.length < length) {
+                        buffer = new byte[Math.max(length, 65536)];
+                    }
+                    content.getBytes(content.readerIndex(), buffer, 0, length);
+                    processPacket(buffer, 0, length);
                 }
             } catch (Exception e) {
+                metrics.onDecodeFailure();
                 log.error("Error processing received packet", e);
             }
         }
@@ -192,6 +281,7 @@ public class JaegerThriftUDPTraceReceiver implements ITraceReceiver {
 
         private void processPacket(byte[] data, int offset, int length) {
             if (processor == null) {
+                metrics.onDecodeFailure();
                 return;
             }
 
@@ -206,9 +296,11 @@ public class JaegerThriftUDPTraceReceiver implements ITraceReceiver {
                     span.appName = batch.getProcess().getServiceName();
                     spans.add(span);
                 }
-
                 processor.process("trace", spans);
+
+                metrics.onDecoded(spans.size());
             } catch (TException e) {
+                metrics.onDecodeFailure();
                 log.error("Failed to deserialize Jaeger batch", e);
             }
         }
@@ -0,0 +1,85 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.collector.jaeger;
+
+import org.bithon.server.commons.management.MBeanRegistration;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class JaegerUDPSocketMetrics implements JaegerUDPSocketMetricsMXBean, AutoCloseable {
+
+    private final AtomicLong receivedPackets = new AtomicLong();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final AtomicLong decodedPackets = new AtomicLong();
+    private final AtomicLong decodedSpans = new AtomicLong();
+    private final AtomicLong decodeFailures = new AtomicLong();
+
+    private final MBeanRegistration registration;
+
+    public JaegerUDPSocketMetrics(int port, int socket) {
+        this.registration = MBeanRegistration.register(this,
+                                                       "org.bithon.server:type=JaegerUDPReceiver,port=" + port + ",socket=" + socket,
+                                                       "jaeger-trace-udp socket " + socket);
+    }
+
+    void onReceived(int bytes) {
+        receivedPackets.incrementAndGet();
+        receivedBytes.addAndGet(bytes);
+    }
+
+    void onDecoded(int spans) {
+        decodedPackets.incrementAndGet();
+        decodedSpans.addAndGet(spans);
+    }
+
+    void onDecodeFailure() {
+        decodeFailures.incrementAndGet();
+    }
+
+    @Override
+    public long getReceivedPackets() {
+        return receivedPackets.get();
+    }
+
+    @Override
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    @Override
+    public long getDecodedPackets() {
+        return decodedPackets.get();
+    }
+
+    @Override
+    public long getDecodedSpans() {
+        return decodedSpans.get();
+    }
+
+    @Override
+    public long getDecodeFailures() {
+        return decodeFailures.get();
+    }
+
+    @Override
+    public void close() {
+        registration.close();
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.collector.jaeger;
+
+/**
+ * Metrics of one socket of {@link JaegerThriftUDPTraceReceiver}, exposed over JMX.
+ * Counters are accumulated since the socket is bound.
+ * <p>
+ * Only packets that reach the receiver are counted. Datagrams dropped by the kernel because the receive buffer is full
+ * are not visible here, check the {@code drops} column of {@code /proc/net/udp} or {@code netstat -su} on Linux for them.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public interface JaegerUDPSocketMetricsMXBean {
+
+    long getReceivedPackets();
+
+    long getReceivedBytes();
+
+    /**
+     * Number of packets that are successfully decoded and handed over to the processor
+     */
+    long getDecodedPackets();
+
+    long getDecodedSpans();
+
+    /**
+     * Number of received packets that are discarded because they can't be decoded or processed
+     */
+    long getDecodeFailures();
+}
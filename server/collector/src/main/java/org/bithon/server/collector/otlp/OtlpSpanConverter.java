@@ -30,7 +30,6 @@ import org.bithon.component.commons.tracing.SpanKind;
 import org.bithon.component.commons.tracing.Tags;
 import org.bithon.component.commons.utils.CollectionUtils;
 import org.bithon.component.commons.utils.StringUtils;
-import org.bithon.server.storage.common.ApplicationType;
 import org.bithon.server.storage.tracing.TraceSpan;
 
 import java.io.IOException;
@@ -110,16 +109,7 @@ public class OtlpSpanConverter {
     }
 
     protected String toAppType(String language) {
-        if (language == null) {
-            return null;
-        }
-        if (ApplicationType.CPP.equalsIgnoreCase(language)) {
-            return ApplicationType.CPP;
-        }
-        if (ApplicationType.JAVA.equalsIgnoreCase(language)) {
-            return ApplicationType.JAVA;
-        }
-        return language;
+        return OtlpSpanDecoder.toAppType(language);
     }
 
     protected String getTraceId(ByteString id) {
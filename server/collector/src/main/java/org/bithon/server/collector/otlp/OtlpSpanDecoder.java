@@ -0,0 +1,476 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.collector.otlp;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+import org.bithon.component.commons.tracing.SpanKind;
+import org.bithon.component.commons.tracing.Tags;
+import org.bithon.component.commons.utils.StringUtils;
+import org.bithon.server.pipeline.tracing.ITraceProcessor;
+import org.bithon.server.storage.common.ApplicationType;
+import org.bithon.server.storage.tracing.TraceSpan;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Decodes OTLP protobuf encoded TracesData/ExportTraceServiceRequest directly into {@link TraceSpan}
+ * without materializing the generated protobuf object graph.
+ * <p>
+ * Spans are handed over to the {@link ITraceProcessor} in batches of at most {@link #batchSize} spans while the input is being decoded.
+ * Resource and scope level attributes that are needed by the spans are decoded once and shared by all spans under them.
+ * <p>
+ * Field numbers follow opentelemetry/proto/trace/v1/trace.proto and opentelemetry/proto/common/v1/common.proto.
+ * The conversion rules are the same as {@link OtlpSpanConverter}.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class OtlpSpanDecoder {
+
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    /**
+     * TracesData.resource_spans and ExportTraceServiceRequest.resource_spans
+     */
+    private static final int TRACES_DATA_RESOURCE_SPANS = 1;
+
+    private static final int RESOURCE_SPANS_RESOURCE = 1;
+    private static final int RESOURCE_SPANS_SCOPE_SPANS = 2;
+    private static final int RESOURCE_ATTRIBUTES = 1;
+
+    private static final int SCOPE_SPANS_SCOPE = 1;
+    private static final int SCOPE_SPANS_SPANS = 2;
+    private static final int SCOPE_NAME = 1;
+
+    private static final int SPAN_TRACE_ID = 1;
+    private static final int SPAN_SPAN_ID = 2;
+    private static final int SPAN_PARENT_SPAN_ID = 4;
+    private static final int SPAN_NAME = 5;
+    private static final int SPAN_KIND = 6;
+    private static final int SPAN_START_TIME = 7;
+    private static final int SPAN_END_TIME = 8;
+    private static final int SPAN_ATTRIBUTES = 9;
+    private static final int SPAN_STATUS = 15;
+
+    private static final int STATUS_MESSAGE = 2;
+    private static final int STATUS_CODE = 3;
+    private static final int STATUS_CODE_OK = 1;
+    private static final int STATUS_CODE_ERROR = 2;
+
+    private static final int KEY_VALUE_KEY = 1;
+    private static final int KEY_VALUE_VALUE = 2;
+    private static final int ANY_VALUE_STRING_VALUE = 1;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final ITraceProcessor processor;
+    private final int batchSize;
+    private List<TraceSpan> batch;
+    private int spanCount;
+
+    /**
+     * Attributes of the current ResourceSpans
+     */
+    private boolean resourceDecoded;
+    private String appType;
+    private String serviceName;
+    private String instanceName;
+
+    /**
+     * Name of the current ScopeSpans
+     */
+    private boolean scopeDecoded;
+    private String scopeName;
+
+    /**
+     * The last decoded KeyValue
+     */
+    private String attributeKey;
+    private String attributeValue;
+
+    /**
+     * Spans that are decoded before their resource or scope.
+     * Protobuf does not guarantee field order, though in practice the resource and scope are always serialized before the spans.
+     * Before being resolved, the appName of a span holds the scope name.
+     */
+    private final List<TraceSpan> unresolvedSpans = new ArrayList<>();
+
+    /**
+     * @return the number of decoded spans
+     */
+    public static int decode(InputStream is, ITraceProcessor processor) throws IOException {
+        return new OtlpSpanDecoder(processor, DEFAULT_BATCH_SIZE).decode(CodedInputStream.newInstance(is));
+    }
+
+    /**
+     * @return the number of decoded spans
+     */
+    public static int decode(byte[] message, ITraceProcessor processor) throws IOException {
+        return new OtlpSpanDecoder(processor, DEFAULT_BATCH_SIZE).decode(CodedInputStream.newInstance(message));
+    }
+
+    public OtlpSpanDecoder(ITraceProcessor processor, int batchSize) {
+        this.processor = processor;
+        this.batchSize = batchSize;
+        this.batch = new ArrayList<>(Math.min(batchSize, 64));
+    }
+
+    public int decode(CodedInputStream in) throws IOException {
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            if (WireFormat.getTagFieldNumber(tag) == TRACES_DATA_RESOURCE_SPANS) {
+                int limit = pushMessage(in);
+                decodeResourceSpans(in);
+                in.popLimit(limit);
+            } else {
+                in.skipField(tag);
+            }
+        }
+        flush();
+        return spanCount;
+    }
+
+    private void decodeResourceSpans(CodedInputStream in) throws IOException {
+        resourceDecoded = false;
+        appType = null;
+        serviceName = null;
+        instanceName = "";
+
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case RESOURCE_SPANS_RESOURCE: {
+                    int limit = pushMessage(in);
+                    decodeResource(in);
+                    in.popLimit(limit);
+                    break;
+                }
+                case RESOURCE_SPANS_SCOPE_SPANS: {
+                    int limit = pushMessage(in);
+                    decodeScopeSpans(in);
+                    in.popLimit(limit);
+                    break;
+                }
+                default:
+                    in.skipField(tag);
+                    break;
+            }
+        }
+
+        // The resource is absent or follows the spans
+        resourceDecoded = true;
+        resolveSpans();
+    }
+
+    private void decodeResource(CodedInputStream in) throws IOException {
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            if (WireFormat.getTagFieldNumber(tag) == RESOURCE_ATTRIBUTES) {
+                decodeAttribute(in);
+                switch (attributeKey) {
+                    case OtlpAttributes.SERVICE_NAME:
+                        serviceName = attributeValue;
+                        break;
+                    case OtlpAttributes.SERVICE_INSTANCE_ID:
+                        instanceName = attributeValue;
+                        break;
+                    case OtlpAttributes.TELEMETRY_SDK_LANGUAGE:
+                        appType = toAppType(attributeValue);
+                        break;
+                    default:
+                        break;
+                }
+            } else {
+                in.skipField(tag);
+            }
+        }
+        resourceDecoded = true;
+    }
+
+    private void decodeScopeSpans(CodedInputStream in) throws IOException {
+        scopeDecoded = false;
+        scopeName = "";
+
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case SCOPE_SPANS_SCOPE: {
+                    int limit = pushMessage(in);
+                    int scopeTag;
+                    while ((scopeTag = in.readTag()) != 0) {
+                        if (WireFormat.getTagFieldNumber(scopeTag) == SCOPE_NAME) {
+                            scopeName = in.readStringRequireUtf8();
+                        } else {
+                            in.skipField(scopeTag);
+                        }
+                    }
+                    in.popLimit(limit);
+                    scopeDecoded = true;
+                    break;
+                }
+                case SCOPE_SPANS_SPANS: {
+                    int limit = pushMessage(in);
+                    TraceSpan span = decodeSpan(in);
+                    in.popLimit(limit);
+
+                    if (resourceDecoded && scopeDecoded) {
+                        span.appType = appType;
+                        span.appName = serviceName == null ? scopeName : serviceName;
+                        span.instanceName = instanceName;
+                        add(span);
+                    } else {
+                        unresolvedSpans.add(span);
+                    }
+                    break;
+                }
+                default:
+                    in.skipField(tag);
+                    break;
+            }
+        }
+
+        // Spans that precede the scope take the scope name now, the resource might still be unknown
+        for (TraceSpan span : unresolvedSpans) {
+            if (span.appName == null) {
+                span.appName = scopeName;
+            }
+        }
+        if (resourceDecoded) {
+            resolveSpans();
+        }
+    }
+
+    private TraceSpan decodeSpan(CodedInputStream in) throws IOException {
+        TraceSpan span = new TraceSpan();
+        span.traceId = "";
+        span.spanId = "";
+        span.parentSpanId = "";
+        span.kind = SpanKind.UNSPECIFIED.toString();
+        span.name = "";
+        span.method = "";
+        span.tags = new TreeMap<>();
+
+        String statusMessage = null;
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case SPAN_TRACE_ID:
+                    span.traceId = readHex(in);
+                    break;
+                case SPAN_SPAN_ID:
+                    span.spanId = readHex(in);
+                    break;
+                case SPAN_PARENT_SPAN_ID:
+                    span.parentSpanId = readHex(in);
+                    break;
+                case SPAN_NAME:
+                    span.name = in.readStringRequireUtf8();
+                    break;
+                case SPAN_KIND:
+                    span.kind = toSpanKind(in.readEnum()).toString();
+                    break;
+                case SPAN_START_TIME:
+                    span.startTime = in.readFixed64() / 1000;
+                    break;
+                case SPAN_END_TIME:
+                    span.endTime = in.readFixed64() / 1000;
+                    break;
+                case SPAN_ATTRIBUTES:
+                    decodeAttribute(in);
+                    span.tags.put(attributeKey, attributeValue);
+                    break;
+                case SPAN_STATUS: {
+                    int limit = pushMessage(in);
+                    int statusTag;
+                    while ((statusTag = in.readTag()) != 0) {
+                        switch (WireFormat.getTagFieldNumber(statusTag)) {
+                            case STATUS_MESSAGE:
+                                statusMessage = in.readStringRequireUtf8();
+                                break;
+                            case STATUS_CODE:
+                                span.status = toStatus(in.readEnum());
+                                break;
+                            default:
+                                in.skipField(statusTag);
+                                break;
+                        }
+                    }
+                    in.popLimit(limit);
+                    break;
+                }
+                default:
+                    in.skipField(tag);
+                    break;
+            }
+        }
+
+        span.costTime = span.endTime - span.startTime;
+        if (StringUtils.hasText(statusMessage)) {
+            span.tags.put(Tags.Exception.MESSAGE, statusMessage);
+        }
+        return span;
+    }
+
+    private void resolveSpans() {
+        if (unresolvedSpans.isEmpty()) {
+            return;
+        }
+        for (TraceSpan span : unresolvedSpans) {
+            span.appType = appType;
+            if (serviceName != null) {
+                span.appName = serviceName;
+            }
+            span.instanceName = instanceName;
+            add(span);
+        }
+        unresolvedSpans.clear();
+    }
+
+    private void add(TraceSpan span) {
+        batch.add(span);
+        spanCount++;
+        if (batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        // The processor might hold the list, so a new list is allocated for the next batch
+        List<TraceSpan> spans = batch;
+        batch = new ArrayList<>(Math.min(batchSize, 64));
+        processor.process("trace", spans);
+    }
+
+    private void decodeAttribute(CodedInputStream in) throws IOException {
+        int limit = pushMessage(in);
+        attributeKey = "";
+        attributeValue = "";
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case KEY_VALUE_KEY:
+                    attributeKey = in.readStringRequireUtf8();
+                    break;
+                case KEY_VALUE_VALUE:
+                    attributeValue = readStringValue(in);
+                    break;
+                default:
+                    in.skipField(tag);
+                    break;
+            }
+        }
+        in.popLimit(limit);
+    }
+
+    /**
+     * Only string values are supported, which is the same as {@link OtlpSpanConverter}
+     */
+    private static String readStringValue(CodedInputStream in) throws IOException {
+        int limit = pushMessage(in);
+        String value = "";
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            if (WireFormat.getTagFieldNumber(tag) == ANY_VALUE_STRING_VALUE) {
+                value = in.readStringRequireUtf8();
+            } else {
+                in.skipField(tag);
+            }
+        }
+        in.popLimit(limit);
+        return value;
+    }
+
+    /**
+     * Encode the bytes field in hex directly from the input without an intermediate byte array or ByteString
+     */
+    private static String readHex(CodedInputStream in) throws IOException {
+        int length = in.readRawVarint32();
+        if (length == 0) {
+            return "";
+        }
+        if (length < 0 || length > in.getBytesUntilLimit()) {
+            throw new InvalidProtocolBufferException("Invalid length of bytes field: " + length);
+        }
+
+        char[] chars = new char[length * 2];
+        for (int i = 0; i < chars.length; i += 2) {
+            byte b = in.readRawByte();
+            chars[i] = HEX[(b >> 4) & 0x0F];
+            chars[i + 1] = HEX[b & 0x0F];
+        }
+        return new String(chars);
+    }
+
+    private static int pushMessage(CodedInputStream in) throws IOException {
+        return in.pushLimit(in.readRawVarint32());
+    }
+
+    static String toAppType(String language) {
+        if (language == null) {
+            return null;
+        }
+        if (ApplicationType.CPP.equalsIgnoreCase(language)) {
+            return ApplicationType.CPP;
+        }
+        if (ApplicationType.JAVA.equalsIgnoreCase(language)) {
+            return ApplicationType.JAVA;
+        }
+        return language;
+    }
+
+    private static String toStatus(int code) {
+        if (code == STATUS_CODE_OK) {
+            return "200";
+        }
+        if (code == STATUS_CODE_ERROR) {
+            return "500";
+        }
+        return "";
+    }
+
+    /**
+     * See Span.SpanKind in trace.proto
+     */
+    private static SpanKind toSpanKind(int kind) {
+        switch (kind) {
+            case 0:
+                return SpanKind.UNSPECIFIED;
+            case 1:
+                return SpanKind.INTERNAL;
+            case 2:
+                return SpanKind.SERVER;
+            case 3:
+                return SpanKind.CLIENT;
+            case 4:
+                return SpanKind.PRODUCER;
+            case 5:
+                return SpanKind.CONSUMER;
+            default:
+                throw new UnsupportedOperationException("Not supported kind " + kind);
+        }
+    }
+}
@@ -20,23 +20,32 @@ import com.fasterxml.jackson.annotation.JacksonInject;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonTypeName;
 import com.fasterxml.jackson.annotation.OptBoolean;
+import io.grpc.MethodDescriptor;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ServerCalls;
 import io.grpc.stub.StreamObserver;
-import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
 import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceResponse;
 import io.opentelemetry.proto.collector.trace.v1.TraceServiceGrpc;
 import lombok.extern.slf4j.Slf4j;
-import org.bithon.server.collector.otlp.OtlpSpanConverter;
+import org.bithon.server.collector.otlp.OtlpSpanDecoder;
 import org.bithon.server.pipeline.tracing.ITraceProcessor;
 import org.bithon.server.pipeline.tracing.receiver.ITraceReceiver;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.core.env.Environment;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * See <a href="https://opentelemetry.io/docs/specs/otlp/#otlpgrpc">OTLP-GRPC</a>
+ * <p>
+ * The Export method is bound with a marshaller that keeps the raw request bytes,
+ * so that spans are decoded by {@link OtlpSpanDecoder} directly instead of being parsed into ExportTraceServiceRequest first.
  *
  * @author Frank Chen
  * @date 30/1/24 8:35 pm
@@ -44,7 +53,7 @@ import java.io.IOException;
 @Slf4j
 @JsonTypeName("otlp-trace-grpc")
 @ConditionalOnProperty(value = "bithon.receivers.traces.otlp-grpc.enabled", havingValue = "true")
-public class OtlpGrpcTraceReceiver extends TraceServiceGrpc.TraceServiceImplBase implements ITraceReceiver {
+public class OtlpGrpcTraceReceiver implements ITraceReceiver {
 
     private Server server;
     private final int port;
@@ -65,7 +74,7 @@ public class OtlpGrpcTraceReceiver extends TraceServiceGrpc.TraceServiceImplBase
     public void start() {
         log.info("Starting GRPC trace receiver at port {}", this.port);
         server = ServerBuilder.forPort(this.port)
-                              .addService(this)
+                              .addService(createServiceDefinition())
                               .build();
         try {
             server.start();
@@ -84,11 +93,24 @@ public class OtlpGrpcTraceReceiver extends TraceServiceGrpc.TraceServiceImplBase
         }
     }
 
-    @Override
-    public void export(ExportTraceServiceRequest request, StreamObserver<ExportTraceServiceResponse> responseObserver) {
+    private ServerServiceDefinition createServiceDefinition() {
+        MethodDescriptor.Marshaller<ExportTraceServiceResponse> responseMarshaller = ProtoUtils.marshaller(ExportTraceServiceResponse.getDefaultInstance());
+        MethodDescriptor<byte[], ExportTraceServiceResponse> exportMethod = TraceServiceGrpc.getExportMethod()
+                                                                                            .toBuilder(new RawMessageMarshaller(), responseMarshaller)
+                                                                                            .build();
+        return ServerServiceDefinition.builder(TraceServiceGrpc.SERVICE_NAME)
+                                      .addMethod(exportMethod, ServerCalls.asyncUnaryCall(this::export))
+                                      .build();
+    }
+
+    private void export(byte[] request, StreamObserver<ExportTraceServiceResponse> responseObserver) {
         if (traceProcessor != null) {
-            traceProcessor.process("trace",
-                                   new OtlpSpanConverter(request.getResourceSpansList()).toSpanList());
+            try {
+                OtlpSpanDecoder.decode(request, traceProcessor);
+            } catch (IOException e) {
+                responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+                return;
+            }
         }
 
         // Returns empty as success as stated in the doc: https://opentelemetry.io/docs/specs/otlp/#otlpgrpc-response
@@ -96,4 +118,20 @@ public class OtlpGrpcTraceReceiver extends TraceServiceGrpc.TraceServiceImplBase
         responseObserver.onNext(response);
         responseObserver.onCompleted();
     }
+
+    static class RawMessageMarshaller implements MethodDescriptor.Marshaller<byte[]> {
+        @Override
+        public InputStream stream(byte[] value) {
+            return new ByteArrayInputStream(value);
+        }
+
+        @Override
+        public byte[] parse(InputStream stream) {
+            try {
+                return stream.readAllBytes();
+            } catch (IOException e) {
+                throw Status.INTERNAL.withDescription("Failed to read request").withCause(e).asRuntimeException();
+            }
+        }
+    }
 }
@@ -22,6 +22,7 @@ import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.bithon.component.commons.utils.StringUtils;
 import org.bithon.server.collector.otlp.OtlpSpanConverter;
+import org.bithon.server.collector.otlp.OtlpSpanDecoder;
 import org.bithon.server.commons.spring.ThreadNameScope;
 import org.bithon.server.pipeline.tracing.ITraceProcessor;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -71,19 +72,16 @@ public class OtlpHttpTraceReceiver {
             is = request.getInputStream();
         }
 
-        OtlpSpanConverter spanConverter;
         if ("application/x-protobuf".equals(request.getContentType())) {
-            spanConverter = OtlpSpanConverter.fromBinary(is);
+            // Spans are decoded from the stream and sent to the processor in batches
+            OtlpSpanDecoder.decode(is, this.processor);
         } else if ("application/json".equals(request.getContentType())) {
-            spanConverter = OtlpSpanConverter.fromJson(is);
+            this.processor.process("trace",
+                                   OtlpSpanConverter.fromJson(is).toSpanList());
         } else {
             String message = StringUtils.format("Not supported Content-Type [%s] from remote [%s]", request.getContentType(), request.getRemoteAddr());
             response.getWriter().println(message);
             response.setStatus(HttpStatus.BAD_REQUEST.value());
-            return;
         }
-
-        this.processor.process("trace",
-                               spanConverter.toSpanList());
     }
 }
@@ -33,6 +33,7 @@ import org.junit.jupiter.api.Timeout;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
@@ -344,8 +345,59 @@ public class JaegerThriftUDPTraceReceiverTest {
         }
     }
 
+    @Test
+    @Timeout(20)
+    public void testReusePort() throws Exception {
+        JaegerThriftUDPTraceReceiver reusePortReceiver = new JaegerThriftUDPTraceReceiver(TEST_PORT + 20, 4, true);
+        TestTraceProcessor processor = new TestTraceProcessor();
+        reusePortReceiver.registerProcessor(processor);
+
+        try {
+            reusePortReceiver.start();
+
+            // Packets from different source ports are hashed to different sockets by the kernel
+            for (int i = 0; i < 20; i++) {
+                sendUDPPacket(serializer.serialize(createTestBatch(2)), TEST_PORT + 20);
+            }
+            sendUDPPacket("invalid thrift data".getBytes(StandardCharsets.UTF_8), TEST_PORT + 20);
+
+            assertTrue(processor.waitForSpans(40, 10000), "Should receive 40 spans within 10 seconds");
+
+            long received = 0;
+            long decoded = 0;
+            long decodedSpans = 0;
+            long decodeFailures = 0;
+            // Wait for the invalid packet which might be processed by another socket
+            long deadline = System.currentTimeMillis() + 5000;
+            do {
+                received = 0;
+                decoded = 0;
+                decodedSpans = 0;
+                decodeFailures = 0;
+                for (JaegerUDPSocketMetrics metrics : reusePortReceiver.getMetrics()) {
+                    received += metrics.getReceivedPackets();
+                    decoded += metrics.getDecodedPackets();
+                    decodedSpans += metrics.getDecodedSpans();
+                    decodeFailures += metrics.getDecodeFailures();
+                }
+            } while (decodeFailures == 0 && System.currentTimeMillis() < deadline && sleep(10));
+
+            assertEquals(21, received);
+            assertEquals(20, decoded);
+            assertEquals(40, decodedSpans);
+            assertEquals(1, decodeFailures);
+        } finally {
+            reusePortReceiver.stop();
+        }
+    }
+
     // Helper methods
 
+    private static boolean sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+        return true;
+    }
+
     private Batch createTestBatch(int spanCount) {
         Batch batch = new Batch();
         batch.setProcess(createTestProcess());
@@ -443,9 +495,13 @@ public class JaegerThriftUDPTraceReceiverTest {
         }
 
         public boolean waitForSpans(int expectedCount, long timeoutMs) throws InterruptedException {
-            CountDownLatch latch = new CountDownLatch(expectedCount);
-            latchRef.set(latch);
-            
+            CountDownLatch latch;
+            synchronized (receivedSpans) {
+                // Spans might have been processed before this call, only wait for the rest
+                latch = new CountDownLatch(Math.max(0, expectedCount - receivedSpans.size()));
+                latchRef.set(latch);
+            }
+
             try {
                 return latch.await(timeoutMs, TimeUnit.MILLISECONDS);
             } finally {
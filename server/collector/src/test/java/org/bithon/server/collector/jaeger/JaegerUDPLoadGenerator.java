@@ -0,0 +1,152 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.collector.jaeger;
+
+import io.jaegertracing.thriftjava.Batch;
+import io.jaegertracing.thriftjava.Process;
+import io.jaegertracing.thriftjava.Span;
+import org.apache.thrift.TSerializer;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.bithon.server.pipeline.tracing.ITraceProcessor;
+import org.bithon.server.storage.tracing.TraceSpan;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A local load-test harness for {@link JaegerThriftUDPTraceReceiver}.
+ * <p>
+ * It starts an embedded receiver, blasts Thrift compact encoded batches at it from several sender threads,
+ * and reports the sent and decoded spans per second together with the loss ratio, so that
+ * the single-socket mode and the SO_REUSEPORT mode can be compared on the same machine.
+ * <p>
+ * Usage: {@code JaegerUDPLoadGenerator [reusePort=false] [receiverThreads=4] [senderThreads=4] [seconds=10] [spansPerBatch=10] [port=16900]}
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class JaegerUDPLoadGenerator {
+
+    public static void main(String[] args) throws Exception {
+        boolean reusePort = args.length > 0 && Boolean.parseBoolean(args[0]);
+        int receiverThreads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int senderThreads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int spansPerBatch = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+        int port = args.length > 5 ? Integer.parseInt(args[5]) : 16900;
+
+        LongAdder processedSpans = new LongAdder();
+        JaegerThriftUDPTraceReceiver receiver = new JaegerThriftUDPTraceReceiver(port, receiverThreads, reusePort);
+        receiver.registerProcessor(new ITraceProcessor() {
+            @Override
+            public void process(String messageType, List<TraceSpan> spans) {
+                processedSpans.add(spans.size());
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        receiver.start();
+
+        byte[] payload = new TSerializer(new TCompactProtocol.Factory()).serialize(createBatch(spansPerBatch));
+        System.out.printf(Locale.ENGLISH,
+                          "reusePort=%s, receiverThreads=%d, senderThreads=%d, spansPerBatch=%d, packetSize=%d bytes%n",
+                          reusePort, receiverThreads, senderThreads, spansPerBatch, payload.length);
+
+        LongAdder sentPackets = new LongAdder();
+        long deadline = System.currentTimeMillis() + seconds * 1000L;
+        InetAddress address = InetAddress.getLoopbackAddress();
+        List<Thread> senders = new ArrayList<>();
+        for (int i = 0; i < senderThreads; i++) {
+            Thread sender = new Thread(() -> {
+                // Each sender uses its own socket so that the kernel spreads them over the reuse-port group
+                try (DatagramSocket socket = new DatagramSocket()) {
+                    DatagramPacket packet = new DatagramPacket(payload, payload.length, address, port);
+                    while (System.currentTimeMillis() < deadline) {
+                        socket.send(packet);
+                        sentPackets.increment();
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }, "jaeger-udp-sender-" + i);
+            sender.start();
+            senders.add(sender);
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+
+        // Give the receiver a moment to drain the socket buffers
+        Thread.sleep(1000);
+
+        long sent = sentPackets.sum() * spansPerBatch;
+        long processed = processedSpans.sum();
+        System.out.printf(Locale.ENGLISH,
+                          "sent: %d spans (%.0f spans/s), decoded: %d spans (%.0f spans/s), loss: %.2f%%%n",
+                          sent,
+                          sent / (double) seconds,
+                          processed,
+                          processed / (double) seconds,
+                          sent == 0 ? 0 : (sent - processed) * 100.0 / sent);
+
+        List<JaegerUDPSocketMetrics> metrics = receiver.getMetrics();
+        for (int i = 0; i < metrics.size(); i++) {
+            JaegerUDPSocketMetrics m = metrics.get(i);
+            System.out.printf(Locale.ENGLISH,
+                              "socket-%d: received=%d packets, decoded=%d packets, decode failures=%d packets%n",
+                              i,
+                              m.getReceivedPackets(),
+                              m.getDecodedPackets(),
+                              m.getDecodeFailures());
+        }
+
+        receiver.stop();
+    }
+
+    private static Batch createBatch(int spanCount) {
+        Process process = new Process();
+        process.setServiceName("load-generator");
+
+        long now = System.currentTimeMillis() * 1000;
+        List<Span> spans = new ArrayList<>(spanCount);
+        for (int i = 1; i <= spanCount; i++) {
+            Span span = new Span();
+            span.setTraceIdLow(ThreadLocalRandom.current().nextLong());
+            span.setTraceIdHigh(ThreadLocalRandom.current().nextLong());
+            span.setSpanId(i);
+            span.setParentSpanId(i - 1);
+            span.setOperationName("operation-" + i);
+            span.setFlags(1);
+            span.setStartTime(now);
+            span.setDuration(1000);
+            spans.add(span);
+        }
+
+        Batch batch = new Batch();
+        batch.setProcess(process);
+        batch.setSpans(spans);
+        return batch;
+    }
+}
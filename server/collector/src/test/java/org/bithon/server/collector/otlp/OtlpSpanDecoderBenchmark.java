@@ -0,0 +1,178 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.collector.otlp;
+
+import com.google.protobuf.ByteString;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.InstrumentationScope;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.resource.v1.Resource;
+import io.opentelemetry.proto.trace.v1.ResourceSpans;
+import io.opentelemetry.proto.trace.v1.ScopeSpans;
+import io.opentelemetry.proto.trace.v1.Span;
+import io.opentelemetry.proto.trace.v1.Status;
+import org.bithon.server.pipeline.tracing.ITraceProcessor;
+import org.bithon.server.storage.tracing.TraceSpan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares decoding an OTLP export request into {@link TraceSpan} by {@link OtlpSpanConverter},
+ * which parses the request into the protobuf object graph first, with the streaming {@link OtlpSpanDecoder}.
+ * <ul>
+ *     <li>grpc* decodes from the byte array that the gRPC receiver gets from its marshaller</li>
+ *     <li>http* decodes from the request body stream</li>
+ * </ul>
+ * Run with '-prof gc' to compare the allocation rate.
+ * Run {@link #main(String[])} to measure at 1, 4, 16 and 64 threads.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class OtlpSpanDecoderBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int spanCount;
+
+    private byte[] request;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Resource resource = Resource.newBuilder()
+                                    .addAttributes(stringAttribute(OtlpAttributes.SERVICE_NAME, "order-service"))
+                                    .addAttributes(stringAttribute(OtlpAttributes.SERVICE_INSTANCE_ID, "192.168.1.1:8080"))
+                                    .addAttributes(stringAttribute(OtlpAttributes.TELEMETRY_SDK_LANGUAGE, "java"))
+                                    .addAttributes(stringAttribute("host.name", "host-1"))
+                                    .addAttributes(stringAttribute("os.type", "linux"))
+                                    .build();
+
+        ScopeSpans.Builder scopeSpans = ScopeSpans.newBuilder()
+                                                  .setScope(InstrumentationScope.newBuilder().setName("io.opentelemetry.okhttp").build());
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long now = System.currentTimeMillis() * 1_000_000;
+        for (int i = 0; i < spanCount; i++) {
+            scopeSpans.addSpans(Span.newBuilder()
+                                    .setTraceId(randomBytes(random, 16))
+                                    .setSpanId(randomBytes(random, 8))
+                                    .setParentSpanId(randomBytes(random, 8))
+                                    .setName("GET /api/order/" + i)
+                                    .setKind(Span.SpanKind.SPAN_KIND_SERVER)
+                                    .setStartTimeUnixNano(now)
+                                    .setEndTimeUnixNano(now + 5_000_000)
+                                    .addAttributes(stringAttribute("http.method", "GET"))
+                                    .addAttributes(stringAttribute("http.url", "http://localhost:8080/api/order/" + i))
+                                    .addAttributes(stringAttribute("http.status_code", "200"))
+                                    .addAttributes(stringAttribute("thread.name", "http-nio-8080-exec-1"))
+                                    .setStatus(Status.newBuilder().setCode(Status.StatusCode.STATUS_CODE_OK).build())
+                                    .build());
+        }
+
+        request = ExportTraceServiceRequest.newBuilder()
+                                           .addResourceSpans(ResourceSpans.newBuilder()
+                                                                          .setResource(resource)
+                                                                          .addScopeSpans(scopeSpans.build())
+                                                                          .build())
+                                           .build()
+                                           .toByteArray();
+    }
+
+    @Benchmark
+    public List<TraceSpan> grpcConverter() throws IOException {
+        return new OtlpSpanConverter(ExportTraceServiceRequest.parseFrom(request).getResourceSpansList()).toSpanList();
+    }
+
+    @Benchmark
+    public int grpcDecoder(Blackhole blackhole) throws IOException {
+        return OtlpSpanDecoder.decode(request, new BlackholeProcessor(blackhole));
+    }
+
+    @Benchmark
+    public List<TraceSpan> httpConverter() throws IOException {
+        return new OtlpSpanConverter(ExportTraceServiceRequest.parseFrom(new ByteArrayInputStream(request)).getResourceSpansList()).toSpanList();
+    }
+
+    @Benchmark
+    public int httpDecoder(Blackhole blackhole) throws IOException {
+        return OtlpSpanDecoder.decode(new ByteArrayInputStream(request), new BlackholeProcessor(blackhole));
+    }
+
+    private static KeyValue stringAttribute(String key, String value) {
+        return KeyValue.newBuilder()
+                       .setKey(key)
+                       .setValue(AnyValue.newBuilder().setStringValue(value).build())
+                       .build();
+    }
+
+    private static ByteString randomBytes(ThreadLocalRandom random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return ByteString.copyFrom(bytes);
+    }
+
+    static class BlackholeProcessor implements ITraceProcessor {
+        private final Blackhole blackhole;
+
+        BlackholeProcessor(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void process(String messageType, List<TraceSpan> spans) {
+            blackhole.consume(spans);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 4, 16, 64}) {
+            Options opt = new OptionsBuilder()
+                .include(OtlpSpanDecoderBenchmark.class.getSimpleName())
+                .threads(threads)
+                .forks(1)
+                .warmupIterations(2)
+                .measurementIterations(5)
+                .build();
+
+            new Runner(opt).run();
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.collector.otlp;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import org.bithon.component.commons.tracing.SpanKind;
+import org.bithon.component.commons.tracing.Tags;
+import org.bithon.server.pipeline.tracing.ITraceProcessor;
+import org.bithon.server.storage.common.ApplicationType;
+import org.bithon.server.storage.tracing.TraceSpan;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The input is encoded by hand following the field numbers in trace.proto
+ * so that the test does not depend on the generated OTLP classes.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class OtlpSpanDecoderTest {
+
+    static class CollectingProcessor implements ITraceProcessor {
+        private final List<List<TraceSpan>> batches = new ArrayList<>();
+
+        @Override
+        public void process(String messageType, List<TraceSpan> spans) {
+            batches.add(spans);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        List<TraceSpan> spans() {
+            List<TraceSpan> spans = new ArrayList<>();
+            batches.forEach(spans::addAll);
+            return spans;
+        }
+    }
+
+    @Test
+    public void testDecode() throws IOException {
+        byte[] span = concat(bytesField(1, new byte[]{0x01, 0x23, (byte) 0xab, (byte) 0xcd}),
+                             bytesField(2, new byte[]{0x0f, (byte) 0xf0}),
+                             // trace_state, not used
+                             stringField(3, "k=v"),
+                             bytesField(4, new byte[]{0x00, 0x01}),
+                             stringField(5, "GET /api"),
+                             enumField(6, 2),
+                             fixed64Field(7, 5_000_000L),
+                             fixed64Field(8, 8_000_000L),
+                             keyValue(9, "http.method", "GET"),
+                             // A non-string value is decoded as empty string
+                             messageField(9, concat(stringField(1, "http.status"), messageField(2, int64Field(3, 200)))),
+                             // events, not used
+                             messageField(11, stringField(2, "event")),
+                             messageField(15, concat(stringField(2, "failed"), enumField(3, 2))));
+
+        byte[] resourceSpans = concat(messageField(1, concat(keyValue(1, OtlpAttributes.SERVICE_NAME, "order-service"),
+                                                             keyValue(1, OtlpAttributes.SERVICE_INSTANCE_ID, "192.168.1.1:8080"),
+                                                             keyValue(1, OtlpAttributes.TELEMETRY_SDK_LANGUAGE, "java"),
+                                                             keyValue(1, "host.name", "host1"))),
+                                      messageField(2, concat(messageField(1, stringField(1, "io.opentelemetry.okhttp")),
+                                                             messageField(2, span),
+                                                             messageField(2, stringField(5, "empty")))),
+                                      stringField(3, "https://opentelemetry.io/schemas/1.21.0"));
+
+        CollectingProcessor processor = new CollectingProcessor();
+        Assertions.assertEquals(2, OtlpSpanDecoder.decode(messageField(1, resourceSpans), processor));
+        Assertions.assertEquals(1, processor.batches.size());
+
+        TraceSpan decoded = processor.spans().get(0);
+        Assertions.assertEquals("0123abcd", decoded.traceId);
+        Assertions.assertEquals("0ff0", decoded.spanId);
+        Assertions.assertEquals("0001", decoded.parentSpanId);
+        Assertions.assertEquals("GET /api", decoded.name);
+        Assertions.assertEquals(SpanKind.SERVER.toString(), decoded.kind);
+        Assertions.assertEquals(5000, decoded.startTime);
+        Assertions.assertEquals(8000, decoded.endTime);
+        Assertions.assertEquals(3000, decoded.costTime);
+        Assertions.assertEquals("500", decoded.status);
+        Assertions.assertEquals("", decoded.method);
+        Assertions.assertEquals("GET", decoded.getTag("http.method"));
+        Assertions.assertEquals("", decoded.getTag("http.status"));
+        Assertions.assertEquals("failed", decoded.getTag(Tags.Exception.MESSAGE));
+        Assertions.assertEquals(3, decoded.tags.size());
+        Assertions.assertEquals("order-service", decoded.appName);
+        Assertions.assertEquals("192.168.1.1:8080", decoded.instanceName);
+        Assertions.assertEquals(ApplicationType.JAVA, decoded.appType);
+
+        // All fields absent
+        TraceSpan empty = processor.spans().get(1);
+        Assertions.assertEquals("", empty.traceId);
+        Assertions.assertEquals("", empty.spanId);
+        Assertions.assertEquals("", empty.parentSpanId);
+        Assertions.assertEquals(SpanKind.UNSPECIFIED.toString(), empty.kind);
+        Assertions.assertEquals("", empty.status);
+        Assertions.assertTrue(empty.tags.isEmpty());
+        Assertions.assertEquals("order-service", empty.appName);
+    }
+
+    @Test
+    public void testScopeNameAsAppName() throws IOException {
+        byte[] resourceSpans = concat(messageField(1, keyValue(1, OtlpAttributes.TELEMETRY_SDK_LANGUAGE, "cpp")),
+                                      messageField(2, concat(messageField(1, stringField(1, "scope-1")),
+                                                             messageField(2, stringField(5, "span-1")))),
+                                      messageField(2, concat(messageField(1, stringField(1, "scope-2")),
+                                                             messageField(2, stringField(5, "span-2")))));
+
+        CollectingProcessor processor = new CollectingProcessor();
+        OtlpSpanDecoder.decode(messageField(1, resourceSpans), processor);
+
+        List<TraceSpan> spans = processor.spans();
+        Assertions.assertEquals(2, spans.size());
+        Assertions.assertEquals("scope-1", spans.get(0).appName);
+        Assertions.assertEquals("scope-2", spans.get(1).appName);
+        Assertions.assertEquals(ApplicationType.CPP, spans.get(0).appType);
+        Assertions.assertEquals("", spans.get(0).instanceName);
+    }
+
+    @Test
+    public void testResourceAndScopeAfterSpans() throws IOException {
+        // Serialize the spans before the scope and the resource, which is legal in protobuf
+        byte[] resourceSpans = concat(messageField(2, concat(messageField(2, stringField(5, "span-1")),
+                                                             messageField(1, stringField(1, "scope-1")))),
+                                      messageField(2, concat(messageField(2, stringField(5, "span-2")),
+                                                             messageField(1, stringField(1, "scope-2")))),
+                                      messageField(1, keyValue(1, OtlpAttributes.SERVICE_INSTANCE_ID, "instance-1")));
+        byte[] resourceSpansWithName = concat(messageField(2, messageField(2, stringField(5, "span-3"))),
+                                              messageField(1, keyValue(1, OtlpAttributes.SERVICE_NAME, "app-2")));
+
+        CollectingProcessor processor = new CollectingProcessor();
+        OtlpSpanDecoder.decode(concat(messageField(1, resourceSpans), messageField(1, resourceSpansWithName)), processor);
+
+        List<TraceSpan> spans = processor.spans();
+        Assertions.assertEquals(3, spans.size());
+        Assertions.assertEquals("span-1", spans.get(0).name);
+        Assertions.assertEquals("scope-1", spans.get(0).appName);
+        Assertions.assertEquals("instance-1", spans.get(0).instanceName);
+        Assertions.assertEquals("scope-2", spans.get(1).appName);
+        Assertions.assertEquals("instance-1", spans.get(1).instanceName);
+        Assertions.assertEquals("app-2", spans.get(2).appName);
+        Assertions.assertEquals("", spans.get(2).instanceName);
+    }
+
+    @Test
+    public void testBatching() throws IOException {
+        byte[][] spans = new byte[25][];
+        for (int i = 0; i < spans.length; i++) {
+            spans[i] = messageField(2, stringField(5, "span-" + i));
+        }
+        byte[] resourceSpans = concat(messageField(1, keyValue(1, OtlpAttributes.SERVICE_NAME, "app")),
+                                      messageField(2, concat(spans)));
+
+        CollectingProcessor processor = new CollectingProcessor();
+        OtlpSpanDecoder decoder = new OtlpSpanDecoder(processor, 10);
+        Assertions.assertEquals(25, decoder.decode(CodedInputStream.newInstance(new ByteArrayInputStream(messageField(1, resourceSpans)))));
+
+        Assertions.assertEquals(3, processor.batches.size());
+        Assertions.assertEquals(10, processor.batches.get(0).size());
+        Assertions.assertEquals(10, processor.batches.get(1).size());
+        Assertions.assertEquals(5, processor.batches.get(2).size());
+        Assertions.assertEquals("span-24", processor.batches.get(2).get(4).name);
+    }
+
+    @Test
+    public void testEmptyInput() throws IOException {
+        CollectingProcessor processor = new CollectingProcessor();
+        Assertions.assertEquals(0, OtlpSpanDecoder.decode(new byte[0], processor));
+        Assertions.assertEquals(0, OtlpSpanDecoder.decode(messageField(1, messageField(2, new byte[0])), processor));
+        Assertions.assertTrue(processor.batches.isEmpty());
+    }
+
+    @Test
+    public void testTruncatedInput() {
+        byte[] message = messageField(1, messageField(2, messageField(2, bytesField(1, new byte[16]))));
+        byte[] truncated = new byte[message.length - 4];
+        System.arraycopy(message, 0, truncated, 0, truncated.length);
+
+        Assertions.assertThrows(IOException.class, () -> OtlpSpanDecoder.decode(truncated, new CollectingProcessor()));
+    }
+
+    private static byte[] keyValue(int field, String key, String value) {
+        return messageField(field, concat(stringField(1, key), messageField(2, stringField(1, value))));
+    }
+
+    private static byte[] messageField(int field, byte[] message) {
+        return write((out) -> out.writeByteArray(field, message));
+    }
+
+    private static byte[] bytesField(int field, byte[] value) {
+        return write((out) -> out.writeByteArray(field, value));
+    }
+
+    private static byte[] stringField(int field, String value) {
+        return write((out) -> out.writeString(field, value));
+    }
+
+    private static byte[] enumField(int field, int value) {
+        return write((out) -> out.writeEnum(field, value));
+    }
+
+    private static byte[] int64Field(int field, long value) {
+        return write((out) -> out.writeInt64(field, value));
+    }
+
+    private static byte[] fixed64Field(int field, long value) {
+        return write((out) -> out.writeFixed64(field, value));
+    }
+
+    interface FieldWriter {
+        void write(CodedOutputStream out) throws IOException;
+    }
+
+    private static byte[] write(FieldWriter writer) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        CodedOutputStream out = CodedOutputStream.newInstance(bos);
+        try {
+            writer.write(out);
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bos.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            bos.writeBytes(part);
+        }
+        return bos.toByteArray();
+    }
+}
@@ -32,6 +32,7 @@ import org.bithon.server.commons.time.Period;
 import org.bithon.server.datasource.column.DateTimeColumn;
 import org.bithon.server.datasource.column.ExpressionColumn;
 import org.bithon.server.datasource.column.IColumn;
+import org.bithon.server.datasource.column.aggregatable.histogram.AggregateHistogramColumn;
 import org.bithon.server.datasource.store.IDataStoreSpec;
 
 import java.util.Collection;
@@ -148,7 +149,8 @@ public class DefaultSchema implements ISchema {
         });
 
         this.metricsSpec.forEach((metricSpec) -> {
-            if (metricSpec.getDataType() == IDataType.STRING) {
+            // Histograms are stored in text form
+            if (metricSpec.getDataType() == IDataType.STRING && !(metricSpec instanceof AggregateHistogramColumn)) {
                 throw new IllegalArgumentException("Metric column [" + metricSpec.getName() + "] cannot be of type string.");
             }
 
@@ -0,0 +1,73 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.datasource.aggregator;
+
+import org.bithon.component.commons.histogram.HistogramSnapshot;
+
+/**
+ * Merges histograms in the same time slot.
+ * The input is either a {@link HistogramSnapshot} or its text form,
+ * and the output value is in the text form which is how the histogram is stored.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class HistogramAggregator extends NumberAggregator {
+
+    private final HistogramSnapshot histogram = new HistogramSnapshot();
+
+    @Override
+    public void aggregate(long timestamp, Object value) {
+        if (value instanceof HistogramSnapshot) {
+            histogram.merge((HistogramSnapshot) value);
+        } else if (value instanceof String) {
+            histogram.merge(HistogramSnapshot.fromText((String) value));
+        }
+    }
+
+    /**
+     * @return number of values recorded in the histogram
+     */
+    @Override
+    public Number getNumber() {
+        return histogram.getCount();
+    }
+
+    @Override
+    public Object getValue() {
+        return histogram.toText();
+    }
+
+    @Override
+    public int intValue() {
+        return (int) histogram.getCount();
+    }
+
+    @Override
+    public long longValue() {
+        return histogram.getCount();
+    }
+
+    @Override
+    public float floatValue() {
+        return histogram.getCount();
+    }
+
+    @Override
+    public double doubleValue() {
+        return histogram.getCount();
+    }
+}
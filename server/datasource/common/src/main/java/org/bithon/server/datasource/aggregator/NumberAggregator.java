@@ -24,4 +24,11 @@ public abstract class NumberAggregator extends Number {
     public abstract void aggregate(long timestamp, Object value);
 
     public abstract Number getNumber();
+
+    /**
+     * @return the value to be stored. For most aggregators, it's the same as {@link #getNumber()}
+     */
+    public Object getValue() {
+        return getNumber();
+    }
 }
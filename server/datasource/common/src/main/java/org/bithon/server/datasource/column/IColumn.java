@@ -27,6 +27,7 @@ import org.bithon.component.commons.expression.function.IFunction;
 import org.bithon.component.commons.expression.validation.IIdentifier;
 import org.bithon.component.commons.utils.StringUtils;
 import org.bithon.server.datasource.aggregator.NumberAggregator;
+import org.bithon.server.datasource.column.aggregatable.histogram.AggregateHistogramColumn;
 import org.bithon.server.datasource.column.aggregatable.last.AggregateDoubleLastColumn;
 import org.bithon.server.datasource.column.aggregatable.last.AggregateLongLastColumn;
 import org.bithon.server.datasource.column.aggregatable.max.AggregateLongMaxColumn;
@@ -52,6 +53,7 @@ import org.bithon.server.datasource.query.ast.Selector;
     @JsonSubTypes.Type(name = IColumn.LONG_MAX, value = AggregateLongMaxColumn.class),
     @JsonSubTypes.Type(name = IColumn.DOUBLE_SUM, value = AggregateDoubleSumColumn.class),
     @JsonSubTypes.Type(name = IColumn.DOUBLE_LAST, value = AggregateDoubleLastColumn.class),
+    @JsonSubTypes.Type(name = IColumn.HISTOGRAM, value = AggregateHistogramColumn.class),
     @JsonSubTypes.Type(name = IColumn.POST, value = ExpressionColumn.class)
 })
 public interface IColumn extends IIdentifier {
@@ -70,6 +72,11 @@ public interface IColumn extends IIdentifier {
     String LONG_MIN = "longMin";
     String LONG_MAX = "longMax";
 
+    /**
+     * for latency distribution, see {@link AggregateHistogramColumn}
+     */
+    String HISTOGRAM = "histogram";
+
     /**
      * the name in the storage.
      * can NOT be null
@@ -0,0 +1,101 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.datasource.column.aggregatable.histogram;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.annotation.Nullable;
+import jakarta.validation.constraints.NotNull;
+import lombok.Getter;
+import org.bithon.component.commons.expression.FunctionExpression;
+import org.bithon.component.commons.expression.IDataType;
+import org.bithon.component.commons.expression.IdentifierExpression;
+import org.bithon.component.commons.expression.LiteralExpression;
+import org.bithon.component.commons.expression.function.builtin.AggregateFunction;
+import org.bithon.server.datasource.aggregator.HistogramAggregator;
+import org.bithon.server.datasource.aggregator.NumberAggregator;
+import org.bithon.server.datasource.column.aggregatable.IAggregatableColumn;
+import org.bithon.server.datasource.query.ast.ExpressionNode;
+import org.bithon.server.datasource.query.ast.Selector;
+
+/**
+ * A latency histogram reported by agents.
+ * It's stored in text form of {@link org.bithon.component.commons.histogram.HistogramSnapshot},
+ * and is queried by the {@link AggregateFunction.Quantile} function, for example: quantile(responseTimeHistogram, 0.99)
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class AggregateHistogramColumn implements IAggregatableColumn {
+
+    @Getter
+    private final String name;
+
+    @Getter
+    private final String alias;
+
+    private final FunctionExpression aggregateFunctionExpression;
+
+    @JsonCreator
+    public AggregateHistogramColumn(@JsonProperty("name") @NotNull String name,
+                                    @JsonProperty("alias") @Nullable String alias) {
+        this.name = name;
+        this.alias = alias == null ? name : alias;
+
+        // The default aggregation is p99
+        this.aggregateFunctionExpression = FunctionExpression.create(AggregateFunction.Quantile.INSTANCE,
+                                                                     IdentifierExpression.of(name, getDataType()),
+                                                                     LiteralExpression.ofDouble(0.99));
+    }
+
+    @JsonIgnore
+    @Override
+    public IDataType getDataType() {
+        return IDataType.STRING;
+    }
+
+    @JsonIgnore
+    @Override
+    public FunctionExpression getAggregateFunctionExpression() {
+        return aggregateFunctionExpression;
+    }
+
+    @JsonIgnore
+    @Override
+    public Selector toSelector() {
+        return new Selector(new ExpressionNode(aggregateFunctionExpression), getName(), aggregateFunctionExpression.getDataType());
+    }
+
+    @Override
+    public NumberAggregator createAggregator() {
+        return new HistogramAggregator();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof AggregateHistogramColumn) {
+            return this.name.equals(((AggregateHistogramColumn) obj).name);
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+}
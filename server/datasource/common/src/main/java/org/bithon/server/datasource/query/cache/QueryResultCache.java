@@ -0,0 +1,457 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.datasource.query.cache;
+
+import org.bithon.component.commons.expression.IDataType;
+import org.bithon.server.commons.management.MBeanRegistration;
+import org.bithon.server.commons.time.TimeSpan;
+import org.bithon.server.datasource.TimestampSpec;
+import org.bithon.server.datasource.query.Interval;
+import org.bithon.server.datasource.query.Query;
+import org.bithon.server.datasource.query.ast.ExpressionNode;
+import org.bithon.server.datasource.query.ast.IASTNode;
+import org.bithon.server.datasource.query.ast.Selector;
+import org.bithon.server.datasource.query.pipeline.Column;
+import org.bithon.server.datasource.query.pipeline.ColumnarTable;
+import org.bithon.server.datasource.query.pipeline.DictionaryStringColumn;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches results of time-series queries so that dashboards refreshing over overlapping sliding windows
+ * don't re-aggregate the same data again and again.
+ * <p>
+ * A query is keyed on its normalized form without the time range, that is, data source, selectors, filter, group-by and step.
+ * For each key, one segment of complete time buckets is kept. Buckets that end before {@code now - lateArrivalTolerance}
+ * are treated as immutable and are served from the segment, only the open tail (and the partial first bucket if the start is not aligned)
+ * is queried from the storage. The tail buckets that become immutable are appended to the segment.
+ * <p>
+ * Queries whose buckets depend on each other, like sliding window or top-N queries, are not cached.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class QueryResultCache implements QueryResultCacheMXBean, AutoCloseable {
+
+    private final QueryResultCacheConfig config;
+    private final LongSupplier clock;
+
+    /**
+     * In access order so that the eldest entry is the least recently used one.
+     * Guarded by itself.
+     */
+    private final LinkedHashMap<String, Segment> segments = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedCells;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bypasses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder servedRows = new LongAdder();
+
+    private final MBeanRegistration registration;
+
+    public QueryResultCache(QueryResultCacheConfig config) {
+        this(config, System::currentTimeMillis);
+    }
+
+    QueryResultCache(QueryResultCacheConfig config, LongSupplier clock) {
+        this.config = config;
+        this.clock = clock;
+
+        this.registration = MBeanRegistration.register(this,
+                                                       "org.bithon.server:type=QueryResultCache",
+                                                       "query result cache");
+    }
+
+    /**
+     * Execute a time-series query with the help of the cache.
+     *
+     * @param query  the query that the cache key is built from. It's NOT passed to the loader.
+     * @param loader loads the result over the given interval from the storage.
+     *               Readers rewrite the expressions of a query during execution,
+     *               so the loader should create a new query object for each call.
+     */
+    public ColumnarTable timeseries(Query query, Function<Interval, ColumnarTable> loader) {
+        Interval interval = query.getInterval();
+        if (!config.isEnabled()) {
+            return loader.apply(interval);
+        }
+
+        String key = toCacheKey(query);
+        if (key == null) {
+            bypasses.increment();
+            return loader.apply(interval);
+        }
+
+        long step = interval.getStep().toMillis();
+        long start = interval.getStartTime().getMilliseconds();
+        long end = interval.getEndTime().getMilliseconds();
+        long now = clock.getAsLong();
+
+        // Only complete buckets that no more data is expected for are cached
+        long cacheStart = ceil(start, step);
+        long cacheEnd = Math.min(floor(end, step), floor(now - config.getLateArrivalTolerance().getMilliseconds(), step));
+        if (cacheEnd <= cacheStart) {
+            bypasses.increment();
+            return loader.apply(interval);
+        }
+
+        String dataSource = query.getSchema().getName();
+        Segment segment = get(key, now);
+        if (segment == null || segment.start > cacheStart || segment.end <= cacheStart) {
+            misses.increment();
+
+            ColumnarTable result = loader.apply(interval);
+            put(key, dataSource, result, cacheStart, cacheEnd, now, null);
+            return result;
+        }
+        hits.increment();
+
+        long hitEnd = Math.min(segment.end, cacheEnd);
+        List<ColumnarTable> parts = new ArrayList<>(3);
+        if (start < cacheStart) {
+            // The first bucket is partially covered by the query
+            parts.add(loader.apply(subInterval(interval, start, cacheStart)));
+        }
+
+        ColumnarTable cached = slice(segment.table, cacheStart, hitEnd);
+        servedRows.add(cached.rowCount());
+        parts.add(cached);
+
+        if (hitEnd < end) {
+            ColumnarTable tail = loader.apply(subInterval(interval, hitEnd, end));
+            parts.add(tail);
+
+            if (hitEnd < cacheEnd) {
+                // Some buckets of the tail have become immutable since the segment was cached
+                put(key, dataSource, tail, hitEnd, cacheEnd, now, segment);
+            }
+        }
+
+        ColumnarTable result = concat(parts);
+        if (result == null) {
+            // Columns of the cached result don't match the latest one, the schema might have been changed
+            invalidate(key, segment);
+            return loader.apply(interval);
+        }
+        return result;
+    }
+
+    /**
+     * Invalidate all cached results of the given data source
+     */
+    public void invalidate(String dataSource) {
+        synchronized (segments) {
+            Iterator<Segment> i = segments.values().iterator();
+            while (i.hasNext()) {
+                Segment segment = i.next();
+                if (segment.dataSource.equals(dataSource)) {
+                    i.remove();
+                    cachedCells -= segment.cells;
+                    invalidations.increment();
+                }
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (segments) {
+            invalidations.add(segments.size());
+            segments.clear();
+            cachedCells = 0;
+        }
+    }
+
+    private void invalidate(String key, Segment segment) {
+        synchronized (segments) {
+            if (segments.remove(key, segment)) {
+                cachedCells -= segment.cells;
+                invalidations.increment();
+            }
+        }
+    }
+
+    private Segment get(String key, long now) {
+        synchronized (segments) {
+            Segment segment = segments.get(key);
+            if (segment != null && segment.expireAt <= now) {
+                segments.remove(key);
+                cachedCells -= segment.cells;
+                segment = null;
+            }
+            return segment;
+        }
+    }
+
+    /**
+     * Cache the rows in [from, to) of the given table.
+     *
+     * @param appendTo if not null, the rows are appended to this segment if it's still cached and is adjacent to the rows
+     */
+    private void put(String key,
+                     String dataSource,
+                     ColumnarTable table,
+                     long from,
+                     long to,
+                     long now,
+                     Segment appendTo) {
+        if (table.getColumn(TimestampSpec.COLUMN_ALIAS) == null) {
+            return;
+        }
+        ColumnarTable rows = slice(table, from, to);
+
+        synchronized (segments) {
+            Segment current = segments.get(key);
+
+            Segment segment = null;
+            if (appendTo != null && current == appendTo && current.end == from) {
+                ColumnarTable merged = concat(List.of(current.table, rows));
+                if (merged != null) {
+                    // Keep the expiration of the segment so that no data is cached longer than the TTL
+                    segment = new Segment(dataSource, current.start, to, merged, current.expireAt);
+                }
+            }
+            if (segment == null) {
+                segment = new Segment(dataSource, from, to, concat(List.of(rows)), now + config.getTtlMillis(dataSource));
+            }
+
+            if (current != null) {
+                cachedCells -= current.cells;
+            }
+            segments.put(key, segment);
+            cachedCells += segment.cells;
+
+            // Evict the least recently used segments
+            Iterator<Segment> i = segments.values().iterator();
+            while (cachedCells > config.getMaxCells() && i.hasNext()) {
+                Segment eldest = i.next();
+                i.remove();
+                cachedCells -= eldest.cells;
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * @return null if the query can't be cached
+     */
+    static String toCacheKey(Query query) {
+        Interval interval = query.getInterval();
+        if (interval.getStep() == null || interval.getStep().toMillis() <= 0) {
+            return null;
+        }
+        long step = interval.getStep().toMillis();
+
+        // Values of a sliding window depend on the buckets before it in the same query
+        if (interval.getWindow() != null && interval.getWindow().getDuration().toMillis() != step) {
+            return null;
+        }
+        // The series that are returned depend on the whole range
+        if (query.getLimit() != null) {
+            return null;
+        }
+        // The timestamps in the result are shifted by the offset, they must stay aligned to the step
+        if (query.getOffset() != null && query.getOffset().getDuration().toMillis() % step != 0) {
+            return null;
+        }
+
+        StringBuilder key = new StringBuilder(256);
+        key.append(query.getSchema().getName());
+        for (Selector selector : query.getSelectors()) {
+            IASTNode selectExpression = selector.getSelectExpression();
+            if (selectExpression instanceof org.bithon.server.datasource.query.ast.Column column) {
+                key.append('|').append(column.getName());
+            } else if (selectExpression instanceof ExpressionNode expressionNode) {
+                key.append('|').append(expressionNode.getParsedExpression().serializeToText());
+            } else {
+                return null;
+            }
+            if (selector.getOutput() != null) {
+                key.append(" AS ").append(selector.getOutput().getName());
+            }
+        }
+        key.append("|filter=").append(query.getFilter() == null ? "" : query.getFilter().serializeToText());
+        key.append("|groupBy=").append(query.getGroupBy());
+        key.append("|step=").append(step);
+        key.append("|offset=").append(query.getOffset());
+        key.append("|timestamp=").append(interval.getTimestampColumn() == null ? "" : interval.getTimestampColumn().serializeToText());
+        key.append("|orderBy=").append(query.getOrderBy());
+        key.append("|settings=").append(query.getSettings());
+        return key.toString();
+    }
+
+    private static Interval subInterval(Interval interval, long start, long end) {
+        return Interval.of(TimeSpan.fromMilliseconds(start),
+                           TimeSpan.fromMilliseconds(end),
+                           interval.getStep(),
+                           interval.getWindow(),
+                           interval.getTimestampColumn());
+    }
+
+    /**
+     * @return rows whose bucket is in [from, to)
+     */
+    private static ColumnarTable slice(ColumnarTable table, long from, long to) {
+        // The timestamp is in seconds
+        Column timestamp = table.getColumn(TimestampSpec.COLUMN_ALIAS);
+        int rows = table.rowCount();
+        BitSet keep = new BitSet(rows);
+        for (int i = 0; i < rows; i++) {
+            long ts = timestamp.getLong(i) * 1000;
+            if (ts >= from && ts < to) {
+                keep.set(i);
+            }
+        }
+        return table.filter(keep);
+    }
+
+    /**
+     * Copy the rows of given tables into a new table.
+     * The returned table does not share any column or dictionary with the given ones,
+     * so that the cached data is isolated from the callers.
+     *
+     * @return null if the given tables don't have the same columns
+     */
+    private static ColumnarTable concat(List<ColumnarTable> tables) {
+        ColumnarTable first = tables.get(0);
+        List<Column> columns = first.getColumns();
+
+        int rows = 0;
+        for (ColumnarTable table : tables) {
+            List<Column> tableColumns = table.getColumns();
+            if (tableColumns.size() != columns.size()) {
+                return null;
+            }
+            for (int i = 0; i < columns.size(); i++) {
+                if (!tableColumns.get(i).getName().equals(columns.get(i).getName())) {
+                    return null;
+                }
+            }
+            rows += table.rowCount();
+        }
+
+        ColumnarTable result = new ColumnarTable();
+        for (int c = 0; c < columns.size(); c++) {
+            Column template = columns.get(c);
+            Column target = template instanceof DictionaryStringColumn
+                            ? new DictionaryStringColumn(template.getName(), rows)
+                            : Column.create(template.getName(), template.getDataType(), Math.max(1, rows));
+            IDataType type = template.getDataType();
+            for (ColumnarTable table : tables) {
+                Column source = table.getColumns().get(c);
+                for (int i = 0, n = table.rowCount(); i < n; i++) {
+                    switch (type) {
+                        case LONG, DATETIME_MILLI -> target.addLong(source.getLong(i));
+                        case DOUBLE -> target.addDouble(source.getDouble(i));
+                        case STRING -> target.addString(source.getString(i));
+                        default -> target.addObject(source.getObject(i));
+                    }
+                }
+            }
+            result.addColumn(target);
+        }
+        return result;
+    }
+
+    private static long floor(long timestamp, long step) {
+        return Math.floorDiv(timestamp, step) * step;
+    }
+
+    private static long ceil(long timestamp, long step) {
+        return -Math.floorDiv(-timestamp, step) * step;
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getBypasses() {
+        return bypasses.sum();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    @Override
+    public long getServedRows() {
+        return servedRows.sum();
+    }
+
+    @Override
+    public int getEntries() {
+        synchronized (segments) {
+            return segments.size();
+        }
+    }
+
+    @Override
+    public long getCachedCells() {
+        synchronized (segments) {
+            return cachedCells;
+        }
+    }
+
+    @Override
+    public void close() {
+        invalidateAll();
+
+        registration.close();
+    }
+
+    /**
+     * Rows of complete buckets in [start, end), in milliseconds
+     */
+    private static class Segment {
+        private final String dataSource;
+        private final long start;
+        private final long end;
+        private final ColumnarTable table;
+        private final long expireAt;
+        private final long cells;
+
+        Segment(String dataSource, long start, long end, ColumnarTable table, long expireAt) {
+            this.dataSource = dataSource;
+            this.start = start;
+            this.end = end;
+            this.table = table;
+            this.expireAt = expireAt;
+            this.cells = (long) table.rowCount() * table.getColumns().size();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.datasource.query.cache;
+
+import lombok.Data;
+import org.bithon.server.commons.time.Period;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Configuration of {@link QueryResultCache}
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Data
+@Configuration
+@ConfigurationProperties("bithon.datasource.query.cache")
+public class QueryResultCacheConfig {
+    private boolean enabled = false;
+
+    /**
+     * Max number of cells (rows * columns) that are held by the cache.
+     * The least recently used results are evicted when the limit is exceeded.
+     */
+    private long maxCells = 10_000_000;
+
+    /**
+     * How long a cached result is kept at most
+     */
+    private Period ttl = new Period("PT10M");
+
+    /**
+     * TTL for specific data sources, the key is the name of data source.
+     * If not configured, {@link #ttl} is used.
+     */
+    private Map<String, Period> dataSourceTtl = new HashMap<>();
+
+    /**
+     * Time buckets that end within this period before now are treated as open and are always queried from the storage,
+     * because data might still arrive for them.
+     */
+    private Period lateArrivalTolerance = new Period("PT2M");
+
+    public long getTtlMillis(String dataSource) {
+        Period period = dataSourceTtl.get(dataSource);
+        return (period == null ? ttl : period).getMilliseconds();
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.datasource.query.cache;
+
+/**
+ * Metrics of {@link QueryResultCache}, exposed over JMX.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public interface QueryResultCacheMXBean {
+
+    /**
+     * Number of queries whose immutable part is served from the cache
+     */
+    long getHits();
+
+    long getMisses();
+
+    /**
+     * Number of queries that can't be cached, for example, queries with LIMIT or sliding window
+     */
+    long getBypasses();
+
+    long getEvictions();
+
+    long getInvalidations();
+
+    /**
+     * Total number of rows that are served from the cache
+     */
+    long getServedRows();
+
+    int getEntries();
+
+    long getCachedCells();
+}
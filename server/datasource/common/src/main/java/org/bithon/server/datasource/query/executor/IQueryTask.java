@@ -0,0 +1,32 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.datasource.query.executor;
+
+/**
+ * A query task that is executed by {@link QueryExecutor}
+ *
+ * @author frank.chen021@outlook.com
+ */
+@FunctionalInterface
+public interface IQueryTask<T> {
+
+    /**
+     * @param execution the context of current execution.
+     *                  Long-running tasks should register a cancel handler and check the cancellation state on it.
+     */
+    T run(QueryExecution execution) throws Exception;
+}
@@ -0,0 +1,106 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.datasource.query.executor;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * The context of a query that is running on {@link QueryExecutor}.
+ * Nested queries that are submitted from a running query share the context of the outer one.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Slf4j
+public class QueryExecution {
+    @Getter
+    private final String user;
+
+    @Getter
+    private final String dataSource;
+
+    private volatile boolean cancelled;
+    private volatile Runnable cancelHandler;
+
+    /**
+     * Only updated by the thread that runs the query
+     */
+    private long fetchedRows;
+
+    QueryExecution(String user, String dataSource) {
+        this.user = user;
+        this.dataSource = dataSource;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @throws CancellationException if the query has been cancelled
+     */
+    public void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Query on [" + dataSource + "] has been cancelled");
+        }
+    }
+
+    /**
+     * Register a handler that is called when the query is cancelled, e.g. cancelling the running JDBC statement.
+     * If the query has already been cancelled, the handler is called immediately.
+     *
+     * @return the handler that was registered before, so that nested tasks can restore it after they complete
+     */
+    public Runnable setCancelHandler(Runnable handler) {
+        Runnable prev = this.cancelHandler;
+        this.cancelHandler = handler;
+        if (handler != null && cancelled) {
+            runCancelHandler(handler);
+        }
+        return prev;
+    }
+
+    public void addFetchedRows(long rows) {
+        this.fetchedRows += rows;
+    }
+
+    public long getFetchedRows() {
+        return fetchedRows;
+    }
+
+    void cancel() {
+        if (cancelled) {
+            return;
+        }
+        cancelled = true;
+
+        Runnable handler = this.cancelHandler;
+        if (handler != null) {
+            runCancelHandler(handler);
+        }
+    }
+
+    private void runCancelHandler(Runnable handler) {
+        try {
+            handler.run();
+        } catch (RuntimeException e) {
+            log.warn("Failed to cancel query on [{}]: {}", dataSource, e.getMessage());
+        }
+    }
+}
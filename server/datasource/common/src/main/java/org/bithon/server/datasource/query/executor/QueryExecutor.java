@@ -0,0 +1,467 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.datasource.query.executor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bithon.component.commons.concurrency.NamedThreadFactory;
+import org.bithon.component.commons.concurrency.ScheduledExecutorServiceFactory;
+import org.bithon.server.commons.management.MBeanRegistration;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.ClassUtils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded executor for {@link org.bithon.server.datasource.query.pipeline.IQueryStep}s,
+ * so that heavy queries do not occupy the common ForkJoinPool which is shared with other parts of the server.
+ * <p>
+ * A query is admitted for execution only if
+ * the number of running queries of the same user and the same data source is under the configured limits.
+ * The per user limit applies to authenticated users only.
+ * Otherwise, it waits in the queue until a slot is released or the queue timeout is reached.
+ * <p>
+ * Queries that are submitted from a running query (e.g. a data source query inside a metric expression) are executed inline
+ * on the current thread and share the slot of the outer query, so that nested queries never wait for the slot held by themselves.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Slf4j
+public class QueryExecutor implements QueryExecutorMXBean, AutoCloseable {
+
+    private static final String ANONYMOUS = "anonymous";
+
+    /**
+     * The security module is optional, e.g. in tests and tools
+     */
+    private static final boolean HAS_SECURITY_CONTEXT = ClassUtils.isPresent("org.springframework.security.core.context.SecurityContextHolder",
+                                                                             QueryExecutor.class.getClassLoader());
+
+    private static volatile QueryExecutor instance;
+
+    private static final ThreadLocal<QueryExecution> CURRENT = new ThreadLocal<>();
+
+    private final QueryExecutorConfig config;
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService timer;
+
+    /**
+     * Guarded by this
+     */
+    private final Deque<QueryTask<?>> pending = new ArrayDeque<>();
+    private final Map<String, Integer> runningByUser = new HashMap<>();
+    private final Map<String, Integer> runningByDataSource = new HashMap<>();
+    private int running;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder queueWaitMillis = new LongAdder();
+    private final LongAdder executionMillis = new LongAdder();
+    private final LongAdder fetchedRows = new LongAdder();
+
+    private final MBeanRegistration registration;
+
+    public QueryExecutor(QueryExecutorConfig config) {
+        this.config = config;
+        this.workers = new ThreadPoolExecutor(config.getThreads(),
+                                              config.getThreads(),
+                                              60,
+                                              TimeUnit.SECONDS,
+                                              // Tasks are handed over to workers only when there's an idle one, so the queue is always short
+                                              new LinkedBlockingQueue<>(),
+                                              NamedThreadFactory.daemonThreadFactory("query-executor"));
+        this.workers.allowCoreThreadTimeOut(true);
+        this.timer = ScheduledExecutorServiceFactory.newSingleThreadScheduledExecutor(NamedThreadFactory.daemonThreadFactory("query-executor-timer"));
+
+        this.registration = MBeanRegistration.register(this,
+                                                       "org.bithon.server:type=QueryExecutor",
+                                                       "query executor");
+    }
+
+    /**
+     * Get the executor that is shared by all data sources.
+     * If it's not installed by the application, a default one is created.
+     */
+    public static QueryExecutor getInstance() {
+        if (instance == null) {
+            synchronized (QueryExecutor.class) {
+                if (instance == null) {
+                    instance = new QueryExecutor(new QueryExecutorConfig());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Install the given executor as the shared one
+     */
+    public static QueryExecutor install(QueryExecutor executor) {
+        QueryExecutor prev;
+        synchronized (QueryExecutor.class) {
+            prev = instance;
+            instance = executor;
+        }
+        if (prev != null && prev != executor) {
+            prev.close();
+        }
+        return executor;
+    }
+
+    /**
+     * Submit a query task on given data source.
+     * Cancelling the returned future cancels the queued or running task.
+     *
+     * @param dataSource the name of the data source that the task queries on, used for admission control
+     */
+    public <T> CompletableFuture<T> submit(String dataSource, IQueryTask<T> task) {
+        QueryExecution current = CURRENT.get();
+        if (current != null) {
+            // Nested query, run inline to avoid waiting for the slot that is held by the outer query
+            try {
+                current.checkCancelled();
+                return CompletableFuture.completedFuture(task.run(current));
+            } catch (Throwable e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        Object securityContext = HAS_SECURITY_CONTEXT ? SecurityContextPropagator.capture() : null;
+        QueryTask<T> queryTask = new QueryTask<>(new QueryExecution(securityContext == null ? ANONYMOUS : SecurityContextPropagator.getUser(securityContext),
+                                                                    dataSource),
+                                                 task,
+                                                 securityContext);
+        submitted.increment();
+
+        synchronized (this) {
+            if (pending.size() >= config.getMaxQueuedQueries()) {
+                rejected.increment();
+                queryTask.state = QueryTask.State.DONE;
+                queryTask.future.completeExceptionally(new QueryRejectedException("Too many queries are waiting for execution. Please try again later."));
+                return queryTask.future;
+            }
+
+            pending.add(queryTask);
+            dispatch();
+
+            if (queryTask.state == QueryTask.State.PENDING && config.getQueueTimeout() != null) {
+                queryTask.timeout = timer.schedule(() -> expire(queryTask),
+                                                   config.getQueueTimeout().getMilliseconds(),
+                                                   TimeUnit.MILLISECONDS);
+            }
+        }
+        return queryTask.future;
+    }
+
+    /**
+     * Hand over pending tasks to workers as long as the limits allow.
+     * Tasks that are blocked by the limits of their users or data sources do not block tasks behind them.
+     */
+    private void dispatch() {
+        Iterator<QueryTask<?>> i = pending.iterator();
+        while (running < config.getThreads() && i.hasNext()) {
+            QueryTask<?> task = i.next();
+            String user = task.execution.getUser();
+            String dataSource = task.execution.getDataSource();
+            if (isLimitedByUser(user)
+                || runningByDataSource.getOrDefault(dataSource, 0) >= config.getMaxConcurrentQueriesPerDataSource()) {
+                continue;
+            }
+
+            i.remove();
+            running++;
+            if (!ANONYMOUS.equals(user)) {
+                runningByUser.merge(user, 1, Integer::sum);
+            }
+            runningByDataSource.merge(dataSource, 1, Integer::sum);
+
+            task.state = QueryTask.State.RUNNING;
+            if (task.timeout != null) {
+                task.timeout.cancel(false);
+                task.timeout = null;
+            }
+            if (config.getExecutionTimeout() != null) {
+                task.timeout = timer.schedule(() -> timeout(task),
+                                              config.getExecutionTimeout().getMilliseconds(),
+                                              TimeUnit.MILLISECONDS);
+            }
+            workers.execute(task);
+        }
+    }
+
+    /**
+     * Unauthenticated callers can't be told apart, e.g., when the security is not enabled,
+     * so they're only limited by the total and the per data source limits.
+     */
+    private boolean isLimitedByUser(String user) {
+        return !ANONYMOUS.equals(user) && runningByUser.getOrDefault(user, 0) >= config.getMaxConcurrentQueriesPerUser();
+    }
+
+    private synchronized void release(QueryTask<?> task) {
+        task.state = QueryTask.State.DONE;
+        if (task.timeout != null) {
+            task.timeout.cancel(false);
+            task.timeout = null;
+        }
+
+        running--;
+        runningByUser.computeIfPresent(task.execution.getUser(), (k, v) -> v > 1 ? v - 1 : null);
+        runningByDataSource.computeIfPresent(task.execution.getDataSource(), (k, v) -> v > 1 ? v - 1 : null);
+        dispatch();
+    }
+
+    /**
+     * Called when the task waits in the queue for too long
+     */
+    private void expire(QueryTask<?> task) {
+        synchronized (this) {
+            if (task.state != QueryTask.State.PENDING) {
+                return;
+            }
+            pending.remove(task);
+            task.state = QueryTask.State.DONE;
+        }
+        rejected.increment();
+        task.future.completeExceptionally(new QueryRejectedException("Query on [%s] has waited for more than %s for execution. Please try again later.",
+                                                                     task.execution.getDataSource(),
+                                                                     config.getQueueTimeout()));
+    }
+
+    /**
+     * Called when the task runs for too long
+     */
+    private void timeout(QueryTask<?> task) {
+        task.execution.cancel();
+        task.future.completeExceptionally(new TimeoutException("Query on [" + task.execution.getDataSource() + "] has run for more than " + config.getExecutionTimeout()));
+    }
+
+    private void cancel(QueryTask<?> task) {
+        synchronized (this) {
+            if (task.state == QueryTask.State.PENDING) {
+                pending.remove(task);
+                task.state = QueryTask.State.DONE;
+                cancelled.increment();
+                return;
+            }
+        }
+
+        // The running task is counted when it completes
+        task.execution.cancel();
+    }
+
+    @Override
+    public synchronized int getQueuedQueries() {
+        return pending.size();
+    }
+
+    @Override
+    public synchronized int getRunningQueries() {
+        return running;
+    }
+
+    @Override
+    public long getSubmittedQueries() {
+        return submitted.sum();
+    }
+
+    @Override
+    public long getCompletedQueries() {
+        return completed.sum();
+    }
+
+    @Override
+    public long getFailedQueries() {
+        return failed.sum();
+    }
+
+    @Override
+    public long getCancelledQueries() {
+        return cancelled.sum();
+    }
+
+    @Override
+    public long getRejectedQueries() {
+        return rejected.sum();
+    }
+
+    @Override
+    public long getQueueWaitTimeMillis() {
+        return queueWaitMillis.sum();
+    }
+
+    @Override
+    public long getExecutionTimeMillis() {
+        return executionMillis.sum();
+    }
+
+    @Override
+    public long getFetchedRows() {
+        return fetchedRows.sum();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            for (QueryTask<?> task : pending) {
+                task.state = QueryTask.State.DONE;
+                task.future.completeExceptionally(new CancellationException("Query executor is shutting down"));
+            }
+            pending.clear();
+        }
+
+        timer.shutdownNow();
+        workers.shutdownNow();
+        try {
+            //noinspection ResultOfMethodCallIgnored
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ignored) {
+        }
+
+        registration.close();
+    }
+
+    private class QueryTask<T> implements Runnable {
+        enum State {
+            PENDING,
+            RUNNING,
+            DONE
+        }
+
+        private final QueryExecution execution;
+        private final IQueryTask<T> task;
+        private final Object securityContext;
+        private final long submittedAt = System.currentTimeMillis();
+        private final CompletableFuture<T> future = new CompletableFuture<>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean isCancelled = super.cancel(mayInterruptIfRunning);
+                if (isCancelled) {
+                    QueryExecutor.this.cancel(QueryTask.this);
+                }
+                return isCancelled;
+            }
+        };
+
+        /**
+         * Guarded by the executor
+         */
+        private State state = State.PENDING;
+        private ScheduledFuture<?> timeout;
+
+        QueryTask(QueryExecution execution, IQueryTask<T> task, Object securityContext) {
+            this.execution = execution;
+            this.task = task;
+            this.securityContext = securityContext;
+        }
+
+        @Override
+        public void run() {
+            long startAt = System.currentTimeMillis();
+            queueWaitMillis.add(startAt - submittedAt);
+
+            CURRENT.set(execution);
+            if (securityContext != null) {
+                SecurityContextPropagator.restore(securityContext);
+            }
+            T result = null;
+            Throwable error = null;
+            try {
+                execution.checkCancelled();
+
+                result = task.run(execution);
+                execution.checkCancelled();
+
+                completed.increment();
+            } catch (Throwable e) {
+                if (execution.isCancelled()) {
+                    cancelled.increment();
+                } else {
+                    failed.increment();
+                }
+                error = e;
+            } finally {
+                CURRENT.remove();
+                if (securityContext != null) {
+                    SecurityContextPropagator.clear();
+                }
+
+                long executionTime = System.currentTimeMillis() - startAt;
+                executionMillis.add(executionTime);
+                fetchedRows.add(execution.getFetchedRows());
+
+                log.debug("Query on [{}] by [{}]: queued {}ms, executed {}ms, fetched {} rows",
+                          execution.getDataSource(),
+                          execution.getUser(),
+                          startAt - submittedAt,
+                          executionTime,
+                          execution.getFetchedRows());
+
+                release(this);
+            }
+
+            // Complete after the slot is released so that callers see a consistent state
+            if (error == null) {
+                future.complete(result);
+            } else {
+                future.completeExceptionally(error);
+            }
+        }
+    }
+
+    /**
+     * Isolates the references to the optional security classes
+     */
+    private static class SecurityContextPropagator {
+        static Object capture() {
+            return SecurityContextHolder.getContext();
+        }
+
+        static String getUser(Object context) {
+            Authentication authentication = ((SecurityContext) context).getAuthentication();
+            return authentication == null
+                   || !authentication.isAuthenticated()
+                   || authentication instanceof AnonymousAuthenticationToken
+                   || authentication.getName() == null ? ANONYMOUS : authentication.getName();
+        }
+
+        static void restore(Object context) {
+            SecurityContextHolder.setContext((SecurityContext) context);
+        }
+
+        static void clear() {
+            SecurityContextHolder.clearContext();
+        }
+    }
+}
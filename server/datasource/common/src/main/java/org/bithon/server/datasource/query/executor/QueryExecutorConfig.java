@@ -0,0 +1,64 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.datasource.query.executor;
+
+import lombok.Data;
+import org.bithon.server.commons.time.Period;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration of {@link QueryExecutor}
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Data
+@Configuration
+@ConfigurationProperties("bithon.datasource.query.executor")
+public class QueryExecutorConfig {
+    /**
+     * Max number of queries that are executed at the same time.
+     * Each running query holds a connection of the underlying storage, it should NOT exceed the size of connection pool.
+     */
+    private int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    /**
+     * Max number of queries that are waiting for execution. New queries are rejected if the queue is full.
+     */
+    private int maxQueuedQueries = 1000;
+
+    /**
+     * Max number of queries that are executed at the same time for one authenticated user.
+     * It does not apply to anonymous queries, e.g., when the security is not enabled, which can't be told apart.
+     */
+    private int maxConcurrentQueriesPerUser = 8;
+
+    /**
+     * Max number of queries that are executed at the same time over one data source
+     */
+    private int maxConcurrentQueriesPerDataSource = 16;
+
+    /**
+     * How long a query waits in the queue at most before it's rejected
+     */
+    private Period queueTimeout = new Period("PT30S");
+
+    /**
+     * How long a query runs at most before it's cancelled. No limit if not set.
+     */
+    private Period executionTimeout;
+}
@@ -0,0 +1,59 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.datasource.query.executor;
+
+/**
+ * Metrics of {@link QueryExecutor}, exposed over JMX.
+ * Counters are accumulated since the executor is started, rates and averages can be calculated from their deltas.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public interface QueryExecutorMXBean {
+
+    int getQueuedQueries();
+
+    int getRunningQueries();
+
+    long getSubmittedQueries();
+
+    long getCompletedQueries();
+
+    long getFailedQueries();
+
+    long getCancelledQueries();
+
+    /**
+     * Number of queries that are rejected because the queue is full or they wait too long in the queue
+     */
+    long getRejectedQueries();
+
+    /**
+     * Total time that queries spend in the queue before execution, in milliseconds
+     */
+    long getQueueWaitTimeMillis();
+
+    /**
+     * Total time of query execution, in milliseconds
+     */
+    long getExecutionTimeMillis();
+
+    /**
+     * Total number of rows that are fetched from the results of the underlying storage.
+     * It's not the number of rows scanned by the storage engine, which is usually much larger for aggregation queries
+     */
+    long getFetchedRows();
+}
@@ -0,0 +1,30 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.datasource.query.executor;
+
+import org.bithon.component.commons.exception.HttpMappableException;
+
+/**
+ * Thrown when a query is not admitted for execution, either because the queue is full or because it has waited too long
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class QueryRejectedException extends HttpMappableException {
+    public QueryRejectedException(String messageFormat, Object... args) {
+        super(429, messageFormat, args);
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.datasource.query.pipeline;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A string column that stores int codes of a {@link StringDictionary} instead of strings.
+ * Dimension columns like appName or instanceName have very low cardinality compared to the number of rows,
+ * encoding saves heap and allows grouping/joining on the codes.
+ * <p>
+ * It extends {@link StringColumn} so that it's transparent to code that reads strings from the column.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class DictionaryStringColumn extends StringColumn {
+    private static final String[] EMPTY = new String[0];
+
+    private final StringDictionary dictionary;
+    private int[] codes;
+    private int size;
+
+    public DictionaryStringColumn(String name, int capacity) {
+        this(name, new StringDictionary(), new int[Math.max(1, capacity)], 0);
+    }
+
+    public DictionaryStringColumn(String name, StringDictionary dictionary, int[] codes, int size) {
+        super(name, EMPTY, 0);
+        this.dictionary = dictionary;
+        this.codes = codes;
+        this.size = size;
+    }
+
+    public StringDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public int getCode(int row) {
+        return codes[row];
+    }
+
+    /**
+     * @return the codes of all rows. The returned array is a copy that is exactly sized.
+     */
+    public int[] getCodes() {
+        int[] copy = new int[size()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = getCode(i);
+        }
+        return copy;
+    }
+
+    @Override
+    public void addObject(Object value) {
+        if (value == null) {
+            addInternal("");
+        } else if (value instanceof String) {
+            addInternal((String) value);
+        } else {
+            addInternal(value.toString());
+        }
+    }
+
+    @Override
+    public void addString(String value) {
+        addInternal(value == null ? "" : value);
+    }
+
+    @Override
+    public void addInt(int value) {
+        addInternal(String.valueOf(value));
+    }
+
+    @Override
+    public void addLong(long value) {
+        addInternal(String.valueOf(value));
+    }
+
+    @Override
+    public void addDouble(double value) {
+        addInternal(String.valueOf(value));
+    }
+
+    /**
+     * Append a value that is already encoded by the dictionary of this column
+     */
+    public void addCode(int code) {
+        if (size >= codes.length) {
+            codes = Arrays.copyOf(codes, codes.length * 3 / 2 + 1);
+        }
+        codes[size++] = code;
+    }
+
+    private void addInternal(String value) {
+        addCode(dictionary.encode(value));
+    }
+
+    @Override
+    public String get(int row) {
+        return getString(row);
+    }
+
+    @Override
+    public String getString(int row) {
+        return dictionary.decode(getCode(row));
+    }
+
+    @Override
+    public Object getObject(int row) {
+        return getString(row);
+    }
+
+    @Override
+    public void set(int index, String value) {
+        codes[index] = dictionary.encode(value);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Column filter(BitSet keep) {
+        DictionaryStringColumn filtered = new DictionaryStringColumn(getName(), dictionary, new int[Math.max(1, keep.cardinality())], 0);
+        for (int i = 0, n = size(); i < n; i++) {
+            if (keep.get(i)) {
+                filtered.addCode(getCode(i));
+            }
+        }
+        return filtered;
+    }
+
+    /**
+     * Decode all values. Try to use {@link #getCode(int)} instead.
+     */
+    @Override
+    public String[] getData() {
+        String[] data = new String[size()];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = getString(i);
+        }
+        return data;
+    }
+
+    @Override
+    public Column view(int[] selections, int length) {
+        return new DictionaryStringColumnView(this, selections, length);
+    }
+
+    private static class DictionaryStringColumnView extends DictionaryStringColumn {
+        private final DictionaryStringColumn delegate;
+        private final int[] selections;
+        private final int length;
+
+        DictionaryStringColumnView(DictionaryStringColumn delegate, int[] selections, int length) {
+            super(delegate.getName(), delegate.dictionary, delegate.codes, delegate.size);
+            this.delegate = delegate;
+            this.selections = selections;
+            this.length = length;
+        }
+
+        @Override
+        public int getCode(int row) {
+            return delegate.getCode(selections[row]);
+        }
+
+        @Override
+        public void set(int index, String value) {
+            delegate.set(selections[index], value);
+        }
+
+        /**
+         * The codes are shared with the delegation, appending to a view would overwrite rows of the delegation
+         */
+        @Override
+        public void addCode(int code) {
+            throw new UnsupportedOperationException("Can't append to a view of column " + getName());
+        }
+
+        @Override
+        public int size() {
+            return this.length;
+        }
+    }
+}
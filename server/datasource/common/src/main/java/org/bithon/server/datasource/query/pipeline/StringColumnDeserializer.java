@@ -26,6 +26,7 @@ import java.io.IOException;
 
 /**
  * Custom Jackson deserializer for StringColumn that reconstructs the column from serialized data.
+ * Dictionary encoded data is deserialized as {@link DictionaryStringColumn}.
  *
  * @author frank.chen021@outlook.com
  * @date 20/10/25
@@ -37,6 +38,10 @@ public class StringColumnDeserializer extends JsonDeserializer<StringColumn> {
         JsonNode node = p.getCodec().readTree(p);
         
         String name = node.get("name").asText();
+        if (node.has("codes")) {
+            return deserializeDictionaryEncoded(name, node);
+        }
+
         ArrayNode dataNode = (ArrayNode) node.get("data");
         int size = dataNode.size();
         
@@ -47,5 +52,20 @@ public class StringColumnDeserializer extends JsonDeserializer<StringColumn> {
         
         return new StringColumn(name, data, size);
     }
-}
 
+    private StringColumn deserializeDictionaryEncoded(String name, JsonNode node) {
+        ArrayNode dictionaryNode = (ArrayNode) node.get("dictionary");
+        StringDictionary dictionary = new StringDictionary(dictionaryNode.size());
+        for (int i = 0; i < dictionaryNode.size(); i++) {
+            dictionary.encode(dictionaryNode.get(i).asText());
+        }
+
+        ArrayNode codesNode = (ArrayNode) node.get("codes");
+        int size = codesNode.size();
+        int[] codes = new int[size];
+        for (int i = 0; i < size; i++) {
+            codes[i] = codesNode.get(i).asInt();
+        }
+        return new DictionaryStringColumn(name, dictionary, codes, size);
+    }
+}
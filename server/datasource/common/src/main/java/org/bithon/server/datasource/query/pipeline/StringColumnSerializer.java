@@ -21,10 +21,14 @@ import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.SerializerProvider;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * Custom Jackson serializer for StringColumn that only serializes elements up to the size boundary.
  * This prevents serializing unused capacity in the underlying array.
+ * <p>
+ * A {@link DictionaryStringColumn} with repeated values is serialized as a dictionary of distinct values plus codes,
+ * see {@link StringColumnDeserializer}.
  *
  * @author frank.chen021@outlook.com
  * @date 20/10/25
@@ -36,6 +40,11 @@ public class StringColumnSerializer extends JsonSerializer<StringColumn> {
         gen.writeStartObject();
         gen.writeStringField("name", column.getName());
 
+        if (column instanceof DictionaryStringColumn dictionaryColumn && writeDictionaryEncoded(dictionaryColumn, gen)) {
+            gen.writeEndObject();
+            return;
+        }
+
         gen.writeFieldName("data");
         gen.writeStartArray();
         {
@@ -47,5 +56,44 @@ public class StringColumnSerializer extends JsonSerializer<StringColumn> {
 
         gen.writeEndObject();
     }
-}
 
+    /**
+     * @return false if the column is not worth encoding, nothing is written in this case
+     */
+    private boolean writeDictionaryEncoded(DictionaryStringColumn column, JsonGenerator gen) throws IOException {
+        int size = column.size();
+        StringDictionary dictionary = column.getDictionary();
+
+        // The column might be a view or filtered result that refers to part of the dictionary,
+        // re-number the codes that are in use in the order of their first appearance
+        int[] remapping = new int[dictionary.size()];
+        Arrays.fill(remapping, -1);
+        int[] usedCodes = new int[Math.min(size, dictionary.size())];
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            int code = column.getCode(i);
+            if (remapping[code] == -1) {
+                remapping[code] = distinct;
+                usedCodes[distinct++] = code;
+            }
+        }
+        if (distinct * 2 > size) {
+            return false;
+        }
+
+        gen.writeFieldName("dictionary");
+        gen.writeStartArray();
+        for (int i = 0; i < distinct; i++) {
+            gen.writeString(dictionary.decode(usedCodes[i]));
+        }
+        gen.writeEndArray();
+
+        gen.writeFieldName("codes");
+        gen.writeStartArray();
+        for (int i = 0; i < size; i++) {
+            gen.writeNumber(remapping[column.getCode(i)]);
+        }
+        gen.writeEndArray();
+        return true;
+    }
+}
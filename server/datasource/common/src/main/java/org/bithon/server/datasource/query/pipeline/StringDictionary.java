@@ -0,0 +1,91 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.datasource.query.pipeline;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps distinct strings to dense int codes starting from 0.
+ * A dictionary is shared by a {@link DictionaryStringColumn} and the columns derived from it by filter/view/join,
+ * so that these columns can be compared by codes without looking at the strings.
+ * <p>
+ * NOT thread safe, a dictionary is written only by the step that creates the column.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class StringDictionary {
+    private final Map<String, Integer> index;
+    private String[] values;
+    private int size;
+
+    public StringDictionary() {
+        this(16);
+    }
+
+    public StringDictionary(int capacity) {
+        this.index = new HashMap<>(capacity);
+        this.values = new String[capacity];
+    }
+
+    /**
+     * @return the code of given value. A new code is allocated if the value is not in the dictionary
+     */
+    public int encode(String value) {
+        Integer code = index.get(value);
+        if (code != null) {
+            return code;
+        }
+
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(16, size * 2));
+        }
+        values[size] = value;
+        index.put(value, size);
+        return size++;
+    }
+
+    /**
+     * @return the code of given value, or -1 if the value is not in the dictionary
+     */
+    public int lookup(String value) {
+        Integer code = index.get(value);
+        return code == null ? -1 : code;
+    }
+
+    public String decode(int code) {
+        return values[code];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Translate codes of this dictionary into codes of given dictionary
+     *
+     * @return an array indexed by codes of this dictionary, -1 if the value does not exist in the target dictionary
+     */
+    public int[] translateTo(StringDictionary target) {
+        int[] mapping = new int[size];
+        for (int code = 0; code < size; code++) {
+            mapping[code] = target == this ? code : target.lookup(values[code]);
+        }
+        return mapping;
+    }
+}
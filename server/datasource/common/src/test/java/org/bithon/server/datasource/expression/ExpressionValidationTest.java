@@ -16,6 +16,7 @@
 
 package org.bithon.server.datasource.expression;
 
+import org.bithon.component.commons.expression.expt.InvalidExpressionException;
 import org.bithon.component.commons.expression.function.Functions;
 import org.bithon.component.commons.expression.serialization.IdentifierQuotaStrategy;
 import org.bithon.component.commons.expression.validation.ExpressionValidationException;
@@ -153,4 +154,20 @@ public class ExpressionValidationTest {
                                                     .build("a = 'INFO' and a")
         );
     }
+
+    @Test
+    public void test_Quantile() {
+        ExpressionASTBuilder builder = ExpressionASTBuilder.builder()
+                                                           .schema(schema)
+                                                           .functions(Functions.getInstance());
+
+        Assertions.assertEquals("quantile(a, 0.99)", builder.build("quantile(a, 0.99)").serializeToText(IdentifierQuotaStrategy.NONE));
+
+        // The histogram is stored as string
+        Assertions.assertThrows(InvalidExpressionException.class, () -> builder.build("quantile(intB, 0.99)"));
+
+        // The quantile must be a literal in the range of [0, 1]
+        Assertions.assertThrows(InvalidExpressionException.class, () -> builder.build("quantile(a, 99)"));
+        Assertions.assertThrows(InvalidExpressionException.class, () -> builder.build("quantile(a, intB)"));
+    }
 }
@@ -0,0 +1,229 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.datasource.query.cache;
+
+import org.bithon.component.commons.expression.IDataType;
+import org.bithon.component.commons.expression.IdentifierExpression;
+import org.bithon.component.commons.utils.HumanReadableDuration;
+import org.bithon.server.commons.time.Period;
+import org.bithon.server.commons.time.TimeSpan;
+import org.bithon.server.datasource.DefaultSchema;
+import org.bithon.server.datasource.column.StringColumn;
+import org.bithon.server.datasource.column.aggregatable.sum.AggregateLongSumColumn;
+import org.bithon.server.datasource.query.Interval;
+import org.bithon.server.datasource.query.Limit;
+import org.bithon.server.datasource.query.Query;
+import org.bithon.server.datasource.query.ast.Selector;
+import org.bithon.server.datasource.query.pipeline.ColumnarTable;
+import org.bithon.server.datasource.query.pipeline.DictionaryStringColumn;
+import org.bithon.server.datasource.query.pipeline.LongColumn;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class QueryResultCacheTest {
+
+    private static final long STEP = 60_000;
+    private static final long T0 = 1_700_000_000_000L / STEP * STEP;
+
+    private final DefaultSchema schema = new DefaultSchema("test-metrics",
+                                                           "test-metrics",
+                                                           null,
+                                                           List.of(new StringColumn("appName", "appName")),
+                                                           List.of(new AggregateLongSumColumn("value", "value")));
+
+    private final List<Interval> loads = new ArrayList<>();
+    private long now = T0 + 3_600_000;
+    private QueryResultCache cache;
+
+    @AfterEach
+    public void tearDown() {
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    /**
+     * Simulates the storage. The value of a bucket is the number of seconds that the query covers in that bucket.
+     */
+    private final Function<Interval, ColumnarTable> loader = (interval) -> {
+        loads.add(interval);
+
+        long start = interval.getStartTime().getMilliseconds();
+        long end = interval.getEndTime().getMilliseconds();
+
+        LongColumn timestamp = new LongColumn("_timestamp", 16);
+        DictionaryStringColumn appName = new DictionaryStringColumn("appName", 16);
+        LongColumn value = new LongColumn("value", 16);
+        for (long bucket = Math.floorDiv(start, STEP) * STEP; bucket < end; bucket += STEP) {
+            for (String app : new String[]{"app1", "app2"}) {
+                timestamp.addLong(bucket / 1000);
+                appName.addString(app);
+                value.addLong((Math.min(end, bucket + STEP) - Math.max(start, bucket)) / 1000);
+            }
+        }
+        return ColumnarTable.of(timestamp, appName, value);
+    };
+
+    private QueryResultCache createCache(long maxCells) {
+        QueryResultCacheConfig config = new QueryResultCacheConfig();
+        config.setEnabled(true);
+        config.setMaxCells(maxCells);
+        config.setTtl(new Period("PT10M"));
+        config.setLateArrivalTolerance(new Period("PT2M"));
+        return new QueryResultCache(config, () -> now);
+    }
+
+    private Query query(long start, long end) {
+        return Query.builder()
+                    .schema(schema)
+                    .selectors(List.of(new Selector("value", IDataType.LONG)))
+                    .groupBy(List.of("appName"))
+                    .interval(Interval.of(TimeSpan.fromMilliseconds(start),
+                                          TimeSpan.fromMilliseconds(end),
+                                          Duration.ofMillis(STEP),
+                                          new IdentifierExpression("timestamp")))
+                    .build();
+    }
+
+    private void assertSameAsStorage(Query query, ColumnarTable actual) {
+        List<Map<String, Object>> expected = loader.apply(query.getInterval()).toRowFormat();
+        loads.remove(loads.size() - 1);
+        Assertions.assertEquals(expected, actual.toRowFormat());
+    }
+
+    @Test
+    public void testSlidingWindowIsServedFromCache() {
+        cache = createCache(1_000_000);
+
+        // The start is not aligned to the step
+        Query q1 = query(T0 + 10_000, T0 + 1_800_000 + 10_000);
+        ColumnarTable r1 = cache.timeseries(q1, loader);
+        assertSameAsStorage(q1, r1);
+        Assertions.assertEquals(1, loads.size());
+        Assertions.assertEquals(0, cache.getHits());
+        Assertions.assertEquals(1, cache.getMisses());
+
+        // Refresh 20 seconds later with the same window length
+        now += 20_000;
+        loads.clear();
+        Query q2 = query(T0 + 30_000, T0 + 1_800_000 + 30_000);
+        ColumnarTable r2 = cache.timeseries(q2, loader);
+        assertSameAsStorage(q2, r2);
+        Assertions.assertEquals(1, cache.getHits());
+
+        // Only the partial first bucket and the open tail are queried
+        Assertions.assertEquals(2, loads.size());
+        Assertions.assertEquals(T0 + 30_000, loads.get(0).getStartTime().getMilliseconds());
+        Assertions.assertEquals(T0 + STEP, loads.get(0).getEndTime().getMilliseconds());
+        Assertions.assertEquals(T0 + 1_800_000, loads.get(1).getStartTime().getMilliseconds());
+        Assertions.assertEquals(T0 + 1_800_000 + 30_000, loads.get(1).getEndTime().getMilliseconds());
+        Assertions.assertEquals(2 * 29, cache.getServedRows());
+    }
+
+    @Test
+    public void testOpenBucketsAreNotCached() {
+        cache = createCache(1_000_000);
+
+        // The last 2 minutes are within the late arrival tolerance
+        now = T0 + 600_000;
+        Query q1 = query(T0, now);
+        cache.timeseries(q1, loader);
+
+        // Data of the open buckets have arrived
+        now += STEP;
+        loads.clear();
+        Query q2 = query(T0, T0 + 600_000);
+        assertSameAsStorage(q2, cache.timeseries(q2, loader));
+        Assertions.assertEquals(1, loads.size());
+        Assertions.assertEquals(T0 + 480_000, loads.get(0).getStartTime().getMilliseconds());
+
+        // The bucket that becomes immutable is appended to the cache
+        loads.clear();
+        cache.timeseries(q2, loader);
+        Assertions.assertEquals(T0 + 540_000, loads.get(0).getStartTime().getMilliseconds());
+        Assertions.assertEquals(1, cache.getEntries());
+    }
+
+    @Test
+    public void testBypass() {
+        cache = createCache(1_000_000);
+
+        Query limited = query(T0, T0 + 600_000).copy()
+                                               .limit(new Limit(10, 0))
+                                               .build();
+        cache.timeseries(limited, loader);
+        cache.timeseries(limited, loader);
+        Assertions.assertEquals(2, cache.getBypasses());
+        Assertions.assertEquals(0, cache.getEntries());
+
+        Query slidingWindow = query(T0, T0 + 600_000).copy()
+                                                     .interval(Interval.of(TimeSpan.fromMilliseconds(T0),
+                                                                           TimeSpan.fromMilliseconds(T0 + 600_000),
+                                                                           Duration.ofMillis(STEP),
+                                                                           HumanReadableDuration.parse("5m"),
+                                                                           new IdentifierExpression("timestamp")))
+                                                     .build();
+        cache.timeseries(slidingWindow, loader);
+        Assertions.assertEquals(3, cache.getBypasses());
+        Assertions.assertEquals(0, cache.getEntries());
+    }
+
+    @Test
+    public void testInvalidationAndExpiration() {
+        cache = createCache(1_000_000);
+
+        Query q = query(T0, T0 + 600_000);
+        cache.timeseries(q, loader);
+        cache.timeseries(q, loader);
+        Assertions.assertEquals(1, cache.getHits());
+
+        cache.invalidate("test-metrics");
+        Assertions.assertEquals(0, cache.getEntries());
+        Assertions.assertEquals(0, cache.getCachedCells());
+        cache.timeseries(q, loader);
+        Assertions.assertEquals(2, cache.getMisses());
+
+        // Expired after TTL
+        now += 600_000;
+        cache.timeseries(q, loader);
+        Assertions.assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void testEviction() {
+        // Each query caches 10 buckets * 2 rows * 3 columns
+        cache = createCache(100);
+
+        cache.timeseries(query(T0, T0 + 600_000), loader);
+        Assertions.assertEquals(60, cache.getCachedCells());
+
+        cache.timeseries(query(T0 + 600_000, T0 + 1_200_000).with(new IdentifierExpression("appName")), loader);
+        Assertions.assertEquals(1, cache.getEntries());
+        Assertions.assertEquals(1, cache.getEvictions());
+        Assertions.assertEquals(60, cache.getCachedCells());
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.datasource.query.executor;
+
+import org.bithon.server.commons.time.Period;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class QueryExecutorTest {
+
+    private QueryExecutor executor;
+
+    @AfterEach
+    public void tearDown() {
+        if (executor != null) {
+            executor.close();
+        }
+    }
+
+    private QueryExecutor create(int threads, int perUser, int perDataSource, String queueTimeout) {
+        QueryExecutorConfig config = new QueryExecutorConfig();
+        config.setThreads(threads);
+        config.setMaxConcurrentQueriesPerUser(perUser);
+        config.setMaxConcurrentQueriesPerDataSource(perDataSource);
+        config.setQueueTimeout(new Period(queueTimeout));
+        executor = new QueryExecutor(config);
+        return executor;
+    }
+
+    @Test
+    public void testConcurrencyLimitPerDataSource() throws Exception {
+        create(8, 8, 2, "PT10S");
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[10];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = executor.submit("ds", (execution) -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                running.decrementAndGet();
+                return null;
+            });
+        }
+
+        // A query over another data source is not blocked by the queued ones
+        Assertions.assertEquals("other", executor.submit("other", (execution) -> "other").get(5, TimeUnit.SECONDS));
+
+        CompletableFuture.allOf(futures).get(10, TimeUnit.SECONDS);
+        Assertions.assertEquals(2, maxRunning.get());
+        Assertions.assertEquals(11, executor.getCompletedQueries());
+        Assertions.assertEquals(0, executor.getRunningQueries());
+        Assertions.assertEquals(0, executor.getQueuedQueries());
+    }
+
+    private int runConcurrently(int queries) throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[queries];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = executor.submit("ds", (execution) -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(100);
+                running.decrementAndGet();
+                return null;
+            });
+        }
+        CompletableFuture.allOf(futures).get(10, TimeUnit.SECONDS);
+        return maxRunning.get();
+    }
+
+    @Test
+    public void testConcurrencyLimitPerUser() throws Exception {
+        create(8, 2, 8, "PT10S");
+
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("user1", null, Collections.emptyList()));
+        try {
+            Assertions.assertEquals(2, runConcurrently(6));
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    @Test
+    public void testNoConcurrencyLimitPerUserForAnonymous() throws Exception {
+        create(8, 2, 8, "PT10S");
+
+        // No authentication, e.g. the security is not enabled
+        Assertions.assertEquals(6, runConcurrently(6));
+    }
+
+    @Test
+    public void testQueueTimeout() throws Exception {
+        create(1, 1, 1, "PT0.2S");
+
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Object> blocking = executor.submit("ds", (execution) -> {
+            release.await();
+            return null;
+        });
+
+        CompletableFuture<Object> queued = executor.submit("ds", (execution) -> null);
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> queued.get(5, TimeUnit.SECONDS));
+        Assertions.assertInstanceOf(QueryRejectedException.class, e.getCause());
+        Assertions.assertEquals(1, executor.getRejectedQueries());
+
+        release.countDown();
+        blocking.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testNestedQueryRunsInline() throws Exception {
+        // Only one slot, the nested query would never be admitted if it were queued
+        create(1, 1, 1, "PT1S");
+
+        String result = executor.submit("ds", (outer) -> {
+            return executor.submit("ds", (inner) -> {
+                Assertions.assertSame(outer, inner);
+                inner.addFetchedRows(5);
+                return "nested";
+            }).get();
+        }).get(5, TimeUnit.SECONDS);
+
+        Assertions.assertEquals("nested", result);
+        Assertions.assertEquals(1, executor.getCompletedQueries());
+        Assertions.assertEquals(5, executor.getFetchedRows());
+    }
+
+    @Test
+    public void testCancelRunningQuery() throws Exception {
+        create(1, 1, 1, "PT10S");
+
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean handlerCalled = new AtomicBoolean();
+        CompletableFuture<Object> running = executor.submit("ds", (execution) -> {
+            CountDownLatch cancelled = new CountDownLatch(1);
+            execution.setCancelHandler(() -> {
+                handlerCalled.set(true);
+                cancelled.countDown();
+            });
+            started.countDown();
+
+            // Simulate a statement that returns when it's cancelled on the server side
+            cancelled.await();
+            execution.checkCancelled();
+            return null;
+        });
+        CompletableFuture<Object> queued = executor.submit("ds", (execution) -> "queued");
+
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(running.cancel(true));
+        Assertions.assertTrue(handlerCalled.get());
+
+        // The slot is released after the running query exits
+        Assertions.assertEquals("queued", queued.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, executor.getCancelledQueries());
+    }
+}
@@ -492,5 +492,51 @@ public class ColumnSerializerTest {
         assertEquals("beta", deserialized.getString(1));
         assertEquals("epsilon", deserialized.getString(2));
     }
-}
 
+    @Test
+    void testDictionaryStringColumnRoundTrip() throws Exception {
+        DictionaryStringColumn column = new DictionaryStringColumn("test", 2);
+        for (int i = 0; i < 6; i++) {
+            column.addString(i % 2 == 0 ? "a" : "b");
+        }
+
+        String json = objectMapper.writeValueAsString(column);
+        assertEquals("{\"name\":\"test\",\"dictionary\":[\"a\",\"b\"],\"codes\":[0,1,0,1,0,1]}", json);
+
+        StringColumn deserialized = objectMapper.readValue(json, StringColumn.class);
+        assertTrue(deserialized instanceof DictionaryStringColumn);
+        assertEquals(6, deserialized.size());
+        assertEquals("a", deserialized.getString(4));
+        assertEquals("b", deserialized.getString(5));
+    }
+
+    @Test
+    void testDictionaryStringColumnViewSerialization() throws Exception {
+        DictionaryStringColumn column = new DictionaryStringColumn("test", 10);
+        for (String v : new String[]{"alpha", "beta", "gamma", "beta", "gamma"}) {
+            column.addString(v);
+        }
+
+        // Only the used values are serialized, and codes are re-numbered
+        Column view = column.view(new int[]{2, 4, 2, 1}, 4);
+        String json = objectMapper.writeValueAsString(view);
+        assertEquals("{\"name\":\"test\",\"dictionary\":[\"gamma\",\"beta\"],\"codes\":[0,0,0,1]}", json);
+
+        StringColumn deserialized = objectMapper.readValue(json, StringColumn.class);
+        assertEquals(4, deserialized.size());
+        assertEquals("gamma", deserialized.getString(0));
+        assertEquals("beta", deserialized.getString(3));
+    }
+
+    @Test
+    void testDictionaryStringColumnWithDistinctValues() throws Exception {
+        DictionaryStringColumn column = new DictionaryStringColumn("test", 10);
+        column.addString("a");
+        column.addString("b");
+        column.addString("c");
+
+        // Encoding does not pay off, the plain format is used
+        String json = objectMapper.writeValueAsString(column);
+        assertEquals("{\"name\":\"test\",\"data\":[\"a\",\"b\",\"c\"]}", json);
+    }
+}
@@ -22,6 +22,7 @@ import java.util.BitSet;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class StringColumnTest {
 
@@ -130,4 +131,24 @@ public class StringColumnTest {
         assertEquals("", filtered.getString(0)); // null should be converted to empty string
         assertEquals("three", filtered.getString(1));
     }
+
+    @Test
+    void testSetOnDictionaryColumnView() {
+        DictionaryStringColumn column = new DictionaryStringColumn("test", 5);
+        column.addString("one");
+        column.addString("two");
+        column.addString("three");
+
+        // The index is mapped through the selections
+        StringColumn view = (StringColumn) column.view(new int[]{2, 0}, 2);
+        view.set(0, "four");
+        assertEquals("four", view.getString(0));
+        assertEquals("one", view.getString(1));
+        assertEquals("one", column.getString(0));
+        assertEquals("two", column.getString(1));
+        assertEquals("four", column.getString(2));
+
+        assertThrows(UnsupportedOperationException.class, () -> view.addString("five"));
+        assertEquals(3, column.size());
+    }
 }
@@ -116,6 +116,12 @@ public class ClickHouseSqlDialect implements ISqlDialect {
                                   field);
     }
 
+    @Override
+    public String histogramAggregator(String field) {
+        return StringUtils.format("arrayStringConcat(arrayFilter(x -> x <> '', groupArray(%s)), ',')",
+                                  field);
+    }
+
     @Override
     public String formatDateTime(LiteralExpression.TimestampLiteral expression) {
         return StringUtils.format("fromUnixTimestamp64Milli(%d)", expression.getValue());
@@ -47,6 +47,8 @@ import java.util.List;
  */
 public class MySQLSqlDialect implements ISqlDialect {
 
+    private static final List<String> HISTOGRAM_SESSION_STATEMENTS = List.of("SET SESSION group_concat_max_len = 67108864");
+
     @Override
     public String quoteIdentifier(String identifier) {
         return "`" + identifier + "`";
@@ -83,6 +85,25 @@ public class MySQLSqlDialect implements ISqlDialect {
         return StringUtils.format("group_concat(`%s`)", field);
     }
 
+    /**
+     * NOTE: the result of group_concat is truncated by the 'group_concat_max_len' system variable which is 1024 by default,
+     * it's enlarged for the query session by {@link #getHistogramAggregatorSessionStatements()}.
+     */
+    @Override
+    public String histogramAggregator(String field) {
+        return StringUtils.format("group_concat(`%s` SEPARATOR ',')", field);
+    }
+
+    /**
+     * The result of group_concat is also limited by the 'max_allowed_packet' which is 64MB by default since MySQL 8.0,
+     * so it's raised to the same size.
+     * The variable is kept on the pooled connection after the query, which only affects queries that use group_concat.
+     */
+    @Override
+    public List<String> getHistogramAggregatorSessionStatements() {
+        return HISTOGRAM_SESSION_STATEMENTS;
+    }
+
     public static class ToUnixTimestampFunction extends AbstractFunction {
         public ToUnixTimestampFunction() {
             super("UNIX_TIMESTAMP", IDataType.LONG, IDataType.LONG);
@@ -38,9 +38,13 @@ import org.bithon.server.datasource.query.ResultFormat;
 import org.bithon.server.datasource.query.ast.Selector;
 import org.bithon.server.datasource.query.pipeline.ColumnarTable;
 import org.bithon.server.datasource.query.pipeline.IQueryStep;
+import org.bithon.server.datasource.query.pipeline.PipelineQueryResult;
 import org.bithon.server.datasource.query.setting.QuerySettings;
 import org.bithon.server.datasource.reader.jdbc.dialect.ISqlDialect;
 import org.bithon.server.datasource.reader.jdbc.pipeline.JdbcPipelineBuilder;
+import org.bithon.server.datasource.reader.jdbc.pipeline.QuantileEvaluator;
+import org.bithon.server.datasource.reader.jdbc.rollup.RollupTable;
+import org.bithon.server.datasource.reader.jdbc.rollup.RollupTableSelector;
 import org.bithon.server.datasource.reader.jdbc.statement.ast.LimitClause;
 import org.bithon.server.datasource.reader.jdbc.statement.ast.OrderByClause;
 import org.bithon.server.datasource.reader.jdbc.statement.ast.SelectStatement;
@@ -62,6 +66,8 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -78,6 +84,7 @@ public class JdbcDataSourceReader implements IDataSourceReader {
     protected final ISqlDialect sqlDialect;
     protected final QuerySettings querySettings;
     private final boolean shouldCloseContext;
+    private RollupTableSelector rollupTableSelector;
 
     public JdbcDataSourceReader(String name,
                                 Map<String, Object> props,
@@ -120,8 +127,19 @@ public class JdbcDataSourceReader implements IDataSourceReader {
         this.shouldCloseContext = false;
     }
 
+    /**
+     * Allow aggregation queries to be served by the given rollup tables of the queried table
+     */
+    public JdbcDataSourceReader withRollupTables(List<RollupTable> rollupTables) {
+        this.rollupTableSelector = rollupTables.isEmpty() ? null : new RollupTableSelector(rollupTables);
+        return this;
+    }
+
     @Override
     public ColumnarTable timeseries(Query query) {
+        // Select before building the statement because the builder rewrites the expressions of the query
+        RollupTableSelector.Selection rollupSelection = selectRollupTable(query);
+
         SelectStatementBuilder statementBuilder = SelectStatementBuilder.builder()
                                                                         .schema(query.getSchema())
                                                                         .fields(query.getSelectors())
@@ -134,11 +152,13 @@ public class JdbcDataSourceReader implements IDataSourceReader {
 
         SelectStatement selectStatement = statementBuilder.querySettings(query.getSettings())
                                                           .build();
+        applyRollupTable(query, rollupSelection, selectStatement);
 
         Interval interval = query.getInterval();
 
         IQueryStep queryStep = JdbcPipelineBuilder.builder()
                                                   .dslContext(dslContext)
+                                                  .dataSource(query.getSchema().getName())
                                                   .dialect(this.sqlDialect)
                                                   .selectStatement(selectStatement)
                                                   .interval(Interval.of(interval.getStartTime().floor(query.getInterval().getStep()),
@@ -148,10 +168,21 @@ public class JdbcDataSourceReader implements IDataSourceReader {
                                                                         null))
                                                   .build();
 
+        CompletableFuture<PipelineQueryResult> future = null;
         try {
-            return queryStep.execute()
-                            .get()
-                            .getTable();
+            future = queryStep.execute();
+            return future.get()
+                         .getTable();
+        } catch (InterruptedException e) {
+            // Cancel the running query when the caller gives up waiting
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(e.getCause());
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -171,7 +202,25 @@ public class JdbcDataSourceReader implements IDataSourceReader {
                                                                .querySettings(query.getSettings())
                                                                .sqlDialect(this.sqlDialect);
 
-        return execute(query.isAggregateQuery() ? builder.build() : builder.buildSelectStatement(), query.getResultFormat());
+        if (!query.isAggregateQuery()) {
+            return execute(builder.buildSelectStatement(), query.getResultFormat());
+        }
+
+        RollupTableSelector.Selection rollupSelection = selectRollupTable(query);
+        SelectStatement selectStatement = builder.build();
+        applyRollupTable(query, rollupSelection, selectStatement);
+        return execute(selectStatement, query.getResultFormat());
+    }
+
+    private RollupTableSelector.Selection selectRollupTable(Query query) {
+        return this.rollupTableSelector == null ? null : this.rollupTableSelector.select(query);
+    }
+
+    private void applyRollupTable(Query query, RollupTableSelector.Selection selection, SelectStatement selectStatement) {
+        if (selection != null) {
+            log.debug("Use rollup table [{}] for [{}, {})", selection.getTable(), selection.getStart().toISO8601(), selection.getEnd().toISO8601());
+            RollupTableSelector.rewrite(selectStatement, query, selection, this.sqlDialect);
+        }
     }
 
     @Override
@@ -269,7 +318,7 @@ public class JdbcDataSourceReader implements IDataSourceReader {
         log.info("Executing {}", sql);
         Cursor<Record> cursor = dslContext.fetchLazy(sql);
 
-        Function<Record, ?> mapper = createRecordMapper(resultFormat);
+        Function<Record, ?> mapper = createRecordMapper(resultFormat, QuantileEvaluator.of(selectStatement));
         return new ReadResponse(CloseableIterator.transform(cursor.iterator(),
                                                             (record) -> DataRow.data(mapper.apply(record)),
                                                             cursor),
@@ -277,20 +326,28 @@ public class JdbcDataSourceReader implements IDataSourceReader {
     }
 
     public static Function<Record, ?> createRecordMapper(ResultFormat format) {
+        return createRecordMapper(format, null);
+    }
+
+    /**
+     * @param quantileEvaluator nullable
+     */
+    public static Function<Record, ?> createRecordMapper(ResultFormat format, QuantileEvaluator quantileEvaluator) {
         if (format == ResultFormat.ValueArray) {
             return (record) -> {
                 int colSize = record.size();
                 Object[] rowObject = new Object[colSize];
                 for (int i = 0; i < colSize; i++) {
-                    rowObject[i] = record.get(i);
+                    rowObject[i] = quantileEvaluator == null ? record.get(i) : quantileEvaluator.evaluate(i, record.get(i));
                 }
                 return rowObject;
             };
         } else { // If not given or Object, default to Object
             return (record) -> {
                 Map<String, Object> rowObject = new LinkedHashMap<>(record.size());
-                for (Field<?> field : record.fields()) {
-                    rowObject.put(field.getName(), record.get(field));
+                Field<?>[] fields = record.fields();
+                for (int i = 0; i < fields.length; i++) {
+                    rowObject.put(fields[i].getName(), quantileEvaluator == null ? record.get(i) : quantileEvaluator.evaluate(i, record.get(i)));
                 }
                 return rowObject;
             };
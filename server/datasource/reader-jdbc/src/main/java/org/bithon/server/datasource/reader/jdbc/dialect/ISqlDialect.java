@@ -26,6 +26,8 @@ import org.bithon.server.datasource.reader.jdbc.statement.ast.WindowFunctionExpr
 import org.bithon.server.datasource.reader.jdbc.statement.serializer.Expression2Sql;
 
 import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Since we're writing some complex SQLs, we have to deal with different SQL syntax on different DBMS
@@ -67,6 +69,22 @@ public interface ISqlDialect {
 
     String stringAggregator(String field);
 
+    /**
+     * Concatenate histograms in text form by comma so that they can be merged by {@link org.bithon.component.commons.histogram.HistogramSnapshot#fromText(String)}.
+     * Unlike {@link #stringAggregator(String)}, duplicated values must be kept.
+     */
+    default String histogramAggregator(String field) {
+        return stringAggregator(field);
+    }
+
+    /**
+     * Statements that are executed on the same connection before a query that aggregates histograms by {@link #histogramAggregator(String)}.
+     * They're used to lift session limits on the length of the aggregated result.
+     */
+    default List<String> getHistogramAggregatorSessionStatements() {
+        return Collections.emptyList();
+    }
+
     default WindowFunctionExpression firstWindowFunction(String field, long window) {
         throw new UnsupportedOperationException();
     }
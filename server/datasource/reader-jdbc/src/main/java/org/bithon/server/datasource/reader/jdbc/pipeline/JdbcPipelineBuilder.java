@@ -43,6 +43,7 @@ import java.util.List;
  */
 public class JdbcPipelineBuilder {
     private DSLContext dslContext;
+    private String dataSource;
     private ISqlDialect dialect;
     private SelectStatement selectStatement;
     private Interval interval;
@@ -59,6 +60,11 @@ public class JdbcPipelineBuilder {
         return this;
     }
 
+    public JdbcPipelineBuilder dataSource(String dataSource) {
+        this.dataSource = dataSource;
+        return this;
+    }
+
     public JdbcPipelineBuilder dialect(ISqlDialect dialect) {
         this.dialect = dialect;
         return this;
@@ -93,7 +99,7 @@ public class JdbcPipelineBuilder {
         }
 
         if (windowFunctionSelectors.isEmpty()) {
-            return new JdbcReadStep(dslContext, dialect, selectStatement, false);
+            return new JdbcReadStep(dslContext, dataSource, dialect, selectStatement, false);
         }
 
         WindowFunctionExpression windowFunctionExpression = (WindowFunctionExpression) ((ExpressionNode) windowFunctionSelectors.get(0).getSelectExpression()).getParsedExpression();
@@ -116,6 +122,7 @@ public class JdbcPipelineBuilder {
                                        .toList());
 
         IQueryStep readStep = new JdbcReadStep(dslContext,
+                                               dataSource,
                                                dialect,
                                                subQuery,
                                                false);
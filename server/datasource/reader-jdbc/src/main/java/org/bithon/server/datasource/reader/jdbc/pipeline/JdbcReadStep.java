@@ -18,9 +18,13 @@ package org.bithon.server.datasource.reader.jdbc.pipeline;
 
 
 import lombok.extern.slf4j.Slf4j;
+import org.bithon.component.commons.expression.IDataType;
 import org.bithon.server.datasource.query.ast.Selector;
+import org.bithon.server.datasource.query.executor.QueryExecution;
+import org.bithon.server.datasource.query.executor.QueryExecutor;
 import org.bithon.server.datasource.query.pipeline.Column;
 import org.bithon.server.datasource.query.pipeline.ColumnarTable;
+import org.bithon.server.datasource.query.pipeline.DictionaryStringColumn;
 import org.bithon.server.datasource.query.pipeline.IQueryStep;
 import org.bithon.server.datasource.query.pipeline.PipelineQueryResult;
 import org.bithon.server.datasource.reader.jdbc.dialect.ISqlDialect;
@@ -28,7 +32,11 @@ import org.bithon.server.datasource.reader.jdbc.statement.ast.SelectStatement;
 import org.jooq.Cursor;
 import org.jooq.DSLContext;
 import org.jooq.Record;
+import org.jooq.ResultQuery;
+import org.jooq.impl.DSL;
 
+import java.sql.Statement;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
@@ -40,15 +48,20 @@ import java.util.concurrent.CompletableFuture;
 public class JdbcReadStep implements IQueryStep {
 
     private final DSLContext dslContext;
+    private final ISqlDialect sqlDialect;
+    private final String dataSource;
     private final SelectStatement selectStatement;
     private final String sql;
     private final boolean isScalar;
 
     public JdbcReadStep(DSLContext dslContext,
+                        String dataSource,
                         ISqlDialect sqlDialect,
                         SelectStatement selectStatement,
                         boolean isScalar) {
         this.dslContext = dslContext;
+        this.sqlDialect = sqlDialect;
+        this.dataSource = dataSource;
         this.selectStatement = selectStatement;
         this.isScalar = isScalar;
 
@@ -67,25 +80,61 @@ public class JdbcReadStep implements IQueryStep {
 
     @Override
     public CompletableFuture<PipelineQueryResult> execute() throws Exception {
-        return CompletableFuture.supplyAsync(() -> {
+        return QueryExecutor.getInstance().submit(dataSource, (execution) -> {
             ColumnarTable resultTable = new ColumnarTable();
             for (Selector selector : selectStatement.getSelectorList().getSelectors()) {
-                resultTable.addColumn(Column.create(selector.getOutputName(), selector.getDataType(), 1024));
+                // Group-by values repeat across time buckets, keep them as dictionary codes
+                resultTable.addColumn(IDataType.STRING.equals(selector.getDataType())
+                                      ? new DictionaryStringColumn(selector.getOutputName(), 1024)
+                                      : Column.create(selector.getOutputName(), selector.getDataType(), 1024));
             }
-            List<Column> resultColumns = resultTable.getColumns();
+            QuantileEvaluator quantileEvaluator = QuantileEvaluator.of(selectStatement);
 
             log.info("Executing {}", sql);
-            try (Cursor<org.jooq.Record> cursor = dslContext.fetchLazy(sql)) {
-                for (Record record : cursor) {
-                    for (int i = 0; i < resultColumns.size(); i++) {
-                        Column column = resultColumns.get(i);
-                        column.addObject(record.get(i));
+            List<String> sessionStatements = quantileEvaluator == null ? Collections.emptyList() : sqlDialect.getHistogramAggregatorSessionStatements();
+            if (sessionStatements.isEmpty()) {
+                return read(dslContext, execution, resultTable, quantileEvaluator);
+            }
+
+            // Session variables only take effect on the connection that sets them,
+            // so the statements and the query are executed on the same connection
+            return dslContext.connectionResult((connection) -> {
+                try (Statement statement = connection.createStatement()) {
+                    for (String sessionStatement : sessionStatements) {
+                        statement.execute(sessionStatement);
                     }
                 }
-                return PipelineQueryResult.builder()
-                                          .table(resultTable)
-                                          .build();
-            }
+                return read(DSL.using(dslContext.configuration().derive(connection)), execution, resultTable, quantileEvaluator);
+            });
         });
     }
+
+    private PipelineQueryResult read(DSLContext context,
+                                     QueryExecution execution,
+                                     ColumnarTable resultTable,
+                                     QuantileEvaluator quantileEvaluator) {
+        List<Column> resultColumns = resultTable.getColumns();
+        ResultQuery<Record> query = context.resultQuery(sql);
+
+        // Cancel the statement on the server side when the query is cancelled
+        Runnable prevCancelHandler = execution.setCancelHandler(query::cancel);
+        long rows = 0;
+        try (Cursor<org.jooq.Record> cursor = query.fetchLazy()) {
+            for (Record record : cursor) {
+                execution.checkCancelled();
+
+                for (int i = 0; i < resultColumns.size(); i++) {
+                    Column column = resultColumns.get(i);
+                    column.addObject(quantileEvaluator == null ? record.get(i) : quantileEvaluator.evaluate(i, record.get(i)));
+                }
+                rows++;
+            }
+            return PipelineQueryResult.builder()
+                                      .table(resultTable)
+                                      .build();
+        } finally {
+            execution.setCancelHandler(prevCancelHandler);
+            execution.addFetchedRows(rows);
+        }
+    }
 }
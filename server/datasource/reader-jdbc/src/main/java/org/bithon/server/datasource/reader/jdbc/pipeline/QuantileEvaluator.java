@@ -0,0 +1,73 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.datasource.reader.jdbc.pipeline;
+
+import org.bithon.component.commons.expression.FunctionExpression;
+import org.bithon.component.commons.expression.LiteralExpression;
+import org.bithon.component.commons.expression.function.builtin.AggregateFunction;
+import org.bithon.server.datasource.query.ast.ExpressionNode;
+import org.bithon.server.datasource.query.ast.Selector;
+import org.bithon.server.datasource.reader.jdbc.statement.ast.SelectStatement;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The quantile aggregator is serialized as {@link org.bithon.server.datasource.reader.jdbc.dialect.ISqlDialect#histogramAggregator(String)},
+ * so the DBMS returns concatenated histograms for such columns.
+ * This class calculates the quantile on these returned values.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class QuantileEvaluator {
+    /**
+     * The quantile of each column in the result set, or null if the column is not a quantile aggregator
+     */
+    private final Number[] quantiles;
+
+    private QuantileEvaluator(Number[] quantiles) {
+        this.quantiles = quantiles;
+    }
+
+    /**
+     * @return null if there's no quantile aggregator in the selector list of given statement
+     */
+    public static QuantileEvaluator of(SelectStatement selectStatement) {
+        List<Selector> selectors = selectStatement.getSelectorList().getSelectors();
+
+        Number[] quantiles = null;
+        for (int i = 0; i < selectors.size(); i++) {
+            if (selectors.get(i).getSelectExpression() instanceof ExpressionNode expressionNode
+                && expressionNode.getParsedExpression() instanceof FunctionExpression functionExpression
+                && functionExpression.getFunction() instanceof AggregateFunction.Quantile) {
+                if (quantiles == null) {
+                    quantiles = new Number[selectors.size()];
+                }
+                quantiles[i] = (Number) ((LiteralExpression<?>) functionExpression.getArgs().get(1)).getValue();
+            }
+        }
+        return quantiles == null ? null : new QuantileEvaluator(quantiles);
+    }
+
+    public Object evaluate(int columnIndex, Object value) {
+        Number quantile = columnIndex < quantiles.length ? quantiles[columnIndex] : null;
+        if (quantile == null) {
+            return value;
+        }
+        return AggregateFunction.Quantile.INSTANCE.evaluate(Arrays.asList(value, quantile));
+    }
+}
@@ -18,12 +18,14 @@ package org.bithon.server.datasource.reader.jdbc.pipeline;
 
 import org.bithon.server.datasource.query.pipeline.Column;
 import org.bithon.server.datasource.query.pipeline.ColumnarTable;
-import org.bithon.server.datasource.query.pipeline.CompositeKey;
+import org.bithon.server.datasource.query.pipeline.DictionaryStringColumn;
+import org.bithon.server.datasource.query.pipeline.LongColumn;
 
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 
 
 /**
@@ -71,21 +73,17 @@ public class SlidingWindowAggregator {
             outputColumns.add(Column.create(valueField, valColumn.getDataType(), rowCount));
         }
 
-        CompositeKey prevKey = rowCount > 0 ? CompositeKey.from(keyColumns, 0) : null;
-
         // The starting window index of a group
         int windowStart = 0;
         double[] sums = new double[inputFields.size()];
 
         for (int i = 0; i < rowCount; i++) {
             long ts = tsColumn.getLong(i);
-            CompositeKey currKey = CompositeKey.from(keyColumns, i);
 
-            if (!currKey.equals(prevKey)) {
+            if (i > 0 && !isSameGroup(keyColumns, i - 1, i)) {
                 // Reset window if group changes
                 windowStart = i;
                 Arrays.fill(sums, 0.0);
-                prevKey = currKey;
             }
 
             // Slide window start to maintain [ts - window, ts]
@@ -108,4 +106,26 @@ public class SlidingWindowAggregator {
         resultTable.addColumns(outputColumns);
         return resultTable;
     }
+
+    /**
+     * Compare the keys of two rows in place instead of materializing a key object per row.
+     * Dictionary encoded strings are compared by their codes.
+     */
+    private static boolean isSameGroup(List<Column> keyColumns, int prevRow, int row) {
+        for (int i = 0, size = keyColumns.size(); i < size; i++) {
+            Column column = keyColumns.get(i);
+            if (column instanceof DictionaryStringColumn dictionaryColumn) {
+                if (dictionaryColumn.getCode(prevRow) != dictionaryColumn.getCode(row)) {
+                    return false;
+                }
+            } else if (column instanceof LongColumn) {
+                if (column.getLong(prevRow) != column.getLong(row)) {
+                    return false;
+                }
+            } else if (!Objects.equals(column.getObject(prevRow), column.getObject(row))) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -0,0 +1,61 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.datasource.reader.jdbc.rollup;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * A table that holds the pre-aggregated rows of a metric table at a coarser granularity.
+ * A row at timestamp T holds the aggregation of all rows in [T, T + granularity) of the raw table,
+ * and it has exactly the same columns as the raw table.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class RollupTable {
+    @Getter
+    private final String name;
+
+    @Getter
+    private final Duration granularity;
+
+    private final LongSupplier watermark;
+
+    /**
+     * @param watermark supplies the timestamp in milliseconds before which all rows have been rolled up into this table
+     */
+    public RollupTable(String name, Duration granularity, LongSupplier watermark) {
+        this.name = name;
+        this.granularity = granularity;
+        this.watermark = watermark;
+    }
+
+    /**
+     * @return exclusive timestamp in milliseconds. Rows before this timestamp are complete in this table
+     */
+    public long getWatermark() {
+        return watermark.getAsLong();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
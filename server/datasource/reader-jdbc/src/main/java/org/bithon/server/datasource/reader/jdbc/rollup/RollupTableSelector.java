@@ -0,0 +1,316 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.datasource.reader.jdbc.rollup;
+
+import lombok.Getter;
+import org.bithon.component.commons.expression.ComparisonExpression;
+import org.bithon.component.commons.expression.FunctionExpression;
+import org.bithon.component.commons.expression.IDataType;
+import org.bithon.component.commons.expression.IExpression;
+import org.bithon.component.commons.expression.IExpressionInDepthVisitor;
+import org.bithon.component.commons.expression.IdentifierExpression;
+import org.bithon.component.commons.expression.LogicalExpression;
+import org.bithon.component.commons.expression.function.builtin.AggregateFunction;
+import org.bithon.server.commons.time.TimeSpan;
+import org.bithon.server.datasource.DefaultSchema;
+import org.bithon.server.datasource.column.ExpressionColumn;
+import org.bithon.server.datasource.column.IColumn;
+import org.bithon.server.datasource.column.aggregatable.histogram.AggregateHistogramColumn;
+import org.bithon.server.datasource.column.aggregatable.last.AggregateLastColumn;
+import org.bithon.server.datasource.column.aggregatable.max.AggregateMaxColumn;
+import org.bithon.server.datasource.column.aggregatable.min.AggregateMinColumn;
+import org.bithon.server.datasource.column.aggregatable.sum.AggregateSumColumn;
+import org.bithon.server.datasource.query.Query;
+import org.bithon.server.datasource.query.ast.Column;
+import org.bithon.server.datasource.query.ast.ExpressionNode;
+import org.bithon.server.datasource.query.ast.IASTNode;
+import org.bithon.server.datasource.query.ast.Selector;
+import org.bithon.server.datasource.reader.jdbc.dialect.ISqlDialect;
+import org.bithon.server.datasource.reader.jdbc.statement.ast.SelectStatement;
+import org.bithon.server.datasource.reader.jdbc.statement.ast.TableIdentifier;
+import org.bithon.server.datasource.reader.jdbc.statement.ast.UnionAllStatement;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Picks the coarsest rollup table that is able to serve an aggregation query, and rewrites the SQL to read from it.
+ * <p>
+ * A rollup table can be used only when
+ * <ul>
+ *     <li>all aggregations are re-aggregatable, that is, sum/max/min/last over the columns aggregated in the same way, or quantile over histograms</li>
+ *     <li>the filter and group-by only refer to dimensions</li>
+ *     <li>the step of the query is a multiple of the granularity of the rollup table, so that a rollup row never spans two buckets</li>
+ * </ul>
+ * The range that has not been rolled up yet (or is not aligned to the granularity) is still read from the raw table,
+ * the two parts are combined by a UNION ALL derived table.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class RollupTableSelector {
+
+    @Getter
+    public static class Selection {
+        private final RollupTable table;
+
+        /**
+         * The range [start, end) that is served by the rollup table
+         */
+        private final TimeSpan start;
+        private final TimeSpan end;
+
+        Selection(RollupTable table, TimeSpan start, TimeSpan end) {
+            this.table = table;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Sorted from the coarsest to the finest
+     */
+    private final List<RollupTable> tables;
+
+    public RollupTableSelector(List<RollupTable> tables) {
+        this.tables = new ArrayList<>(tables);
+        this.tables.sort(Comparator.comparing(RollupTable::getGranularity).reversed());
+    }
+
+    /**
+     * @return null if no rollup table can be used
+     */
+    public Selection select(Query query) {
+        if (tables.isEmpty()
+            || query.getOffset() != null
+            || query.getInterval().getWindow() != null
+            || !isRollupSafe(query)) {
+            return null;
+        }
+
+        long start = query.getInterval().getStartTime().getMilliseconds();
+        long end = query.getInterval().getEndTime().getMilliseconds();
+        Duration step = query.getInterval().getStep();
+
+        for (RollupTable table : tables) {
+            long granularity = table.getGranularity().toMillis();
+            if (step != null && step.toMillis() % granularity != 0) {
+                continue;
+            }
+
+            long rollupStart = (start + granularity - 1) / granularity * granularity;
+            long rollupEnd = Math.min(end / granularity * granularity, table.getWatermark());
+            if (rollupEnd > rollupStart) {
+                return new Selection(table, TimeSpan.fromMilliseconds(rollupStart), TimeSpan.fromMilliseconds(rollupEnd));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replace the raw table in the FROM clause(s) of the given statement by the selected rollup table.
+     * The replacement is aliased as the raw table so that qualified identifiers in the statement remain valid.
+     */
+    public static void rewrite(SelectStatement statement, Query query, Selection selection, ISqlDialect sqlDialect) {
+        String rawTable = query.getSchema().getDataStoreSpec().getStore();
+
+        IASTNode replacement;
+        if (selection.getStart().getMilliseconds() <= query.getInterval().getStartTime().getMilliseconds()
+            && selection.getEnd().getMilliseconds() >= query.getInterval().getEndTime().getMilliseconds()) {
+            replacement = new TableIdentifier(selection.getTable().getName());
+        } else {
+            replacement = createUnion(query, selection, sqlDialect);
+        }
+
+        for (SelectStatement s = statement; s != null; ) {
+            if (s.getFrom().getExpression() instanceof TableIdentifier table
+                && !table.getIdentifier().isQualified()
+                && rawTable.equals(table.getIdentifier().getIdentifier())) {
+                s.getFrom().setExpression(replacement);
+                if (s.getFrom().getAlias() == null) {
+                    s.getFrom().setAlias(rawTable);
+                }
+                break;
+            }
+            s = s.getFrom().getExpression() instanceof SelectStatement nested ? nested : null;
+        }
+    }
+
+    private static UnionAllStatement createUnion(Query query, Selection selection, ISqlDialect sqlDialect) {
+        DefaultSchema schema = (DefaultSchema) query.getSchema();
+        String timestampColumn = schema.getTimestampSpec().getColumnName();
+
+        IExpression rollupStart = sqlDialect.toISO8601TimestampExpression(selection.getStart());
+        IExpression rollupEnd = sqlDialect.toISO8601TimestampExpression(selection.getEnd());
+
+        SelectStatement rollup = createBranch(schema, selection.getTable().getName());
+        rollup.getWhere().and(new ComparisonExpression.GTE(IdentifierExpression.of(timestampColumn), rollupStart));
+        rollup.getWhere().and(new ComparisonExpression.LT(IdentifierExpression.of(timestampColumn), rollupEnd));
+
+        SelectStatement raw = createBranch(schema, schema.getDataStoreSpec().getStore());
+        raw.getWhere().and(new ComparisonExpression.GTE(IdentifierExpression.of(timestampColumn),
+                                                        sqlDialect.toISO8601TimestampExpression(query.getInterval().getStartTime())));
+        raw.getWhere().and(new ComparisonExpression.LT(IdentifierExpression.of(timestampColumn),
+                                                       sqlDialect.toISO8601TimestampExpression(query.getInterval().getEndTime())));
+        raw.getWhere().and(new LogicalExpression.OR(new ComparisonExpression.LT(IdentifierExpression.of(timestampColumn), rollupStart),
+                                                    new ComparisonExpression.GTE(IdentifierExpression.of(timestampColumn), rollupEnd)));
+
+        return new UnionAllStatement(List.of(rollup, raw));
+    }
+
+    private static SelectStatement createBranch(DefaultSchema schema, String table) {
+        SelectStatement branch = new SelectStatement();
+        branch.getFrom().setExpression(new TableIdentifier(table));
+        branch.getSelectorList().add(new Column(schema.getTimestampSpec().getColumnName()), IDataType.DATETIME_MILLI);
+        for (IColumn dimension : schema.getDimensionsSpec()) {
+            branch.getSelectorList().add(new Column(dimension.getName()), dimension.getDataType());
+        }
+        for (IColumn metric : schema.getMetricsSpec()) {
+            if (!(metric instanceof ExpressionColumn)) {
+                branch.getSelectorList().add(new Column(metric.getName()), metric.getDataType());
+            }
+        }
+        return branch;
+    }
+
+    static boolean isRollupSafe(Query query) {
+        if (!(query.getSchema() instanceof DefaultSchema schema)) {
+            return false;
+        }
+
+        for (String groupBy : query.getGroupBy()) {
+            if (!isDimension(schema, groupBy)) {
+                return false;
+            }
+        }
+
+        if (query.getFilter() != null) {
+            DimensionOnlyChecker checker = new DimensionOnlyChecker(schema);
+            query.getFilter().accept(checker);
+            if (!checker.safe) {
+                return false;
+            }
+        }
+
+        for (Selector selector : query.getSelectors()) {
+            if (selector.getSelectExpression() instanceof Column column) {
+                if (!isReaggregatable(schema, column.getName())) {
+                    return false;
+                }
+            } else if (selector.getSelectExpression() instanceof ExpressionNode expressionNode) {
+                if (!isReaggregatable(schema, expressionNode.getParsedExpression())) {
+                    return false;
+                }
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDimension(DefaultSchema schema, String name) {
+        if (name.equals(schema.getTimestampSpec().getColumnName())) {
+            return true;
+        }
+        for (IColumn dimension : schema.getDimensionsSpec()) {
+            if (dimension.getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A column referenced without an aggregator is aggregated by its default aggregator
+     */
+    private static boolean isReaggregatable(DefaultSchema schema, String name) {
+        if (isDimension(schema, name)) {
+            return true;
+        }
+
+        IColumn column = schema.getColumnByName(name);
+        if (column instanceof ExpressionColumn expressionColumn) {
+            return isReaggregatable(schema, new ExpressionNode(schema, expressionColumn.getExpression()).getParsedExpression());
+        }
+        return column instanceof AggregateSumColumn
+               || column instanceof AggregateMaxColumn
+               || column instanceof AggregateMinColumn
+               || column instanceof AggregateLastColumn
+               || column instanceof AggregateHistogramColumn;
+    }
+
+    private static boolean isReaggregatable(DefaultSchema schema, IExpression expression) {
+        ReaggregationChecker checker = new ReaggregationChecker(schema);
+        expression.accept(checker);
+        return checker.safe;
+    }
+
+    private static class ReaggregationChecker implements IExpressionInDepthVisitor {
+        private final DefaultSchema schema;
+        private boolean safe = true;
+
+        ReaggregationChecker(DefaultSchema schema) {
+            this.schema = schema;
+        }
+
+        @Override
+        public boolean visit(FunctionExpression expression) {
+            if (!(expression.getFunction() instanceof AggregateFunction)) {
+                return true;
+            }
+
+            IColumn column = expression.getArgs().isEmpty() || !(expression.getArgs().get(0) instanceof IdentifierExpression identifier)
+                             ? null
+                             : schema.getColumnByName(identifier.getIdentifier());
+            boolean reaggregatable = switch (expression.getFunction().getName()) {
+                case "sum" -> column instanceof AggregateSumColumn;
+                case "max" -> column instanceof AggregateMaxColumn;
+                case "min" -> column instanceof AggregateMinColumn;
+                case "last" -> column instanceof AggregateLastColumn;
+                case "quantile" -> column instanceof AggregateHistogramColumn;
+                default -> false;
+            };
+            safe &= reaggregatable;
+
+            // Arguments have been checked
+            return false;
+        }
+
+        @Override
+        public boolean visit(IdentifierExpression expression) {
+            safe &= isReaggregatable(schema, expression.getIdentifier());
+            return true;
+        }
+    }
+
+    private static class DimensionOnlyChecker implements IExpressionInDepthVisitor {
+        private final DefaultSchema schema;
+        private boolean safe = true;
+
+        DimensionOnlyChecker(DefaultSchema schema) {
+            this.schema = schema;
+        }
+
+        @Override
+        public boolean visit(IdentifierExpression expression) {
+            safe &= isDimension(schema, expression.getIdentifier());
+            return true;
+        }
+    }
+}
@@ -381,6 +381,12 @@ public class SelectStatementBuilder {
                             throw new InvalidExpressionException("Aggregator [%s] is not allowed in another aggregator [%s].", inputArg.serializeToText(), functionCallExpression.getName());
                         }
 
+                        if (functionCallExpression.getFunction() instanceof AggregateFunction.Quantile
+                            && (pipeline.postAggregation != null || hasSlidingWindowAggregation())) {
+                            // The quantile is calculated after the query on the histograms returned by the DBMS
+                            throw new InvalidExpressionException("Aggregator [%s] can only be used as a top level expression without sliding window.", functionCallExpression.getName());
+                        }
+
                         String output;
                         IDataType dataType;
                         if (pipeline.postAggregation == null) {
@@ -120,6 +120,13 @@ public class Expression2Sql extends ExpressionSerializer {
             return;
         }
 
+        if (expression.getFunction() instanceof AggregateFunction.Quantile) {
+            // Histograms are merged and the quantile is calculated after the query, see JdbcReadStep
+            String column = ((IdentifierExpression) expression.getArgs().get(0)).getIdentifier();
+            sb.append(this.sqlDialect.histogramAggregator(column));
+            return;
+        }
+
         super.serialize(expression);
     }
 
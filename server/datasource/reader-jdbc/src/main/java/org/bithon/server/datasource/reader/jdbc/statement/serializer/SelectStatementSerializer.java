@@ -31,6 +31,7 @@ import org.bithon.server.datasource.reader.jdbc.statement.ast.OrderByClause;
 import org.bithon.server.datasource.reader.jdbc.statement.ast.SelectStatement;
 import org.bithon.server.datasource.reader.jdbc.statement.ast.TableIdentifier;
 import org.bithon.server.datasource.reader.jdbc.statement.ast.TextNode;
+import org.bithon.server.datasource.reader.jdbc.statement.ast.UnionAllStatement;
 import org.bithon.server.datasource.reader.jdbc.statement.ast.WhereClause;
 
 import java.util.List;
@@ -193,6 +194,8 @@ public class SelectStatementSerializer {
             this.generateTableIdentifier(tableIdentifier);
         } else if (from.getExpression() instanceof SelectStatement) {
             this.generate((SelectStatement) from.getExpression());
+        } else if (from.getExpression() instanceof UnionAllStatement union) {
+            this.generateUnionAll(union);
         } else {
             throw new RuntimeException("Unsupported expression type: " + from.getExpression().getClass());
         }
@@ -202,6 +205,29 @@ public class SelectStatementSerializer {
         }
     }
 
+    private void generateUnionAll(UnionAllStatement union) {
+        sql.append('\n');
+        sql.append(indent);
+        sql.append('(');
+        for (int i = 0, size = union.getStatements().size(); i < size; i++) {
+            if (i > 0) {
+                sql.append('\n');
+                sql.append(indent);
+                sql.append("  UNION ALL");
+            }
+
+            // Each branch is serialized as a top level statement so that it's not enclosed by parentheses
+            SelectStatementSerializer serializer = new SelectStatementSerializer(this.sqlDialect);
+            serializer.indent = this.indent + "  ";
+            serializer.generate(union.getStatements().get(i));
+            sql.append('\n');
+            sql.append(serializer.getSQL());
+        }
+        sql.append('\n');
+        sql.append(indent);
+        sql.append(')');
+    }
+
     private void generateTableIdentifier(TableIdentifier table) {
         sql.append(' ');
         if (table.getIdentifier().isQualified()) {
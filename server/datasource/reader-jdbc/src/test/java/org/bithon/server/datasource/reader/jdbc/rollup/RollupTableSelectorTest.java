@@ -0,0 +1,163 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.datasource.reader.jdbc.rollup;
+
+import org.bithon.component.commons.expression.ComparisonExpression;
+import org.bithon.component.commons.expression.IExpression;
+import org.bithon.component.commons.expression.IdentifierExpression;
+import org.bithon.component.commons.expression.LiteralExpression;
+import org.bithon.server.commons.time.TimeSpan;
+import org.bithon.server.datasource.DefaultSchema;
+import org.bithon.server.datasource.column.ExpressionColumn;
+import org.bithon.server.datasource.column.StringColumn;
+import org.bithon.server.datasource.column.aggregatable.histogram.AggregateHistogramColumn;
+import org.bithon.server.datasource.column.aggregatable.last.AggregateLongLastColumn;
+import org.bithon.server.datasource.column.aggregatable.max.AggregateLongMaxColumn;
+import org.bithon.server.datasource.column.aggregatable.sum.AggregateLongSumColumn;
+import org.bithon.server.datasource.query.Interval;
+import org.bithon.server.datasource.query.Query;
+import org.bithon.server.datasource.query.ast.Column;
+import org.bithon.server.datasource.query.ast.ExpressionNode;
+import org.bithon.server.datasource.query.ast.Selector;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class RollupTableSelectorTest {
+
+    private static final long DAY = Duration.ofDays(1).toMillis();
+    private static final long HOUR = Duration.ofHours(1).toMillis();
+
+    /**
+     * 2023-11-15 00:00:00 UTC
+     */
+    private static final long NOW = 1_700_006_400_000L;
+
+    private final DefaultSchema schema = new DefaultSchema("test-metrics",
+                                                           "test-metrics",
+                                                           null,
+                                                           Arrays.asList(new StringColumn("appName", "appName"),
+                                                                         new StringColumn("instanceName", "instanceName")),
+                                                           Arrays.asList(new AggregateLongSumColumn("totalCount", "totalCount"),
+                                                                         new AggregateLongSumColumn("responseTime", "responseTime"),
+                                                                         new AggregateLongMaxColumn("maxResponseTime", "maxResponseTime"),
+                                                                         new AggregateLongLastColumn("activeThreads", "activeThreads"),
+                                                                         new AggregateHistogramColumn("responseTimeHistogram", "responseTimeHistogram"),
+                                                                         new ExpressionColumn("avgResponseTime",
+                                                                                              null,
+                                                                                              "sum(responseTime) / sum(totalCount)",
+                                                                                              "double")));
+
+    private final RollupTableSelector selector = new RollupTableSelector(List.of(
+        new RollupTable("t_1d", Duration.ofDays(1), () -> NOW - DAY),
+        new RollupTable("t_1m", Duration.ofMinutes(1), () -> NOW - Duration.ofMinutes(6).toMillis()),
+        new RollupTable("t_1h", Duration.ofHours(1), () -> NOW - HOUR)
+    ));
+
+    private Query query(long start, long end, Duration step, IExpression filter, List<String> groupBy, String... expressions) {
+        List<Selector> selectors = Arrays.stream(expressions)
+                                         .map((expr) -> new Selector(new ExpressionNode(schema, expr), "v"))
+                                         .toList();
+        return Query.builder()
+                    .schema(schema)
+                    .selectors(selectors)
+                    .filter(filter)
+                    .interval(Interval.of(TimeSpan.fromMilliseconds(start),
+                                          TimeSpan.fromMilliseconds(end),
+                                          step,
+                                          new IdentifierExpression("timestamp")))
+                    .groupBy(groupBy)
+                    .isAggregateQuery(true)
+                    .build();
+    }
+
+    @Test
+    public void testPickCoarsestTierThatFitsTheStep() {
+        long start = NOW - 30 * DAY + 123;
+
+        RollupTableSelector.Selection selection = selector.select(query(start, NOW, Duration.ofDays(1), null, List.of(), "sum(totalCount)"));
+        Assertions.assertNotNull(selection);
+        Assertions.assertEquals("t_1d", selection.getTable().getName());
+        Assertions.assertEquals(NOW - 29 * DAY, selection.getStart().getMilliseconds());
+        Assertions.assertEquals(NOW - DAY, selection.getEnd().getMilliseconds());
+
+        // The 1d tier does not fit the step
+        selection = selector.select(query(start, NOW, Duration.ofHours(4), null, List.of("appName"), "max(maxResponseTime)", "last(activeThreads)"));
+        Assertions.assertNotNull(selection);
+        Assertions.assertEquals("t_1h", selection.getTable().getName());
+        Assertions.assertEquals(NOW - 30 * DAY + HOUR, selection.getStart().getMilliseconds());
+        Assertions.assertEquals(NOW - HOUR, selection.getEnd().getMilliseconds());
+
+        selection = selector.select(query(start, NOW, Duration.ofSeconds(90), null, List.of(), "sum(totalCount)"));
+        Assertions.assertNull(selection);
+    }
+
+    @Test
+    public void testFallbackToFinerTierWhenCoarserOneIsNotReady() {
+        // The last 3 hours have not been rolled up by the 1d tier
+        long start = NOW - 3 * HOUR;
+        RollupTableSelector.Selection selection = selector.select(query(start, NOW, Duration.ofHours(1), null, List.of(), "sum(totalCount)"));
+        Assertions.assertNotNull(selection);
+        Assertions.assertEquals("t_1h", selection.getTable().getName());
+
+        // Only the 1m tier covers the last 30 minutes
+        selection = selector.select(query(NOW - Duration.ofMinutes(30).toMillis(), NOW, Duration.ofMinutes(1), null, List.of(), "sum(totalCount)"));
+        Assertions.assertNotNull(selection);
+        Assertions.assertEquals("t_1m", selection.getTable().getName());
+        Assertions.assertEquals(NOW - Duration.ofMinutes(6).toMillis(), selection.getEnd().getMilliseconds());
+    }
+
+    @Test
+    public void testReaggregatableExpressions() {
+        long start = NOW - 7 * DAY;
+
+        Assertions.assertNotNull(selector.select(query(start, NOW, Duration.ofHours(1), null, List.of(), "avgResponseTime")));
+        Assertions.assertNotNull(selector.select(query(start, NOW, Duration.ofHours(1), null, List.of(), "round(sum(responseTime) / sum(totalCount), 2)")));
+        Assertions.assertNotNull(selector.select(query(start, NOW, Duration.ofHours(1), null, List.of(), "quantile(responseTimeHistogram, 0.99)")));
+
+        // The result differs when computed over pre-aggregated rows
+        Assertions.assertNull(selector.select(query(start, NOW, Duration.ofHours(1), null, List.of(), "count(1)")));
+        Assertions.assertNull(selector.select(query(start, NOW, Duration.ofHours(1), null, List.of(), "avg(totalCount)")));
+        Assertions.assertNull(selector.select(query(start, NOW, Duration.ofHours(1), null, List.of(), "max(totalCount)")));
+    }
+
+    @Test
+    public void testFilterAndGroupByOnDimensionsOnly() {
+        long start = NOW - 7 * DAY;
+
+        IExpression dimensionFilter = new ComparisonExpression.EQ(new IdentifierExpression("appName"), LiteralExpression.ofString("a"));
+        Assertions.assertNotNull(selector.select(query(start, NOW, Duration.ofHours(1), dimensionFilter, List.of("instanceName"), "sum(totalCount)")));
+
+        IExpression metricFilter = new ComparisonExpression.GT(new IdentifierExpression("maxResponseTime"), LiteralExpression.ofLong(100));
+        Assertions.assertNull(selector.select(query(start, NOW, Duration.ofHours(1), metricFilter, List.of(), "sum(totalCount)")));
+
+        Query columnSelector = Query.builder()
+                                    .schema(schema)
+                                    .selectors(List.of(new Selector(new Column("totalCount"), "totalCount", null)))
+                                    .interval(Interval.of(TimeSpan.fromMilliseconds(start), TimeSpan.fromMilliseconds(NOW), Duration.ofHours(1), new IdentifierExpression("timestamp")))
+                                    .groupBy(List.of("totalCount"))
+                                    .isAggregateQuery(true)
+                                    .build();
+        Assertions.assertNull(selector.select(columnSelector));
+    }
+}
@@ -49,6 +49,8 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /**
  * @author frank.chen021@outlook.com
@@ -99,10 +101,23 @@ public class MetricQueryApi {
         TimeSpan start = request.getInterval().getStartISO8601();
         TimeSpan end = request.getInterval().getEndISO8601();
 
-        return toTimeSeriesQueryResponse(start.floor(step).getMilliseconds(),
-                                         end.floor(step).getMilliseconds(),
-                                         step.toMillis(),
-                                         pipeline.execute().get());
+        CompletableFuture<PipelineQueryResult> result = pipeline.execute();
+        try {
+            return toTimeSeriesQueryResponse(start.floor(step).getMilliseconds(),
+                                             end.floor(step).getMilliseconds(),
+                                             step.toMillis(),
+                                             result.get());
+        } catch (InterruptedException e) {
+            // Release the execution slots of running queries
+            result.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            // Unwrap the exception so that it's mapped to the right HTTP status, e.g., 429 for QueryRejectedException
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
     }
 
     @VisibleForTesting
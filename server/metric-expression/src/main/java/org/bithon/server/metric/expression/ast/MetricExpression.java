@@ -140,7 +140,7 @@ public class MetricExpression implements IExpression {
         return sb.toString();
     }
 
-    static class SqlStyleSerializer extends ExpressionSerializer {
+    public static class SqlStyleSerializer extends ExpressionSerializer {
         public SqlStyleSerializer() {
             super(null);
         }
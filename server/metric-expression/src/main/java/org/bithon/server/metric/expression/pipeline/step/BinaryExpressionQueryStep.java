@@ -118,19 +118,30 @@ public abstract class BinaryExpressionQueryStep implements IQueryStep {
         CompletableFuture<PipelineQueryResult> leftFuture = this.lhs.execute();
         CompletableFuture<PipelineQueryResult> rightFuture = this.rhs.execute();
 
+        CompletableFuture<PipelineQueryResult> result;
         if (lhs.isScalar()) {
             if (rhs.isScalar()) {
-                return applyScalarOverScalar(leftFuture, rightFuture);
+                result = applyScalarOverScalar(leftFuture, rightFuture);
             } else {
-                return applyScalarOverVector(leftFuture, rightFuture);
+                result = applyScalarOverVector(leftFuture, rightFuture);
             }
         } else {
             if (rhs.isScalar()) {
-                return applyVectorOverScalar(leftFuture, rightFuture);
+                result = applyVectorOverScalar(leftFuture, rightFuture);
             } else {
-                return applyVectorOverVector(leftFuture, rightFuture);
+                result = applyVectorOverVector(leftFuture, rightFuture);
             }
         }
+
+        // If one side fails or the result is cancelled, the other side is no longer needed.
+        // Cancel both so that the running queries release their execution slots early
+        result.whenComplete((r, e) -> {
+            if (e != null) {
+                leftFuture.cancel(true);
+                rightFuture.cancel(true);
+            }
+        });
+        return result;
     }
 
     @Override
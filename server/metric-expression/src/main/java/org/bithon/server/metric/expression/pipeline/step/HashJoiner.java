@@ -16,22 +16,34 @@
 
 package org.bithon.server.metric.expression.pipeline.step;
 
-import org.bithon.component.commons.utils.CollectionUtils;
+import org.bithon.component.commons.expression.IDataType;
 import org.bithon.server.datasource.query.pipeline.Column;
 import org.bithon.server.datasource.query.pipeline.ColumnarTable;
-import org.bithon.server.datasource.query.pipeline.CompositeKey;
+import org.bithon.server.datasource.query.pipeline.DictionaryStringColumn;
+import org.bithon.server.datasource.query.pipeline.DoubleColumn;
+import org.bithon.server.datasource.query.pipeline.LongColumn;
+import org.bithon.server.datasource.query.pipeline.StringColumn;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
 
 /**
+ * Inner join two tables on given key columns.
+ * <p>
+ * The hash table is built over the row indexes of the left table with open addressing,
+ * rows sharing the same key are chained by an int array.
+ * Key columns are read into primitive arrays once, so that neither the build nor the probe boxes any value.
+ * Matched row pairs are collected first and then the result columns are gathered column by column.
+ *
  * @author frank.chen021@outlook.com
  * @date 7/4/25 10:20 am
  */
 public class HashJoiner {
 
+    private static final int EMPTY = -1;
+
     public static List<Column> join(
         ColumnarTable left,
         ColumnarTable right,
@@ -41,73 +53,320 @@ public class HashJoiner {
         List<Column> leftJoinColumns = joinKeys.stream()
                                                .map(left::getColumn)
                                                .toList();
+        List<Column> rightJoinColumns = joinKeys.stream()
+                                                .map(right::getColumn)
+                                                .toList();
+
+        int leftRows = left.rowCount();
+        int rightRows = right.rowCount();
+
+        KeyVector[] leftKeys = new KeyVector[joinKeys.size()];
+        KeyVector[] rightKeys = new KeyVector[joinKeys.size()];
+        for (int i = 0; i < leftKeys.length; i++) {
+            Column l = leftJoinColumns.get(i);
+            Column r = rightJoinColumns.get(i);
+            if (l instanceof DictionaryStringColumn ld && r instanceof DictionaryStringColumn rd) {
+                // Compare dictionary codes instead of strings.
+                // The right codes are translated into the left dictionary, values that are not in the left never match
+                int[] translation = rd.getDictionary().translateTo(ld.getDictionary());
+                int[] rightCodes = rd.getCodes();
+                for (int j = 0; j < rightCodes.length; j++) {
+                    rightCodes[j] = translation[rightCodes[j]];
+                }
+                leftKeys[i] = new CodeKeyVector(ld.getCodes());
+                rightKeys[i] = new CodeKeyVector(rightCodes);
+            } else if (l.getDataType().equals(r.getDataType())) {
+                leftKeys[i] = KeyVector.of(l, leftRows);
+                rightKeys[i] = KeyVector.of(r, rightRows);
+            } else {
+                // Keys of different types never match, same as comparing boxed values
+                leftKeys[i] = new ObjectKeyVector(l);
+                rightKeys[i] = new ObjectKeyVector(r);
+            }
+        }
 
         //
         // Build hash table for key probe
         //
-        Map<CompositeKey, List<Integer>> hashTable = toHashTable(left, leftJoinColumns);
+        int capacity = tableSizeFor(Math.max(2, leftRows * 2));
+        int mask = capacity - 1;
+        int[] slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        int[] next = new int[leftRows];
+        int[] hashes = new int[leftRows];
+
+        // Iterate in reverse order so that rows of the same key are chained in ascending order
+        for (int row = leftRows - 1; row >= 0; row--) {
+            int hash = hash(leftKeys, row);
+            hashes[row] = hash;
+
+            int slot = hash & mask;
+            while (true) {
+                int head = slots[slot];
+                if (head == EMPTY) {
+                    slots[slot] = row;
+                    next[row] = EMPTY;
+                    break;
+                }
+                if (hashes[head] == hash && equals(leftKeys, head, leftKeys, row)) {
+                    next[row] = head;
+                    slots[slot] = row;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        //
+        // Probe
+        //
+        IntArray leftSelection = new IntArray(Math.max(leftRows, rightRows));
+        IntArray rightSelection = new IntArray(Math.max(leftRows, rightRows));
+        for (int rightRowIndex = 0; rightRowIndex < rightRows; rightRowIndex++) {
+            int hash = hash(rightKeys, rightRowIndex);
+
+            int slot = hash & mask;
+            for (int head = slots[slot]; head != EMPTY; head = slots[slot]) {
+                if (hashes[head] == hash && equals(leftKeys, head, rightKeys, rightRowIndex)) {
+                    for (int matchedLeftRow = head; matchedLeftRow != EMPTY; matchedLeftRow = next[matchedLeftRow]) {
+                        leftSelection.add(matchedLeftRow);
+                        rightSelection.add(rightRowIndex);
+                    }
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
 
         //
-        // Prepare result
+        // Build result
         //
         List<Column> resultColumns = new ArrayList<>(joinKeys.size() + leftValueColumns.size() + rightValueColumn.size());
-        for (String col : joinKeys) {
-            Column c = Column.create(col,
-                                     left.getColumn(col).getDataType().name(),
-                                     hashTable.size());
-            resultColumns.add(c);
+        for (Column col : leftJoinColumns) {
+            resultColumns.add(gather(col, leftSelection));
         }
         for (Column col : leftValueColumns) {
-            Column c = Column.create(col.getName(),
-                                     left.getColumn(col.getName()).getDataType(),
-                                     hashTable.size());
-            resultColumns.add(c);
+            resultColumns.add(gather(col, leftSelection));
         }
         for (Column col : rightValueColumn) {
-            Column c = Column.create(col.getName(),
-                                     right.getColumn(col.getName()).getDataType().name(),
-                                     hashTable.size());
-            resultColumns.add(c);
+            resultColumns.add(gather(col, rightSelection));
         }
+        return resultColumns;
+    }
 
-        // Probe and build result
-        List<Column> rightJoinColumns = joinKeys.stream()
-                                                .map(right::getColumn)
-                                                .toList();
+    private static int hash(KeyVector[] keys, int row) {
+        int h = 1;
+        for (KeyVector key : keys) {
+            h = 31 * h + key.hash(row);
+        }
+        // Spread the bits because the table size is power of 2
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equals(KeyVector[] leftKeys, int leftRow, KeyVector[] rightKeys, int rightRow) {
+        for (int i = 0; i < leftKeys.length; i++) {
+            if (!leftKeys[i].equals(leftRow, rightKeys[i], rightRow)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int tableSizeFor(int n) {
+        int size = Integer.highestOneBit(n - 1) << 1;
+        return size <= 0 ? 1 << 30 : size;
+    }
+
+    /**
+     * Copy the selected rows of the column into a new column of the same type
+     */
+    private static Column gather(Column column, IntArray selection) {
+        int[] rows = selection.data;
+        int size = selection.size;
+        String name = column.getName();
 
-        for (int rightRowIndex = 0; rightRowIndex < right.rowCount(); rightRowIndex++) {
-            CompositeKey key = CompositeKey.from(rightJoinColumns, rightRowIndex);
-            List<Integer> matchedLeftRows = hashTable.get(key);
-            if (CollectionUtils.isEmpty(matchedLeftRows)) {
-                continue;
+        if (column instanceof DictionaryStringColumn dictionaryColumn) {
+            // Keep the result encoded by sharing the dictionary
+            int[] codes = new int[size];
+            for (int i = 0; i < size; i++) {
+                codes[i] = dictionaryColumn.getCode(rows[i]);
             }
+            return new DictionaryStringColumn(name, dictionaryColumn.getDictionary(), codes, size);
+        }
+
+        IDataType type = column.getDataType();
+        if (type == IDataType.LONG || type == IDataType.DATETIME_MILLI) {
+            long[] data = new long[size];
+            for (int i = 0; i < size; i++) {
+                data[i] = column.getLong(rows[i]);
+            }
+            return new LongColumn(name, data);
+        }
+        if (type == IDataType.DOUBLE) {
+            double[] data = new double[size];
+            for (int i = 0; i < size; i++) {
+                data[i] = column.getDouble(rows[i]);
+            }
+            return new DoubleColumn(name, data);
+        }
+        if (type == IDataType.STRING) {
+            String[] data = new String[size];
+            for (int i = 0; i < size; i++) {
+                data[i] = column.getString(rows[i]);
+            }
+            return new StringColumn(name, data);
+        }
+
+        Column result = Column.create(name, type, size);
+        for (int i = 0; i < size; i++) {
+            result.addObject(column.getObject(rows[i]));
+        }
+        return result;
+    }
+
+    private static class IntArray {
+        private int[] data;
+        private int size;
 
-            for (int matchedLeftRow : matchedLeftRows) {
-                int resultColumnIndex = 0;
-                for (Column col : leftJoinColumns) {
-                    resultColumns.get(resultColumnIndex++).addObject(col.getObject(matchedLeftRow));
+        IntArray(int capacity) {
+            this.data = new int[Math.max(16, capacity)];
+        }
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, data.length * 3 / 2);
+            }
+            data[size++] = value;
+        }
+    }
+
+    /**
+     * Values of a key column that are read into a primitive array for hashing and comparison
+     */
+    private abstract static class KeyVector {
+        abstract int hash(int row);
+
+        /**
+         * @param other a key vector of the same type
+         */
+        abstract boolean equals(int row, KeyVector other, int otherRow);
+
+        static KeyVector of(Column column, int rows) {
+            IDataType type = column.getDataType();
+            if (type == IDataType.LONG || type == IDataType.DATETIME_MILLI) {
+                long[] values = new long[rows];
+                for (int i = 0; i < rows; i++) {
+                    values[i] = column.getLong(i);
                 }
-                for (Column col : leftValueColumns) {
-                    resultColumns.get(resultColumnIndex++).addObject(col.getObject(matchedLeftRow));
+                return new LongKeyVector(values);
+            }
+            if (type == IDataType.DOUBLE) {
+                double[] values = new double[rows];
+                for (int i = 0; i < rows; i++) {
+                    values[i] = column.getDouble(i);
                 }
-                for (Column col : rightValueColumn) {
-                    resultColumns.get(resultColumnIndex++).addObject(col.getObject(rightRowIndex));
+                return new DoubleKeyVector(values);
+            }
+            if (type == IDataType.STRING) {
+                String[] values = new String[rows];
+                for (int i = 0; i < rows; i++) {
+                    values[i] = column.getString(i);
                 }
+                return new StringKeyVector(values);
             }
+            return new ObjectKeyVector(column);
         }
+    }
 
-        return resultColumns;
+    private static class LongKeyVector extends KeyVector {
+        private final long[] values;
+
+        LongKeyVector(long[] values) {
+            this.values = values;
+        }
+
+        @Override
+        int hash(int row) {
+            return Long.hashCode(values[row]);
+        }
+
+        @Override
+        boolean equals(int row, KeyVector other, int otherRow) {
+            return values[row] == ((LongKeyVector) other).values[otherRow];
+        }
     }
 
-    private static Map<CompositeKey, List<Integer>> toHashTable(ColumnarTable table,
-                                                                List<Column> columns) {
-        Map<CompositeKey, List<Integer>> hashTable = new HashMap<>();
-        for (int i = 0, rows = table.rowCount(); i < rows; i++) {
-            CompositeKey key = CompositeKey.from(columns, i);
-            hashTable.computeIfAbsent(key, k -> new ArrayList<>())
-                     .add(i);
+    private static class DoubleKeyVector extends KeyVector {
+        private final double[] values;
+
+        DoubleKeyVector(double[] values) {
+            this.values = values;
+        }
+
+        @Override
+        int hash(int row) {
+            return Double.hashCode(values[row]);
+        }
+
+        @Override
+        boolean equals(int row, KeyVector other, int otherRow) {
+            // Same semantics as Double.equals
+            return Double.doubleToLongBits(values[row]) == Double.doubleToLongBits(((DoubleKeyVector) other).values[otherRow]);
         }
-        return hashTable;
     }
-}
 
+    private static class StringKeyVector extends KeyVector {
+        private final String[] values;
+
+        StringKeyVector(String[] values) {
+            this.values = values;
+        }
+
+        @Override
+        int hash(int row) {
+            return Objects.hashCode(values[row]);
+        }
+
+        @Override
+        boolean equals(int row, KeyVector other, int otherRow) {
+            return Objects.equals(values[row], ((StringKeyVector) other).values[otherRow]);
+        }
+    }
+
+    private static class CodeKeyVector extends KeyVector {
+        private final int[] codes;
+
+        CodeKeyVector(int[] codes) {
+            this.codes = codes;
+        }
+
+        @Override
+        int hash(int row) {
+            return codes[row];
+        }
+
+        @Override
+        boolean equals(int row, KeyVector other, int otherRow) {
+            return codes[row] == ((CodeKeyVector) other).codes[otherRow];
+        }
+    }
+
+    private static class ObjectKeyVector extends KeyVector {
+        private final Column column;
+
+        ObjectKeyVector(Column column) {
+            this.column = column;
+        }
+
+        @Override
+        int hash(int row) {
+            return Objects.hashCode(column.getObject(row));
+        }
+
+        @Override
+        boolean equals(int row, KeyVector other, int otherRow) {
+            return Objects.equals(column.getObject(row), ((ObjectKeyVector) other).column.getObject(otherRow));
+        }
+    }
+}
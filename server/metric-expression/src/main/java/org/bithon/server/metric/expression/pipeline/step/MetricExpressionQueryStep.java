@@ -20,6 +20,7 @@ package org.bithon.server.metric.expression.pipeline.step;
 import org.bithon.component.commons.utils.CollectionUtils;
 import org.bithon.server.commons.time.TimeSpan;
 import org.bithon.server.datasource.TimestampSpec;
+import org.bithon.server.datasource.query.executor.QueryExecutor;
 import org.bithon.server.datasource.query.pipeline.ColumnarTable;
 import org.bithon.server.datasource.query.pipeline.IQueryStep;
 import org.bithon.server.datasource.query.pipeline.PipelineQueryResult;
@@ -27,7 +28,6 @@ import org.bithon.server.web.service.datasource.api.IDataSourceApi;
 import org.bithon.server.web.service.datasource.api.QueryField;
 import org.bithon.server.web.service.datasource.api.QueryRequest;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -78,28 +78,24 @@ public class MetricExpressionQueryStep implements IQueryStep {
         if (cachedResponse == null) {
             synchronized (this) {
                 if (cachedResponse == null) {
-                    cachedResponse = CompletableFuture.supplyAsync(() -> {
-                        try {
-                            ColumnarTable columnTable = dataSourceApi.internalTimeseries(queryRequest);
+                    cachedResponse = QueryExecutor.getInstance().submit(queryRequest.getDataSource(), (execution) -> {
+                        ColumnarTable columnTable = dataSourceApi.internalTimeseries(queryRequest);
 
-                            List<String> keys = new ArrayList<>();
-                            keys.add(TimestampSpec.COLUMN_ALIAS);
-                            keys.addAll(queryRequest.getGroupBy() != null ? queryRequest.getGroupBy() : Collections.emptySet());
+                        List<String> keys = new ArrayList<>();
+                        keys.add(TimestampSpec.COLUMN_ALIAS);
+                        keys.addAll(queryRequest.getGroupBy() != null ? queryRequest.getGroupBy() : Collections.emptySet());
 
-                            List<String> valNames = queryRequest.getFields()
-                                                                .stream()
-                                                                .map(QueryField::getName)
-                                                                .toList();
+                        List<String> valNames = queryRequest.getFields()
+                                                            .stream()
+                                                            .map(QueryField::getName)
+                                                            .toList();
 
-                            return PipelineQueryResult.builder()
-                                                      .rows(columnTable.rowCount())
-                                                      .keyColumns(keys)
-                                                      .valColumns(valNames)
-                                                      .table(columnTable)
-                                                      .build();
-                        } catch (IOException e) {
-                            throw new RuntimeException(e);
-                        }
+                        return PipelineQueryResult.builder()
+                                                  .rows(columnTable.rowCount())
+                                                  .keyColumns(keys)
+                                                  .valColumns(valNames)
+                                                  .table(columnTable)
+                                                  .build();
                     });
                 }
             }
@@ -0,0 +1,174 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.metric.expression.pipeline.step;
+
+import org.bithon.server.datasource.query.pipeline.Column;
+import org.bithon.server.datasource.query.pipeline.ColumnarTable;
+import org.bithon.server.datasource.query.pipeline.CompositeKey;
+import org.bithon.server.datasource.query.pipeline.DoubleColumn;
+import org.bithon.server.datasource.query.pipeline.LongColumn;
+import org.bithon.server.datasource.query.pipeline.StringColumn;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the vector-over-vector path of metric expressions like {@code a / b},
+ * that is, joining two result sets on (_timestamp, appName) and applying the operator on the joined value columns.
+ * <p>
+ * {@link #boxedJoinAndDivide()} is the previous implementation that keeps boxed row indexes in a {@link HashMap},
+ * it's kept here as the baseline.
+ * <p>
+ * Run {@link #main(String[])} to measure at 1, 4, 16 and 64 threads.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class HashJoinBenchmark {
+
+    private static final List<String> KEYS = List.of("_timestamp", "appName");
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    private ColumnarTable left;
+    private ColumnarTable right;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        left = createTable("a", rows, 0);
+        // Shuffle the row order so that the probe does not follow the build order
+        right = createTable("b", rows, 7);
+    }
+
+    private static ColumnarTable createTable(String valueName, int rows, int seed) {
+        // 60 data points for each series
+        int series = Math.max(1, rows / 60);
+
+        long[] timestamps = new long[rows];
+        String[] appNames = new String[rows];
+        double[] values = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            int row = (int) ((i * (long) (seed == 0 ? 1 : 7919)) % rows);
+            timestamps[i] = 1_700_000_000L + (row / series) * 60L;
+            appNames[i] = "app-" + (row % series);
+            values[i] = row + 1;
+        }
+
+        ColumnarTable table = new ColumnarTable();
+        table.addColumn(new LongColumn("_timestamp", timestamps));
+        table.addColumn(new StringColumn("appName", appNames));
+        table.addColumn(new DoubleColumn(valueName, values));
+        return table;
+    }
+
+    @Benchmark
+    public Column joinAndDivide() {
+        List<Column> columns = HashJoiner.join(left,
+                                               right,
+                                               KEYS,
+                                               List.of(left.getColumn("a")),
+                                               List.of(right.getColumn("b")));
+        return ColumnOperator.VectorOverVectorOperator.apply(columns.get(2), columns.get(3), "value", 3);
+    }
+
+    @Benchmark
+    public Column boxedJoinAndDivide() {
+        List<Column> columns = boxedJoin(left,
+                                         right,
+                                         KEYS,
+                                         List.of(left.getColumn("a")),
+                                         List.of(right.getColumn("b")));
+        return ColumnOperator.VectorOverVectorOperator.apply(columns.get(2), columns.get(3), "value", 3);
+    }
+
+    private static List<Column> boxedJoin(ColumnarTable left,
+                                          ColumnarTable right,
+                                          List<String> joinKeys,
+                                          List<Column> leftValueColumns,
+                                          List<Column> rightValueColumns) {
+        List<Column> leftJoinColumns = joinKeys.stream().map(left::getColumn).toList();
+        Map<CompositeKey, List<Integer>> hashTable = new HashMap<>();
+        for (int i = 0, n = left.rowCount(); i < n; i++) {
+            hashTable.computeIfAbsent(CompositeKey.from(leftJoinColumns, i), k -> new ArrayList<>()).add(i);
+        }
+
+        List<Column> resultColumns = new ArrayList<>();
+        for (Column col : leftJoinColumns) {
+            resultColumns.add(Column.create(col.getName(), col.getDataType(), hashTable.size()));
+        }
+        for (Column col : leftValueColumns) {
+            resultColumns.add(Column.create(col.getName(), col.getDataType(), hashTable.size()));
+        }
+        for (Column col : rightValueColumns) {
+            resultColumns.add(Column.create(col.getName(), col.getDataType(), hashTable.size()));
+        }
+
+        List<Column> rightJoinColumns = joinKeys.stream().map(right::getColumn).toList();
+        for (int rightRow = 0, n = right.rowCount(); rightRow < n; rightRow++) {
+            List<Integer> matched = hashTable.get(CompositeKey.from(rightJoinColumns, rightRow));
+            if (matched == null) {
+                continue;
+            }
+            for (int leftRow : matched) {
+                int c = 0;
+                for (Column col : leftJoinColumns) {
+                    resultColumns.get(c++).addObject(col.getObject(leftRow));
+                }
+                for (Column col : leftValueColumns) {
+                    resultColumns.get(c++).addObject(col.getObject(leftRow));
+                }
+                for (Column col : rightValueColumns) {
+                    resultColumns.get(c++).addObject(col.getObject(rightRow));
+                }
+            }
+        }
+        return resultColumns;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 4, 16, 64}) {
+            Options opt = new OptionsBuilder()
+                .include(HashJoinBenchmark.class.getSimpleName())
+                .threads(threads)
+                .forks(1)
+                .warmupIterations(2)
+                .measurementIterations(5)
+                .build();
+
+            new Runner(opt).run();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.metric.expression.pipeline.step;
+
+import org.bithon.server.datasource.query.pipeline.Column;
+import org.bithon.server.datasource.query.pipeline.ColumnarTable;
+import org.bithon.server.datasource.query.pipeline.DictionaryStringColumn;
+import org.bithon.server.datasource.query.pipeline.DoubleColumn;
+import org.bithon.server.datasource.query.pipeline.LongColumn;
+import org.bithon.server.datasource.query.pipeline.StringColumn;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class HashJoinerTest {
+
+    @Test
+    public void testJoinOnCompositeKeys() {
+        ColumnarTable left = new ColumnarTable();
+        left.addColumn(LongColumn.of("_timestamp", 1, 1, 2, 2));
+        left.addColumn(StringColumn.of("appName", "a", "b", "a", "b"));
+        left.addColumn(LongColumn.of("l", 10, 20, 30, 40));
+
+        ColumnarTable right = new ColumnarTable();
+        right.addColumn(LongColumn.of("_timestamp", 2, 1, 3));
+        right.addColumn(StringColumn.of("appName", "b", "a", "a"));
+        right.addColumn(DoubleColumn.of("r", 0.5, 1.5, 2.5));
+
+        List<Column> columns = HashJoiner.join(left,
+                                               right,
+                                               List.of("_timestamp", "appName"),
+                                               List.of(left.getColumn("l")),
+                                               List.of(right.getColumn("r")));
+        Assertions.assertEquals(4, columns.size());
+
+        // Rows are in the order of the right table
+        Assertions.assertEquals(2, columns.get(0).size());
+        Assertions.assertEquals(2, columns.get(0).getLong(0));
+        Assertions.assertEquals("b", columns.get(1).getString(0));
+        Assertions.assertEquals(40, columns.get(2).getLong(0));
+        Assertions.assertEquals(0.5, columns.get(3).getDouble(0));
+
+        Assertions.assertEquals(1, columns.get(0).getLong(1));
+        Assertions.assertEquals("a", columns.get(1).getString(1));
+        Assertions.assertEquals(10, columns.get(2).getLong(1));
+        Assertions.assertEquals(1.5, columns.get(3).getDouble(1));
+
+        // Result columns are materialized so that operators can work on their primitive arrays
+        Assertions.assertEquals(LongColumn.class, columns.get(2).getClass());
+        Assertions.assertEquals(DoubleColumn.class, columns.get(3).getClass());
+    }
+
+    @Test
+    public void testDuplicatedKeys() {
+        ColumnarTable left = new ColumnarTable();
+        left.addColumn(StringColumn.of("appName", "a", "b", "a", "a"));
+        left.addColumn(LongColumn.of("l", 1, 2, 3, 4));
+
+        ColumnarTable right = new ColumnarTable();
+        right.addColumn(StringColumn.of("appName", "c", "a"));
+        right.addColumn(LongColumn.of("r", 100, 200));
+
+        List<Column> columns = HashJoiner.join(left,
+                                               right,
+                                               List.of("appName"),
+                                               List.of(left.getColumn("l")),
+                                               List.of(right.getColumn("r")));
+
+        // All matched rows on the left are returned in their original order
+        Assertions.assertEquals(3, columns.get(0).size());
+        Assertions.assertArrayEquals(new long[]{1, 3, 4}, ((LongColumn) columns.get(1)).getData());
+        Assertions.assertArrayEquals(new long[]{200, 200, 200}, ((LongColumn) columns.get(2)).getData());
+    }
+
+    @Test
+    public void testEmptyAndMismatchedKeyTypes() {
+        ColumnarTable left = new ColumnarTable();
+        left.addColumn(LongColumn.of("k", 1, 2));
+        left.addColumn(LongColumn.of("l", 1, 2));
+
+        ColumnarTable empty = new ColumnarTable();
+        empty.addColumn(new LongColumn("k", 0));
+        empty.addColumn(new LongColumn("r", 0));
+        List<Column> columns = HashJoiner.join(empty, left, List.of("k"), List.of(empty.getColumn("r")), List.of(left.getColumn("l")));
+        Assertions.assertEquals(0, columns.get(0).size());
+
+        // Same as comparing boxed values, a long key never equals a string key
+        ColumnarTable right = new ColumnarTable();
+        right.addColumn(StringColumn.of("k", "1", "2"));
+        right.addColumn(LongColumn.of("r", 1, 2));
+        columns = HashJoiner.join(left, right, List.of("k"), List.of(left.getColumn("l")), List.of(right.getColumn("r")));
+        Assertions.assertEquals(0, columns.get(0).size());
+    }
+
+    @Test
+    public void testJoinOnDictionaryKeys() {
+        DictionaryStringColumn leftKey = new DictionaryStringColumn("appName", 4);
+        for (String v : new String[]{"a", "b", "a", "c"}) {
+            leftKey.addString(v);
+        }
+        ColumnarTable left = new ColumnarTable();
+        left.addColumn(leftKey);
+        left.addColumn(LongColumn.of("l", 1, 2, 3, 4));
+
+        // Different dictionary with a different code order and a value that is not on the left
+        DictionaryStringColumn rightKey = new DictionaryStringColumn("appName", 3);
+        for (String v : new String[]{"d", "c", "a"}) {
+            rightKey.addString(v);
+        }
+        ColumnarTable right = new ColumnarTable();
+        right.addColumn(rightKey);
+        right.addColumn(LongColumn.of("r", 100, 200, 300));
+
+        List<Column> columns = HashJoiner.join(left,
+                                               right,
+                                               List.of("appName"),
+                                               List.of(left.getColumn("l")),
+                                               List.of(right.getColumn("r")));
+        Assertions.assertEquals(3, columns.get(0).size());
+
+        // The key column stays encoded
+        Assertions.assertInstanceOf(DictionaryStringColumn.class, columns.get(0));
+        Assertions.assertArrayEquals(new String[]{"c", "a", "a"}, ((StringColumn) columns.get(0)).getData());
+        Assertions.assertArrayEquals(new long[]{4, 1, 3}, ((LongColumn) columns.get(1)).getData());
+        Assertions.assertArrayEquals(new long[]{200, 300, 300}, ((LongColumn) columns.get(2)).getData());
+    }
+}
@@ -17,6 +17,7 @@
 package org.bithon.server.pipeline.common;
 
 import lombok.Data;
+import org.bithon.server.pipeline.common.spool.SpoolConfig;
 
 /**
  * @author frank.chen021@outlook.com
@@ -30,4 +31,9 @@ public class BatchConfig {
      * in seconds
      */
     private int interval = 1;
+
+    /**
+     * Local disk spool for batches that fail to be written into the storage
+     */
+    private SpoolConfig spool;
 }
@@ -196,6 +196,13 @@ public abstract class AbstractPipeline<RECEIVER extends IReceiver, EXPORTER exte
 
     protected abstract Logger getLogger();
 
+    /**
+     * Called after all receivers are stopped and before exporters are stopped,
+     * subclasses can flush data buffered in the pipeline to exporters.
+     */
+    protected void onReceiversStopped() {
+    }
+
     @Override
     public void stop() {
         if (!this.pipelineConfig.isEnabled()) {
@@ -208,6 +215,8 @@ public abstract class AbstractPipeline<RECEIVER extends IReceiver, EXPORTER exte
             receiver.stop();
         }
 
+        onReceiversStopped();
+
         getLogger().info("Stopping exporters of {}...", this.getClass().getSimpleName());
         for (IExporter exporter : this.exporters) {
             try {
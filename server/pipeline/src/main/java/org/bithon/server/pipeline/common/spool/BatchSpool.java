@@ -0,0 +1,183 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.pipeline.common.spool;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bithon.component.commons.utils.StringUtils;
+import org.bithon.server.storage.common.RetryableWriteException;
+
+import java.io.IOException;
+
+/**
+ * Writes batches into the storage through a {@link DiskSpool}.
+ * <p>
+ * A batch that fails to be written with a {@link RetryableWriteException} is appended to the spool instead of being dropped.
+ * Other failures, e.g. the batch is rejected by the storage, are not going to succeed on replay, so such batches are logged and dropped.
+ * Spooled batches are replayed in order before any new batch goes to the storage,
+ * and new batches are appended to the spool as long as there are spooled ones, so that the order of batches is kept.
+ * <p>
+ * At most {@link SpoolConfig#getReplayBatchSize()} batches are replayed in one call of {@link #write(Object)},
+ * and no replay is attempted in {@link SpoolConfig#getRetryInterval()} seconds after a failure,
+ * so that a recovering storage is not flooded by the backlog.
+ * A spooled batch that still fails after {@link SpoolConfig#getMaxReplayAttempts()} replays is dropped so that it does not block the spool forever.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Slf4j
+public class BatchSpool<T> implements AutoCloseable {
+
+    public interface ISerializer<T> {
+        byte[] serialize(T batch) throws IOException;
+
+        T deserialize(byte[] bytes) throws IOException;
+    }
+
+    public interface IBatchWriter<T> {
+        void write(T batch) throws Exception;
+    }
+
+    private final String name;
+    private final SpoolConfig config;
+    private final DiskSpool spool;
+    private final ISerializer<T> serializer;
+    private final IBatchWriter<T> writer;
+
+    /**
+     * Timestamp before which the storage is not retried
+     */
+    private long retryAfter;
+
+    /**
+     * Number of consecutive failed replays of the head batch of the spool
+     */
+    private int replayFailures;
+
+    public BatchSpool(String name,
+                      SpoolConfig config,
+                      ISerializer<T> serializer,
+                      IBatchWriter<T> writer) throws IOException {
+        this.name = name;
+        this.config = config;
+        this.spool = new DiskSpool(name, config);
+        this.serializer = serializer;
+        this.writer = writer;
+    }
+
+    /**
+     * @param batch can be null. If it's null, only the spooled batches are replayed
+     */
+    public synchronized void write(T batch) {
+        boolean drained = replay();
+        if (batch == null) {
+            return;
+        }
+
+        if (drained) {
+            try {
+                writer.write(batch);
+                return;
+            } catch (RetryableWriteException e) {
+                log.error("Exception when writing batch into storage, spooling it to [" + name + "]", e);
+                retryAfter = System.currentTimeMillis() + config.getRetryInterval() * 1000L;
+            } catch (Exception e) {
+                log.error("Exception when writing batch into storage, the batch is discarded", e);
+                return;
+            }
+        }
+
+        try {
+            if (!spool.append(serializer.serialize(batch))) {
+                log.error("Spool [{}] is full, the batch is discarded", name);
+            }
+        } catch (IOException e) {
+            log.error("Exception when spooling batch to [" + name + "], the batch is discarded", e);
+        }
+    }
+
+    /**
+     * @return true if there's no more spooled batches
+     */
+    private boolean replay() {
+        if (spool.isEmpty()) {
+            return true;
+        }
+        if (System.currentTimeMillis() < retryAfter) {
+            return false;
+        }
+
+        long start = System.currentTimeMillis();
+        int replayed = 0;
+        try {
+            for (int i = 0; i < config.getReplayBatchSize(); i++) {
+                byte[] bytes;
+                try {
+                    bytes = spool.peek();
+                } catch (IOException e) {
+                    log.error("Exception when reading spool [" + name + "]", e);
+                    return false;
+                }
+                if (bytes == null) {
+                    break;
+                }
+
+                T batch;
+                try {
+                    batch = serializer.deserialize(bytes);
+                } catch (IOException e) {
+                    log.error("Unable to deserialize the batch in spool [" + name + "], the batch is discarded", e);
+                    spool.commit();
+                    continue;
+                }
+
+                try {
+                    writer.write(batch);
+                    replayed++;
+                } catch (RetryableWriteException e) {
+                    if (++replayFailures < config.getMaxReplayAttempts()) {
+                        log.warn("Exception when replaying batch from spool [{}]: {}", name, e.getMessage());
+                        retryAfter = System.currentTimeMillis() + config.getRetryInterval() * 1000L;
+                        return false;
+                    }
+                    log.error(StringUtils.format("Batch in spool [%s] still fails after [%d] replays, the batch is discarded", name, replayFailures), e);
+                } catch (Exception e) {
+                    log.error("Exception when replaying batch from spool [" + name + "], the batch is discarded", e);
+                }
+                replayFailures = 0;
+                spool.commit();
+            }
+        } finally {
+            if (replayed > 0) {
+                log.info("Replayed [{}] batches from spool [{}] in {}ms, [{}] batches remain",
+                         replayed,
+                         name,
+                         System.currentTimeMillis() - start,
+                         spool.getPendingRecords());
+            }
+        }
+        return spool.isEmpty();
+    }
+
+    public DiskSpool getSpool() {
+        return spool;
+    }
+
+    @Override
+    public void close() throws IOException {
+        spool.close();
+    }
+}
@@ -0,0 +1,415 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.pipeline.common.spool;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bithon.component.commons.utils.StringUtils;
+import org.bithon.server.commons.management.MBeanRegistration;
+
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.CRC32;
+
+/**
+ * A local FIFO of binary records backed by memory-mapped, segmented, append-only files.
+ * <p>
+ * Each record is laid out as [length:int][crc32:int][payload].
+ * The length is written after the payload so that a torn write leaves a zero length which marks the end of a segment.
+ * The read position is persisted in a checkpoint file after each {@link #commit()},
+ * so records are replayed at least once across restarts.
+ * <p>
+ * Segments that are fully consumed are deleted.
+ * When the total size of segments reaches the limit, the {@link SpoolConfig.EvictionPolicy} decides which records are discarded.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Slf4j
+public class DiskSpool implements DiskSpoolMXBean, AutoCloseable {
+    static final int RECORD_HEADER_SIZE = 8;
+
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    private final String name;
+    private final File directory;
+    private final int segmentSize;
+    private final long maxSize;
+    private final SpoolConfig.EvictionPolicy evictionPolicy;
+    private final boolean forceOnAppend;
+
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final FileChannel checkpointChannel;
+    private final MappedByteBuffer checkpoint;
+    private final CRC32 crc32 = new CRC32();
+
+    private long nextSegmentId;
+
+    /**
+     * Size of the record returned by the last {@link #peek()}
+     */
+    private int peekedRecordSize = -1;
+
+    private long pendingRecords;
+    private long pendingBytes;
+    private long diskSize;
+    private long appendedRecords;
+    private long replayedRecords;
+    private long evictedRecords;
+    private long droppedRecords;
+
+    private final MBeanRegistration registration;
+
+    public DiskSpool(String name, SpoolConfig config) throws IOException {
+        this.name = name;
+        this.directory = new File(config.getDirectory(), name);
+        this.segmentSize = (int) Math.min(Integer.MAX_VALUE, config.getSegmentSize().longValue());
+        this.maxSize = config.getMaxSize().longValue();
+        this.evictionPolicy = config.getEvictionPolicy();
+        this.forceOnAppend = config.isForceOnAppend();
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException(StringUtils.format("Unable to create spool directory [%s]", directory));
+        }
+
+        this.checkpointChannel = FileChannel.open(new File(directory, CHECKPOINT_FILE).toPath(),
+                                                  StandardOpenOption.CREATE,
+                                                  StandardOpenOption.READ,
+                                                  StandardOpenOption.WRITE);
+        this.checkpoint = checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, 12);
+
+        recover();
+
+        this.registration = MBeanRegistration.register(this,
+                                                       "org.bithon.server:type=DiskSpool,name=" + ObjectName.quote(name),
+                                                       "spool [" + name + "]");
+    }
+
+    private void recover() throws IOException {
+        long checkpointSegment = checkpoint.getLong(0);
+        int checkpointPosition = checkpoint.getInt(8);
+
+        File[] files = directory.listFiles((dir, fileName) -> fileName.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            Arrays.sort(files, Comparator.comparingLong(DiskSpool::getSegmentId));
+            for (File file : files) {
+                long id = getSegmentId(file);
+                if (id < checkpointSegment) {
+                    // Consumed before the last shutdown
+                    Files.deleteIfExists(file.toPath());
+                    continue;
+                }
+
+                Segment segment = new Segment(id, file, (int) file.length());
+
+                // Find the end of written records
+                int position = 0;
+                int next;
+                while ((next = nextRecord(segment, position)) > 0) {
+                    position = next;
+                }
+                segment.writePosition = position;
+                segment.readPosition = id == checkpointSegment ? Math.min(checkpointPosition, position) : 0;
+
+                position = segment.readPosition;
+                while ((next = nextRecord(segment, position)) > 0) {
+                    segment.records++;
+                    position = next;
+                }
+
+                segments.add(segment);
+                diskSize += segment.capacity;
+                pendingRecords += segment.records;
+                pendingBytes += segment.writePosition - segment.readPosition;
+            }
+        }
+
+        Segment last = segments.peekLast();
+        // Never reuse the id of the checkpoint segment, or its stale position would be applied to a new segment
+        this.nextSegmentId = Math.max(checkpointSegment + 1, last == null ? 0 : last.id + 1);
+
+        if (pendingRecords > 0) {
+            log.info("Recovered [{}] records ({} bytes) in spool [{}]", pendingRecords, pendingBytes, name);
+        }
+    }
+
+    /**
+     * @return false if the record is discarded due to the size limit of the spool
+     */
+    public synchronized boolean append(byte[] payload) throws IOException {
+        int recordSize = RECORD_HEADER_SIZE + payload.length;
+
+        Segment tail = segments.peekLast();
+        if (tail == null || tail.capacity - tail.writePosition < recordSize) {
+            int capacity = Math.max(segmentSize, recordSize);
+            if (!reserve(capacity)) {
+                droppedRecords++;
+                return false;
+            }
+            tail = new Segment(nextSegmentId++, new File(directory, StringUtils.format("%020d%s", nextSegmentId - 1, SEGMENT_SUFFIX)), capacity);
+            segments.add(tail);
+            diskSize += capacity;
+        }
+
+        int position = tail.writePosition;
+        crc32.reset();
+        crc32.update(payload);
+        tail.buffer.putInt(position + 4, (int) crc32.getValue());
+        tail.buffer.put(position + RECORD_HEADER_SIZE, payload);
+        // Length is written at last, see the class comment
+        tail.buffer.putInt(position, payload.length);
+        if (forceOnAppend) {
+            tail.buffer.force();
+        }
+
+        tail.writePosition += recordSize;
+        tail.records++;
+        pendingRecords++;
+        pendingBytes += recordSize;
+        appendedRecords++;
+        return true;
+    }
+
+    /**
+     * Get the oldest record without consuming it.
+     * Call {@link #commit()} after the record has been processed successfully.
+     *
+     * @return null if there's no record
+     */
+    public synchronized byte[] peek() throws IOException {
+        while (true) {
+            Segment head = segments.peekFirst();
+            if (head == null) {
+                return null;
+            }
+
+            if (head.readPosition < head.writePosition) {
+                int next = nextRecord(head, head.readPosition);
+                if (next > 0) {
+                    int length = head.buffer.getInt(head.readPosition);
+                    byte[] payload = new byte[length];
+                    head.buffer.get(head.readPosition + RECORD_HEADER_SIZE, payload);
+                    peekedRecordSize = next - head.readPosition;
+                    return payload;
+                }
+
+                // Should not happen since the write position is verified, discard the rest of this segment
+                log.error("Corrupted record found at position [{}] of segment [{}] in spool [{}]. The rest [{}] records in this segment are discarded.",
+                          head.readPosition,
+                          head.file.getName(),
+                          name,
+                          head.records);
+                pendingRecords -= head.records;
+                pendingBytes -= head.writePosition - head.readPosition;
+                head.readPosition = head.writePosition;
+                head.records = 0;
+            }
+
+            if (head == segments.peekLast()) {
+                // Caught up with the writer
+                return null;
+            }
+            segments.pollFirst();
+            deleteSegment(head);
+        }
+    }
+
+    /**
+     * Consume the record returned by the last {@link #peek()}
+     */
+    public synchronized void commit() {
+        Segment head = segments.peekFirst();
+        if (peekedRecordSize < 0 || head == null) {
+            return;
+        }
+
+        head.readPosition += peekedRecordSize;
+        head.records--;
+        pendingRecords--;
+        pendingBytes -= peekedRecordSize;
+        replayedRecords++;
+        peekedRecordSize = -1;
+
+        checkpoint.putLong(0, head.id);
+        checkpoint.putInt(8, head.readPosition);
+        if (forceOnAppend) {
+            // The checkpoint fits in one sector, so it's not torn by a crash of the OS
+            checkpoint.force();
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return pendingRecords == 0;
+    }
+
+    /**
+     * Make room for a new segment
+     */
+    private boolean reserve(int capacity) throws IOException {
+        if (capacity > maxSize) {
+            return false;
+        }
+
+        while (diskSize + capacity > maxSize && !segments.isEmpty()) {
+            Segment oldest = segments.peekFirst();
+            if (oldest.records > 0) {
+                if (evictionPolicy == SpoolConfig.EvictionPolicy.DROP_NEWEST) {
+                    return false;
+                }
+
+                log.warn("Spool [{}] is full, evicting [{}] records in segment [{}]", name, oldest.records, oldest.file.getName());
+                evictedRecords += oldest.records;
+                pendingRecords -= oldest.records;
+                pendingBytes -= oldest.writePosition - oldest.readPosition;
+            }
+            segments.pollFirst();
+            deleteSegment(oldest);
+
+            // The peeked record might have been evicted
+            peekedRecordSize = -1;
+        }
+        return diskSize + capacity <= maxSize;
+    }
+
+    private void deleteSegment(Segment segment) throws IOException {
+        diskSize -= segment.capacity;
+        segment.channel.close();
+        Files.deleteIfExists(segment.file.toPath());
+    }
+
+    /**
+     * @return the position of the next record if there's a valid record at given position, or -1 otherwise
+     */
+    private int nextRecord(Segment segment, int position) {
+        if (position + RECORD_HEADER_SIZE > segment.capacity) {
+            return -1;
+        }
+        int length = segment.buffer.getInt(position);
+        if (length <= 0 || length > segment.capacity - position - RECORD_HEADER_SIZE) {
+            return -1;
+        }
+
+        byte[] payload = new byte[length];
+        segment.buffer.get(position + RECORD_HEADER_SIZE, payload);
+        crc32.reset();
+        crc32.update(payload);
+        if ((int) crc32.getValue() != segment.buffer.getInt(position + 4)) {
+            return -1;
+        }
+        return position + RECORD_HEADER_SIZE + length;
+    }
+
+    private static long getSegmentId(File file) {
+        String fileName = file.getName();
+        try {
+            return Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        registration.close();
+
+        for (Segment segment : segments) {
+            segment.buffer.force();
+            segment.channel.close();
+        }
+        segments.clear();
+
+        checkpoint.force();
+        checkpointChannel.close();
+    }
+
+    @Override
+    public synchronized long getPendingRecords() {
+        return pendingRecords;
+    }
+
+    @Override
+    public synchronized long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    @Override
+    public synchronized long getDiskSize() {
+        return diskSize;
+    }
+
+    @Override
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized long getAppendedRecords() {
+        return appendedRecords;
+    }
+
+    @Override
+    public synchronized long getReplayedRecords() {
+        return replayedRecords;
+    }
+
+    @Override
+    public synchronized long getEvictedRecords() {
+        return evictedRecords;
+    }
+
+    @Override
+    public synchronized long getDroppedRecords() {
+        return droppedRecords;
+    }
+
+    static class Segment {
+        private final long id;
+        private final File file;
+        private final int capacity;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+
+        private int writePosition;
+        private int readPosition;
+
+        /**
+         * Number of records between read position and write position
+         */
+        private int records;
+
+        Segment(long id, File file, int capacity) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.capacity = capacity;
+            this.channel = FileChannel.open(file.toPath(),
+                                            StandardOpenOption.CREATE,
+                                            StandardOpenOption.READ,
+                                            StandardOpenOption.WRITE);
+
+            // The file is extended to the capacity if it's new
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.pipeline.common.spool;
+
+/**
+ * Metrics of a {@link DiskSpool}, exposed over JMX.
+ * All counters are accumulated since the spool is opened, rates can be calculated from their deltas.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public interface DiskSpoolMXBean {
+
+    /**
+     * Number of batches that are waiting to be replayed
+     */
+    long getPendingRecords();
+
+    /**
+     * Bytes of batches that are waiting to be replayed
+     */
+    long getPendingBytes();
+
+    /**
+     * Disk space taken by all segment files
+     */
+    long getDiskSize();
+
+    int getSegmentCount();
+
+    long getAppendedRecords();
+
+    long getReplayedRecords();
+
+    /**
+     * Number of spooled batches deleted by the {@link SpoolConfig.EvictionPolicy#DROP_OLDEST} policy
+     */
+    long getEvictedRecords();
+
+    /**
+     * Number of batches rejected by the {@link SpoolConfig.EvictionPolicy#DROP_NEWEST} policy
+     */
+    long getDroppedRecords();
+}
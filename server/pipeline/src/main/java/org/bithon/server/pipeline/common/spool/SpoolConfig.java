@@ -0,0 +1,89 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.pipeline.common.spool;
+
+import lombok.Data;
+import org.bithon.component.commons.utils.HumanReadableNumber;
+
+/**
+ * Configuration of the local disk spool that keeps batches which fail to be written into the storage.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Data
+public class SpoolConfig {
+    private boolean enabled = false;
+
+    /**
+     * Root directory of spools. Each batch writer has its own subdirectory under it.
+     */
+    private String directory = System.getProperty("java.io.tmpdir") + "/bithon/spool";
+
+    /**
+     * Size of each memory-mapped segment file
+     */
+    private HumanReadableNumber segmentSize = HumanReadableNumber.of("16MiB");
+
+    /**
+     * Max disk space of ONE spool
+     */
+    private HumanReadableNumber maxSize = HumanReadableNumber.of("512MiB");
+
+    /**
+     * What to do when the spool reaches the {@link #maxSize}
+     */
+    private EvictionPolicy evictionPolicy = EvictionPolicy.DROP_OLDEST;
+
+    /**
+     * Max number of spooled batches that are replayed in one flush round.
+     * This limits the extra pressure that the replay puts on the storage once it recovers.
+     */
+    private int replayBatchSize = 10;
+
+    /**
+     * in seconds.
+     * How long to wait before replaying again after a failure of writing into the storage
+     */
+    private int retryInterval = 5;
+
+    /**
+     * Max number of replays of one spooled batch.
+     * The batch is dropped if it still fails after that, so that it does not block the batches behind it forever.
+     * Replays of a batch are at least {@link #retryInterval} seconds apart, so the default gives the storage about 10 minutes to recover.
+     */
+    private int maxReplayAttempts = 120;
+
+    /**
+     * Whether to force the content of segment to the storage device after each append,
+     * and the checkpoint after each commit.
+     * By default, it relies on the OS to write back the dirty pages, which survives the crash of the process but not the crash of the OS.
+     */
+    private boolean forceOnAppend = false;
+
+    public enum EvictionPolicy {
+        /**
+         * Delete the oldest segment to make room for new batches
+         */
+        DROP_OLDEST,
+
+        /**
+         * Discard new batches
+         */
+        DROP_NEWEST
+    }
+}
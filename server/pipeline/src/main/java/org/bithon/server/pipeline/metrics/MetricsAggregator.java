@@ -112,7 +112,7 @@ public class MetricsAggregator {
             }
 
             // metrics
-            aggregators.forEach((name, aggregator) -> row.put(name, aggregator.getNumber()));
+            aggregators.forEach((name, aggregator) -> row.put(name, aggregator.getValue()));
 
             finalRows.add(new InputRow(row));
         });
@@ -16,15 +16,22 @@
 
 package org.bithon.server.pipeline.metrics.exporter;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.bithon.server.datasource.input.IInputRow;
+import org.bithon.server.datasource.input.InputRow;
 import org.bithon.server.pipeline.common.FixedDelayExecutor;
+import org.bithon.server.pipeline.common.spool.BatchSpool;
+import org.bithon.server.pipeline.common.spool.SpoolConfig;
 import org.bithon.server.pipeline.metrics.MetricPipelineConfig;
 import org.bithon.server.storage.metrics.IMetricWriter;
 
+import java.io.IOException;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author frank.chen021@outlook.com
@@ -39,11 +46,24 @@ public class MetricBatchWriter implements IMetricWriter {
     private final String name;
     private List<IInputRow> metricList;
 
-    public MetricBatchWriter(String dataSourceName, IMetricWriter delegation, MetricPipelineConfig sinkConfig) {
+    /**
+     * Not null if the spool is enabled
+     */
+    private final BatchSpool<List<IInputRow>> spool;
+
+    public MetricBatchWriter(String dataSourceName, IMetricWriter delegation, MetricPipelineConfig sinkConfig) throws IOException {
         this.name = dataSourceName;
         this.delegation = delegation;
         this.sinkConfig = sinkConfig;
         this.metricList = new ArrayList<>(getBatchSize());
+
+        SpoolConfig spoolConfig = sinkConfig.getBatch() == null ? null : sinkConfig.getBatch().getSpool();
+        this.spool = spoolConfig != null && spoolConfig.isEnabled() ? new BatchSpool<>("metrics-" + dataSourceName,
+                                                                                       spoolConfig,
+                                                                                       new MetricBatchSerializer(),
+                                                                                       delegation::writeOrThrowRetryable)
+                                                                    : null;
+
         this.executor = new FixedDelayExecutor(dataSourceName + "-batch-writer",
                                                this::flush,
                                                5,
@@ -73,6 +93,10 @@ public class MetricBatchWriter implements IMetricWriter {
         // flush all data to see if there's any more data
         flush();
 
+        if (this.spool != null) {
+            this.spool.close();
+        }
+
         // close underlying writer at last
         this.delegation.close();
     }
@@ -86,6 +110,10 @@ public class MetricBatchWriter implements IMetricWriter {
 
     private void flush() {
         if (this.metricList.isEmpty()) {
+            if (this.spool != null) {
+                // Replay spooled batches even if there's no new data
+                this.spool.write(null);
+            }
             return;
         }
 
@@ -101,14 +129,45 @@ public class MetricBatchWriter implements IMetricWriter {
         if (flushMetricList.isEmpty()) {
             return;
         }
+        if (log.isDebugEnabled()) {
+            // Apply this check as profiling see the debug method call is expensive
+            log.debug("Flushing [{}] metrics into storage [{}]...", flushMetricList.size(), this.name);
+        }
+        if (this.spool != null) {
+            this.spool.write(flushMetricList);
+            return;
+        }
         try {
-            if (log.isDebugEnabled()) {
-                // Apply this check as profiling see the debug method call is expensive
-                log.debug("Flushing [{}] metrics into storage [{}]...", flushMetricList.size(), this.name);
-            }
             this.delegation.write(flushMetricList);
         } catch (Exception e) {
             log.error("Exception when flushing metrics into storage", e);
         }
     }
+
+    /**
+     * Rows are spooled as plain maps and restored as {@link InputRow}
+     */
+    static class MetricBatchSerializer implements BatchSpool.ISerializer<List<IInputRow>> {
+        private final ObjectMapper objectMapper = new ObjectMapper();
+
+        @Override
+        public byte[] serialize(List<IInputRow> batch) throws IOException {
+            List<Map<String, Object>> rows = new ArrayList<>(batch.size());
+            for (IInputRow row : batch) {
+                rows.add(row.toMap());
+            }
+            return objectMapper.writeValueAsBytes(rows);
+        }
+
+        @Override
+        public List<IInputRow> deserialize(byte[] bytes) throws IOException {
+            List<Map<String, Object>> rows = objectMapper.readValue(bytes, new TypeReference<>() {
+            });
+            List<IInputRow> batch = new ArrayList<>(rows.size());
+            for (Map<String, Object> row : rows) {
+                batch.add(new InputRow(row));
+            }
+            return batch;
+        }
+    }
 }
@@ -26,10 +26,17 @@ import org.bithon.server.pipeline.common.transformer.TransformResult;
 import org.bithon.server.pipeline.tracing.exporter.ITraceExporter;
 import org.bithon.server.pipeline.tracing.input.TraceSpanAsInputSource;
 import org.bithon.server.pipeline.tracing.receiver.ITraceReceiver;
+import org.bithon.server.pipeline.tracing.sampling.ITailSamplingPolicy;
+import org.bithon.server.pipeline.tracing.sampling.TailSampler;
+import org.bithon.server.pipeline.tracing.sampling.TailSamplingConfig;
 import org.bithon.server.storage.tracing.TraceSpan;
 import org.slf4j.Logger;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
@@ -41,6 +48,11 @@ public class TracePipeline extends AbstractPipeline<ITraceReceiver, ITraceExport
 
     private final IInputSourceManager inputSourceManager;
 
+    /**
+     * Not null if tail sampling is enabled
+     */
+    private TailSampler tailSampler;
+
     public TracePipeline(TracePipelineConfig pipelineConfig,
                          IInputSourceManager inputSourceManager,
                          ObjectMapper objectMapper) {
@@ -57,12 +69,56 @@ public class TracePipeline extends AbstractPipeline<ITraceReceiver, ITraceExport
         // Load all schemas and input sources
         this.inputSourceManager.start(TraceSpanAsInputSource.class);
 
+        this.tailSampler = createTailSampler();
+
         ITraceProcessor processor = new PipelineProcessor();
         for (ITraceReceiver receiver : this.receivers) {
             receiver.registerProcessor(processor);
         }
     }
 
+    private TailSampler createTailSampler() {
+        TailSamplingConfig config = getPipelineConfig().getTailSampling();
+        if (config == null || !config.isEnabled()) {
+            return null;
+        }
+
+        List<ITailSamplingPolicy> policies = new ArrayList<>();
+        if (!CollectionUtils.isEmpty(config.getPolicies())) {
+            for (Map<String, Object> policy : config.getPolicies()) {
+                try {
+                    policies.add(objectMapper.readValue(objectMapper.writeValueAsBytes(policy), ITailSamplingPolicy.class));
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to initialize tail sampling policy", e);
+                }
+            }
+        }
+        log.info("Tail sampling is enabled with decision wait [{}] and [{}] policies", config.getDecisionWait(), policies.size());
+        return new TailSampler(config, policies, (messageType, spans) -> export(messageType, spans, ITraceExporter::isTailSampled));
+    }
+
+    @Override
+    protected void onReceiversStopped() {
+        if (this.tailSampler != null) {
+            // Decide buffered traces before exporters are stopped
+            this.tailSampler.close();
+        }
+    }
+
+    private void export(String messageType, List<TraceSpan> spans, Predicate<ITraceExporter> filter) {
+        ITraceExporter[] exporterList = exporters.toArray(new ITraceExporter[0]);
+        for (ITraceExporter exporter : exporterList) {
+            if (!filter.test(exporter)) {
+                continue;
+            }
+            try {
+                exporter.process(messageType, spans);
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+
     @Override
     protected Logger getLogger() {
         return log;
@@ -95,14 +151,15 @@ public class TracePipeline extends AbstractPipeline<ITraceReceiver, ITraceExport
                 }
             }
 
-            ITraceExporter[] exporterList = exporters.toArray(new ITraceExporter[0]);
-            for (ITraceExporter exporter : exporterList) {
-                try {
-                    exporter.process(messageType, spans);
-                } catch (Exception e) {
-                    log.error(e.getMessage(), e);
-                }
+            if (tailSampler != null) {
+                // Exporters that are not tail sampled receive all spans,
+                // and the kept traces are forwarded to the tail sampled exporters by the sampler
+                export(messageType, spans, (exporter) -> !exporter.isTailSampled());
+                tailSampler.process(messageType, spans);
+                return;
             }
+
+            export(messageType, spans, (exporter) -> true);
         }
 
         @Override
@@ -21,6 +21,7 @@ import lombok.EqualsAndHashCode;
 import org.bithon.server.pipeline.common.BatchConfig;
 import org.bithon.server.pipeline.common.pipeline.PipelineConfig;
 import org.bithon.server.pipeline.tracing.mapping.TraceIdMappingConfig;
+import org.bithon.server.pipeline.tracing.sampling.TailSamplingConfig;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
@@ -43,4 +44,6 @@ public class TracePipelineConfig extends PipelineConfig {
     private List<TraceIdMappingConfig> mapping;
 
     private BatchConfig batch;
+
+    private TailSamplingConfig tailSampling;
 }
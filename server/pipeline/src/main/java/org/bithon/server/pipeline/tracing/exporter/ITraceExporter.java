@@ -32,6 +32,14 @@ import org.bithon.server.pipeline.tracing.ITraceProcessor;
 })
 public interface ITraceExporter extends ITraceProcessor, IExporter {
 
+    /**
+     * Whether this exporter receives only the traces that are kept by the tail sampling if it's enabled.
+     * Exporters that derive data from spans, e.g. metrics, or forward spans to other systems receive all spans.
+     */
+    default boolean isTailSampled() {
+        return false;
+    }
+
     default void start() {
 
     }
@@ -49,7 +49,7 @@ public class ToTraceStorageExporter implements ITraceExporter {
     private final Handler handler;
 
     @JsonCreator
-    public ToTraceStorageExporter(@JacksonInject(useInput = OptBoolean.FALSE) ConfigurableApplicationContext applicationContext) {
+    public ToTraceStorageExporter(@JacksonInject(useInput = OptBoolean.FALSE) ConfigurableApplicationContext applicationContext) throws IOException {
         this.handler = new Handler(applicationContext);
     }
 
@@ -58,6 +58,14 @@ public class ToTraceStorageExporter implements ITraceExporter {
         handler.submit(spans);
     }
 
+    /**
+     * The tail sampling is applied to reduce the spans that are stored
+     */
+    @Override
+    public boolean isTailSampled() {
+        return true;
+    }
+
     @Override
     public void close() throws Exception {
         handler.close();
@@ -69,7 +77,7 @@ public class ToTraceStorageExporter implements ITraceExporter {
         private final TraceIdMappingBatchExtractor mappingExtractor;
         private final TagIndexGenerator tagIndexBuilder;
 
-        public Handler(ConfigurableApplicationContext applicationContext) {
+        public Handler(ConfigurableApplicationContext applicationContext) throws IOException {
             super("trace-sink",
                   1,
                   10,
@@ -16,14 +16,21 @@
 
 package org.bithon.server.pipeline.tracing.exporter;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.bithon.server.pipeline.common.FixedDelayExecutor;
+import org.bithon.server.pipeline.common.spool.BatchSpool;
+import org.bithon.server.pipeline.common.spool.SpoolConfig;
 import org.bithon.server.pipeline.tracing.TracePipelineConfig;
 import org.bithon.server.storage.tracing.ITraceWriter;
 import org.bithon.server.storage.tracing.TraceSpan;
 import org.bithon.server.storage.tracing.index.TagIndex;
 import org.bithon.server.storage.tracing.mapping.TraceIdMapping;
 
+import java.io.IOException;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -48,9 +55,22 @@ public class TraceBatchWriter implements ITraceWriter {
     private final FixedDelayExecutor executor;
     private final int batchSize;
 
-    public TraceBatchWriter(ITraceWriter writer, TracePipelineConfig config) {
+    /**
+     * Not null if the spool is enabled
+     */
+    private final BatchSpool<TraceBatch> spool;
+
+    public TraceBatchWriter(ITraceWriter writer, TracePipelineConfig config) throws IOException {
         this.writer = writer;
         this.batchSize = config.getBatch() == null ? 2000 : config.getBatch().getSize();
+
+        SpoolConfig spoolConfig = config.getBatch() == null ? null : config.getBatch().getSpool();
+        this.spool = spoolConfig != null && spoolConfig.isEnabled() ? new BatchSpool<>("traces",
+                                                                                       spoolConfig,
+                                                                                       new TraceBatchSerializer(),
+                                                                                       (batch) -> writer.writeOrThrowRetryable(batch.spans, batch.idMappings, batch.tagIndexes))
+                                                                    : null;
+
         this.executor = new FixedDelayExecutor("trace-batch-writer",
                                                this::flush,
                                                5,
@@ -87,13 +107,21 @@ public class TraceBatchWriter implements ITraceWriter {
         }
 
         if (spans.isEmpty() && idMappings.isEmpty() && tagIndexes.isEmpty()) {
+            if (this.spool != null) {
+                // Replay spooled batches even if there's no new data
+                this.spool.write(null);
+            }
+            return;
+        }
+        if (log.isDebugEnabled()) {
+            // Apply this check as profiling see the debug method call is expensive
+            log.debug("Flushing [{}] spans into storage...", spans.size());
+        }
+        if (this.spool != null) {
+            this.spool.write(new TraceBatch(spans, idMappings, tagIndexes));
             return;
         }
         try {
-            if (log.isDebugEnabled()) {
-                // Apply this check as profiling see the debug method call is expensive
-                log.debug("Flushing [{}] spans into storage...", spans.size());
-            }
             this.writer.write(spans, idMappings, tagIndexes);
         } catch (Exception e) {
             log.error("Exception when flushing spans into storage", e);
@@ -113,7 +141,37 @@ public class TraceBatchWriter implements ITraceWriter {
         // flush all data to see if there's any more data
         flush();
 
+        if (this.spool != null) {
+            try {
+                this.spool.close();
+            } catch (IOException e) {
+                log.error("Exception when closing trace spool", e);
+            }
+        }
+
         // close underlying writer at last
         this.writer.close();
     }
+
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class TraceBatch {
+        public List<TraceSpan> spans;
+        public List<TraceIdMapping> idMappings;
+        public List<TagIndex> tagIndexes;
+    }
+
+    static class TraceBatchSerializer implements BatchSpool.ISerializer<TraceBatch> {
+        private final ObjectMapper objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+        @Override
+        public byte[] serialize(TraceBatch batch) throws IOException {
+            return objectMapper.writeValueAsBytes(batch);
+        }
+
+        @Override
+        public TraceBatch deserialize(byte[] bytes) throws IOException {
+            return objectMapper.readValue(bytes, TraceBatch.class);
+        }
+    }
 }
@@ -0,0 +1,60 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.pipeline.tracing.sampling;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import org.bithon.component.commons.tracing.Tags;
+import org.bithon.server.storage.tracing.TraceSpan;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps traces that contain any span with an error
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class ErrorSamplingPolicy implements ITailSamplingPolicy {
+
+    @JsonCreator
+    public ErrorSamplingPolicy() {
+    }
+
+    @Override
+    public boolean shouldKeep(TraceSpan root, List<TraceSpan> spans) {
+        for (TraceSpan span : spans) {
+            if (isError(span)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean isError(TraceSpan span) {
+        // The status is standardized by the TraceSpanTransformer
+        String status = span.getStatus();
+        if (status != null && (status.startsWith("5") || "ERROR".equalsIgnoreCase(status))) {
+            return true;
+        }
+
+        Map<String, String> tags = span.getTags();
+        return tags != null && (tags.containsKey("exception")
+                                || tags.containsKey(Tags.Exception.MESSAGE)
+                                || tags.containsKey(Tags.Exception.TYPE));
+    }
+}
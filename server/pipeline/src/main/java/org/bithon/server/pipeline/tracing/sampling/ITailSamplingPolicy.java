@@ -0,0 +1,43 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.pipeline.tracing.sampling;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import org.bithon.server.storage.tracing.TraceSpan;
+
+import java.util.List;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+@JsonSubTypes(value = {
+    @JsonSubTypes.Type(name = "error", value = ErrorSamplingPolicy.class),
+    @JsonSubTypes.Type(name = "latency", value = LatencySamplingPolicy.class),
+    @JsonSubTypes.Type(name = "tag", value = TagSamplingPolicy.class),
+    @JsonSubTypes.Type(name = "rate_limit", value = RateLimitSamplingPolicy.class),
+})
+public interface ITailSamplingPolicy {
+
+    /**
+     * @param root  the root span of the trace. Can be null if the root span is not received in the decision window
+     * @param spans all buffered spans of the trace
+     */
+    boolean shouldKeep(TraceSpan root, List<TraceSpan> spans);
+}
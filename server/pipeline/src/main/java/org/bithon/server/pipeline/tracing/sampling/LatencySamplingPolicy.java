@@ -0,0 +1,64 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.pipeline.tracing.sampling;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import org.bithon.component.commons.utils.HumanReadableDuration;
+import org.bithon.component.commons.utils.Preconditions;
+import org.bithon.server.storage.tracing.TraceSpan;
+
+import java.util.List;
+
+/**
+ * Keeps traces whose duration is greater than or equal to the threshold.
+ * The duration is the cost time of the root span,
+ * or the time range covered by the buffered spans if the root span is not received.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class LatencySamplingPolicy implements ITailSamplingPolicy {
+
+    @Getter
+    private final HumanReadableDuration threshold;
+
+    private final long thresholdMicros;
+
+    @JsonCreator
+    public LatencySamplingPolicy(@JsonProperty("threshold") HumanReadableDuration threshold) {
+        Preconditions.checkNotNull(threshold, "threshold of latency sampling policy is not specified.");
+        this.threshold = threshold;
+        this.thresholdMicros = threshold.getDuration().toNanos() / 1000;
+    }
+
+    @Override
+    public boolean shouldKeep(TraceSpan root, List<TraceSpan> spans) {
+        if (root != null) {
+            return root.getCostTime() >= thresholdMicros;
+        }
+
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        for (TraceSpan span : spans) {
+            start = Math.min(start, span.getStartTime());
+            end = Math.max(end, span.getEndTime());
+        }
+        return end - start >= thresholdMicros;
+    }
+}
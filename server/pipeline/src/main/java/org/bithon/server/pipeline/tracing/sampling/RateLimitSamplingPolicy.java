@@ -0,0 +1,90 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.pipeline.tracing.sampling;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import org.bithon.component.commons.utils.StringUtils;
+import org.bithon.server.storage.tracing.TraceSpan;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps at most given number of traces per second for each endpoint of each application,
+ * so that a baseline of normal traces is kept along with the traces kept by other policies.
+ * <p>
+ * The endpoint is the normalized uri of the root span, or the name of the root span if there's no uri.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class RateLimitSamplingPolicy implements ITailSamplingPolicy {
+
+    /**
+     * Protect the memory from endpoints of high cardinality
+     */
+    private static final int MAX_KEYS = 100_000;
+
+    @Getter
+    private final int tracesPerSecond;
+
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    @JsonCreator
+    public RateLimitSamplingPolicy(@JsonProperty("tracesPerSecond") int tracesPerSecond) {
+        this.tracesPerSecond = tracesPerSecond;
+    }
+
+    @Override
+    public boolean shouldKeep(TraceSpan root, List<TraceSpan> spans) {
+        if (tracesPerSecond <= 0) {
+            return false;
+        }
+
+        TraceSpan span = root == null ? spans.get(0) : root;
+        String endpoint = StringUtils.hasText(span.getNormalizedUri()) ? span.getNormalizedUri() : span.getName();
+        String key = span.getAppName() + "/" + endpoint;
+
+        if (windows.size() > MAX_KEYS) {
+            windows.clear();
+        }
+        return windows.computeIfAbsent(key, k -> new Window()).tryAcquire(System.currentTimeMillis() / 1000, tracesPerSecond);
+    }
+
+    /**
+     * A fixed window of one second
+     */
+    static class Window {
+        private long second;
+        private int count;
+
+        synchronized boolean tryAcquire(long now, int limit) {
+            if (now != second) {
+                second = now;
+                count = 0;
+            }
+            if (count < limit) {
+                count++;
+                return true;
+            }
+            return false;
+        }
+    }
+}
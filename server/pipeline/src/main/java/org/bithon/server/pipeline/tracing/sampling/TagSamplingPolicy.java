@@ -0,0 +1,66 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.pipeline.tracing.sampling;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import org.bithon.component.commons.utils.Preconditions;
+import org.bithon.server.storage.tracing.TraceSpan;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps traces that contain any span with given tag.
+ * If values are given, the value of the tag must be one of them.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class TagSamplingPolicy implements ITailSamplingPolicy {
+
+    @Getter
+    private final String name;
+
+    @Getter
+    private final Set<String> values;
+
+    @JsonCreator
+    public TagSamplingPolicy(@JsonProperty("name") String name,
+                             @JsonProperty("values") List<String> values) {
+        Preconditions.checkNotNull(name, "name of tag sampling policy is not specified.");
+        this.name = name;
+        this.values = values == null ? Collections.emptySet() : new HashSet<>(values);
+    }
+
+    @Override
+    public boolean shouldKeep(TraceSpan root, List<TraceSpan> spans) {
+        for (TraceSpan span : spans) {
+            if (span.getTags() == null) {
+                continue;
+            }
+            String value = span.getTags().get(name);
+            if (value != null && (values.isEmpty() || values.contains(value))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
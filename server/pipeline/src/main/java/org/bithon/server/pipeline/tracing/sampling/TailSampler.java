@@ -0,0 +1,342 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.pipeline.tracing.sampling;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bithon.component.commons.concurrency.NamedThreadFactory;
+import org.bithon.component.commons.concurrency.ScheduledExecutorServiceFactory;
+import org.bithon.component.commons.utils.CollectionUtils;
+import org.bithon.component.commons.utils.StringUtils;
+import org.bithon.server.commons.management.MBeanRegistration;
+import org.bithon.server.storage.tracing.TraceSpan;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Buffers spans by trace id and decides whether to keep a trace on its buffered spans
+ * after the decision window of the trace ends.
+ * <p>
+ * Traces are decided in the order of the arrival of their first spans.
+ * When the buffer is full, the oldest traces are decided before the end of their windows.
+ * Spans that arrive after the decision of their traces follow the decision.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Slf4j
+public class TailSampler implements TailSamplerMXBean, AutoCloseable {
+
+    private final long decisionWaitMillis;
+    private final int maxTraces;
+    private final int maxSpans;
+    private final List<ITailSamplingPolicy> policies;
+
+    /**
+     * Accepts the kept spans
+     */
+    private final BiConsumer<String, List<TraceSpan>> exporter;
+
+    private final Map<String, TraceBuffer> traces = new ConcurrentHashMap<>();
+
+    /**
+     * Buffers in the order of their creation
+     */
+    private final Queue<TraceBuffer> arrivals = new ConcurrentLinkedQueue<>();
+
+    /**
+     * LRU of decided trace ids
+     */
+    private final Map<String, Boolean> decisions;
+
+    private final ScheduledExecutorService scheduler;
+    private final MBeanRegistration registration;
+
+    private final AtomicLong bufferedSpans = new AtomicLong();
+    private final LongAdder keptTraces = new LongAdder();
+    private final LongAdder droppedTraces = new LongAdder();
+    private final LongAdder evictedTraces = new LongAdder();
+    private final LongAdder lateSpans = new LongAdder();
+    private final LongAdder decisionCount = new LongAdder();
+    private final LongAdder decisionTimeNanos = new LongAdder();
+    private final LongAdder decisionDelayMillis = new LongAdder();
+
+    public TailSampler(TailSamplingConfig config,
+                       List<ITailSamplingPolicy> policies,
+                       BiConsumer<String, List<TraceSpan>> exporter) {
+        this.decisionWaitMillis = config.getDecisionWait().toMillis();
+        this.maxTraces = config.getMaxTraces();
+        this.maxSpans = config.getMaxSpans();
+        this.policies = policies;
+        this.exporter = exporter;
+
+        int decisionCacheSize = config.getDecisionCacheSize();
+        this.decisions = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > decisionCacheSize;
+            }
+        };
+
+        long interval = Math.max(10, Math.min(1000, decisionWaitMillis / 4));
+        this.scheduler = ScheduledExecutorServiceFactory.newSingleThreadScheduledExecutor(NamedThreadFactory.daemonThreadFactory("trace-tail-sampler"));
+        this.scheduler.scheduleWithFixedDelay(this::decideExpiredTraces, interval, interval, TimeUnit.MILLISECONDS);
+
+        this.registration = MBeanRegistration.register(this,
+                                                       "org.bithon.server:type=TailSampler",
+                                                       "tail sampler");
+    }
+
+    public void process(String messageType, List<TraceSpan> spans) {
+        // Spans that are not buffered but forwarded directly
+        List<TraceSpan> passThroughSpans = null;
+
+        long now = System.currentTimeMillis();
+        for (TraceSpan span : spans) {
+            String traceId = span.getTraceId();
+            Boolean decision = traceId == null ? Boolean.TRUE : getDecision(traceId);
+            if (decision != null) {
+                if (traceId != null) {
+                    lateSpans.increment();
+                }
+                if (decision) {
+                    if (passThroughSpans == null) {
+                        passThroughSpans = new ArrayList<>();
+                    }
+                    passThroughSpans.add(span);
+                }
+                continue;
+            }
+
+            traces.compute(traceId, (id, buffer) -> {
+                if (buffer == null) {
+                    buffer = new TraceBuffer(id, messageType, now);
+                    arrivals.add(buffer);
+                }
+                buffer.spans.add(span);
+                return buffer;
+            });
+            bufferedSpans.incrementAndGet();
+        }
+
+        if (passThroughSpans != null) {
+            exporter.accept(messageType, passThroughSpans);
+        }
+
+        // Release memory under pressure
+        if (bufferedSpans.get() > maxSpans || traces.size() > maxTraces) {
+            Map<String, List<TraceSpan>> keptSpans = new HashMap<>();
+            TraceBuffer buffer;
+            while ((bufferedSpans.get() > maxSpans || traces.size() > maxTraces) && (buffer = arrivals.poll()) != null) {
+                if (decide(buffer, keptSpans)) {
+                    evictedTraces.increment();
+                }
+            }
+            export(keptSpans);
+        }
+    }
+
+    private void decideExpiredTraces() {
+        try {
+            decideTraces(System.currentTimeMillis() - decisionWaitMillis);
+        } catch (Exception e) {
+            log.error("Exception when deciding traces", e);
+        }
+    }
+
+    /**
+     * Decide traces whose first spans arrive before given timestamp
+     */
+    private void decideTraces(long arrivedBefore) {
+        Map<String, List<TraceSpan>> keptSpans = new HashMap<>();
+
+        TraceBuffer head;
+        while ((head = arrivals.peek()) != null && head.firstArrival <= arrivedBefore) {
+            // Double check in case that the head has been taken by the eviction
+            if (arrivals.remove(head)) {
+                decide(head, keptSpans);
+            }
+        }
+
+        export(keptSpans);
+    }
+
+    /**
+     * @return true if the buffer is decided by this call
+     */
+    private boolean decide(TraceBuffer buffer, Map<String, List<TraceSpan>> keptSpans) {
+        // Once removed from the map, no more span will be added to this buffer
+        if (!traces.remove(buffer.traceId, buffer)) {
+            return false;
+        }
+        bufferedSpans.addAndGet(-buffer.spans.size());
+
+        long start = System.nanoTime();
+
+        // A trace might have been decided if its spans arrive after the decision but before the decision is recorded
+        Boolean keep = getDecision(buffer.traceId);
+        if (keep == null) {
+            keep = evaluate(buffer.spans);
+            synchronized (decisions) {
+                decisions.put(buffer.traceId, keep);
+            }
+        }
+
+        decisionTimeNanos.add(System.nanoTime() - start);
+        decisionDelayMillis.add(System.currentTimeMillis() - buffer.firstArrival);
+        decisionCount.increment();
+
+        if (keep) {
+            keptTraces.increment();
+            keptSpans.computeIfAbsent(buffer.messageType, k -> new ArrayList<>()).addAll(buffer.spans);
+        } else {
+            droppedTraces.increment();
+        }
+        return true;
+    }
+
+    private boolean evaluate(List<TraceSpan> spans) {
+        if (CollectionUtils.isEmpty(policies)) {
+            return true;
+        }
+
+        TraceSpan root = null;
+        for (TraceSpan span : spans) {
+            if (StringUtils.isEmpty(span.getParentSpanId())) {
+                root = span;
+                break;
+            }
+        }
+
+        for (ITailSamplingPolicy policy : policies) {
+            try {
+                if (policy.shouldKeep(root, spans)) {
+                    return true;
+                }
+            } catch (Exception e) {
+                log.error(StringUtils.format("Exception when evaluating policy [%s]", policy.getClass().getSimpleName()), e);
+            }
+        }
+        return false;
+    }
+
+    private Boolean getDecision(String traceId) {
+        synchronized (decisions) {
+            return decisions.get(traceId);
+        }
+    }
+
+    private void export(Map<String, List<TraceSpan>> keptSpans) {
+        for (Map.Entry<String, List<TraceSpan>> entry : keptSpans.entrySet()) {
+            try {
+                exporter.accept(entry.getKey(), entry.getValue());
+            } catch (Exception e) {
+                log.error("Exception when exporting sampled spans", e);
+            }
+        }
+    }
+
+    /**
+     * Decide all buffered traces so that no span is lost at shutdown
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        try {
+            //noinspection ResultOfMethodCallIgnored
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ignored) {
+        }
+
+        decideTraces(Long.MAX_VALUE);
+
+        registration.close();
+    }
+
+    @Override
+    public int getBufferedTraces() {
+        return traces.size();
+    }
+
+    @Override
+    public long getBufferedSpans() {
+        return bufferedSpans.get();
+    }
+
+    @Override
+    public long getKeptTraces() {
+        return keptTraces.sum();
+    }
+
+    @Override
+    public long getDroppedTraces() {
+        return droppedTraces.sum();
+    }
+
+    @Override
+    public long getEvictedTraces() {
+        return evictedTraces.sum();
+    }
+
+    @Override
+    public long getLateSpans() {
+        return lateSpans.sum();
+    }
+
+    @Override
+    public long getDecisionCount() {
+        return decisionCount.sum();
+    }
+
+    @Override
+    public long getDecisionTimeNanos() {
+        return decisionTimeNanos.sum();
+    }
+
+    @Override
+    public long getDecisionDelayMillis() {
+        return decisionDelayMillis.sum();
+    }
+
+    static class TraceBuffer {
+        private final String traceId;
+        private final String messageType;
+        private final long firstArrival;
+
+        /**
+         * Guarded by the lock of the map entry in {@link #traces}
+         */
+        private final List<TraceSpan> spans = new ArrayList<>();
+
+        TraceBuffer(String traceId, String messageType, long firstArrival) {
+            this.traceId = traceId;
+            this.messageType = messageType;
+            this.firstArrival = firstArrival;
+        }
+    }
+}
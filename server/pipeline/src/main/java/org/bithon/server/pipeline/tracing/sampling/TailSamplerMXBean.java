@@ -0,0 +1,57 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.pipeline.tracing.sampling;
+
+/**
+ * Metrics of {@link TailSampler}, exposed over JMX.
+ * Counters are accumulated since the sampler is started, rates and averages can be calculated from their deltas.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public interface TailSamplerMXBean {
+
+    int getBufferedTraces();
+
+    long getBufferedSpans();
+
+    long getKeptTraces();
+
+    long getDroppedTraces();
+
+    /**
+     * Number of traces that are decided before the end of the decision window because the buffer is full
+     */
+    long getEvictedTraces();
+
+    /**
+     * Number of spans that arrive after the decision of their traces
+     */
+    long getLateSpans();
+
+    long getDecisionCount();
+
+    /**
+     * Total time spent on evaluating policies, in nanoseconds
+     */
+    long getDecisionTimeNanos();
+
+    /**
+     * Total time between the arrival of the first span of a trace and the decision of the trace, in milliseconds
+     */
+    long getDecisionDelayMillis();
+}
@@ -0,0 +1,56 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.pipeline.tracing.sampling;
+
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+@Data
+public class TailSamplingConfig {
+    private boolean enabled = false;
+
+    /**
+     * How long spans of a trace are buffered since the first span of the trace is received.
+     * The sampling decision is made on the buffered spans after this duration.
+     */
+    private Duration decisionWait = Duration.ofSeconds(10);
+
+    /**
+     * Max number of traces/spans in the buffer.
+     * If either one is exceeded, the oldest traces are decided earlier to release memory.
+     */
+    private int maxTraces = 50_000;
+    private int maxSpans = 1_000_000;
+
+    /**
+     * Number of decided trace ids that are kept so that the late spans of a trace follow the decision of the trace
+     */
+    private int decisionCacheSize = 100_000;
+
+    /**
+     * See {@link ITailSamplingPolicy} for the definitions.
+     * A trace is kept if any of the policies keeps it. If there's no policy, all traces are kept.
+     */
+    private List<Map<String, Object>> policies;
+}
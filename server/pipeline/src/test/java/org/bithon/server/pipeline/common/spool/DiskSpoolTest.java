@@ -0,0 +1,283 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.pipeline.common.spool;
+
+import org.bithon.component.commons.utils.HumanReadableNumber;
+import org.bithon.server.storage.common.RetryableWriteException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class DiskSpoolTest {
+
+    @TempDir
+    File directory;
+
+    private SpoolConfig createConfig(String segmentSize, String maxSize, SpoolConfig.EvictionPolicy policy) {
+        SpoolConfig config = new SpoolConfig();
+        config.setEnabled(true);
+        config.setDirectory(directory.getAbsolutePath());
+        config.setSegmentSize(HumanReadableNumber.of(segmentSize));
+        config.setMaxSize(HumanReadableNumber.of(maxSize));
+        config.setEvictionPolicy(policy);
+        config.setRetryInterval(0);
+        return config;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] bytes) {
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testAppendAndReplayInOrder() throws IOException {
+        // Each segment holds 2 records of 'record-x'
+        try (DiskSpool spool = new DiskSpool("test", createConfig("40", "1KiB", SpoolConfig.EvictionPolicy.DROP_OLDEST))) {
+            Assertions.assertTrue(spool.isEmpty());
+            Assertions.assertNull(spool.peek());
+
+            for (int i = 0; i < 5; i++) {
+                Assertions.assertTrue(spool.append(bytes("record-" + i)));
+            }
+            Assertions.assertEquals(5, spool.getPendingRecords());
+            Assertions.assertEquals(3, spool.getSegmentCount());
+
+            for (int i = 0; i < 5; i++) {
+                Assertions.assertEquals("record-" + i, string(spool.peek()));
+                // Peek again returns the same record
+                Assertions.assertEquals("record-" + i, string(spool.peek()));
+                spool.commit();
+            }
+            Assertions.assertNull(spool.peek());
+            Assertions.assertTrue(spool.isEmpty());
+            Assertions.assertEquals(5, spool.getReplayedRecords());
+
+            // Consumed segments except the active one are deleted
+            Assertions.assertEquals(1, spool.getSegmentCount());
+            Assertions.assertEquals(0, spool.getPendingBytes());
+        }
+    }
+
+    @Test
+    public void testRecoverFromCheckpoint() throws IOException {
+        SpoolConfig config = createConfig("40", "1KiB", SpoolConfig.EvictionPolicy.DROP_OLDEST);
+        try (DiskSpool spool = new DiskSpool("test", config)) {
+            for (int i = 0; i < 5; i++) {
+                spool.append(bytes("record-" + i));
+            }
+            for (int i = 0; i < 3; i++) {
+                spool.peek();
+                spool.commit();
+            }
+        }
+
+        try (DiskSpool spool = new DiskSpool("test", config)) {
+            Assertions.assertEquals(2, spool.getPendingRecords());
+            Assertions.assertEquals("record-3", string(spool.peek()));
+            spool.commit();
+
+            // New records go after the recovered ones
+            spool.append(bytes("record-5"));
+
+            Assertions.assertEquals("record-4", string(spool.peek()));
+            spool.commit();
+            Assertions.assertEquals("record-5", string(spool.peek()));
+            spool.commit();
+            Assertions.assertNull(spool.peek());
+        }
+
+        try (DiskSpool spool = new DiskSpool("test", config)) {
+            Assertions.assertTrue(spool.isEmpty());
+        }
+    }
+
+    @Test
+    public void testTornWriteIsIgnoredOnRecovery() throws IOException {
+        SpoolConfig config = createConfig("1KiB", "1MiB", SpoolConfig.EvictionPolicy.DROP_OLDEST);
+        try (DiskSpool spool = new DiskSpool("test", config)) {
+            spool.append(bytes("record-0"));
+            spool.append(bytes("record-1"));
+        }
+
+        // Corrupt the payload of the 2nd record
+        File segment = Objects.requireNonNull(new File(directory, "test").listFiles((dir, name) -> name.endsWith(".segment")))[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(2 * DiskSpool.RECORD_HEADER_SIZE + "record-0".length());
+            file.write('x');
+        }
+
+        try (DiskSpool spool = new DiskSpool("test", config)) {
+            Assertions.assertEquals(1, spool.getPendingRecords());
+            Assertions.assertEquals("record-0", string(spool.peek()));
+            spool.commit();
+
+            // The corrupted record is overwritten
+            spool.append(bytes("record-2"));
+            Assertions.assertEquals("record-2", string(spool.peek()));
+        }
+    }
+
+    @Test
+    public void testDropOldest() throws IOException {
+        // 2 segments at most, each segment holds 2 records
+        try (DiskSpool spool = new DiskSpool("test", createConfig("40", "80", SpoolConfig.EvictionPolicy.DROP_OLDEST))) {
+            for (int i = 0; i < 6; i++) {
+                Assertions.assertTrue(spool.append(bytes("record-" + i)));
+            }
+            Assertions.assertEquals(4, spool.getPendingRecords());
+            Assertions.assertEquals(2, spool.getEvictedRecords());
+            Assertions.assertEquals(80, spool.getDiskSize());
+
+            List<String> records = new ArrayList<>();
+            byte[] record;
+            while ((record = spool.peek()) != null) {
+                records.add(string(record));
+                spool.commit();
+            }
+            Assertions.assertEquals(List.of("record-2", "record-3", "record-4", "record-5"), records);
+        }
+    }
+
+    @Test
+    public void testDropNewest() throws IOException {
+        try (DiskSpool spool = new DiskSpool("test", createConfig("40", "80", SpoolConfig.EvictionPolicy.DROP_NEWEST))) {
+            for (int i = 0; i < 4; i++) {
+                Assertions.assertTrue(spool.append(bytes("record-" + i)));
+            }
+            Assertions.assertFalse(spool.append(bytes("record-4")));
+            Assertions.assertEquals(1, spool.getDroppedRecords());
+
+            // Once records are consumed, there's room for new records
+            for (int i = 0; i < 2; i++) {
+                spool.peek();
+                spool.commit();
+            }
+            Assertions.assertTrue(spool.append(bytes("record-5")));
+            Assertions.assertEquals("record-2", string(spool.peek()));
+        }
+    }
+
+    private final BatchSpool.ISerializer<String> serializer = new BatchSpool.ISerializer<>() {
+        @Override
+        public byte[] serialize(String batch) {
+            return bytes(batch);
+        }
+
+        @Override
+        public String deserialize(byte[] bytes) {
+            return string(bytes);
+        }
+    };
+
+    @Test
+    public void testBatchSpool() throws IOException {
+        List<String> storage = new ArrayList<>();
+        boolean[] storageDown = {true};
+
+        SpoolConfig config = createConfig("1KiB", "1MiB", SpoolConfig.EvictionPolicy.DROP_OLDEST);
+        config.setReplayBatchSize(2);
+        try (BatchSpool<String> spool = new BatchSpool<>("test", config, serializer, (batch) -> {
+            if (storageDown[0]) {
+                throw new RetryableWriteException("storage is down", new IOException("Connection refused"));
+            }
+            storage.add(batch);
+        })) {
+            spool.write("batch-0");
+            spool.write("batch-1");
+            spool.write("batch-2");
+            Assertions.assertTrue(storage.isEmpty());
+            Assertions.assertEquals(3, spool.getSpool().getPendingRecords());
+
+            storageDown[0] = false;
+
+            // Spooled batches are replayed first, and the new batch is spooled because of the limit of replay
+            spool.write("batch-3");
+            Assertions.assertEquals(List.of("batch-0", "batch-1"), storage);
+
+            spool.write(null);
+            Assertions.assertEquals(List.of("batch-0", "batch-1", "batch-2", "batch-3"), storage);
+
+            // No spooled batches, written directly
+            spool.write("batch-4");
+            Assertions.assertEquals(List.of("batch-0", "batch-1", "batch-2", "batch-3", "batch-4"), storage);
+            Assertions.assertTrue(spool.getSpool().isEmpty());
+        }
+    }
+
+    @Test
+    public void testNonRetryableFailureIsNotSpooled() throws IOException {
+        List<String> storage = new ArrayList<>();
+
+        SpoolConfig config = createConfig("1KiB", "1MiB", SpoolConfig.EvictionPolicy.DROP_OLDEST);
+        try (BatchSpool<String> spool = new BatchSpool<>("test", config, serializer, (batch) -> {
+            if (batch.startsWith("bad")) {
+                throw new IOException("rejected by storage");
+            }
+            storage.add(batch);
+        })) {
+            spool.write("bad-0");
+            Assertions.assertTrue(spool.getSpool().isEmpty());
+
+            spool.write("batch-1");
+            Assertions.assertEquals(List.of("batch-1"), storage);
+        }
+    }
+
+    @Test
+    public void testBatchDroppedAfterMaxReplayAttempts() throws IOException {
+        List<String> storage = new ArrayList<>();
+
+        SpoolConfig config = createConfig("1KiB", "1MiB", SpoolConfig.EvictionPolicy.DROP_OLDEST);
+        config.setMaxReplayAttempts(3);
+        try (BatchSpool<String> spool = new BatchSpool<>("test", config, serializer, (batch) -> {
+            if (batch.startsWith("poison")) {
+                throw new RetryableWriteException("storage is down", new IOException("Connection reset"));
+            }
+            storage.add(batch);
+        })) {
+            // Spooled on the first failure, then batch-1 fails the 1st replay and is appended behind it to keep the order
+            spool.write("poison-0");
+            spool.write("batch-1");
+            Assertions.assertEquals(2, spool.getSpool().getPendingRecords());
+            Assertions.assertTrue(storage.isEmpty());
+
+            // 2nd replay failure
+            spool.write(null);
+            Assertions.assertEquals(2, spool.getSpool().getPendingRecords());
+
+            // 3rd replay failure, the poison batch is dropped and the batch behind it is replayed
+            spool.write(null);
+            Assertions.assertEquals(List.of("batch-1"), storage);
+            Assertions.assertTrue(spool.getSpool().isEmpty());
+        }
+    }
+}
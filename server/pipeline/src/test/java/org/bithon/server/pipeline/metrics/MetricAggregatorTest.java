@@ -16,16 +16,19 @@
 
 package org.bithon.server.pipeline.metrics;
 
+import org.bithon.component.commons.histogram.HistogramSnapshot;
 import org.bithon.server.commons.time.TimeSpan;
 import org.bithon.server.datasource.DefaultSchema;
 import org.bithon.server.datasource.TimestampSpec;
 import org.bithon.server.datasource.column.StringColumn;
+import org.bithon.server.datasource.column.aggregatable.histogram.AggregateHistogramColumn;
 import org.bithon.server.datasource.column.aggregatable.max.AggregateLongMaxColumn;
 import org.bithon.server.datasource.column.aggregatable.min.AggregateLongMinColumn;
 import org.bithon.server.datasource.column.aggregatable.sum.AggregateLongSumColumn;
 import org.bithon.server.datasource.input.IInputRow;
 import org.bithon.server.datasource.input.InputRow;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -173,4 +176,40 @@ public class MetricAggregatorTest {
         Assertions.assertEquals(5L, rows.get(1).getColAsLong("minTime", 0));
         Assertions.assertEquals(5L, rows.get(1).getColAsLong("maxTime", 0));
     }
+
+    @Test
+    public void testHistogram() {
+        DefaultSchema schema = new DefaultSchema(
+            "histogram-table",
+            "histogram-table",
+            new TimestampSpec("timestamp"),
+            List.of(new StringColumn("appName", "appName")),
+            List.of(new AggregateHistogramColumn("responseTimeHistogram", "responseTimeHistogram"))
+        );
+
+        long time = TimeSpan.fromISO8601("2012-05-15T12:38:23.000+08:00").getMilliseconds();
+
+        MetricsAggregator aggregator = new MetricsAggregator(schema, 10);
+
+        IInputRow row1 = new InputRow(new HashMap<>());
+        row1.updateColumn("timestamp", time);
+        row1.updateColumn("appName", "app1");
+        row1.updateColumn("responseTimeHistogram", HistogramSnapshot.of(10).toText());
+        aggregator.aggregate(row1);
+
+        IInputRow row2 = new InputRow(new HashMap<>());
+        row2.updateColumn("timestamp", time + 3000);
+        row2.updateColumn("appName", "app1");
+        row2.updateColumn("responseTimeHistogram", HistogramSnapshot.of(1000).toText());
+        aggregator.aggregate(row2);
+
+        List<IInputRow> rows = aggregator.getRows();
+        Assertions.assertEquals(1, rows.size());
+
+        // The merged histogram is kept in text form
+        HistogramSnapshot merged = HistogramSnapshot.fromText(rows.get(0).getColAsString("responseTimeHistogram"));
+        Assertions.assertEquals(HistogramSnapshot.of(10).merge(HistogramSnapshot.of(1000)), merged);
+        Assertions.assertEquals(10, merged.getMin());
+        Assertions.assertEquals(1000, merged.getMax());
+    }
 }
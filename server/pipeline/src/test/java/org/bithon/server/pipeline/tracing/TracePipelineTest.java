@@ -22,13 +22,16 @@ import com.google.common.collect.ImmutableMap;
 import org.bithon.server.pipeline.common.input.IInputSourceManager;
 import org.bithon.server.pipeline.tracing.exporter.ITraceExporter;
 import org.bithon.server.pipeline.tracing.receiver.ITraceReceiver;
+import org.bithon.server.pipeline.tracing.sampling.TailSamplingConfig;
 import org.bithon.server.storage.tracing.TraceSpan;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -67,6 +70,27 @@ public class TracePipelineTest {
         }
     }
 
+    static List<TraceSpan> sampledTraceSpanList = new ArrayList<>();
+
+    /**
+     * Simulates the exporter to the trace storage
+     */
+    static class FakeSampledExporter implements ITraceExporter {
+        @Override
+        public void process(String messageType, List<TraceSpan> spans) {
+            sampledTraceSpanList.addAll(spans);
+        }
+
+        @Override
+        public boolean isTailSampled() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
     ObjectMapper objectMapper;
 
     @BeforeEach
@@ -74,9 +98,11 @@ public class TracePipelineTest {
         objectMapper = new ObjectMapper();
         objectMapper.registerSubtypes(new NamedType(FakeReceiver.class, "fake-receiver"));
         objectMapper.registerSubtypes(new NamedType(FakeExporter.class, "fake-exporter"));
+        objectMapper.registerSubtypes(new NamedType(FakeSampledExporter.class, "fake-sampled-exporter"));
 
         registeredProcessor = null;
         receivedTraceSpanList = null;
+        sampledTraceSpanList.clear();
     }
 
     @Test
@@ -99,4 +125,44 @@ public class TracePipelineTest {
         Assertions.assertEquals(receivedTraceSpanList, spans);
         pipeline.stop();
     }
+
+    @Test
+    public void testTailSamplingAppliesToSampledExportersOnly() {
+        TailSamplingConfig tailSampling = new TailSamplingConfig();
+        tailSampling.setEnabled(true);
+        tailSampling.setDecisionWait(Duration.ofMinutes(1));
+        tailSampling.setPolicies(Collections.singletonList(ImmutableMap.of("type", "error")));
+
+        TracePipelineConfig config = new TracePipelineConfig();
+        config.setEnabled(true);
+        config.setTailSampling(tailSampling);
+        config.setReceivers(Collections.singletonList(ImmutableMap.of("type", "fake-receiver")));
+        config.setExporters(Arrays.asList(ImmutableMap.of("type", "fake-exporter"),
+                                          ImmutableMap.of("type", "fake-sampled-exporter")));
+        TracePipeline pipeline = new TracePipeline(config, Mockito.mock(IInputSourceManager.class), objectMapper);
+        pipeline.start();
+
+        TraceSpan okSpan = new TraceSpan();
+        okSpan.traceId = "trace-1";
+        okSpan.spanId = "1";
+        okSpan.parentSpanId = "";
+        okSpan.status = "200";
+
+        TraceSpan errorSpan = new TraceSpan();
+        errorSpan.traceId = "trace-2";
+        errorSpan.spanId = "1";
+        errorSpan.parentSpanId = "";
+        errorSpan.status = "500";
+
+        List<TraceSpan> spans = Arrays.asList(okSpan, errorSpan);
+        registeredProcessor.process("trace", spans);
+
+        // The exporter that is not tail sampled receives all spans immediately
+        Assertions.assertEquals(spans, receivedTraceSpanList);
+        Assertions.assertTrue(sampledTraceSpanList.isEmpty());
+
+        // Buffered traces are decided when the pipeline stops
+        pipeline.stop();
+        Assertions.assertEquals(Collections.singletonList(errorSpan), sampledTraceSpanList);
+    }
 }
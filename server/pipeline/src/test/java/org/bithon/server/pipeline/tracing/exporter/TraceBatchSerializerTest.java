@@ -0,0 +1,66 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.pipeline.tracing.exporter;
+
+import org.bithon.server.storage.tracing.TraceSpan;
+import org.bithon.server.storage.tracing.index.TagIndex;
+import org.bithon.server.storage.tracing.mapping.TraceIdMapping;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class TraceBatchSerializerTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        TraceSpan span = new TraceSpan();
+        span.appName = "test-app";
+        span.traceId = "trace-1";
+        span.spanId = "span-1";
+        span.name = "http-server";
+        span.startTime = 1000;
+        span.endTime = 2000;
+        span.tags = Map.of("http.uri", "/api");
+
+        TraceBatchWriter.TraceBatch batch = new TraceBatchWriter.TraceBatch(List.of(span),
+                                                                            List.of(new TraceIdMapping("user-1", 1000, "trace-1")),
+                                                                            List.of(new TagIndex(1000, "trace-1", "http.uri", "/api")));
+
+        TraceBatchWriter.TraceBatchSerializer serializer = new TraceBatchWriter.TraceBatchSerializer();
+        TraceBatchWriter.TraceBatch restored = serializer.deserialize(serializer.serialize(batch));
+
+        Assertions.assertEquals(1, restored.spans.size());
+        Assertions.assertEquals("trace-1", restored.spans.get(0).traceId);
+        Assertions.assertEquals("/api", restored.spans.get(0).getTag("http.uri"));
+        Assertions.assertEquals(2000, restored.spans.get(0).endTime);
+
+        Assertions.assertEquals("user-1", restored.idMappings.get(0).getUserId());
+        Assertions.assertEquals("trace-1", restored.idMappings.get(0).getTraceId());
+
+        TagIndex tagIndex = restored.tagIndexes.get(0);
+        Assertions.assertEquals(1000, tagIndex.getTimestamp());
+        Assertions.assertEquals("http.uri", tagIndex.getName());
+        Assertions.assertEquals("/api", tagIndex.getValue());
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.pipeline.tracing.sampling;
+
+import org.bithon.component.commons.utils.HumanReadableDuration;
+import org.bithon.server.storage.tracing.TraceSpan;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class TailSamplerTest {
+
+    private final List<TraceSpan> exported = new ArrayList<>();
+
+    private static TraceSpan span(String traceId, String spanId, String parentSpanId, long costTime, String status) {
+        TraceSpan span = new TraceSpan();
+        span.appName = "app";
+        span.traceId = traceId;
+        span.spanId = spanId;
+        span.parentSpanId = parentSpanId;
+        span.name = "http-server";
+        span.normalizedUri = "/api";
+        span.startTime = 1000;
+        span.costTime = costTime;
+        span.endTime = span.startTime + costTime;
+        span.status = status;
+        span.tags = new HashMap<>();
+        return span;
+    }
+
+    private TailSampler createSampler(Duration decisionWait, int maxTraces, ITailSamplingPolicy... policies) {
+        TailSamplingConfig config = new TailSamplingConfig();
+        config.setEnabled(true);
+        config.setDecisionWait(decisionWait);
+        config.setMaxTraces(maxTraces);
+        return new TailSampler(config, List.of(policies), (messageType, spans) -> {
+            synchronized (exported) {
+                exported.addAll(spans);
+            }
+        });
+    }
+
+    private Set<String> exportedTraceIds() {
+        synchronized (exported) {
+            return exported.stream().map(TraceSpan::getTraceId).collect(Collectors.toSet());
+        }
+    }
+
+    @Test
+    public void testDecideOnCompleteTrace() {
+        TailSampler sampler = createSampler(Duration.ofMinutes(1),
+                                            1000,
+                                            new ErrorSamplingPolicy(),
+                                            new LatencySamplingPolicy(HumanReadableDuration.of(1, TimeUnit.SECONDS)));
+
+        // Error in a child span
+        sampler.process("span", List.of(span("t1", "1", "", 10, "200")));
+        sampler.process("span", List.of(span("t1", "2", "1", 5, "500")));
+
+        // Slow root span
+        sampler.process("span", List.of(span("t2", "1", "", 2_000_000, "200"),
+                                        span("t2", "2", "1", 10, "200")));
+
+        // Normal trace
+        sampler.process("span", List.of(span("t3", "1", "", 10, "200"),
+                                        span("t3", "2", "1", 10, "200")));
+
+        // Nothing is exported before decision
+        Assertions.assertTrue(exported.isEmpty());
+        Assertions.assertEquals(3, sampler.getBufferedTraces());
+        Assertions.assertEquals(6, sampler.getBufferedSpans());
+
+        sampler.close();
+        Assertions.assertEquals(Set.of("t1", "t2"), exportedTraceIds());
+        Assertions.assertEquals(4, exported.size());
+        Assertions.assertEquals(2, sampler.getKeptTraces());
+        Assertions.assertEquals(1, sampler.getDroppedTraces());
+        Assertions.assertEquals(0, sampler.getBufferedSpans());
+    }
+
+    @Test
+    public void testDecisionWindow() throws InterruptedException {
+        TailSampler sampler = createSampler(Duration.ofMillis(100), 1000, new ErrorSamplingPolicy());
+        try {
+            sampler.process("span", List.of(span("t1", "1", "", 10, "500")));
+
+            long start = System.currentTimeMillis();
+            while (exported.isEmpty() && System.currentTimeMillis() - start < 5000) {
+                Thread.sleep(20);
+            }
+            Assertions.assertEquals(Set.of("t1"), exportedTraceIds());
+
+            // Late spans follow the decision
+            sampler.process("span", List.of(span("t1", "2", "1", 10, "200")));
+            Assertions.assertEquals(2, exported.size());
+            Assertions.assertEquals(1, sampler.getLateSpans());
+            Assertions.assertEquals(0, sampler.getBufferedTraces());
+        } finally {
+            sampler.close();
+        }
+    }
+
+    @Test
+    public void testEvictionWhenBufferIsFull() {
+        TailSampler sampler = createSampler(Duration.ofMinutes(1), 2, new TagSamplingPolicy("keep", null));
+
+        TraceSpan kept = span("t1", "1", "", 10, "200");
+        kept.tags.put("keep", "true");
+        sampler.process("span", List.of(kept));
+        sampler.process("span", List.of(span("t2", "1", "", 10, "200")));
+        Assertions.assertTrue(exported.isEmpty());
+
+        // The oldest trace is decided earlier
+        sampler.process("span", List.of(span("t3", "1", "", 10, "200")));
+        Assertions.assertEquals(Set.of("t1"), exportedTraceIds());
+        Assertions.assertEquals(1, sampler.getEvictedTraces());
+        Assertions.assertEquals(2, sampler.getBufferedTraces());
+
+        sampler.close();
+        Assertions.assertEquals(Set.of("t1"), exportedTraceIds());
+    }
+
+    @Test
+    public void testRateLimit() {
+        TailSampler sampler = createSampler(Duration.ofMinutes(1), 1000, new RateLimitSamplingPolicy(2));
+        for (int i = 0; i < 10; i++) {
+            sampler.process("span", List.of(span("t" + i, "1", "", 10, "200")));
+        }
+        sampler.close();
+
+        // Unless the test runs across the boundary of a second, only 2 traces are kept
+        Assertions.assertTrue(exported.size() >= 2 && exported.size() <= 4);
+    }
+
+    @Test
+    public void testTagPolicy() {
+        TagSamplingPolicy policy = new TagSamplingPolicy("http.method", List.of("POST"));
+
+        TraceSpan span = span("t1", "1", "", 10, "200");
+        Assertions.assertFalse(policy.shouldKeep(span, List.of(span)));
+
+        span.tags.put("http.method", "GET");
+        Assertions.assertFalse(policy.shouldKeep(span, List.of(span)));
+
+        span.tags.put("http.method", "POST");
+        Assertions.assertTrue(policy.shouldKeep(span, List.of(span)));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.commons.management;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registers an MXBean to the platform MBean server and unregisters it on {@link #close()}.
+ * <p>
+ * Metrics are not essential, so a failure of registration is logged instead of being thrown.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Slf4j
+public class MBeanRegistration implements AutoCloseable {
+
+    /**
+     * null if the registration fails or the bean has been unregistered
+     */
+    private volatile ObjectName objectName;
+
+    private MBeanRegistration(ObjectName objectName) {
+        this.objectName = objectName;
+    }
+
+    /**
+     * @param name        the object name, for example: org.bithon.server:type=QueryExecutor
+     * @param description the owner of the metrics, used in the log when the registration fails
+     */
+    public static MBeanRegistration register(Object mbean, String name, String description) {
+        try {
+            ObjectName objectName = new ObjectName(name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, objectName);
+            return new MBeanRegistration(objectName);
+        } catch (JMException e) {
+            log.warn("Unable to register metrics of {}: {}", description, e.getMessage());
+            return new MBeanRegistration(null);
+        }
+    }
+
+    public boolean isRegistered() {
+        return objectName != null;
+    }
+
+    @Override
+    public void close() {
+        ObjectName name = this.objectName;
+        if (name == null) {
+            return;
+        }
+        this.objectName = null;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException ignored) {
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package org.bithon.server.storage.jdbc.common.statement.builder;
 
 import org.bithon.component.commons.expression.IDataType;
+import org.bithon.component.commons.expression.expt.InvalidExpressionException;
 import org.bithon.component.commons.utils.HumanReadableDuration;
 import org.bithon.component.commons.utils.StringUtils;
 import org.bithon.server.commons.time.TimeSpan;
@@ -26,6 +27,7 @@ import org.bithon.server.datasource.TimestampSpec;
 import org.bithon.server.datasource.column.ExpressionColumn;
 import org.bithon.server.datasource.column.ObjectColumn;
 import org.bithon.server.datasource.column.StringColumn;
+import org.bithon.server.datasource.column.aggregatable.histogram.AggregateHistogramColumn;
 import org.bithon.server.datasource.column.aggregatable.last.AggregateLongLastColumn;
 import org.bithon.server.datasource.column.aggregatable.sum.AggregateLongSumColumn;
 import org.bithon.server.datasource.query.IDataSourceReader;
@@ -78,6 +80,7 @@ public class SelectStatementBuilderTest {
                                                                    new AggregateLongSumColumn("count5xx", "count5xx"),
                                                                    new AggregateLongLastColumn("activeThreads", "activeThreads"),
                                                                    new AggregateLongLastColumn("totalThreads", "totalThreads"),
+                                                                   new AggregateHistogramColumn("responseTimeHistogram", "responseTimeHistogram"),
                                                                    new ExpressionColumn("avgResponseTime",
                                                                                         null,
                                                                                         "sum(responseTime) / sum(totalCount)",
@@ -2007,4 +2010,59 @@ public class SelectStatementBuilderTest {
                                     """.trim(),
                                 selectStatement.toSQL(dialect));
     }
+
+    @Test
+    public void testQuantileAggregation() {
+        QueryRequest queryRequest = QueryRequest.builder()
+                                                .fields(List.of(new QueryField("p99", "responseTimeHistogram", null, "quantile(responseTimeHistogram, 0.99)")))
+                                                .interval(IntervalRequest.builder()
+                                                                         .startISO8601(TimeSpan.fromISO8601("2024-07-26T21:22:00.000+0800"))
+                                                                         .endISO8601(TimeSpan.fromISO8601("2024-07-26T21:32:00.000+0800"))
+                                                                         .build())
+                                                .groupBy(new LinkedHashSet<>(List.of("appName")))
+                                                .build();
+
+        // The histograms are concatenated by the DBMS, and the quantile is calculated after the query
+        SelectStatement selectStatement = SelectStatementBuilder.from(QueryConverter.toQuery(schema, queryRequest, null))
+                                                                .sqlDialect(h2Dialect)
+                                                                .build();
+        Assertions.assertEquals("""
+                                    SELECT "appName",
+                                           group_concat("responseTimeHistogram") AS "p99"
+                                    FROM "bithon_http_incoming_metrics"
+                                    WHERE ("timestamp" >= '2024-07-26T21:22:00.000+08:00') AND ("timestamp" < '2024-07-26T21:32:00.000+08:00')
+                                    GROUP BY "appName"
+                                    """.trim(),
+                                selectStatement.toSQL(h2Dialect));
+        Assertions.assertEquals(IDataType.DOUBLE, selectStatement.getSelectorList().get(1).getDataType());
+
+        selectStatement = SelectStatementBuilder.from(QueryConverter.toQuery(schema, queryRequest, null))
+                                                .sqlDialect(clickHouseDialect)
+                                                .build();
+        Assertions.assertEquals("""
+                                    SELECT "appName",
+                                           arrayStringConcat(arrayFilter(x -> x <> '', groupArray(responseTimeHistogram)), ',') AS "p99"
+                                    FROM "bithon_http_incoming_metrics"
+                                    WHERE ("timestamp" >= fromUnixTimestamp(1722000120)) AND ("timestamp" < fromUnixTimestamp(1722000720))
+                                    GROUP BY "appName"
+                                    """.trim(),
+                                selectStatement.toSQL(clickHouseDialect));
+    }
+
+    @Test
+    public void testQuantileInPostAggregation() {
+        QueryRequest queryRequest = QueryRequest.builder()
+                                                .fields(List.of(new QueryField("p99", "responseTimeHistogram", null, "round(quantile(responseTimeHistogram, 0.99), 2)")))
+                                                .interval(IntervalRequest.builder()
+                                                                         .startISO8601(TimeSpan.fromISO8601("2024-07-26T21:22:00.000+0800"))
+                                                                         .endISO8601(TimeSpan.fromISO8601("2024-07-26T21:32:00.000+0800"))
+                                                                         .build())
+                                                .groupBy(new LinkedHashSet<>(List.of("appName")))
+                                                .build();
+
+        Assertions.assertThrows(InvalidExpressionException.class,
+                                () -> SelectStatementBuilder.from(QueryConverter.toQuery(schema, queryRequest, null))
+                                                            .sqlDialect(h2Dialect)
+                                                            .build());
+    }
 }
@@ -81,6 +81,13 @@ public class DiscoveredServiceInvoker implements ApplicationContextAware {
         return discoveryClient.getInstanceList(metadata.name());
     }
 
+    /**
+     * @return the current instance as it's registered to the discovery service
+     */
+    public DiscoveredServiceInstance getSelf() {
+        return discoveryClient.getSelf();
+    }
+
     /**
      * Create an invoker to broadcast the service call on all instances of remote service providers
      *
@@ -57,16 +57,23 @@ public class DiscoveryClientAutoConfiguration {
 
             @Override
             public List<DiscoveredServiceInstance> getInstanceList(String serviceName) {
+                return getDelegate().getInstanceList(serviceName);
+            }
+
+            @Override
+            public DiscoveredServiceInstance getSelf() {
+                return getDelegate().getSelf();
+            }
+
+            private IDiscoveryClient getDelegate() {
                 if (delegate == null) {
                     synchronized (this) {
                         if (delegate == null) {
                             delegate = createDelegate();
                         }
                     }
-                    this.delegate = createDelegate();
                 }
-
-                return this.delegate.getInstanceList(serviceName);
+                return this.delegate;
             }
 
             private IDiscoveryClient createDelegate() {
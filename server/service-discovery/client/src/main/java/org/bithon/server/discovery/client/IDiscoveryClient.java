@@ -24,4 +24,12 @@ import java.util.List;
 public interface IDiscoveryClient {
 
     List<DiscoveredServiceInstance> getInstanceList(String serviceName);
+
+    /**
+     * Get the address of current instance as it's registered to the discovery service,
+     * so that it can be compared with the instances returned by {@link #getInstanceList(String)}.
+     * <p>
+     * The port might be unknown before the current instance is registered.
+     */
+    DiscoveredServiceInstance getSelf();
 }
@@ -63,9 +63,7 @@ public class InProcessDiscoveryClient implements IDiscoveryClient {
                     DiscoverableService annotation = serviceInterface.getAnnotation(DiscoverableService.class);
                     if (annotation != null && serviceName.equals(annotation.name())) {
                         // Found. Return current application instance
-                        return Collections.singletonList(new DiscoveredServiceInstance("localhost",
-                                                                                       applicationContext.getEnvironment().getProperty("server.port", Integer.class),
-                                                                                       applicationContext.getEnvironment().getProperty("server.servlet.context-path", String.class)));
+                        return Collections.singletonList(getSelf());
                     }
                 }
 
@@ -75,4 +73,11 @@ public class InProcessDiscoveryClient implements IDiscoveryClient {
 
         throw new HttpMappableException(HttpStatus.SERVICE_UNAVAILABLE.value(), "Not found any instance of service [%s]", serviceName);
     }
+
+    @Override
+    public DiscoveredServiceInstance getSelf() {
+        return new DiscoveredServiceInstance("localhost",
+                                             applicationContext.getEnvironment().getProperty("server.port", Integer.class),
+                                             applicationContext.getEnvironment().getProperty("server.servlet.context-path", String.class));
+    }
 }
@@ -59,4 +59,10 @@ public class NacosDiscoveryClient implements IDiscoveryClient {
                                             "Failed to found any instances of service [%s]: [%s]", serviceName, e.getMessage());
         }
     }
+
+    @Override
+    public DiscoveredServiceInstance getSelf() {
+        // The ip and port are the ones used by the Nacos registration
+        return new DiscoveredServiceInstance(props.getIp(), props.getPort(), null);
+    }
 }
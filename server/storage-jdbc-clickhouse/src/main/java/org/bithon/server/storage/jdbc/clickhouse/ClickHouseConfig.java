@@ -21,6 +21,7 @@ import com.clickhouse.jdbc.internal.ClickHouseJdbcUrlParser;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import org.bithon.component.commons.utils.CollectionUtils;
+import org.bithon.component.commons.utils.HumanReadableDuration;
 import org.bithon.component.commons.utils.StringUtils;
 import org.bithon.server.storage.jdbc.clickhouse.lb.LoadBalancerStrategy;
 
@@ -29,6 +30,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author frank.chen021@outlook.com
@@ -96,6 +98,41 @@ public class ClickHouseConfig {
      */
     private LoadBalancerStrategy loadBalancingPolicy = LoadBalancerStrategy.LEAST_ROWS;
 
+    @Data
+    public static class ShardPool {
+        /**
+         * Max connections to one shard
+         */
+        private int maxActive = 4;
+
+        /**
+         * How long a flush waits for a connection when all connections to the shard are in use
+         */
+        private HumanReadableDuration maxWait = HumanReadableDuration.of(10, TimeUnit.SECONDS);
+
+        /**
+         * A connection that has been idle longer than this interval is validated by 'SELECT 1' before it's used.
+         * It's also the interval of evicting idle connections.
+         */
+        private HumanReadableDuration healthCheckInterval = HumanReadableDuration.of(30, TimeUnit.SECONDS);
+
+        /**
+         * Idle connections longer than this are closed
+         */
+        private HumanReadableDuration maxIdle = HumanReadableDuration.of(5, TimeUnit.MINUTES);
+
+        /**
+         * A connection is closed instead of being reused once it has been established longer than this,
+         * so that connections are spread again after the servers behind the URL change
+         */
+        private HumanReadableDuration maxLifetime = HumanReadableDuration.of(30, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Connections to each shard that are used by the client side load balanced writers
+     */
+    private ShardPool shardPool = new ShardPool();
+
     public void afterPropertiesSet() {
         if (!StringUtils.hasText(engine)) {
             throw new RuntimeException("'engine' should not be null");
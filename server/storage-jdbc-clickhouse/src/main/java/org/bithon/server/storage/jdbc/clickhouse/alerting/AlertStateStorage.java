@@ -64,6 +64,10 @@ public class AlertStateStorage extends AlertStateJdbcStorage {
 
     @Override
     public void updateAlertStates(Map<String, AlertState> states) {
+        if (states.isEmpty()) {
+            return;
+        }
+
         BatchBindStep step = dslContext.batch(dslContext.insertInto(Tables.BITHON_ALERT_STATE,
                                                                     Tables.BITHON_ALERT_STATE.ALERT_ID,
                                                                     Tables.BITHON_ALERT_STATE.LAST_ALERT_AT,
@@ -98,7 +102,7 @@ public class AlertStateStorage extends AlertStateJdbcStorage {
                              now,
                              payloadString,
                              state.getStatus().statusCode(),
-                             now);
+                             state.getLastEvaluatedAt() == null ? now : state.getLastEvaluatedAt());
         }
         step.execute();
     }
@@ -32,9 +32,11 @@ import org.jooq.impl.SQLDataType;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -121,6 +123,51 @@ public class TableCreator {
         }
     }
 
+    /**
+     * Tables are only created if they don't exist,
+     * so columns that are added to the table definition later are added to the existing local and distributed tables here.
+     */
+    public void addColumnsIfNotExist(Table<?> table) {
+        String localTableName = config.getLocalTableName(table.getName());
+        Set<String> existingColumns = new HashSet<>(dslContext.fetch(StringUtils.format("SELECT name FROM system.columns WHERE database = '%s' AND table = '%s'",
+                                                                                        config.getDatabase(),
+                                                                                        localTableName))
+                                                              .getValues(0, String.class));
+        if (existingColumns.isEmpty()) {
+            // The table does not exist
+            return;
+        }
+
+        List<Field<?>> missingColumns = new ArrayList<>();
+        for (Field<?> field : table.fields()) {
+            if (!existingColumns.contains(field.getName())) {
+                missingColumns.add(field);
+            }
+        }
+        if (missingColumns.isEmpty()) {
+            return;
+        }
+
+        log.info("Adding columns {} to table [{}]", missingColumns.stream().map(Field::getName).toList(), table.getName());
+        dslContext.execute(getAddColumnsStatement(table, localTableName, missingColumns, true));
+        if (config.isOnDistributedTable()) {
+            dslContext.execute(getAddColumnsStatement(table, table.getName(), missingColumns, false));
+        }
+    }
+
+    private String getAddColumnsStatement(Table<?> table, String tableName, List<Field<?>> columns, boolean isCodecSupported) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append(StringUtils.format("ALTER TABLE `%s`.`%s` %s", config.getDatabase(), tableName, config.getOnClusterExpression()));
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("\nADD COLUMN IF NOT EXISTS ");
+            sb.append(getFieldDeclaration(table, columns.get(i), isCodecSupported));
+        }
+        return sb.toString();
+    }
+
     class LocalTableCreator {
         private final Table<?> table;
         private String orderByList;
@@ -286,44 +333,48 @@ public class TableCreator {
     }
 
     private String getFieldDeclarationExpression(Table<?> table, boolean isCodecSupported) {
-
         StringBuilder sb = new StringBuilder(128);
         for (Field<?> field : table.fields()) {
-            DataType<?> dataType = field.getDataType();
-
-            String typeName = dataType.getTypeName();
-            if (dataType.equals(SQLDataType.TIMESTAMP) || dataType.equals(SQLDataType.LOCALDATETIME)) {
-                typeName = "timestamp(3,0)";
-            } else if (useMapType(table, field)) {
-                typeName = "Map(String, String)";
-            } else {
-                if (dataType.hasPrecision()) {
-                    typeName = dataType.getTypeName() + "(" + dataType.precision() + ", " + dataType.scale() + ")";
-                }
+            sb.append(getFieldDeclaration(table, field, isCodecSupported));
+            sb.append(",\n");
+        }
+        sb.delete(sb.length() - 2, sb.length());
+        return sb.toString();
+    }
+
+    private String getFieldDeclaration(Table<?> table, Field<?> field, boolean isCodecSupported) {
+        DataType<?> dataType = field.getDataType();
+
+        String typeName = dataType.getTypeName();
+        if (dataType.equals(SQLDataType.TIMESTAMP) || dataType.equals(SQLDataType.LOCALDATETIME)) {
+            typeName = "timestamp(3,0)";
+        } else if (useMapType(table, field)) {
+            typeName = "Map(String, String)";
+        } else {
+            if (dataType.hasPrecision()) {
+                typeName = dataType.getTypeName() + "(" + dataType.precision() + ", " + dataType.scale() + ")";
             }
+        }
 
-            sb.append(StringUtils.format("`%s` %s", field.getName(), typeName));
+        StringBuilder sb = new StringBuilder(64);
+        sb.append(StringUtils.format("`%s` %s", field.getName(), typeName));
 
-            Field<?> defaultValue = dataType.defaultValue();
-            if (defaultValue != null) {
-                String defaultValueText = defaultValue.toString();
-                if (defaultValueText.toUpperCase(Locale.ENGLISH).startsWith("CURRENT_TIMESTAMP")) {
-                    defaultValueText = "now()";
-                }
-                sb.append(StringUtils.format(" DEFAULT %s", defaultValueText));
+        Field<?> defaultValue = dataType.defaultValue();
+        if (defaultValue != null) {
+            String defaultValueText = defaultValue.toString();
+            if (defaultValueText.toUpperCase(Locale.ENGLISH).startsWith("CURRENT_TIMESTAMP")) {
+                defaultValueText = "now()";
             }
+            sb.append(StringUtils.format(" DEFAULT %s", defaultValueText));
+        }
 
-            if (isCodecSupported) {
-                if (Number.class.isAssignableFrom(dataType.getType())) {
-                    sb.append(" CODEC(T64, ZSTD)");
-                } else if (String.class.equals(dataType.getType())) {
-                    sb.append(" CODEC(ZSTD(1))");
-                }
+        if (isCodecSupported) {
+            if (Number.class.isAssignableFrom(dataType.getType())) {
+                sb.append(" CODEC(T64, ZSTD)");
+            } else if (String.class.equals(dataType.getType())) {
+                sb.append(" CODEC(ZSTD(1))");
             }
-
-            sb.append(",\n");
         }
-        sb.delete(sb.length() - 2, sb.length());
         return sb.toString();
     }
 
@@ -19,15 +19,41 @@ package org.bithon.server.storage.jdbc.clickhouse.lb;
 import org.bithon.component.commons.utils.CollectionUtils;
 
 import java.util.Collection;
-import java.util.Comparator;
-import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
+ * Selects the shard that has the least rows.
+ * <p>
+ * The selection is lock-free. The rows of the selected shard are increased atomically,
+ * concurrent callers may select the same shard, which is fine for balancing.
+ *
  * @author Frank Chen
  * @date 15/11/23 3:42 pm
  */
 class LeastRowsLoadBalancer implements ILoadBalancer {
-    private PriorityQueue<Shard> shards = newShards();
+
+    /**
+     * Replaced as a whole when shards are updated
+     */
+    private static class Shards {
+        private final int[] shardNums;
+        private final AtomicLongArray writtenRows;
+
+        private Shards(Collection<Shard> shards) {
+            this.shardNums = new int[shards.size()];
+            this.writtenRows = new AtomicLongArray(shards.size());
+
+            int i = 0;
+            for (Shard shard : shards) {
+                this.shardNums[i] = shard.shardNum;
+                this.writtenRows.set(i, shard.writtenRows);
+                i++;
+            }
+        }
+    }
+
+    private volatile Shards shards;
 
     @Override
     public LoadBalancerStrategy getStrategyName() {
@@ -35,26 +61,33 @@ class LeastRowsLoadBalancer implements ILoadBalancer {
     }
 
     @Override
-    public synchronized int nextShard(int writtenRows) {
-        Shard shard = shards.poll();
-        if (shard != null) {
-            shard.writtenRows += writtenRows;
-            shards.offer(shard);
-            return shard.shardNum;
+    public int nextShard(int writtenRows) {
+        Shards current = this.shards;
+        if (current == null) {
+            return 0;
+        }
+
+        // Scan from a random position so that concurrent callers don't always pick the first one of shards that have equal rows
+        int n = current.shardNums.length;
+        int start = ThreadLocalRandom.current().nextInt(n);
+        int selected = start;
+        long leastRows = current.writtenRows.get(selected);
+        for (int i = 1; i < n; i++) {
+            int index = (start + i) % n;
+            long rows = current.writtenRows.get(index);
+            if (rows < leastRows) {
+                leastRows = rows;
+                selected = index;
+            }
         }
-        return 0;
+        current.writtenRows.addAndGet(selected, writtenRows);
+        return current.shardNums[selected];
     }
 
     @Override
     public void update(Collection<Shard> shards) {
         if (CollectionUtils.isNotEmpty(shards)) {
-            PriorityQueue<Shard> newShards = newShards();
-            newShards.addAll(shards);
-            this.shards = newShards;
+            this.shards = new Shards(shards);
         }
     }
-
-    private PriorityQueue<Shard> newShards() {
-        return new PriorityQueue<>(Comparator.comparingLong(o -> o.writtenRows));
-    }
 }
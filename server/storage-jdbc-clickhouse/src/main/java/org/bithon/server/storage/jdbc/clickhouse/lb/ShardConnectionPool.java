@@ -0,0 +1,239 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.jdbc.clickhouse.lb;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.alibaba.druid.pool.ExceptionSorter;
+import lombok.extern.slf4j.Slf4j;
+import org.bithon.component.commons.utils.StringUtils;
+import org.bithon.server.storage.jdbc.clickhouse.ClickHouseConfig;
+import org.bithon.server.storage.jdbc.clickhouse.JdbcDriver;
+import org.bithon.server.storage.jdbc.clickhouse.common.exception.RetryableExceptions;
+import org.bithon.server.storage.jdbc.common.IOnceTableWriter;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pooled connections to each shard for the client side load balanced writers.
+ * <p>
+ * A connection to a shard is a connection whose inserts are routed by the 'insert_shard_id' setting.
+ * Instead of connecting to the server for each flush, connections of a shard are kept in a pool which
+ * - validates a connection by 'SELECT 1' before use if it has been idle longer than the health check interval
+ * - closes a connection once it's been established longer than the max lifetime
+ * - discards a connection whose statement fails because of a network error
+ * <p>
+ * Pools are shared among all writers of the same ClickHouse URL.
+ * Writers acquire the pool when they're created and release it when they're closed,
+ * the pool is closed once the last writer releases it, that is, when the storage shuts down.
+ * The pool of a shard that no longer exists in the cluster is closed when the shards are updated.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Slf4j
+public class ShardConnectionPool implements IShardsUpdateListener, AutoCloseable {
+    private static final Map<String, ShardConnectionPool> POOLS = new HashMap<>();
+
+    /**
+     * Each call must be paired with a call of {@link #release()}
+     */
+    public static synchronized ShardConnectionPool acquire(ClickHouseConfig clickHouseConfig) {
+        ShardConnectionPool pool = POOLS.computeIfAbsent(clickHouseConfig.getUrl(), v -> {
+            ShardConnectionPool newPool = new ShardConnectionPool(clickHouseConfig, new JdbcDriver());
+            LoadBalanceReviseTask.getInstance(clickHouseConfig).addListener(newPool);
+            return newPool;
+        });
+        pool.references++;
+        return pool;
+    }
+
+    private static class ShardDataSource implements AutoCloseable {
+        private final DruidDataSource dataSource;
+        private final ShardWriteMetrics metrics;
+
+        private ShardDataSource(DruidDataSource dataSource, ShardWriteMetrics metrics) {
+            this.dataSource = dataSource;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void close() {
+            metrics.close();
+            dataSource.close();
+        }
+    }
+
+    private final ClickHouseConfig clickHouseConfig;
+    private final Driver driver;
+    private final String serverUrl;
+
+    /**
+     * shard number -> pool
+     */
+    private final Map<Integer, ShardDataSource> dataSources = new ConcurrentHashMap<>();
+
+    /**
+     * Guarded by the class lock
+     */
+    private int references;
+
+    ShardConnectionPool(ClickHouseConfig clickHouseConfig, Driver driver) {
+        this.clickHouseConfig = clickHouseConfig;
+        this.driver = driver;
+
+        String url = clickHouseConfig.getUrl();
+        if (url.lastIndexOf('?') == -1) {
+            // The URL has param
+            url += "?";
+        }
+        this.serverUrl = url;
+    }
+
+    /**
+     * Run the writer on a pooled connection of the given shard
+     */
+    public void insert(int shard, IOnceTableWriter writer) throws Throwable {
+        ShardDataSource shardDataSource = dataSources.computeIfAbsent(shard, this::createDataSource);
+
+        long start = System.nanoTime();
+        try (Connection connection = shardDataSource.dataSource.getConnection()) {
+            writer.run(connection);
+        } catch (Throwable e) {
+            shardDataSource.metrics.onFailed(System.nanoTime() - start);
+            throw e;
+        }
+        shardDataSource.metrics.onFlushed(writer.getInsertRows(), System.nanoTime() - start);
+    }
+
+    private ShardDataSource createDataSource(int shard) {
+        ClickHouseConfig.ShardPool poolConfig = clickHouseConfig.getShardPool();
+
+        DruidDataSource dataSource = new DruidDataSource();
+        dataSource.setName("clickhouse-shard-" + shard);
+        dataSource.setDriver(this.driver);
+        dataSource.setUrl(StringUtils.format("%s&custom_http_params=insert_shard_id=%d", this.serverUrl, shard));
+        dataSource.setUsername(clickHouseConfig.getUsername());
+        dataSource.setPassword(clickHouseConfig.getPassword());
+
+        dataSource.setInitialSize(0);
+        dataSource.setMinIdle(0);
+        dataSource.setMaxActive(poolConfig.getMaxActive());
+        dataSource.setMaxWait(poolConfig.getMaxWait().getDuration().toMillis());
+
+        // Health check
+        dataSource.setValidationQuery("SELECT 1");
+        dataSource.setTestWhileIdle(true);
+        dataSource.setTestOnBorrow(false);
+        dataSource.setTestOnReturn(false);
+        dataSource.setTimeBetweenEvictionRunsMillis(poolConfig.getHealthCheckInterval().getDuration().toMillis());
+        dataSource.setExceptionSorter(new NetworkExceptionSorter());
+
+        dataSource.setMinEvictableIdleTimeMillis(poolConfig.getMaxIdle().getDuration().toMillis());
+        dataSource.setPhyTimeoutMillis(poolConfig.getMaxLifetime().getDuration().toMillis());
+
+        // Fail the flush at once if the shard can't be connected, the caller keeps the batch and retries
+        dataSource.setFailFast(true);
+
+        log.info("Create connection pool to shard {} of {}", shard, clickHouseConfig.getUrl());
+        return new ShardDataSource(dataSource, new ShardWriteMetrics(clickHouseConfig.getDatabase(), shard, dataSource));
+    }
+
+    /**
+     * Close the pools of shards that are removed from the cluster
+     */
+    @Override
+    public void update(Map<String, Collection<Shard>> shards) {
+        if (shards.isEmpty()) {
+            // Shards are not known yet
+            return;
+        }
+
+        Set<Integer> shardNums = new HashSet<>();
+        for (Collection<Shard> tableShards : shards.values()) {
+            for (Shard shard : tableShards) {
+                shardNums.add(shard.shardNum);
+            }
+        }
+
+        Iterator<Map.Entry<Integer, ShardDataSource>> i = dataSources.entrySet().iterator();
+        while (i.hasNext()) {
+            Map.Entry<Integer, ShardDataSource> entry = i.next();
+            if (!shardNums.contains(entry.getKey())) {
+                log.info("Close connection pool to shard {} of {} since the shard no longer exists", entry.getKey(), clickHouseConfig.getUrl());
+                i.remove();
+                entry.getValue().close();
+            }
+        }
+    }
+
+    Set<Integer> getShards() {
+        return dataSources.keySet();
+    }
+
+    /**
+     * Release the reference acquired by {@link #acquire(ClickHouseConfig)}
+     */
+    public void release() {
+        synchronized (ShardConnectionPool.class) {
+            if (--references > 0) {
+                return;
+            }
+            POOLS.remove(clickHouseConfig.getUrl(), this);
+        }
+        LoadBalanceReviseTask.getInstance(clickHouseConfig).removeListener(this);
+        close();
+    }
+
+    @Override
+    public void close() {
+        log.info("Close connection pools to shards of {}", clickHouseConfig.getUrl());
+        Iterator<ShardDataSource> i = dataSources.values().iterator();
+        while (i.hasNext()) {
+            ShardDataSource dataSource = i.next();
+            i.remove();
+            dataSource.close();
+        }
+    }
+
+    /**
+     * Connections that fail because of network errors are closed instead of being returned to the pool
+     */
+    private static class NetworkExceptionSorter implements ExceptionSorter {
+        @Override
+        public boolean isExceptionFatal(SQLException e) {
+            for (Throwable t = e; t != null; t = t.getCause() == t ? null : t.getCause()) {
+                if (t instanceof Exception exception && RetryableExceptions.isExceptionRetryable(exception)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void configFromProperties(Properties properties) {
+        }
+    }
+}
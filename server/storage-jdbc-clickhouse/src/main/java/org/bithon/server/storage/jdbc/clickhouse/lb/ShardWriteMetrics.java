@@ -0,0 +1,120 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.jdbc.clickhouse.lb;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import org.bithon.server.commons.management.MBeanRegistration;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+class ShardWriteMetrics implements ShardWriteMetricsMXBean, AutoCloseable {
+
+    private final DruidDataSource dataSource;
+
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong failedFlushCount = new AtomicLong();
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong totalFlushLatencyNanos = new AtomicLong();
+    private final AtomicLong maxFlushLatencyNanos = new AtomicLong();
+    private volatile long lastFlushLatencyNanos;
+
+    private final MBeanRegistration registration;
+
+    ShardWriteMetrics(String database, int shard, DruidDataSource dataSource) {
+        this.dataSource = dataSource;
+        this.registration = MBeanRegistration.register(this,
+                                                       "org.bithon.server:type=ClickHouseShardWriter,database=" + database + ",shard=" + shard,
+                                                       "ClickHouse shard " + shard);
+    }
+
+    void onFlushed(int rows, long latencyNanos) {
+        flushedRows.addAndGet(rows);
+        onFlush(latencyNanos);
+    }
+
+    void onFailed(long latencyNanos) {
+        failedFlushCount.incrementAndGet();
+        onFlush(latencyNanos);
+    }
+
+    private void onFlush(long latencyNanos) {
+        flushCount.incrementAndGet();
+        totalFlushLatencyNanos.addAndGet(latencyNanos);
+        maxFlushLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+        lastFlushLatencyNanos = latencyNanos;
+    }
+
+    @Override
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    @Override
+    public long getFailedFlushCount() {
+        return failedFlushCount.get();
+    }
+
+    @Override
+    public long getFlushedRows() {
+        return flushedRows.get();
+    }
+
+    @Override
+    public double getAvgFlushLatencyMs() {
+        long count = flushCount.get();
+        return count == 0 ? 0 : totalFlushLatencyNanos.get() / 1_000_000.0 / count;
+    }
+
+    @Override
+    public long getMaxFlushLatencyMs() {
+        return TimeUnit.NANOSECONDS.toMillis(maxFlushLatencyNanos.get());
+    }
+
+    @Override
+    public long getLastFlushLatencyMs() {
+        return TimeUnit.NANOSECONDS.toMillis(lastFlushLatencyNanos);
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return dataSource.getActiveCount();
+    }
+
+    @Override
+    public int getIdleConnections() {
+        return dataSource.getPoolingCount();
+    }
+
+    @Override
+    public long getCreatedConnections() {
+        return dataSource.getCreateCount();
+    }
+
+    @Override
+    public long getClosedConnections() {
+        return dataSource.getDestroyCount() + dataSource.getDiscardCount();
+    }
+
+    @Override
+    public void close() {
+        registration.close();
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.jdbc.clickhouse.lb;
+
+/**
+ * Metrics of the writes to one shard by the client side load balanced writers, exposed over JMX.
+ * Counters are accumulated since the first write to the shard.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public interface ShardWriteMetricsMXBean {
+
+    long getFlushCount();
+
+    long getFailedFlushCount();
+
+    long getFlushedRows();
+
+    /**
+     * The latency includes the time waiting for a connection from the pool
+     */
+    double getAvgFlushLatencyMs();
+
+    long getMaxFlushLatencyMs();
+
+    long getLastFlushLatencyMs();
+
+    /**
+     * Number of connections that are being used by flushes
+     */
+    int getActiveConnections();
+
+    int getIdleConnections();
+
+    /**
+     * Number of physical connections that have been established to the shard
+     */
+    long getCreatedConnections();
+
+    /**
+     * Number of physical connections that have been closed because they're idle, expired or broken
+     */
+    long getClosedConnections();
+}
@@ -16,25 +16,21 @@
 
 package org.bithon.server.storage.jdbc.clickhouse.metric;
 
-import com.clickhouse.client.config.ClickHouseDefaults;
 import lombok.extern.slf4j.Slf4j;
-import org.bithon.component.commons.utils.StringUtils;
 import org.bithon.server.storage.jdbc.clickhouse.ClickHouseConfig;
-import org.bithon.server.storage.jdbc.clickhouse.JdbcDriver;
 import org.bithon.server.storage.jdbc.clickhouse.common.exception.RetryableExceptions;
 import org.bithon.server.storage.jdbc.clickhouse.lb.ILoadBalancer;
 import org.bithon.server.storage.jdbc.clickhouse.lb.IShardsUpdateListener;
 import org.bithon.server.storage.jdbc.clickhouse.lb.LoadBalanceReviseTask;
 import org.bithon.server.storage.jdbc.clickhouse.lb.Shard;
+import org.bithon.server.storage.jdbc.clickhouse.lb.ShardConnectionPool;
 import org.bithon.server.storage.jdbc.common.IOnceTableWriter;
 import org.bithon.server.storage.jdbc.metric.MetricJdbcWriter;
 import org.bithon.server.storage.jdbc.metric.MetricTable;
 import org.jooq.DSLContext;
 
-import java.sql.Connection;
 import java.util.Collection;
 import java.util.Map;
-import java.util.Properties;
 
 /**
  * The writer that implements a client side load balancing which would greatly reduce
@@ -47,7 +43,7 @@ public class LoadBalancedMetricWriter extends MetricJdbcWriter implements IShard
 
     private final ClickHouseConfig clickHouseConfig;
     private final ILoadBalancer loadBalancer;
-    private final String serverUrl;
+    private final ShardConnectionPool connectionPool;
 
     public LoadBalancedMetricWriter(DSLContext dslContext,
                                     ClickHouseConfig clickHouseConfig,
@@ -57,12 +53,7 @@ public class LoadBalancedMetricWriter extends MetricJdbcWriter implements IShard
         this.clickHouseConfig = clickHouseConfig;
         this.loadBalancer = clickHouseConfig.getLoadBalancingPolicy().create();
 
-        String url = clickHouseConfig.getUrl();
-        if (url.lastIndexOf('?') == -1) {
-            // The URL has param
-            url += "?";
-        }
-        this.serverUrl = url;
+        this.connectionPool = ShardConnectionPool.acquire(clickHouseConfig);
 
         LoadBalanceReviseTask task = LoadBalanceReviseTask.getInstance(clickHouseConfig);
         task.addListener(this);
@@ -71,6 +62,8 @@ public class LoadBalancedMetricWriter extends MetricJdbcWriter implements IShard
     @Override
     public void close() {
         LoadBalanceReviseTask.getInstance(clickHouseConfig).removeListener(this);
+        this.connectionPool.release();
+        super.close();
     }
 
     @Override
@@ -82,16 +75,7 @@ public class LoadBalancedMetricWriter extends MetricJdbcWriter implements IShard
     @Override
     protected void doInsert(IOnceTableWriter writer) throws Throwable {
         int shard = this.loadBalancer.nextShard(writer.getInsertRows());
-
-        Properties props = new Properties();
-        props.put(ClickHouseDefaults.USER.getKey(), this.clickHouseConfig.getUsername());
-        props.put(ClickHouseDefaults.PASSWORD.getKey(), this.clickHouseConfig.getPassword());
-        try (Connection connection = new JdbcDriver().connect(StringUtils.format("%s&custom_http_params=insert_shard_id=%d",
-                                                                                 this.serverUrl,
-                                                                                 shard),
-                                                              props)) {
-            writer.run(connection);
-        }
+        this.connectionPool.insert(shard, writer);
 
         log.info("Flushed {} rows to {} on shard {} with strategy {}", writer.getInsertRows(), table.getName(), shard, this.loadBalancer.getStrategyName());
     }
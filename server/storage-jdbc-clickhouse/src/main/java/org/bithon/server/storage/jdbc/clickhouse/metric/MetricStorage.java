@@ -41,6 +41,7 @@ import org.bithon.server.storage.jdbc.metric.MetricJdbcStorage;
 import org.bithon.server.storage.jdbc.metric.MetricJdbcStorageCleaner;
 import org.bithon.server.storage.jdbc.metric.MetricJdbcWriter;
 import org.bithon.server.storage.jdbc.metric.MetricTable;
+import org.bithon.server.storage.jdbc.metric.rollup.MetricRollupManager;
 import org.bithon.server.storage.metrics.IMetricWriter;
 import org.bithon.server.storage.metrics.MetricStorageConfig;
 import org.jooq.DSLContext;
@@ -76,17 +77,19 @@ public class MetricStorage extends MetricJdbcStorage {
         if (!this.storageConfig.isCreateTable()) {
             return;
         }
-        new TableCreator(config, this.dslContext).createIfNotExist(table);
+        TableCreator tableCreator = new TableCreator(config, this.dslContext);
+        tableCreator.createIfNotExist(table);
+        tableCreator.addColumnsIfNotExist(table);
     }
 
     @Override
-    protected MetricTable toMetricTable(ISchema schema) {
-        return new MetricTable(schema, true);
+    protected MetricTable toMetricTable(ISchema schema, String tableName) {
+        return new MetricTable(tableName, schema, true);
     }
 
     @Override
     public IExpirationRunnable getExpirationRunnable() {
-        return new StorageCleaner(dslContext, schemaManager, this.storageConfig.getTtl(), config, this.sqlDialect);
+        return new StorageCleaner(dslContext, schemaManager, this.storageConfig.getTtl(), config, this.sqlDialect, this.rollupManager);
     }
 
     static class StorageCleaner extends MetricJdbcStorageCleaner {
@@ -96,8 +99,9 @@ public class MetricStorage extends MetricJdbcStorage {
                                  SchemaManager schemaManager,
                                  ExpirationConfig ttlConfig,
                                  ClickHouseConfig config,
-                                 ISqlDialect sqlDialect) {
-            super(dslContext, schemaManager, ttlConfig, sqlDialect);
+                                 ISqlDialect sqlDialect,
+                                 MetricRollupManager rollupManager) {
+            super(dslContext, schemaManager, ttlConfig, sqlDialect, rollupManager);
             this.config = config;
         }
 
@@ -110,8 +114,7 @@ public class MetricStorage extends MetricJdbcStorage {
         }
 
         @Override
-        protected void expireImpl(ISchema schema, Timestamp before, List<TimeSpan> skipDateList) {
-            String table = schema.getDataStoreSpec().getStore();
+        protected void expireTable(String table, String timestampColumn, Timestamp before, List<TimeSpan> skipDateList) {
             new DataCleaner(config, dslContext).deletePartition(table, before, skipDateList);
         }
     }
@@ -16,25 +16,21 @@
 
 package org.bithon.server.storage.jdbc.clickhouse.trace;
 
-import com.clickhouse.client.config.ClickHouseDefaults;
 import lombok.extern.slf4j.Slf4j;
-import org.bithon.component.commons.utils.StringUtils;
 import org.bithon.server.storage.jdbc.clickhouse.ClickHouseConfig;
-import org.bithon.server.storage.jdbc.clickhouse.JdbcDriver;
 import org.bithon.server.storage.jdbc.clickhouse.lb.ILoadBalancer;
 import org.bithon.server.storage.jdbc.clickhouse.lb.IShardsUpdateListener;
 import org.bithon.server.storage.jdbc.clickhouse.lb.LoadBalanceReviseTask;
 import org.bithon.server.storage.jdbc.clickhouse.lb.Shard;
+import org.bithon.server.storage.jdbc.clickhouse.lb.ShardConnectionPool;
 import org.bithon.server.storage.jdbc.common.IOnceTableWriter;
 import org.bithon.server.storage.jdbc.common.jooq.Tables;
 import org.bithon.server.storage.tracing.TraceStorageConfig;
 import org.jooq.DSLContext;
 
-import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Collection;
 import java.util.Map;
-import java.util.Properties;
 
 /**
  * @author frank.chen021@outlook.com
@@ -48,7 +44,7 @@ class LoadBalancedTraceWriter extends TraceWriter implements IShardsUpdateListen
     private final ILoadBalancer mappingTableLoadBalancer;
 
     private final ClickHouseConfig clickHouseConfig;
-    private final String serverUrl;
+    private final ShardConnectionPool connectionPool;
 
     LoadBalancedTraceWriter(ClickHouseConfig clickHouseConfig,
                             TraceStorageConfig traceStorageConfig,
@@ -60,12 +56,7 @@ class LoadBalancedTraceWriter extends TraceWriter implements IShardsUpdateListen
         this.indexTableLoadBalancer = clickHouseConfig.getLoadBalancingPolicy().create();
         this.mappingTableLoadBalancer = clickHouseConfig.getLoadBalancingPolicy().create();
 
-        String url = clickHouseConfig.getUrl();
-        if (url.lastIndexOf('?') == -1) {
-            // The URL has param
-            url += "?";
-        }
-        serverUrl = url;
+        this.connectionPool = ShardConnectionPool.acquire(clickHouseConfig);
 
         LoadBalanceReviseTask.getInstance(clickHouseConfig)
                              .addListener(this);
@@ -87,6 +78,10 @@ class LoadBalancedTraceWriter extends TraceWriter implements IShardsUpdateListen
     public void close() {
         LoadBalanceReviseTask.getInstance(this.clickHouseConfig)
                              .removeListener(this);
+        this.connectionPool.release();
+
+        // Shut down the executor of concurrent table writes
+        super.close();
     }
 
     @Override
@@ -103,15 +98,8 @@ class LoadBalancedTraceWriter extends TraceWriter implements IShardsUpdateListen
         }
 
         int shard = loadBalancer.nextShard(writer.getInsertRows());
-
-        Properties props = new Properties();
-        props.put(ClickHouseDefaults.USER.getKey(), this.clickHouseConfig.getUsername());
-        props.put(ClickHouseDefaults.PASSWORD.getKey(), this.clickHouseConfig.getPassword());
-        try (Connection connection = new JdbcDriver().connect(StringUtils.format("%s&custom_http_params=insert_shard_id=%d",
-                                                                                 this.serverUrl,
-                                                                                 shard),
-                                                              props)) {
-            writer.run(connection);
+        try {
+            this.connectionPool.insert(shard, writer);
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -0,0 +1,110 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.jdbc.clickhouse.lb;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class LeastRowsLoadBalancerTest {
+
+    @Test
+    public void testNoShards() {
+        LeastRowsLoadBalancer loadBalancer = new LeastRowsLoadBalancer();
+        Assertions.assertEquals(0, loadBalancer.nextShard(10));
+
+        // Empty shards are ignored
+        loadBalancer.update(Collections.emptyList());
+        Assertions.assertEquals(0, loadBalancer.nextShard(10));
+    }
+
+    @Test
+    public void testSelectShardOfLeastRows() {
+        LeastRowsLoadBalancer loadBalancer = new LeastRowsLoadBalancer();
+        loadBalancer.update(Arrays.asList(new Shard(1, 0, 100),
+                                          new Shard(2, 0, 0),
+                                          new Shard(3, 0, 50)));
+
+        // shard 2: 0 -> 60
+        Assertions.assertEquals(2, loadBalancer.nextShard(60));
+        // shard 3: 50 -> 80
+        Assertions.assertEquals(3, loadBalancer.nextShard(30));
+        // shard 2: 60 -> 160
+        Assertions.assertEquals(2, loadBalancer.nextShard(100));
+        // shard 3: 80 -> 100
+        Assertions.assertEquals(3, loadBalancer.nextShard(20));
+
+        // Rows of shards are reset by the update
+        loadBalancer.update(Arrays.asList(new Shard(1, 0, 0),
+                                          new Shard(2, 0, 10)));
+        Assertions.assertEquals(1, loadBalancer.nextShard(20));
+        Assertions.assertEquals(2, loadBalancer.nextShard(20));
+    }
+
+    @Test
+    public void testConcurrentNextShard() throws Exception {
+        LeastRowsLoadBalancer loadBalancer = new LeastRowsLoadBalancer();
+        loadBalancer.update(Arrays.asList(new Shard(1, 0, 0),
+                                          new Shard(2, 0, 0),
+                                          new Shard(3, 0, 0),
+                                          new Shard(4, 0, 0)));
+
+        int threadCount = 8;
+        int loops = 20_000;
+        Map<Integer, AtomicLong> rowsByShard = new ConcurrentHashMap<>();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                Map<Integer, Long> local = new HashMap<>();
+                for (int j = 0; j < loops; j++) {
+                    local.merge(loadBalancer.nextShard(1), 1L, Long::sum);
+                }
+                local.forEach((shard, rows) -> rowsByShard.computeIfAbsent(shard, k -> new AtomicLong()).addAndGet(rows));
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long total = (long) threadCount * loops;
+        Assertions.assertEquals(total, rowsByShard.values().stream().mapToLong(AtomicLong::get).sum());
+
+        // No update is lost, so the rows are evenly spread among shards
+        Assertions.assertEquals(4, rowsByShard.size());
+        for (AtomicLong rows : rowsByShard.values()) {
+            Assertions.assertEquals(total / 4.0, rows.get(), total * 0.01);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.jdbc.clickhouse.lb;
+
+import org.bithon.server.storage.jdbc.clickhouse.ClickHouseConfig;
+import org.bithon.server.storage.jdbc.common.IOnceTableWriter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class ShardConnectionPoolTest {
+
+    private ShardConnectionPool pool;
+
+    /**
+     * The exception thrown by the INSERT statement, null if the statement succeeds
+     */
+    private SQLException insertException;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        ClickHouseConfig config = new ClickHouseConfig();
+        config.setUrl("jdbc:clickhouse://localhost:8123/bithon");
+        config.setDatabase("bithon_pool_test");
+        config.setUsername("default");
+        config.setPassword("");
+
+        Driver driver = Mockito.mock(Driver.class);
+        Mockito.when(driver.acceptsURL(Mockito.anyString())).thenReturn(true);
+        Mockito.when(driver.connect(Mockito.anyString(), Mockito.any(Properties.class))).thenAnswer((invocation) -> {
+            PreparedStatement statement = Mockito.mock(PreparedStatement.class);
+            Mockito.when(statement.executeBatch()).thenAnswer((i) -> {
+                if (insertException != null) {
+                    throw insertException;
+                }
+                return new int[]{1};
+            });
+
+            // For the validation query
+            ResultSet resultSet = Mockito.mock(ResultSet.class);
+            Mockito.when(resultSet.next()).thenReturn(true);
+            Statement validationStatement = Mockito.mock(Statement.class);
+            Mockito.when(validationStatement.executeQuery(Mockito.anyString())).thenReturn(resultSet);
+
+            Connection connection = Mockito.mock(Connection.class);
+            Mockito.when(connection.prepareStatement(Mockito.anyString())).thenReturn(statement);
+            Mockito.when(connection.createStatement()).thenReturn(validationStatement);
+            return connection;
+        });
+
+        pool = new ShardConnectionPool(config, driver);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pool.close();
+    }
+
+    private static IOnceTableWriter writer() {
+        return new IOnceTableWriter() {
+            @Override
+            public String getTableName() {
+                return "test";
+            }
+
+            @Override
+            public int getInsertRows() {
+                return 1;
+            }
+
+            @Override
+            public void run(Connection connection) throws SQLException {
+                try (PreparedStatement statement = connection.prepareStatement("INSERT INTO test VALUES(1)")) {
+                    statement.executeBatch();
+                }
+            }
+        };
+    }
+
+    private static Object getShardMetric(int shard, String name) throws Exception {
+        return ManagementFactory.getPlatformMBeanServer()
+                                .getAttribute(new ObjectName("org.bithon.server:type=ClickHouseShardWriter,database=bithon_pool_test,shard=" + shard), name);
+    }
+
+    @Test
+    public void testConnectionReused() throws Throwable {
+        pool.insert(1, writer());
+        pool.insert(1, writer());
+
+        Assertions.assertEquals(2L, getShardMetric(1, "FlushCount"));
+        Assertions.assertEquals(1L, getShardMetric(1, "CreatedConnections"));
+        Assertions.assertEquals(1, getShardMetric(1, "IdleConnections"));
+    }
+
+    @Test
+    public void testDiscardConnectionOnNetworkError() throws Throwable {
+        insertException = new SQLException("Connection reset");
+        Assertions.assertThrows(SQLException.class, () -> pool.insert(1, writer()));
+
+        // The broken connection is closed instead of being returned to the pool
+        Assertions.assertEquals(1L, getShardMetric(1, "FailedFlushCount"));
+        Assertions.assertEquals(1L, getShardMetric(1, "ClosedConnections"));
+
+        // The next insert runs on a new connection
+        insertException = null;
+        pool.insert(1, writer());
+        Assertions.assertEquals(2L, getShardMetric(1, "CreatedConnections"));
+        Assertions.assertEquals(1L, getShardMetric(1, "ClosedConnections"));
+    }
+
+    @Test
+    public void testKeepConnectionOnNonNetworkError() throws Throwable {
+        insertException = new SQLException("Code: 62. DB::Exception: Syntax error");
+        Assertions.assertThrows(SQLException.class, () -> pool.insert(1, writer()));
+
+        Assertions.assertEquals(1L, getShardMetric(1, "FailedFlushCount"));
+        Assertions.assertEquals(1, getShardMetric(1, "IdleConnections"));
+        Assertions.assertEquals(0L, getShardMetric(1, "ClosedConnections"));
+    }
+
+    @Test
+    public void testEvictRemovedShards() throws Throwable {
+        pool.insert(1, writer());
+        pool.insert(2, writer());
+        Assertions.assertEquals(2, pool.getShards().size());
+
+        // No shard information yet
+        pool.update(Collections.emptyMap());
+        Assertions.assertEquals(2, pool.getShards().size());
+
+        pool.update(Map.of("test_local", Arrays.asList(new Shard(1, 0, 0))));
+        Assertions.assertEquals(Collections.singleton(1), pool.getShards());
+
+        // Metrics of the evicted shard are unregistered
+        Assertions.assertFalse(ManagementFactory.getPlatformMBeanServer()
+                                                .isRegistered(new ObjectName("org.bithon.server:type=ClickHouseShardWriter,database=bithon_pool_test,shard=2")));
+    }
+}
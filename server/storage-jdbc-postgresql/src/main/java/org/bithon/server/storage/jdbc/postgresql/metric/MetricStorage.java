@@ -24,6 +24,7 @@ import org.bithon.server.datasource.query.setting.QuerySettings;
 import org.bithon.server.datasource.reader.jdbc.dialect.SqlDialectManager;
 import org.bithon.server.storage.datasource.SchemaManager;
 import org.bithon.server.storage.jdbc.JdbcStorageProviderConfiguration;
+import org.bithon.server.storage.jdbc.common.TableColumnUpgrader;
 import org.bithon.server.storage.jdbc.metric.MetricJdbcStorage;
 import org.bithon.server.storage.jdbc.metric.MetricTable;
 import org.bithon.server.storage.jdbc.postgresql.TableCreator;
@@ -50,6 +51,7 @@ public class MetricStorage extends MetricJdbcStorage {
         }
 
         TableCreator.createTableIfNotExists(this.dslContext, table);
+        TableColumnUpgrader.addMissingColumns(this.dslContext, table);
     }
 }
 
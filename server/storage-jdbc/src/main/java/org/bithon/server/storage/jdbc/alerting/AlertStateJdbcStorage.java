@@ -29,9 +29,15 @@ import org.bithon.server.storage.alerting.pojo.AlertStatus;
 import org.bithon.server.storage.jdbc.JdbcStorageProviderConfiguration;
 import org.bithon.server.storage.jdbc.common.jooq.Tables;
 import org.jooq.DSLContext;
+import org.jooq.Query;
+import org.jooq.Record;
+import org.jooq.impl.DSL;
 
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -85,43 +91,59 @@ public class AlertStateJdbcStorage implements IAlertStateStorage {
     @Override
     public Map<String, AlertState> getAlertStates() {
         return dslContext.selectFrom(this.stateTableSelectName)
-                         .fetchMap(Tables.BITHON_ALERT_STATE.ALERT_ID, (record) -> {
-                             AlertState obj = new AlertState();
-                             obj.setStatus(AlertStatus.fromCode(record.get(Tables.BITHON_ALERT_STATE.ALERT_STATUS)));
-
-                             String payload = record.get(Tables.BITHON_ALERT_STATE.PAYLOAD);
-                             if (payload != null && !payload.isEmpty()) {
-                                 try {
-                                     obj.setPayload(objectMapper.readValue(payload, AlertState.Payload.class));
-                                 } catch (JsonProcessingException e) {
-                                     throw new RuntimeException(e);
-                                 }
-                             } else {
-                                 obj.setPayload(new AlertState.Payload());
-                             }
-
-                             Object timestamp = record.get(Tables.BITHON_ALERT_STATE.LAST_ALERT_AT);
-                             // It's strange that the returned object is typeof Timestamp under H2
-                             if (timestamp instanceof Timestamp) {
-                                 obj.setLastAlertAt(((Timestamp) timestamp).toLocalDateTime());
-                             } else {
-                                 obj.setLastAlertAt((LocalDateTime) timestamp);
-                             }
-                             obj.setLastRecordId(record.get(Tables.BITHON_ALERT_STATE.LAST_RECORD_ID));
-
-                             Object evaluatedAt = record.get(Tables.BITHON_ALERT_STATE.LAST_EVALUATED_AT);
-                             if (evaluatedAt instanceof Timestamp) {
-                                 obj.setLastEvaluatedAt(((Timestamp) evaluatedAt).toLocalDateTime());
-                             } else {
-                                 obj.setLastEvaluatedAt((LocalDateTime) evaluatedAt);
-                             }
-
-                             return obj;
-                         });
+                         .fetchMap(Tables.BITHON_ALERT_STATE.ALERT_ID, this::toAlertState);
+    }
+
+    @Override
+    public Map<String, AlertState> getAlertStates(Collection<String> alertIds) {
+        return dslContext.selectFrom(this.stateTableSelectName)
+                         .where(DSL.field(Tables.BITHON_ALERT_STATE.ALERT_ID.getUnqualifiedName()).in(alertIds))
+                         .fetchMap(Tables.BITHON_ALERT_STATE.ALERT_ID, this::toAlertState);
+    }
+
+    private AlertState toAlertState(Record record) {
+        AlertState obj = new AlertState();
+        obj.setStatus(AlertStatus.fromCode(record.get(Tables.BITHON_ALERT_STATE.ALERT_STATUS)));
+
+        String payload = record.get(Tables.BITHON_ALERT_STATE.PAYLOAD);
+        if (payload != null && !payload.isEmpty()) {
+            try {
+                obj.setPayload(objectMapper.readValue(payload, AlertState.Payload.class));
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            obj.setPayload(new AlertState.Payload());
+        }
+
+        Object timestamp = record.get(Tables.BITHON_ALERT_STATE.LAST_ALERT_AT);
+        // It's strange that the returned object is typeof Timestamp under H2
+        if (timestamp instanceof Timestamp) {
+            obj.setLastAlertAt(((Timestamp) timestamp).toLocalDateTime());
+        } else {
+            obj.setLastAlertAt((LocalDateTime) timestamp);
+        }
+        obj.setLastRecordId(record.get(Tables.BITHON_ALERT_STATE.LAST_RECORD_ID));
+
+        Object evaluatedAt = record.get(Tables.BITHON_ALERT_STATE.LAST_EVALUATED_AT);
+        if (evaluatedAt instanceof Timestamp) {
+            obj.setLastEvaluatedAt(((Timestamp) evaluatedAt).toLocalDateTime());
+        } else {
+            obj.setLastEvaluatedAt((LocalDateTime) evaluatedAt);
+        }
+
+        return obj;
     }
 
     @Override
     public void updateAlertStates(Map<String, AlertState> states) {
+        if (states.isEmpty()) {
+            return;
+        }
+
+        // Upsert all states in one batch
+        List<Query> queries = new ArrayList<>(states.size());
+        LocalDateTime now = new Timestamp(System.currentTimeMillis()).toLocalDateTime();
         for (Map.Entry<String, AlertState> entry : states.entrySet()) {
             String ruleId = entry.getKey();
             AlertState state = entry.getValue();
@@ -132,23 +154,24 @@ public class AlertStateJdbcStorage implements IAlertStateStorage {
                 throw new RuntimeException(e);
             }
 
-            LocalDateTime now = new Timestamp(System.currentTimeMillis()).toLocalDateTime();
-            dslContext.insertInto(Tables.BITHON_ALERT_STATE)
-                      .set(Tables.BITHON_ALERT_STATE.ALERT_ID, ruleId)
-                      .set(Tables.BITHON_ALERT_STATE.LAST_ALERT_AT, state.getLastAlertAt() == null ? new Timestamp(0).toLocalDateTime() : state.getLastAlertAt())
-                      .set(Tables.BITHON_ALERT_STATE.LAST_RECORD_ID, state.getLastRecordId() == null ? "" : state.getLastRecordId())
-                      .set(Tables.BITHON_ALERT_STATE.UPDATE_AT, now)
-                      .set(Tables.BITHON_ALERT_STATE.PAYLOAD, payloadString)
-                      .set(Tables.BITHON_ALERT_STATE.ALERT_STATUS, state.getStatus().statusCode())
-                      .set(Tables.BITHON_ALERT_STATE.LAST_EVALUATED_AT, now)
-                      .onDuplicateKeyUpdate()
-                      .set(Tables.BITHON_ALERT_STATE.LAST_EVALUATED_AT, now)
-                      .set(Tables.BITHON_ALERT_STATE.LAST_ALERT_AT, state.getLastAlertAt() == null ? new Timestamp(0).toLocalDateTime() : state.getLastAlertAt())
-                      .set(Tables.BITHON_ALERT_STATE.LAST_RECORD_ID, state.getLastRecordId() == null ? "" : state.getLastRecordId())
-                      .set(Tables.BITHON_ALERT_STATE.UPDATE_AT, now)
-                      .set(Tables.BITHON_ALERT_STATE.PAYLOAD, payloadString)
-                      .set(Tables.BITHON_ALERT_STATE.ALERT_STATUS, state.getStatus().statusCode())
-                      .execute();
+            // States might be written some time after evaluation, use the evaluation time if it's available
+            LocalDateTime evaluatedAt = state.getLastEvaluatedAt() == null ? now : state.getLastEvaluatedAt();
+            queries.add(dslContext.insertInto(Tables.BITHON_ALERT_STATE)
+                                  .set(Tables.BITHON_ALERT_STATE.ALERT_ID, ruleId)
+                                  .set(Tables.BITHON_ALERT_STATE.LAST_ALERT_AT, state.getLastAlertAt() == null ? new Timestamp(0).toLocalDateTime() : state.getLastAlertAt())
+                                  .set(Tables.BITHON_ALERT_STATE.LAST_RECORD_ID, state.getLastRecordId() == null ? "" : state.getLastRecordId())
+                                  .set(Tables.BITHON_ALERT_STATE.UPDATE_AT, now)
+                                  .set(Tables.BITHON_ALERT_STATE.PAYLOAD, payloadString)
+                                  .set(Tables.BITHON_ALERT_STATE.ALERT_STATUS, state.getStatus().statusCode())
+                                  .set(Tables.BITHON_ALERT_STATE.LAST_EVALUATED_AT, evaluatedAt)
+                                  .onDuplicateKeyUpdate()
+                                  .set(Tables.BITHON_ALERT_STATE.LAST_EVALUATED_AT, evaluatedAt)
+                                  .set(Tables.BITHON_ALERT_STATE.LAST_ALERT_AT, state.getLastAlertAt() == null ? new Timestamp(0).toLocalDateTime() : state.getLastAlertAt())
+                                  .set(Tables.BITHON_ALERT_STATE.LAST_RECORD_ID, state.getLastRecordId() == null ? "" : state.getLastRecordId())
+                                  .set(Tables.BITHON_ALERT_STATE.UPDATE_AT, now)
+                                  .set(Tables.BITHON_ALERT_STATE.PAYLOAD, payloadString)
+                                  .set(Tables.BITHON_ALERT_STATE.ALERT_STATUS, state.getStatus().statusCode()));
         }
+        dslContext.batch(queries).execute();
     }
 }
@@ -0,0 +1,64 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.jdbc.common;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Table;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Tables are only created if they don't exist,
+ * so columns that are added to a schema later, e.g. histogram columns of metrics, are not in the tables created before.
+ * This class adds such columns to the existing table.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Slf4j
+public class TableColumnUpgrader {
+
+    public static void addMissingColumns(DSLContext dslContext, Table<?> table) {
+        List<Table<?>> existingTables = dslContext.meta()
+                                                  .getTables(table.getName())
+                                                  .stream()
+                                                  .filter((t) -> t.getName().equalsIgnoreCase(table.getName()))
+                                                  .collect(Collectors.toList());
+        if (existingTables.isEmpty()) {
+            return;
+        }
+
+        Set<String> existingColumns = existingTables.get(0)
+                                                    .fieldStream()
+                                                    .map((field) -> field.getName().toLowerCase(Locale.ENGLISH))
+                                                    .collect(Collectors.toSet());
+        for (Field<?> field : table.fields()) {
+            if (existingColumns.contains(field.getName().toLowerCase(Locale.ENGLISH))) {
+                continue;
+            }
+
+            log.info("Adding column [{}] to table [{}]", field.getName(), table.getName());
+            dslContext.alterTable(table)
+                      .addColumn(field)
+                      .execute();
+        }
+    }
+}
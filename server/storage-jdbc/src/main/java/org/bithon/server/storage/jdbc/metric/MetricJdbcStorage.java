@@ -19,7 +19,9 @@ package org.bithon.server.storage.jdbc.metric;
 import com.fasterxml.jackson.annotation.JacksonInject;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.OptBoolean;
+import org.bithon.component.commons.utils.Preconditions;
 import org.bithon.server.commons.time.TimeSpan;
+import org.bithon.server.datasource.DefaultSchema;
 import org.bithon.server.datasource.ISchema;
 import org.bithon.server.datasource.query.IDataSourceReader;
 import org.bithon.server.datasource.query.setting.QuerySettings;
@@ -29,9 +31,13 @@ import org.bithon.server.datasource.reader.jdbc.dialect.SqlDialectManager;
 import org.bithon.server.storage.common.expiration.IExpirationRunnable;
 import org.bithon.server.storage.datasource.SchemaManager;
 import org.bithon.server.storage.jdbc.JdbcStorageProviderConfiguration;
+import org.bithon.server.storage.jdbc.common.TableColumnUpgrader;
 import org.bithon.server.storage.jdbc.common.jooq.Tables;
+import org.bithon.server.storage.jdbc.metric.rollup.MetricRollupManager;
+import org.bithon.server.storage.jdbc.metric.rollup.MetricRollupTier;
 import org.bithon.server.storage.metrics.IMetricStorage;
 import org.bithon.server.storage.metrics.IMetricWriter;
+import org.bithon.server.storage.metrics.MetricRollupConfig;
 import org.bithon.server.storage.metrics.MetricStorageConfig;
 import org.jooq.DSLContext;
 import org.jooq.Record;
@@ -40,7 +46,11 @@ import org.jooq.Result;
 import java.sql.Timestamp;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -60,6 +70,7 @@ public class MetricJdbcStorage implements IMetricStorage {
     protected final SchemaManager schemaManager;
     protected final ISqlDialect sqlDialect;
     protected final QuerySettings querySettings;
+    protected final MetricRollupManager rollupManager;
     private final Map<String, Boolean> schemaInitialized = new HashMap<>();
 
     @JsonCreator
@@ -81,6 +92,7 @@ public class MetricJdbcStorage implements IMetricStorage {
         this.schemaManager = schemaManager;
         this.storageConfig = storageConfig;
         this.querySettings = querySettings;
+        this.rollupManager = new MetricRollupManager(dslContext, storageConfig.getRollup());
     }
 
     @Override
@@ -96,7 +108,11 @@ public class MetricJdbcStorage implements IMetricStorage {
     public final IDataSourceReader createMetricReader(ISchema schema) {
         initializeMetricTableIfNecessary(schema, toMetricTable(schema));
 
-        return this.createReader(this.dslContext, this.sqlDialect, this.querySettings);
+        IDataSourceReader reader = this.createReader(this.dslContext, this.sqlDialect, this.querySettings);
+        if (reader instanceof JdbcDataSourceReader jdbcReader) {
+            jdbcReader.withRollupTables(this.rollupManager.getRollupTables(schema.getName()));
+        }
+        return reader;
     }
 
     private void initializeMetricTableIfNecessary(ISchema schema, MetricTable table) {
@@ -115,10 +131,43 @@ public class MetricJdbcStorage implements IMetricStorage {
                 return;
             }
             this.initialize(schema, table);
+            this.rollupManager.register(schema.getName(), createRollupTiers(schema, table));
             schemaInitialized.put(schema.getName(), true);
         }
     }
 
+    private List<MetricRollupTier> createRollupTiers(ISchema schema, MetricTable table) {
+        List<MetricRollupConfig.Tier> tierConfigs = new ArrayList<>(this.storageConfig.getRollup().getTiers(schema.getName()));
+        if (tierConfigs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        tierConfigs.sort(Comparator.comparingLong((tierConfig) -> tierConfig.getGranularity().getMilliseconds()));
+
+        List<MetricRollupTier> tiers = new ArrayList<>(tierConfigs.size());
+        MetricRollupTier sourceTier = null;
+        for (MetricRollupConfig.Tier tierConfig : tierConfigs) {
+            Duration granularity = Duration.ofMillis(tierConfig.getGranularity().getMilliseconds());
+            Preconditions.checkIfTrue(granularity.toMinutes() > 0
+                                      && (sourceTier == null || granularity.toMillis() % sourceTier.getGranularity().toMillis() == 0),
+                                      "The granularity [%s] of rollup tier of [%s] must be at least 1 minute and be a multiple of the previous tier",
+                                      tierConfig.getGranularity(),
+                                      schema.getName());
+
+            MetricTable tierTable = toMetricTable(schema, MetricRollupTier.getTableName(table.getName(), granularity));
+            this.initialize(schema, tierTable);
+
+            sourceTier = new MetricRollupTier((DefaultSchema) schema,
+                                              tierTable,
+                                              granularity,
+                                              tierConfig.getTtl(),
+                                              sourceTier == null ? table : sourceTier.getTable(),
+                                              sourceTier,
+                                              createWriter(dslContext, tierTable));
+            tiers.add(sourceTier);
+        }
+        return tiers;
+    }
+
     @Override
     public final List<String> getBaselineDates() {
         return getBaselineRecords().stream()
@@ -161,8 +210,15 @@ public class MetricJdbcStorage implements IMetricStorage {
                   .execute();
     }
 
-    protected MetricTable toMetricTable(ISchema schema) {
-        return new MetricTable(schema, false);
+    protected final MetricTable toMetricTable(ISchema schema) {
+        return toMetricTable(schema, schema.getDataStoreSpec().getStore());
+    }
+
+    /**
+     * @param tableName the store name of the schema, or the name of one of its rollup tables
+     */
+    protected MetricTable toMetricTable(ISchema schema, String tableName) {
+        return new MetricTable(tableName, schema, false);
     }
 
     protected IMetricWriter createWriter(DSLContext dslContext, MetricTable table) {
@@ -182,11 +238,13 @@ public class MetricJdbcStorage implements IMetricStorage {
                   .columns(table.fields())
                   .indexes(table.getIndexes())
                   .execute();
+
+        TableColumnUpgrader.addMissingColumns(dslContext, table);
     }
 
     @Override
     public IExpirationRunnable getExpirationRunnable() {
-        return new MetricJdbcStorageCleaner(dslContext, schemaManager, this.storageConfig.getTtl(), this.sqlDialect);
+        return new MetricJdbcStorageCleaner(dslContext, schemaManager, this.storageConfig.getTtl(), this.sqlDialect, this.rollupManager);
     }
 
     @Override
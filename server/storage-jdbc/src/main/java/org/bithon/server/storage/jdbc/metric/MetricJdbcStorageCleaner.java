@@ -16,6 +16,8 @@
 
 package org.bithon.server.storage.jdbc.metric;
 
+import lombok.extern.slf4j.Slf4j;
+import org.bithon.component.commons.time.DateTime;
 import org.bithon.component.commons.utils.StringUtils;
 import org.bithon.server.commons.time.TimeSpan;
 import org.bithon.server.datasource.ISchema;
@@ -23,6 +25,8 @@ import org.bithon.server.datasource.reader.jdbc.dialect.ISqlDialect;
 import org.bithon.server.storage.common.expiration.ExpirationConfig;
 import org.bithon.server.storage.datasource.SchemaManager;
 import org.bithon.server.storage.jdbc.common.jooq.Tables;
+import org.bithon.server.storage.jdbc.metric.rollup.MetricRollupManager;
+import org.bithon.server.storage.jdbc.metric.rollup.MetricRollupTier;
 import org.bithon.server.storage.metrics.ttl.MetricStorageCleaner;
 import org.jooq.DSLContext;
 import org.jooq.DeleteConditionStep;
@@ -36,6 +40,7 @@ import org.jooq.impl.TableImpl;
 import java.sql.Timestamp;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
@@ -46,20 +51,50 @@ import java.util.stream.Collectors;
  * @author Frank Chen
  * @date 5/1/24 10:34 am
  */
+@Slf4j
 public class MetricJdbcStorageCleaner extends MetricStorageCleaner {
     protected final DSLContext dslContext;
     protected final SchemaManager schemaManager;
     protected final ExpirationConfig ttlConfig;
     protected final ISqlDialect sqlDialect;
+    protected final MetricRollupManager rollupManager;
 
     protected MetricJdbcStorageCleaner(DSLContext dslContext,
                                        SchemaManager schemaManager,
                                        ExpirationConfig ttlConfig,
-                                       ISqlDialect sqlDialect) {
+                                       ISqlDialect sqlDialect,
+                                       MetricRollupManager rollupManager) {
         this.dslContext = dslContext;
         this.schemaManager = schemaManager;
         this.ttlConfig = ttlConfig;
         this.sqlDialect = sqlDialect;
+        this.rollupManager = rollupManager;
+    }
+
+    @Override
+    public void expire(Timestamp before) {
+        super.expire(before);
+
+        List<MetricRollupTier> tiers = rollupManager.getTiers();
+        if (tiers.isEmpty()) {
+            return;
+        }
+
+        List<TimeSpan> skipDateList = getSkipDateList();
+        for (MetricRollupTier tier : tiers) {
+            // Each tier has its own TTL, fall back to the TTL of the storage
+            Timestamp tierBefore = tier.getTtl() == null ? before : TimeSpan.now()
+                                                                            .floor(Duration.ofMinutes(1))
+                                                                            .before(tier.getTtl().getMilliseconds(), TimeUnit.MILLISECONDS)
+                                                                            .toTimestamp();
+
+            log.info("\tClean up rollup table [{}] before {}", tier.getTable().getName(), DateTime.toYYYYMMDDhhmmss(tierBefore));
+            try {
+                expireTable(tier.getTable().getName(), tier.getTable().getTimestampField().getName(), tierBefore, skipDateList);
+            } catch (Exception e) {
+                log.error("Failed to clean rollup table {}", tier.getTable().getName(), e);
+            }
+        }
     }
 
     @Override
@@ -115,11 +150,14 @@ public class MetricJdbcStorageCleaner extends MetricStorageCleaner {
         }
     }
 
-    @SuppressWarnings({"unchecked", "rawtypes"})
     @Override
-    protected void expireImpl(ISchema schema, Timestamp before, List<TimeSpan> skipDateList) {
-        final DeleteTable table = new DeleteTable(schema.getDataStoreSpec().getStore(),
-                                                  schema.getTimestampSpec().getColumnName());
+    protected final void expireImpl(ISchema schema, Timestamp before, List<TimeSpan> skipDateList) {
+        expireTable(schema.getDataStoreSpec().getStore(), schema.getTimestampSpec().getColumnName(), before, skipDateList);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    protected void expireTable(String tableName, String timestampColumn, Timestamp before, List<TimeSpan> skipDateList) {
+        final DeleteTable table = new DeleteTable(tableName, timestampColumn);
         DeleteConditionStep delete = dslContext.deleteFrom(table)
                                                .where(table.timestampField.le(before));
         if (!skipDateList.isEmpty()) {
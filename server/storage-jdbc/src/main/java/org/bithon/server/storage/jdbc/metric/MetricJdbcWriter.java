@@ -20,6 +20,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.bithon.component.commons.utils.CollectionUtils;
 import org.bithon.component.commons.utils.StringUtils;
 import org.bithon.server.datasource.input.IInputRow;
+import org.bithon.server.storage.common.RetryableWriteException;
 import org.bithon.server.storage.jdbc.common.IOnceTableWriter;
 import org.bithon.server.storage.metrics.IMetricWriter;
 import org.jooq.DSLContext;
@@ -53,6 +54,15 @@ public class MetricJdbcWriter implements IMetricWriter {
 
     @Override
     public final void write(List<IInputRow> inputRowList) {
+        try {
+            writeOrThrowRetryable(inputRowList);
+        } catch (RetryableWriteException e) {
+            log.error(e.getMessage(), e.getCause());
+        }
+    }
+
+    @Override
+    public final void writeOrThrowRetryable(List<IInputRow> inputRowList) throws RetryableWriteException {
         if (CollectionUtils.isEmpty(inputRowList)) {
             return;
         }
@@ -60,7 +70,11 @@ public class MetricJdbcWriter implements IMetricWriter {
         try {
             doInsert(createTableWriter(insertStatement, table, inputRowList));
         } catch (Throwable e) {
-            log.error(StringUtils.format("Exception to insert to table [%s]:%s", table.getName(), e.getMessage()), e);
+            String message = StringUtils.format("Exception to insert to table [%s]:%s", table.getName(), e.getMessage());
+            if (RetryableWriteException.isRetryable(e, isRetryableException)) {
+                throw new RetryableWriteException(message, e);
+            }
+            log.error(message, e);
         }
     }
 
@@ -22,6 +22,7 @@ import org.bithon.server.datasource.DefaultSchema;
 import org.bithon.server.datasource.ISchema;
 import org.bithon.server.datasource.column.ExpressionColumn;
 import org.bithon.server.datasource.column.IColumn;
+import org.bithon.server.datasource.column.aggregatable.histogram.AggregateHistogramColumn;
 import org.jooq.Field;
 import org.jooq.Index;
 import org.jooq.impl.DSL;
@@ -45,13 +46,22 @@ public class MetricTable extends TableImpl {
     private final List<Field> dimensions = new ArrayList<>();
     @Getter
     private final List<Field> metrics = new ArrayList<>();
+    @Getter
+    private final Field<Timestamp> timestampField;
     private final List<Index> indexes;
 
     public MetricTable(ISchema dataSource, boolean useAllDimensionsAsIndex) {
-        super(DSL.name(dataSource.getDataStoreSpec().getStore()));
+        this(dataSource.getDataStoreSpec().getStore(), dataSource, useAllDimensionsAsIndex);
+    }
+
+    /**
+     * @param name the name of the table. It's different from the store name of the schema for rollup tables
+     */
+    public MetricTable(String name, ISchema dataSource, boolean useAllDimensionsAsIndex) {
+        super(DSL.name(name));
 
         //noinspection unchecked
-        Field<Timestamp> timestampField = this.createField(DSL.name("timestamp"), SQLDataType.TIMESTAMP);
+        timestampField = this.createField(DSL.name("timestamp"), SQLDataType.TIMESTAMP);
 
         List<Field> indexesFields = new ArrayList<>();
         indexesFields.add(timestampField);
@@ -76,6 +86,12 @@ public class MetricTable extends TableImpl {
             if (metric instanceof ExpressionColumn) {
                 continue;
             }
+            if (metric instanceof AggregateHistogramColumn) {
+                // The text form of a histogram has no fixed length
+                //noinspection unchecked
+                metrics.add(this.createField(DSL.name(metric.getName()), SQLDataType.CLOB, "Metric"));
+                continue;
+            }
             metrics.add(createField(metric.getName(),
                                     metric.getDataType(),
                                     0,
@@ -82,7 +82,12 @@ class MetricTableWriter implements IOnceTableWriter {
 
                 // metrics
                 for (Field<?> metric : table.getMetrics()) {
-                    statement.setObject(index++, inputRow.getColAsLong(metric.getName(), 0));
+                    if (String.class.equals(metric.getType())) {
+                        // histogram in text form
+                        statement.setObject(index++, inputRow.getColAsString(metric.getName(), ""));
+                    } else {
+                        statement.setObject(index++, inputRow.getColAsLong(metric.getName(), 0));
+                    }
                 }
 
                 statement.addBatch();
@@ -96,6 +101,10 @@ class MetricTableWriter implements IOnceTableWriter {
             } catch (DuplicateKeyException e) {
                 log.error("Duplicate Key", e);
             } catch (Exception e) {
+                if (isExceptionRetryable(e)) {
+                    // Let the caller decide whether to keep the rows for later retry
+                    throw e;
+                }
                 log.error(StringUtils.format("Failed to insert records into [%s].", this.table.getName()),
                           e);
             }
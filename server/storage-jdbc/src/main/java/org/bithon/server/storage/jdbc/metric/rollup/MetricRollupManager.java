@@ -0,0 +1,131 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.storage.jdbc.metric.rollup;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bithon.component.commons.concurrency.NamedThreadFactory;
+import org.bithon.component.commons.concurrency.ScheduledExecutorServiceFactory;
+import org.bithon.server.datasource.reader.jdbc.rollup.RollupTable;
+import org.bithon.server.storage.metrics.MetricRollupConfig;
+import org.jooq.DSLContext;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the rollup tiers of all metric schemas and maintains them periodically in background.
+ * <p>
+ * On a node that maintains the rollup tables, closed windows are rolled up tier by tier,
+ * on other nodes, only the watermarks are refreshed so that queries know how much data can be served by each tier.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Slf4j
+public class MetricRollupManager implements AutoCloseable {
+    private final DSLContext dslContext;
+    private final MetricRollupConfig config;
+
+    /**
+     * key: schema name
+     * val: tiers from the finest to the coarsest
+     */
+    private final Map<String, List<MetricRollupTier>> tiers = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService executor;
+
+    public MetricRollupManager(DSLContext dslContext, MetricRollupConfig config) {
+        this.dslContext = dslContext;
+        this.config = config;
+    }
+
+    public MetricRollupConfig getConfig() {
+        return config;
+    }
+
+    public synchronized void register(String schema, List<MetricRollupTier> schemaTiers) {
+        if (schemaTiers.isEmpty()) {
+            return;
+        }
+
+        List<MetricRollupTier> old = tiers.put(schema, schemaTiers);
+        if (old != null) {
+            old.forEach(MetricRollupTier::close);
+        }
+
+        if (executor == null) {
+            long interval = config.getInterval().getMilliseconds();
+            executor = ScheduledExecutorServiceFactory.newSingleThreadScheduledExecutor(NamedThreadFactory.daemonThreadFactory("metric-rollup"));
+            executor.scheduleWithFixedDelay(this::maintain, 0, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public List<MetricRollupTier> getTiers() {
+        return tiers.values()
+                    .stream()
+                    .flatMap(List::stream)
+                    .collect(Collectors.toList());
+    }
+
+    public List<RollupTable> getRollupTables(String schema) {
+        List<MetricRollupTier> schemaTiers = tiers.get(schema);
+        if (schemaTiers == null) {
+            return Collections.emptyList();
+        }
+        return schemaTiers.stream()
+                          .map(MetricRollupTier::getRollupTable)
+                          .collect(Collectors.toList());
+    }
+
+    private void maintain() {
+        Duration delay = Duration.ofMillis(config.getDelay().getMilliseconds());
+
+        for (Map.Entry<String, List<MetricRollupTier>> entry : tiers.entrySet()) {
+            // Tiers are processed from the finest so that a coarser tier sees the latest watermark of its source
+            for (MetricRollupTier tier : entry.getValue()) {
+                try {
+                    if (config.isMaintain()) {
+                        tier.rollup(dslContext, System.currentTimeMillis(), delay, config.getMaxWindowsPerRound());
+                    } else {
+                        tier.refreshWatermark(dslContext);
+                    }
+                } catch (Exception e) {
+                    log.error("Failed to maintain rollup table [{}] of [{}]: {}", tier.getTable().getName(), entry.getKey(), e.getMessage());
+
+                    // Coarser tiers depend on this one
+                    break;
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        tiers.values().forEach((schemaTiers) -> schemaTiers.forEach(MetricRollupTier::close));
+        tiers.clear();
+    }
+}
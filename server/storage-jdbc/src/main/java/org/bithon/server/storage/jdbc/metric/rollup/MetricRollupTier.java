@@ -0,0 +1,255 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.storage.jdbc.metric.rollup;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.bithon.server.commons.time.Period;
+import org.bithon.server.datasource.DefaultSchema;
+import org.bithon.server.datasource.aggregator.NumberAggregator;
+import org.bithon.server.datasource.input.IInputRow;
+import org.bithon.server.datasource.input.InputRow;
+import org.bithon.server.datasource.reader.jdbc.rollup.RollupTable;
+import org.bithon.server.storage.jdbc.metric.MetricTable;
+import org.bithon.server.storage.metrics.IMetricWriter;
+import org.bithon.server.storage.metrics.MetricRollupConfig;
+import org.jooq.Cursor;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.impl.DSL;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One rollup tier of a metric table.
+ * The rows of the source, which is either the raw table or the previous tier, are aggregated into windows of the granularity of this tier.
+ * Each window is rolled up only once after it's closed, and the rolled-up range is tracked by a watermark.
+ * Rows that arrive after their window has been rolled up are not added to this tier, see {@link MetricRollupConfig#getDelay()}.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Slf4j
+public class MetricRollupTier {
+    @Getter
+    private final DefaultSchema schema;
+
+    @Getter
+    private final MetricTable table;
+
+    @Getter
+    private final Duration granularity;
+
+    /**
+     * Nullable. If null, the TTL of the metric storage is used
+     */
+    @Getter
+    private final Period ttl;
+
+    private final MetricTable source;
+
+    /**
+     * Null if the source is the raw table
+     */
+    private final MetricRollupTier sourceTier;
+
+    private final IMetricWriter writer;
+
+    /**
+     * Exclusive timestamp in milliseconds before which all windows have been rolled up.
+     * Negative if unknown yet.
+     */
+    private volatile long watermark = -1;
+
+    @Getter
+    private final RollupTable rollupTable;
+
+    public MetricRollupTier(DefaultSchema schema,
+                            MetricTable table,
+                            Duration granularity,
+                            Period ttl,
+                            MetricTable source,
+                            MetricRollupTier sourceTier,
+                            IMetricWriter writer) {
+        this.schema = schema;
+        this.table = table;
+        this.granularity = granularity;
+        this.ttl = ttl;
+        this.source = source;
+        this.sourceTier = sourceTier;
+        this.writer = writer;
+        this.rollupTable = new RollupTable(table.getName(), granularity, this::getWatermark);
+    }
+
+    public long getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Load the watermark from the rollup table.
+     * It's used on nodes that do not maintain the rollup tables, so that they know which range can be served by this tier.
+     */
+    public void refreshWatermark(DSLContext dslContext) {
+        Timestamp last = dslContext.select(DSL.max(table.getTimestampField()))
+                                   .from(table)
+                                   .fetchOne(0, Timestamp.class);
+        if (last != null) {
+            this.watermark = Math.max(this.watermark, last.getTime() + granularity.toMillis());
+        }
+    }
+
+    /**
+     * Roll up the closed windows since the watermark
+     *
+     * @param delay how long to wait for late rows in the source before a window is treated as closed
+     */
+    public void rollup(DSLContext dslContext, long now, Duration delay, int maxWindows) throws IOException {
+        long granularityMs = granularity.toMillis();
+        if (watermark < 0) {
+            refreshWatermark(dslContext);
+        }
+        if (watermark < 0) {
+            // Nothing has been rolled up yet, start from the earliest row of the source
+            Timestamp first = dslContext.select(DSL.min(source.getTimestampField()))
+                                        .from(source)
+                                        .fetchOne(0, Timestamp.class);
+            if (first == null) {
+                return;
+            }
+            watermark = first.getTime() / granularityMs * granularityMs;
+        }
+
+        long closed = (now - delay.toMillis()) / granularityMs * granularityMs;
+        if (sourceTier != null) {
+            // The previous tier is complete only before its watermark
+            closed = Math.min(closed, sourceTier.getWatermark() / granularityMs * granularityMs);
+        }
+        long end = Math.min(closed, watermark + maxWindows * granularityMs);
+        if (end <= watermark) {
+            return;
+        }
+
+        List<Field<?>> fields = new ArrayList<>();
+        fields.add(source.getTimestampField());
+        source.getDimensions().forEach(fields::add);
+        source.getMetrics().forEach(fields::add);
+
+        long window = -1;
+        Map<List<Object>, NumberAggregator[]> rows = new LinkedHashMap<>();
+        try (Cursor<Record> cursor = dslContext.select(fields)
+                                               .from(source)
+                                               .where(source.getTimestampField().ge(new Timestamp(watermark)))
+                                               .and(source.getTimestampField().lt(new Timestamp(end)))
+                                               .orderBy(source.getTimestampField())
+                                               .fetchLazy()) {
+            for (Record record : cursor) {
+                long timestamp = record.get(0, Timestamp.class).getTime();
+                long recordWindow = timestamp / granularityMs * granularityMs;
+                if (recordWindow != window) {
+                    flush(window, rows);
+                    window = recordWindow;
+                }
+                aggregate(timestamp, record, rows);
+            }
+        }
+        flush(window, rows);
+
+        watermark = end;
+    }
+
+    private void aggregate(long timestamp, Record record, Map<List<Object>, NumberAggregator[]> rows) {
+        int dimensionCount = source.getDimensions().size();
+        List<Object> dimensions = new ArrayList<>(dimensionCount);
+        for (int i = 0; i < dimensionCount; i++) {
+            dimensions.add(record.get(1 + i));
+        }
+
+        NumberAggregator[] aggregators = rows.computeIfAbsent(dimensions, (k) -> createAggregators());
+        for (int i = 0; i < aggregators.length; i++) {
+            Object value = record.get(1 + dimensionCount + i);
+            if (value instanceof String text && text.isEmpty()) {
+                // Empty histogram
+                continue;
+            }
+            aggregators[i].aggregate(timestamp, value);
+        }
+    }
+
+    private NumberAggregator[] createAggregators() {
+        List<Field> metrics = source.getMetrics();
+        NumberAggregator[] aggregators = new NumberAggregator[metrics.size()];
+        for (int i = 0; i < aggregators.length; i++) {
+            aggregators[i] = schema.getColumnByName(metrics.get(i).getName()).createAggregator();
+        }
+        return aggregators;
+    }
+
+    private void flush(long window, Map<List<Object>, NumberAggregator[]> rows) throws IOException {
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        List<IInputRow> inputRows = new ArrayList<>(rows.size());
+        rows.forEach((dimensions, aggregators) -> {
+            Map<String, Object> row = new HashMap<>(1 + dimensions.size() + aggregators.length);
+            row.put("timestamp", window);
+            for (int i = 0; i < dimensions.size(); i++) {
+                row.put(table.getDimensions().get(i).getName(), dimensions.get(i));
+            }
+            for (int i = 0; i < aggregators.length; i++) {
+                row.put(table.getMetrics().get(i).getName(), aggregators[i].getValue());
+            }
+            inputRows.add(new InputRow(row));
+        });
+        writer.write(inputRows);
+        rows.clear();
+
+        // The window has been persisted, so that it will not be rolled up again if following windows fail
+        watermark = window + granularity.toMillis();
+    }
+
+    public void close() {
+        try {
+            writer.close();
+        } catch (Exception ignored) {
+        }
+    }
+
+    /**
+     * @return the name of the table of a tier. For example, bithon_jvm_metrics_1h
+     */
+    public static String getTableName(String store, Duration granularity) {
+        long seconds = granularity.getSeconds();
+        if (seconds % 86400 == 0) {
+            return store + "_" + (seconds / 86400) + "d";
+        } else if (seconds % 3600 == 0) {
+            return store + "_" + (seconds / 3600) + "h";
+        } else if (seconds % 60 == 0) {
+            return store + "_" + (seconds / 60) + "m";
+        } else {
+            return store + "_" + seconds + "s";
+        }
+    }
+}
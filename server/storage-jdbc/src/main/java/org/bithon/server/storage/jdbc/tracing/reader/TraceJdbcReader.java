@@ -529,6 +529,7 @@ public class TraceJdbcReader implements ITraceReader {
         Interval interval = query.getInterval();
         IQueryStep queryStep = JdbcPipelineBuilder.builder()
                                                   .dslContext(dslContext)
+                                                  .dataSource(schema.getName())
                                                   .dialect(this.sqlDialect)
                                                   .selectStatement(selectStatement)
                                                   .interval(Interval.of(interval.getStartTime().floor(query.getInterval().getStep()),
@@ -39,46 +39,10 @@ class IndexTableJdbcWriter implements IOnceTableWriter {
     private final Collection<Object[]> tagIndices;
     private final Predicate<Exception> isExceptionRetryable;
 
-    public IndexTableJdbcWriter(DSLContext dslContext,
+    public IndexTableJdbcWriter(String insertStatement,
                                 Collection<Object[]> tagIndices,
                                 Predicate<Exception> isExceptionRetryable) {
-        this.insertStatement = dslContext.render(dslContext.insertInto(Tables.BITHON_TRACE_SPAN_TAG_INDEX,
-                                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.TIMESTAMP,
-                                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F1,
-                                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F2,
-                                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F3,
-                                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F4,
-                                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F5,
-                                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F6,
-                                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F7,
-                                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F8,
-                                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F9,
-                                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F10,
-                                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F11,
-                                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F12,
-                                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F13,
-                                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F14,
-                                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F15,
-                                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F16,
-                                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.TRACEID)
-                                                           .values((LocalDateTime) null,
-                                                                   null,
-                                                                   null,
-                                                                   null,
-                                                                   null,
-                                                                   null,
-                                                                   null,
-                                                                   null,
-                                                                   null,
-                                                                   null,
-                                                                   null,
-                                                                   null,
-                                                                   null,
-                                                                   null,
-                                                                   null,
-                                                                   null,
-                                                                   null,
-                                                                   null));
+        this.insertStatement = insertStatement;
         this.tagIndices = tagIndices;
         this.isExceptionRetryable = isExceptionRetryable;
     }
@@ -91,7 +55,7 @@ class IndexTableJdbcWriter implements IOnceTableWriter {
                 statement.setTimestamp(1, (Timestamp) index[0]);
 
                 for (int i = 1; i < index.length; i++) {
-                    statement.setObject(i + 1, StringUtils.getOrEmpty((String) index[i]));
+                    statement.setString(i + 1, StringUtils.getOrEmpty((String) index[i]));
                 }
                 statement.addBatch();
             }
@@ -103,6 +67,46 @@ class IndexTableJdbcWriter implements IOnceTableWriter {
         }
     }
 
+    public static String renderInsertStatement(DSLContext dslContext) {
+        return dslContext.render(dslContext.insertInto(Tables.BITHON_TRACE_SPAN_TAG_INDEX,
+                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.TIMESTAMP,
+                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F1,
+                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F2,
+                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F3,
+                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F4,
+                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F5,
+                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F6,
+                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F7,
+                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F8,
+                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F9,
+                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F10,
+                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F11,
+                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F12,
+                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F13,
+                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F14,
+                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F15,
+                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.F16,
+                                                       Tables.BITHON_TRACE_SPAN_TAG_INDEX.TRACEID)
+                                           .values((LocalDateTime) null,
+                                                   null,
+                                                   null,
+                                                   null,
+                                                   null,
+                                                   null,
+                                                   null,
+                                                   null,
+                                                   null,
+                                                   null,
+                                                   null,
+                                                   null,
+                                                   null,
+                                                   null,
+                                                   null,
+                                                   null,
+                                                   null,
+                                                   null));
+    }
+
     private boolean isRetryableException(Exception e) {
         return this.isExceptionRetryable != null && this.isExceptionRetryable.test(e);
     }
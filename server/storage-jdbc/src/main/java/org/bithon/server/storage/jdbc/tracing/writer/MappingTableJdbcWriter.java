@@ -38,14 +38,10 @@ class MappingTableJdbcWriter implements IOnceTableWriter {
     private final Collection<TraceIdMapping> mappings;
     private final Predicate<Exception> isExceptionRetryable;
 
-    public MappingTableJdbcWriter(DSLContext dslContext,
+    public MappingTableJdbcWriter(String insertStatement,
                                   Collection<TraceIdMapping> mappings,
                                   Predicate<Exception> isRetryableException) {
-        insertStatement = dslContext.render(dslContext.insertInto(Tables.BITHON_TRACE_MAPPING,
-                                                                  Tables.BITHON_TRACE_MAPPING.TRACE_ID,
-                                                                  Tables.BITHON_TRACE_MAPPING.USER_TX_ID,
-                                                                  Tables.BITHON_TRACE_SPAN.TIMESTAMP)
-                                                      .values((String) null, null, null));
+        this.insertStatement = insertStatement;
         this.mappings = mappings;
         this.isExceptionRetryable = isRetryableException;
     }
@@ -54,8 +50,8 @@ class MappingTableJdbcWriter implements IOnceTableWriter {
     public void run(Connection connection) throws Exception {
         try (PreparedStatement statement = connection.prepareStatement(insertStatement)) {
             for (TraceIdMapping mapping : mappings) {
-                statement.setObject(1, mapping.getTraceId());
-                statement.setObject(2, mapping.getUserId());
+                statement.setString(1, mapping.getTraceId());
+                statement.setString(2, mapping.getUserId());
                 statement.setTimestamp(3, new Timestamp(mapping.getTimestamp()));
                 statement.addBatch();
             }
@@ -67,6 +63,14 @@ class MappingTableJdbcWriter implements IOnceTableWriter {
         }
     }
 
+    public static String renderInsertStatement(DSLContext dslContext) {
+        return dslContext.render(dslContext.insertInto(Tables.BITHON_TRACE_MAPPING,
+                                                       Tables.BITHON_TRACE_MAPPING.TRACE_ID,
+                                                       Tables.BITHON_TRACE_MAPPING.USER_TX_ID,
+                                                       Tables.BITHON_TRACE_SPAN.TIMESTAMP)
+                                           .values((String) null, null, null));
+    }
+
     protected boolean isExceptionRetryable(Exception e) {
         return isExceptionRetryable != null && this.isExceptionRetryable.test(e);
     }
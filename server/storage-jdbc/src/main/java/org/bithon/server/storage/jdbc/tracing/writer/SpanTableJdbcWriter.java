@@ -22,11 +22,14 @@ import org.bithon.server.storage.jdbc.common.IOnceTableWriter;
 import org.bithon.server.storage.jdbc.common.jooq.Tables;
 import org.bithon.server.storage.jdbc.tracing.reader.MicrosecondsUtils;
 import org.bithon.server.storage.tracing.TraceSpan;
+import org.jooq.DSLContext;
+import org.jooq.Table;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.Timestamp;
 import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Predicate;
@@ -72,21 +75,26 @@ public abstract class SpanTableJdbcWriter implements IOnceTableWriter {
                     statement.setTimestamp(++col, new Timestamp(span.startTime / 1000));
                 }
 
-                statement.setObject(++col, span.appName);
-                statement.setObject(++col, span.instanceName);
-                statement.setObject(++col, span.traceId);
-                statement.setObject(++col, span.spanId);
-                statement.setObject(++col, span.parentSpanId);
-                statement.setObject(++col, StringUtils.getOrEmpty(span.name));
-                statement.setObject(++col, StringUtils.getOrEmpty(span.clazz));
-                statement.setObject(++col, StringUtils.getOrEmpty(span.method));
-                statement.setObject(++col, StringUtils.getOrEmpty(span.kind));
-                statement.setObject(++col, isSummaryTable ? MicrosecondsUtils.toLocalDateTime(span.startTime) : span.startTime);
-                statement.setObject(++col, span.endTime);
-                statement.setObject(++col, span.costTime);
+                statement.setString(++col, span.appName);
+                statement.setString(++col, span.instanceName);
+                statement.setString(++col, span.traceId);
+                statement.setString(++col, span.spanId);
+                statement.setString(++col, span.parentSpanId);
+                statement.setString(++col, StringUtils.getOrEmpty(span.name));
+                statement.setString(++col, StringUtils.getOrEmpty(span.clazz));
+                statement.setString(++col, StringUtils.getOrEmpty(span.method));
+                statement.setString(++col, StringUtils.getOrEmpty(span.kind));
+                if (isSummaryTable) {
+                    statement.setObject(++col, MicrosecondsUtils.toLocalDateTime(span.startTime));
+                } else {
+                    statement.setLong(++col, span.startTime);
+                }
+                statement.setLong(++col, span.endTime);
+                statement.setLong(++col, span.costTime);
+                // The type of tag store depends on the underlying storage
                 statement.setObject(++col, toTagStore(span.getTags()));
-                statement.setObject(++col, span.getNormalizedUri());
-                statement.setObject(++col, span.getStatus());
+                statement.setString(++col, span.getNormalizedUri());
+                statement.setString(++col, span.getStatus());
                 statement.addBatch();
             }
 
@@ -97,6 +105,112 @@ public abstract class SpanTableJdbcWriter implements IOnceTableWriter {
         }
     }
 
+    /**
+     * Render the insert statement of given span table.
+     * The rendered statement only depends on the SQL dialect, so callers should render it once and reuse it.
+     */
+    public static String renderInsertStatement(DSLContext dslContext, Table<?> table) {
+        if (table == Tables.BITHON_TRACE_SPAN_SUMMARY) {
+            return dslContext.render(dslContext.insertInto(table,
+                                                           Tables.BITHON_TRACE_SPAN_SUMMARY.APPNAME,
+                                                           Tables.BITHON_TRACE_SPAN_SUMMARY.INSTANCENAME,
+                                                           Tables.BITHON_TRACE_SPAN_SUMMARY.TRACEID,
+                                                           Tables.BITHON_TRACE_SPAN_SUMMARY.SPANID,
+                                                           Tables.BITHON_TRACE_SPAN_SUMMARY.PARENTSPANID,
+                                                           Tables.BITHON_TRACE_SPAN_SUMMARY.NAME,
+                                                           Tables.BITHON_TRACE_SPAN_SUMMARY.CLAZZ,
+                                                           Tables.BITHON_TRACE_SPAN_SUMMARY.METHOD,
+                                                           Tables.BITHON_TRACE_SPAN_SUMMARY.KIND,
+                                                           Tables.BITHON_TRACE_SPAN_SUMMARY.STARTTIMEUS,
+                                                           Tables.BITHON_TRACE_SPAN_SUMMARY.ENDTIMEUS,
+                                                           Tables.BITHON_TRACE_SPAN_SUMMARY.COSTTIMEUS,
+                                                           Tables.BITHON_TRACE_SPAN_SUMMARY.ATTRIBUTES,
+                                                           Tables.BITHON_TRACE_SPAN_SUMMARY.NORMALIZEDURL,
+                                                           Tables.BITHON_TRACE_SPAN_SUMMARY.STATUS)
+                                               .values(//app name
+                                                       (String) null,
+                                                       // instance
+                                                       null,
+                                                       //trace id
+                                                       null,
+                                                       // span id
+                                                       null,
+                                                       // parent id
+                                                       null,
+                                                       // name
+                                                       null,
+                                                       // class
+                                                       null,
+                                                       // method
+                                                       null,
+                                                       // kind
+                                                       null,
+                                                       // start time
+                                                       null,
+                                                       // end time
+                                                       null,
+                                                       // cost time
+                                                       null,
+                                                       // tags
+                                                       null,
+                                                       // normalized url
+                                                       null,
+                                                       // status
+                                                       null
+                                               ));
+        } else {
+            return dslContext.render(dslContext.insertInto(table,
+                                                           Tables.BITHON_TRACE_SPAN.TIMESTAMP,
+                                                           Tables.BITHON_TRACE_SPAN.APPNAME,
+                                                           Tables.BITHON_TRACE_SPAN.INSTANCENAME,
+                                                           Tables.BITHON_TRACE_SPAN.TRACEID,
+                                                           Tables.BITHON_TRACE_SPAN.SPANID,
+                                                           Tables.BITHON_TRACE_SPAN.PARENTSPANID,
+                                                           Tables.BITHON_TRACE_SPAN.NAME,
+                                                           Tables.BITHON_TRACE_SPAN.CLAZZ,
+                                                           Tables.BITHON_TRACE_SPAN.METHOD,
+                                                           Tables.BITHON_TRACE_SPAN.KIND,
+                                                           Tables.BITHON_TRACE_SPAN.STARTTIMEUS,
+                                                           Tables.BITHON_TRACE_SPAN.ENDTIMEUS,
+                                                           Tables.BITHON_TRACE_SPAN.COSTTIMEUS,
+                                                           Tables.BITHON_TRACE_SPAN.ATTRIBUTES,
+                                                           Tables.BITHON_TRACE_SPAN.NORMALIZEDURL,
+                                                           Tables.BITHON_TRACE_SPAN.STATUS)
+                                               .values((LocalDateTime) null,
+                                                       //app name
+                                                       null,
+                                                       // instance
+                                                       null,
+                                                       //trace id
+                                                       null,
+                                                       // span id
+                                                       null,
+                                                       // parent id
+                                                       null,
+                                                       // name
+                                                       null,
+                                                       // class
+                                                       null,
+                                                       // method
+                                                       null,
+                                                       // kind
+                                                       null,
+                                                       // start time
+                                                       null,
+                                                       // end time
+                                                       null,
+                                                       // cost time
+                                                       null,
+                                                       // tags
+                                                       null,
+                                                       // normalized url
+                                                       null,
+                                                       // status
+                                                       null
+                                               ));
+        }
+    }
+
     protected abstract Object toTagStore(Map<String, String> tag);
 
     private boolean isExceptionRetryable(Exception e) {
@@ -19,8 +19,10 @@ package org.bithon.server.storage.jdbc.tracing.writer;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.bithon.component.commons.concurrency.NamedThreadFactory;
 import org.bithon.component.commons.tracing.SpanKind;
 import org.bithon.component.commons.utils.CollectionUtils;
+import org.bithon.server.storage.common.RetryableWriteException;
 import org.bithon.server.storage.jdbc.common.IOnceTableWriter;
 import org.bithon.server.storage.jdbc.common.jooq.Tables;
 import org.bithon.server.storage.tracing.ITraceWriter;
@@ -30,15 +32,20 @@ import org.bithon.server.storage.tracing.index.TagIndex;
 import org.bithon.server.storage.tracing.mapping.TraceIdMapping;
 import org.jooq.DSLContext;
 import org.jooq.Table;
-import org.jooq.TransactionalRunnable;
 import org.jooq.exception.DataAccessException;
 
 import java.sql.Timestamp;
-import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -53,6 +60,18 @@ public class TraceJdbcWriter implements ITraceWriter {
     private final TraceStorageConfig traceStorageConfig;
     protected final Predicate<Exception> isRetryableException;
 
+    /**
+     * Rendered insert statements.
+     * They only depend on the SQL dialect of the {@link #dslContext}, so they're rendered once per table.
+     */
+    private final Map<Table<?>, String> insertStatements = new ConcurrentHashMap<>();
+
+    /**
+     * Used to write tables concurrently when {@link #isConcurrentWriteEnabled()} is true.
+     * Created on first use.
+     */
+    private volatile ThreadPoolExecutor executor;
+
     public TraceJdbcWriter(DSLContext dslContext, TraceStorageConfig traceStorageConfig, Predicate<Exception> isRetryableException) {
         this.dslContext = dslContext;
         this.traceStorageConfig = traceStorageConfig;
@@ -67,152 +86,93 @@ public class TraceJdbcWriter implements ITraceWriter {
         return true;
     }
 
+    /**
+     * Whether the tables of one batch can be written concurrently, each on its own connection.
+     * This only makes sense when there's no transaction to span the writes of all tables.
+     */
+    protected boolean isConcurrentWriteEnabled() {
+        return !isTransactionSupported();
+    }
+
     @Override
     public void write(List<TraceSpan> spans,
                       List<TraceIdMapping> mappings,
                       List<TagIndex> tagIndices) {
+        try {
+            writeOrThrowRetryable(spans, mappings, tagIndices);
+        } catch (RetryableWriteException e) {
+            log.error(e.getMessage(), e.getCause());
+        }
+    }
 
-        TransactionalRunnable runnable = (configuration) -> {
-            if (isWriteSummaryTable()) {
-                List<TraceSpan> summary = spans.stream()
-                                               .filter((span) -> SpanKind.isRootSpan(span.getKind()))
-                                               .collect(Collectors.toList());
+    @Override
+    public void writeOrThrowRetryable(List<TraceSpan> spans,
+                                      List<TraceIdMapping> mappings,
+                                      List<TagIndex> tagIndices) throws RetryableWriteException {
+
+        List<IOnceTableWriter> writers = new ArrayList<>(4);
+        if (isWriteSummaryTable()) {
+            List<TraceSpan> summary = spans.stream()
+                                           .filter((span) -> SpanKind.isRootSpan(span.getKind()))
+                                           .collect(Collectors.toList());
+            addSpanWriter(writers, summary, Tables.BITHON_TRACE_SPAN_SUMMARY);
+        }
+        addSpanWriter(writers, spans, Tables.BITHON_TRACE_SPAN);
+        addMappingWriter(writers, mappings);
+        addTagIndexWriter(writers, tagIndices);
+        if (writers.isEmpty()) {
+            return;
+        }
 
-                this.writeSpans(summary, Tables.BITHON_TRACE_SPAN_SUMMARY);
-            }
-            this.writeSpans(spans, Tables.BITHON_TRACE_SPAN);
-            this.writeMappings(mappings);
-            this.writeTagIndices(tagIndices);
-        };
         try {
             if (isTransactionSupported()) {
-                dslContext.transaction(runnable);
+                dslContext.transaction((configuration) -> {
+                    for (IOnceTableWriter writer : writers) {
+                        doInsert(writer);
+                    }
+                });
+            } else if (writers.size() > 1 && isConcurrentWriteEnabled()) {
+                doConcurrentInsert(writers);
             } else {
-                runnable.run(dslContext.configuration());
+                for (IOnceTableWriter writer : writers) {
+                    doInsert(writer);
+                }
             }
         } catch (Throwable e) {
+            if (RetryableWriteException.isRetryable(e, isRetryableException)) {
+                throw new RetryableWriteException("Exception when write spans", e);
+            }
             log.error("Exception when write spans", e);
         }
     }
 
-    private void writeSpans(List<TraceSpan> traceSpans, Table<?> table) throws Throwable {
-        if (traceSpans.isEmpty()) {
-            return;
+    @Override
+    public void close() {
+        ThreadPoolExecutor e = this.executor;
+        if (e != null) {
+            e.shutdown();
         }
+    }
 
-        String insertStatement;
-        if (table == Tables.BITHON_TRACE_SPAN_SUMMARY) {
-            insertStatement = dslContext.render(dslContext.insertInto(table,
-                                                                      Tables.BITHON_TRACE_SPAN_SUMMARY.APPNAME,
-                                                                      Tables.BITHON_TRACE_SPAN_SUMMARY.INSTANCENAME,
-                                                                      Tables.BITHON_TRACE_SPAN_SUMMARY.TRACEID,
-                                                                      Tables.BITHON_TRACE_SPAN_SUMMARY.SPANID,
-                                                                      Tables.BITHON_TRACE_SPAN_SUMMARY.PARENTSPANID,
-                                                                      Tables.BITHON_TRACE_SPAN_SUMMARY.NAME,
-                                                                      Tables.BITHON_TRACE_SPAN_SUMMARY.CLAZZ,
-                                                                      Tables.BITHON_TRACE_SPAN_SUMMARY.METHOD,
-                                                                      Tables.BITHON_TRACE_SPAN_SUMMARY.KIND,
-                                                                      Tables.BITHON_TRACE_SPAN_SUMMARY.STARTTIMEUS,
-                                                                      Tables.BITHON_TRACE_SPAN_SUMMARY.ENDTIMEUS,
-                                                                      Tables.BITHON_TRACE_SPAN_SUMMARY.COSTTIMEUS,
-                                                                      Tables.BITHON_TRACE_SPAN_SUMMARY.ATTRIBUTES,
-                                                                      Tables.BITHON_TRACE_SPAN_SUMMARY.NORMALIZEDURL,
-                                                                      Tables.BITHON_TRACE_SPAN_SUMMARY.STATUS)
-                                                          .values(//app name
-                                                                  (String) null,
-                                                                  // instance
-                                                                  null,
-                                                                  //trace id
-                                                                  null,
-                                                                  // span id
-                                                                  null,
-                                                                  // parent id
-                                                                  null,
-                                                                  // name
-                                                                  null,
-                                                                  // class
-                                                                  null,
-                                                                  // method
-                                                                  null,
-                                                                  // kind
-                                                                  null,
-                                                                  // start time
-                                                                  null,
-                                                                  // end time
-                                                                  null,
-                                                                  // cost time
-                                                                  null,
-                                                                  // tags
-                                                                  null,
-                                                                  // normalized url
-                                                                  null,
-                                                                  // status
-                                                                  null
-                                                          ));
-        } else {
-            insertStatement = dslContext.render(dslContext.insertInto(table,
-                                                                      Tables.BITHON_TRACE_SPAN.TIMESTAMP,
-                                                                      Tables.BITHON_TRACE_SPAN.APPNAME,
-                                                                      Tables.BITHON_TRACE_SPAN.INSTANCENAME,
-                                                                      Tables.BITHON_TRACE_SPAN.TRACEID,
-                                                                      Tables.BITHON_TRACE_SPAN.SPANID,
-                                                                      Tables.BITHON_TRACE_SPAN.PARENTSPANID,
-                                                                      Tables.BITHON_TRACE_SPAN.NAME,
-                                                                      Tables.BITHON_TRACE_SPAN.CLAZZ,
-                                                                      Tables.BITHON_TRACE_SPAN.METHOD,
-                                                                      Tables.BITHON_TRACE_SPAN.KIND,
-                                                                      Tables.BITHON_TRACE_SPAN.STARTTIMEUS,
-                                                                      Tables.BITHON_TRACE_SPAN.ENDTIMEUS,
-                                                                      Tables.BITHON_TRACE_SPAN.COSTTIMEUS,
-                                                                      Tables.BITHON_TRACE_SPAN.ATTRIBUTES,
-                                                                      Tables.BITHON_TRACE_SPAN.NORMALIZEDURL,
-                                                                      Tables.BITHON_TRACE_SPAN.STATUS)
-                                                          .values((LocalDateTime) null,
-                                                                  //app name
-                                                                  null,
-                                                                  // instance
-                                                                  null,
-                                                                  //trace id
-                                                                  null,
-                                                                  // span id
-                                                                  null,
-                                                                  // parent id
-                                                                  null,
-                                                                  // name
-                                                                  null,
-                                                                  // class
-                                                                  null,
-                                                                  // method
-                                                                  null,
-                                                                  // kind
-                                                                  null,
-                                                                  // start time
-                                                                  null,
-                                                                  // end time
-                                                                  null,
-                                                                  // cost time
-                                                                  null,
-                                                                  // tags
-                                                                  null,
-                                                                  // normalized url
-                                                                  null,
-                                                                  // status
-                                                                  null
-                                                          ));
+    private void addSpanWriter(List<IOnceTableWriter> writers, List<TraceSpan> traceSpans, Table<?> table) {
+        if (traceSpans.isEmpty()) {
+            return;
         }
 
-        doInsert(createInsertSpanRunnable(table.getName(), insertStatement, traceSpans));
+        String insertStatement = insertStatements.computeIfAbsent(table, (t) -> SpanTableJdbcWriter.renderInsertStatement(dslContext, t));
+        writers.add(createInsertSpanRunnable(table.getName(), insertStatement, traceSpans));
     }
 
-    private void writeMappings(List<TraceIdMapping> mappings) throws Throwable {
+    private void addMappingWriter(List<IOnceTableWriter> writers, List<TraceIdMapping> mappings) {
         if (CollectionUtils.isEmpty(mappings)) {
             return;
         }
 
-        doInsert(createInsertMappingRunnable(dslContext, mappings));
+        String insertStatement = insertStatements.computeIfAbsent(Tables.BITHON_TRACE_MAPPING, (t) -> MappingTableJdbcWriter.renderInsertStatement(dslContext));
+        writers.add(new MappingTableJdbcWriter(insertStatement, mappings, this.isRetryableException));
     }
 
-    private void writeTagIndices(Collection<TagIndex> tagIndices) throws Throwable {
+    private void addTagIndexWriter(List<IOnceTableWriter> writers, Collection<TagIndex> tagIndices) {
         if (CollectionUtils.isEmpty(tagIndices)) {
             return;
         }
@@ -234,9 +194,87 @@ public class TraceJdbcWriter implements ITraceWriter {
             values[fieldIndex] = index.getValue();
         }
 
-        doInsert(createInsertIndexRunnable(dslContext, batchValues.values()));
+        String insertStatement = insertStatements.computeIfAbsent(Tables.BITHON_TRACE_SPAN_TAG_INDEX, (t) -> IndexTableJdbcWriter.renderInsertStatement(dslContext));
+        writers.add(new IndexTableJdbcWriter(insertStatement, batchValues.values(), this.isRetryableException));
     }
 
+    /**
+     * Write each table on its own connection.
+     * The largest table is written in the caller thread, others are submitted to the executor.
+     * All writes are waited for completion even if some of them fail so that the caller is able to retry the whole batch safely.
+     */
+    private void doConcurrentInsert(List<IOnceTableWriter> writers) throws Throwable {
+        int largest = 0;
+        for (int i = 1; i < writers.size(); i++) {
+            if (writers.get(i).getInsertRows() > writers.get(largest).getInsertRows()) {
+                largest = i;
+            }
+        }
+
+        ThreadPoolExecutor executor = getExecutor();
+        List<Future<Throwable>> futures = new ArrayList<>(writers.size() - 1);
+        for (int i = 0; i < writers.size(); i++) {
+            if (i == largest) {
+                continue;
+            }
+
+            IOnceTableWriter writer = writers.get(i);
+            futures.add(executor.submit(() -> {
+                try {
+                    doInsert(writer);
+                    return null;
+                } catch (Throwable e) {
+                    return e;
+                }
+            }));
+        }
+
+        Throwable exception = null;
+        try {
+            doInsert(writers.get(largest));
+        } catch (Throwable e) {
+            exception = e;
+        }
+
+        for (Future<Throwable> future : futures) {
+            Throwable e;
+            try {
+                e = future.get();
+            } catch (ExecutionException executionException) {
+                e = executionException.getCause();
+            }
+            if (e == null) {
+                continue;
+            }
+            if (exception == null) {
+                exception = e;
+            } else {
+                exception.addSuppressed(e);
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    // At most 3 tables are written in the executor, the 4th one is written in the caller thread
+                    ThreadPoolExecutor e = new ThreadPoolExecutor(3,
+                                                                  3,
+                                                                  1,
+                                                                  TimeUnit.MINUTES,
+                                                                  new LinkedBlockingQueue<>(),
+                                                                  NamedThreadFactory.daemonThreadFactory("trace-jdbc-writer"));
+                    e.allowCoreThreadTimeOut(true);
+                    executor = e;
+                }
+            }
+        }
+        return executor;
+    }
 
     protected void doInsert(IOnceTableWriter runnable) throws Throwable {
         try {
@@ -262,12 +300,4 @@ public class TraceJdbcWriter implements ITraceWriter {
             }
         };
     }
-
-    private IOnceTableWriter createInsertMappingRunnable(DSLContext dslContext, List<TraceIdMapping> mappings) {
-        return new MappingTableJdbcWriter(dslContext, mappings, this.isRetryableException);
-    }
-
-    private IOnceTableWriter createInsertIndexRunnable(DSLContext dslContext, Collection<Object[]> indice) {
-        return new IndexTableJdbcWriter(dslContext, indice, this.isRetryableException);
-    }
 }
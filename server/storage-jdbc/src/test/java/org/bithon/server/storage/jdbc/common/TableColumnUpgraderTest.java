@@ -0,0 +1,125 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.jdbc.common;
+
+import org.bithon.server.datasource.DefaultSchema;
+import org.bithon.server.datasource.column.StringColumn;
+import org.bithon.server.datasource.column.aggregatable.histogram.AggregateHistogramColumn;
+import org.bithon.server.datasource.column.aggregatable.sum.AggregateLongSumColumn;
+import org.bithon.server.datasource.input.InputRow;
+import org.bithon.server.storage.jdbc.metric.MetricJdbcWriter;
+import org.bithon.server.storage.jdbc.metric.MetricTable;
+import org.jooq.DSLContext;
+import org.jooq.Record;
+import org.jooq.impl.DSL;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class TableColumnUpgraderTest {
+
+    private static final String TABLE_NAME = "bithon_upgrade_metrics";
+
+    private DSLContext dslContext;
+
+    @BeforeEach
+    public void setUp() {
+        dslContext = DSL.using("jdbc:h2:mem:upgrade;DB_CLOSE_DELAY=-1;MODE=MYSQL");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dslContext.execute("DROP ALL OBJECTS");
+    }
+
+    private static MetricTable createMetricTable(boolean withHistogram) {
+        DefaultSchema schema = new DefaultSchema("upgrade-metrics",
+                                                 "upgrade-metrics",
+                                                 null,
+                                                 Arrays.asList(new StringColumn("appName", "appName")),
+                                                 withHistogram ? Arrays.asList(new AggregateLongSumColumn("totalCount", "totalCount"),
+                                                                               new AggregateLongSumColumn("errorCount", "errorCount"),
+                                                                               new AggregateHistogramColumn("responseTimeHistogram", null))
+                                                               : Arrays.asList(new AggregateLongSumColumn("totalCount", "totalCount")));
+        return new MetricTable(TABLE_NAME, schema, false);
+    }
+
+    private static InputRow row(long timestamp, Map<String, Object> metrics) {
+        Map<String, Object> row = new HashMap<>(metrics);
+        row.put("timestamp", timestamp);
+        row.put("appName", "app1");
+        return new InputRow(row);
+    }
+
+    @Test
+    public void testUpgradeFromOldSchema() {
+        // The table created by the old schema
+        MetricTable oldTable = createMetricTable(false);
+        dslContext.createTableIfNotExists(oldTable)
+                  .columns(oldTable.fields())
+                  .indexes(oldTable.getIndexes())
+                  .execute();
+        new MetricJdbcWriter(dslContext, oldTable, true, null).write(List.of(row(1000, Map.of("totalCount", 1))));
+
+        // Columns of the new schema are added to the existing table
+        MetricTable newTable = createMetricTable(true);
+        dslContext.createTableIfNotExists(newTable)
+                  .columns(newTable.fields())
+                  .indexes(newTable.getIndexes())
+                  .execute();
+        TableColumnUpgrader.addMissingColumns(dslContext, newTable);
+
+        // Do nothing if no column is missing
+        TableColumnUpgrader.addMissingColumns(dslContext, newTable);
+
+        new MetricJdbcWriter(dslContext, newTable, true, null).write(List.of(row(2000, Map.of("totalCount", 2,
+                                                                                              "errorCount", 1,
+                                                                                              "responseTimeHistogram", "h1")),
+                                                                         row(3000, Map.of("totalCount", 3))));
+
+        List<Record> records = dslContext.selectFrom(newTable)
+                                         .orderBy(newTable.getTimestampField())
+                                         .fetch();
+        Assertions.assertEquals(3, records.size());
+
+        // The old row gets the default value of new columns
+        Assertions.assertEquals(1L, ((Number) records.get(0).get("totalCount")).longValue());
+        Assertions.assertEquals(0L, ((Number) records.get(0).get("errorCount")).longValue());
+        Assertions.assertNull(records.get(0).get("responseTimeHistogram"));
+
+        Assertions.assertEquals(1L, ((Number) records.get(1).get("errorCount")).longValue());
+        Assertions.assertEquals("h1", records.get(1).get("responseTimeHistogram"));
+        Assertions.assertEquals(3L, ((Number) records.get(2).get("totalCount")).longValue());
+    }
+
+    @Test
+    public void testTableNotExist() {
+        // Nothing to upgrade when the table is not created, e.g. table creation is disabled
+        TableColumnUpgrader.addMissingColumns(dslContext, createMetricTable(true));
+
+        Assertions.assertTrue(dslContext.meta().getTables(TABLE_NAME).isEmpty());
+    }
+}
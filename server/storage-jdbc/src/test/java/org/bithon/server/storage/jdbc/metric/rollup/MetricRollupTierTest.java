@@ -0,0 +1,178 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.storage.jdbc.metric.rollup;
+
+import org.bithon.server.datasource.DefaultSchema;
+import org.bithon.server.datasource.column.StringColumn;
+import org.bithon.server.datasource.column.aggregatable.last.AggregateLongLastColumn;
+import org.bithon.server.datasource.column.aggregatable.max.AggregateLongMaxColumn;
+import org.bithon.server.datasource.column.aggregatable.sum.AggregateLongSumColumn;
+import org.bithon.server.datasource.input.IInputRow;
+import org.bithon.server.datasource.input.InputRow;
+import org.bithon.server.storage.jdbc.metric.MetricJdbcWriter;
+import org.bithon.server.storage.jdbc.metric.MetricTable;
+import org.jooq.DSLContext;
+import org.jooq.Record;
+import org.jooq.impl.DSL;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class MetricRollupTierTest {
+
+    private static final long T0 = 1_700_000_100_000L / 300_000 * 300_000;
+
+    private final DefaultSchema schema = new DefaultSchema("test-metrics",
+                                                           "test-metrics",
+                                                           null,
+                                                           Arrays.asList(new StringColumn("appName", "appName")),
+                                                           Arrays.asList(new AggregateLongSumColumn("totalCount", "totalCount"),
+                                                                         new AggregateLongMaxColumn("maxTime", "maxTime"),
+                                                                         new AggregateLongLastColumn("activeThreads", "activeThreads")));
+
+    private DSLContext dslContext;
+    private MetricTable raw;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        dslContext = DSL.using("jdbc:h2:mem:rollup;DB_CLOSE_DELAY=-1;MODE=MYSQL");
+        raw = createTable("bithon_test_metrics");
+
+        // 10 minutes of rows at 10 seconds interval for 2 applications
+        List<IInputRow> rows = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            for (String app : new String[]{"app1", "app2"}) {
+                Map<String, Object> row = new HashMap<>();
+                row.put("timestamp", T0 + i * 10_000L);
+                row.put("appName", app);
+                row.put("totalCount", 1);
+                row.put("maxTime", i);
+                row.put("activeThreads", 100 + i);
+                rows.add(new InputRow(row));
+            }
+        }
+        new MetricJdbcWriter(dslContext, raw, true, null).write(rows);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dslContext.execute("DROP ALL OBJECTS");
+    }
+
+    private MetricTable createTable(String name) {
+        MetricTable table = new MetricTable(name, schema, false);
+        dslContext.createTableIfNotExists(table)
+                  .columns(table.fields())
+                  .indexes(table.getIndexes())
+                  .execute();
+        return table;
+    }
+
+    private MetricRollupTier createTier(Duration granularity, MetricTable source, MetricRollupTier sourceTier) {
+        MetricTable table = createTable(MetricRollupTier.getTableName(source.getName(), granularity));
+        return new MetricRollupTier(schema,
+                                    table,
+                                    granularity,
+                                    null,
+                                    source,
+                                    sourceTier,
+                                    new MetricJdbcWriter(dslContext, table, true, null));
+    }
+
+    private List<Record> fetch(MetricTable table, String app) {
+        return dslContext.selectFrom(table)
+                         .where(DSL.field(DSL.name("appName")).eq(app))
+                         .orderBy(table.getTimestampField())
+                         .fetch();
+    }
+
+    @Test
+    public void testTableName() {
+        Assertions.assertEquals("bithon_a_1m", MetricRollupTier.getTableName("bithon_a", Duration.ofMinutes(1)));
+        Assertions.assertEquals("bithon_a_90m", MetricRollupTier.getTableName("bithon_a", Duration.ofMinutes(90)));
+        Assertions.assertEquals("bithon_a_1h", MetricRollupTier.getTableName("bithon_a", Duration.ofHours(1)));
+        Assertions.assertEquals("bithon_a_1d", MetricRollupTier.getTableName("bithon_a", Duration.ofDays(1)));
+    }
+
+    @Test
+    public void testRollupChainedTiers() throws Exception {
+        MetricRollupTier minute = createTier(Duration.ofMinutes(1), raw, null);
+        MetricRollupTier fiveMinutes = createTier(Duration.ofMinutes(5), minute.getTable(), minute);
+
+        long now = T0 + Duration.ofMinutes(10).toMillis();
+        minute.rollup(dslContext, now, Duration.ZERO, 100);
+        fiveMinutes.rollup(dslContext, now, Duration.ZERO, 100);
+
+        Assertions.assertEquals(now, minute.getWatermark());
+        Assertions.assertEquals(now, fiveMinutes.getWatermark());
+
+        List<Record> minuteRows = fetch(minute.getTable(), "app1");
+        Assertions.assertEquals(10, minuteRows.size());
+        Record first = minuteRows.get(0);
+        Assertions.assertEquals(T0, first.get(minute.getTable().getTimestampField()).getTime());
+        Assertions.assertEquals(6L, ((Number) first.get("totalCount")).longValue());
+        Assertions.assertEquals(5L, ((Number) first.get("maxTime")).longValue());
+        Assertions.assertEquals(105L, ((Number) first.get("activeThreads")).longValue());
+
+        List<Record> fiveMinuteRows = fetch(fiveMinutes.getTable(), "app2");
+        Assertions.assertEquals(2, fiveMinuteRows.size());
+        Record last = fiveMinuteRows.get(1);
+        Assertions.assertEquals(T0 + 300_000, last.get(fiveMinutes.getTable().getTimestampField()).getTime());
+        Assertions.assertEquals(30L, ((Number) last.get("totalCount")).longValue());
+        Assertions.assertEquals(59L, ((Number) last.get("maxTime")).longValue());
+        Assertions.assertEquals(159L, ((Number) last.get("activeThreads")).longValue());
+    }
+
+    @Test
+    public void testOnlyClosedWindowsAreRolledUp() throws Exception {
+        MetricRollupTier minute = createTier(Duration.ofMinutes(1), raw, null);
+        MetricRollupTier fiveMinutes = createTier(Duration.ofMinutes(5), minute.getTable(), minute);
+
+        // The 3rd window has not been closed because of the delay
+        long now = T0 + Duration.ofSeconds(150).toMillis();
+        minute.rollup(dslContext, now, Duration.ofSeconds(20), 100);
+        Assertions.assertEquals(T0 + Duration.ofMinutes(2).toMillis(), minute.getWatermark());
+        Assertions.assertEquals(2, fetch(minute.getTable(), "app1").size());
+
+        // The source of the 5m tier is not complete
+        fiveMinutes.rollup(dslContext, T0 + Duration.ofMinutes(10).toMillis(), Duration.ZERO, 100);
+        Assertions.assertEquals(0, fetch(fiveMinutes.getTable(), "app1").size());
+
+        // Catch up at most 3 windows each round
+        minute.rollup(dslContext, T0 + Duration.ofMinutes(10).toMillis(), Duration.ZERO, 3);
+        Assertions.assertEquals(T0 + Duration.ofMinutes(5).toMillis(), minute.getWatermark());
+        Assertions.assertEquals(5, fetch(minute.getTable(), "app1").size());
+
+        // A new instance picks up the watermark from the rollup table
+        MetricRollupTier reloaded = new MetricRollupTier(schema, minute.getTable(), Duration.ofMinutes(1), null, raw, null,
+                                                         new MetricJdbcWriter(dslContext, minute.getTable(), true, null));
+        reloaded.refreshWatermark(dslContext);
+        Assertions.assertEquals(T0 + Duration.ofMinutes(5).toMillis(), reloaded.getWatermark());
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.jdbc.tracing.writer;
+
+import org.bithon.component.commons.tracing.SpanKind;
+import org.bithon.server.storage.jdbc.common.jooq.Tables;
+import org.bithon.server.storage.tracing.TraceSpan;
+import org.bithon.server.storage.tracing.TraceStorageConfig;
+import org.bithon.server.storage.tracing.index.TagIndex;
+import org.bithon.server.storage.tracing.index.TagIndexConfig;
+import org.bithon.server.storage.tracing.mapping.TraceIdMapping;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.jooq.DSLContext;
+import org.jooq.SQLDialect;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many spans per second {@link TraceJdbcWriter} writes into an in-memory H2 database.
+ * Each invocation writes one batch into the span, summary, trace-id mapping and tag index tables.
+ * <p>
+ * The reported 'spans' counter is the throughput in spans/second.
+ * Run {@link #main(String[])} to measure at 1, 4, 16 and 64 writer threads.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class TraceJdbcWriterBenchmark {
+
+    public enum WriteMode {
+        /**
+         * All tables are written in one transaction, which is the default for H2/MySQL
+         */
+        TRANSACTIONAL,
+
+        /**
+         * Tables are written one after another without transaction
+         */
+        SEQUENTIAL,
+
+        /**
+         * Tables are written concurrently on separate connections, which is the default for ClickHouse
+         */
+        CONCURRENT
+    }
+
+    @Param({"1000", "10000", "50000"})
+    public int batchSize;
+
+    @Param({"TRANSACTIONAL", "SEQUENTIAL", "CONCURRENT"})
+    public WriteMode writeMode;
+
+    private JdbcConnectionPool dataSource;
+    private DSLContext dslContext;
+    private TraceJdbcWriter writer;
+
+    private List<TraceSpan> spans;
+    private List<TraceIdMapping> mappings;
+    private List<TagIndex> tagIndices;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counter {
+        public long spans;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            spans = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dataSource = JdbcConnectionPool.create("jdbc:h2:mem:trace-writer-benchmark;MODE=MYSQL", "sa", "");
+        dataSource.setMaxConnections(256);
+        dslContext = DSL.using(dataSource, SQLDialect.H2);
+        for (Table<?> table : new Table<?>[]{Tables.BITHON_TRACE_SPAN,
+                                             Tables.BITHON_TRACE_SPAN_SUMMARY,
+                                             Tables.BITHON_TRACE_MAPPING,
+                                             Tables.BITHON_TRACE_SPAN_TAG_INDEX}) {
+            dslContext.createTableIfNotExists(table)
+                      .columns(table.fields())
+                      .indexes(table.getIndexes())
+                      .execute();
+        }
+
+        TagIndexConfig indexConfig = new TagIndexConfig();
+        indexConfig.setMap(Map.of("http.method", 1, "http.status", 2));
+        TraceStorageConfig storageConfig = new TraceStorageConfig();
+        storageConfig.setIndexes(indexConfig);
+
+        writer = new TraceJdbcWriter(dslContext, storageConfig, null) {
+            @Override
+            protected boolean isTransactionSupported() {
+                return writeMode == WriteMode.TRANSACTIONAL;
+            }
+
+            @Override
+            protected boolean isConcurrentWriteEnabled() {
+                return writeMode == WriteMode.CONCURRENT;
+            }
+        };
+
+        // One trace consists of 10 spans, of which the first one is the root span
+        long now = System.currentTimeMillis();
+        spans = new ArrayList<>(batchSize);
+        mappings = new ArrayList<>();
+        tagIndices = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            String traceId = "trace-" + (i / 10);
+            boolean isRoot = i % 10 == 0;
+
+            TraceSpan span = new TraceSpan();
+            span.appName = "bithon-benchmark";
+            span.instanceName = "192.168.0.1:8080";
+            span.traceId = traceId;
+            span.spanId = "span-" + i;
+            span.parentSpanId = isRoot ? "" : "span-" + (i - i % 10);
+            span.kind = isRoot ? SpanKind.SERVER.name() : SpanKind.CLIENT.name();
+            span.name = "http";
+            span.clazz = "org.bithon.benchmark.Controller";
+            span.method = "handle";
+            span.startTime = now * 1000 + i;
+            span.endTime = span.startTime + 100;
+            span.costTime = 100;
+            span.status = "200";
+            span.normalizedUri = "/api/benchmark";
+            span.tags = new TreeMap<>(Map.of("http.method", "GET", "http.status", "200", "http.uri", "/api/benchmark?id=" + i));
+            spans.add(span);
+
+            if (isRoot) {
+                mappings.add(new TraceIdMapping("user-" + i, now, traceId));
+                tagIndices.add(new TagIndex(now, traceId, "http.method", "GET"));
+                tagIndices.add(new TagIndex(now, traceId, "http.status", "200"));
+            }
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void truncate() {
+        dslContext.truncate(Tables.BITHON_TRACE_SPAN).execute();
+        dslContext.truncate(Tables.BITHON_TRACE_SPAN_SUMMARY).execute();
+        dslContext.truncate(Tables.BITHON_TRACE_MAPPING).execute();
+        dslContext.truncate(Tables.BITHON_TRACE_SPAN_TAG_INDEX).execute();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        writer.close();
+        // The in-memory database is dropped when the last connection is closed
+        dataSource.dispose();
+    }
+
+    @Benchmark
+    public void write(Counter counter) throws IOException {
+        writer.write(spans, mappings, tagIndices);
+        counter.spans += spans.size();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 4, 16, 64}) {
+            Options opt = new OptionsBuilder()
+                .include(TraceJdbcWriterBenchmark.class.getSimpleName())
+                .threads(threads)
+                .forks(1)
+                .warmupIterations(2)
+                .measurementIterations(5)
+                .build();
+
+            new Runner(opt).run();
+        }
+    }
+}
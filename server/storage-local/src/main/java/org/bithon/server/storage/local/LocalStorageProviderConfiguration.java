@@ -0,0 +1,92 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import org.bithon.component.commons.utils.HumanReadableDuration;
+import org.bithon.server.storage.InvalidConfigurationException;
+import org.bithon.server.storage.common.provider.IStorageProviderConfiguration;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Configuration of the storage that keeps data on the local disk of the server.
+ * <p>
+ * Example:
+ * <pre>
+ * bithon:
+ *   storage:
+ *     providers:
+ *       local:
+ *         type: local
+ *         props:
+ *           path: ./data
+ *           flushInterval: 1m
+ *           maxRowsInMemory: 200000
+ *           maxSpansPerSegment: 1000000
+ * </pre>
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Getter
+public class LocalStorageProviderConfiguration implements IStorageProviderConfiguration {
+
+    /**
+     * The root directory where all data is stored
+     */
+    private final File path;
+
+    /**
+     * How long the received rows are kept in memory at most before they're sealed into a segment on disk.
+     * Rows in memory are visible to queries, but they're lost if the server crashes.
+     */
+    private final Duration flushInterval;
+
+    /**
+     * Rows in memory of a partition are sealed into a segment once the number reaches this threshold
+     */
+    private final int maxRowsInMemory;
+
+    /**
+     * Spans of a trace partition are appended to a segment file until the number reaches this threshold,
+     * then the segment is sealed with its indexes written to disk and a new segment is started
+     */
+    private final int maxSpansPerSegment;
+
+    @JsonCreator
+    public LocalStorageProviderConfiguration(@JsonProperty("props") Map<String, Object> props) {
+        String path = ((String) props.getOrDefault("path", "./data")).trim();
+        InvalidConfigurationException.throwIf(path.isEmpty(), "path property is missed.");
+        this.path = new File(path);
+
+        Object flushInterval = props.get("flushInterval");
+        this.flushInterval = flushInterval == null ? Duration.ofMinutes(1) : HumanReadableDuration.parse(flushInterval.toString()).getDuration();
+        InvalidConfigurationException.throwIf(this.flushInterval.getSeconds() <= 0, "flushInterval must be at least 1 second.");
+
+        Object maxRowsInMemory = props.get("maxRowsInMemory");
+        this.maxRowsInMemory = maxRowsInMemory == null ? 200_000 : Integer.parseInt(maxRowsInMemory.toString());
+        InvalidConfigurationException.throwIf(this.maxRowsInMemory <= 0, "maxRowsInMemory must be greater than 0.");
+
+        Object maxSpansPerSegment = props.get("maxSpansPerSegment");
+        this.maxSpansPerSegment = maxSpansPerSegment == null ? 1_000_000 : Integer.parseInt(maxSpansPerSegment.toString());
+        InvalidConfigurationException.throwIf(this.maxSpansPerSegment <= 0, "maxSpansPerSegment must be greater than 0.");
+    }
+}
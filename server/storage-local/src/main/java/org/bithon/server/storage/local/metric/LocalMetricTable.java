@@ -0,0 +1,195 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.metric;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.bithon.server.commons.time.TimeSpan;
+import org.bithon.server.storage.local.metric.segment.ISegment;
+import org.bithon.server.storage.local.metric.segment.ISegmentSource;
+import org.bithon.server.storage.local.metric.segment.SegmentSchema;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Data of a metric table on local disk, which is organized as hourly partitions.
+ * Each partition is a directory named by its start time in UTC.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Slf4j
+public class LocalMetricTable implements ISegmentSource {
+    private static final DateTimeFormatter PARTITION_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHH", Locale.ENGLISH);
+    private static final DateTimeFormatter PARTITION_PARSE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss", Locale.ENGLISH);
+
+    @Getter
+    private final String name;
+    private final Path dir;
+    private final int maxRowsInMemory;
+
+    /**
+     * start timestamp of partition -> partition
+     */
+    private final ConcurrentSkipListMap<Long, Partition> partitions = new ConcurrentSkipListMap<>();
+
+    public LocalMetricTable(String name, Path dir, int maxRowsInMemory) throws IOException {
+        this.name = name;
+        this.dir = dir;
+        this.maxRowsInMemory = maxRowsInMemory;
+
+        Files.createDirectories(dir);
+        try (Stream<Path> partitionDirs = Files.list(dir)) {
+            for (Path partitionDir : partitionDirs.toList()) {
+                if (!Files.isDirectory(partitionDir)) {
+                    continue;
+                }
+                long startTimestamp;
+                try {
+                    startTimestamp = LocalDateTime.parse(partitionDir.getFileName().toString() + "0000", PARTITION_PARSE_FORMAT)
+                                                  .toInstant(ZoneOffset.UTC)
+                                                  .toEpochMilli();
+                } catch (DateTimeParseException e) {
+                    log.warn("Skip unknown directory [{}]", partitionDir);
+                    continue;
+                }
+                partitions.put(startTimestamp, new Partition(startTimestamp, partitionDir));
+            }
+        }
+    }
+
+    /**
+     * @param rows each row is an array whose elements are in the order of columns in the given schema
+     */
+    public void write(SegmentSchema schema, List<Object[]> rows) throws IOException {
+        Map<Long, List<Object[]>> partitionedRows = new HashMap<>();
+        for (Object[] row : rows) {
+            long startTimestamp = Math.floorDiv((Long) row[0], Partition.DURATION) * Partition.DURATION;
+            partitionedRows.computeIfAbsent(startTimestamp, (k) -> new ArrayList<>()).add(row);
+        }
+
+        for (Map.Entry<Long, List<Object[]>> entry : partitionedRows.entrySet()) {
+            Partition partition = getOrCreatePartition(entry.getKey());
+            if (partition.append(schema, entry.getValue()) >= maxRowsInMemory) {
+                partition.sealHead();
+            }
+        }
+    }
+
+    /**
+     * Prune partitions and segments by their time ranges.
+     */
+    @Override
+    public List<ISegment> getSegments(long start, long end) {
+        long from = Math.floorDiv(start, Partition.DURATION) * Partition.DURATION;
+        if (from >= end) {
+            return List.of();
+        }
+
+        List<ISegment> segments = new ArrayList<>();
+        for (Partition partition : partitions.subMap(from, true, end, false).values()) {
+            for (ISegment segment : partition.getSegments()) {
+                if (segment.getRowCount() > 0 && segment.getMinTimestamp() < end && segment.getMaxTimestamp() >= start) {
+                    segments.add(segment);
+                }
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Seal in-memory rows that have been kept longer than the given duration,
+     * and compact partitions whose hour has passed.
+     *
+     * @param force seal all in-memory rows
+     */
+    public void flush(long now, long maxAge, boolean force) {
+        for (Partition partition : partitions.values()) {
+            try {
+                if (force) {
+                    partition.sealHead();
+                } else {
+                    partition.seal(now, maxAge);
+                }
+
+                // Wait for another round so that late rows of the hour are also sealed
+                if (partition.getEndTimestamp() + maxAge <= now && partition.getSegmentCount() > 1) {
+                    partition.compact();
+                }
+            } catch (IOException e) {
+                log.error("Failed to flush partition [{}] of table [{}]", partition.getStartTimestamp(), name, e);
+            }
+        }
+    }
+
+    /**
+     * Drop partitions whose rows are all before the given timestamp.
+     * A partition that overlaps with any day in the skip list is kept.
+     */
+    public void expire(long before, List<TimeSpan> skipDateList) throws IOException {
+        for (Partition partition : new ArrayList<>(partitions.headMap(before).values())) {
+            if (partition.getEndTimestamp() > before) {
+                continue;
+            }
+
+            boolean skip = false;
+            for (TimeSpan skipDate : skipDateList) {
+                long skipStart = skipDate.getMilliseconds();
+                long skipEnd = skipDate.after(1, TimeUnit.DAYS).getMilliseconds();
+                if (partition.getStartTimestamp() < skipEnd && skipStart < partition.getEndTimestamp()) {
+                    skip = true;
+                    break;
+                }
+            }
+            if (skip) {
+                continue;
+            }
+
+            partitions.remove(partition.getStartTimestamp());
+            partition.drop();
+            log.info("\tDropped partition [{}] of [{}]", toPartitionName(partition.getStartTimestamp()), name);
+        }
+    }
+
+    private Partition getOrCreatePartition(long startTimestamp) {
+        return partitions.computeIfAbsent(startTimestamp, (k) -> {
+            try {
+                return new Partition(startTimestamp, dir.resolve(toPartitionName(startTimestamp)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static String toPartitionName(long startTimestamp) {
+        return PARTITION_NAME_FORMAT.format(LocalDateTime.ofEpochSecond(startTimestamp / 1000, 0, ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.metric;
+
+import com.fasterxml.jackson.annotation.JacksonInject;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.OptBoolean;
+import lombok.extern.slf4j.Slf4j;
+import org.bithon.component.commons.concurrency.NamedThreadFactory;
+import org.bithon.server.commons.time.TimeSpan;
+import org.bithon.server.datasource.ISchema;
+import org.bithon.server.datasource.query.IDataSourceReader;
+import org.bithon.server.storage.common.expiration.IExpirationRunnable;
+import org.bithon.server.storage.datasource.SchemaManager;
+import org.bithon.server.storage.local.LocalStorageProviderConfiguration;
+import org.bithon.server.storage.local.metric.query.MetricLocalReader;
+import org.bithon.server.storage.local.metric.segment.SegmentSchema;
+import org.bithon.server.storage.metrics.IMetricStorage;
+import org.bithon.server.storage.metrics.IMetricWriter;
+import org.bithon.server.storage.metrics.MetricStorageConfig;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores metrics on the local disk of the server.
+ * <p>
+ * Each metric table is stored in its own directory and is partitioned by hour.
+ * A partition holds several immutable columnar segments, see {@link org.bithon.server.storage.local.metric.segment.SegmentFile}.
+ * Queries are evaluated over the columns directly, see {@link MetricLocalReader}.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Slf4j
+public class MetricLocalStorage implements IMetricStorage {
+    private static final String BASELINE_FILE = "baseline.properties";
+
+    private final LocalStorageProviderConfiguration providerConfiguration;
+    private final SchemaManager schemaManager;
+    private final MetricStorageConfig storageConfig;
+    private final Path dir;
+
+    /**
+     * table name -> table
+     */
+    private final Map<String, LocalMetricTable> tables = new ConcurrentHashMap<>();
+
+    private ScheduledThreadPoolExecutor flushScheduler;
+
+    @JsonCreator
+    public MetricLocalStorage(@JacksonInject(useInput = OptBoolean.FALSE) LocalStorageProviderConfiguration providerConfiguration,
+                              @JacksonInject(useInput = OptBoolean.FALSE) SchemaManager schemaManager,
+                              @JacksonInject(useInput = OptBoolean.FALSE) MetricStorageConfig storageConfig) {
+        this.providerConfiguration = providerConfiguration;
+        this.schemaManager = schemaManager;
+        this.storageConfig = storageConfig;
+        this.dir = providerConfiguration.getPath().toPath().resolve("metrics");
+    }
+
+    @Override
+    public IMetricWriter createMetricWriter(ISchema schema) {
+        return new MetricLocalWriter(getTable(schema.getDataStoreSpec().getStore()), SegmentSchema.of(schema));
+    }
+
+    @Override
+    public IDataSourceReader createMetricReader(ISchema schema) {
+        return new MetricLocalReader(this::getTable);
+    }
+
+    LocalMetricTable getTable(String name) {
+        return tables.computeIfAbsent(name, (k) -> {
+            try {
+                return new LocalMetricTable(name, dir.resolve(name), providerConfiguration.getMaxRowsInMemory());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public List<String> getBaselineDates() {
+        return getBaselines().stream()
+                             .map((date) -> date.format("yyyy-MM-dd"))
+                             .sorted()
+                             .toList();
+    }
+
+    /**
+     * @return start timestamps of baseline days that have not been expired
+     */
+    synchronized List<TimeSpan> getBaselines() {
+        Properties baselines = loadBaselines();
+
+        List<TimeSpan> dates = new ArrayList<>();
+        for (String date : baselines.stringPropertyNames()) {
+            TimeSpan start = TimeSpan.fromMilliseconds(LocalDate.parse(date)
+                                                                .atStartOfDay(ZoneId.systemDefault())
+                                                                .toInstant()
+                                                                .toEpochMilli());
+
+            int keepDays = Integer.parseInt(baselines.getProperty(date));
+            if (keepDays <= 0 || start.after(keepDays, TimeUnit.DAYS).getMilliseconds() > System.currentTimeMillis()) {
+                dates.add(start);
+            }
+        }
+        return dates;
+    }
+
+    @Override
+    public synchronized void saveBaseline(String date, int keepDays) {
+        Properties baselines = loadBaselines();
+        baselines.setProperty(date, String.valueOf(keepDays));
+        try (Writer writer = Files.newBufferedWriter(dir.resolve(BASELINE_FILE), StandardCharsets.UTF_8)) {
+            baselines.store(writer, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Properties loadBaselines() {
+        Properties baselines = new Properties();
+        Path file = dir.resolve(BASELINE_FILE);
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                baselines.load(reader);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return baselines;
+    }
+
+    @Override
+    public IExpirationRunnable getExpirationRunnable() {
+        return new MetricLocalStorageCleaner(this, schemaManager, storageConfig.getTtl());
+    }
+
+    @Override
+    public void initialize() {
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        long maxAge = providerConfiguration.getFlushInterval().toMillis();
+        long checkInterval = Math.min(maxAge, 5_000);
+        this.flushScheduler = new ScheduledThreadPoolExecutor(1, NamedThreadFactory.daemonThreadFactory("local-metric-flusher"));
+        this.flushScheduler.scheduleWithFixedDelay(() -> flush(maxAge, false),
+                                                   checkInterval,
+                                                   checkInterval,
+                                                   TimeUnit.MILLISECONDS);
+    }
+
+    private void flush(long maxAge, boolean force) {
+        long now = System.currentTimeMillis();
+        for (LocalMetricTable table : tables.values()) {
+            try {
+                table.flush(now, maxAge, force);
+            } catch (RuntimeException e) {
+                log.error("Failed to flush table [{}]", table.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Called by Spring when the application shuts down so that rows in memory are persisted
+     */
+    public void close() {
+        if (this.flushScheduler != null) {
+            this.flushScheduler.shutdown();
+            try {
+                this.flushScheduler.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush(0, true);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.metric;
+
+import org.bithon.server.commons.time.TimeSpan;
+import org.bithon.server.datasource.ISchema;
+import org.bithon.server.storage.common.expiration.ExpirationConfig;
+import org.bithon.server.storage.datasource.SchemaManager;
+import org.bithon.server.storage.metrics.ttl.MetricStorageCleaner;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Drops whole hourly partitions instead of deleting rows
+ *
+ * @author frank.chen021@outlook.com
+ */
+class MetricLocalStorageCleaner extends MetricStorageCleaner {
+    private final MetricLocalStorage storage;
+    private final SchemaManager schemaManager;
+    private final ExpirationConfig ttlConfig;
+
+    MetricLocalStorageCleaner(MetricLocalStorage storage, SchemaManager schemaManager, ExpirationConfig ttlConfig) {
+        this.storage = storage;
+        this.schemaManager = schemaManager;
+        this.ttlConfig = ttlConfig;
+    }
+
+    @Override
+    public ExpirationConfig getExpirationConfig() {
+        return ttlConfig;
+    }
+
+    @Override
+    protected SchemaManager getSchemaManager() {
+        return schemaManager;
+    }
+
+    @Override
+    protected List<TimeSpan> getSkipDateList() {
+        return storage.getBaselines();
+    }
+
+    @Override
+    protected void expireImpl(ISchema schema, Timestamp before, List<TimeSpan> skipDateList) {
+        try {
+            storage.getTable(schema.getDataStoreSpec().getStore())
+                   .expire(before.getTime(), skipDateList);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
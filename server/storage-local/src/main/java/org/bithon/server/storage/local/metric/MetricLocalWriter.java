@@ -0,0 +1,65 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.metric;
+
+import org.bithon.server.datasource.input.IInputRow;
+import org.bithon.server.storage.local.metric.segment.SegmentSchema;
+import org.bithon.server.storage.metrics.IMetricWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class MetricLocalWriter implements IMetricWriter {
+    private final LocalMetricTable table;
+    private final SegmentSchema schema;
+
+    public MetricLocalWriter(LocalMetricTable table, SegmentSchema schema) {
+        this.table = table;
+        this.schema = schema;
+    }
+
+    @Override
+    public void write(List<IInputRow> inputRowList) throws IOException {
+        if (inputRowList.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> rows = new ArrayList<>(inputRowList.size());
+        for (IInputRow inputRow : inputRowList) {
+            Object[] row = new Object[schema.size()];
+            for (int i = 0; i < row.length; i++) {
+                String name = schema.getName(i);
+                row[i] = switch (schema.getType(i)) {
+                    case TIMESTAMP -> inputRow.getColAsLong(name);
+                    case DIMENSION, STRING -> inputRow.getColAsString(name, "");
+                    case LONG -> inputRow.getColAsLong(name, 0);
+                    case DOUBLE -> inputRow.getColAsDouble(name, 0);
+                };
+            }
+            rows.add(row);
+        }
+        table.write(schema, rows);
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.metric;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.bithon.component.commons.utils.StringUtils;
+import org.bithon.server.storage.local.metric.segment.ISegment;
+import org.bithon.server.storage.local.metric.segment.InMemorySegment;
+import org.bithon.server.storage.local.metric.segment.MappedSegment;
+import org.bithon.server.storage.local.metric.segment.SegmentBuilder;
+import org.bithon.server.storage.local.metric.segment.SegmentFile;
+import org.bithon.server.storage.local.metric.segment.SegmentSchema;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Rows of a table in one hour.
+ * <p>
+ * New rows are appended to an in-memory head which is sealed into an immutable segment file periodically.
+ * Once the hour has passed, all segments of the partition are compacted into one.
+ * The whole partition directory is dropped when it expires.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Slf4j
+class Partition {
+    static final long DURATION = 3600_000L;
+
+    private static final String SEGMENT_FILE_SUFFIX = ".seg";
+
+    @Getter
+    private final long startTimestamp;
+
+    private final Path dir;
+
+    /**
+     * Copy-on-write list so that queries can iterate on a snapshot without lock
+     */
+    private volatile List<MappedSegment> segments;
+
+    private SegmentBuilder head;
+    private long headCreatedAt;
+
+    /**
+     * Cached segment built from the head for queries, reset once the head changes
+     */
+    private InMemorySegment headSnapshot;
+
+    /**
+     * Increased once the head changes, so that a snapshot built outside the lock is not cached if the head has been changed since then
+     */
+    private long headVersion;
+
+    private int nextSegmentId;
+
+    Partition(long startTimestamp, Path dir) throws IOException {
+        this.startTimestamp = startTimestamp;
+        this.dir = dir;
+
+        Files.createDirectories(dir);
+
+        List<MappedSegment> loaded = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SEGMENT_FILE_SUFFIX)) {
+                    try {
+                        loaded.add(SegmentFile.open(file));
+                        nextSegmentId = Math.max(nextSegmentId, Integer.parseInt(name.substring(0, name.length() - SEGMENT_FILE_SUFFIX.length())) + 1);
+                    } catch (IOException | NumberFormatException e) {
+                        log.error("Skip segment file [{}]", file, e);
+                    }
+                } else {
+                    // Left by an incomplete write
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        loaded.sort(Comparator.comparing((segment) -> segment.getFile().getFileName().toString()));
+
+        // A crash after a merged segment is written but before its inputs are deleted leaves the inputs behind,
+        // they're deleted here so that their rows are not counted twice
+        Set<String> replaced = new HashSet<>();
+        for (MappedSegment segment : loaded) {
+            replaced.addAll(segment.getReplacedSegments());
+        }
+        for (Iterator<MappedSegment> i = loaded.iterator(); i.hasNext(); ) {
+            Path file = i.next().getFile();
+            if (replaced.contains(file.getFileName().toString())) {
+                log.info("Delete segment [{}] that has been compacted", file);
+                Files.deleteIfExists(file);
+                i.remove();
+            }
+        }
+        this.segments = Collections.unmodifiableList(loaded);
+    }
+
+    long getEndTimestamp() {
+        return startTimestamp + DURATION;
+    }
+
+    /**
+     * @return the number of rows in the head after appending
+     */
+    synchronized int append(SegmentSchema schema, List<Object[]> rows) throws IOException {
+        if (head != null && !head.getSchema().equals(schema)) {
+            // The schema has been changed, rows of different schemas are not mixed in one segment
+            sealHead();
+        }
+        if (head == null) {
+            head = new SegmentBuilder(schema, rows.size());
+            headCreatedAt = System.currentTimeMillis();
+        }
+        for (Object[] row : rows) {
+            head.add(row);
+        }
+        headSnapshot = null;
+        headVersion++;
+        return head.size();
+    }
+
+    /**
+     * @return segments that are visible to queries, including rows in memory
+     */
+    List<ISegment> getSegments() {
+        InMemorySegment snapshot;
+        List<MappedSegment> sealed;
+        SegmentBuilder headRows = null;
+        long version = 0;
+        synchronized (this) {
+            sealed = this.segments;
+            snapshot = head == null ? null : headSnapshot;
+            if (head != null && headSnapshot == null) {
+                // Only copy row references under the lock, building the columns is left outside so that writers are not blocked
+                headRows = head.copy();
+                version = headVersion;
+            }
+        }
+        if (headRows != null) {
+            snapshot = headRows.build();
+            synchronized (this) {
+                if (version == headVersion) {
+                    headSnapshot = snapshot;
+                }
+            }
+        }
+
+        if (snapshot == null) {
+            return Collections.unmodifiableList(sealed);
+        }
+        List<ISegment> all = new ArrayList<>(sealed.size() + 1);
+        all.addAll(sealed);
+        all.add(snapshot);
+        return all;
+    }
+
+    int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Seal the in-memory rows into a segment file if they've been kept in memory longer than the given duration
+     */
+    synchronized void seal(long now, long maxAge) throws IOException {
+        if (head != null && now - headCreatedAt >= maxAge) {
+            sealHead();
+        }
+    }
+
+    synchronized void sealHead() throws IOException {
+        if (head == null) {
+            return;
+        }
+
+        InMemorySegment segment = headSnapshot == null ? head.build() : headSnapshot;
+        MappedSegment sealed = SegmentFile.write(segment, nextSegmentFile());
+
+        List<MappedSegment> newSegments = new ArrayList<>(this.segments);
+        newSegments.add(sealed);
+        this.segments = Collections.unmodifiableList(newSegments);
+        this.head = null;
+        this.headSnapshot = null;
+        this.headVersion++;
+    }
+
+    /**
+     * Merge all sealed segments into one
+     */
+    void compact() throws IOException {
+        List<MappedSegment> inputs = this.segments;
+        if (inputs.size() <= 1) {
+            return;
+        }
+
+        // The schema of the latest segment is used for the merged segment
+        SegmentBuilder builder = new SegmentBuilder(inputs.get(inputs.size() - 1).getSchema(),
+                                                    inputs.stream().mapToInt(ISegment::getRowCount).sum());
+        for (MappedSegment input : inputs) {
+            builder.add(input);
+        }
+
+        Path file;
+        synchronized (this) {
+            file = nextSegmentFile();
+        }
+        MappedSegment merged = SegmentFile.write(builder.build(),
+                                                 file,
+                                                 inputs.stream().map((input) -> input.getFile().getFileName().toString()).toList());
+
+        synchronized (this) {
+            // Segments sealed during the compaction are kept
+            List<MappedSegment> newSegments = new ArrayList<>();
+            newSegments.add(merged);
+            for (MappedSegment segment : this.segments) {
+                if (!inputs.contains(segment)) {
+                    newSegments.add(segment);
+                }
+            }
+            this.segments = Collections.unmodifiableList(newSegments);
+        }
+
+        // Running queries still hold the mapping of deleted files, it's safe to delete them.
+        // If the process crashes before they're all deleted, the rest are deleted when the partition is loaded.
+        for (MappedSegment input : inputs) {
+            Files.deleteIfExists(input.getFile());
+        }
+        log.info("Compacted {} segments into [{}]", inputs.size(), file);
+    }
+
+    synchronized void drop() throws IOException {
+        this.segments = Collections.emptyList();
+        this.head = null;
+        this.headSnapshot = null;
+        this.headVersion++;
+
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    private Path nextSegmentFile() {
+        return dir.resolve(StringUtils.format("%06d", nextSegmentId++) + SEGMENT_FILE_SUFFIX);
+    }
+}
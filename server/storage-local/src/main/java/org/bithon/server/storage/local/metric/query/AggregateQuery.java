@@ -0,0 +1,412 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.metric.query;
+
+import org.bithon.component.commons.expression.ArithmeticExpression;
+import org.bithon.component.commons.expression.FunctionExpression;
+import org.bithon.component.commons.expression.IDataType;
+import org.bithon.component.commons.expression.IEvaluationContext;
+import org.bithon.component.commons.expression.IExpression;
+import org.bithon.component.commons.expression.IExpressionInDepthVisitor;
+import org.bithon.component.commons.expression.IdentifierExpression;
+import org.bithon.component.commons.expression.LiteralExpression;
+import org.bithon.component.commons.expression.LogicalExpression;
+import org.bithon.component.commons.expression.MacroExpression;
+import org.bithon.component.commons.expression.TernaryExpression;
+import org.bithon.component.commons.utils.StringUtils;
+import org.bithon.server.datasource.ISchema;
+import org.bithon.server.datasource.TimestampSpec;
+import org.bithon.server.datasource.column.ExpressionColumn;
+import org.bithon.server.datasource.column.IColumn;
+import org.bithon.server.datasource.query.Interval;
+import org.bithon.server.datasource.query.Query;
+import org.bithon.server.datasource.query.ast.ExpressionNode;
+import org.bithon.server.datasource.query.ast.IASTNode;
+import org.bithon.server.datasource.query.ast.Selector;
+import org.bithon.server.datasource.query.pipeline.Column;
+import org.bithon.server.datasource.query.pipeline.ColumnarTable;
+import org.bithon.server.storage.local.metric.segment.ISegment;
+import org.bithon.server.storage.local.metric.segment.ISegmentSource;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Executes an aggregation query over the columns of segments.
+ * <p>
+ * Rows are first narrowed down by the time range and the inverted index of dimensions,
+ * then aggregated into cells of (group, time bucket).
+ * Expressions over aggregators, like round(sum(a) / sum(b), 2), and the HAVING conditions are evaluated on the cells afterward.
+ *
+ * @author frank.chen021@outlook.com
+ */
+class AggregateQuery {
+    private final ISchema schema;
+    private final Interval interval;
+    private final List<String> groupBy;
+    private final List<String> groupByColumns;
+
+    /**
+     * Time shift in milliseconds when there's an offset
+     */
+    private final long shift;
+
+    private final List<Output> outputs = new ArrayList<>();
+    private final IdentityHashMap<IExpression, Integer> aggregatorIndex = new IdentityHashMap<>();
+    private final List<Supplier<Aggregator>> aggregatorFactories = new ArrayList<>();
+    private final List<IExpression> aggregatorInputs = new ArrayList<>();
+    private final IdentityHashMap<IExpression, Boolean> isPostAggregation = new IdentityHashMap<>();
+    private final Map<String, Object> macros = new HashMap<>();
+
+    private final RowFilter rowFilter;
+    private final List<IExpression> having = new ArrayList<>();
+
+    AggregateQuery(Query query) {
+        this.schema = query.getSchema();
+        this.interval = query.getInterval();
+        this.groupBy = query.getGroupBy();
+        this.groupByColumns = groupBy.stream().map((name) -> LocalQueryUtils.resolveName(schema, name)).toList();
+        this.shift = query.getOffset() == null ? 0 : -query.getOffset().getDuration().toMillis();
+
+        if (interval.getStep() != null
+            && interval.getWindow() != null
+            && interval.getWindow().getDuration().compareTo(interval.getStep()) > 0) {
+            throw new UnsupportedOperationException("Sliding window aggregation is not supported by the local storage");
+        }
+        this.macros.put("interval", interval.getStep() == null ? interval.getTotalSeconds() : interval.getStep().getSeconds());
+
+        for (Selector selector : query.getSelectors()) {
+            addSelector(selector);
+        }
+
+        // Split the filter into row level conditions and the conditions on aggregated values
+        List<IExpression> where = new ArrayList<>();
+        if (query.getFilter() instanceof LogicalExpression.AND and) {
+            and.getOperands().forEach((operand) -> splitFilter(operand, where));
+        } else if (query.getFilter() != null) {
+            splitFilter(query.getFilter(), where);
+        }
+        this.rowFilter = new RowFilter(schema, where.isEmpty() ? null : (where.size() == 1 ? where.get(0) : new LogicalExpression.AND(where)));
+    }
+
+    private void addSelector(Selector selector) {
+        IASTNode selectExpression = selector.getSelectExpression();
+        if (selectExpression instanceof org.bithon.server.datasource.query.ast.Column column) {
+            String name = column.getName();
+            if (groupBy.contains(name) || TimestampSpec.COLUMN_ALIAS.equals(name)) {
+                return;
+            }
+
+            // Aggregate a metric by its pre-defined aggregator
+            IColumn schemaColumn = schema.getColumnByName(name);
+            if (schemaColumn == null) {
+                throw new UnsupportedOperationException(StringUtils.format("Column [%s] does not exist in [%s]", name, schema.getName()));
+            }
+            Selector aggregated = schemaColumn.toSelector();
+            if (!(aggregated.getSelectExpression() instanceof ExpressionNode node)) {
+                throw new UnsupportedOperationException(StringUtils.format("Column [%s] can't be aggregated", name));
+            }
+            addOutput(selector.getOutputName(), node.getParsedExpression(), aggregated.getDataType(), false);
+        } else if (selectExpression instanceof ExpressionNode node) {
+            addOutput(selector.getOutputName(), node.getParsedExpression(), selector.getDataType(), false);
+        } else {
+            throw new UnsupportedOperationException(StringUtils.format("Selector [%s] is not supported by the local storage", selectExpression));
+        }
+    }
+
+    private void addOutput(String name, IExpression expression, IDataType dataType, boolean hidden) {
+        expression.accept(new IExpressionInDepthVisitor() {
+            @Override
+            public boolean visit(FunctionExpression expression) {
+                if (!expression.getFunction().isAggregator()) {
+                    return true;
+                }
+                IExpression input = expression.getArgs().isEmpty() ? null : expression.getArgs().get(0);
+                addAggregator(expression, expression.getName(), input);
+                return false;
+            }
+
+            @Override
+            public boolean visit(MacroExpression expression) {
+                if ("instanceCount".equals(expression.getMacro())) {
+                    addAggregator(expression, "cardinality", new IdentifierExpression("instanceName"));
+                } else if (!macros.containsKey(expression.getMacro())) {
+                    throw new UnsupportedOperationException(StringUtils.format("Macro [%s] is not supported by the local storage", expression.getMacro()));
+                }
+                return false;
+            }
+        });
+        outputs.add(new Output(name, expression, dataType, hidden));
+    }
+
+    private void addAggregator(IExpression expression, String function, IExpression input) {
+        aggregatorIndex.put(expression, aggregatorFactories.size());
+        aggregatorFactories.add(Aggregator.factory(function, isFloatingPoint(input)));
+        aggregatorInputs.add(input);
+    }
+
+    private boolean isFloatingPoint(IExpression input) {
+        if (input instanceof IdentifierExpression identifier) {
+            IColumn column = schema.getColumnByName(identifier.getIdentifier());
+            return column != null && column.getDataType() == IDataType.DOUBLE;
+        }
+        if (input instanceof LiteralExpression<?> literal) {
+            return literal.getValue() instanceof Double;
+        }
+        if (input instanceof ArithmeticExpression arithmetic) {
+            return isFloatingPoint(arithmetic.getLhs()) || isFloatingPoint(arithmetic.getRhs());
+        }
+        return false;
+    }
+
+    /**
+     * A condition that references the output of selectors or expression columns is a HAVING condition
+     */
+    private void splitFilter(IExpression condition, List<IExpression> where) {
+        boolean isHaving = false;
+        for (String identifier : LocalQueryUtils.collectIdentifiers(condition)) {
+            if (findOutput(identifier) != null) {
+                isHaving = true;
+                continue;
+            }
+            if (schema.getColumnByName(identifier) instanceof ExpressionColumn expressionColumn) {
+                Selector selector = expressionColumn.toSelector();
+                addOutput(expressionColumn.getName(),
+                          ((ExpressionNode) selector.getSelectExpression()).getParsedExpression(),
+                          selector.getDataType(),
+                          true);
+                isHaving = true;
+            }
+        }
+        if (isHaving) {
+            having.add(condition);
+        } else {
+            where.add(condition);
+        }
+    }
+
+    private Output findOutput(String name) {
+        for (Output output : outputs) {
+            if (output.name.equals(name)) {
+                return output;
+            }
+        }
+        return null;
+    }
+
+    ColumnarTable execute(ISegmentSource source) {
+        Long step = interval.getStep() == null ? null : interval.getStep().toMillis();
+
+        // Buckets are aligned to the step
+        long start = interval.getStartTime().getMilliseconds();
+        if (step != null) {
+            start = Math.floorDiv(start, step) * step;
+        }
+        long end = interval.getEndTime().getMilliseconds();
+        int bucketCount = step == null ? 1 : (int) Math.max(1, (end - start + step - 1) / step);
+
+        GroupTable groups = new GroupTable(groupByColumns);
+        List<Aggregator[][]> cells = new ArrayList<>();
+
+        long dataStart = start - shift;
+        long dataEnd = end - shift;
+        for (ISegment segment : source.getSegments(dataStart, dataEnd)) {
+            int lower = segment.lowerBound(dataStart);
+            int upper = segment.lowerBound(dataEnd);
+            if (lower >= upper) {
+                continue;
+            }
+            RoaringBitmap rows = rowFilter.apply(segment, RoaringBitmap.bitmapOfRange(lower, upper));
+            if (rows.isEmpty()) {
+                continue;
+            }
+
+            GroupTable.SegmentGroups segmentGroups = groups.forSegment(segment);
+            ValueReader[] inputs = new ValueReader[aggregatorFactories.size()];
+            for (int i = 0; i < inputs.length; i++) {
+                inputs[i] = ValueReader.of(aggregatorInputs.get(i), schema, segment);
+            }
+
+            long[] timestamps = segment.getTimestamps();
+            IntIterator iterator = rows.getIntIterator();
+            while (iterator.hasNext()) {
+                int row = iterator.next();
+                long timestamp = timestamps[row];
+
+                int group = segmentGroups.groupOf(row);
+                while (cells.size() <= group) {
+                    cells.add(new Aggregator[bucketCount][]);
+                }
+                int bucket = step == null ? 0 : (int) ((timestamp + shift - start) / step);
+
+                Aggregator[] aggregators = cells.get(group)[bucket];
+                if (aggregators == null) {
+                    aggregators = new Aggregator[inputs.length];
+                    for (int i = 0; i < aggregators.length; i++) {
+                        aggregators[i] = aggregatorFactories.get(i).get();
+                    }
+                    cells.get(group)[bucket] = aggregators;
+                }
+                for (int i = 0; i < aggregators.length; i++) {
+                    aggregators[i].aggregate(timestamp, inputs[i], row);
+                }
+            }
+        }
+
+        return toTable(groups, cells, bucketCount, start, step);
+    }
+
+    private ColumnarTable toTable(GroupTable groups, List<Aggregator[][]> cells, int bucketCount, long start, Long step) {
+        ColumnarTable table = new ColumnarTable();
+        Column timestampColumn = null;
+        if (step != null) {
+            timestampColumn = table.addColumn(Column.create(TimestampSpec.COLUMN_ALIAS, IDataType.LONG, 16));
+        }
+        List<Column> groupColumns = new ArrayList<>();
+        for (String name : groupBy) {
+            groupColumns.add(table.addColumn(Column.create(name, IDataType.STRING, 16)));
+        }
+        Column[] outputColumns = new Column[outputs.size()];
+        for (int i = 0; i < outputs.size(); i++) {
+            Output output = outputs.get(i);
+            if (!output.hidden) {
+                outputColumns[i] = table.addColumn(Column.create(output.name, toColumnType(output.dataType), 16));
+            }
+        }
+
+        CellContext context = new CellContext();
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            for (int group = 0; group < cells.size(); group++) {
+                Aggregator[] aggregators = cells.get(group)[bucket];
+                if (aggregators == null) {
+                    continue;
+                }
+
+                context.set(groups.getGroup(group), aggregators);
+                for (Output output : outputs) {
+                    context.values.put(output.name, evaluate(output.expression, context));
+                }
+                if (!having.stream().allMatch((condition) -> LogicalExpression.toBoolean(condition.evaluate(context)))) {
+                    continue;
+                }
+
+                if (timestampColumn != null) {
+                    // Reported as if there's no offset
+                    timestampColumn.addLong((start + bucket * step) / 1000);
+                }
+                String[] groupValues = groups.getGroup(group);
+                for (int i = 0; i < groupColumns.size(); i++) {
+                    groupColumns.get(i).addObject(groupValues[i]);
+                }
+                for (int i = 0; i < outputColumns.length; i++) {
+                    if (outputColumns[i] != null) {
+                        addValue(outputColumns[i], context.values.get(outputs.get(i).name));
+                    }
+                }
+            }
+        }
+        return table;
+    }
+
+    private static IDataType toColumnType(IDataType dataType) {
+        return dataType == IDataType.STRING || dataType == IDataType.LONG ? dataType : IDataType.DOUBLE;
+    }
+
+    private static void addValue(Column column, Object value) {
+        if (column.getDataType() == IDataType.STRING) {
+            column.addObject(value == null ? "" : value.toString());
+        } else {
+            column.addObject(value instanceof Number ? value : 0);
+        }
+    }
+
+    /**
+     * Evaluates an output expression on aggregated values without touching the expression of the query,
+     * which is shared with callers
+     */
+    private Object evaluate(IExpression expression, CellContext context) {
+        Integer index = aggregatorIndex.get(expression);
+        if (index != null) {
+            return context.aggregators[index].getValue();
+        }
+        if (expression instanceof MacroExpression macro) {
+            return macros.get(macro.getMacro());
+        }
+        if (!isPostAggregation.computeIfAbsent(expression, LocalQueryUtils::isPostAggregation)) {
+            return expression.evaluate(context);
+        }
+
+        if (expression instanceof ArithmeticExpression arithmetic) {
+            Object lhs = evaluate(arithmetic.getLhs(), context);
+            Object rhs = evaluate(arithmetic.getRhs(), context);
+            if (!(lhs instanceof Number) || !(rhs instanceof Number)) {
+                return null;
+            }
+            try {
+                return arithmetic.evaluate((Number) lhs, (Number) rhs);
+            } catch (ArithmeticException e) {
+                // Division by zero on integers
+                return null;
+            }
+        }
+        if (expression instanceof FunctionExpression function) {
+            List<Object> args = new ArrayList<>(function.getArgs().size());
+            for (IExpression arg : function.getArgs()) {
+                args.add(evaluate(arg, context));
+            }
+            return function.getFunction().evaluate(args);
+        }
+        if (expression instanceof TernaryExpression ternary) {
+            return LogicalExpression.toBoolean(evaluate(ternary.getConditionExpression(), context))
+                   ? evaluate(ternary.getTrueExpression(), context)
+                   : evaluate(ternary.getFalseExpression(), context);
+        }
+        throw new UnsupportedOperationException(StringUtils.format("Expression [%s] is not supported by the local storage", expression.serializeToText()));
+    }
+
+    private record Output(String name, IExpression expression, IDataType dataType, boolean hidden) {
+    }
+
+    /**
+     * Resolves identifiers to the group values and the outputs of a cell
+     */
+    private class CellContext implements IEvaluationContext {
+        private final Map<String, Object> values = new HashMap<>();
+        private Aggregator[] aggregators;
+
+        void set(String[] group, Aggregator[] aggregators) {
+            this.aggregators = aggregators;
+            this.values.clear();
+            for (int i = 0; i < group.length; i++) {
+                this.values.put(groupBy.get(i), group[i]);
+                this.values.put(groupByColumns.get(i), group[i]);
+            }
+        }
+
+        @Override
+        public Object get(String name) {
+            Object value = values.get(name);
+            return value == null ? macros.get(name) : value;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.metric.query;
+
+import org.bithon.component.commons.utils.StringUtils;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * The state of an aggregate function in a group
+ *
+ * @author frank.chen021@outlook.com
+ */
+abstract class Aggregator {
+
+    abstract void aggregate(long timestamp, ValueReader input, int row);
+
+    abstract Object getValue();
+
+    /**
+     * @param floatingPoint whether the input of the aggregator is a floating point number
+     */
+    static Supplier<Aggregator> factory(String function, boolean floatingPoint) {
+        return switch (function) {
+            case "sum" -> floatingPoint ? DoubleSum::new : LongSum::new;
+            case "count" -> Count::new;
+            case "min" -> floatingPoint ? DoubleMin::new : LongMin::new;
+            case "max" -> floatingPoint ? DoubleMax::new : LongMax::new;
+            case "avg" -> Avg::new;
+            case "first" -> First::new;
+            case "last" -> Last::new;
+            case "cardinality" -> Cardinality::new;
+            default -> throw new UnsupportedOperationException(StringUtils.format("Aggregator [%s] is not supported by the local storage", function));
+        };
+    }
+
+    static class LongSum extends Aggregator {
+        private long sum;
+
+        @Override
+        void aggregate(long timestamp, ValueReader input, int row) {
+            sum += input.getLong(row);
+        }
+
+        @Override
+        Object getValue() {
+            return sum;
+        }
+    }
+
+    static class DoubleSum extends Aggregator {
+        private double sum;
+
+        @Override
+        void aggregate(long timestamp, ValueReader input, int row) {
+            sum += input.getDouble(row);
+        }
+
+        @Override
+        Object getValue() {
+            return sum;
+        }
+    }
+
+    static class Count extends Aggregator {
+        private long count;
+
+        @Override
+        void aggregate(long timestamp, ValueReader input, int row) {
+            count++;
+        }
+
+        @Override
+        Object getValue() {
+            return count;
+        }
+    }
+
+    static class LongMin extends Aggregator {
+        private long min = Long.MAX_VALUE;
+
+        @Override
+        void aggregate(long timestamp, ValueReader input, int row) {
+            min = Math.min(min, input.getLong(row));
+        }
+
+        @Override
+        Object getValue() {
+            return min;
+        }
+    }
+
+    static class LongMax extends Aggregator {
+        private long max = Long.MIN_VALUE;
+
+        @Override
+        void aggregate(long timestamp, ValueReader input, int row) {
+            max = Math.max(max, input.getLong(row));
+        }
+
+        @Override
+        Object getValue() {
+            return max;
+        }
+    }
+
+    static class DoubleMin extends Aggregator {
+        private double min = Double.POSITIVE_INFINITY;
+
+        @Override
+        void aggregate(long timestamp, ValueReader input, int row) {
+            min = Math.min(min, input.getDouble(row));
+        }
+
+        @Override
+        Object getValue() {
+            return min;
+        }
+    }
+
+    static class DoubleMax extends Aggregator {
+        private double max = Double.NEGATIVE_INFINITY;
+
+        @Override
+        void aggregate(long timestamp, ValueReader input, int row) {
+            max = Math.max(max, input.getDouble(row));
+        }
+
+        @Override
+        Object getValue() {
+            return max;
+        }
+    }
+
+    static class Avg extends Aggregator {
+        private double sum;
+        private long count;
+
+        @Override
+        void aggregate(long timestamp, ValueReader input, int row) {
+            sum += input.getDouble(row);
+            count++;
+        }
+
+        @Override
+        Object getValue() {
+            return count == 0 ? 0.0 : sum / count;
+        }
+    }
+
+    /**
+     * Rows of different segments are not sorted by timestamp, so the timestamp is tracked
+     */
+    static class First extends Aggregator {
+        private long timestamp = Long.MAX_VALUE;
+        private Object value;
+
+        @Override
+        void aggregate(long timestamp, ValueReader input, int row) {
+            if (timestamp < this.timestamp) {
+                this.timestamp = timestamp;
+                this.value = input.getObject(row);
+            }
+        }
+
+        @Override
+        Object getValue() {
+            return value;
+        }
+    }
+
+    static class Last extends Aggregator {
+        private long timestamp = Long.MIN_VALUE;
+        private Object value;
+
+        @Override
+        void aggregate(long timestamp, ValueReader input, int row) {
+            if (timestamp >= this.timestamp) {
+                this.timestamp = timestamp;
+                this.value = input.getObject(row);
+            }
+        }
+
+        @Override
+        Object getValue() {
+            return value;
+        }
+    }
+
+    static class Cardinality extends Aggregator {
+        private final Set<Object> values = new HashSet<>();
+
+        @Override
+        void aggregate(long timestamp, ValueReader input, int row) {
+            values.add(input.getObject(row));
+        }
+
+        @Override
+        Object getValue() {
+            return (long) values.size();
+        }
+    }
+}
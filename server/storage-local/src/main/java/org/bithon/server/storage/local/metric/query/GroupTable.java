@@ -0,0 +1,134 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.metric.query;
+
+import org.bithon.server.storage.local.metric.segment.DimensionColumn;
+import org.bithon.server.storage.local.metric.segment.ISegment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns an id to each distinct combination of group-by values across segments.
+ * <p>
+ * Dictionary codes are local to a segment,
+ * so each segment keeps a mapping from codes to group ids and values are only looked up once per distinct code.
+ *
+ * @author frank.chen021@outlook.com
+ */
+class GroupTable {
+    private final List<String> columns;
+    private final Map<List<String>, Integer> groupIds = new HashMap<>();
+    private final List<String[]> groups = new ArrayList<>();
+
+    /**
+     * @param columns physical column names of the group-by
+     */
+    GroupTable(List<String> columns) {
+        this.columns = columns;
+    }
+
+    int size() {
+        return groups.size();
+    }
+
+    String[] getGroup(int groupId) {
+        return groups.get(groupId);
+    }
+
+    SegmentGroups forSegment(ISegment segment) {
+        if (columns.isEmpty()) {
+            int groupId = intern(new String[0]);
+            return (row) -> groupId;
+        }
+
+        DimensionColumn[] dimensions = new DimensionColumn[columns.size()];
+        boolean allDimensions = true;
+        for (int i = 0; i < dimensions.length; i++) {
+            dimensions[i] = segment.getDimension(columns.get(i));
+            allDimensions &= dimensions[i] != null;
+        }
+        if (!allDimensions) {
+            return (row) -> {
+                String[] values = new String[columns.size()];
+                for (int i = 0; i < values.length; i++) {
+                    Object value = segment.getValue(columns.get(i), row);
+                    values[i] = value == null ? "" : value.toString();
+                }
+                return intern(values);
+            };
+        }
+
+        if (dimensions.length == 1) {
+            DimensionColumn dimension = dimensions[0];
+            int[] codeToGroup = new int[dimension.getCardinality()];
+            Arrays.fill(codeToGroup, -1);
+            return (row) -> {
+                int code = dimension.getCode(row);
+                int groupId = codeToGroup[code];
+                if (groupId < 0) {
+                    groupId = intern(new String[]{dimension.getDictionaryValue(code)});
+                    codeToGroup[code] = groupId;
+                }
+                return groupId;
+            };
+        }
+
+        // Combine codes of all dimensions into one number
+        Map<Long, Integer> compositeCodeToGroup = new HashMap<>();
+        return (row) -> {
+            long compositeCode = 0;
+            for (DimensionColumn dimension : dimensions) {
+                // Overflow is not a concern in practice, a collision is caught by the comparison below
+                compositeCode = compositeCode * dimension.getCardinality() + dimension.getCode(row);
+            }
+            Integer groupId = compositeCodeToGroup.get(compositeCode);
+            if (groupId != null) {
+                String[] group = groups.get(groupId);
+                boolean same = true;
+                for (int i = 0; i < dimensions.length && same; i++) {
+                    same = group[i].equals(dimensions[i].getValue(row));
+                }
+                if (same) {
+                    return groupId;
+                }
+            }
+
+            String[] values = new String[dimensions.length];
+            for (int i = 0; i < dimensions.length; i++) {
+                values[i] = dimensions[i].getValue(row);
+            }
+            groupId = intern(values);
+            compositeCodeToGroup.putIfAbsent(compositeCode, groupId);
+            return groupId;
+        };
+    }
+
+    private int intern(String[] values) {
+        return groupIds.computeIfAbsent(Arrays.asList(values), (k) -> {
+            groups.add(values);
+            return groups.size() - 1;
+        });
+    }
+
+    interface SegmentGroups {
+        int groupOf(int row);
+    }
+}
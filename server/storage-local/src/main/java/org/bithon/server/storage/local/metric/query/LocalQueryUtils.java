@@ -0,0 +1,89 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.metric.query;
+
+import org.bithon.component.commons.expression.FunctionExpression;
+import org.bithon.component.commons.expression.IDataType;
+import org.bithon.component.commons.expression.IExpression;
+import org.bithon.component.commons.expression.IExpressionInDepthVisitor;
+import org.bithon.component.commons.expression.IdentifierExpression;
+import org.bithon.component.commons.expression.MacroExpression;
+import org.bithon.server.datasource.ISchema;
+import org.bithon.server.datasource.column.IColumn;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+class LocalQueryUtils {
+
+    /**
+     * The value of a column in segments written before the column was added to the schema
+     */
+    static Object defaultValueOf(IColumn column) {
+        IDataType dataType = column.getDataType();
+        if (dataType == IDataType.STRING) {
+            return "";
+        }
+        return dataType == IDataType.DOUBLE ? 0.0 : 0L;
+    }
+
+    /**
+     * @return the physical column name of the given identifier which might be an alias
+     */
+    static String resolveName(ISchema schema, String identifier) {
+        IColumn column = schema.getColumnByName(identifier);
+        return column == null ? identifier : column.getName();
+    }
+
+    static Set<String> collectIdentifiers(IExpression expression) {
+        Set<String> identifiers = new LinkedHashSet<>();
+        expression.accept(new IExpressionInDepthVisitor() {
+            @Override
+            public boolean visit(IdentifierExpression expression) {
+                identifiers.add(expression.getIdentifier());
+                return false;
+            }
+        });
+        return identifiers;
+    }
+
+    /**
+     * @return true if the expression contains any aggregator or macro whose value is only available after aggregation
+     */
+    static boolean isPostAggregation(IExpression expression) {
+        boolean[] found = {false};
+        expression.accept(new IExpressionInDepthVisitor() {
+            @Override
+            public boolean visit(FunctionExpression expression) {
+                if (expression.getFunction().isAggregator()) {
+                    found[0] = true;
+                }
+                return !found[0];
+            }
+
+            @Override
+            public boolean visit(MacroExpression expression) {
+                found[0] = true;
+                return false;
+            }
+        });
+        return found[0];
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.metric.query;
+
+import org.bithon.component.commons.expression.IExpression;
+import org.bithon.component.commons.expression.IdentifierExpression;
+import org.bithon.component.commons.utils.CloseableIterator;
+import org.bithon.component.commons.utils.StringUtils;
+import org.bithon.server.datasource.ISchema;
+import org.bithon.server.datasource.query.ColumnMetadata;
+import org.bithon.server.datasource.query.DataRow;
+import org.bithon.server.datasource.query.IDataSourceReader;
+import org.bithon.server.datasource.query.Limit;
+import org.bithon.server.datasource.query.Order;
+import org.bithon.server.datasource.query.OrderBy;
+import org.bithon.server.datasource.query.Query;
+import org.bithon.server.datasource.query.ReadResponse;
+import org.bithon.server.datasource.query.ResultFormat;
+import org.bithon.server.datasource.query.ast.ExpressionNode;
+import org.bithon.server.datasource.query.ast.Selector;
+import org.bithon.server.datasource.query.pipeline.Column;
+import org.bithon.server.datasource.query.pipeline.ColumnarTable;
+import org.bithon.server.storage.local.metric.segment.DimensionColumn;
+import org.bithon.server.storage.local.metric.segment.ISegment;
+import org.bithon.server.storage.local.metric.segment.ISegmentSource;
+import org.bithon.server.storage.local.metric.segment.SegmentSchema;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * Serves queries on the local storage by evaluating them over the columns of the segments in the queried time range.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class MetricLocalReader implements IDataSourceReader {
+    private static final Comparator<Object> VALUE_COMPARATOR = (v1, v2) -> {
+        if (v1 instanceof Number n1 && v2 instanceof Number n2) {
+            return Double.compare(n1.doubleValue(), n2.doubleValue());
+        }
+        return String.valueOf(v1).compareTo(String.valueOf(v2));
+    };
+
+    private final Function<String, ? extends ISegmentSource> tables;
+
+    /**
+     * @param tables returns the segments of a table by the store name of the queried schema
+     */
+    public MetricLocalReader(Function<String, ? extends ISegmentSource> tables) {
+        this.tables = tables;
+    }
+
+    @Override
+    public ColumnarTable timeseries(Query query) {
+        return new AggregateQuery(query).execute(getTable(query));
+    }
+
+    @Override
+    public ReadResponse query(Query query) {
+        if (query.isAggregateQuery()) {
+            ColumnarTable table = new AggregateQuery(query).execute(getTable(query));
+            table = orderAndLimit(table, query.getOrderBy(), query.getLimit());
+
+            //noinspection unchecked
+            return new ReadResponse(CloseableIterator.transform((CloseableIterator<Object>) table.toIterator(query.getResultFormat()), DataRow::data, null),
+                                    table.getMetadata());
+        }
+
+        List<String> names = query.getSelectors().stream().map(Selector::getOutputName).toList();
+        List<Object[]> rows = selectRows(query);
+        List<ColumnMetadata> columns = query.getSelectors()
+                                            .stream()
+                                            .map((selector) -> new ColumnMetadata(selector.getOutputName(),
+                                                                                  selector.getDataType() == null ? "STRING" : selector.getDataType().name()))
+                                            .toList();
+
+        Function<Object[], Object> mapper = query.getResultFormat() == ResultFormat.ValueArray ? (row) -> row : (row) -> {
+            Map<String, Object> rowObject = new LinkedHashMap<>(names.size());
+            for (int i = 0; i < names.size(); i++) {
+                rowObject.put(names.get(i), row[i]);
+            }
+            return rowObject;
+        };
+        return new ReadResponse(CloseableIterator.transform(rows.iterator(), (row) -> DataRow.data(mapper.apply(row)), null), columns);
+    }
+
+    @Override
+    public List<?> select(Query query) {
+        List<String> names = query.getSelectors().stream().map(Selector::getOutputName).toList();
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Object[] row : selectRows(query)) {
+            Map<String, Object> rowObject = new HashMap<>(names.size());
+            for (int i = 0; i < names.size(); i++) {
+                rowObject.put(names.get(i), row[i]);
+            }
+            result.add(rowObject);
+        }
+        return result;
+    }
+
+    @Override
+    public int count(Query query) {
+        RowFilter filter = new RowFilter(query.getSchema(), query.getFilter());
+        long start = query.getInterval().getStartTime().getMilliseconds();
+        long end = query.getInterval().getEndTime().getMilliseconds();
+
+        int count = 0;
+        for (ISegment segment : getTable(query).getSegments(start, end)) {
+            count += filter.apply(segment, rowsInRange(segment, start, end)).getCardinality();
+        }
+        return count;
+    }
+
+    @Override
+    public List<String> distinct(Query query) {
+        String dimension = LocalQueryUtils.resolveName(query.getSchema(), query.getSelectors().get(0).getOutputName());
+
+        RowFilter filter = new RowFilter(query.getSchema(), query.getFilter());
+        long start = query.getInterval().getStartTime().getMilliseconds();
+        long end = query.getInterval().getEndTime().getMilliseconds();
+
+        TreeSet<String> values = new TreeSet<>();
+        for (ISegment segment : getTable(query).getSegments(start, end)) {
+            RoaringBitmap rows = filter.apply(segment, rowsInRange(segment, start, end));
+            if (rows.isEmpty()) {
+                continue;
+            }
+
+            DimensionColumn column = segment.getDimension(dimension);
+            if (column != null) {
+                // Check each distinct value against the matched rows instead of reading each row
+                for (int code = 0; code < column.getCardinality(); code++) {
+                    if (RoaringBitmap.intersects(column.getPostings(code), rows)) {
+                        values.add(column.getDictionaryValue(code));
+                    }
+                }
+            } else {
+                IntIterator iterator = rows.getIntIterator();
+                while (iterator.hasNext()) {
+                    Object value = segment.getValue(dimension, iterator.next());
+                    if (value != null) {
+                        values.add(value.toString());
+                    }
+                }
+            }
+        }
+        values.remove("");
+        return new ArrayList<>(values);
+    }
+
+    private ISegmentSource getTable(Query query) {
+        return tables.apply(query.getSchema().getDataStoreSpec().getStore());
+    }
+
+    private static RoaringBitmap rowsInRange(ISegment segment, long start, long end) {
+        int lower = segment.lowerBound(start);
+        int upper = segment.lowerBound(end);
+        return lower < upper ? RoaringBitmap.bitmapOfRange(lower, upper) : new RoaringBitmap();
+    }
+
+    /**
+     * Projects the selectors on each matched row without aggregation
+     */
+    private List<Object[]> selectRows(Query query) {
+        ISchema schema = query.getSchema();
+        List<Selector> selectors = query.getSelectors();
+        IExpression[] expressions = new IExpression[selectors.size()];
+        boolean[] isTimestamp = new boolean[selectors.size()];
+        for (int i = 0; i < expressions.length; i++) {
+            Selector selector = selectors.get(i);
+            if (selector.getSelectExpression() instanceof org.bithon.server.datasource.query.ast.Column column) {
+                String name = LocalQueryUtils.resolveName(schema, column.getName());
+                isTimestamp[i] = SegmentSchema.TIMESTAMP_COLUMN.equals(name) || schema.getTimestampSpec().getColumnName().equals(name);
+                expressions[i] = new IdentifierExpression(name);
+            } else if (selector.getSelectExpression() instanceof ExpressionNode node) {
+                expressions[i] = node.getParsedExpression();
+            } else {
+                throw new UnsupportedOperationException(StringUtils.format("Selector [%s] is not supported by the local storage", selector.getSelectExpression()));
+            }
+        }
+
+        int orderIndex = -1;
+        OrderBy orderBy = query.getOrderBy();
+        if (orderBy != null) {
+            for (int i = 0; i < selectors.size() && orderIndex < 0; i++) {
+                if (selectors.get(i).getOutputName().equals(orderBy.getName())) {
+                    orderIndex = i;
+                }
+            }
+        }
+        Limit limit = query.getLimit();
+        // Without ordering, reading can stop as soon as enough rows are read
+        int maxRows = orderIndex < 0 && limit != null ? limit.getOffset() + limit.getLimit() : Integer.MAX_VALUE;
+
+        RowFilter filter = new RowFilter(schema, query.getFilter());
+        long start = query.getInterval().getStartTime().getMilliseconds();
+        long end = query.getInterval().getEndTime().getMilliseconds();
+        SegmentRowContext context = new SegmentRowContext(schema);
+
+        List<Object[]> rows = new ArrayList<>();
+        for (ISegment segment : getTable(query).getSegments(start, end)) {
+            if (rows.size() >= maxRows) {
+                break;
+            }
+            context.segment(segment);
+
+            IntIterator iterator = filter.apply(segment, rowsInRange(segment, start, end)).getIntIterator();
+            while (iterator.hasNext() && rows.size() < maxRows) {
+                context.row(iterator.next());
+
+                Object[] row = new Object[expressions.length];
+                for (int i = 0; i < expressions.length; i++) {
+                    Object value = expressions[i].evaluate(context);
+                    row[i] = isTimestamp[i] && value instanceof Number timestamp ? new Timestamp(timestamp.longValue()) : value;
+                }
+                rows.add(row);
+            }
+        }
+
+        if (orderIndex >= 0) {
+            int index = orderIndex;
+            Comparator<Object[]> comparator = (r1, r2) -> VALUE_COMPARATOR.compare(r1[index], r2[index]);
+            rows.sort(orderBy.getOrder() == Order.desc ? comparator.reversed() : comparator);
+        }
+        if (limit != null) {
+            int from = Math.min(limit.getOffset(), rows.size());
+            int to = Math.min(from + limit.getLimit(), rows.size());
+            rows = rows.subList(from, to);
+        }
+        return rows;
+    }
+
+    private static ColumnarTable orderAndLimit(ColumnarTable table, OrderBy orderBy, Limit limit) {
+        Column orderColumn = orderBy == null ? null : table.getColumn(orderBy.getName());
+        if (orderColumn == null && limit == null) {
+            return table;
+        }
+
+        Integer[] rows = new Integer[table.rowCount()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i;
+        }
+        if (orderColumn != null) {
+            Comparator<Integer> comparator = (r1, r2) -> VALUE_COMPARATOR.compare(orderColumn.getObject(r1), orderColumn.getObject(r2));
+            Arrays.sort(rows, orderBy.getOrder() == Order.desc ? comparator.reversed() : comparator);
+        }
+
+        int from = limit == null ? 0 : Math.min(limit.getOffset(), rows.length);
+        int to = limit == null ? rows.length : Math.min(from + limit.getLimit(), rows.length);
+        int[] selections = new int[to - from];
+        for (int i = from; i < to; i++) {
+            selections[i - from] = rows[i];
+        }
+        if (orderColumn == null) {
+            return table.view(selections, selections.length);
+        }
+
+        // view() returns the table itself when all rows are selected, so copy rows in the sorted order
+        ColumnarTable sorted = new ColumnarTable();
+        for (Column column : table.getColumns()) {
+            Column copy = sorted.addColumn(Column.create(column.getName(), column.getDataType(), selections.length));
+            for (int row : selections) {
+                copy.addObject(column.getObject(row));
+            }
+        }
+        return sorted;
+    }
+}
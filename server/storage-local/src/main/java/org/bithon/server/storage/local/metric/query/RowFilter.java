@@ -0,0 +1,209 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.metric.query;
+
+import org.bithon.component.commons.expression.ComparisonExpression;
+import org.bithon.component.commons.expression.ConditionalExpression;
+import org.bithon.component.commons.expression.ExpressionList;
+import org.bithon.component.commons.expression.IExpression;
+import org.bithon.component.commons.expression.IdentifierExpression;
+import org.bithon.component.commons.expression.LiteralExpression;
+import org.bithon.component.commons.expression.LogicalExpression;
+import org.bithon.server.datasource.ISchema;
+import org.bithon.server.datasource.column.IColumn;
+import org.bithon.server.storage.local.metric.segment.ColumnType;
+import org.bithon.server.storage.local.metric.segment.DimensionColumn;
+import org.bithon.server.storage.local.metric.segment.ISegment;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Set;
+
+/**
+ * Evaluates a filter expression on a segment and turns it into a bitmap of matched rows.
+ * <p>
+ * Predicates on one dimension are served by the inverted index of the dimension:
+ * equality and IN predicates look up the sorted dictionary,
+ * range predicates map to a contiguous range of the dictionary,
+ * and other predicates (LIKE, startsWith, ...) are evaluated once per distinct value instead of once per row.
+ * Only predicates on metrics or on multiple columns are evaluated row by row.
+ *
+ * @author frank.chen021@outlook.com
+ */
+class RowFilter {
+    private final ISchema schema;
+    private final IExpression filter;
+
+    /**
+     * @param filter nullable
+     */
+    RowFilter(ISchema schema, IExpression filter) {
+        this.schema = schema;
+        this.filter = filter;
+    }
+
+    /**
+     * @param candidates rows to be filtered
+     * @return a subset of the given candidates
+     */
+    RoaringBitmap apply(ISegment segment, RoaringBitmap candidates) {
+        if (filter == null || candidates.isEmpty()) {
+            return candidates;
+        }
+        return evaluate(filter, segment, candidates, new SegmentRowContext(schema).segment(segment));
+    }
+
+    private RoaringBitmap evaluate(IExpression expression, ISegment segment, RoaringBitmap candidates, SegmentRowContext rowContext) {
+        if (expression instanceof LogicalExpression.AND and) {
+            RoaringBitmap result = candidates;
+            for (IExpression operand : and.getOperands()) {
+                result = evaluate(operand, segment, result, rowContext);
+                if (result.isEmpty()) {
+                    break;
+                }
+            }
+            return result;
+        }
+
+        if (expression instanceof LogicalExpression.OR or) {
+            RoaringBitmap result = new RoaringBitmap();
+            for (IExpression operand : or.getOperands()) {
+                result.or(evaluate(operand, segment, candidates, rowContext));
+            }
+            return result;
+        }
+
+        if (expression instanceof LogicalExpression.NOT not) {
+            // NOT with multiple operands is NOT (op1 AND op2 ...)
+            RoaringBitmap matched = candidates;
+            for (IExpression operand : not.getOperands()) {
+                matched = evaluate(operand, segment, matched, rowContext);
+            }
+            return RoaringBitmap.andNot(candidates, matched);
+        }
+
+        Set<String> identifiers = LocalQueryUtils.collectIdentifiers(expression);
+        if (identifiers.isEmpty()) {
+            // Constant expression
+            return LogicalExpression.toBoolean(expression.evaluate(rowContext)) ? candidates : new RoaringBitmap();
+        }
+
+        if (identifiers.size() == 1) {
+            IColumn column = schema.getColumnByName(identifiers.iterator().next());
+            if (column != null) {
+                int index = segment.getSchema().indexOf(column.getName());
+                if (index < 0) {
+                    // The column does not exist in this segment, all rows have the default value
+                    Object value = LocalQueryUtils.defaultValueOf(column);
+                    return LogicalExpression.toBoolean(expression.evaluate((name) -> value)) ? candidates : new RoaringBitmap();
+                }
+                if (segment.getSchema().getType(index) == ColumnType.DIMENSION) {
+                    return evaluate(expression, segment.getDimension(column.getName()), candidates, rowContext);
+                }
+            }
+        }
+
+        return scan(expression, candidates, rowContext);
+    }
+
+    private RoaringBitmap evaluate(IExpression expression, DimensionColumn dimension, RoaringBitmap candidates, SegmentRowContext rowContext) {
+        if (expression instanceof ComparisonExpression comparison
+            && comparison.getLhs() instanceof IdentifierExpression
+            && comparison.getRhs() instanceof LiteralExpression<?> literal
+            && literal.getValue() != null) {
+            String value = literal.getValue().toString();
+            int code = dimension.lookup(value);
+
+            // [lower, upper) is the range of codes that are equal to the given value
+            int lower = code >= 0 ? code : -code - 1;
+            int upper = code >= 0 ? code + 1 : lower;
+
+            if (comparison instanceof ComparisonExpression.EQ) {
+                return code >= 0 ? RoaringBitmap.and(dimension.getPostings(code), candidates) : new RoaringBitmap();
+            }
+            if (comparison instanceof ComparisonExpression.NE) {
+                return code >= 0 ? RoaringBitmap.andNot(candidates, dimension.getPostings(code)) : candidates;
+            }
+            if (comparison instanceof ComparisonExpression.LT) {
+                return unionPostings(dimension, 0, lower, candidates);
+            }
+            if (comparison instanceof ComparisonExpression.LTE) {
+                return unionPostings(dimension, 0, upper, candidates);
+            }
+            if (comparison instanceof ComparisonExpression.GT) {
+                return unionPostings(dimension, upper, dimension.getCardinality(), candidates);
+            }
+            if (comparison instanceof ComparisonExpression.GTE) {
+                return unionPostings(dimension, lower, dimension.getCardinality(), candidates);
+            }
+        }
+
+        if (expression instanceof ConditionalExpression.In in
+            && in.getLhs() instanceof IdentifierExpression
+            && in.getRhs() instanceof ExpressionList list
+            && list.getExpressions().stream().allMatch((e) -> e instanceof LiteralExpression<?> literal && literal.getValue() != null)) {
+            RoaringBitmap matched = new RoaringBitmap();
+            for (IExpression e : list.getExpressions()) {
+                int code = dimension.lookup(((LiteralExpression<?>) e).getValue().toString());
+                if (code >= 0) {
+                    matched.or(dimension.getPostings(code));
+                }
+            }
+            return expression instanceof ConditionalExpression.NotIn ? RoaringBitmap.andNot(candidates, matched) : RoaringBitmap.and(candidates, matched);
+        }
+
+        if (dimension.getCardinality() > candidates.getCardinality()) {
+            // Fewer rows than distinct values
+            return scan(expression, candidates, rowContext);
+        }
+
+        // Evaluate the predicate once for each distinct value
+        String[] current = new String[1];
+        RoaringBitmap matched = new RoaringBitmap();
+        for (int code = 0; code < dimension.getCardinality(); code++) {
+            current[0] = dimension.getDictionaryValue(code);
+            if (LogicalExpression.toBoolean(expression.evaluate((name) -> current[0]))) {
+                matched.or(dimension.getPostings(code));
+            }
+        }
+        return RoaringBitmap.and(candidates, matched);
+    }
+
+    /**
+     * @param from inclusive
+     * @param to   exclusive
+     */
+    private static RoaringBitmap unionPostings(DimensionColumn dimension, int from, int to, RoaringBitmap candidates) {
+        RoaringBitmap matched = new RoaringBitmap();
+        for (int code = from; code < to; code++) {
+            matched.or(dimension.getPostings(code));
+        }
+        return RoaringBitmap.and(candidates, matched);
+    }
+
+    private static RoaringBitmap scan(IExpression expression, RoaringBitmap candidates, SegmentRowContext rowContext) {
+        RoaringBitmap matched = new RoaringBitmap();
+        IntIterator rows = candidates.getIntIterator();
+        while (rows.hasNext()) {
+            int row = rows.next();
+            if (LogicalExpression.toBoolean(expression.evaluate(rowContext.row(row)))) {
+                matched.add(row);
+            }
+        }
+        return matched;
+    }
+}
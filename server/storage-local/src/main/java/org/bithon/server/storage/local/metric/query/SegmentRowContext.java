@@ -0,0 +1,63 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.metric.query;
+
+import org.bithon.component.commons.expression.IEvaluationContext;
+import org.bithon.server.datasource.ISchema;
+import org.bithon.server.datasource.column.IColumn;
+import org.bithon.server.storage.local.metric.segment.ISegment;
+
+/**
+ * Evaluates row level expressions, such as filters that cannot be served by the inverted index, on a row of a segment
+ *
+ * @author frank.chen021@outlook.com
+ */
+class SegmentRowContext implements IEvaluationContext {
+    private final ISchema schema;
+    private ISegment segment;
+    private int row;
+
+    SegmentRowContext(ISchema schema) {
+        this.schema = schema;
+    }
+
+    SegmentRowContext segment(ISegment segment) {
+        this.segment = segment;
+        return this;
+    }
+
+    SegmentRowContext row(int row) {
+        this.row = row;
+        return this;
+    }
+
+    @Override
+    public Object get(String name) {
+        Object value = segment.getValue(name, row);
+        if (value != null) {
+            return value;
+        }
+
+        // Might be an alias, or a column that does not exist in old segments
+        IColumn column = schema.getColumnByName(name);
+        if (column == null) {
+            return null;
+        }
+        value = column.getName().equals(name) ? null : segment.getValue(column.getName(), row);
+        return value == null ? LocalQueryUtils.defaultValueOf(column) : value;
+    }
+}
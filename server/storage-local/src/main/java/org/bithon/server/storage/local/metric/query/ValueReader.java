@@ -0,0 +1,196 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.metric.query;
+
+import org.bithon.component.commons.expression.IExpression;
+import org.bithon.component.commons.expression.IdentifierExpression;
+import org.bithon.component.commons.expression.LiteralExpression;
+import org.bithon.server.datasource.ISchema;
+import org.bithon.server.datasource.column.IColumn;
+import org.bithon.server.storage.local.metric.segment.DimensionColumn;
+import org.bithon.server.storage.local.metric.segment.ISegment;
+
+/**
+ * Reads the input of an aggregator from a segment.
+ * Columns are read from the decoded arrays directly, other expressions are evaluated row by row.
+ *
+ * @author frank.chen021@outlook.com
+ */
+abstract class ValueReader {
+
+    abstract long getLong(int row);
+
+    abstract double getDouble(int row);
+
+    abstract Object getObject(int row);
+
+    /**
+     * @param input nullable, for example count()
+     */
+    static ValueReader of(IExpression input, ISchema schema, ISegment segment) {
+        if (input == null || input instanceof LiteralExpression.AsteriskLiteral) {
+            return new Constant(1L);
+        }
+        if (input instanceof LiteralExpression<?> literal) {
+            return new Constant(literal.getValue());
+        }
+
+        if (input instanceof IdentifierExpression identifier) {
+            IColumn column = schema.getColumnByName(identifier.getIdentifier());
+            String name = column == null ? identifier.getIdentifier() : column.getName();
+
+            int index = segment.getSchema().indexOf(name);
+            if (index < 0) {
+                return new Constant(column == null ? null : LocalQueryUtils.defaultValueOf(column));
+            }
+
+            return switch (segment.getSchema().getType(index)) {
+                case TIMESTAMP -> new Longs(segment.getTimestamps());
+                case LONG -> new Longs(segment.getLongs(name));
+                case DOUBLE -> new Doubles(segment.getDoubles(name));
+                case DIMENSION -> new Dimension(segment.getDimension(name));
+                case STRING -> new Evaluated(input, new SegmentRowContext(schema).segment(segment));
+            };
+        }
+
+        return new Evaluated(input, new SegmentRowContext(schema).segment(segment));
+    }
+
+    static class Longs extends ValueReader {
+        private final long[] values;
+
+        Longs(long[] values) {
+            this.values = values;
+        }
+
+        @Override
+        long getLong(int row) {
+            return values[row];
+        }
+
+        @Override
+        double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        Object getObject(int row) {
+            return values[row];
+        }
+    }
+
+    static class Doubles extends ValueReader {
+        private final double[] values;
+
+        Doubles(double[] values) {
+            this.values = values;
+        }
+
+        @Override
+        long getLong(int row) {
+            return (long) values[row];
+        }
+
+        @Override
+        double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        Object getObject(int row) {
+            return values[row];
+        }
+    }
+
+    static class Dimension extends ValueReader {
+        private final DimensionColumn column;
+
+        Dimension(DimensionColumn column) {
+            this.column = column;
+        }
+
+        @Override
+        long getLong(int row) {
+            return (long) getDouble(row);
+        }
+
+        @Override
+        double getDouble(int row) {
+            try {
+                return Double.parseDouble(column.getValue(row));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        @Override
+        Object getObject(int row) {
+            return column.getValue(row);
+        }
+    }
+
+    static class Constant extends ValueReader {
+        private final Object value;
+
+        Constant(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        long getLong(int row) {
+            return value instanceof Number number ? number.longValue() : 0;
+        }
+
+        @Override
+        double getDouble(int row) {
+            return value instanceof Number number ? number.doubleValue() : 0;
+        }
+
+        @Override
+        Object getObject(int row) {
+            return value;
+        }
+    }
+
+    /**
+     * For all other types of column, such as histograms in text form, or expressions like sum(a * b)
+     */
+    static class Evaluated extends ValueReader {
+        private final IExpression expression;
+        private final SegmentRowContext context;
+
+        Evaluated(IExpression expression, SegmentRowContext context) {
+            this.expression = expression;
+            this.context = context;
+        }
+
+        @Override
+        long getLong(int row) {
+            return getObject(row) instanceof Number number ? number.longValue() : 0;
+        }
+
+        @Override
+        double getDouble(int row) {
+            return getObject(row) instanceof Number number ? number.doubleValue() : 0;
+        }
+
+        @Override
+        Object getObject(int row) {
+            return expression.evaluate(context.row(row));
+        }
+    }
+}
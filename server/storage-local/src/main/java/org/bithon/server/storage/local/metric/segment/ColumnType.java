@@ -0,0 +1,55 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.metric.segment;
+
+/**
+ * How a column is encoded in a segment
+ *
+ * @author frank.chen021@outlook.com
+ */
+public enum ColumnType {
+    /**
+     * Milliseconds, rows in a segment are sorted by this column and encoded as deltas
+     */
+    TIMESTAMP,
+
+    /**
+     * Dictionary-encoded string with an inverted index from each value to the rows holding it
+     */
+    DIMENSION,
+
+    /**
+     * Zigzag-encoded deltas between consecutive rows
+     */
+    LONG,
+
+    DOUBLE,
+
+    /**
+     * Length-prefixed text, for example, a histogram in text form
+     */
+    STRING;
+
+    private static final ColumnType[] VALUES = values();
+
+    public static ColumnType of(int ordinal) {
+        if (ordinal < 0 || ordinal >= VALUES.length) {
+            throw new IllegalStateException("Unknown column type " + ordinal);
+        }
+        return VALUES[ordinal];
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.metric.segment;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Arrays;
+
+/**
+ * A dictionary-encoded dimension column of a segment.
+ * The dictionary is sorted so that range predicates on a dimension map to a contiguous range of codes.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class DimensionColumn {
+    private final String[] dictionary;
+    private final int[] codes;
+
+    /**
+     * The inverted index. The i-th bitmap holds the rows whose value is the i-th entry of the dictionary
+     */
+    private final RoaringBitmap[] postings;
+
+    public DimensionColumn(String[] dictionary, int[] codes, RoaringBitmap[] postings) {
+        this.dictionary = dictionary;
+        this.codes = codes;
+        this.postings = postings;
+    }
+
+    public int getCardinality() {
+        return dictionary.length;
+    }
+
+    /**
+     * @return the code of given value, or a negative value as {@link Arrays#binarySearch(Object[], Object)} does if the value does not exist
+     */
+    public int lookup(String value) {
+        return Arrays.binarySearch(dictionary, value);
+    }
+
+    public String getDictionaryValue(int code) {
+        return dictionary[code];
+    }
+
+    public int getCode(int row) {
+        return codes[row];
+    }
+
+    public String getValue(int row) {
+        return dictionary[codes[row]];
+    }
+
+    public RoaringBitmap getPostings(int code) {
+        return postings[code];
+    }
+
+    String[] getDictionary() {
+        return dictionary;
+    }
+
+    int[] getCodes() {
+        return codes;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.metric.segment;
+
+/**
+ * An immutable set of rows in columnar form. Rows are sorted by their timestamps.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public interface ISegment {
+
+    int getRowCount();
+
+    long getMinTimestamp();
+
+    long getMaxTimestamp();
+
+    SegmentSchema getSchema();
+
+    /**
+     * @return timestamps in milliseconds in ascending order
+     */
+    long[] getTimestamps();
+
+    /**
+     * The following accessors return null if the column does not exist in this segment or the column is not the requested type
+     */
+    DimensionColumn getDimension(String name);
+
+    long[] getLongs(String name);
+
+    double[] getDoubles(String name);
+
+    String[] getStrings(String name);
+
+    /**
+     * @param startTimestamp inclusive
+     * @return the first row whose timestamp is not less than the given timestamp
+     */
+    default int lowerBound(long startTimestamp) {
+        long[] timestamps = getTimestamps();
+        int low = 0;
+        int high = timestamps.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] < startTimestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the value of given column at given row, or null if the column does not exist in this segment
+     */
+    default Object getValue(String name, int row) {
+        int index = getSchema().indexOf(name);
+        if (index < 0) {
+            return null;
+        }
+        switch (getSchema().getType(index)) {
+            case TIMESTAMP:
+                return getTimestamps()[row];
+            case DIMENSION:
+                return getDimension(name).getValue(row);
+            case LONG:
+                return getLongs(name)[row];
+            case DOUBLE:
+                return getDoubles(name)[row];
+            case STRING:
+                return getStrings(name)[row];
+            default:
+                throw new IllegalStateException("Unknown column type " + getSchema().getType(index));
+        }
+    }
+}
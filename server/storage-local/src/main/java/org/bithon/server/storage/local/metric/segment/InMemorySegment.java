@@ -0,0 +1,93 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.metric.segment;
+
+/**
+ * A segment whose columns are all held in heap memory
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class InMemorySegment implements ISegment {
+    private final SegmentSchema schema;
+    private final int rowCount;
+
+    /**
+     * Indexed by the position of columns in the schema
+     */
+    private final Object[] columns;
+
+    InMemorySegment(SegmentSchema schema, int rowCount, Object[] columns) {
+        this.schema = schema;
+        this.rowCount = rowCount;
+        this.columns = columns;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public long getMinTimestamp() {
+        return rowCount == 0 ? Long.MAX_VALUE : getTimestamps()[0];
+    }
+
+    @Override
+    public long getMaxTimestamp() {
+        return rowCount == 0 ? Long.MIN_VALUE : getTimestamps()[rowCount - 1];
+    }
+
+    @Override
+    public SegmentSchema getSchema() {
+        return schema;
+    }
+
+    @Override
+    public long[] getTimestamps() {
+        return (long[]) columns[0];
+    }
+
+    @Override
+    public DimensionColumn getDimension(String name) {
+        return getColumn(name, ColumnType.DIMENSION);
+    }
+
+    @Override
+    public long[] getLongs(String name) {
+        return getColumn(name, ColumnType.LONG);
+    }
+
+    @Override
+    public double[] getDoubles(String name) {
+        return getColumn(name, ColumnType.DOUBLE);
+    }
+
+    @Override
+    public String[] getStrings(String name) {
+        return getColumn(name, ColumnType.STRING);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T getColumn(String name, ColumnType type) {
+        int index = schema.indexOf(name);
+        return index < 0 || schema.getType(index) != type ? null : (T) columns[index];
+    }
+
+    Object getColumn(int index) {
+        return columns[index];
+    }
+}
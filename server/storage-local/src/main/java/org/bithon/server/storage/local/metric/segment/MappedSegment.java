@@ -0,0 +1,257 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.metric.segment;
+
+import org.bithon.component.commons.utils.StringUtils;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A segment file mapped into memory.
+ * <p>
+ * Columns are decompressed on first access and kept by soft references,
+ * so frequently queried columns stay decoded while the JVM is allowed to reclaim them under memory pressure.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class MappedSegment implements ISegment {
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final int rowCount;
+    private final long minTimestamp;
+    private final long maxTimestamp;
+    private final SegmentSchema schema;
+    private final long[] offsets;
+    private final int[] compressedLengths;
+    private final int[] rawLengths;
+    private final List<String> replacedSegments;
+    private final AtomicReferenceArray<SoftReference<Object>> decoded;
+
+    MappedSegment(Path file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 5 + SegmentFile.TRAILER_SIZE) {
+                throw new IOException(StringUtils.format("Segment file [%s] is corrupted", file));
+            }
+            // The mapping stays valid after the channel is closed
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        if (buffer.getInt(0) != SegmentFile.MAGIC || buffer.getInt(buffer.capacity() - 4) != SegmentFile.MAGIC) {
+            throw new IOException(StringUtils.format("[%s] is not a segment file", file));
+        }
+        if (buffer.get(4) != SegmentFile.VERSION) {
+            throw new IOException(StringUtils.format("Unsupported segment version [%d] of [%s]", buffer.get(4), file));
+        }
+
+        ByteBuffer footer = buffer.duplicate();
+        footer.position((int) buffer.getLong(buffer.capacity() - SegmentFile.TRAILER_SIZE));
+        this.rowCount = footer.getInt();
+        this.minTimestamp = footer.getLong();
+        this.maxTimestamp = footer.getLong();
+
+        int columnCount = footer.getInt();
+        List<String> names = new ArrayList<>(columnCount);
+        List<ColumnType> types = new ArrayList<>(columnCount);
+        this.offsets = new long[columnCount];
+        this.compressedLengths = new int[columnCount];
+        this.rawLengths = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            byte[] name = new byte[footer.getShort()];
+            footer.get(name);
+            names.add(new String(name, StandardCharsets.UTF_8));
+            types.add(ColumnType.of(footer.get()));
+            offsets[i] = footer.getLong();
+            compressedLengths[i] = footer.getInt();
+            rawLengths[i] = footer.getInt();
+        }
+        this.schema = new SegmentSchema(names, types);
+
+        int replacedCount = footer.getInt();
+        List<String> replaced = new ArrayList<>(replacedCount);
+        for (int i = 0; i < replacedCount; i++) {
+            byte[] name = new byte[footer.getShort()];
+            footer.get(name);
+            replaced.add(new String(name, StandardCharsets.UTF_8));
+        }
+        this.replacedSegments = Collections.unmodifiableList(replaced);
+
+        this.decoded = new AtomicReferenceArray<>(columnCount);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return file names of segments that have been merged into this one
+     */
+    public List<String> getReplacedSegments() {
+        return replacedSegments;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public long getMinTimestamp() {
+        return minTimestamp;
+    }
+
+    @Override
+    public long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    @Override
+    public SegmentSchema getSchema() {
+        return schema;
+    }
+
+    @Override
+    public long[] getTimestamps() {
+        return (long[]) getColumn(0);
+    }
+
+    @Override
+    public DimensionColumn getDimension(String name) {
+        return (DimensionColumn) getColumn(name, ColumnType.DIMENSION);
+    }
+
+    @Override
+    public long[] getLongs(String name) {
+        return (long[]) getColumn(name, ColumnType.LONG);
+    }
+
+    @Override
+    public double[] getDoubles(String name) {
+        return (double[]) getColumn(name, ColumnType.DOUBLE);
+    }
+
+    @Override
+    public String[] getStrings(String name) {
+        return (String[]) getColumn(name, ColumnType.STRING);
+    }
+
+    private Object getColumn(String name, ColumnType type) {
+        int index = schema.indexOf(name);
+        return index < 0 || schema.getType(index) != type ? null : getColumn(index);
+    }
+
+    private Object getColumn(int index) {
+        SoftReference<Object> ref = decoded.get(index);
+        Object column = ref == null ? null : ref.get();
+        if (column == null) {
+            column = decode(index);
+            decoded.set(index, new SoftReference<>(column));
+        }
+        return column;
+    }
+
+    private Object decode(int index) {
+        byte[] raw = new byte[rawLengths[index]];
+        int length = SegmentFile.LZ4.safeDecompressor().decompress(buffer, (int) offsets[index], compressedLengths[index], ByteBuffer.wrap(raw), 0, raw.length);
+        if (length != raw.length) {
+            throw new IllegalStateException(StringUtils.format("Corrupted column [%s] in segment [%s]", schema.getName(index), file));
+        }
+
+        BlockInput in = new BlockInput(raw);
+        return switch (schema.getType(index)) {
+            case TIMESTAMP -> decodeTimestamps(in);
+            case LONG -> decodeLongs(in);
+            case DOUBLE -> decodeDoubles(in);
+            case STRING -> decodeStrings(in);
+            case DIMENSION -> decodeDimension(in);
+        };
+    }
+
+    private long[] decodeTimestamps(BlockInput in) {
+        long[] values = new long[rowCount];
+        long prev = 0;
+        for (int i = 0; i < rowCount; i++) {
+            prev += in.readVarLong();
+            values[i] = prev;
+        }
+        return values;
+    }
+
+    private long[] decodeLongs(BlockInput in) {
+        long[] values = new long[rowCount];
+        long prev = 0;
+        for (int i = 0; i < rowCount; i++) {
+            prev += in.readZigzagLong();
+            values[i] = prev;
+        }
+        return values;
+    }
+
+    private double[] decodeDoubles(BlockInput in) {
+        double[] values = new double[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            values[i] = Double.longBitsToDouble(in.readLong());
+        }
+        return values;
+    }
+
+    private String[] decodeStrings(BlockInput in) {
+        String[] values = new String[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            values[i] = in.readString();
+        }
+        return values;
+    }
+
+    private DimensionColumn decodeDimension(BlockInput in) {
+        String[] dictionary = new String[in.readVarInt()];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = in.readString();
+        }
+
+        int[] codes = new int[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            codes[i] = in.readVarInt();
+        }
+
+        RoaringBitmap[] postings = new RoaringBitmap[dictionary.length];
+        for (int i = 0; i < dictionary.length; i++) {
+            int size = in.readVarInt();
+            postings[i] = new RoaringBitmap();
+            try {
+                postings[i].deserialize(ByteBuffer.wrap(in.buffer(), in.position(), size));
+            } catch (IOException e) {
+                throw new IllegalStateException(StringUtils.format("Corrupted postings in segment [%s]", file), e);
+            }
+            in.skip(size);
+        }
+        return new DimensionColumn(dictionary, codes, postings);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.metric.segment;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects rows and turns them into a columnar {@link InMemorySegment}.
+ * <p>
+ * A row is an array whose elements are in the order of columns in the {@link SegmentSchema}.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class SegmentBuilder {
+    private final SegmentSchema schema;
+    private final List<Object[]> rows;
+
+    public SegmentBuilder(SegmentSchema schema, int initCapacity) {
+        this.schema = schema;
+        this.rows = new ArrayList<>(initCapacity);
+    }
+
+    /**
+     * @return a builder of the rows that have been added so far, rows added to this builder later are not visible to it
+     */
+    public SegmentBuilder copy() {
+        SegmentBuilder copy = new SegmentBuilder(schema, 0);
+        copy.rows.addAll(rows);
+        return copy;
+    }
+
+    public SegmentSchema getSchema() {
+        return schema;
+    }
+
+    public int size() {
+        return rows.size();
+    }
+
+    public void add(Object[] row) {
+        rows.add(row);
+    }
+
+    /**
+     * Add all rows of the given segment.
+     * Columns are matched by name, so that segments written under a previous version of the schema can be merged.
+     */
+    public void add(ISegment segment) {
+        Object[] sources = new Object[schema.size()];
+        for (int i = 0; i < schema.size(); i++) {
+            String name = schema.getName(i);
+            sources[i] = switch (schema.getType(i)) {
+                case TIMESTAMP -> segment.getTimestamps();
+                case DIMENSION -> segment.getDimension(name);
+                case LONG -> segment.getLongs(name);
+                case DOUBLE -> segment.getDoubles(name);
+                case STRING -> segment.getStrings(name);
+            };
+        }
+
+        for (int row = 0, count = segment.getRowCount(); row < count; row++) {
+            Object[] values = new Object[schema.size()];
+            for (int i = 0; i < values.length; i++) {
+                Object source = sources[i];
+                values[i] = switch (schema.getType(i)) {
+                    case TIMESTAMP -> ((long[]) source)[row];
+                    case DIMENSION -> source == null ? "" : ((DimensionColumn) source).getValue(row);
+                    case LONG -> source == null ? 0L : ((long[]) source)[row];
+                    case DOUBLE -> source == null ? 0.0 : ((double[]) source)[row];
+                    case STRING -> source == null ? "" : ((String[]) source)[row];
+                };
+            }
+            rows.add(values);
+        }
+    }
+
+    public InMemorySegment build() {
+        int rowCount = rows.size();
+        List<Object[]> sorted = new ArrayList<>(rows);
+        // Stable sort, rows of the same timestamp keep the order they're written
+        sorted.sort(Comparator.comparingLong((row) -> (Long) row[0]));
+
+        Object[] columns = new Object[schema.size()];
+        for (int i = 0; i < schema.size(); i++) {
+            columns[i] = switch (schema.getType(i)) {
+                case TIMESTAMP, LONG -> toLongs(sorted, i);
+                case DOUBLE -> toDoubles(sorted, i);
+                case STRING -> toStrings(sorted, i);
+                case DIMENSION -> toDimension(sorted, i);
+            };
+        }
+        return new InMemorySegment(schema, rowCount, columns);
+    }
+
+    private static long[] toLongs(List<Object[]> rows, int col) {
+        long[] values = new long[rows.size()];
+        for (int row = 0; row < values.length; row++) {
+            values[row] = ((Number) rows.get(row)[col]).longValue();
+        }
+        return values;
+    }
+
+    private static double[] toDoubles(List<Object[]> rows, int col) {
+        double[] values = new double[rows.size()];
+        for (int row = 0; row < values.length; row++) {
+            values[row] = ((Number) rows.get(row)[col]).doubleValue();
+        }
+        return values;
+    }
+
+    private static String[] toStrings(List<Object[]> rows, int col) {
+        String[] values = new String[rows.size()];
+        for (int row = 0; row < values.length; row++) {
+            values[row] = (String) rows.get(row)[col];
+        }
+        return values;
+    }
+
+    private static DimensionColumn toDimension(List<Object[]> rows, int col) {
+        String[] dictionary = rows.stream()
+                                  .map((row) -> (String) row[col])
+                                  .distinct()
+                                  .sorted()
+                                  .toArray(String[]::new);
+
+        Map<String, Integer> codeMap = new HashMap<>(dictionary.length * 2);
+        for (int code = 0; code < dictionary.length; code++) {
+            codeMap.put(dictionary[code], code);
+        }
+
+        int[] codes = new int[rows.size()];
+        RoaringBitmap[] postings = new RoaringBitmap[dictionary.length];
+        Arrays.setAll(postings, (code) -> new RoaringBitmap());
+        for (int row = 0; row < codes.length; row++) {
+            int code = codeMap.get((String) rows.get(row)[col]);
+            codes[row] = code;
+            postings[code].add(row);
+        }
+        for (RoaringBitmap posting : postings) {
+            posting.runOptimize();
+        }
+        return new DimensionColumn(dictionary, codes, postings);
+    }
+}
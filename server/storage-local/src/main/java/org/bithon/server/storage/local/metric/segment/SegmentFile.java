@@ -0,0 +1,204 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.metric.segment;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * The on-disk format of a segment.
+ * <pre>
+ * | MAGIC(4) | VERSION(1) | column block 1 | ... | column block N | footer | footer offset(8) | MAGIC(4) |
+ *
+ * footer:
+ * | row count(4) | min timestamp(8) | max timestamp(8) | column count(4) |
+ * | for each column: name length(2) | name | type(1) | block offset(8) | compressed length(4) | raw length(4) |
+ * | replaced segment count(4) | for each replaced segment: name length(2) | name |
+ * </pre>
+ * Each column block is compressed by LZ4 separately so that a query only decompresses the columns it touches.
+ * <p>
+ * A segment merged from others records the file names of them, so that the inputs left by a crash
+ * between writing the merged segment and deleting its inputs are known when the partition is loaded.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class SegmentFile {
+    static final int MAGIC = 0x42534547;
+    static final byte VERSION = 1;
+
+    /**
+     * footer offset + magic
+     */
+    static final int TRAILER_SIZE = 12;
+
+    static final LZ4Factory LZ4 = LZ4Factory.fastestInstance();
+
+    /**
+     * Write the segment to a temporary file first and rename it to the target, so that a crash never leaves a partial segment behind
+     */
+    public static MappedSegment write(ISegment segment, Path file) throws IOException {
+        return write(segment, file, List.of());
+    }
+
+    /**
+     * @param replacedSegments file names of segments that are replaced by the written one
+     */
+    public static MappedSegment write(ISegment segment, Path file, List<String> replacedSegments) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        SegmentSchema schema = segment.getSchema();
+        LZ4Compressor compressor = LZ4.fastCompressor();
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(5);
+            header.putInt(MAGIC).put(VERSION).flip();
+            writeFully(channel, header);
+
+            ByteArrayOutputStream footerBytes = new ByteArrayOutputStream(256);
+            DataOutputStream footer = new DataOutputStream(footerBytes);
+            footer.writeInt(segment.getRowCount());
+            footer.writeLong(segment.getMinTimestamp());
+            footer.writeLong(segment.getMaxTimestamp());
+            footer.writeInt(schema.size());
+
+            for (int i = 0; i < schema.size(); i++) {
+                BlockOutput raw = encode(segment, schema.getName(i), schema.getType(i));
+
+                byte[] compressed = new byte[compressor.maxCompressedLength(raw.size())];
+                int compressedLength = compressor.compress(raw.buffer(), 0, raw.size(), compressed, 0, compressed.length);
+
+                long offset = channel.position();
+                writeFully(channel, ByteBuffer.wrap(compressed, 0, compressedLength));
+
+                byte[] name = schema.getName(i).getBytes(StandardCharsets.UTF_8);
+                footer.writeShort(name.length);
+                footer.write(name);
+                footer.writeByte(schema.getType(i).ordinal());
+                footer.writeLong(offset);
+                footer.writeInt(compressedLength);
+                footer.writeInt(raw.size());
+            }
+
+            footer.writeInt(replacedSegments.size());
+            for (String replaced : replacedSegments) {
+                byte[] name = replaced.getBytes(StandardCharsets.UTF_8);
+                footer.writeShort(name.length);
+                footer.write(name);
+            }
+
+            long footerOffset = channel.position();
+            footer.writeLong(footerOffset);
+            footer.writeInt(MAGIC);
+            footer.flush();
+            writeFully(channel, ByteBuffer.wrap(footerBytes.toByteArray()));
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        return open(file);
+    }
+
+    public static MappedSegment open(Path file) throws IOException {
+        return new MappedSegment(file);
+    }
+
+    private static BlockOutput encode(ISegment segment, String name, ColumnType type) {
+        return switch (type) {
+            case TIMESTAMP -> encodeTimestamps(segment.getTimestamps());
+            case LONG -> encodeLongs(segment.getLongs(name));
+            case DOUBLE -> encodeDoubles(segment.getDoubles(name));
+            case STRING -> encodeStrings(segment.getStrings(name));
+            case DIMENSION -> encodeDimension(segment.getDimension(name), segment.getRowCount());
+        };
+    }
+
+    private static BlockOutput encodeTimestamps(long[] timestamps) {
+        BlockOutput out = new BlockOutput(timestamps.length * 2);
+        long prev = 0;
+        for (long ts : timestamps) {
+            // Timestamps are sorted, the delta is never negative
+            out.writeVarLong(ts - prev);
+            prev = ts;
+        }
+        return out;
+    }
+
+    private static BlockOutput encodeLongs(long[] values) {
+        BlockOutput out = new BlockOutput(values.length * 2);
+        long prev = 0;
+        for (long value : values) {
+            out.writeZigzagLong(value - prev);
+            prev = value;
+        }
+        return out;
+    }
+
+    private static BlockOutput encodeDoubles(double[] values) {
+        BlockOutput out = new BlockOutput(values.length * 8);
+        for (double value : values) {
+            out.writeLong(Double.doubleToRawLongBits(value));
+        }
+        return out;
+    }
+
+    private static BlockOutput encodeStrings(String[] values) {
+        BlockOutput out = new BlockOutput(values.length * 16);
+        for (String value : values) {
+            out.writeString(value);
+        }
+        return out;
+    }
+
+    private static BlockOutput encodeDimension(DimensionColumn column, int rowCount) {
+        BlockOutput out = new BlockOutput(rowCount * 2);
+        out.writeVarInt(column.getCardinality());
+        for (String value : column.getDictionary()) {
+            out.writeString(value);
+        }
+        for (int code : column.getCodes()) {
+            out.writeVarInt(code);
+        }
+        for (int code = 0; code < column.getCardinality(); code++) {
+            RoaringBitmap postings = column.getPostings(code);
+            int size = postings.serializedSizeInBytes();
+            out.writeVarInt(size);
+
+            ByteBuffer buf = ByteBuffer.allocate(size);
+            postings.serialize(buf);
+            out.writeBytes(buf.array(), 0, size);
+        }
+        return out;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+}
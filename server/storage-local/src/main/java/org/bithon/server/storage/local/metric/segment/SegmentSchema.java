@@ -0,0 +1,113 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.metric.segment;
+
+import org.bithon.component.commons.expression.IDataType;
+import org.bithon.server.datasource.DefaultSchema;
+import org.bithon.server.datasource.ISchema;
+import org.bithon.server.datasource.column.ExpressionColumn;
+import org.bithon.server.datasource.column.IColumn;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The physical columns of rows written to segments.
+ * The first column is always the timestamp, followed by dimensions and metrics in the order of the schema.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class SegmentSchema {
+    public static final String TIMESTAMP_COLUMN = "timestamp";
+
+    private final List<String> names;
+    private final List<ColumnType> types;
+    private final Map<String, Integer> indexes;
+
+    public SegmentSchema(List<String> names, List<ColumnType> types) {
+        this.names = Collections.unmodifiableList(names);
+        this.types = Collections.unmodifiableList(types);
+        this.indexes = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            this.indexes.put(names.get(i), i);
+        }
+    }
+
+    public static SegmentSchema of(ISchema schema) {
+        if (!(schema instanceof DefaultSchema defaultSchema)) {
+            throw new UnsupportedOperationException("Schema of type " + schema.getClass().getSimpleName() + " is not supported by the local storage");
+        }
+
+        List<String> names = new ArrayList<>();
+        List<ColumnType> types = new ArrayList<>();
+        names.add(TIMESTAMP_COLUMN);
+        types.add(ColumnType.TIMESTAMP);
+        for (IColumn dimension : defaultSchema.getDimensionsSpec()) {
+            names.add(dimension.getName());
+            types.add(ColumnType.DIMENSION);
+        }
+        for (IColumn metric : defaultSchema.getMetricsSpec()) {
+            if (metric instanceof ExpressionColumn) {
+                // Calculated at query time
+                continue;
+            }
+            names.add(metric.getName());
+            types.add(metric.getDataType() == IDataType.STRING ? ColumnType.STRING
+                                                                 : metric.getDataType() == IDataType.DOUBLE ? ColumnType.DOUBLE : ColumnType.LONG);
+        }
+        return new SegmentSchema(names, types);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    public String getName(int index) {
+        return names.get(index);
+    }
+
+    public ColumnType getType(int index) {
+        return types.get(index);
+    }
+
+    /**
+     * @return -1 if the column does not exist
+     */
+    public int indexOf(String name) {
+        Integer index = indexes.get(name);
+        return index == null ? -1 : index;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SegmentSchema that)) {
+            return false;
+        }
+        return names.equals(that.names) && types.equals(that.types);
+    }
+
+    @Override
+    public int hashCode() {
+        return names.hashCode() * 31 + types.hashCode();
+    }
+}
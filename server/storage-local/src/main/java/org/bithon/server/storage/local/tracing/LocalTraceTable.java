@@ -0,0 +1,234 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.tracing;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bithon.server.storage.local.tracing.segment.ITraceSegment;
+import org.bithon.server.storage.tracing.TraceSpan;
+import org.bithon.server.storage.tracing.index.TagIndex;
+import org.bithon.server.storage.tracing.mapping.TraceIdMapping;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * Spans on local disk, which are organized as hourly partitions of the span start time.
+ * Each partition is a directory named by its start time in UTC.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Slf4j
+public class LocalTraceTable {
+    private static final DateTimeFormatter PARTITION_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHH", Locale.ENGLISH);
+    private static final DateTimeFormatter PARTITION_PARSE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss", Locale.ENGLISH);
+
+    private final Path dir;
+    private final Set<String> indexedTags;
+    private final int maxSpansPerSegment;
+
+    /**
+     * start timestamp of partition -> partition
+     */
+    private final ConcurrentSkipListMap<Long, TracePartition> partitions = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param indexedTags names of tags that inverted indexes are built for
+     */
+    public LocalTraceTable(Path dir, Set<String> indexedTags, int maxSpansPerSegment) throws IOException {
+        this.dir = dir;
+        this.indexedTags = indexedTags;
+        this.maxSpansPerSegment = maxSpansPerSegment;
+
+        Files.createDirectories(dir);
+        try (Stream<Path> partitionDirs = Files.list(dir)) {
+            for (Path partitionDir : partitionDirs.toList()) {
+                if (!Files.isDirectory(partitionDir)) {
+                    continue;
+                }
+                long startTimestamp;
+                try {
+                    startTimestamp = LocalDateTime.parse(partitionDir.getFileName().toString() + "0000", PARTITION_PARSE_FORMAT)
+                                                  .toInstant(ZoneOffset.UTC)
+                                                  .toEpochMilli();
+                } catch (DateTimeParseException e) {
+                    log.warn("Skip unknown directory [{}]", partitionDir);
+                    continue;
+                }
+                try {
+                    partitions.put(startTimestamp, new TracePartition(startTimestamp, partitionDir, indexedTags));
+                } catch (IOException | RuntimeException e) {
+                    // Don't let one partition fail the whole table
+                    log.error("Skip trace partition [{}]", partitionDir, e);
+                }
+            }
+        }
+    }
+
+    public void write(List<TraceSpan> spans, List<TraceIdMapping> mappings, List<TagIndex> tagIndices) throws IOException {
+        // Spans and tags of a partition are appended in one batch
+        Map<Long, List<TraceSpan>> partitionedSpans = new TreeMap<>();
+        for (TraceSpan span : spans) {
+            partitionedSpans.computeIfAbsent(toPartition(span.startTime / 1000), (k) -> new ArrayList<>()).add(span);
+        }
+        Map<Long, List<TagIndex>> partitionedTags = new TreeMap<>();
+        for (TagIndex tagIndex : tagIndices) {
+            partitionedTags.computeIfAbsent(toPartition(tagIndex.getTimestamp()), (k) -> new ArrayList<>()).add(tagIndex);
+        }
+        for (Map.Entry<Long, List<TraceSpan>> entry : partitionedSpans.entrySet()) {
+            getOrCreatePartition(entry.getKey()).append(entry.getValue(),
+                                                        partitionedTags.getOrDefault(entry.getKey(), Collections.emptyList()),
+                                                        maxSpansPerSegment);
+        }
+        for (Map.Entry<Long, List<TagIndex>> entry : partitionedTags.entrySet()) {
+            if (!partitionedSpans.containsKey(entry.getKey())) {
+                getOrCreatePartition(entry.getKey()).append(Collections.emptyList(), entry.getValue(), maxSpansPerSegment);
+            }
+        }
+
+        Map<Long, List<TraceIdMapping>> partitionedMappings = new TreeMap<>();
+        for (TraceIdMapping mapping : mappings) {
+            partitionedMappings.computeIfAbsent(toPartition(mapping.getTimestamp()), (k) -> new ArrayList<>()).add(mapping);
+        }
+        for (Map.Entry<Long, List<TraceIdMapping>> entry : partitionedMappings.entrySet()) {
+            getOrCreatePartition(entry.getKey()).addMappings(entry.getValue());
+        }
+    }
+
+    /**
+     * Prune partitions and segments by their time ranges.
+     *
+     * @param start inclusive
+     * @param end   exclusive
+     * @return segments that may contain spans in the given time range, the latest partition comes first
+     */
+    public List<ITraceSegment> getSegments(long start, long end) {
+        long from = toPartition(start);
+        if (from >= end) {
+            return List.of();
+        }
+
+        List<ITraceSegment> segments = new ArrayList<>();
+        for (TracePartition partition : partitions.subMap(from, true, end, false).descendingMap().values()) {
+            List<ITraceSegment> partitionSegments = partition.getSegments();
+            for (int i = partitionSegments.size() - 1; i >= 0; i--) {
+                ITraceSegment segment = partitionSegments.get(i);
+                if (segment.getRowCount() > 0 && segment.getMinTimestamp() < end && segment.getMaxTimestamp() >= start) {
+                    segments.add(segment);
+                }
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * @return the latest mapping of the given user id
+     */
+    public TraceIdMapping getMapping(String userId) {
+        TraceIdMapping latest = null;
+        for (TracePartition partition : partitions.descendingMap().values()) {
+            TraceIdMapping mapping = partition.getMapping(userId);
+            if (mapping != null && (latest == null || mapping.getTimestamp() > latest.getTimestamp())) {
+                latest = mapping;
+            }
+            if (latest != null && latest.getTimestamp() >= partition.getStartTimestamp()) {
+                // Mappings in earlier partitions are older
+                break;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Seal active segments that have been written longer than the given duration
+     *
+     * @param force seal all active segments
+     */
+    public void flush(long now, long maxAge, boolean force) {
+        for (TracePartition partition : partitions.values()) {
+            try {
+                if (force) {
+                    partition.sealActive();
+                } else {
+                    partition.seal(now, maxAge);
+                }
+            } catch (IOException e) {
+                log.error("Failed to seal trace partition [{}]", toPartitionName(partition.getStartTimestamp()), e);
+            }
+        }
+    }
+
+    /**
+     * Drop partitions whose spans are all before the given timestamp
+     */
+    public void expire(long before) throws IOException {
+        for (TracePartition partition : new ArrayList<>(partitions.headMap(before).values())) {
+            if (partition.getEndTimestamp() > before) {
+                continue;
+            }
+
+            partitions.remove(partition.getStartTimestamp());
+            partition.drop();
+            log.info("\tDropped trace partition [{}]", toPartitionName(partition.getStartTimestamp()));
+        }
+    }
+
+    /**
+     * Close active segments without sealing them, they're recovered from data files when the table is opened again
+     */
+    public void close() {
+        for (TracePartition partition : partitions.values()) {
+            try {
+                partition.close();
+            } catch (IOException e) {
+                log.error("Failed to close trace partition [{}]", toPartitionName(partition.getStartTimestamp()), e);
+            }
+        }
+    }
+
+    private TracePartition getOrCreatePartition(long startTimestamp) {
+        return partitions.computeIfAbsent(startTimestamp, (k) -> {
+            try {
+                return new TracePartition(startTimestamp, dir.resolve(toPartitionName(startTimestamp)), indexedTags);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static long toPartition(long timestamp) {
+        return Math.floorDiv(timestamp, TracePartition.DURATION) * TracePartition.DURATION;
+    }
+
+    private static String toPartitionName(long startTimestamp) {
+        return PARTITION_NAME_FORMAT.format(LocalDateTime.ofEpochSecond(startTimestamp / 1000, 0, ZoneOffset.UTC));
+    }
+}
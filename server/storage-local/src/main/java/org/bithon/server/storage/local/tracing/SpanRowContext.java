@@ -0,0 +1,70 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.tracing;
+
+import org.bithon.component.commons.expression.IEvaluationContext;
+import org.bithon.server.datasource.ISchema;
+import org.bithon.server.datasource.column.IColumn;
+import org.bithon.server.storage.tracing.TraceSpan;
+
+/**
+ * Evaluates expressions on a span by the column names (or aliases) of the trace span schema
+ *
+ * @author frank.chen021@outlook.com
+ */
+class SpanRowContext implements IEvaluationContext {
+    private final ISchema schema;
+    private TraceSpan span;
+
+    SpanRowContext(ISchema schema) {
+        this.schema = schema;
+    }
+
+    SpanRowContext span(TraceSpan span) {
+        this.span = span;
+        return this;
+    }
+
+    @Override
+    public Object get(String name) {
+        IColumn column = schema.getColumnByName(name);
+        return getValue(span, column == null ? name : column.getName());
+    }
+
+    /**
+     * @param name physical column name of the trace span schema
+     */
+    static Object getValue(TraceSpan span, String name) {
+        return switch (name) {
+            case "traceId" -> span.traceId;
+            case "appName" -> span.appName;
+            case "instanceName" -> span.instanceName;
+            case "status" -> span.status;
+            case "name" -> span.name;
+            case "clazz" -> span.clazz;
+            case "method" -> span.method;
+            case "normalizedUrl" -> span.normalizedUri;
+            case "kind" -> span.kind;
+            case "attributes" -> span.tags;
+            case "costTimeUs" -> span.costTime;
+            case "startTimeUs" -> span.startTime;
+            case "endTimeUs" -> span.endTime;
+            case "timestamp" -> span.startTime / 1000;
+            default -> span.getCol(name);
+        };
+    }
+}
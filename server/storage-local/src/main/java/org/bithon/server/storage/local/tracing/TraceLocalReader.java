@@ -0,0 +1,600 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.tracing;
+
+import org.bithon.component.commons.exception.HttpMappableException;
+import org.bithon.component.commons.expression.ComparisonExpression;
+import org.bithon.component.commons.expression.ConditionalExpression;
+import org.bithon.component.commons.expression.ExpressionList;
+import org.bithon.component.commons.expression.IExpression;
+import org.bithon.component.commons.expression.IExpressionInDepthVisitor;
+import org.bithon.component.commons.expression.IdentifierExpression;
+import org.bithon.component.commons.expression.LiteralExpression;
+import org.bithon.component.commons.expression.LogicalExpression;
+import org.bithon.component.commons.tracing.SpanKind;
+import org.bithon.component.commons.utils.CloseableIterator;
+import org.bithon.component.commons.utils.CollectionUtils;
+import org.bithon.component.commons.utils.StringUtils;
+import org.bithon.server.commons.time.TimeSpan;
+import org.bithon.server.datasource.ISchema;
+import org.bithon.server.datasource.column.IColumn;
+import org.bithon.server.datasource.query.ColumnMetadata;
+import org.bithon.server.datasource.query.DataRow;
+import org.bithon.server.datasource.query.Limit;
+import org.bithon.server.datasource.query.Order;
+import org.bithon.server.datasource.query.OrderBy;
+import org.bithon.server.datasource.query.Query;
+import org.bithon.server.datasource.query.ReadResponse;
+import org.bithon.server.datasource.query.ResultFormat;
+import org.bithon.server.datasource.query.ast.Column;
+import org.bithon.server.datasource.query.ast.ExpressionNode;
+import org.bithon.server.datasource.query.ast.Selector;
+import org.bithon.server.datasource.query.pipeline.ColumnarTable;
+import org.bithon.server.storage.local.metric.query.MetricLocalReader;
+import org.bithon.server.storage.local.metric.segment.ColumnType;
+import org.bithon.server.storage.local.metric.segment.ISegment;
+import org.bithon.server.storage.local.metric.segment.ISegmentSource;
+import org.bithon.server.storage.local.metric.segment.SegmentBuilder;
+import org.bithon.server.storage.local.metric.segment.SegmentSchema;
+import org.bithon.server.storage.local.tracing.segment.ITraceSegment;
+import org.bithon.server.storage.tracing.ITraceReader;
+import org.bithon.server.storage.tracing.TraceSpan;
+import org.bithon.server.storage.tracing.TraceTableSchema;
+import org.bithon.server.storage.tracing.mapping.TraceIdMapping;
+import org.bithon.server.storage.tracing.reader.TraceFilterSplitter;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.BiFunction;
+
+/**
+ * Serves trace queries from the indexes of local trace segments.
+ * <ul>
+ *     <li>A trace is located by the traceId hash index of each segment in the time range</li>
+ *     <li>Indexed tag filters are evaluated on the dictionary of tag values, the matched traces are found from the inverted index</li>
+ *     <li>Root spans are kept in a bitmap of each segment, which serves queries on the trace summary</li>
+ * </ul>
+ * Aggregations over spans are delegated to the metric query engine by turning matched spans into columnar segments.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class TraceLocalReader implements ITraceReader {
+    private static final Comparator<Object> VALUE_COMPARATOR = (v1, v2) -> {
+        if (v1 instanceof Number n1 && v2 instanceof Number n2) {
+            return Double.compare(n1.doubleValue(), n2.doubleValue());
+        }
+        return String.valueOf(v1).compareTo(String.valueOf(v2));
+    };
+
+    /**
+     * For spans coming from the same application instance, sort them by the start time
+     */
+    private static final Comparator<TraceSpan> TRACE_ORDER = Comparator.<TraceSpan>comparingLong((span) -> span.startTime / 1000)
+                                                                       .thenComparing((span) -> nullToEmpty(span.instanceName))
+                                                                       .thenComparingLong((span) -> span.startTime);
+
+    /**
+     * Columns of spans that are turned into segments for aggregations
+     */
+    private static final SegmentSchema SPAN_SEGMENT_SCHEMA = new SegmentSchema(List.of(SegmentSchema.TIMESTAMP_COLUMN,
+                                                                                       "appName",
+                                                                                       "instanceName",
+                                                                                       "status",
+                                                                                       "name",
+                                                                                       "clazz",
+                                                                                       "method",
+                                                                                       "normalizedUrl",
+                                                                                       "kind",
+                                                                                       "traceId",
+                                                                                       "costTimeUs",
+                                                                                       "startTimeUs"),
+                                                                               List.of(ColumnType.TIMESTAMP,
+                                                                                       ColumnType.DIMENSION,
+                                                                                       ColumnType.DIMENSION,
+                                                                                       ColumnType.DIMENSION,
+                                                                                       ColumnType.DIMENSION,
+                                                                                       ColumnType.DIMENSION,
+                                                                                       ColumnType.DIMENSION,
+                                                                                       ColumnType.DIMENSION,
+                                                                                       ColumnType.DIMENSION,
+                                                                                       ColumnType.STRING,
+                                                                                       ColumnType.LONG,
+                                                                                       ColumnType.LONG));
+
+    private final LocalTraceTable table;
+    private final ISchema traceSpanSummarySchema;
+    private final ISchema traceSpanSchema;
+    private final ISchema traceTagIndexSchema;
+
+    public TraceLocalReader(LocalTraceTable table,
+                            ISchema traceSpanSummarySchema,
+                            ISchema traceSpanSchema,
+                            ISchema traceTagIndexSchema) {
+        this.table = table;
+        this.traceSpanSummarySchema = traceSpanSummarySchema;
+        this.traceSpanSchema = traceSpanSchema;
+        this.traceTagIndexSchema = traceTagIndexSchema;
+    }
+
+    @Override
+    public CloseableIterator<TraceSpan> getTraceByTraceId(String traceId,
+                                                          IExpression filter,
+                                                          TimeSpan start,
+                                                          TimeSpan end) {
+        List<TraceSpan> spans = readTrace(traceId, filter, start, end);
+        spans.sort(TRACE_ORDER);
+        return CloseableIterator.transform(spans.iterator(), (span) -> span, null);
+    }
+
+    @Override
+    public int getTraceSpanCount(String traceId,
+                                 IExpression filter,
+                                 TimeSpan start,
+                                 TimeSpan end) {
+        return readTrace(traceId, filter, start, end).size();
+    }
+
+    @Override
+    public CloseableIterator<TraceSpan> getTraceList(IExpression filter,
+                                                     List<IExpression> indexedTagFilter,
+                                                     Timestamp start,
+                                                     Timestamp end,
+                                                     OrderBy orderBy,
+                                                     Limit limit) {
+        List<TraceSpan> spans = searchSpans(filter,
+                                            indexedTagFilter,
+                                            isOnRootSpans(filter),
+                                            start.getTime(),
+                                            end.getTime(),
+                                            orderBy,
+                                            limit);
+        return CloseableIterator.transform(spans.iterator(), (span) -> span, null);
+    }
+
+    @Override
+    public List<TraceSpan> getTraceByParentSpanId(String parentSpanId) {
+        List<TraceSpan> spans = new ArrayList<>();
+        for (ITraceSegment segment : table.getSegments(0, Long.MAX_VALUE)) {
+            for (int row : segment.getRowsOfParentSpan(parentSpanId)) {
+                spans.add(segment.readSpan(row));
+            }
+        }
+        spans.sort(TRACE_ORDER);
+        return spans;
+    }
+
+    @Override
+    public TraceIdMapping getTraceIdByMapping(String userId) {
+        return table.getMapping(userId);
+    }
+
+    @Override
+    public List<Map<String, Object>> getTraceSpanDistribution(String traceId,
+                                                              IExpression filter,
+                                                              TimeSpan start,
+                                                              TimeSpan end,
+                                                              Collection<String> groups) {
+        List<String> groupNames = new ArrayList<>(groups);
+        List<String> columnNames = new ArrayList<>(groups.size());
+        for (String group : groupNames) {
+            IColumn column = traceSpanSchema.getColumnByName(group);
+            if (column == null) {
+                throw new HttpMappableException(400, "Invalid trace span field: %s", group);
+            }
+            columnNames.add(column.getName());
+        }
+
+        Map<List<Object>, long[]> counts = new LinkedHashMap<>();
+        for (TraceSpan span : readTrace(traceId, filter, start, end)) {
+            List<Object> key = new ArrayList<>(columnNames.size());
+            for (String columnName : columnNames) {
+                key.add(SpanRowContext.getValue(span, columnName));
+            }
+            counts.computeIfAbsent(key, (k) -> new long[1])[0]++;
+        }
+
+        List<Map<String, Object>> distribution = new ArrayList<>(counts.size());
+        for (Map.Entry<List<Object>, long[]> entry : counts.entrySet()) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int i = 0; i < groupNames.size(); i++) {
+                row.put(groupNames.get(i), entry.getKey().get(i));
+            }
+            row.put("count", entry.getValue()[0]);
+            distribution.add(row);
+        }
+        distribution.sort(Comparator.comparingLong((Map<String, Object> row) -> (Long) row.get("count")).reversed());
+        return distribution;
+    }
+
+    @Override
+    public ColumnarTable timeseries(Query query) {
+        return aggregate(query, MetricLocalReader::timeseries);
+    }
+
+    @Override
+    public ReadResponse query(Query query) {
+        if (query.isAggregateQuery()) {
+            return aggregate(query, MetricLocalReader::query);
+        }
+
+        TraceFilterSplitter splitter = new TraceFilterSplitter(this.traceSpanSchema, this.traceTagIndexSchema);
+        splitter.split(query.getFilter());
+        List<TraceSpan> spans = searchSpans(splitter.getExpression(),
+                                            splitter.getIndexedTagFilters(),
+                                            isOnRootSpans(query, splitter.getExpression()),
+                                            query.getInterval().getStartTime().getMilliseconds(),
+                                            query.getInterval().getEndTime().getMilliseconds(),
+                                            query.getOrderBy(),
+                                            query.getLimit());
+
+        List<Selector> selectors = query.getSelectors();
+        IExpression[] expressions = new IExpression[selectors.size()];
+        for (int i = 0; i < expressions.length; i++) {
+            Selector selector = selectors.get(i);
+            if (selector.getSelectExpression() instanceof Column column) {
+                IColumn schemaColumn = traceSpanSchema.getColumnByName(column.getName());
+                expressions[i] = new IdentifierExpression(schemaColumn == null ? column.getName() : schemaColumn.getName());
+            } else if (selector.getSelectExpression() instanceof ExpressionNode node) {
+                expressions[i] = node.getParsedExpression();
+            } else {
+                throw new UnsupportedOperationException(StringUtils.format("Selector [%s] is not supported by the local trace storage", selector.getSelectExpression()));
+            }
+        }
+
+        boolean isValueArray = query.getResultFormat() == ResultFormat.ValueArray;
+        SpanRowContext context = new SpanRowContext(traceSpanSchema);
+        List<Object> rows = new ArrayList<>(spans.size());
+        for (TraceSpan span : spans) {
+            context.span(span);
+            if (isValueArray) {
+                Object[] row = new Object[expressions.length];
+                for (int i = 0; i < expressions.length; i++) {
+                    row[i] = expressions[i].evaluate(context);
+                }
+                rows.add(row);
+            } else {
+                Map<String, Object> row = new LinkedHashMap<>(expressions.length);
+                for (int i = 0; i < expressions.length; i++) {
+                    row.put(selectors.get(i).getOutputName(), expressions[i].evaluate(context));
+                }
+                rows.add(row);
+            }
+        }
+
+        List<ColumnMetadata> columns = selectors.stream()
+                                                .map((selector) -> new ColumnMetadata(selector.getOutputName(),
+                                                                                      selector.getDataType() == null ? "STRING" : selector.getDataType().name()))
+                                                .toList();
+        return new ReadResponse(CloseableIterator.transform(rows.iterator(), DataRow::data, null), columns);
+    }
+
+    @Override
+    public List<?> select(Query query) {
+        TraceFilterSplitter splitter = new TraceFilterSplitter(this.traceSpanSchema, this.traceTagIndexSchema);
+        splitter.split(query.getFilter());
+
+        return searchSpans(splitter.getExpression(),
+                           splitter.getIndexedTagFilters(),
+                           isOnRootSpans(splitter.getExpression()),
+                           query.getInterval().getStartTime().getMilliseconds(),
+                           query.getInterval().getEndTime().getMilliseconds(),
+                           query.getOrderBy(),
+                           query.getLimit());
+    }
+
+    @Override
+    public int count(Query query) {
+        return aggregate(query, MetricLocalReader::count);
+    }
+
+    @Override
+    public List<String> distinct(Query query) {
+        if (!TraceTableSchema.TRACE_SPAN_TAG_INDEX_SCHEMA_NAME.equals(query.getSchema().getName())) {
+            return aggregate(query, MetricLocalReader::distinct);
+        }
+
+        // Distinct values of an indexed tag are read from the dictionaries of the tag
+        String tagName = getIndexedTagName(query.getSelectors().get(0).getOutputName());
+        List<IExpression> tagFilters = query.getFilter() == null ? List.of()
+                                                                 : query.getFilter() instanceof LogicalExpression.AND and ? and.getOperands() : List.of(query.getFilter());
+
+        TreeSet<String> values = new TreeSet<>();
+        for (ITraceSegment segment : table.getSegments(query.getInterval().getStartTime().getMilliseconds(),
+                                                       query.getInterval().getEndTime().getMilliseconds())) {
+            RoaringBitmap traces = tagFilters.isEmpty() ? null : matchTraces(segment, tagFilters);
+            for (String value : segment.getTagValues(tagName)) {
+                if (traces == null || RoaringBitmap.intersects(traces, segment.getTracesOfTag(tagName, value))) {
+                    values.add(value);
+                }
+            }
+        }
+        values.remove("");
+        return new ArrayList<>(values);
+    }
+
+    private List<TraceSpan> readTrace(String traceId, IExpression filter, TimeSpan start, TimeSpan end) {
+        long startTimestamp = start == null ? 0 : start.getMilliseconds();
+        long endTimestamp = end == null ? Long.MAX_VALUE : end.getMilliseconds();
+
+        SpanRowContext context = new SpanRowContext(traceSpanSchema);
+        List<TraceSpan> spans = new ArrayList<>();
+        for (ITraceSegment segment : table.getSegments(startTimestamp, endTimestamp)) {
+            for (int row : segment.getRowsOfTrace(traceId)) {
+                long timestamp = segment.getTimestamp(row);
+                if (timestamp < startTimestamp || timestamp >= endTimestamp) {
+                    continue;
+                }
+                TraceSpan span = segment.readSpan(row);
+                if (filter == null || LogicalExpression.toBoolean(filter.evaluate(context.span(span)))) {
+                    spans.add(span);
+                }
+            }
+        }
+        return spans;
+    }
+
+    /**
+     * Keep the top N spans in the given order.
+     * When spans are sorted by time, segments and rows that can't make into the top N are skipped by their timestamps.
+     */
+    private List<TraceSpan> searchSpans(IExpression filter,
+                                        List<IExpression> indexedTagFilters,
+                                        boolean isOnRootSpans,
+                                        long start,
+                                        long end,
+                                        OrderBy orderBy,
+                                        Limit limit) {
+        String orderColumn = getOrderColumn(orderBy);
+        boolean isDescending = orderBy == null || orderBy.getOrder() == Order.desc;
+        boolean isTimeOrder = "timestamp".equals(orderColumn) || "startTimeUs".equals(orderColumn);
+
+        Comparator<TraceSpan> comparator = isTimeOrder ? Comparator.comparingLong((span) -> span.startTime)
+                                                       : Comparator.comparing((span) -> SpanRowContext.getValue(span, orderColumn), VALUE_COMPARATOR);
+        if (isDescending) {
+            comparator = comparator.reversed();
+        }
+
+        int offset = limit == null ? 0 : limit.getOffset();
+        int maxSize = limit == null ? Integer.MAX_VALUE : (int) Math.min(Integer.MAX_VALUE, (long) offset + limit.getLimit());
+
+        // The head is the last one of the top N so far
+        PriorityQueue<TraceSpan> top = new PriorityQueue<>(comparator.reversed());
+        SpanRowContext context = new SpanRowContext(traceSpanSchema);
+        for (ITraceSegment segment : table.getSegments(start, end)) {
+            if (isTimeOrder && top.size() >= maxSize && !canEnterTop(segment, top.peek(), isDescending)) {
+                continue;
+            }
+
+            RoaringBitmap rows = getCandidateRows(segment, start, end, isOnRootSpans, indexedTagFilters);
+            IntIterator iterator = isDescending ? rows.getReverseIntIterator() : rows.getIntIterator();
+            while (iterator.hasNext()) {
+                int row = iterator.next();
+                if (isTimeOrder && segment.isTimeOrdered() && top.size() >= maxSize) {
+                    long last = top.peek().startTime / 1000;
+                    long timestamp = segment.getTimestamp(row);
+                    if (isDescending ? timestamp < last : timestamp > last) {
+                        // Rows left in this segment are all out of the top N
+                        break;
+                    }
+                }
+
+                TraceSpan span = segment.readSpan(row);
+                if (filter != null && !LogicalExpression.toBoolean(filter.evaluate(context.span(span)))) {
+                    continue;
+                }
+                top.offer(span);
+                if (top.size() > maxSize) {
+                    top.poll();
+                }
+            }
+        }
+
+        List<TraceSpan> spans = new ArrayList<>(top);
+        spans.sort(comparator);
+        return offset >= spans.size() ? List.of() : spans.subList(offset, spans.size());
+    }
+
+    private static boolean canEnterTop(ITraceSegment segment, TraceSpan last, boolean isDescending) {
+        long timestamp = last.startTime / 1000;
+        return isDescending ? segment.getMaxTimestamp() >= timestamp : segment.getMinTimestamp() <= timestamp;
+    }
+
+    private String getOrderColumn(OrderBy orderBy) {
+        if (orderBy == null) {
+            return "timestamp";
+        }
+
+        // Compatible with old client side implementation
+        String name = orderBy.getName();
+        if ("costTimeMs".equals(name) || "costTime".equals(name)) {
+            return "costTimeUs";
+        }
+        if ("startTime".equals(name) || "timestamp".equals(name)) {
+            return "startTimeUs";
+        }
+        IColumn column = traceSpanSchema.getColumnByName(name);
+        if (column == null) {
+            throw new IllegalArgumentException("Invalid orderBy field: " + name);
+        }
+        return column.getName();
+    }
+
+    private RoaringBitmap getCandidateRows(ITraceSegment segment,
+                                           long start,
+                                           long end,
+                                           boolean isOnRootSpans,
+                                           List<IExpression> indexedTagFilters) {
+        RoaringBitmap rows = segment.getRows(start, end);
+        if (isOnRootSpans) {
+            rows.and(segment.getRootRows());
+        }
+        if (!rows.isEmpty() && CollectionUtils.isNotEmpty(indexedTagFilters)) {
+            RoaringBitmap rowsOfTraces = new RoaringBitmap();
+            matchTraces(segment, indexedTagFilters).forEach((int traceOrdinal) -> rowsOfTraces.add(segment.getRowsOfTrace(traceOrdinal)));
+            rows.and(rowsOfTraces);
+        }
+        return rows;
+    }
+
+    /**
+     * Evaluate each filter on the distinct values of the tag, and intersect traces of the matched values of all filters
+     *
+     * @param filters each filter is a condition on one indexed tag
+     * @return ordinals of matched traces in the segment
+     */
+    private RoaringBitmap matchTraces(ITraceSegment segment, List<IExpression> filters) {
+        RoaringBitmap traces = null;
+        for (IExpression filter : filters) {
+            String tagName = getIndexedTagName(filter);
+
+            RoaringBitmap matched = new RoaringBitmap();
+            for (String value : segment.getTagValues(tagName)) {
+                if (LogicalExpression.toBoolean(filter.evaluate((name) -> value))) {
+                    matched.or(segment.getTracesOfTag(tagName, value));
+                }
+            }
+
+            traces = traces == null ? matched : RoaringBitmap.and(traces, matched);
+            if (traces.isEmpty()) {
+                break;
+            }
+        }
+        return traces == null ? new RoaringBitmap() : traces;
+    }
+
+    private String getIndexedTagName(IExpression filter) {
+        Set<String> identifiers = new HashSet<>();
+        filter.accept(new IExpressionInDepthVisitor() {
+            @Override
+            public boolean visit(IdentifierExpression expression) {
+                identifiers.add(expression.getIdentifier());
+                return false;
+            }
+        });
+        if (identifiers.size() != 1) {
+            throw new UnsupportedOperationException(StringUtils.format("The filter [%s] on indexed tags must reference exactly one tag", filter.serializeToText()));
+        }
+        return getIndexedTagName(identifiers.iterator().next());
+    }
+
+    /**
+     * @param name the column name or the alias in the tag index schema
+     */
+    private String getIndexedTagName(String name) {
+        IColumn column = traceTagIndexSchema.getColumnByName(name);
+        return column == null ? name : column.getAlias();
+    }
+
+    /**
+     * Spans matching the filter are turned into segments, so that aggregations are executed by the metric query engine
+     */
+    private <T> T aggregate(Query query, BiFunction<MetricLocalReader, Query, T> executor) {
+        TraceFilterSplitter splitter = new TraceFilterSplitter(this.traceSpanSchema, this.traceTagIndexSchema);
+        splitter.split(query.getFilter());
+        IExpression filter = splitter.getExpression();
+        List<IExpression> indexedTagFilters = splitter.getIndexedTagFilters();
+        boolean isOnRootSpans = isOnRootSpans(query, filter);
+
+        ISegmentSource source = (start, end) -> {
+            SpanRowContext context = new SpanRowContext(traceSpanSchema);
+            List<ISegment> segments = new ArrayList<>();
+            for (ITraceSegment segment : table.getSegments(start, end)) {
+                SegmentBuilder builder = new SegmentBuilder(SPAN_SEGMENT_SCHEMA, 64);
+                IntIterator rows = getCandidateRows(segment, start, end, isOnRootSpans, indexedTagFilters).getIntIterator();
+                while (rows.hasNext()) {
+                    TraceSpan span = segment.readSpan(rows.next());
+                    if (filter == null || LogicalExpression.toBoolean(filter.evaluate(context.span(span)))) {
+                        builder.add(toRow(span));
+                    }
+                }
+                if (builder.size() > 0) {
+                    segments.add(builder.build());
+                }
+            }
+            return segments;
+        };
+        return executor.apply(new MetricLocalReader((store) -> source), query.with((IExpression) null));
+    }
+
+    private static Object[] toRow(TraceSpan span) {
+        return new Object[]{
+            span.startTime / 1000,
+            nullToEmpty(span.appName),
+            nullToEmpty(span.instanceName),
+            nullToEmpty(span.status),
+            nullToEmpty(span.name),
+            nullToEmpty(span.clazz),
+            nullToEmpty(span.method),
+            nullToEmpty(span.normalizedUri),
+            nullToEmpty(span.kind),
+            nullToEmpty(span.traceId),
+            span.costTime,
+            span.startTime
+        };
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private boolean isOnRootSpans(Query query, IExpression filter) {
+        return query.getSchema().getName().equals(this.traceSpanSummarySchema.getName()) || isOnRootSpans(filter);
+    }
+
+    /**
+     * @return true if the filter only matches spans of root kinds, which are the spans of the trace summary
+     */
+    static boolean isOnRootSpans(IExpression filter) {
+        if (filter == null) {
+            return false;
+        }
+
+        List<IExpression> conditions = filter instanceof LogicalExpression.AND and ? and.getOperands() : List.of(filter);
+        for (IExpression condition : conditions) {
+            if (!(condition instanceof ConditionalExpression conditional)
+                || !(conditional.getLhs() instanceof IdentifierExpression identifier)
+                || !"kind".equals(identifier.getIdentifier())) {
+                continue;
+            }
+
+            if (conditional instanceof ComparisonExpression.EQ && conditional.getRhs() instanceof LiteralExpression<?> literal) {
+                if (literal.getValue() != null && SpanKind.isRootSpan(literal.getValue())) {
+                    return true;
+                }
+            } else if (conditional instanceof ConditionalExpression.In && conditional.getRhs() instanceof ExpressionList list) {
+                if (!list.getExpressions().isEmpty()
+                    && list.getExpressions()
+                           .stream()
+                           .allMatch((expr) -> expr instanceof LiteralExpression<?> literal && literal.getValue() != null && SpanKind.isRootSpan(literal.getValue()))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
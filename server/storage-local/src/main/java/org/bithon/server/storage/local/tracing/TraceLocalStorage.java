@@ -0,0 +1,158 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.tracing;
+
+import com.fasterxml.jackson.annotation.JacksonInject;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.OptBoolean;
+import lombok.extern.slf4j.Slf4j;
+import org.bithon.component.commons.concurrency.NamedThreadFactory;
+import org.bithon.server.storage.common.expiration.ExpirationConfig;
+import org.bithon.server.storage.common.expiration.IExpirationRunnable;
+import org.bithon.server.storage.datasource.SchemaManager;
+import org.bithon.server.storage.local.LocalStorageProviderConfiguration;
+import org.bithon.server.storage.tracing.ITraceReader;
+import org.bithon.server.storage.tracing.ITraceStorage;
+import org.bithon.server.storage.tracing.ITraceWriter;
+import org.bithon.server.storage.tracing.TraceStorageConfig;
+import org.bithon.server.storage.tracing.TraceTableSchema;
+import org.springframework.context.ApplicationContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores spans on the local disk of the server.
+ * <p>
+ * Spans are appended to segment files of hourly partitions, see {@link LocalTraceTable}.
+ * Each segment is indexed by trace id and by the tags configured in {@link org.bithon.server.storage.tracing.index.TagIndexConfig},
+ * so that queries are served from these indexes instead of scanning, see {@link TraceLocalReader}.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Slf4j
+public class TraceLocalStorage implements ITraceStorage {
+
+    private final LocalStorageProviderConfiguration providerConfiguration;
+    private final TraceStorageConfig storageConfig;
+    private final ApplicationContext applicationContext;
+    private final Path dir;
+    private volatile LocalTraceTable table;
+
+    private ScheduledThreadPoolExecutor flushScheduler;
+
+    /**
+     * NOTE,
+     * inject ApplicationContext instead of SchemaManager to defer the injection, see TraceJdbcStorage for more
+     */
+    @JsonCreator
+    public TraceLocalStorage(@JacksonInject(useInput = OptBoolean.FALSE) LocalStorageProviderConfiguration providerConfiguration,
+                             @JacksonInject(useInput = OptBoolean.FALSE) TraceStorageConfig storageConfig,
+                             @JacksonInject(useInput = OptBoolean.FALSE) ApplicationContext applicationContext) {
+        this.providerConfiguration = providerConfiguration;
+        this.storageConfig = storageConfig;
+        this.applicationContext = applicationContext;
+        this.dir = providerConfiguration.getPath().toPath().resolve("traces");
+    }
+
+    @Override
+    public void initialize() {
+        getTable();
+
+        long maxAge = providerConfiguration.getFlushInterval().toMillis();
+        long checkInterval = Math.min(maxAge, 5_000);
+        this.flushScheduler = new ScheduledThreadPoolExecutor(1, NamedThreadFactory.daemonThreadFactory("local-trace-flusher"));
+        this.flushScheduler.scheduleWithFixedDelay(() -> getTable().flush(System.currentTimeMillis(), maxAge, false),
+                                                   checkInterval,
+                                                   checkInterval,
+                                                   TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public ITraceWriter createWriter() {
+        return new TraceLocalWriter(getTable());
+    }
+
+    @Override
+    public ITraceReader createReader() {
+        SchemaManager schemaManager = this.applicationContext.getBean(SchemaManager.class);
+        return new TraceLocalReader(getTable(),
+                                    schemaManager.getSchema(TraceTableSchema.TRACE_SPAN_SUMMARY_SCHEMA_NAME),
+                                    schemaManager.getSchema(TraceTableSchema.TRACE_SPAN_SCHEMA_NAME),
+                                    schemaManager.getSchema(TraceTableSchema.TRACE_SPAN_TAG_INDEX_SCHEMA_NAME));
+    }
+
+    @Override
+    public IExpirationRunnable getExpirationRunnable() {
+        return new IExpirationRunnable() {
+            @Override
+            public ExpirationConfig getExpirationConfig() {
+                return storageConfig.getTtl();
+            }
+
+            @Override
+            public void expire(Timestamp before) {
+                try {
+                    getTable().expire(before.getTime());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    private LocalTraceTable getTable() {
+        if (table == null) {
+            synchronized (this) {
+                if (table == null) {
+                    Set<String> indexedTags = storageConfig.getIndexes() == null || storageConfig.getIndexes().getMap() == null
+                                              ? Set.of()
+                                              : storageConfig.getIndexes().getMap().keySet();
+                    try {
+                        table = new LocalTraceTable(dir, indexedTags, providerConfiguration.getMaxSpansPerSegment());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Called by Spring when the application shuts down so that spans in active segments are sealed
+     */
+    public void close() {
+        if (this.flushScheduler != null) {
+            this.flushScheduler.shutdown();
+            try {
+                this.flushScheduler.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (this.table != null) {
+            this.table.flush(System.currentTimeMillis(), 0, true);
+            this.table.close();
+        }
+    }
+}
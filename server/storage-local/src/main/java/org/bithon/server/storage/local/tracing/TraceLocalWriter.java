@@ -0,0 +1,46 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.tracing;
+
+import org.bithon.server.storage.tracing.ITraceWriter;
+import org.bithon.server.storage.tracing.TraceSpan;
+import org.bithon.server.storage.tracing.index.TagIndex;
+import org.bithon.server.storage.tracing.mapping.TraceIdMapping;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Appends spans to the active segments of the local trace table.
+ * Spans are visible to queries once they're written.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class TraceLocalWriter implements ITraceWriter {
+    private final LocalTraceTable table;
+
+    public TraceLocalWriter(LocalTraceTable table) {
+        this.table = table;
+    }
+
+    @Override
+    public void write(List<TraceSpan> spans,
+                      List<TraceIdMapping> mappings,
+                      List<TagIndex> tagIndices) throws IOException {
+        table.write(spans, mappings, tagIndices);
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.tracing;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.bithon.component.commons.utils.StringUtils;
+import org.bithon.server.storage.local.tracing.segment.ActiveTraceSegment;
+import org.bithon.server.storage.local.tracing.segment.ITraceSegment;
+import org.bithon.server.storage.local.tracing.segment.SealedTraceSegment;
+import org.bithon.server.storage.tracing.TraceSpan;
+import org.bithon.server.storage.tracing.index.TagIndex;
+import org.bithon.server.storage.tracing.mapping.TraceIdMapping;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * An hour of spans, which is a directory of segments.
+ * Each segment is a data file of span records named as 'N.data' and the index file 'N.idx' that is written when the segment is sealed.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Slf4j
+class TracePartition {
+    static final long DURATION = 3600_000L;
+
+    /**
+     * Sealed data files are memory-mapped, keep them in the range of a mapping
+     */
+    static final long MAX_DATA_FILE_SIZE = 1024L * 1024 * 1024;
+
+    private static final String DATA_FILE_SUFFIX = ".data";
+    private static final String INDEX_FILE_SUFFIX = ".idx";
+    private static final String MAPPING_FILE = "mappings.log";
+
+    @Getter
+    private final long startTimestamp;
+
+    private final Path dir;
+    private final Set<String> indexedTags;
+
+    /**
+     * Copy-on-write list so that queries can iterate on a snapshot without lock
+     */
+    private volatile List<SealedTraceSegment> segments;
+
+    private ActiveTraceSegment active;
+    private int nextSegmentId;
+
+    /**
+     * user id -> the latest mapping
+     */
+    private final Map<String, TraceIdMapping> mappings = new HashMap<>();
+
+    TracePartition(long startTimestamp, Path dir, Set<String> indexedTags) throws IOException {
+        this.startTimestamp = startTimestamp;
+        this.dir = dir;
+        this.indexedTags = indexedTags;
+
+        Files.createDirectories(dir);
+
+        List<SealedTraceSegment> loaded = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.sorted().toList()) {
+                String name = file.getFileName().toString();
+                if (!name.endsWith(DATA_FILE_SUFFIX)) {
+                    if (!name.endsWith(INDEX_FILE_SUFFIX) && !MAPPING_FILE.equals(name)) {
+                        // Left by an incomplete sealing
+                        Files.deleteIfExists(file);
+                    }
+                    continue;
+                }
+
+                String id = name.substring(0, name.length() - DATA_FILE_SUFFIX.length());
+                try {
+                    nextSegmentId = Math.max(nextSegmentId, Integer.parseInt(id) + 1);
+
+                    Path indexFile = dir.resolve(id + INDEX_FILE_SUFFIX);
+                    if (Files.exists(indexFile)) {
+                        loaded.add(SealedTraceSegment.open(file, indexFile));
+                        continue;
+                    }
+
+                    // The segment was being written before shutdown
+                    ActiveTraceSegment recovered = ActiveTraceSegment.recover(file, indexedTags);
+                    if (recovered.getRowCount() == 0) {
+                        recovered.close();
+                        Files.deleteIfExists(file);
+                    } else {
+                        loaded.add(recovered.seal(indexFile));
+                        log.info("Recovered {} spans from [{}]", recovered.getRowCount(), file);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    log.error("Skip trace segment [{}]", file, e);
+                }
+            }
+        }
+        this.segments = Collections.unmodifiableList(loaded);
+
+        loadMappings();
+    }
+
+    long getEndTimestamp() {
+        return startTimestamp + DURATION;
+    }
+
+    /**
+     * Append spans and tags to the active segment, which is sealed once it reaches the given limit
+     */
+    synchronized void append(List<TraceSpan> spans, List<TagIndex> tagIndices, int maxSpansPerSegment) throws IOException {
+        if (active == null) {
+            active = ActiveTraceSegment.create(nextFile(DATA_FILE_SUFFIX), indexedTags);
+        }
+        active.append(spans, tagIndices);
+
+        if (active.getRowCount() >= maxSpansPerSegment || active.getDataSize() >= MAX_DATA_FILE_SIZE) {
+            sealActive();
+        }
+    }
+
+    /**
+     * @return segments that are visible to queries, including the active one
+     */
+    List<ITraceSegment> getSegments() {
+        ActiveTraceSegment current;
+        List<SealedTraceSegment> sealed;
+        synchronized (this) {
+            current = this.active;
+            sealed = this.segments;
+        }
+        List<ITraceSegment> all = new ArrayList<>(sealed.size() + 1);
+        all.addAll(sealed);
+        if (current != null) {
+            all.add(current);
+        }
+        return all;
+    }
+
+    /**
+     * Seal the active segment if it has been written longer than the given duration
+     */
+    synchronized void seal(long now, long maxAge) throws IOException {
+        if (active != null && now - active.getCreatedAt() >= maxAge) {
+            sealActive();
+        }
+    }
+
+    synchronized void sealActive() throws IOException {
+        if (active == null) {
+            return;
+        }
+
+        ActiveTraceSegment current = this.active;
+        if (current.getRowCount() == 0) {
+            // Only tags are written, which are useless without spans
+            this.active = null;
+            current.close();
+            Files.deleteIfExists(current.getDataFile());
+            return;
+        }
+
+        String dataFileName = current.getDataFile().getFileName().toString();
+        Path indexFile = dir.resolve(dataFileName.substring(0, dataFileName.length() - DATA_FILE_SUFFIX.length()) + INDEX_FILE_SUFFIX);
+        SealedTraceSegment sealed = current.seal(indexFile);
+        this.active = null;
+
+        List<SealedTraceSegment> newSegments = new ArrayList<>(this.segments);
+        newSegments.add(sealed);
+        this.segments = Collections.unmodifiableList(newSegments);
+    }
+
+    /**
+     * Mappings are appended to a log file in one write.
+     * If the write fails, the file is truncated to its previous size so that later appends are not written after a torn record.
+     */
+    synchronized void addMappings(List<TraceIdMapping> newMappings) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(newMappings.size() * 64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (TraceIdMapping mapping : newMappings) {
+                out.writeUTF(mapping.getUserId());
+                out.writeLong(mapping.getTimestamp());
+                out.writeUTF(mapping.getTraceId());
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(dir.resolve(MAPPING_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+            try {
+                long position = size;
+                while (buf.hasRemaining()) {
+                    position += channel.write(buf, position);
+                }
+            } catch (IOException e) {
+                channel.truncate(size);
+                throw e;
+            }
+        }
+
+        // Make mappings visible after they're written to the file
+        for (TraceIdMapping mapping : newMappings) {
+            putMapping(mapping);
+        }
+    }
+
+    synchronized TraceIdMapping getMapping(String userId) {
+        return mappings.get(userId);
+    }
+
+    private void putMapping(TraceIdMapping mapping) {
+        mappings.merge(mapping.getUserId(), mapping, (prev, current) -> current.getTimestamp() >= prev.getTimestamp() ? current : prev);
+    }
+
+    /**
+     * Load mappings until the end of the file or the first record that's incomplete or corrupted.
+     * Like {@link ActiveTraceSegment#recover(Path, Set)}, the file is truncated to the last complete record
+     * so that mappings appended later are not written after a torn record.
+     */
+    private void loadMappings() throws IOException {
+        Path file = dir.resolve(MAPPING_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        long position = 0;
+        try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(Files.newInputStream(file)));
+             DataInputStream in = new DataInputStream(counter)) {
+            while (true) {
+                String userId = in.readUTF();
+                long timestamp = in.readLong();
+                String traceId = in.readUTF();
+
+                // Mappings are partitioned by their timestamps, one that does not fall into this partition is corrupted
+                if (timestamp < startTimestamp || timestamp >= getEndTimestamp()) {
+                    log.warn("Found corrupted mapping at offset {} of [{}]", position, file);
+                    break;
+                }
+                putMapping(new TraceIdMapping(userId, timestamp, traceId));
+                position = counter.getCount();
+            }
+        } catch (EOFException ignored) {
+            // The end of the file, or a mapping that is partially written
+        } catch (UTFDataFormatException e) {
+            log.warn("Found corrupted mapping at offset {} of [{}]: {}", position, file, e.getMessage());
+        }
+
+        long fileSize = Files.size(file);
+        if (position < fileSize) {
+            log.warn("Truncate incomplete mappings at the end of [{}] from {} to {}", file, fileSize, position);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(position);
+            }
+        }
+    }
+
+    /**
+     * Close the active segment without sealing, it's recovered from its data file on next start
+     */
+    synchronized void close() throws IOException {
+        if (active != null) {
+            active.close();
+            active = null;
+        }
+    }
+
+    synchronized void drop() throws IOException {
+        close();
+        this.segments = Collections.emptyList();
+        this.mappings.clear();
+
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    private Path nextFile(String suffix) {
+        return dir.resolve(StringUtils.format("%06d", nextSegmentId++) + suffix);
+    }
+
+    /**
+     * Counts the bytes that have been read so that the end of the last complete record is known
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,492 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.tracing.segment;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.bithon.component.commons.tracing.SpanKind;
+import org.bithon.component.commons.utils.StringUtils;
+import org.bithon.server.storage.local.metric.segment.BlockInput;
+import org.bithon.server.storage.local.metric.segment.BlockOutput;
+import org.bithon.server.storage.tracing.TraceSpan;
+import org.bithon.server.storage.tracing.index.TagIndex;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The segment that spans are being appended to.
+ * <p>
+ * Spans are appended to the data file as soon as they're written so that they survive a restart,
+ * while the indexes are kept on heap until the segment is sealed into a {@link SealedTraceSegment}.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Slf4j
+public class ActiveTraceSegment implements ITraceSegment {
+    private static final int[] EMPTY = new int[0];
+
+    @Getter
+    private final Path dataFile;
+    private final FileChannel channel;
+    private final Set<String> indexedTags;
+    private final BlockOutput scratch = new BlockOutput(512);
+
+    @Getter
+    private final long createdAt;
+
+    /**
+     * Size of the data file
+     */
+    private long size;
+
+    private int rowCount;
+    private long[] offsets = new long[1024];
+    private long[] timestamps = new long[1024];
+    private long minTimestamp = Long.MAX_VALUE;
+    private long maxTimestamp = Long.MIN_VALUE;
+    private final RoaringBitmap rootRows = new RoaringBitmap();
+
+    private final Map<String, Integer> traceOrdinals = new HashMap<>();
+    private final List<String> traceIds = new ArrayList<>();
+    private final List<IntList> traceRows = new ArrayList<>();
+    private final Map<String, IntList> parentSpanRows = new HashMap<>();
+
+    /**
+     * tag name -> tag value -> trace ordinals
+     */
+    private final Map<String, Map<String, RoaringBitmap>> tags = new HashMap<>();
+
+    /**
+     * Set after this segment is sealed, so that queries that still hold this segment read spans from the sealed one
+     */
+    private SealedTraceSegment sealed;
+    private int[] sealedRows;
+
+    private ActiveTraceSegment(Path dataFile, FileChannel channel, Set<String> indexedTags) {
+        this.dataFile = dataFile;
+        this.channel = channel;
+        this.indexedTags = indexedTags;
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    /**
+     * @param indexedTags names of tags that inverted indexes are built for
+     */
+    public static ActiveTraceSegment create(Path dataFile, Set<String> indexedTags) throws IOException {
+        return new ActiveTraceSegment(dataFile,
+                                      FileChannel.open(dataFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE),
+                                      indexedTags);
+    }
+
+    /**
+     * Rebuild the indexes of a data file that has not been sealed before the last shutdown.
+     * A partially written record at the end of the file is truncated.
+     */
+    public static ActiveTraceSegment recover(Path dataFile, Set<String> indexedTags) throws IOException {
+        ActiveTraceSegment segment = new ActiveTraceSegment(dataFile,
+                                                            FileChannel.open(dataFile, StandardOpenOption.READ, StandardOpenOption.WRITE),
+                                                            indexedTags);
+
+        long fileSize = segment.channel.size();
+        long position = 0;
+        while (position < fileSize) {
+            byte[] record = segment.readRecord(position, fileSize);
+            if (record == null) {
+                break;
+            }
+            long prefix = SpanRecords.parseLength(record, 0, record.length);
+            int prefixSize = (int) prefix;
+            BlockInput in = new BlockInput(record);
+            in.skip(prefixSize + 1);
+            if (record[prefixSize] == SpanRecords.TYPE_SPAN) {
+                segment.addSpan(position, SpanRecords.readSpan(in));
+            } else if (record[prefixSize] == SpanRecords.TYPE_TAG) {
+                segment.addTag(in.readString(), in.readString(), in.readString());
+            }
+            position += record.length;
+        }
+        if (position < fileSize) {
+            log.warn("Truncate incomplete records at the end of [{}] from {} to {}", dataFile, fileSize, position);
+            segment.channel.truncate(position);
+        }
+        segment.size = position;
+        return segment;
+    }
+
+    /**
+     * Append spans and the tags extracted from them.
+     * Tags of names that are not indexed are ignored.
+     */
+    public synchronized void append(List<TraceSpan> spans, List<TagIndex> tagIndices) throws IOException {
+        BlockOutput out = new BlockOutput(spans.size() * 256 + tagIndices.size() * 64);
+        long[] spanOffsets = new long[spans.size()];
+        for (int i = 0, n = spans.size(); i < n; i++) {
+            spanOffsets[i] = size + out.size();
+            SpanRecords.writeSpan(out, scratch, spans.get(i));
+        }
+        List<TagIndex> indexed = new ArrayList<>(tagIndices.size());
+        for (TagIndex tagIndex : tagIndices) {
+            if (indexedTags.contains(tagIndex.getName()) && tagIndex.getValue() != null) {
+                SpanRecords.writeTag(out, scratch, tagIndex.getTraceId(), tagIndex.getName(), tagIndex.getValue());
+                indexed.add(tagIndex);
+            }
+        }
+
+        ByteBuffer buf = ByteBuffer.wrap(out.buffer(), 0, out.size());
+        long position = size;
+        while (buf.hasRemaining()) {
+            position += channel.write(buf, position);
+        }
+        size = position;
+
+        // Make rows visible after they're written to the file
+        for (int i = 0; i < spanOffsets.length; i++) {
+            addSpan(spanOffsets[i], spans.get(i));
+        }
+        for (TagIndex tagIndex : indexed) {
+            addTag(tagIndex.getTraceId(), tagIndex.getName(), tagIndex.getValue());
+        }
+    }
+
+    private void addSpan(long offset, TraceSpan span) {
+        if (rowCount == offsets.length) {
+            offsets = Arrays.copyOf(offsets, rowCount * 2);
+            timestamps = Arrays.copyOf(timestamps, rowCount * 2);
+        }
+        int row = rowCount;
+        long timestamp = span.startTime / 1000;
+        offsets[row] = offset;
+        timestamps[row] = timestamp;
+        minTimestamp = Math.min(minTimestamp, timestamp);
+        maxTimestamp = Math.max(maxTimestamp, timestamp);
+
+        if (span.kind != null && SpanKind.isRootSpan(span.kind)) {
+            rootRows.add(row);
+        }
+        traceRows.get(getOrCreateTraceOrdinal(span.traceId)).add(row);
+        if (StringUtils.hasText(span.parentSpanId)) {
+            parentSpanRows.computeIfAbsent(span.parentSpanId, (k) -> new IntList()).add(row);
+        }
+        rowCount++;
+    }
+
+    private void addTag(String traceId, String name, String value) {
+        int traceOrdinal = getOrCreateTraceOrdinal(traceId);
+        tags.computeIfAbsent(name, (k) -> new HashMap<>())
+            .computeIfAbsent(value, (k) -> new RoaringBitmap())
+            .add(traceOrdinal);
+    }
+
+    private int getOrCreateTraceOrdinal(String traceId) {
+        String key = traceId == null ? "" : traceId;
+        Integer ordinal = traceOrdinals.get(key);
+        if (ordinal == null) {
+            ordinal = traceIds.size();
+            traceOrdinals.put(key, ordinal);
+            traceIds.add(key);
+            traceRows.add(new IntList());
+        }
+        return ordinal;
+    }
+
+    public synchronized long getDataSize() {
+        return size;
+    }
+
+    @Override
+    public synchronized int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public synchronized long getMinTimestamp() {
+        return minTimestamp;
+    }
+
+    @Override
+    public synchronized long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    @Override
+    public synchronized long getTimestamp(int row) {
+        return timestamps[row];
+    }
+
+    @Override
+    public synchronized RoaringBitmap getRows(long start, long end) {
+        RoaringBitmap rows = new RoaringBitmap();
+        if (minTimestamp >= end || maxTimestamp < start) {
+            return rows;
+        }
+        if (minTimestamp >= start && maxTimestamp < end) {
+            rows.add(0L, rowCount);
+            return rows;
+        }
+        for (int row = 0; row < rowCount; row++) {
+            long timestamp = timestamps[row];
+            if (timestamp >= start && timestamp < end) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public boolean isTimeOrdered() {
+        return false;
+    }
+
+    @Override
+    public synchronized RoaringBitmap getRootRows() {
+        return rootRows.clone();
+    }
+
+    @Override
+    public synchronized int[] getRowsOfTrace(String traceId) {
+        Integer ordinal = traceOrdinals.get(traceId);
+        return ordinal == null ? EMPTY : traceRows.get(ordinal).toArray();
+    }
+
+    @Override
+    public synchronized int[] getRowsOfTrace(int traceOrdinal) {
+        return traceRows.get(traceOrdinal).toArray();
+    }
+
+    @Override
+    public synchronized int[] getRowsOfParentSpan(String parentSpanId) {
+        IntList rows = parentSpanRows.get(parentSpanId);
+        return rows == null ? EMPTY : rows.toArray();
+    }
+
+    @Override
+    public synchronized Collection<String> getTagValues(String tagName) {
+        Map<String, RoaringBitmap> values = tags.get(tagName);
+        return values == null ? List.of() : new ArrayList<>(values.keySet());
+    }
+
+    @Override
+    public synchronized RoaringBitmap getTracesOfTag(String tagName, String tagValue) {
+        RoaringBitmap traces = tags.getOrDefault(tagName, Map.of()).get(tagValue);
+        return traces == null ? new RoaringBitmap() : traces.clone();
+    }
+
+    @Override
+    public TraceSpan readSpan(int row) {
+        long offset;
+        long fileSize;
+        synchronized (this) {
+            if (sealed != null) {
+                return sealed.readSpan(sealedRows[row]);
+            }
+            offset = offsets[row];
+            fileSize = size;
+        }
+        try {
+            byte[] record = readRecord(offset, fileSize);
+            if (record == null) {
+                throw new IOException(StringUtils.format("Incomplete record at offset %d", offset));
+            }
+            BlockInput in = new BlockInput(record);
+            in.skip((int) SpanRecords.parseLength(record, 0, record.length) + 1);
+            return SpanRecords.readSpan(in);
+        } catch (ClosedChannelException e) {
+            // This segment has been sealed or closed since the offset is read
+            synchronized (this) {
+                if (sealed != null) {
+                    return sealed.readSpan(sealedRows[row]);
+                }
+            }
+            throw new UncheckedIOException(StringUtils.format("Segment [%s] has been closed", dataFile), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(StringUtils.format("Failed to read span from [%s]", dataFile), e);
+        }
+    }
+
+    /**
+     * @return the whole record including the length prefix, or null if the record is incomplete
+     */
+    private byte[] readRecord(long offset, long fileSize) throws IOException {
+        int available = (int) Math.min(512, fileSize - offset);
+        ByteBuffer head = ByteBuffer.allocate(available);
+        readFully(head, offset);
+
+        long prefix = SpanRecords.parseLength(head.array(), 0, available);
+        if (prefix < 0) {
+            return null;
+        }
+        int recordSize = (int) (prefix >>> 32) + (int) prefix;
+        if (recordSize <= 0 || offset + recordSize > fileSize) {
+            return null;
+        }
+        if (recordSize <= available) {
+            return Arrays.copyOf(head.array(), recordSize);
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(recordSize);
+        record.put(head.array());
+        readFully(record, offset + available);
+        return record.array();
+    }
+
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position);
+            if (n < 0) {
+                break;
+            }
+            position += n;
+        }
+    }
+
+    /**
+     * Write the indexes of this segment to the given file and release the resources of this segment.
+     * <p>
+     * Rows are re-numbered in the order of their timestamps in the sealed segment,
+     * so that rows in a time range can be located by binary search.
+     */
+    public synchronized SealedTraceSegment seal(Path indexFile) throws IOException {
+        channel.force(false);
+
+        Integer[] sorted = new Integer[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            sorted[i] = i;
+        }
+        // Stable sort, spans of the same timestamp keep the order they're written
+        Arrays.sort(sorted, Comparator.comparingLong((row) -> timestamps[row]));
+        int[] newRows = new int[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            newRows[sorted[i]] = i;
+        }
+
+        Path tmpFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile), 64 * 1024))) {
+            out.writeInt(SealedTraceSegment.MAGIC);
+            out.writeInt(SealedTraceSegment.VERSION);
+            out.writeInt(rowCount);
+            out.writeLong(minTimestamp);
+            out.writeLong(maxTimestamp);
+            for (int i = 0; i < rowCount; i++) {
+                out.writeLong(offsets[sorted[i]]);
+            }
+            for (int i = 0; i < rowCount; i++) {
+                out.writeLong(timestamps[sorted[i]]);
+            }
+
+            RoaringBitmap roots = new RoaringBitmap();
+            rootRows.forEach((int row) -> roots.add(newRows[row]));
+            roots.runOptimize();
+            out.writeInt(roots.serializedSizeInBytes());
+            roots.serialize(out);
+
+            List<int[]> rowsOfTraces = new ArrayList<>(traceIds.size());
+            for (IntList rows : traceRows) {
+                rowsOfTraces.add(rows.remap(newRows));
+            }
+            KeyIndex.write(out, traceIds, rowsOfTraces);
+
+            List<String> parentSpanIds = new ArrayList<>(parentSpanRows.keySet());
+            List<int[]> rowsOfParentSpans = new ArrayList<>(parentSpanIds.size());
+            for (String parentSpanId : parentSpanIds) {
+                rowsOfParentSpans.add(parentSpanRows.get(parentSpanId).remap(newRows));
+            }
+            KeyIndex.write(out, parentSpanIds, rowsOfParentSpans);
+
+            out.writeInt(tags.size());
+            for (Map.Entry<String, Map<String, RoaringBitmap>> tag : tags.entrySet()) {
+                SealedTraceSegment.writeString(out, tag.getKey());
+                out.writeInt(tag.getValue().size());
+                for (Map.Entry<String, RoaringBitmap> value : tag.getValue().entrySet()) {
+                    RoaringBitmap traces = value.getValue();
+                    traces.runOptimize();
+
+                    SealedTraceSegment.writeString(out, value.getKey());
+                    out.writeInt(traces.serializedSizeInBytes());
+                    traces.serialize(out);
+                }
+            }
+            out.writeInt(SealedTraceSegment.MAGIC);
+
+            if (out.size() < 0) {
+                throw new IOException(StringUtils.format("Index of segment [%s] exceeds 2GB", dataFile));
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(tmpFile);
+            throw e;
+        }
+        Files.move(tmpFile, indexFile, StandardCopyOption.ATOMIC_MOVE);
+
+        channel.close();
+        this.sealed = SealedTraceSegment.open(dataFile, indexFile);
+        this.sealedRows = newRows;
+        return this.sealed;
+    }
+
+    /**
+     * Close the data file without sealing, the indexes are rebuilt from the data file next time
+     */
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    static class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+        /**
+         * @return values mapped by the given mapping in ascending order
+         */
+        int[] remap(int[] mapping) {
+            int[] mapped = new int[size];
+            for (int i = 0; i < size; i++) {
+                mapped[i] = mapping[values[i]];
+            }
+            Arrays.sort(mapped);
+            return mapped;
+        }
+    }
+}
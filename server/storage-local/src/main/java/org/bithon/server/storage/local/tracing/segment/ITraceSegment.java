@@ -0,0 +1,81 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.tracing.segment;
+
+import org.bithon.server.storage.tracing.TraceSpan;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Collection;
+
+/**
+ * A set of spans in an append-only data file together with the indexes over them.
+ * <p>
+ * A row is the ordinal of a span in the segment.
+ * A trace ordinal identifies a trace id in the segment, the inverted indexes of tags map values to trace ordinals.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public interface ITraceSegment {
+
+    int getRowCount();
+
+    /**
+     * @return the min timestamp in milliseconds of spans in this segment
+     */
+    long getMinTimestamp();
+
+    long getMaxTimestamp();
+
+    /**
+     * @return the timestamp in milliseconds of the span at given row, which is the start time of the span
+     */
+    long getTimestamp(int row);
+
+    /**
+     * @param start inclusive
+     * @param end   exclusive
+     */
+    RoaringBitmap getRows(long start, long end);
+
+    /**
+     * @return true if rows are in ascending order of their timestamps
+     */
+    boolean isTimeOrdered();
+
+    /**
+     * @return rows of root spans, that's the spans of the trace summary
+     */
+    RoaringBitmap getRootRows();
+
+    /**
+     * @return rows of the given trace in ascending order, or an empty array if the trace is not in this segment
+     */
+    int[] getRowsOfTrace(String traceId);
+
+    int[] getRowsOfTrace(int traceOrdinal);
+
+    int[] getRowsOfParentSpan(String parentSpanId);
+
+    Collection<String> getTagValues(String tagName);
+
+    /**
+     * @return ordinals of traces that have the given tag value
+     */
+    RoaringBitmap getTracesOfTag(String tagName, String tagValue);
+
+    TraceSpan readSpan(int row);
+}
@@ -0,0 +1,188 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.tracing.segment;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * An open-addressing hash table from a string key to rows, which is read from the index file without being loaded on heap.
+ * <p>
+ * Layout:
+ * <pre>
+ * keyCount(int) slotCount(int) entryBytes(int)
+ * slots: ordinal + 1 of the key in each slot, 0 for empty slot (int * slotCount)
+ * hashes: hash of the key in each slot (int * slotCount)
+ * entry offsets: offset of each key's entry relative to the start of entries (int * keyCount)
+ * entries: keyLength(int) key(bytes) rowCount(int) rows(int * rowCount)
+ * </pre>
+ *
+ * @author frank.chen021@outlook.com
+ */
+final class KeyIndex {
+    private static final int[] EMPTY = new int[0];
+
+    private final ByteBuffer buffer;
+    private final int keyCount;
+    private final int mask;
+    private final int slotsPosition;
+    private final int hashesPosition;
+    private final int entryOffsetsPosition;
+    private final int entriesPosition;
+
+    /**
+     * @param buffer its position is at the start of the index, and is moved to the end of the index after return
+     */
+    KeyIndex(ByteBuffer buffer) {
+        this.buffer = buffer.slice();
+
+        this.keyCount = this.buffer.getInt(0);
+        int slotCount = this.buffer.getInt(4);
+        int entryBytes = this.buffer.getInt(8);
+        this.mask = slotCount - 1;
+        this.slotsPosition = 12;
+        this.hashesPosition = slotsPosition + slotCount * 4;
+        this.entryOffsetsPosition = hashesPosition + slotCount * 4;
+        this.entriesPosition = entryOffsetsPosition + keyCount * 4;
+
+        buffer.position(buffer.position() + entriesPosition + entryBytes);
+    }
+
+    int getKeyCount() {
+        return keyCount;
+    }
+
+    /**
+     * @return the ordinal of the key, or -1 if the key does not exist
+     */
+    int find(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(key);
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int ordinal = buffer.getInt(slotsPosition + slot * 4) - 1;
+            if (ordinal < 0) {
+                return -1;
+            }
+            if (buffer.getInt(hashesPosition + slot * 4) == hash && keyEquals(ordinal, keyBytes)) {
+                return ordinal;
+            }
+        }
+    }
+
+    int[] getRows(String key) {
+        int ordinal = find(key);
+        return ordinal < 0 ? EMPTY : getRows(ordinal);
+    }
+
+    int[] getRows(int ordinal) {
+        int entry = entryPosition(ordinal);
+        int position = entry + 4 + buffer.getInt(entry);
+        int[] rows = new int[buffer.getInt(position)];
+        position += 4;
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = buffer.getInt(position + i * 4);
+        }
+        return rows;
+    }
+
+    String getKey(int ordinal) {
+        int entry = entryPosition(ordinal);
+        byte[] bytes = new byte[buffer.getInt(entry)];
+        buffer.get(entry + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int entryPosition(int ordinal) {
+        return entriesPosition + buffer.getInt(entryOffsetsPosition + ordinal * 4);
+    }
+
+    private boolean keyEquals(int ordinal, byte[] keyBytes) {
+        int entry = entryPosition(ordinal);
+        if (buffer.getInt(entry) != keyBytes.length) {
+            return false;
+        }
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (buffer.get(entry + 4 + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int hash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @param rows rows of each key, the ordinal of a key is its index in the list
+     */
+    static void write(DataOutputStream out, List<String> keys, List<int[]> rows) throws IOException {
+        // Keep the load factor under 0.5 so that probing stops quickly on missing keys
+        int slotCount = Integer.highestOneBit(Math.max(2, keys.size()) * 2 - 1) << 1;
+        int mask = slotCount - 1;
+
+        int[] slots = new int[slotCount];
+        int[] hashes = new int[slotCount];
+        byte[][] keyBytes = new byte[keys.size()][];
+        int[] entryOffsets = new int[keys.size()];
+        long entryBytes = 0;
+        for (int ordinal = 0; ordinal < keys.size(); ordinal++) {
+            String key = keys.get(ordinal);
+            int hash = hash(key);
+            int slot = hash & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = ordinal + 1;
+            hashes[slot] = hash;
+
+            keyBytes[ordinal] = key.getBytes(StandardCharsets.UTF_8);
+            entryOffsets[ordinal] = (int) entryBytes;
+            entryBytes += 4 + keyBytes[ordinal].length + 4 + 4L * rows.get(ordinal).length;
+            if (entryBytes > Integer.MAX_VALUE) {
+                throw new IOException("Too many keys in one segment");
+            }
+        }
+
+        out.writeInt(keys.size());
+        out.writeInt(slotCount);
+        out.writeInt((int) entryBytes);
+        for (int slot : slots) {
+            out.writeInt(slot);
+        }
+        for (int hash : hashes) {
+            out.writeInt(hash);
+        }
+        for (int offset : entryOffsets) {
+            out.writeInt(offset);
+        }
+        for (int ordinal = 0; ordinal < keys.size(); ordinal++) {
+            out.writeInt(keyBytes[ordinal].length);
+            out.write(keyBytes[ordinal]);
+
+            int[] keyRows = rows.get(ordinal);
+            out.writeInt(keyRows.length);
+            for (int row : keyRows) {
+                out.writeInt(row);
+            }
+        }
+    }
+}
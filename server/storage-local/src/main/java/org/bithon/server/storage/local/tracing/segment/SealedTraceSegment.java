@@ -0,0 +1,261 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.tracing.segment;
+
+import lombok.Getter;
+import org.bithon.component.commons.utils.StringUtils;
+import org.bithon.server.storage.local.metric.segment.BlockInput;
+import org.bithon.server.storage.tracing.TraceSpan;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A segment whose data file and index file are both memory-mapped.
+ * <p>
+ * Layout of the index file:
+ * <pre>
+ * MAGIC(int) VERSION(int) rowCount(int) minTimestamp(long) maxTimestamp(long)
+ * offsets of rows in the data file (long * rowCount), rows are sorted by timestamp
+ * timestamps of rows (long * rowCount)
+ * root rows: size(int) bitmap
+ * traceId index: see {@link KeyIndex}
+ * parentSpanId index: see {@link KeyIndex}
+ * tag count(int), for each tag: name valueCount(int), for each value: value size(int) bitmap of trace ordinals
+ * (strings are written as length(int) followed by UTF-8 bytes)
+ * MAGIC(int)
+ * </pre>
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class SealedTraceSegment implements ITraceSegment {
+    static final int MAGIC = 0x42545349;
+    static final int VERSION = 1;
+
+    /**
+     * MAGIC + VERSION + rowCount + minTimestamp + maxTimestamp
+     */
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 8;
+
+    @Getter
+    private final Path dataFile;
+
+    @Getter
+    private final Path indexFile;
+
+    private final MappedByteBuffer data;
+    private final MappedByteBuffer index;
+    private final int rowCount;
+    private final long minTimestamp;
+    private final long maxTimestamp;
+    private final int offsetsPosition;
+    private final int timestampsPosition;
+    private final RoaringBitmap rootRows;
+    private final KeyIndex traceIndex;
+    private final KeyIndex parentSpanIndex;
+
+    /**
+     * tag name -> tag value -> position of the bitmap of trace ordinals in the index file
+     */
+    private final Map<String, Map<String, Integer>> tags;
+
+    private SealedTraceSegment(Path dataFile, Path indexFile, MappedByteBuffer data, MappedByteBuffer index) throws IOException {
+        this.dataFile = dataFile;
+        this.indexFile = indexFile;
+        this.data = data;
+        this.index = index;
+
+        if (index.capacity() < HEADER_SIZE + 4 || index.getInt(0) != MAGIC || index.getInt(index.capacity() - 4) != MAGIC) {
+            throw new IOException(StringUtils.format("[%s] is not a trace segment index file", indexFile));
+        }
+        if (index.getInt(4) != VERSION) {
+            throw new IOException(StringUtils.format("Unsupported version [%d] of [%s]", index.getInt(4), indexFile));
+        }
+        this.rowCount = index.getInt(8);
+        this.minTimestamp = index.getLong(12);
+        this.maxTimestamp = index.getLong(20);
+        this.offsetsPosition = HEADER_SIZE;
+        this.timestampsPosition = offsetsPosition + rowCount * 8;
+
+        ByteBuffer buffer = index.duplicate();
+        buffer.position(timestampsPosition + rowCount * 8);
+        int rootSize = buffer.getInt();
+        this.rootRows = new RoaringBitmap();
+        this.rootRows.deserialize(buffer.slice(buffer.position(), rootSize));
+        buffer.position(buffer.position() + rootSize);
+
+        this.traceIndex = new KeyIndex(buffer);
+        this.parentSpanIndex = new KeyIndex(buffer);
+
+        int tagCount = buffer.getInt();
+        this.tags = new HashMap<>(tagCount * 2);
+        for (int i = 0; i < tagCount; i++) {
+            String tagName = readString(buffer);
+            int valueCount = buffer.getInt();
+            Map<String, Integer> values = new HashMap<>(valueCount * 2);
+            for (int j = 0; j < valueCount; j++) {
+                String value = readString(buffer);
+                int size = buffer.getInt();
+                values.put(value, buffer.position());
+                buffer.position(buffer.position() + size);
+            }
+            tags.put(tagName, values);
+        }
+    }
+
+    public static SealedTraceSegment open(Path dataFile, Path indexFile) throws IOException {
+        return new SealedTraceSegment(dataFile, indexFile, map(dataFile), map(indexFile));
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(StringUtils.format("[%s] exceeds 2GB", file));
+            }
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public long getMinTimestamp() {
+        return minTimestamp;
+    }
+
+    @Override
+    public long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    @Override
+    public long getTimestamp(int row) {
+        return index.getLong(timestampsPosition + row * 8);
+    }
+
+    @Override
+    public RoaringBitmap getRows(long start, long end) {
+        int lower = lowerBound(start);
+        int upper = lowerBound(end);
+        RoaringBitmap rows = new RoaringBitmap();
+        if (lower < upper) {
+            rows.add((long) lower, upper);
+        }
+        return rows;
+    }
+
+    /**
+     * @return the first row whose timestamp is greater than or equal to the given timestamp
+     */
+    private int lowerBound(long timestamp) {
+        int low = 0;
+        int high = rowCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getTimestamp(mid) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public boolean isTimeOrdered() {
+        return true;
+    }
+
+    @Override
+    public RoaringBitmap getRootRows() {
+        return rootRows.clone();
+    }
+
+    @Override
+    public int[] getRowsOfTrace(String traceId) {
+        return traceIndex.getRows(traceId);
+    }
+
+    @Override
+    public int[] getRowsOfTrace(int traceOrdinal) {
+        return traceIndex.getRows(traceOrdinal);
+    }
+
+    @Override
+    public int[] getRowsOfParentSpan(String parentSpanId) {
+        return parentSpanIndex.getRows(parentSpanId);
+    }
+
+    @Override
+    public Collection<String> getTagValues(String tagName) {
+        return Collections.unmodifiableCollection(tags.getOrDefault(tagName, Map.of()).keySet());
+    }
+
+    @Override
+    public RoaringBitmap getTracesOfTag(String tagName, String tagValue) {
+        Integer position = tags.getOrDefault(tagName, Map.of()).get(tagValue);
+        if (position == null) {
+            return new RoaringBitmap();
+        }
+        return new ImmutableRoaringBitmap(index.slice(position, index.capacity() - position)).toRoaringBitmap();
+    }
+
+    @Override
+    public TraceSpan readSpan(int row) {
+        int offset = (int) index.getLong(offsetsPosition + row * 8);
+
+        byte[] prefix = new byte[Math.min(SpanRecords.MAX_LENGTH_PREFIX, data.capacity() - offset)];
+        data.get(offset, prefix);
+        long length = SpanRecords.parseLength(prefix, 0, prefix.length);
+        if (length < 0) {
+            throw new IllegalStateException(StringUtils.format("Corrupted record at offset %d of [%s]", offset, dataFile));
+        }
+
+        // Skip the record type
+        byte[] record = new byte[(int) (length >>> 32) - 1];
+        data.get(offset + (int) length + 1, record);
+        return SpanRecords.readSpan(new BlockInput(record));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.tracing.segment;
+
+import org.bithon.server.storage.local.metric.segment.BlockInput;
+import org.bithon.server.storage.local.metric.segment.BlockOutput;
+import org.bithon.server.storage.tracing.TraceSpan;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encoding of records in the append-only data file of a trace segment.
+ * <p>
+ * Each record is prefixed by the var-int length of the rest of the record, followed by the record type and the payload.
+ * Tag index records are kept in the data file so that the in-memory indexes of an unsealed segment can be rebuilt after restart.
+ *
+ * @author frank.chen021@outlook.com
+ */
+final class SpanRecords {
+    static final byte TYPE_SPAN = 1;
+    static final byte TYPE_TAG = 2;
+
+    /**
+     * Max bytes of the var-int length prefix
+     */
+    static final int MAX_LENGTH_PREFIX = 5;
+
+    private SpanRecords() {
+    }
+
+    static void writeSpan(BlockOutput out, BlockOutput scratch, TraceSpan span) {
+        scratch.reset();
+        scratch.writeByte(TYPE_SPAN);
+        scratch.writeString(span.appName);
+        scratch.writeString(span.instanceName);
+        scratch.writeString(span.appType);
+        scratch.writeString(span.traceId);
+        scratch.writeString(span.spanId);
+        scratch.writeString(span.kind);
+        scratch.writeString(span.parentSpanId);
+        scratch.writeString(span.parentApplication);
+        scratch.writeString(span.name);
+        scratch.writeString(span.clazz);
+        scratch.writeString(span.method);
+        scratch.writeString(span.status);
+        scratch.writeString(span.normalizedUri);
+        scratch.writeZigzagLong(span.startTime);
+        scratch.writeZigzagLong(span.endTime);
+        scratch.writeZigzagLong(span.costTime);
+
+        Map<String, String> tags = span.tags;
+        scratch.writeVarInt(tags == null ? 0 : tags.size());
+        if (tags != null) {
+            for (Map.Entry<String, String> tag : tags.entrySet()) {
+                scratch.writeString(tag.getKey());
+                scratch.writeString(tag.getValue());
+            }
+        }
+
+        out.writeVarInt(scratch.size());
+        out.writeBytes(scratch.buffer(), 0, scratch.size());
+    }
+
+    static void writeTag(BlockOutput out, BlockOutput scratch, String traceId, String name, String value) {
+        scratch.reset();
+        scratch.writeByte(TYPE_TAG);
+        scratch.writeString(traceId);
+        scratch.writeString(name);
+        scratch.writeString(value);
+
+        out.writeVarInt(scratch.size());
+        out.writeBytes(scratch.buffer(), 0, scratch.size());
+    }
+
+    /**
+     * @param in positioned after the record type
+     */
+    static TraceSpan readSpan(BlockInput in) {
+        TraceSpan span = new TraceSpan();
+        span.appName = in.readString();
+        span.instanceName = in.readString();
+        span.appType = in.readString();
+        span.traceId = in.readString();
+        span.spanId = in.readString();
+        span.kind = in.readString();
+        span.parentSpanId = in.readString();
+        span.parentApplication = in.readString();
+        span.name = in.readString();
+        span.clazz = in.readString();
+        span.method = in.readString();
+        span.status = in.readString();
+        span.normalizedUri = in.readString();
+        span.startTime = in.readZigzagLong();
+        span.endTime = in.readZigzagLong();
+        span.costTime = in.readZigzagLong();
+
+        int tagCount = in.readVarInt();
+        Map<String, String> tags = new HashMap<>(Math.max(4, tagCount * 2));
+        for (int i = 0; i < tagCount; i++) {
+            tags.put(in.readString(), in.readString());
+        }
+        span.tags = tags;
+        return span;
+    }
+
+    /**
+     * Parse the var-int length prefix at the beginning of the given bytes
+     *
+     * @return the length of the record body in the high 32 bits and the size of the prefix in the low 32 bits,
+     * or -1 if the prefix is incomplete
+     */
+    static long parseLength(byte[] bytes, int offset, int available) {
+        int length = 0;
+        for (int i = 0; i < MAX_LENGTH_PREFIX && i < available; i++) {
+            byte b = bytes[offset + i];
+            length |= (b & 0x7F) << (7 * i);
+            if (b >= 0) {
+                return ((long) length << 32) | (i + 1);
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.metric.query;
+
+import org.bithon.component.commons.expression.IExpression;
+import org.bithon.component.commons.expression.IdentifierExpression;
+import org.bithon.component.commons.expression.function.Functions;
+import org.bithon.component.commons.utils.HumanReadableDuration;
+import org.bithon.server.commons.time.TimeSpan;
+import org.bithon.server.datasource.DefaultSchema;
+import org.bithon.server.datasource.column.ExpressionColumn;
+import org.bithon.server.datasource.column.StringColumn;
+import org.bithon.server.datasource.column.aggregatable.max.AggregateLongMaxColumn;
+import org.bithon.server.datasource.column.aggregatable.sum.AggregateLongSumColumn;
+import org.bithon.server.datasource.expression.ExpressionASTBuilder;
+import org.bithon.server.datasource.input.IInputRow;
+import org.bithon.server.datasource.input.InputRow;
+import org.bithon.server.datasource.query.Interval;
+import org.bithon.server.datasource.query.Limit;
+import org.bithon.server.datasource.query.Order;
+import org.bithon.server.datasource.query.OrderBy;
+import org.bithon.server.datasource.query.Query;
+import org.bithon.server.datasource.query.ResultFormat;
+import org.bithon.server.datasource.query.ast.ExpressionNode;
+import org.bithon.server.datasource.query.ast.Selector;
+import org.bithon.server.datasource.query.pipeline.ColumnarTable;
+import org.bithon.server.storage.local.metric.LocalMetricTable;
+import org.bithon.server.storage.local.metric.MetricLocalWriter;
+import org.bithon.server.storage.local.metric.segment.SegmentSchema;
+import org.bithon.server.storage.metrics.MetricDataSourceSpec;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class MetricLocalReaderTest {
+
+    /**
+     * 2023-11-15 00:00:00 UTC
+     */
+    private static final long T0 = 1_700_006_400_000L;
+    private static final long HOUR = 3600_000L;
+
+    private final DefaultSchema schema = new DefaultSchema("test-metrics",
+                                                           "test-metrics",
+                                                           null,
+                                                           Arrays.asList(new StringColumn("appName", "appName"),
+                                                                         new StringColumn("instanceName", "instanceName")),
+                                                           Arrays.asList(new AggregateLongSumColumn("totalCount", "totalCount"),
+                                                                         new AggregateLongSumColumn("responseTime", "responseTime"),
+                                                                         new AggregateLongMaxColumn("maxResponseTime", "maxResponseTime"),
+                                                                         new ExpressionColumn("avgResponseTime",
+                                                                                              null,
+                                                                                              "sum(responseTime) / sum(totalCount)",
+                                                                                              "double")))
+        .withDataStore(new MetricDataSourceSpec(null));
+
+    @TempDir
+    Path dir;
+
+    private LocalMetricTable table;
+    private MetricLocalReader reader;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // A small threshold so that data is spread over sealed segments and the in-memory rows
+        table = new LocalMetricTable("bithon_test_metrics", dir, 50);
+        reader = new MetricLocalReader((name) -> table);
+
+        // 2 hours of rows at 1 minute interval, app1 runs on i1, app2 runs on i2 and i3
+        List<IInputRow> rows = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            rows.add(row(T0 + i * 60_000L, "app1", "i1", i));
+            rows.add(row(T0 + i * 60_000L, "app2", i % 2 == 0 ? "i2" : "i3", 2 * i));
+        }
+        new MetricLocalWriter(table, SegmentSchema.of(schema)).write(rows);
+    }
+
+    private static IInputRow row(long timestamp, String app, String instance, long responseTime) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("timestamp", timestamp);
+        row.put("appName", app);
+        row.put("instanceName", instance);
+        row.put("totalCount", 1);
+        row.put("responseTime", responseTime);
+        row.put("maxResponseTime", responseTime);
+        return new InputRow(row);
+    }
+
+    private IExpression filter(String filter) {
+        return filter == null ? null : ExpressionASTBuilder.builder().functions(Functions.getInstance()).schema(schema).build(filter);
+    }
+
+    private Query.QueryBuilder query(long start, long end, Duration step, String filter, List<String> groupBy, String... expressions) {
+        List<Selector> selectors = new ArrayList<>();
+        for (int i = 0; i < expressions.length; i++) {
+            selectors.add(new Selector(new ExpressionNode(schema, expressions[i]), "v" + i));
+        }
+        return Query.builder()
+                    .schema(schema)
+                    .selectors(selectors)
+                    .filter(filter(filter))
+                    .interval(Interval.of(TimeSpan.fromMilliseconds(start),
+                                          TimeSpan.fromMilliseconds(end),
+                                          step,
+                                          new IdentifierExpression("timestamp")))
+                    .groupBy(groupBy)
+                    .isAggregateQuery(true);
+    }
+
+    private static Map<String, Object> toMap(ColumnarTable table, String keyColumn, String valueColumn) {
+        Map<String, Object> map = new HashMap<>();
+        for (Map<String, Object> row : table.toRowFormat()) {
+            map.put(String.valueOf(row.get(keyColumn)), row.get(valueColumn));
+        }
+        return map;
+    }
+
+    @Test
+    public void testTimeseries() {
+        ColumnarTable result = reader.timeseries(query(T0, T0 + 2 * HOUR, Duration.ofHours(1), null, List.of("appName"), "sum(totalCount)", "max(maxResponseTime)").build());
+
+        Assertions.assertEquals(List.of("_timestamp", "appName", "v0", "v1"), new ArrayList<>(result.getColumnNames()));
+        Assertions.assertEquals(4, result.rowCount());
+
+        List<Map<String, Object>> rows = result.toRowFormat();
+        Assertions.assertEquals(T0 / 1000, rows.get(0).get("_timestamp"));
+        Assertions.assertEquals(T0 / 1000, rows.get(1).get("_timestamp"));
+        Assertions.assertEquals((T0 + HOUR) / 1000, rows.get(2).get("_timestamp"));
+        for (Map<String, Object> row : rows) {
+            Assertions.assertEquals(60L, row.get("v0"));
+        }
+        Assertions.assertEquals(Map.of("app1", 59L, "app2", 118L),
+                                toMap(result.view(new int[]{0, 1}, 2), "appName", "v1"));
+        Assertions.assertEquals(Map.of("app1", 119L, "app2", 238L),
+                                toMap(result.view(new int[]{2, 3}, 2), "appName", "v1"));
+
+        // The start is floored to the step
+        result = reader.timeseries(query(T0 + 90_000, T0 + 5 * 60_000, Duration.ofMinutes(1), "appName = 'app1'", List.of(), "sum(totalCount)").build());
+        Assertions.assertEquals(4, result.rowCount());
+        Assertions.assertEquals((T0 + 60_000) / 1000, result.toRowFormat().get(0).get("_timestamp"));
+    }
+
+    @Test
+    public void testTimeseriesWithOffset() {
+        // Compare with the data of 1 hour ago
+        ColumnarTable result = reader.timeseries(query(T0 + HOUR, T0 + 2 * HOUR, Duration.ofHours(1), "appName = 'app1'", List.of(), "max(maxResponseTime)")
+                                                     .offset(HumanReadableDuration.parse("-1h"))
+                                                     .build());
+        Assertions.assertEquals(1, result.rowCount());
+        Assertions.assertEquals((T0 + HOUR) / 1000, result.toRowFormat().get(0).get("_timestamp"));
+        Assertions.assertEquals(59L, result.toRowFormat().get(0).get("v0"));
+    }
+
+    @Test
+    public void testFilter() {
+        Assertions.assertEquals(240, reader.count(query(T0, T0 + 2 * HOUR, null, null, List.of()).build()));
+        Assertions.assertEquals(120, reader.count(query(T0, T0 + 2 * HOUR, null, "appName = 'app1'", List.of()).build()));
+        Assertions.assertEquals(0, reader.count(query(T0, T0 + 2 * HOUR, null, "appName = 'app3'", List.of()).build()));
+        Assertions.assertEquals(180, reader.count(query(T0, T0 + 2 * HOUR, null, "instanceName in ('i1', 'i2')", List.of()).build()));
+        Assertions.assertEquals(60, reader.count(query(T0, T0 + 2 * HOUR, null, "instanceName not in ('i1', 'i2')", List.of()).build()));
+        Assertions.assertEquals(120, reader.count(query(T0, T0 + 2 * HOUR, null, "instanceName > 'i1'", List.of()).build()));
+        Assertions.assertEquals(120, reader.count(query(T0, T0 + 2 * HOUR, null, "appName startsWith 'app2'", List.of()).build()));
+        Assertions.assertEquals(30, reader.count(query(T0, T0 + HOUR, null, "appName = 'app2' and responseTime >= 60", List.of()).build()));
+        Assertions.assertEquals(173, reader.count(query(T0, T0 + 2 * HOUR, null, "instanceName = 'i3' or responseTime < 90", List.of()).build()));
+
+        // Filter on a column that does not exist in the data, all rows have the default value
+        Assertions.assertEquals(0, reader.count(query(T0, T0 + HOUR, null, "appName = 'app1' and instanceName = 'i1' and totalCount > 1", List.of()).build()));
+    }
+
+    @Test
+    public void testPostAggregationAndHaving() {
+        // The filter on the output of a selector is applied after aggregation
+        Query query = query(T0, T0 + 2 * HOUR, null, null, List.of("instanceName"), "sum(totalCount)", "round(sum(responseTime) / sum(totalCount), 0)")
+            .filter(ExpressionASTBuilder.builder().functions(Functions.getInstance()).build("v0 > 60"))
+            .orderBy(new OrderBy("instanceName", Order.asc))
+            .build();
+
+        List<Map<String, Object>> rows = reader.timeseries(query).toRowFormat();
+        Assertions.assertEquals(1, rows.size());
+        Assertions.assertEquals("i1", rows.get(0).get("instanceName"));
+        Assertions.assertEquals(120L, rows.get(0).get("v0"));
+        Assertions.assertEquals(59.0, ((Number) rows.get(0).get("v1")).doubleValue(), 0.5);
+
+        // Expression column in the filter, and the {interval} macro
+        query = query(T0, T0 + 2 * HOUR, null, "avgResponseTime > 100", List.of("appName"), "sum(totalCount) * 60 / {interval}").build();
+        rows = reader.timeseries(query).toRowFormat();
+        Assertions.assertEquals(1, rows.size());
+        Assertions.assertEquals("app2", rows.get(0).get("appName"));
+        Assertions.assertEquals(1L, ((Number) rows.get(0).get("v0")).longValue());
+
+        // Aggregated by the pre-defined aggregator of the column
+        query = Query.builder()
+                     .schema(schema)
+                     .selectors(List.of(new Selector("totalCount", null), schema.getColumnByName("avgResponseTime").toSelector()))
+                     .interval(Interval.of(TimeSpan.fromMilliseconds(T0), TimeSpan.fromMilliseconds(T0 + 2 * HOUR)))
+                     .groupBy(List.of("appName"))
+                     .orderBy(new OrderBy("appName", Order.desc))
+                     .limit(new Limit(1, 0))
+                     .resultFormat(ResultFormat.ValueArray)
+                     .isAggregateQuery(true)
+                     .build();
+        List<Object> result = new ArrayList<>();
+        reader.query(query).getData().forEachRemaining((row) -> result.add(row.getPayload()));
+        Assertions.assertEquals(1, result.size());
+        Object[] row = (Object[]) result.get(0);
+        Assertions.assertEquals("app2", row[0]);
+        Assertions.assertEquals(120L, row[1]);
+        Assertions.assertEquals(119.0, ((Number) row[2]).doubleValue(), 0.5);
+    }
+
+    @Test
+    public void testDistinct() {
+        Query query = Query.builder()
+                           .schema(schema)
+                           .selectors(List.of(new Selector("instanceName", null)))
+                           .filter(filter("appName = 'app2'"))
+                           .interval(Interval.of(TimeSpan.fromMilliseconds(T0), TimeSpan.fromMilliseconds(T0 + 2 * HOUR)))
+                           .build();
+        Assertions.assertEquals(List.of("i2", "i3"), reader.distinct(query));
+    }
+
+    @Test
+    public void testSelect() {
+        Query query = Query.builder()
+                           .schema(schema)
+                           .selectors(List.of(new Selector("timestamp", null), new Selector("maxResponseTime", null)))
+                           .filter(filter("appName = 'app1'"))
+                           .interval(Interval.of(TimeSpan.fromMilliseconds(T0), TimeSpan.fromMilliseconds(T0 + 2 * HOUR)))
+                           .orderBy(new OrderBy("maxResponseTime", Order.desc))
+                           .limit(new Limit(2, 1))
+                           .build();
+
+        List<?> rows = reader.select(query);
+        Assertions.assertEquals(2, rows.size());
+        Map<?, ?> row = (Map<?, ?>) rows.get(0);
+        Assertions.assertEquals(118L, row.get("maxResponseTime"));
+        Assertions.assertEquals(new Timestamp(T0 + 118 * 60_000L), row.get("timestamp"));
+    }
+
+    @Test
+    public void testReopenAndExpire() throws Exception {
+        table.flush(System.currentTimeMillis(), 0, true);
+
+        table = new LocalMetricTable("bithon_test_metrics", dir, 50);
+        Assertions.assertEquals(240, reader.count(query(T0, T0 + 2 * HOUR, null, null, List.of()).build()));
+
+        // Expire the first hour
+        table.expire(T0 + HOUR, List.of());
+        Assertions.assertEquals(120, reader.count(query(T0, T0 + 2 * HOUR, null, null, List.of()).build()));
+
+        // Partitions in the baseline days are kept
+        table.expire(T0 + 2 * HOUR, List.of(TimeSpan.fromMilliseconds(T0)));
+        Assertions.assertEquals(120, reader.count(query(T0, T0 + 2 * HOUR, null, null, List.of()).build()));
+    }
+
+    @Test
+    public void testReopenAfterCrashDuringCompaction() throws Exception {
+        // One more segment in the first hour, rows are sealed without compaction and a copy of the segments is kept
+        new MetricLocalWriter(table, SegmentSchema.of(schema)).write(List.of(row(T0, "app3", "i4", 1)));
+        table.flush(T0, 0, true);
+        Map<Path, byte[]> inputs = new HashMap<>();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.filter((file) -> file.toString().endsWith(".seg")).toList()) {
+                inputs.put(file, Files.readAllBytes(file));
+            }
+        }
+
+        // Simulate a crash after the merged segments are written but before the inputs are deleted
+        table.flush(System.currentTimeMillis(), 0, true);
+        List<Path> compacted = new ArrayList<>();
+        for (Map.Entry<Path, byte[]> input : inputs.entrySet()) {
+            if (!Files.exists(input.getKey())) {
+                compacted.add(input.getKey());
+                Files.write(input.getKey(), input.getValue());
+            }
+        }
+        Assertions.assertFalse(compacted.isEmpty());
+
+        // Rows of the compacted segments are not counted twice
+        table = new LocalMetricTable("bithon_test_metrics", dir, 50);
+        Assertions.assertEquals(241, reader.count(query(T0, T0 + 2 * HOUR, null, null, List.of()).build()));
+        for (Path input : compacted) {
+            Assertions.assertFalse(Files.exists(input));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.metric.segment;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class SegmentFileTest {
+
+    private final SegmentSchema schema = new SegmentSchema(List.of("timestamp", "appName", "totalCount", "avgTime", "text"),
+                                                           List.of(ColumnType.TIMESTAMP, ColumnType.DIMENSION, ColumnType.LONG, ColumnType.DOUBLE, ColumnType.STRING));
+
+    @TempDir
+    Path dir;
+
+    private ISegment build(SegmentSchema schema, Object[]... rows) {
+        SegmentBuilder builder = new SegmentBuilder(schema, 4);
+        for (Object[] row : rows) {
+            builder.add(row);
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        // Rows are not in the order of time
+        ISegment segment = build(schema,
+                                 new Object[]{3000L, "app2", 3L, 0.5, "c"},
+                                 new Object[]{1000L, "app1", -1L, 1.5, "a"},
+                                 new Object[]{2000L, "app2", 2L, 2.5, ""},
+                                 new Object[]{2000L, "app1", Long.MAX_VALUE, -0.5, "b"});
+
+        MappedSegment mapped = SegmentFile.write(segment, dir.resolve("000000.seg"));
+        Assertions.assertFalse(Files.exists(dir.resolve("000000.seg.tmp")));
+
+        Assertions.assertEquals(4, mapped.getRowCount());
+        Assertions.assertEquals(1000, mapped.getMinTimestamp());
+        Assertions.assertEquals(3000, mapped.getMaxTimestamp());
+        Assertions.assertEquals(schema, mapped.getSchema());
+
+        // Sorted by time, rows of the same timestamp keep the order of insertion
+        Assertions.assertArrayEquals(new long[]{1000, 2000, 2000, 3000}, mapped.getTimestamps());
+        Assertions.assertArrayEquals(new long[]{-1, 2, Long.MAX_VALUE, 3}, mapped.getLongs("totalCount"));
+        Assertions.assertArrayEquals(new double[]{1.5, 2.5, -0.5, 0.5}, mapped.getDoubles("avgTime"));
+        Assertions.assertArrayEquals(new String[]{"a", "", "b", "c"}, mapped.getStrings("text"));
+
+        DimensionColumn appName = mapped.getDimension("appName");
+        Assertions.assertEquals(2, appName.getCardinality());
+        Assertions.assertEquals("app1", appName.getDictionaryValue(0));
+        Assertions.assertEquals("app2", appName.getDictionaryValue(1));
+        Assertions.assertArrayEquals(new int[]{0, 2}, appName.getPostings(appName.lookup("app1")).toArray());
+        Assertions.assertArrayEquals(new int[]{1, 3}, appName.getPostings(appName.lookup("app2")).toArray());
+        Assertions.assertTrue(appName.lookup("app3") < 0);
+        Assertions.assertEquals("app2", appName.getValue(3));
+
+        // Columns of wrong type or not existing
+        Assertions.assertNull(mapped.getLongs("appName"));
+        Assertions.assertNull(mapped.getDimension("notExist"));
+        Assertions.assertNull(mapped.getValue("notExist", 0));
+
+        Assertions.assertEquals(1, mapped.lowerBound(2000));
+        Assertions.assertEquals(4, mapped.lowerBound(3001));
+
+        // Reopen from the file
+        MappedSegment reopened = SegmentFile.open(mapped.getFile());
+        Assertions.assertArrayEquals(mapped.getTimestamps(), reopened.getTimestamps());
+        Assertions.assertArrayEquals(new int[]{1, 3}, reopened.getDimension("appName").getPostings(1).toArray());
+    }
+
+    @Test
+    public void testRejectCorruptedFile() throws Exception {
+        MappedSegment mapped = SegmentFile.write(build(schema, new Object[]{1000L, "app1", 1L, 1.0, "a"}), dir.resolve("000000.seg"));
+
+        byte[] content = Files.readAllBytes(mapped.getFile());
+        Path file = dir.resolve("000001.seg");
+        Files.write(file, Arrays.copyOf(content, content.length - 1));
+        Assertions.assertThrows(IOException.class, () -> SegmentFile.open(file));
+    }
+
+    @Test
+    public void testMergeSegmentsOfDifferentSchema() {
+        SegmentSchema oldSchema = new SegmentSchema(List.of("timestamp", "appName", "totalCount"),
+                                                    List.of(ColumnType.TIMESTAMP, ColumnType.DIMENSION, ColumnType.LONG));
+        ISegment oldSegment = build(oldSchema, new Object[]{2000L, "app1", 5L});
+        ISegment newSegment = build(schema, new Object[]{1000L, "app2", 1L, 1.0, "a"});
+
+        SegmentBuilder builder = new SegmentBuilder(schema, 2);
+        builder.add(oldSegment);
+        builder.add(newSegment);
+        ISegment merged = builder.build();
+
+        Assertions.assertArrayEquals(new long[]{1000, 2000}, merged.getTimestamps());
+        Assertions.assertArrayEquals(new long[]{1, 5}, merged.getLongs("totalCount"));
+
+        // Columns that don't exist in the old segment are filled with default values
+        Assertions.assertArrayEquals(new double[]{1.0, 0}, merged.getDoubles("avgTime"));
+        Assertions.assertArrayEquals(new String[]{"a", ""}, merged.getStrings("text"));
+        Assertions.assertEquals("app1", merged.getDimension("appName").getValue(1));
+    }
+}
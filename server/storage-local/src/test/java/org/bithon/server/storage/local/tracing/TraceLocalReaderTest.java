@@ -0,0 +1,359 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.tracing;
+
+import org.bithon.component.commons.expression.IDataType;
+import org.bithon.component.commons.expression.IExpression;
+import org.bithon.component.commons.expression.IdentifierExpression;
+import org.bithon.component.commons.expression.function.Functions;
+import org.bithon.component.commons.tracing.SpanKind;
+import org.bithon.server.commons.time.TimeSpan;
+import org.bithon.server.datasource.ISchema;
+import org.bithon.server.datasource.expression.ExpressionASTBuilder;
+import org.bithon.server.datasource.query.Interval;
+import org.bithon.server.datasource.query.Limit;
+import org.bithon.server.datasource.query.Order;
+import org.bithon.server.datasource.query.OrderBy;
+import org.bithon.server.datasource.query.Query;
+import org.bithon.server.datasource.query.ast.Selector;
+import org.bithon.server.storage.tracing.TraceSpan;
+import org.bithon.server.storage.tracing.TraceTableSchema;
+import org.bithon.server.storage.tracing.index.TagIndex;
+import org.bithon.server.storage.tracing.index.TagIndexConfig;
+import org.bithon.server.storage.tracing.mapping.TraceIdMapping;
+import org.bithon.server.storage.tracing.reader.TraceFilterSplitter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class TraceLocalReaderTest {
+
+    /**
+     * 2023-11-15 00:00:00 UTC
+     */
+    private static final long T0 = 1_700_006_400_000L;
+    private static final long HOUR = 3600_000L;
+    private static final int TRACE_COUNT = 20;
+    private static final int SPANS_PER_TRACE = 5;
+
+    private final ISchema summarySchema = TraceTableSchema.createTraceSpanSummaryTableSchema(null);
+    private final ISchema spanSchema = TraceTableSchema.createTraceSpanTableSchema(null);
+    private final ISchema indexSchema;
+
+    @TempDir
+    Path dir;
+
+    private LocalTraceTable table;
+    private TraceLocalReader reader;
+
+    public TraceLocalReaderTest() {
+        Map<String, Integer> tags = new LinkedHashMap<>();
+        tags.put("http.method", 1);
+        tags.put("http.status", 2);
+        TagIndexConfig config = new TagIndexConfig();
+        config.setMap(tags);
+        this.indexSchema = TraceTableSchema.createIndexTableSchema(null, config);
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // A small threshold so that spans are spread over sealed segments and the active one
+        table = open();
+
+        // One trace per minute, the root span of even traces is a GET request and the others are POST requests.
+        TraceLocalWriter writer = new TraceLocalWriter(table);
+        for (int i = 0; i < TRACE_COUNT; i++) {
+            List<TraceSpan> spans = new ArrayList<>();
+            for (int j = 0; j < SPANS_PER_TRACE; j++) {
+                spans.add(span(i, j));
+            }
+            TraceSpan root = spans.get(0);
+            List<TagIndex> tags = List.of(new TagIndex(root.startTime / 1000, root.traceId, "http.method", root.getTag("http.method")),
+                                          new TagIndex(root.startTime / 1000, root.traceId, "http.status", root.getTag("http.status")));
+            writer.write(spans, List.of(new TraceIdMapping("user-" + i, root.startTime / 1000, root.traceId)), tags);
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        table.close();
+    }
+
+    private LocalTraceTable open() throws Exception {
+        LocalTraceTable localTable = new LocalTraceTable(dir, Set.of("http.method", "http.status"), 12);
+        reader = new TraceLocalReader(localTable, summarySchema, spanSchema, indexSchema);
+        return localTable;
+    }
+
+    /**
+     * The root span has the cost time of 10ms * (20 - trace), each child span starts 1ms later than its parent
+     */
+    private static TraceSpan span(int trace, int index) {
+        TraceSpan span = new TraceSpan();
+        span.appName = index < 3 ? "app1" : "app2";
+        span.instanceName = index < 3 ? "i1" : "i2";
+        span.traceId = "trace-" + trace;
+        span.spanId = "span-" + trace + "-" + index;
+        span.parentSpanId = index == 0 ? "" : "span-" + trace + "-" + (index - 1);
+        span.kind = index == 0 ? SpanKind.SERVER.name() : SpanKind.CLIENT.name();
+        span.name = index == 0 ? "http-server" : "http-client";
+        span.startTime = (T0 + trace * 60_000L + index) * 1000;
+        span.costTime = (TRACE_COUNT - trace) * 10_000L - index;
+        span.endTime = span.startTime + span.costTime;
+        span.normalizedUri = "/api/" + trace;
+        span.tags = new HashMap<>();
+        if (index == 0) {
+            span.tags.put("http.method", trace % 2 == 0 ? "GET" : "POST");
+            span.tags.put("http.status", trace % 5 == 0 ? "500" : "200");
+        }
+        span.tags.put("seq", String.valueOf(index));
+        return span;
+    }
+
+    private IExpression filter(ISchema schema, String filter) {
+        return ExpressionASTBuilder.builder().functions(Functions.getInstance()).schema(schema).build(filter);
+    }
+
+    private List<TraceSpan> getTraceList(String filter, OrderBy orderBy, Limit limit) {
+        TraceFilterSplitter splitter = new TraceFilterSplitter(summarySchema, indexSchema);
+        splitter.split(filter(summarySchema, filter));
+        return reader.getTraceList(splitter.getExpression(),
+                                   splitter.getIndexedTagFilters(),
+                                   new Timestamp(T0),
+                                   new Timestamp(T0 + HOUR),
+                                   orderBy,
+                                   limit)
+                     .toList();
+    }
+
+    private static List<String> traceIds(List<TraceSpan> spans) {
+        return spans.stream().map((span) -> span.traceId).toList();
+    }
+
+    @Test
+    public void testGetTraceByTraceId() {
+        List<TraceSpan> spans = reader.getTraceByTraceId("trace-7", null, null, null).toList();
+        Assertions.assertEquals(SPANS_PER_TRACE, spans.size());
+        for (int i = 0; i < SPANS_PER_TRACE; i++) {
+            Assertions.assertEquals("span-7-" + i, spans.get(i).spanId);
+            Assertions.assertEquals(span(7, i).costTime, spans.get(i).costTime);
+            Assertions.assertEquals(String.valueOf(i), spans.get(i).getTag("seq"));
+        }
+        Assertions.assertEquals("POST", spans.get(0).getTag("http.method"));
+
+        // Filter on spans of the trace
+        Assertions.assertEquals(2, reader.getTraceSpanCount("trace-7", filter(spanSchema, "appName = 'app2'"), null, null));
+
+        // Out of the time range of the trace
+        Assertions.assertEquals(0, reader.getTraceSpanCount("trace-7", null, TimeSpan.fromMilliseconds(T0 + HOUR), TimeSpan.fromMilliseconds(T0 + 2 * HOUR)));
+        Assertions.assertEquals(0, reader.getTraceSpanCount("trace-not-exist", null, null, null));
+    }
+
+    @Test
+    public void testGetTraceByParentSpanId() {
+        List<TraceSpan> spans = reader.getTraceByParentSpanId("span-3-1");
+        Assertions.assertEquals(1, spans.size());
+        Assertions.assertEquals("span-3-2", spans.get(0).spanId);
+    }
+
+    @Test
+    public void testGetTraceListByIndexedTags() {
+        // Latest traces come first by default
+        Assertions.assertEquals(List.of("trace-19", "trace-17", "trace-15"),
+                                traceIds(getTraceList("kind = 'SERVER' AND tags['http.method'] = 'POST'", null, new Limit(3, 0))));
+
+        Assertions.assertEquals(List.of("trace-15", "trace-5"),
+                                traceIds(getTraceList("kind = 'SERVER' AND tags['http.method'] = 'POST' AND tags['http.status'] = '500'", null, new Limit(10, 0))));
+
+        Assertions.assertEquals(List.of("trace-10", "trace-0"),
+                                traceIds(getTraceList("kind IN ('SERVER', 'CONSUMER') AND tags['http.method'] in ('GET') AND tags['http.status'] <> '200'",
+                                                      null,
+                                                      new Limit(10, 0))));
+
+        // Non-indexed tags are evaluated on spans
+        Assertions.assertEquals(List.of("trace-19", "trace-17"),
+                                traceIds(getTraceList("tags['http.method'] = 'POST' AND tags['seq'] = '0'", null, new Limit(2, 0))));
+    }
+
+    @Test
+    public void testGetTraceListOrderBy() {
+        // Cost time of root spans decreases as the trace number increases
+        Assertions.assertEquals(List.of("trace-19", "trace-18", "trace-17"),
+                                traceIds(getTraceList("kind = 'SERVER'", new OrderBy("costTimeMs", Order.asc), new Limit(3, 0))));
+
+        Assertions.assertEquals(List.of("trace-2", "trace-3"),
+                                traceIds(getTraceList("kind = 'SERVER'", new OrderBy("costTimeMs", Order.desc), new Limit(2, 2))));
+
+        Assertions.assertEquals(List.of("trace-0", "trace-1"),
+                                traceIds(getTraceList("kind = 'SERVER'", new OrderBy("startTimeUs", Order.asc), new Limit(2, 0))));
+
+        Assertions.assertEquals(List.of("trace-18"),
+                                traceIds(getTraceList("kind = 'SERVER' AND tags['http.method'] = 'GET'", new OrderBy("url", Order.desc), new Limit(1, 4))));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> getTraceList("kind = 'SERVER'", new OrderBy("not-exist", Order.asc), new Limit(1, 0)));
+    }
+
+    @Test
+    public void testGetTraceSpanDistribution() {
+        List<Map<String, Object>> distribution = reader.getTraceSpanDistribution("trace-1", null, null, null, List.of("appName", "instanceName"));
+        Assertions.assertEquals(2, distribution.size());
+        Assertions.assertEquals("app1", distribution.get(0).get("appName"));
+        Assertions.assertEquals("i1", distribution.get(0).get("instanceName"));
+        Assertions.assertEquals(3L, distribution.get(0).get("count"));
+        Assertions.assertEquals("app2", distribution.get(1).get("appName"));
+        Assertions.assertEquals(2L, distribution.get(1).get("count"));
+    }
+
+    @Test
+    public void testAggregate() {
+        Query query = Query.builder()
+                           .schema(summarySchema)
+                           .filter(filter(summarySchema, "tags['http.method'] = 'GET'"))
+                           .interval(Interval.of(TimeSpan.fromMilliseconds(T0),
+                                                 TimeSpan.fromMilliseconds(T0 + HOUR),
+                                                 null,
+                                                 new IdentifierExpression("timestamp")))
+                           .build();
+        Assertions.assertEquals(TRACE_COUNT / 2, reader.count(query));
+    }
+
+    @Test
+    public void testDistinctIndexedTagValues() {
+        Query query = Query.builder()
+                           .schema(indexSchema)
+                           .selectors(List.of(new Selector("http.status", IDataType.STRING)))
+                           .filter(filter(indexSchema, "f1 = 'POST'"))
+                           .interval(Interval.of(TimeSpan.fromMilliseconds(T0),
+                                                 TimeSpan.fromMilliseconds(T0 + HOUR),
+                                                 null,
+                                                 new IdentifierExpression("timestamp")))
+                           .build();
+        Assertions.assertEquals(List.of("200", "500"), reader.distinct(query));
+    }
+
+    @Test
+    public void testMapping() {
+        Assertions.assertEquals("trace-3", reader.getTraceIdByMapping("user-3").getTraceId());
+        Assertions.assertNull(reader.getTraceIdByMapping("user-not-exist"));
+    }
+
+    @Test
+    public void testRecover() throws Exception {
+        // The active segment is not sealed, it's recovered from the data file when the table is opened again
+        table.close();
+        table = open();
+
+        Assertions.assertEquals(SPANS_PER_TRACE, reader.getTraceSpanCount("trace-19", null, null, null));
+        Assertions.assertEquals(List.of("trace-19", "trace-17"),
+                                traceIds(getTraceList("kind = 'SERVER' AND tags['http.method'] = 'POST'", null, new Limit(2, 0))));
+        Assertions.assertEquals("trace-19", reader.getTraceIdByMapping("user-19").getTraceId());
+
+        // Sealed segments are not changed after the table is opened again
+        table.flush(System.currentTimeMillis(), 0, true);
+        table.close();
+        table = open();
+        Assertions.assertEquals(TRACE_COUNT, getTraceList("kind = 'SERVER'", null, new Limit(100, 0)).size());
+    }
+
+    @Test
+    public void testRecoverFromPartialRecord() throws Exception {
+        table.close();
+
+        // Simulate a crash in the middle of an append
+        Path partitionDir;
+        try (Stream<Path> dirs = Files.list(dir)) {
+            partitionDir = dirs.findFirst().orElseThrow();
+        }
+        Path activeFile;
+        try (Stream<Path> files = Files.list(partitionDir)) {
+            activeFile = files.filter((file) -> file.toString().endsWith(".data")
+                                                && !Files.exists(Path.of(file.toString().replace(".data", ".idx"))))
+                              .findFirst()
+                              .orElseThrow();
+        }
+        Files.write(activeFile, new byte[]{100, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        table = open();
+        Assertions.assertEquals(TRACE_COUNT, getTraceList("kind = 'SERVER'", null, new Limit(100, 0)).size());
+        Assertions.assertEquals(SPANS_PER_TRACE, reader.getTraceSpanCount("trace-19", null, null, null));
+    }
+
+    @Test
+    public void testRecoverMappingsFromPartialRecord() throws Exception {
+        table.close();
+
+        // Simulate a crash in the middle of appending a mapping
+        Path mappingFile = partitionDir().resolve("mappings.log");
+        Files.write(mappingFile, new byte[]{0, 10, 'u', 's'}, StandardOpenOption.APPEND);
+
+        table = open();
+        Assertions.assertEquals("trace-19", reader.getTraceIdByMapping("user-19").getTraceId());
+
+        // The torn record is truncated, so mappings appended later can still be loaded
+        new TraceLocalWriter(table).write(List.of(), List.of(new TraceIdMapping("user-new", T0 + 1, "trace-new")), List.of());
+        table.close();
+        table = open();
+        Assertions.assertEquals("trace-new", reader.getTraceIdByMapping("user-new").getTraceId());
+        Assertions.assertEquals("trace-0", reader.getTraceIdByMapping("user-0").getTraceId());
+    }
+
+    @Test
+    public void testSkipPartitionFailedToLoad() throws Exception {
+        table.close();
+
+        // A partition whose mapping file can't be read does not fail the table
+        Files.createDirectories(dir.resolve("2023111502").resolve("mappings.log"));
+
+        table = open();
+        Assertions.assertEquals(TRACE_COUNT, getTraceList("kind = 'SERVER'", null, new Limit(100, 0)).size());
+    }
+
+    private Path partitionDir() throws IOException {
+        try (Stream<Path> dirs = Files.list(dir)) {
+            return dirs.findFirst().orElseThrow();
+        }
+    }
+
+    @Test
+    public void testExpire() throws Exception {
+        table.expire(T0 + HOUR);
+        Assertions.assertEquals(0, reader.getTraceSpanCount("trace-1", null, null, null));
+        Assertions.assertNull(reader.getTraceIdByMapping("user-1"));
+
+        // Spans can still be written after the partition is dropped
+        new TraceLocalWriter(table).write(List.of(span(1, 0)), List.of(), List.of());
+        Assertions.assertEquals(1, reader.getTraceSpanCount("trace-1", null, null, null));
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.local.tracing;
+
+import org.bithon.component.commons.expression.IExpression;
+import org.bithon.component.commons.expression.function.Functions;
+import org.bithon.component.commons.tracing.SpanKind;
+import org.bithon.server.datasource.ISchema;
+import org.bithon.server.datasource.expression.ExpressionASTBuilder;
+import org.bithon.server.datasource.query.Limit;
+import org.bithon.server.storage.tracing.TraceSpan;
+import org.bithon.server.storage.tracing.TraceTableSchema;
+import org.bithon.server.storage.tracing.index.TagIndex;
+import org.bithon.server.storage.tracing.index.TagIndexConfig;
+import org.bithon.server.storage.tracing.mapping.TraceIdMapping;
+import org.bithon.server.storage.tracing.reader.TraceFilterSplitter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures lookup latency of {@link TraceLocalReader} over synthetic spans loaded into a {@link LocalTraceTable} on disk.
+ * Spans are spread evenly over one day, each trace consists of 10 spans and the root span carries two indexed tags.
+ * 1% of traces have the 'http.status' of 500.
+ * <p>
+ * Loading 100M spans takes a while and about 15GB of disk, the data directory is removed when the trial ends.
+ * Run {@link #main(String[])} to measure at 1, 4, 16 and 64 reader threads.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class TraceLocalStorageBenchmark {
+    private static final int SPANS_PER_TRACE = 10;
+    private static final int BATCH_SIZE = 10_000;
+    private static final long DAY = 24 * 3600_000L;
+
+    @Param({"1000000", "100000000"})
+    public int spanCount;
+
+    private Path dir;
+    private LocalTraceTable table;
+    private TraceLocalReader reader;
+
+    private long start;
+    private long end;
+    private int traceCount;
+    private IExpression filter;
+    private List<IExpression> indexedTagFilters;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("trace-local-benchmark");
+        table = new LocalTraceTable(dir, Set.of("http.method", "http.status"), 1_000_000);
+
+        TagIndexConfig indexConfig = new TagIndexConfig();
+        indexConfig.setMap(Map.of("http.method", 1, "http.status", 2));
+        ISchema summarySchema = TraceTableSchema.createTraceSpanSummaryTableSchema(null);
+        ISchema indexSchema = TraceTableSchema.createIndexTableSchema(null, indexConfig);
+        reader = new TraceLocalReader(table, summarySchema, TraceTableSchema.createTraceSpanTableSchema(null), indexSchema);
+
+        // Start from the beginning of an hour so that the spans span exactly 24 partitions
+        end = System.currentTimeMillis() / 3600_000L * 3600_000L;
+        start = end - DAY;
+        traceCount = spanCount / SPANS_PER_TRACE;
+
+        List<TraceSpan> spans = new ArrayList<>(BATCH_SIZE);
+        List<TraceIdMapping> mappings = new ArrayList<>();
+        List<TagIndex> tagIndices = new ArrayList<>();
+        for (int i = 0; i < spanCount; i++) {
+            spans.add(createSpan(i, tagIndices));
+            if (spans.size() == BATCH_SIZE) {
+                table.write(spans, mappings, tagIndices);
+                spans.clear();
+                tagIndices.clear();
+            }
+        }
+        if (!spans.isEmpty()) {
+            table.write(spans, mappings, tagIndices);
+        }
+        table.flush(System.currentTimeMillis(), 0, true);
+
+        TraceFilterSplitter splitter = new TraceFilterSplitter(summarySchema, indexSchema);
+        splitter.split(ExpressionASTBuilder.builder()
+                                           .functions(Functions.getInstance())
+                                           .schema(summarySchema)
+                                           .build("kind = 'SERVER' AND tags['http.method'] = 'POST' AND tags['http.status'] = '500'"));
+        filter = splitter.getExpression();
+        indexedTagFilters = splitter.getIndexedTagFilters();
+    }
+
+    private TraceSpan createSpan(int i, List<TagIndex> tagIndices) {
+        int trace = i / SPANS_PER_TRACE;
+        boolean isRoot = i % SPANS_PER_TRACE == 0;
+
+        TraceSpan span = new TraceSpan();
+        span.appName = "bithon-benchmark-" + (trace % 16);
+        span.instanceName = "192.168.0." + (trace % 64) + ":8080";
+        span.traceId = "trace-" + trace;
+        span.spanId = "span-" + i;
+        span.parentSpanId = isRoot ? "" : "span-" + (i - i % SPANS_PER_TRACE);
+        span.kind = isRoot ? SpanKind.SERVER.name() : SpanKind.CLIENT.name();
+        span.name = "http";
+        span.clazz = "org.bithon.benchmark.Controller";
+        span.method = "handle";
+        span.startTime = (start + (long) ((double) trace * DAY / traceCount)) * 1000 + i % SPANS_PER_TRACE;
+        span.costTime = 100 + trace % 1000;
+        span.endTime = span.startTime + span.costTime;
+        span.normalizedUri = "/api/benchmark";
+        if (isRoot) {
+            String method = trace % 2 == 0 ? "GET" : "POST";
+            String status = trace % 100 == 1 ? "500" : "200";
+            span.tags = Map.of("http.method", method, "http.status", status);
+            tagIndices.add(new TagIndex(span.startTime / 1000, span.traceId, "http.method", method));
+            tagIndices.add(new TagIndex(span.startTime / 1000, span.traceId, "http.status", status));
+        } else {
+            span.tags = Map.of();
+        }
+        return span;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        table.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public int getTraceByTraceId() {
+        String traceId = "trace-" + ThreadLocalRandom.current().nextInt(traceCount);
+        return reader.getTraceByTraceId(traceId, null, null, null).toList().size();
+    }
+
+    /**
+     * The latest 10 traces of failed POST requests in the whole day
+     */
+    @Benchmark
+    public int getTraceListByTags() {
+        return reader.getTraceList(filter, indexedTagFilters, new Timestamp(start), new Timestamp(end), null, new Limit(10, 0))
+                     .toList()
+                     .size();
+    }
+
+    /**
+     * Failed POST requests in a random hour
+     */
+    @Benchmark
+    public int getTraceListByTagsInHour() {
+        long from = start + ThreadLocalRandom.current().nextInt(24) * 3600_000L;
+        return reader.getTraceList(filter, indexedTagFilters, new Timestamp(from), new Timestamp(from + 3600_000L), null, new Limit(10, 0))
+                     .toList()
+                     .size();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 4, 16, 64}) {
+            Options opt = new OptionsBuilder()
+                .include(TraceLocalStorageBenchmark.class.getSimpleName())
+                .threads(threads)
+                .forks(1)
+                .warmupIterations(2)
+                .measurementIterations(5)
+                .build();
+
+            new Runner(opt).run();
+        }
+    }
+}
@@ -19,6 +19,7 @@ package org.bithon.server.storage.alerting;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import org.bithon.server.storage.alerting.pojo.AlertState;
 
+import java.util.Collection;
 import java.util.Map;
 
 /**
@@ -38,6 +39,12 @@ public interface IAlertStateStorage {
      */
     Map<String, AlertState> getAlertStates();
 
+    /**
+     * Get alert state for given rules.
+     * Used when rules are evaluated by multiple instances and each instance only needs the states of its own rules
+     */
+    Map<String, AlertState> getAlertStates(Collection<String> alertIds);
+
     /**
      * @param states a map of all alert states, key is alert rule id
      */
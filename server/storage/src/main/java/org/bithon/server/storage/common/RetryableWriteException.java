@@ -0,0 +1,49 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.storage.common;
+
+import java.io.IOException;
+import java.util.function.Predicate;
+
+/**
+ * Thrown by a writer when a batch fails to be written for a reason that's likely to go away,
+ * e.g. the storage is restarting or temporarily unreachable,
+ * so that the caller is able to keep the batch and write it again later.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class RetryableWriteException extends IOException {
+    public RetryableWriteException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    /**
+     * Check the exception and its causes against the given predicate
+     * because the exception from the storage is usually wrapped by the JDBC driver or the SQL framework.
+     */
+    public static boolean isRetryable(Throwable e, Predicate<Exception> isRetryableException) {
+        if (isRetryableException == null) {
+            return false;
+        }
+        for (Throwable t = e; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof Exception && isRetryableException.test((Exception) t)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -17,6 +17,7 @@
 package org.bithon.server.storage.metrics;
 
 import org.bithon.server.datasource.input.IInputRow;
+import org.bithon.server.storage.common.RetryableWriteException;
 
 import java.io.IOException;
 import java.util.List;
@@ -28,4 +29,12 @@ import java.util.List;
 public interface IMetricWriter extends AutoCloseable {
 
     void write(List<IInputRow> inputRowList) throws IOException;
+
+    /**
+     * Same as {@link #write(List)} except that a failure which is worth retrying later
+     * is thrown as {@link RetryableWriteException} so that the caller is able to keep the rows.
+     */
+    default void writeOrThrowRetryable(List<IInputRow> inputRowList) throws IOException {
+        write(inputRowList);
+    }
 }
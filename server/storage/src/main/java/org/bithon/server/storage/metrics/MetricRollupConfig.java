@@ -0,0 +1,104 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.bithon.server.storage.metrics;
+
+import lombok.Data;
+import org.bithon.server.commons.time.Period;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Configuration of the rollup tiers of metric tables.
+ * <p>
+ * Each tier keeps the rows of the previous tier (or the raw table for the first tier) aggregated at a coarser granularity.
+ * For example:
+ * <pre>
+ * bithon.storage.metric.rollup:
+ *   enabled: true
+ *   tiers:
+ *     - granularity: PT1H
+ *       ttl: P90D
+ *     - granularity: P1D
+ *       ttl: P2Y
+ *   schemas:
+ *     jvm-metrics: []    # disable rollup for the jvm-metrics
+ * </pre>
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Data
+public class MetricRollupConfig {
+
+    @Data
+    public static class Tier {
+        /**
+         * Must be a multiple of the granularity of the previous tier
+         */
+        private Period granularity;
+
+        /**
+         * If not given, the TTL of the metric storage is used
+         */
+        private Period ttl;
+    }
+
+    private boolean enabled = false;
+
+    /**
+     * Whether this node maintains the rollup tables.
+     * When there are multiple server instances, only one of them should maintain the rollup tables,
+     * the others only use the rollup tables for queries.
+     */
+    private boolean maintain = true;
+
+    /**
+     * Default tiers of all metric schemas
+     */
+    private List<Tier> tiers = Collections.emptyList();
+
+    /**
+     * Tiers of a specific schema, which override the default tiers. Use an empty list to disable rollup of a schema.
+     */
+    private Map<String, List<Tier>> schemas = Collections.emptyMap();
+
+    /**
+     * How long to wait for late rows before a window is rolled up.
+     * <p>
+     * A window is rolled up only once. Rows that arrive later than this delay, for example, from agents that buffer metrics during a network outage,
+     * are kept in the raw table but never added to the rollup tiers.
+     * Since queries read the rolled-up range from the tiers, such rows are not visible to them.
+     * Increase the delay if metrics are expected to arrive late, at the cost of reading a longer recent range from the raw table.
+     */
+    private Period delay = new Period("PT5M");
+
+    /**
+     * How often the rollup tables are maintained
+     */
+    private Period interval = new Period("PT1M");
+
+    /**
+     * Max number of windows of one tier that are rolled up in one round, it limits the time spent on catching up
+     */
+    private int maxWindowsPerRound = 24;
+
+    public List<Tier> getTiers(String schema) {
+        return enabled ? schemas.getOrDefault(schema, tiers) : Collections.emptyList();
+    }
+}
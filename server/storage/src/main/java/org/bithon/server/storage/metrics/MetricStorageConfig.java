@@ -16,6 +16,8 @@
 
 package org.bithon.server.storage.metrics;
 
+import lombok.Getter;
+import lombok.Setter;
 import org.bithon.server.storage.common.StorageConfig;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
@@ -26,6 +28,8 @@ import org.springframework.context.annotation.Configuration;
  */
 @Configuration
 @ConfigurationProperties(prefix = "bithon.storage.metric")
+@Getter
+@Setter
 public class MetricStorageConfig extends StorageConfig {
-
+    private MetricRollupConfig rollup = new MetricRollupConfig();
 }
@@ -16,6 +16,7 @@
 
 package org.bithon.server.storage.tracing;
 
+import org.bithon.server.storage.common.RetryableWriteException;
 import org.bithon.server.storage.tracing.index.TagIndex;
 import org.bithon.server.storage.tracing.mapping.TraceIdMapping;
 
@@ -35,4 +36,14 @@ public interface ITraceWriter extends AutoCloseable {
     void write(List<TraceSpan> spans,
                List<TraceIdMapping> mappings,
                List<TagIndex> tagIndices) throws IOException;
+
+    /**
+     * Same as {@link #write(List, List, List)} except that a failure which is worth retrying later
+     * is thrown as {@link RetryableWriteException} so that the caller is able to keep the batch.
+     */
+    default void writeOrThrowRetryable(List<TraceSpan> spans,
+                                       List<TraceIdMapping> mappings,
+                                       List<TagIndex> tagIndices) throws IOException {
+        write(spans, mappings, tagIndices);
+    }
 }
@@ -32,6 +32,7 @@ import org.bithon.server.web.service.agent.sql.table.JmxBeanAttributeTable;
 import org.bithon.server.web.service.agent.sql.table.JmxBeanAttributeValueTable;
 import org.bithon.server.web.service.agent.sql.table.JmxBeanTable;
 import org.bithon.server.web.service.agent.sql.table.LoggerTable;
+import org.bithon.server.web.service.agent.sql.table.PluginTransformationTable;
 import org.bithon.server.web.service.agent.sql.table.ThreadTable;
 
 import java.util.Map;
@@ -48,6 +49,7 @@ public class AgentSchema extends AbstractSchema {
                                     .put("configuration", new ConfigurationTable(agentServiceProxyFactory))
                                     .put("instance", new InstanceTable(agentServiceProxyFactory.getDiscoveryServiceInvoker()))
                                     .put("instrumented_method", new InstrumentedMethodTable(agentServiceProxyFactory))
+                                    .put("plugin_transformation", new PluginTransformationTable(agentServiceProxyFactory))
                                     .put("loaded_class", new ClassTable(agentServiceProxyFactory))
                                     .put("class_histogram", new ClassHistogramTable(agentServiceProxyFactory))
                                     .put("class_hierarchy", new ClassHierarchyTable(agentServiceProxyFactory))
@@ -0,0 +1,60 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.web.service.agent.sql.table;
+
+import com.google.common.collect.ImmutableMap;
+import org.bithon.agent.rpc.brpc.cmd.IInstrumentationCommand;
+import org.bithon.server.discovery.declaration.controller.IAgentControllerApi;
+import org.bithon.server.web.service.common.calcite.SqlExecutionContext;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Time spent on class transformation by each plugin of the target agent
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class PluginTransformationTable extends AbstractBaseTable implements IPushdownPredicateProvider {
+    private final AgentServiceProxyFactory proxyFactory;
+
+    public PluginTransformationTable(AgentServiceProxyFactory proxyFactory) {
+        this.proxyFactory = proxyFactory;
+    }
+
+    @Override
+    public List<Object[]> getData(SqlExecutionContext executionContext) {
+        return proxyFactory.createBroadcastProxy(executionContext.getParameters(),
+                                                 IInstrumentationCommand.class)
+                           .getPluginTransformations()
+                           .stream()
+                           .map(IInstrumentationCommand.PluginTransformation::toObjects)
+                           .collect(Collectors.toList());
+    }
+
+    @Override
+    protected Class<?> getRecordClazz() {
+        return IInstrumentationCommand.PluginTransformation.class;
+    }
+
+    @Override
+    public Map<String, Boolean> getPredicates() {
+        return ImmutableMap.of(IAgentControllerApi.PARAMETER_NAME_APP_NAME, true,
+                               IAgentControllerApi.PARAMETER_NAME_INSTANCE, true);
+    }
+}
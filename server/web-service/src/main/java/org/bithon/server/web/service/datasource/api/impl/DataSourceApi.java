@@ -39,6 +39,7 @@ import org.bithon.server.datasource.query.Interval;
 import org.bithon.server.datasource.query.Query;
 import org.bithon.server.datasource.query.ReadResponse;
 import org.bithon.server.datasource.query.ResultFormat;
+import org.bithon.server.datasource.query.cache.QueryResultCache;
 import org.bithon.server.datasource.query.pipeline.ColumnarTable;
 import org.bithon.server.datasource.store.IDataStoreSpec;
 import org.bithon.server.discovery.client.DiscoveredServiceInvoker;
@@ -99,12 +100,14 @@ public class DataSourceApi implements IDataSourceApi {
     private final Executor asyncExecutor;
     private final DiscoveredServiceInvoker discoveredServiceInvoker;
     private final ObjectMapper objectMapper;
+    private final QueryResultCache queryResultCache;
 
     public DataSourceApi(MetricStorageConfig storageConfig,
                          SchemaManager schemaManager,
                          DataSourceService dataSourceService,
                          DiscoveredServiceInvoker discoveredServiceInvoker,
-                         ObjectMapper objectMapper) {
+                         ObjectMapper objectMapper,
+                         QueryResultCache queryResultCache) {
         this.storageConfig = storageConfig;
         this.schemaManager = schemaManager;
         this.dataSourceService = dataSourceService;
@@ -116,6 +119,7 @@ public class DataSourceApi implements IDataSourceApi {
                                                     NamedThreadFactory.nonDaemonThreadFactory("datasource-async"));
         this.discoveredServiceInvoker = discoveredServiceInvoker;
         this.objectMapper = objectMapper;
+        this.queryResultCache = queryResultCache;
     }
 
     @Override
@@ -175,12 +179,17 @@ public class DataSourceApi implements IDataSourceApi {
     public ColumnarTable internalTimeseries(@Validated @RequestBody QueryRequest request) throws IOException {
         ISchema schema = schemaManager.getSchema(request.getDataSource());
 
-        Query query = QueryConverter.toQuery(schema, request, request.getInterval().calculateStep());
+        Duration step = request.getInterval().calculateStep();
+        Query query = QueryConverter.toQuery(schema, request, step);
 
         try (IDataSourceReader reader = query.getSchema()
                                              .getDataStoreSpec()
                                              .createReader()) {
-            return reader.timeseries(query);
+            // The reader rewrites the expressions of a query, convert the request again for each load
+            return queryResultCache.timeseries(query, (interval) -> reader.timeseries(QueryConverter.toQuery(schema, request, step)
+                                                                                                             .copy()
+                                                                                                             .interval(interval)
+                                                                                                             .build()));
         }
     }
 
@@ -402,6 +411,7 @@ public class DataSourceApi implements IDataSourceApi {
     @Override
     public void updateSchema(@RequestBody ISchema newSchema) {
         schemaManager.updateSchema(newSchema);
+        queryResultCache.invalidate(newSchema.getName());
     }
 
     @Override
@@ -444,6 +454,9 @@ public class DataSourceApi implements IDataSourceApi {
     public void updateSpecifiedDataSourceTTL(@RequestBody UpdateTTLRequest request) {
         ExpirationConfig expirationConfig = this.storageConfig.getTtl();
         expirationConfig.setTtl(request.getTtl());
+
+        // Data out of the new TTL is going to be deleted
+        queryResultCache.invalidateAll();
     }
 
     @Override
@@ -0,0 +1,65 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.web.service.tracing.api;
+
+import jakarta.annotation.Nullable;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.Data;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+@Data
+public class GetTraceTreeRequest {
+    /**
+     * a trace id or a user transaction id
+     */
+    @NotEmpty
+    private String id;
+
+    /**
+     * trace - the value of id field is a trace id
+     * auto  - the value of id field may be a user transaction id or a trace id
+     */
+    private String type = "trace";
+
+    private String startTimeISO8601;
+    private String endTimeISO8601;
+
+    /**
+     * Extra filter expression to filter spans
+     */
+    @Nullable
+    private String filterExpression;
+
+    /**
+     * If given, the children of this span are returned. This is how a collapsed span is expanded.
+     * Otherwise, the root spans are returned.
+     */
+    @Nullable
+    private String parentSpanId;
+
+    /**
+     * How many levels of descendants of returned spans are expanded
+     */
+    private int expandDepth = 2;
+
+    /**
+     * Max number of spans returned in one response
+     */
+    private int maxSpans = 1000;
+}
@@ -0,0 +1,43 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.web.service.tracing.api;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+@Data
+@Builder
+public class GetTraceTreeResponse {
+    /**
+     * Total number of spans in the trace.
+     * -1 if the children are read from the storage directly because the tree of the trace is no longer cached.
+     */
+    private int totalSpans;
+
+    /**
+     * A span whose children are not expanded carries the child span positions in its {@link TraceSpanBo#childRefs}
+     */
+    private List<TraceSpanBo> spans;
+
+    private Map<String, Long> profileEvents;
+}
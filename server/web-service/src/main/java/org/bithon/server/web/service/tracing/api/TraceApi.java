@@ -29,6 +29,7 @@ import org.bithon.server.web.service.WebServiceModuleEnabler;
 import org.bithon.server.web.service.datasource.api.QueryRequest;
 import org.bithon.server.web.service.tracing.service.TraceService;
 import org.bithon.server.web.service.tracing.service.TraceTopoBuilder;
+import org.bithon.server.web.service.tracing.service.TraceTree;
 import org.springframework.context.annotation.Conditional;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -43,6 +44,7 @@ import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBo
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -248,6 +250,51 @@ public class TraceApi {
         );
     }
 
+    /**
+     * Get the trace as a collapsed tree, which is suitable for traces with a huge number of spans.
+     * <p>
+     * The spans are assembled from the storage cursor into a compact tree which is cached for a while,
+     * and only the upper levels of the tree are returned.
+     * Collapsed spans are expanded by calling this API again with the {@link GetTraceTreeRequest#getParentSpanId()}.
+     * If the tree is no longer cached, it's assembled again from the storage, so that the response is the same.
+     */
+    @PostMapping("/api/trace/getTraceTree")
+    public GetTraceTreeResponse getTraceTree(@Valid @RequestBody GetTraceTreeRequest request) {
+        String cacheKey = TraceService.getTraceTreeCacheKey(request.getId(),
+                                                            request.getType(),
+                                                            request.getFilterExpression(),
+                                                            request.getStartTimeISO8601(),
+                                                            request.getEndTimeISO8601());
+
+        Watch<TraceTree> getTree = new Watch<>(() -> traceService.getTraceTree(cacheKey,
+                                                                               request.getId(),
+                                                                               request.getType(),
+                                                                               request.getFilterExpression(),
+                                                                               request.getStartTimeISO8601(),
+                                                                               request.getEndTimeISO8601()));
+        Watch<List<TraceSpanBo>> getSpans = new Watch<>(() -> {
+            TraceTree tree = getTree.getResult();
+            if (request.getParentSpanId() == null) {
+                return tree.getRoots(request.getExpandDepth(), request.getMaxSpans());
+            }
+
+            List<TraceSpanBo> children = tree.getChildren(request.getParentSpanId(), request.getExpandDepth(), request.getMaxSpans());
+
+            // The parent span does not belong to this trace
+            return children == null ? Collections.emptyList() : children;
+        });
+
+        Map<String, Long> profileEvents = new HashMap<>();
+        profileEvents.put("getTree", getTree.getDuration());
+        profileEvents.put("transformation", getSpans.getDuration());
+
+        return GetTraceTreeResponse.builder()
+                                   .totalSpans(getTree.getResult().size())
+                                   .spans(getSpans.getResult())
+                                   .profileEvents(profileEvents)
+                                   .build();
+    }
+
     @PostMapping("/api/trace/getChildSpans")
     public List<TraceSpan> getChildSpans(@Valid @RequestBody GetChildSpansRequest request) {
         return traceService.getTraceByParentSpanId(request.getParentSpanId());
@@ -40,6 +40,7 @@ import org.springframework.beans.BeanUtils;
 import org.springframework.context.annotation.Conditional;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -56,10 +57,12 @@ public class TraceService {
 
     private final ITraceReader traceReader;
     private final SchemaManager schemaManager;
+    private final TraceTreeCache traceTreeCache;
 
-    public TraceService(ITraceStorage traceStorage, SchemaManager schemaManager) {
+    public TraceService(ITraceStorage traceStorage, SchemaManager schemaManager, TraceTreeCache traceTreeCache) {
         this.traceReader = traceStorage.createReader();
         this.schemaManager = schemaManager;
+        this.traceTreeCache = traceTreeCache;
     }
 
     public List<TraceSpan> getTraceByParentSpanId(String parentSpanId) {
@@ -100,24 +103,66 @@ public class TraceService {
         return traceReader.getTraceByTraceId(txId, filter, start, end);
     }
 
+    /**
+     * Get the assembled tree of a trace.
+     * The tree of a recently viewed trace is served from the cache, otherwise it's assembled from the storage cursor and then cached.
+     *
+     * @param cacheKey the key that identifies the request, see {@link #getTraceTreeCacheKey}
+     */
+    public TraceTree getTraceTree(String cacheKey,
+                                  String txId,
+                                  String type,
+                                  String filterExpression,
+                                  String startTimeISO8601,
+                                  String endTimeISO8601) throws IOException {
+        TraceTree tree = traceTreeCache.get(cacheKey);
+        if (tree != null) {
+            return tree;
+        }
+
+        try (CloseableIterator<TraceSpan> iterator = getTraceByTraceId(txId, type, filterExpression, startTimeISO8601, endTimeISO8601)) {
+            tree = TraceTree.build(iterator);
+        }
+        traceTreeCache.put(cacheKey, tree);
+        return tree;
+    }
+
+    public static String getTraceTreeCacheKey(String txId,
+                                              String type,
+                                              String filterExpression,
+                                              String startTimeISO8601,
+                                              String endTimeISO8601) {
+        return StringUtils.format("%s/%s/%s/%s/%s",
+                                  txId,
+                                  type,
+                                  StringUtils.getOrEmpty(filterExpression),
+                                  StringUtils.getOrEmpty(startTimeISO8601),
+                                  StringUtils.getOrEmpty(endTimeISO8601));
+    }
+
+    static TraceSpanBo toTraceSpanBo(TraceSpan span) {
+        TraceSpanBo bo = new TraceSpanBo();
+        BeanUtils.copyProperties(span, bo);
+
+        // Calculate unqualified class name
+        if (bo.clazz != null) {
+            int idx = bo.clazz.lastIndexOf('.');
+            if (idx > 0) {
+                bo.unQualifiedClassName = bo.clazz.substring(idx + 1);
+            } else {
+                bo.unQualifiedClassName = bo.clazz;
+            }
+        } else {
+            bo.unQualifiedClassName = "";
+        }
+        return bo;
+    }
+
     public List<TraceSpanBo> transformSpanList(List<TraceSpan> spans, boolean returnTree) {
         List<TraceSpanBo> spanList = new ArrayList<>();
         Map<String, TraceSpanBo> spanMap = new HashMap<>();
         for (TraceSpan span : spans) {
-            TraceSpanBo bo = new TraceSpanBo();
-            BeanUtils.copyProperties(span, bo);
-
-            // Calculate unqualified class name
-            if (bo.clazz != null) {
-                int idx = bo.clazz.lastIndexOf('.');
-                if (idx > 0) {
-                    bo.unQualifiedClassName = bo.clazz.substring(idx + 1);
-                } else {
-                    bo.unQualifiedClassName = bo.clazz;
-                }
-            } else {
-                bo.unQualifiedClassName = "";
-            }
+            TraceSpanBo bo = toTraceSpanBo(span);
 
             spanList.add(bo);
             spanMap.put(span.spanId, bo);
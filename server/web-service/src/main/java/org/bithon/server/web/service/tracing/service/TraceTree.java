@@ -0,0 +1,295 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.web.service.tracing.service;
+
+import org.bithon.component.commons.utils.StringUtils;
+import org.bithon.server.storage.tracing.TraceSpan;
+import org.bithon.server.web.service.tracing.api.TraceSpanBo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact parent/child index over the spans of one trace.
+ * <p>
+ * Spans are kept in the order they're read from the storage cursor.
+ * Instead of a {@link TraceSpanBo} object and a child list for each span,
+ * the tree is kept in primitive arrays:
+ * a spanId to position open-addressing table, and a first-child/next-sibling linked list of each span.
+ * {@link TraceSpanBo} objects are only created for the part of the tree that's returned to clients,
+ * see {@link #getRoots(int, int)} and {@link #getChildren(String, int, int)}.
+ *
+ * @author frank.chen021@outlook.com
+ */
+public class TraceTree {
+    private static final int NONE = -1;
+
+    private final TraceSpan[] spans;
+    private final int size;
+
+    /**
+     * Position of span + 1 in {@link #spans}, 0 means empty slot
+     */
+    private final int[] slots;
+    private final int mask;
+
+    private final int[] firstChild;
+    private final int[] nextSibling;
+    private final int[] childCounts;
+    private final int[] roots;
+    private final long estimatedBytes;
+
+    private TraceTree(TraceSpan[] spans, int size, int[] slots) {
+        this.spans = spans;
+        this.size = size;
+        this.slots = slots;
+        this.mask = slots.length - 1;
+
+        this.firstChild = new int[size];
+        this.nextSibling = new int[size];
+        this.childCounts = new int[size];
+        Arrays.fill(firstChild, NONE);
+        Arrays.fill(nextSibling, NONE);
+
+        // Link children to parents in the order of spans
+        int[] lastChild = new int[size];
+        int[] rootList = new int[size];
+        int rootCount = 0;
+        for (int i = 0; i < size; i++) {
+            String parentSpanId = spans[i].parentSpanId;
+            int parent = StringUtils.isEmpty(parentSpanId) ? NONE : find(parentSpanId);
+            if (parent == NONE || parent == i) {
+                // For example, two applications: A --> B
+                // if span logs of A are not stored in Bithon,
+                // the root span of B has parentSpanId, but apparently the parent span can't be found
+                rootList[rootCount++] = i;
+                continue;
+            }
+
+            if (firstChild[parent] == NONE) {
+                firstChild[parent] = i;
+            } else {
+                nextSibling[lastChild[parent]] = i;
+            }
+            lastChild[parent] = i;
+            childCounts[parent]++;
+        }
+        this.roots = Arrays.copyOf(rootList, rootCount);
+
+        // spans, slots, firstChild, nextSibling, childCounts and roots
+        long bytes = 4L * (spans.length + slots.length + size * 3L + rootCount);
+        for (int i = 0; i < size; i++) {
+            bytes += estimateBytes(spans[i]);
+        }
+        this.estimatedBytes = bytes;
+    }
+
+    /**
+     * Build the tree from a storage cursor. Spans are consumed one by one and the iterator is NOT closed.
+     */
+    public static TraceTree build(Iterator<TraceSpan> iterator) {
+        TraceSpan[] spans = new TraceSpan[128];
+        int size = 0;
+        int[] slots = new int[256];
+
+        while (iterator.hasNext()) {
+            TraceSpan span = iterator.next();
+            if (size == spans.length) {
+                spans = Arrays.copyOf(spans, size * 2);
+            }
+            spans[size++] = span;
+
+            // Keep the load factor under 0.5
+            if (size * 2 > slots.length) {
+                slots = rehash(spans, size - 1, slots.length * 2);
+            }
+            insert(slots, spans, size - 1);
+        }
+        return new TraceTree(spans, size, slots);
+    }
+
+    /**
+     * @return the number of spans in this trace
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the estimated heap size held by this tree, including the spans
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * Get the root spans whose descendants are expanded up to given levels.
+     *
+     * @param expandDepth how many levels of descendants are expanded. 0 means only the roots are returned.
+     * @param maxSpans    max number of spans to return.
+     *                    Children of a span are not expanded if all of them can't be returned within the budget.
+     *                    The roots are always returned.
+     */
+    public List<TraceSpanBo> getRoots(int expandDepth, int maxSpans) {
+        return expand(roots, roots.length, 0, expandDepth, maxSpans);
+    }
+
+    /**
+     * Get the children of given span whose descendants are expanded up to given levels.
+     *
+     * @return null if the parent span does not exist in this trace
+     */
+    public List<TraceSpanBo> getChildren(String parentSpanId, int expandDepth, int maxSpans) {
+        int parent = parentSpanId == null ? NONE : find(parentSpanId);
+        if (parent == NONE) {
+            return null;
+        }
+
+        int[] children = new int[childCounts[parent]];
+        int n = 0;
+        for (int child = firstChild[parent]; child != NONE; child = nextSibling[child]) {
+            children[n++] = child;
+        }
+        return expand(children, n, 0, expandDepth, maxSpans);
+    }
+
+    /**
+     * Expand the tree in breadth-first order so that the budget is spent on upper levels first.
+     * A span that is not expanded carries the positions of its children in {@link TraceSpanBo#childRefs}
+     * so that clients know how many children it has.
+     */
+    private List<TraceSpanBo> expand(int[] positions, int count, int depth, int expandDepth, int maxSpans) {
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+
+        List<TraceSpanBo> result = new ArrayList<>(count);
+        ArrayDeque<TraceSpanBo> queue = new ArrayDeque<>();
+        for (int i = 0; i < count; i++) {
+            TraceSpanBo bo = toTraceSpanBo(positions[i], depth);
+            result.add(bo);
+            queue.add(bo);
+        }
+
+        int budget = maxSpans - count;
+        while (!queue.isEmpty()) {
+            TraceSpanBo bo = queue.poll();
+
+            int childCount = childCounts[bo.index];
+            boolean expand = bo.depth < expandDepth && childCount <= budget;
+            if (expand) {
+                budget -= childCount;
+            }
+            for (int child = firstChild[bo.index]; child != NONE; child = nextSibling[child]) {
+                if (expand) {
+                    TraceSpanBo childBo = toTraceSpanBo(child, bo.depth + 1);
+                    bo.children.add(childBo);
+                    queue.add(childBo);
+                } else {
+                    bo.childRefs.add(child);
+                }
+            }
+        }
+        return result;
+    }
+
+    private TraceSpanBo toTraceSpanBo(int position, int depth) {
+        TraceSpanBo bo = TraceService.toTraceSpanBo(spans[position]);
+        bo.index = position;
+        bo.depth = depth;
+        return bo;
+    }
+
+    private int find(String spanId) {
+        for (int slot = hash(spanId) & mask; ; slot = (slot + 1) & mask) {
+            int pos = slots[slot] - 1;
+            if (pos == NONE) {
+                return NONE;
+            }
+            if (spanId.equals(spans[pos].spanId)) {
+                return pos;
+            }
+        }
+    }
+
+    private static void insert(int[] slots, TraceSpan[] spans, int position) {
+        String spanId = spans[position].spanId;
+        if (spanId == null) {
+            return;
+        }
+
+        int mask = slots.length - 1;
+        for (int slot = hash(spanId) & mask; ; slot = (slot + 1) & mask) {
+            int pos = slots[slot] - 1;
+            if (pos == NONE || spanId.equals(spans[pos].spanId)) {
+                // The later one wins if there are duplicated span ids
+                slots[slot] = position + 1;
+                return;
+            }
+        }
+    }
+
+    private static int[] rehash(TraceSpan[] spans, int size, int capacity) {
+        int[] slots = new int[capacity];
+        for (int i = 0; i < size; i++) {
+            insert(slots, spans, i);
+        }
+        return slots;
+    }
+
+    /**
+     * A rough estimation of the heap held by a span on a 64-bit JVM with compressed oops.
+     * A {@link TraceSpan} object itself takes 96 bytes, each string takes about 40 bytes plus its length,
+     * and each tag takes about 40 bytes of the hash map plus its key and value.
+     * A span with 10 tags of short values usually takes 1 ~ 2 KiB.
+     */
+    static long estimateBytes(TraceSpan span) {
+        long bytes = 96
+                     + estimateBytes(span.appName)
+                     + estimateBytes(span.instanceName)
+                     + estimateBytes(span.traceId)
+                     + estimateBytes(span.spanId)
+                     + estimateBytes(span.parentSpanId)
+                     + estimateBytes(span.parentApplication)
+                     + estimateBytes(span.kind)
+                     + estimateBytes(span.name)
+                     + estimateBytes(span.clazz)
+                     + estimateBytes(span.method)
+                     + estimateBytes(span.normalizedUri);
+        if (span.tags != null) {
+            bytes += 48;
+            for (Map.Entry<String, String> tag : span.tags.entrySet()) {
+                bytes += 40 + estimateBytes(tag.getKey()) + estimateBytes(tag.getValue());
+            }
+        }
+        return bytes;
+    }
+
+    private static long estimateBytes(String s) {
+        return s == null ? 0 : 40 + s.length();
+    }
+
+    private static int hash(String spanId) {
+        int h = spanId.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
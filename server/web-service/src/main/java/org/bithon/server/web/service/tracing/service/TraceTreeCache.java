@@ -0,0 +1,134 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.web.service.tracing.service;
+
+import org.bithon.server.web.service.WebServiceModuleEnabler;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps assembled trees of recently viewed traces
+ * so that expanding a collapsed span does not need to read the whole trace from the storage again.
+ * <p>
+ * The cache is bounded by both the total number of spans and the total estimated heap size of trees,
+ * the least recently viewed traces are evicted first.
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Service
+@Conditional(WebServiceModuleEnabler.class)
+public class TraceTreeCache {
+
+    private static class Entry {
+        private final TraceTree tree;
+        private final long expiredAt;
+
+        private Entry(TraceTree tree, long expiredAt) {
+            this.tree = tree;
+            this.expiredAt = expiredAt;
+        }
+    }
+
+    private final TraceTreeCacheConfig config;
+    private final LongSupplier clock;
+
+    /**
+     * In access order so that the eldest entry is the least recently viewed one.
+     * Guarded by itself.
+     */
+    private final LinkedHashMap<String, Entry> trees = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedSpans;
+    private long cachedBytes;
+
+    public TraceTreeCache(TraceTreeCacheConfig config) {
+        this(config, System::currentTimeMillis);
+    }
+
+    TraceTreeCache(TraceTreeCacheConfig config, LongSupplier clock) {
+        this.config = config;
+        this.clock = clock;
+    }
+
+    /**
+     * @return null if the tree is not cached or has expired
+     */
+    public TraceTree get(String key) {
+        if (!config.isEnabled()) {
+            return null;
+        }
+
+        synchronized (trees) {
+            Entry entry = trees.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiredAt <= clock.getAsLong()) {
+                trees.remove(key);
+                cachedSpans -= entry.tree.size();
+                cachedBytes -= entry.tree.getEstimatedBytes();
+                return null;
+            }
+            return entry.tree;
+        }
+    }
+
+    public void put(String key, TraceTree tree) {
+        long maxBytes = config.getMaxSize().longValue();
+        if (!config.isEnabled() || tree.size() == 0 || tree.size() > config.getMaxSpans() || tree.getEstimatedBytes() > maxBytes) {
+            return;
+        }
+
+        synchronized (trees) {
+            Entry prev = trees.put(key, new Entry(tree, clock.getAsLong() + config.getTtl().getMilliseconds()));
+            if (prev != null) {
+                cachedSpans -= prev.tree.size();
+                cachedBytes -= prev.tree.getEstimatedBytes();
+            }
+            cachedSpans += tree.size();
+            cachedBytes += tree.getEstimatedBytes();
+
+            Iterator<Map.Entry<String, Entry>> iterator = trees.entrySet().iterator();
+            while ((cachedSpans > config.getMaxSpans() || cachedBytes > maxBytes) && iterator.hasNext()) {
+                Map.Entry<String, Entry> eldest = iterator.next();
+                if (eldest.getKey().equals(key)) {
+                    // The newly added one is the most recently used one, which is the last
+                    break;
+                }
+                iterator.remove();
+                cachedSpans -= eldest.getValue().tree.size();
+                cachedBytes -= eldest.getValue().tree.getEstimatedBytes();
+            }
+        }
+    }
+
+    public long getCachedSpans() {
+        synchronized (trees) {
+            return cachedSpans;
+        }
+    }
+
+    public long getCachedBytes() {
+        synchronized (trees) {
+            return cachedBytes;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.web.service.tracing.service;
+
+import lombok.Data;
+import org.bithon.component.commons.utils.HumanReadableNumber;
+import org.bithon.server.commons.time.Period;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration of {@link TraceTreeCache}
+ *
+ * @author frank.chen021@outlook.com
+ */
+@Data
+@Configuration
+@ConfigurationProperties("bithon.web.service.tracing.tree-cache")
+public class TraceTreeCacheConfig {
+    private boolean enabled = true;
+
+    /**
+     * Max number of spans that are held by the cache.
+     * The least recently viewed traces are evicted when the limit is exceeded.
+     * A trace that has more spans than this limit is not cached.
+     */
+    private int maxSpans = 1_000_000;
+
+    /**
+     * Max estimated heap size held by the cache, see {@link TraceTree#getEstimatedBytes()}.
+     * Spans with many or long tags take more memory, so the number of spans alone does not bound the memory.
+     * Like {@link #maxSpans}, a trace that is larger than this limit is not cached.
+     */
+    private HumanReadableNumber maxSize = HumanReadableNumber.of("256MiB");
+
+    /**
+     * How long an assembled trace is kept at most.
+     * Spans of a recent trace may still be arriving, so this should not be too long.
+     */
+    private Period ttl = new Period("PT2M");
+}
@@ -0,0 +1,111 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.web.service.tracing.service;
+
+import org.bithon.component.commons.utils.HumanReadableNumber;
+import org.bithon.server.commons.time.Period;
+import org.bithon.server.storage.tracing.TraceSpan;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class TraceTreeCacheTest {
+
+    private static TraceTree tree(int spanCount) {
+        List<TraceSpan> spans = new ArrayList<>();
+        for (int i = 0; i < spanCount; i++) {
+            TraceSpan span = new TraceSpan();
+            span.spanId = "s" + i;
+            span.parentSpanId = i == 0 ? "" : "s0";
+            spans.add(span);
+        }
+        return TraceTree.build(spans.iterator());
+    }
+
+    @Test
+    public void testEvictLeastRecentlyViewed() {
+        TraceTreeCacheConfig config = new TraceTreeCacheConfig();
+        config.setMaxSpans(10);
+        TraceTreeCache cache = new TraceTreeCache(config);
+
+        TraceTree t1 = tree(4);
+        TraceTree t2 = tree(4);
+        cache.put("t1", t1);
+        cache.put("t2", t2);
+        Assertions.assertEquals(8, cache.getCachedSpans());
+
+        // View t1 so that t2 is the least recently viewed one
+        Assertions.assertSame(t1, cache.get("t1"));
+        cache.put("t3", tree(4));
+        Assertions.assertNull(cache.get("t2"));
+        Assertions.assertSame(t1, cache.get("t1"));
+        Assertions.assertEquals(8, cache.getCachedSpans());
+
+        // Too large to cache
+        cache.put("t4", tree(11));
+        Assertions.assertNull(cache.get("t4"));
+        Assertions.assertEquals(8, cache.getCachedSpans());
+    }
+
+    @Test
+    public void testEvictByEstimatedSize() {
+        TraceTree t1 = tree(4);
+        Assertions.assertTrue(t1.getEstimatedBytes() > 0);
+
+        TraceTreeCacheConfig config = new TraceTreeCacheConfig();
+        // Room for two trees only, though the span limit is not reached
+        config.setMaxSize(HumanReadableNumber.of(String.valueOf(t1.getEstimatedBytes() * 2)));
+        TraceTreeCache cache = new TraceTreeCache(config);
+
+        cache.put("t1", t1);
+        cache.put("t2", tree(4));
+        Assertions.assertEquals(t1.getEstimatedBytes() * 2, cache.getCachedBytes());
+
+        cache.put("t3", tree(4));
+        Assertions.assertNull(cache.get("t1"));
+        Assertions.assertNotNull(cache.get("t2"));
+        Assertions.assertNotNull(cache.get("t3"));
+        Assertions.assertEquals(t1.getEstimatedBytes() * 2, cache.getCachedBytes());
+
+        // Too large to cache
+        cache.put("t4", tree(100));
+        Assertions.assertNull(cache.get("t4"));
+        Assertions.assertEquals(8, cache.getCachedSpans());
+    }
+
+    @Test
+    public void testExpiration() {
+        TraceTreeCacheConfig config = new TraceTreeCacheConfig();
+        config.setTtl(new Period("PT1M"));
+        AtomicLong now = new AtomicLong(0);
+        TraceTreeCache cache = new TraceTreeCache(config, now::get);
+
+        cache.put("t1", tree(2));
+        now.set(59_999);
+        Assertions.assertNotNull(cache.get("t1"));
+        now.set(60_000);
+        Assertions.assertNull(cache.get("t1"));
+        Assertions.assertEquals(0, cache.getCachedSpans());
+        Assertions.assertEquals(0, cache.getCachedBytes());
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ *    Copyright 2020 bithon.org
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.bithon.server.web.service.tracing.service;
+
+import org.bithon.server.storage.tracing.TraceSpan;
+import org.bithon.server.web.service.tracing.api.TraceSpanBo;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @author frank.chen021@outlook.com
+ */
+public class TraceTreeTest {
+
+    private static TraceSpan span(String spanId, String parentSpanId) {
+        TraceSpan span = new TraceSpan();
+        span.traceId = "t1";
+        span.spanId = spanId;
+        span.parentSpanId = parentSpanId;
+        span.clazz = "org.bithon.Test";
+        return span;
+    }
+
+    private static List<String> ids(List<TraceSpanBo> spans) {
+        return spans.stream().map(TraceSpan::getSpanId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testBuildTree() {
+        // Child spans arrive before their parents
+        TraceTree tree = TraceTree.build(Arrays.asList(span("c1", "r"),
+                                                       span("r", ""),
+                                                       span("c2", "r"),
+                                                       span("g1", "c1"),
+                                                       // Parent is not found
+                                                       span("o", "missing")).iterator());
+        Assertions.assertEquals(5, tree.size());
+
+        List<TraceSpanBo> roots = tree.getRoots(10, 100);
+        Assertions.assertEquals(Arrays.asList("r", "o"), ids(roots));
+        Assertions.assertEquals("Test", roots.get(0).unQualifiedClassName);
+
+        TraceSpanBo r = roots.get(0);
+        Assertions.assertEquals(Arrays.asList("c1", "c2"), ids(r.children));
+        Assertions.assertEquals(1, r.children.get(0).depth);
+        Assertions.assertEquals(Arrays.asList("g1"), ids(r.children.get(0).children));
+        Assertions.assertEquals(2, r.children.get(0).children.get(0).depth);
+        Assertions.assertEquals(0, roots.get(1).getChildCount());
+    }
+
+    @Test
+    public void testCollapse() {
+        TraceTree tree = TraceTree.build(Arrays.asList(span("r", ""),
+                                                       span("c1", "r"),
+                                                       span("c2", "r"),
+                                                       span("g1", "c1"),
+                                                       span("g2", "c1")).iterator());
+
+        // Only the roots
+        List<TraceSpanBo> roots = tree.getRoots(0, 100);
+        Assertions.assertEquals(1, roots.size());
+        Assertions.assertTrue(roots.get(0).children.isEmpty());
+        Assertions.assertEquals(Arrays.asList(1, 2), roots.get(0).childRefs);
+        Assertions.assertEquals(2, roots.get(0).getChildCount());
+
+        // One level
+        roots = tree.getRoots(1, 100);
+        TraceSpanBo c1 = roots.get(0).children.get(0);
+        Assertions.assertTrue(c1.children.isEmpty());
+        Assertions.assertEquals(2, c1.getChildCount());
+
+        // Budget is not enough for the grand children
+        roots = tree.getRoots(10, 3);
+        Assertions.assertEquals(2, roots.get(0).children.size());
+        Assertions.assertTrue(roots.get(0).children.get(0).children.isEmpty());
+        Assertions.assertEquals(2, roots.get(0).children.get(0).getChildCount());
+    }
+
+    @Test
+    public void testGetChildren() {
+        TraceTree tree = TraceTree.build(Arrays.asList(span("r", ""),
+                                                       span("c1", "r"),
+                                                       span("c2", "r"),
+                                                       span("g1", "c1")).iterator());
+
+        List<TraceSpanBo> children = tree.getChildren("c1", 0, 100);
+        Assertions.assertEquals(Arrays.asList("g1"), ids(children));
+        Assertions.assertEquals(3, children.get(0).index);
+
+        Assertions.assertTrue(tree.getChildren("c2", 0, 100).isEmpty());
+        Assertions.assertNull(tree.getChildren("not-exist", 0, 100));
+    }
+
+    @Test
+    public void testLargeFanOut() {
+        List<TraceSpan> spans = new ArrayList<>();
+        spans.add(span("r", ""));
+        for (int i = 0; i < 50_000; i++) {
+            spans.add(span("c" + i, "r"));
+        }
+        TraceTree tree = TraceTree.build(spans.iterator());
+        Assertions.assertEquals(50_001, tree.size());
+
+        // Children can't be returned within the budget, only the root is returned
+        List<TraceSpanBo> roots = tree.getRoots(2, 1000);
+        Assertions.assertEquals(1, roots.size());
+        Assertions.assertTrue(roots.get(0).children.isEmpty());
+        Assertions.assertEquals(50_000, roots.get(0).getChildCount());
+
+        List<TraceSpanBo> children = tree.getChildren("r", 0, 50_000);
+        Assertions.assertEquals(50_000, children.size());
+        Assertions.assertEquals("c49999", children.get(49_999).getSpanId());
+    }
+}